@@ -15,15 +15,18 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.MalformedURLException;
 
 import android.os.Handler;
 
 import com.box.androidlib.DAO.BoxFile;
 import com.box.androidlib.DAO.BoxFolder;
+import com.box.androidlib.DAO.BoxTree;
 import com.box.androidlib.ResponseListeners.AddCommentListener;
 import com.box.androidlib.ResponseListeners.AddToMyBoxListener;
 import com.box.androidlib.ResponseListeners.AddToTagListener;
+import com.box.androidlib.ResponseListeners.BatchListener;
 import com.box.androidlib.ResponseListeners.CopyListener;
 import com.box.androidlib.ResponseListeners.CreateFolderListener;
 import com.box.androidlib.ResponseListeners.DeleteCommentListener;
@@ -54,6 +57,7 @@ import com.box.androidlib.ResponseListeners.SetDescriptionListener;
 import com.box.androidlib.ResponseListeners.ToggleFolderEmailListener;
 import com.box.androidlib.ResponseListeners.VerifyRegistrationEmailListener;
 import com.box.androidlib.ResponseParsers.AccountTreeResponseParser;
+import com.box.androidlib.ResponseParsers.BatchResponseParser;
 import com.box.androidlib.ResponseParsers.CollaborationsResponseParser;
 import com.box.androidlib.ResponseParsers.CommentResponseParser;
 import com.box.androidlib.ResponseParsers.CommentsResponseParser;
@@ -68,6 +72,8 @@ import com.box.androidlib.ResponseParsers.ToggleFolderEmailResponseParser;
 import com.box.androidlib.ResponseParsers.UpdatesResponseParser;
 import com.box.androidlib.ResponseParsers.UserResponseParser;
 import com.box.androidlib.ResponseParsers.VersionsResponseParser;
+import com.box.androidlib.Utils.BoxConfig;
+import com.box.androidlib.Utils.BoxExecutor;
 import com.box.androidlib.Utils.Cancelable;
 
 /**
@@ -79,6 +85,10 @@ import com.box.androidlib.Utils.Cancelable;
  * ResponseListener callbacks are invoked in the UI Thread. So, for example, if you execute Box.getTicket(getTicketListener), then
  * getTicketListener.onComplete() will be executed on the UI thread. <br/>
  * <br/>
+ * Requests are queued on a bounded {@link com.box.androidlib.Utils.BoxExecutor}. API requests and file transfers use separate lanes, so a long running download
+ * or upload does not hold up other requests. The number of requests and transfers that run at the same time can be configured through
+ * {@link com.box.androidlib.Utils.BoxConfig}. <br/>
+ * <br/>
  * If you would like to execute requests synchronously (e.g. you already have a worker thread or AsyncTask you want to put the request into), then use
  * {@link com.box.androidlib.BoxSynchronous}.
  * 
@@ -294,7 +304,7 @@ public class Box {
      */
     public final void getTicket(final GetTicketListener listener) {
 
-        new Thread() {
+        BoxExecutor.getInstance().submit(BoxExecutor.LANE_INTERACTIVE, new Runnable() {
 
             @Override
             public void run() {
@@ -318,7 +328,7 @@ public class Box {
                     });
                 }
             }
-        }.start();
+        });
     }
 
     /**
@@ -333,7 +343,7 @@ public class Box {
      */
     public final void getAuthToken(final String ticket, final GetAuthTokenListener listener) {
 
-        new Thread() {
+        BoxExecutor.getInstance().submit(BoxExecutor.LANE_INTERACTIVE, new Runnable() {
 
             @Override
             public void run() {
@@ -357,7 +367,7 @@ public class Box {
                     });
                 }
             }
-        }.start();
+        });
     }
 
     /**
@@ -371,7 +381,7 @@ public class Box {
      */
     public final void getAccountInfo(final String authToken, final GetAccountInfoListener listener) {
 
-        new Thread() {
+        BoxExecutor.getInstance().submit(BoxExecutor.LANE_INTERACTIVE, new Runnable() {
 
             @Override
             public void run() {
@@ -395,7 +405,7 @@ public class Box {
                     });
                 }
             }
-        }.start();
+        });
     }
 
     /**
@@ -409,7 +419,7 @@ public class Box {
      */
     public final void logout(final String authToken, final LogoutListener listener) {
 
-        new Thread() {
+        BoxExecutor.getInstance().submit(BoxExecutor.LANE_INTERACTIVE, new Runnable() {
 
             @Override
             public void run() {
@@ -433,7 +443,7 @@ public class Box {
                     });
                 }
             }
-        }.start();
+        });
     }
 
     /**
@@ -449,7 +459,7 @@ public class Box {
      */
     public final void registerNewUser(final String username, final String password, final RegisterNewUserListener listener) {
 
-        new Thread() {
+        BoxExecutor.getInstance().submit(BoxExecutor.LANE_INTERACTIVE, new Runnable() {
 
             @Override
             public void run() {
@@ -473,7 +483,7 @@ public class Box {
                     });
                 }
             }
-        }.start();
+        });
     }
 
     /**
@@ -487,7 +497,7 @@ public class Box {
      */
     public final void verifyRegistrationEmail(final String email, final VerifyRegistrationEmailListener listener) {
 
-        new Thread() {
+        BoxExecutor.getInstance().submit(BoxExecutor.LANE_INTERACTIVE, new Runnable() {
 
             @Override
             public void run() {
@@ -511,7 +521,7 @@ public class Box {
                     });
                 }
             }
-        }.start();
+        });
     }
 
     /**
@@ -526,16 +536,71 @@ public class Box {
      *            An array of strings. Possible values are {@link Box#PARAM_ONELEVEL}, {@link Box#PARAM_NOFILES}, {@link Box#PARAM_NOZIP},
      *            {@link Box#PARAM_SIMPLE}. Currently, {@link com.box.androidlib.Box#PARAM_NOZIP} is always included automatically.
      * @param listener
-     *            The callback that will run
+     *            The callback that will run. If the request is shared through {@link com.box.androidlib.Utils.RequestCoalescer}, the listeners of every
+     *            caller get the same DAOs, so copy them before modifying them.
      */
     public final void getAccountTree(final String authToken, final long folderId, final String[] params, final GetAccountTreeListener listener) {
+        getAccountTreeCancelable(authToken, folderId, params, false, listener);
+    }
 
-        new Thread() {
+    /**
+     * This method is used to get a tree representing all of the user's files and folders. Executes API action get_account_tree:
+     * {@link <a href="http://developers.box.net/w/page/12923929/ApiFunction_get_account_tree">http://developers.box.net/w/page/12923929/ApiFunction_get_account_tree</a>}
+     * 
+     * @param authToken
+     *            The auth token retrieved through {@link Box#getAuthToken(String, GetAuthTokenListener)}
+     * @param folderId
+     *            The ID of the root folder from which the tree begins. If this value is 0, the user's full account tree is returned.
+     * @param params
+     *            An array of strings. Possible values are {@link Box#PARAM_ONELEVEL}, {@link Box#PARAM_NOFILES}, {@link Box#PARAM_SIMPLE}.
+     *            {@link Box#PARAM_NOZIP} is added or removed according to zipped.
+     * @param zipped
+     *            Set to true to have Box API send the tree compressed. This reduces the size of large trees several-fold at the cost of some CPU time to
+     *            inflate them.
+     * @param listener
+     *            The callback that will run. If the request is shared through {@link com.box.androidlib.Utils.RequestCoalescer}, the listeners of every
+     *            caller get the same DAOs, so copy them before modifying them.
+     */
+    public final void getAccountTree(final String authToken, final long folderId, final String[] params, final boolean zipped,
+        final GetAccountTreeListener listener) {
+        getAccountTreeCancelable(authToken, folderId, params, zipped, listener);
+    }
+
+    /**
+     * This method is used to get a tree representing all of the user's files and folders. Executes API action get_account_tree:
+     * {@link <a href="http://developers.box.net/w/page/12923929/ApiFunction_get_account_tree">http://developers.box.net/w/page/12923929/ApiFunction_get_account_tree</a>}
+     * 
+     * Unlike {@link #getAccountTree(String, long, String[], boolean, GetAccountTreeListener)}, returns a Cancelable.
+     * 
+     * @param authToken
+     *            The auth token retrieved through {@link Box#getAuthToken(String, GetAuthTokenListener)}
+     * @param folderId
+     *            The ID of the root folder from which the tree begins. If this value is 0, the user's full account tree is returned.
+     * @param params
+     *            An array of strings. Possible values are {@link Box#PARAM_ONELEVEL}, {@link Box#PARAM_NOFILES}, {@link Box#PARAM_SIMPLE}.
+     *            {@link Box#PARAM_NOZIP} is added or removed according to zipped.
+     * @param zipped
+     *            Set to true to have Box API send the tree compressed. This reduces the size of large trees several-fold at the cost of some CPU time to
+     *            inflate them.
+     * @param listener
+     *            The callback that will run. Its DAOs may be shared with other callers, as for
+     *            {@link #getAccountTree(String, long, String[], boolean, GetAccountTreeListener)}. If the request is cancelled, onIOException
+     *            is called with an InterruptedIOException.
+     * @return A Cancelable that allows you to try to cancel the request. Identical requests shared through
+     *         {@link com.box.androidlib.Utils.RequestCoalescer} are not affected.
+     */
+    public final Cancelable getAccountTreeCancelable(final String authToken, final long folderId, final String[] params, final boolean zipped,
+        final GetAccountTreeListener listener) {
+
+        return BoxExecutor.getInstance().submit(BoxExecutor.LANE_INTERACTIVE, new Runnable() {
 
             @Override
             public void run() {
                 try {
-                    final AccountTreeResponseParser response = BoxSynchronous.getInstance(mApiKey).getAccountTree(authToken, folderId, params);
+                    final AccountTreeResponseParser response = BoxSynchronous.getInstance(mApiKey).getAccountTree(authToken, folderId, params, zipped);
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedIOException();
+                    }
                     mHandler.post(new Runnable() {
 
                         @Override
@@ -554,7 +619,19 @@ public class Box {
                     });
                 }
             }
-        }.start();
+        }, new Runnable() {
+
+            @Override
+            public void run() {
+                mHandler.post(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        listener.onIOException(new InterruptedIOException());
+                    }
+                });
+            }
+        });
     }
 
     /**
@@ -566,16 +643,41 @@ public class Box {
      * @param fileId
      *            The id of the file for with you want to obtain more information.
      * @param listener
-     *            The callback that will run
+     *            The callback that will run. If the request is shared through {@link com.box.androidlib.Utils.RequestCoalescer}, the listeners of every
+     *            caller get the same DAOs, so copy them before modifying them.
      */
     public final void getFileInfo(final String authToken, final long fileId, final GetFileInfoListener listener) {
+        getFileInfoCancelable(authToken, fileId, listener);
+    }
+
+    /**
+     * This method retrieves the details for a specified file. Executes API action get_file_info:
+     * {@link <a href="http://developers.box.net/w/page/12923934/ApiFunction_get_file_info">http://developers.box.net/w/page/12923934/ApiFunction_get_file_info</a>}
+     * 
+     * Unlike {@link #getFileInfo(String, long, GetFileInfoListener)}, returns a Cancelable.
+     * 
+     * @param authToken
+     *            The auth token retrieved through {@link Box#getAuthToken(String, GetAuthTokenListener)}
+     * @param fileId
+     *            The id of the file for with you want to obtain more information.
+     * @param listener
+     *            The callback that will run. Its DAOs may be shared with other callers, as for
+     *            {@link #getFileInfo(String, long, GetFileInfoListener)}. If the request is cancelled, onIOException
+     *            is called with an InterruptedIOException.
+     * @return A Cancelable that allows you to try to cancel the request. Identical requests shared through
+     *         {@link com.box.androidlib.Utils.RequestCoalescer} are not affected.
+     */
+    public final Cancelable getFileInfoCancelable(final String authToken, final long fileId, final GetFileInfoListener listener) {
 
-        new Thread() {
+        return BoxExecutor.getInstance().submit(BoxExecutor.LANE_INTERACTIVE, new Runnable() {
 
             @Override
             public void run() {
                 try {
                     final FileResponseParser response = BoxSynchronous.getInstance(mApiKey).getFileInfo(authToken, fileId);
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedIOException();
+                    }
                     mHandler.post(new Runnable() {
 
                         @Override
@@ -594,7 +696,193 @@ public class Box {
                     });
                 }
             }
-        }.start();
+        }, new Runnable() {
+
+            @Override
+            public void run() {
+                mHandler.post(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        listener.onIOException(new InterruptedIOException());
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Retrieve the details of several files. Makes a get_file_info request for each file, up to {@link BoxConfig#getMaxConcurrentRequests()} at the same
+     * time, and reports progress for the whole batch. See {@link BoxSynchronous#getFileInfo(String, long[], int, BatchListener, Handler)}.
+     * 
+     * @param authToken
+     *            The auth token retrieved through {@link Box#getAuthToken(String, GetAuthTokenListener)}
+     * @param fileIds
+     *            The ids of the files
+     * @param listener
+     *            The callback that will run. onComplete gets the response of each request, in the order of fileIds.
+     * @return A Cancelable that allows you to try to cancel the requests not completed yet
+     */
+    public final Cancelable getFileInfo(final String authToken, final long[] fileIds, final BatchListener<FileResponseParser> listener) {
+        return submitBatch(null, fileIds, GetFileInfoListener.STATUS_S_GET_FILE_INFO, new BatchCall<FileResponseParser>() {
+
+            @Override
+            public BatchResponseParser<FileResponseParser> execute() {
+                return BoxSynchronous.getInstance(mApiKey).getFileInfo(authToken, fileIds, BoxConfig.getInstance().getMaxConcurrentRequests(), listener,
+                    mHandler);
+            }
+        }, listener);
+    }
+
+    /**
+     * Retrieve the details of several folders, without their files. Makes a get_account_tree request for each folder, up to
+     * {@link BoxConfig#getMaxConcurrentRequests()} at the same time, and reports progress for the whole batch. See
+     * {@link BoxSynchronous#getFolderInfo(String, long[], int, BatchListener, Handler)}.
+     * 
+     * @param authToken
+     *            The auth token retrieved through {@link Box#getAuthToken(String, GetAuthTokenListener)}
+     * @param folderIds
+     *            The ids of the folders
+     * @param listener
+     *            The callback that will run. onComplete gets the response of each request, in the order of folderIds.
+     * @return A Cancelable that allows you to try to cancel the requests not completed yet
+     */
+    public final Cancelable getFolderInfo(final String authToken, final long[] folderIds, final BatchListener<AccountTreeResponseParser> listener) {
+        return submitBatch(null, folderIds, GetAccountTreeListener.STATUS_LISTING_OK, new BatchCall<AccountTreeResponseParser>() {
+
+            @Override
+            public BatchResponseParser<AccountTreeResponseParser> execute() {
+                return BoxSynchronous.getInstance(mApiKey).getFolderInfo(authToken, folderIds, BoxConfig.getInstance().getMaxConcurrentRequests(), listener,
+                    mHandler);
+            }
+        }, listener);
+    }
+
+    /**
+     * Delete several files and folders. Makes a delete request for each item, up to {@link BoxConfig#getMaxConcurrentRequests()} at the same time, and
+     * reports progress for the whole batch. See {@link BoxSynchronous#delete(String, String[], long[], int, BoxTree, BatchListener, Handler)}.
+     * 
+     * @param authToken
+     *            The auth token retrieved through {@link Box#getAuthToken(String, GetAuthTokenListener)}
+     * @param types
+     *            The type of each item. Set to {@link Box#TYPE_FILE} or {@link Box#TYPE_FOLDER}
+     * @param targetIds
+     *            The file id or folder id of each item
+     * @param tree
+     *            The tree the items are in, or null. Read when this is called, to find items inside folders of the batch, and changed on the UI thread in one
+     *            pass, before the listener runs.
+     * @param listener
+     *            The callback that will run. onComplete gets the response of each item, in the order of targetIds.
+     * @return A Cancelable that allows you to try to cancel the requests not completed yet
+     */
+    public final Cancelable delete(final String authToken, final String[] types, final long[] targetIds, final BoxTree tree,
+        final BatchListener<DefaultResponseParser> listener) {
+        final int[] sharedWith = BoxSynchronous.findDeletedWith(tree, types, targetIds);
+        return submitBatch(types, targetIds, DeleteListener.STATUS_S_DELETE_NODE, new BatchCall<DefaultResponseParser>() {
+
+            @Override
+            public BatchResponseParser<DefaultResponseParser> execute() {
+                return BoxSynchronous.getInstance(mApiKey).delete(authToken, types, targetIds, sharedWith, BoxConfig.getInstance().getMaxConcurrentRequests(),
+                    listener, mHandler);
+            }
+
+            @Override
+            public void onResponse(final BatchResponseParser<DefaultResponseParser> response) {
+                BoxSynchronous.applyToTree(tree, response, false, 0);
+            }
+        }, listener);
+    }
+
+    /**
+     * Move several files and folders into another folder. Makes a move request for each item, up to {@link BoxConfig#getMaxConcurrentRequests()} at the same
+     * time, and reports progress for the whole batch. See
+     * {@link BoxSynchronous#move(String, String[], long[], long, int, BoxTree, BatchListener, Handler)}.
+     * 
+     * @param authToken
+     *            The auth token retrieved through {@link Box#getAuthToken(String, GetAuthTokenListener)}
+     * @param types
+     *            The type of each item. Set to {@link Box#TYPE_FILE} or {@link Box#TYPE_FOLDER}
+     * @param targetIds
+     *            The file_id or folder_id of each item
+     * @param destinationId
+     *            The folder_id of the folder the items will be moved to
+     * @param tree
+     *            The tree to move the items in, or null. Changed on the UI thread in one pass, before the listener runs.
+     * @param listener
+     *            The callback that will run. onComplete gets the response of each item, in the order of targetIds.
+     * @return A Cancelable that allows you to try to cancel the requests not completed yet
+     */
+    public final Cancelable move(final String authToken, final String[] types, final long[] targetIds, final long destinationId, final BoxTree tree,
+        final BatchListener<DefaultResponseParser> listener) {
+        return submitBatch(types, targetIds, MoveListener.STATUS_S_MOVE_NODE, new BatchCall<DefaultResponseParser>() {
+
+            @Override
+            public BatchResponseParser<DefaultResponseParser> execute() {
+                return BoxSynchronous.getInstance(mApiKey).move(authToken, types, targetIds, destinationId,
+                    BoxConfig.getInstance().getMaxConcurrentRequests(), null, listener, mHandler);
+            }
+
+            @Override
+            public void onResponse(final BatchResponseParser<DefaultResponseParser> response) {
+                BoxSynchronous.applyToTree(tree, response, true, destinationId);
+            }
+        }, listener);
+    }
+
+    /**
+     * Copy several files into another folder. Makes a copy request for each item, up to {@link BoxConfig#getMaxConcurrentRequests()} at the same time, and
+     * reports progress for the whole batch. See {@link BoxSynchronous#copy(String, String[], long[], long, int, BatchListener, Handler)}.
+     * 
+     * @param authToken
+     *            The auth token retrieved through {@link Box#getAuthToken(String, GetAuthTokenListener)}
+     * @param types
+     *            The type of each item. Currently, this should only be set to {@link Box#TYPE_FILE}
+     * @param targetIds
+     *            The id of each item
+     * @param destinationId
+     *            The id of the folder to which the items will be copied
+     * @param listener
+     *            The callback that will run. onComplete gets the response of each item, in the order of targetIds.
+     * @return A Cancelable that allows you to try to cancel the requests not completed yet
+     */
+    public final Cancelable copy(final String authToken, final String[] types, final long[] targetIds, final long destinationId,
+        final BatchListener<DefaultResponseParser> listener) {
+        return submitBatch(types, targetIds, CopyListener.STATUS_S_COPY_NODE, new BatchCall<DefaultResponseParser>() {
+
+            @Override
+            public BatchResponseParser<DefaultResponseParser> execute() {
+                return BoxSynchronous.getInstance(mApiKey).copy(authToken, types, targetIds, destinationId,
+                    BoxConfig.getInstance().getMaxConcurrentRequests(), listener, mHandler);
+            }
+        }, listener);
+    }
+
+    /**
+     * Apply tags to several files and folders. Makes an add_to_tag request for each item, up to {@link BoxConfig#getMaxConcurrentRequests()} at the same
+     * time, and reports progress for the whole batch. See {@link BoxSynchronous#addToTag(String, String[], long[], String[], int, BatchListener, Handler)}.
+     * 
+     * @param authToken
+     *            The auth token retrieved through {@link Box#getAuthToken(String, GetAuthTokenListener)}
+     * @param types
+     *            The type of each item. Set to {@link Box#TYPE_FILE} or {@link Box#TYPE_FOLDER}
+     * @param targetIds
+     *            The file_id or folder_id of each item
+     * @param tagNames
+     *            Array of tag names, applied to every item
+     * @param listener
+     *            The callback that will run. onComplete gets the response of each item, in the order of targetIds.
+     * @return A Cancelable that allows you to try to cancel the requests not completed yet
+     */
+    public final Cancelable addToTag(final String authToken, final String[] types, final long[] targetIds, final String[] tagNames,
+        final BatchListener<DefaultResponseParser> listener) {
+        return submitBatch(types, targetIds, AddToTagListener.STATUS_ADDTOTAG_OK, new BatchCall<DefaultResponseParser>() {
+
+            @Override
+            public BatchResponseParser<DefaultResponseParser> execute() {
+                return BoxSynchronous.getInstance(mApiKey).addToTag(authToken, types, targetIds, tagNames,
+                    BoxConfig.getInstance().getMaxConcurrentRequests(), listener, mHandler);
+            }
+        }, listener);
     }
 
     /**
@@ -613,8 +901,30 @@ public class Box {
      */
     public final void createFolder(final String authToken, final long parentFolderId, final String folderName, final boolean share,
         final CreateFolderListener listener) {
+        createFolder(authToken, parentFolderId, folderName, share, null, listener);
+    }
+
+    /**
+     * Create a folder in a user's account, and add it to a tree the caller holds, so that the tree does not have to be fetched again.
+     * 
+     * @param authToken
+     *            The auth token retrieved through {@link Box#getAuthToken(String, GetAuthTokenListener)}
+     * @param parentFolderId
+     *            The folder_id of the folder in which the new folder will be created
+     * @param folderName
+     *            The name of the folder to be created
+     * @param share
+     *            Set to true to be allow the folder to be shared
+     * @param tree
+     *            The tree to add the folder to if it is created, or null. Changed on the UI thread, before the listener runs, and only if the parent folder
+     *            is in the tree.
+     * @param listener
+     *            The callback that will run
+     */
+    public final void createFolder(final String authToken, final long parentFolderId, final String folderName, final boolean share, final BoxTree tree,
+        final CreateFolderListener listener) {
 
-        new Thread() {
+        BoxExecutor.getInstance().submit(BoxExecutor.LANE_INTERACTIVE, new Runnable() {
 
             @Override
             public void run() {
@@ -624,6 +934,9 @@ public class Box {
 
                         @Override
                         public void run() {
+                            if (tree != null && response.getFolder() != null && CreateFolderListener.STATUS_CREATE_OK.equals(response.getStatus())) {
+                                tree.addFolder(parentFolderId, response.getFolder());
+                            }
                             listener.onComplete(response.getFolder(), response.getStatus());
                         }
                     });
@@ -638,7 +951,7 @@ public class Box {
                     });
                 }
             }
-        }.start();
+        });
     }
 
     /**
@@ -658,7 +971,7 @@ public class Box {
      */
     public final void copy(final String authToken, final String type, final long targetId, final long destinationId, final CopyListener listener) {
 
-        new Thread() {
+        BoxExecutor.getInstance().submit(BoxExecutor.LANE_INTERACTIVE, new Runnable() {
 
             @Override
             public void run() {
@@ -682,7 +995,7 @@ public class Box {
                     });
                 }
             }
-        }.start();
+        });
     }
 
     /**
@@ -699,8 +1012,26 @@ public class Box {
      *            The callback that will run
      */
     public final void delete(final String authToken, final String type, final long targetId, final DeleteListener listener) {
+        delete(authToken, type, targetId, null, listener);
+    }
+
+    /**
+     * Delete a file or folder, and remove it from a tree the caller holds, so that the tree does not have to be fetched again.
+     * 
+     * @param authToken
+     *            The auth token retrieved through {@link Box#getAuthToken(String, GetAuthTokenListener)}
+     * @param type
+     *            The type of item to be deleted. Set to {@link Box#TYPE_FILE} or {@link Box#TYPE_FOLDER}
+     * @param targetId
+     *            The file id or folder id to delete
+     * @param tree
+     *            The tree to remove the item from if it is deleted, or null. Changed on the UI thread, before the listener runs.
+     * @param listener
+     *            The callback that will run
+     */
+    public final void delete(final String authToken, final String type, final long targetId, final BoxTree tree, final DeleteListener listener) {
 
-        new Thread() {
+        BoxExecutor.getInstance().submit(BoxExecutor.LANE_INTERACTIVE, new Runnable() {
 
             @Override
             public void run() {
@@ -710,6 +1041,9 @@ public class Box {
 
                         @Override
                         public void run() {
+                            if (tree != null && DeleteListener.STATUS_S_DELETE_NODE.equals(status)) {
+                                tree.remove(type, targetId);
+                            }
                             listener.onComplete(status);
                         }
                     });
@@ -724,7 +1058,7 @@ public class Box {
                     });
                 }
             }
-        }.start();
+        });
     }
 
     /**
@@ -743,8 +1077,30 @@ public class Box {
      *            The callback that will run
      */
     public final void move(final String authToken, final String type, final long targetId, final long destinationId, final MoveListener listener) {
+        move(authToken, type, targetId, destinationId, null, listener);
+    }
+
+    /**
+     * Move a file or folder into another folder, and move it in a tree the caller holds, so that the tree does not have to be fetched again.
+     * 
+     * @param authToken
+     *            The auth token retrieved through {@link Box#getAuthToken(String, GetAuthTokenListener)}
+     * @param type
+     *            The type of item to be moved. Set to {@link Box#TYPE_FILE} or {@link Box#TYPE_FOLDER}
+     * @param targetId
+     *            The file_id or folder_id of the item to be moved
+     * @param destinationId
+     *            The folder_id of the folder in which the file will be moved to.
+     * @param tree
+     *            The tree to move the item in if it is moved, or null. Changed on the UI thread, before the listener runs. See
+     *            {@link BoxTree#move(String, long, long)}.
+     * @param listener
+     *            The callback that will run
+     */
+    public final void move(final String authToken, final String type, final long targetId, final long destinationId, final BoxTree tree,
+        final MoveListener listener) {
 
-        new Thread() {
+        BoxExecutor.getInstance().submit(BoxExecutor.LANE_INTERACTIVE, new Runnable() {
 
             @Override
             public void run() {
@@ -754,6 +1110,9 @@ public class Box {
 
                         @Override
                         public void run() {
+                            if (tree != null && MoveListener.STATUS_S_MOVE_NODE.equals(status)) {
+                                tree.move(type, targetId, destinationId);
+                            }
                             listener.onComplete(status);
                         }
                     });
@@ -768,7 +1127,7 @@ public class Box {
                     });
                 }
             }
-        }.start();
+        });
     }
 
     /**
@@ -787,8 +1146,29 @@ public class Box {
      *            The callback that will run
      */
     public final void rename(final String authToken, final String type, final long targetId, final String newName, final RenameListener listener) {
+        rename(authToken, type, targetId, newName, null, listener);
+    }
+
+    /**
+     * Rename a file or folder, and rename it in a tree the caller holds, so that the tree does not have to be fetched again.
+     * 
+     * @param authToken
+     *            The auth token retrieved through {@link Box#getAuthToken(String, GetAuthTokenListener)}
+     * @param type
+     *            The type of item to be renamed. Set to {@link Box#TYPE_FILE} or {@link Box#TYPE_FOLDER}
+     * @param targetId
+     *            The file_id or folder_id of the item to be renamed
+     * @param newName
+     *            The new name to be applied to the item
+     * @param tree
+     *            The tree to rename the item in if it is renamed, or null. Changed on the UI thread, before the listener runs.
+     * @param listener
+     *            The callback that will run
+     */
+    public final void rename(final String authToken, final String type, final long targetId, final String newName, final BoxTree tree,
+        final RenameListener listener) {
 
-        new Thread() {
+        BoxExecutor.getInstance().submit(BoxExecutor.LANE_INTERACTIVE, new Runnable() {
 
             @Override
             public void run() {
@@ -798,6 +1178,9 @@ public class Box {
 
                         @Override
                         public void run() {
+                            if (tree != null && RenameListener.STATUS_S_RENAME_NODE.equals(status)) {
+                                tree.rename(type, targetId, newName);
+                            }
                             listener.onComplete(status);
                         }
                     });
@@ -812,7 +1195,7 @@ public class Box {
                     });
                 }
             }
-        }.start();
+        });
     }
 
     /**
@@ -840,7 +1223,7 @@ public class Box {
     public final void search(final String authToken, final String query, final String sort, final int page, final int perPage, final String direction,
         final String[] params, final SearchListener listener) {
 
-        new Thread() {
+        BoxExecutor.getInstance().submit(BoxExecutor.LANE_INTERACTIVE, new Runnable() {
 
             @Override
             public void run() {
@@ -864,7 +1247,7 @@ public class Box {
                     });
                 }
             }
-        }.start();
+        });
     }
 
     /**
@@ -884,7 +1267,7 @@ public class Box {
      */
     public final void addToTag(final String authToken, final String type, final long targetId, final String[] tagNames, final AddToTagListener listener) {
 
-        new Thread() {
+        BoxExecutor.getInstance().submit(BoxExecutor.LANE_INTERACTIVE, new Runnable() {
 
             @Override
             public void run() {
@@ -908,7 +1291,7 @@ public class Box {
                     });
                 }
             }
-        }.start();
+        });
     }
 
     /**
@@ -926,7 +1309,7 @@ public class Box {
      */
     public final void getComments(final String authToken, final String type, final long targetId, final GetCommentsListener listener) {
 
-        new Thread() {
+        BoxExecutor.getInstance().submit(BoxExecutor.LANE_INTERACTIVE, new Runnable() {
 
             @Override
             public void run() {
@@ -950,7 +1333,7 @@ public class Box {
                     });
                 }
             }
-        }.start();
+        });
     }
 
     /**
@@ -970,7 +1353,7 @@ public class Box {
      */
     public final void addComment(final String authToken, final String type, final long targetId, final String message, final AddCommentListener listener) {
 
-        new Thread() {
+        BoxExecutor.getInstance().submit(BoxExecutor.LANE_INTERACTIVE, new Runnable() {
 
             @Override
             public void run() {
@@ -994,7 +1377,7 @@ public class Box {
                     });
                 }
             }
-        }.start();
+        });
     }
 
     /**
@@ -1010,7 +1393,7 @@ public class Box {
      */
     public final void deleteComment(final String authToken, final long commentId, final DeleteCommentListener listener) {
 
-        new Thread() {
+        BoxExecutor.getInstance().submit(BoxExecutor.LANE_INTERACTIVE, new Runnable() {
 
             @Override
             public void run() {
@@ -1034,7 +1417,7 @@ public class Box {
                     });
                 }
             }
-        }.start();
+        });
     }
 
     /**
@@ -1044,16 +1427,39 @@ public class Box {
      * @param authToken
      *            The auth token retrieved through {@link Box#getAuthToken(String, GetAuthTokenListener)}
      * @param listener
-     *            The callback that will run
+     *            The callback that will run. If the request is shared through {@link com.box.androidlib.Utils.RequestCoalescer}, the listeners of every
+     *            caller get the same DAOs, so copy them before modifying them.
      */
     public final void exportTags(final String authToken, final ExportTagsListener listener) {
+        exportTagsCancelable(authToken, listener);
+    }
+
+    /**
+     * Retrieve a list of tags in the user's account. Executes API action export_tags:
+     * {@link <a href="http://developers.box.net/w/page/12923927/ApiFunction_export_tags">http://developers.box.net/w/page/12923927/ApiFunction_export_tags</a>}
+     * 
+     * Unlike {@link #exportTags(String, ExportTagsListener)}, returns a Cancelable.
+     * 
+     * @param authToken
+     *            The auth token retrieved through {@link Box#getAuthToken(String, GetAuthTokenListener)}
+     * @param listener
+     *            The callback that will run. Its DAOs may be shared with other callers, as for
+     *            {@link #exportTags(String, ExportTagsListener)}. If the request is cancelled, onIOException
+     *            is called with an InterruptedIOException.
+     * @return A Cancelable that allows you to try to cancel the request. Identical requests shared through
+     *         {@link com.box.androidlib.Utils.RequestCoalescer} are not affected.
+     */
+    public final Cancelable exportTagsCancelable(final String authToken, final ExportTagsListener listener) {
 
-        new Thread() {
+        return BoxExecutor.getInstance().submit(BoxExecutor.LANE_INTERACTIVE, new Runnable() {
 
             @Override
             public void run() {
                 try {
                     final TagsResponseParser response = BoxSynchronous.getInstance(mApiKey).exportTags(authToken);
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedIOException();
+                    }
                     mHandler.post(new Runnable() {
 
                         @Override
@@ -1072,7 +1478,19 @@ public class Box {
                     });
                 }
             }
-        }.start();
+        }, new Runnable() {
+
+            @Override
+            public void run() {
+                mHandler.post(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        listener.onIOException(new InterruptedIOException());
+                    }
+                });
+            }
+        });
     }
 
     /**
@@ -1093,7 +1511,7 @@ public class Box {
     public final void getUpdates(final String authToken, final long beginTimeStamp, final long endTimeStamp, final String[] params,
         final GetUpdatesListener listener) {
 
-        new Thread() {
+        BoxExecutor.getInstance().submit(BoxExecutor.LANE_INTERACTIVE, new Runnable() {
 
             @Override
             public void run() {
@@ -1117,7 +1535,7 @@ public class Box {
                     });
                 }
             }
-        }.start();
+        });
     }
 
     /**
@@ -1135,7 +1553,7 @@ public class Box {
      */
     public final void toggleFolderEmail(final String authToken, final long folderId, final boolean enable, final ToggleFolderEmailListener listener) {
 
-        new Thread() {
+        BoxExecutor.getInstance().submit(BoxExecutor.LANE_INTERACTIVE, new Runnable() {
 
             @Override
             public void run() {
@@ -1159,7 +1577,7 @@ public class Box {
                     });
                 }
             }
-        }.start();
+        });
     }
 
     /**
@@ -1177,7 +1595,7 @@ public class Box {
      */
     public final void getVersions(final String authToken, final String type, final long targetId, final GetVersionsListener listener) {
 
-        new Thread() {
+        BoxExecutor.getInstance().submit(BoxExecutor.LANE_INTERACTIVE, new Runnable() {
 
             @Override
             public void run() {
@@ -1201,7 +1619,7 @@ public class Box {
                     });
                 }
             }
-        }.start();
+        });
     }
 
     /**
@@ -1217,7 +1635,7 @@ public class Box {
      */
     public final void makeCurrentVersion(final String authToken, final long versionId, final MakeCurrentVersionListener listener) {
 
-        new Thread() {
+        BoxExecutor.getInstance().submit(BoxExecutor.LANE_INTERACTIVE, new Runnable() {
 
             @Override
             public void run() {
@@ -1241,7 +1659,7 @@ public class Box {
                     });
                 }
             }
-        }.start();
+        });
     }
 
     /**
@@ -1262,7 +1680,7 @@ public class Box {
     public final void setDescription(final String authToken, final String type, final long targetId, final String description,
         final SetDescriptionListener listener) {
 
-        new Thread() {
+        BoxExecutor.getInstance().submit(BoxExecutor.LANE_INTERACTIVE, new Runnable() {
 
             @Override
             public void run() {
@@ -1286,7 +1704,7 @@ public class Box {
                     });
                 }
             }
-        }.start();
+        });
     }
 
     /**
@@ -1311,7 +1729,7 @@ public class Box {
     public final void publicShare(final String authToken, final String type, final long targetId, final String password, final String shareMsg,
         final String[] emails, final PublicShareListener listener) {
 
-        new Thread() {
+        BoxExecutor.getInstance().submit(BoxExecutor.LANE_INTERACTIVE, new Runnable() {
 
             @Override
             public void run() {
@@ -1336,7 +1754,7 @@ public class Box {
                     });
                 }
             }
-        }.start();
+        });
     }
 
     /**
@@ -1354,7 +1772,7 @@ public class Box {
      */
     public final void publicUnshare(final String authToken, final String type, final long targetId, final PublicUnshareListener listener) {
 
-        new Thread() {
+        BoxExecutor.getInstance().submit(BoxExecutor.LANE_INTERACTIVE, new Runnable() {
 
             @Override
             public void run() {
@@ -1378,7 +1796,7 @@ public class Box {
                     });
                 }
             }
-        }.start();
+        });
     }
 
     /**
@@ -1403,7 +1821,7 @@ public class Box {
     public final void privateShare(final String authToken, final String type, final long targetId, final String message, final String[] emails,
         final boolean notify, final PrivateShareListener listener) {
 
-        new Thread() {
+        BoxExecutor.getInstance().submit(BoxExecutor.LANE_INTERACTIVE, new Runnable() {
 
             @Override
             public void run() {
@@ -1427,7 +1845,7 @@ public class Box {
                     });
                 }
             }
-        }.start();
+        });
     }
 
     /**
@@ -1458,7 +1876,7 @@ public class Box {
     public void inviteCollaborators(final String authToken, final String type, final long targetId, final long[] userIds, final String[] emails,
         final String itemRoleName, final boolean resendInvite, final boolean noEmail, final String[] params, final InviteCollaboratorsListener listener) {
 
-        new Thread() {
+        BoxExecutor.getInstance().submit(BoxExecutor.LANE_INTERACTIVE, new Runnable() {
 
             @Override
             public void run() {
@@ -1483,7 +1901,7 @@ public class Box {
                     });
                 }
             }
-        }.start();
+        });
     }
 
     /**
@@ -1500,7 +1918,7 @@ public class Box {
      *            The callback that will run
      */
     public void getCollaborations(final String authToken, final String type, final long targetId, final GetCollaborationsListener listener) {
-        new Thread() {
+        BoxExecutor.getInstance().submit(BoxExecutor.LANE_INTERACTIVE, new Runnable() {
 
             @Override
             public void run() {
@@ -1524,7 +1942,7 @@ public class Box {
                     });
                 }
             }
-        }.start();
+        });
     }
 
     /**
@@ -1548,7 +1966,7 @@ public class Box {
     public final void addToMyBox(final String authToken, final Long fileId, final String publicName, final long folderId, final String[] tags,
         final AddToMyBoxListener listener) {
 
-        new Thread() {
+        BoxExecutor.getInstance().submit(BoxExecutor.LANE_INTERACTIVE, new Runnable() {
 
             @Override
             public void run() {
@@ -1572,7 +1990,7 @@ public class Box {
                     });
                 }
             }
-        }.start();
+        });
     }
 
     /**
@@ -1598,7 +2016,7 @@ public class Box {
     public final Cancelable download(final String authToken, final long fileId, final File destinationFile, final Long versionId,
         final FileDownloadListener listener) {
 
-        final Thread thread = new Thread() {
+        final Runnable task = new Runnable() {
 
             @Override
             public void run() {
@@ -1624,20 +2042,143 @@ public class Box {
                 }
             }
         };
-        thread.start();
+        return BoxExecutor.getInstance().submit(BoxExecutor.LANE_TRANSFER, task, new Runnable() {
+
+            @Override
+            public void run() {
+                mHandler.post(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        listener.onComplete(FileDownloadListener.STATUS_DOWNLOAD_CANCELLED);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Download a file, resuming a previous attempt if possible. Uses the download API as described here:
+     * {@link <a href="http://developers.box.net/w/page/12923951/ApiFunction_Upload-and-Download">http://developers.box.net/w/page/12923951/ApiFunction_Upload-and-Download</a>}
+     * 
+     * This method returns a Cancelable which you can use to cancel a download in progress. A cancelled or failed download keeps its partial data, and calling
+     * this method again with the same file and destination continues from where it stopped. See
+     * {@link BoxSynchronous#download(String, BoxFile, File, FileDownloadListener, Handler)} for details.
+     * 
+     * @param authToken
+     *            The auth token retrieved through {@link Box#getAuthToken(String, GetAuthTokenListener)}
+     * @param file
+     *            The file to be downloaded, as obtained from getAccountTree or getFileInfo
+     * @param destinationFile
+     *            A java.io.File resource to which the downloaded file will be written. Ensure that this points to a valid file-path that can be written to.
+     * @param listener
+     *            A file download listener. You will likely be interested in callbacks
+     *            {@link com.box.androidlib.ResponseListeners.FileDownloadListener#onProgress(long)} and
+     *            {@link com.box.androidlib.ResponseListeners.FileDownloadListener#onComplete(String)}
+     * @return A Cancelable that allows you to try to cancel a download in progress.
+     */
+    public final Cancelable download(final String authToken, final BoxFile file, final File destinationFile, final FileDownloadListener listener) {
+
+        final Runnable task = new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    final DefaultResponseParser response = BoxSynchronous.getInstance(mApiKey).download(authToken, file, destinationFile, listener, mHandler);
+                    mHandler.post(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            listener.onComplete(response.getStatus());
+                        }
+                    });
+                }
+                catch (final IOException e) {
+                    mHandler.post(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            listener.onIOException(e);
+                        }
+                    });
+                }
+            }
+        };
+        return BoxExecutor.getInstance().submit(BoxExecutor.LANE_TRANSFER, task, new Runnable() {
 
-        Cancelable cancelable = new Cancelable() {
+            @Override
+            public void run() {
+                mHandler.post(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        listener.onComplete(FileDownloadListener.STATUS_DOWNLOAD_CANCELLED);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Download a large file over several connections at once. Uses the download API as described here:
+     * {@link <a href="http://developers.box.net/w/page/12923951/ApiFunction_Upload-and-Download">http://developers.box.net/w/page/12923951/ApiFunction_Upload-and-Download</a>}
+     * 
+     * This method returns a Cancelable which you can use to cancel a download in progress. See
+     * {@link BoxSynchronous#downloadSegmented(String, BoxFile, File, FileDownloadListener, Handler)} for details.
+     * 
+     * @param authToken
+     *            The auth token retrieved through {@link Box#getAuthToken(String, GetAuthTokenListener)}
+     * @param file
+     *            The file to be downloaded, as obtained from getAccountTree or getFileInfo
+     * @param destinationFile
+     *            A java.io.File resource to which the downloaded file will be written. Ensure that this points to a valid file-path that can be written to.
+     * @param listener
+     *            A file download listener. You will likely be interested in callbacks
+     *            {@link com.box.androidlib.ResponseListeners.FileDownloadListener#onProgress(long)} and
+     *            {@link com.box.androidlib.ResponseListeners.FileDownloadListener#onComplete(String)}
+     * @return A Cancelable that allows you to try to cancel a download in progress.
+     */
+    public final Cancelable downloadSegmented(final String authToken, final BoxFile file, final File destinationFile, final FileDownloadListener listener) {
+
+        final Runnable task = new Runnable() {
 
             @Override
-            public boolean cancel() {
-                if (thread.isAlive()) {
-                    thread.interrupt();
-                    return true;
+            public void run() {
+                try {
+                    final DefaultResponseParser response = BoxSynchronous.getInstance(mApiKey).downloadSegmented(authToken, file, destinationFile, listener,
+                        mHandler);
+                    mHandler.post(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            listener.onComplete(response.getStatus());
+                        }
+                    });
+                }
+                catch (final IOException e) {
+                    mHandler.post(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            listener.onIOException(e);
+                        }
+                    });
                 }
-                return false;
             }
         };
-        return cancelable;
+        return BoxExecutor.getInstance().submit(BoxExecutor.LANE_TRANSFER, task, new Runnable() {
+
+            @Override
+            public void run() {
+                mHandler.post(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        listener.onComplete(FileDownloadListener.STATUS_DOWNLOAD_CANCELLED);
+                    }
+                });
+            }
+        });
     }
 
     /**
@@ -1666,7 +2207,7 @@ public class Box {
     public final Cancelable upload(final String authToken, final String action, final File file, final String filename, final long destinationId,
         final FileUploadListener listener) {
 
-        final Thread thread = new Thread() {
+        final Runnable task = new Runnable() {
 
             @Override
             public void run() {
@@ -1710,20 +2251,108 @@ public class Box {
                 }
             }
         };
-        thread.start();
+        return BoxExecutor.getInstance().submit(BoxExecutor.LANE_TRANSFER, task, new Runnable() {
 
-        Cancelable cancelable = new Cancelable() {
+            @Override
+            public void run() {
+                mHandler.post(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        listener.onComplete(null, FileUploadListener.STATUS_CANCELLED);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Upload a file from the device to a folder at Box so that the upload can be resumed. Uses the upload API as described here:
+     * {@link <a href="http://developers.box.net/w/page/12923951/ApiFunction_Upload-and-Download">http://developers.box.net/w/page/12923951/ApiFunction_Upload-and-Download</a>}
+     * 
+     * This method returns a Cancelable which you can use to cancel an upload in progress. A cancelled or failed upload can be completed by calling this
+     * method again with the same arguments, also after a process restart, without sending the file twice if it already reached Box. See
+     * {@link BoxSynchronous#uploadResumable(String, String, File, String, long, File, FileUploadListener, Handler)} for details.
+     * 
+     * @param authToken
+     *            The auth token retrieved through {@link Box#getAuthToken(String, GetAuthTokenListener)}
+     * @param action
+     *            Set to {@link Box#UPLOAD_ACTION_UPLOAD} or {@link Box#UPLOAD_ACTION_OVERWRITE} or {@link Box#UPLOAD_ACTION_NEW_COPY}
+     * @param file
+     *            A File resource pointing to the file you wish to upload. Make sure File.isFile() and File.canRead() are true for this resource.
+     * @param filename
+     *            The desired filename on Box after upload (just the file name, do not include the path)
+     * @param destinationId
+     *            If action is {@link Box#UPLOAD_ACTION_UPLOAD}, then this is the folder id where the file will uploaded to. If action is
+     *            {@link Box#UPLOAD_ACTION_OVERWRITE} or {@link Box#UPLOAD_ACTION_NEW_COPY}, then this is the file_id that is being overwrriten, or copied.
+     * @param journalDirectory
+     *            Directory in which upload journals are kept. Use the same directory for every upload, such as a directory under Context.getFilesDir().
+     * @param listener
+     *            A file upload listener. You will likely be interested in callbacks
+     *            {@link com.box.androidlib.ResponseListeners.FileUploadListener#onProgress(long)} and
+     *            {@link com.box.androidlib.ResponseListeners.FileUploadListener#onComplete(com.box.androidlib.DAO.BoxFile, String)}
+     * @return A Cancelable that allows you to try to cancel an upload in progress.
+     */
+    public final Cancelable uploadResumable(final String authToken, final String action, final File file, final String filename,
+        final long destinationId, final File journalDirectory, final FileUploadListener listener) {
+
+        final Runnable task = new Runnable() {
 
             @Override
-            public boolean cancel() {
-                if (thread.isAlive()) {
-                    thread.interrupt();
-                    return true;
+            public void run() {
+                try {
+                    final FileResponseParser response = BoxSynchronous.getInstance(mApiKey).uploadResumable(authToken, action, file, filename, destinationId,
+                        journalDirectory, listener, mHandler);
+                    mHandler.post(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            listener.onComplete(response.getFile(), response.getStatus());
+                        }
+                    });
+                }
+                catch (final FileNotFoundException e) {
+                    mHandler.post(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            listener.onFileNotFoundException(e);
+                        }
+                    });
+                }
+                catch (final MalformedURLException e) {
+                    mHandler.post(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            listener.onMalformedURLException(e);
+                        }
+                    });
+                }
+                catch (final IOException e) {
+                    mHandler.post(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            listener.onIOException(e);
+                        }
+                    });
                 }
-                return false;
             }
         };
-        return cancelable;
+        return BoxExecutor.getInstance().submit(BoxExecutor.LANE_TRANSFER, task, new Runnable() {
+
+            @Override
+            public void run() {
+                mHandler.post(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        listener.onComplete(null, FileUploadListener.STATUS_CANCELLED);
+                    }
+                });
+            }
+        });
     }
 
     /**
@@ -1752,7 +2381,7 @@ public class Box {
     public final Cancelable upload(final String authToken, final String action, final InputStream sourceInputStream, final String filename,
         final long destinationId, final FileUploadListener listener) {
 
-        final Thread thread = new Thread() {
+        final Runnable task = new Runnable() {
 
             @Override
             public void run() {
@@ -1796,20 +2425,19 @@ public class Box {
                 }
             }
         };
-        thread.start();
-
-        Cancelable cancelable = new Cancelable() {
+        return BoxExecutor.getInstance().submit(BoxExecutor.LANE_TRANSFER, task, new Runnable() {
 
             @Override
-            public boolean cancel() {
-                if (thread.isAlive()) {
-                    thread.interrupt();
-                    return true;
-                }
-                return false;
+            public void run() {
+                mHandler.post(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        listener.onComplete(null, FileUploadListener.STATUS_CANCELLED);
+                    }
+                });
             }
-        };
-        return cancelable;
+        });
     }
 
     /**
@@ -1835,4 +2463,80 @@ public class Box {
         final FileUploadListener listener) {
         upload(authToken, action, new File(absoluteFilePath), absoluteFilePath.substring(absoluteFilePath.lastIndexOf("/") + 1), destinationId, listener);
     }
+
+    /**
+     * A batch of requests made through {@link BoxSynchronous}.
+     * 
+     * @param <T>
+     *            The response parser of each request
+     */
+    private abstract static class BatchCall<T extends DefaultResponseParser> {
+
+        /**
+         * Make the requests.
+         * 
+         * @return the response of each request
+         */
+        public abstract BatchResponseParser<T> execute();
+
+        /**
+         * Called on the UI thread with the response, before the listener. Override to change a tree the caller holds.
+         * 
+         * @param response
+         *            the response of each request
+         */
+        public void onResponse(final BatchResponseParser<T> response) {
+        }
+    }
+
+    /**
+     * Run a batch of requests on the interactive lane and report its outcome to a listener.
+     * 
+     * @param <T>
+     *            The response parser of each request
+     * @param types
+     *            The type of each id, or null
+     * @param ids
+     *            The ids of the batch
+     * @param successStatus
+     *            The status of a successful request
+     * @param call
+     *            Makes the requests
+     * @param listener
+     *            The callback that will run
+     * @return A Cancelable that allows you to try to cancel the requests not completed yet
+     */
+    private <T extends DefaultResponseParser> Cancelable submitBatch(final String[] types, final long[] ids, final String successStatus,
+        final BatchCall<T> call, final BatchListener<T> listener) {
+
+        return BoxExecutor.getInstance().submit(BoxExecutor.LANE_INTERACTIVE, new Runnable() {
+
+            @Override
+            public void run() {
+                final BatchResponseParser<T> response = call.execute();
+                mHandler.post(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        call.onResponse(response);
+                        listener.onComplete(response, response.getStatus());
+                    }
+                });
+            }
+        }, new Runnable() {
+
+            @Override
+            public void run() {
+                final BatchResponseParser<T> response = new BatchResponseParser<T>(types, ids, successStatus);
+                response.setStatus(BatchListener.STATUS_BATCH_CANCELLED);
+                mHandler.post(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        listener.onComplete(response, response.getStatus());
+                    }
+                });
+            }
+        });
+    }
 }
@@ -11,14 +11,16 @@
  ******************************************************************************/
 package com.box.androidlib;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.HttpURLConnection;
+import java.io.InterruptedIOException;
 import java.net.MalformedURLException;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -26,24 +28,49 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.xml.parsers.FactoryConfigurationError;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParserFactory;
 
+import org.apache.http.HttpStatus;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
 
 import android.net.Uri;
 import android.os.Handler;
+import android.os.SystemClock;
 
+import com.box.androidlib.DAO.BoxFile;
+import com.box.androidlib.DAO.BoxFolder;
+import com.box.androidlib.DAO.BoxTree;
 import com.box.androidlib.FileTransfer.BoxFileDownload;
 import com.box.androidlib.FileTransfer.BoxFileUpload;
+import com.box.androidlib.FileTransfer.BoxResumableFileUpload;
+import com.box.androidlib.FileTransfer.BoxSegmentedFileDownload;
+import com.box.androidlib.ResponseListeners.AddToTagListener;
+import com.box.androidlib.ResponseListeners.BatchListener;
+import com.box.androidlib.ResponseListeners.CopyListener;
+import com.box.androidlib.ResponseListeners.CreateFolderListener;
+import com.box.androidlib.ResponseListeners.DeleteListener;
 import com.box.androidlib.ResponseListeners.FileDownloadListener;
 import com.box.androidlib.ResponseListeners.FileUploadListener;
+import com.box.androidlib.ResponseListeners.GetAccountTreeListener;
+import com.box.androidlib.ResponseListeners.GetCollaborationsListener;
+import com.box.androidlib.ResponseListeners.GetCommentsListener;
+import com.box.androidlib.ResponseListeners.GetFileInfoListener;
+import com.box.androidlib.ResponseListeners.GetVersionsListener;
+import com.box.androidlib.ResponseListeners.MoveListener;
+import com.box.androidlib.ResponseListeners.RenameListener;
 import com.box.androidlib.ResponseListeners.ResponseListener;
+import com.box.androidlib.ResponseListeners.SetDescriptionListener;
 import com.box.androidlib.ResponseParsers.AccountTreeResponseParser;
+import com.box.androidlib.ResponseParsers.AccountTreeVisitor;
+import com.box.androidlib.ResponseParsers.BatchResponseParser;
 import com.box.androidlib.ResponseParsers.CollaborationsResponseParser;
 import com.box.androidlib.ResponseParsers.CommentResponseParser;
 import com.box.androidlib.ResponseParsers.CommentsResponseParser;
@@ -52,15 +79,25 @@ import com.box.androidlib.ResponseParsers.FileResponseParser;
 import com.box.androidlib.ResponseParsers.FolderResponseParser;
 import com.box.androidlib.ResponseParsers.PublicShareResponseParser;
 import com.box.androidlib.ResponseParsers.SearchResponseParser;
+import com.box.androidlib.ResponseParsers.StreamingAccountTreeResponseParser;
 import com.box.androidlib.ResponseParsers.TagsResponseParser;
 import com.box.androidlib.ResponseParsers.TicketResponseParser;
 import com.box.androidlib.ResponseParsers.ToggleFolderEmailResponseParser;
 import com.box.androidlib.ResponseParsers.UpdatesResponseParser;
+import com.box.androidlib.ResponseParsers.UploadResponseParser;
 import com.box.androidlib.ResponseParsers.UserResponseParser;
 import com.box.androidlib.ResponseParsers.VersionsResponseParser;
+import com.box.androidlib.Transport.BoxHttpRequest;
+import com.box.androidlib.Transport.BoxHttpResponse;
 import com.box.androidlib.Utils.BoxConfig;
 import com.box.androidlib.Utils.BoxUriBuilder;
 import com.box.androidlib.Utils.DevUtils;
+import com.box.androidlib.Utils.LongArrayList;
+import com.box.androidlib.Utils.LongHashMap;
+import com.box.androidlib.Utils.MetadataCache;
+import com.box.androidlib.Utils.ParallelRunner;
+import com.box.androidlib.Utils.RequestCoalescer;
+import com.box.androidlib.Utils.ZippedTreeInputStream;
 
 /**
  * Use this class to execute requests <b>synchronously</b> against the Box REST API. Full details about the Box API can be found at
@@ -73,6 +110,10 @@ import com.box.androidlib.Utils.DevUtils;
  */
 public class BoxSynchronous {
 
+    /**
+     * The minimum time in milliseconds that must pass between each call to BatchListener.onProgress.
+     */
+    private static final int ON_PROGRESS_UPDATE_THRESHOLD = 100;
     /**
      * Singleton instance of BoxSynchronous.
      */
@@ -248,8 +289,132 @@ public class BoxSynchronous {
      *             Can be thrown if there is no connection, or if some other connection problem exists.
      */
     public final AccountTreeResponseParser getAccountTree(final String authToken, final long folderId, final String[] params) throws IOException {
+        return getAccountTree(authToken, folderId, params, false);
+    }
+
+    /**
+     * This method is used to get a tree representing all of the user's files and folders. Executes API action get_account_tree:
+     * {@link <a href="http://developers.box.net/w/page/12923929/ApiFunction_get_account_tree"> http://developers.box.net/w/page/12923929/ApiFunction_get_account_tree</a>}
+     * 
+     * @param authToken
+     *            The auth token retrieved through {@link BoxSynchronous#getAuthToken(String)}
+     * @param folderId
+     *            The ID of the root folder from which the tree begins. If this value is 0, the user's full account tree is returned.
+     * @param params
+     *            An array of strings. Possible values are {@link com.box.androidlib.Box#PARAM_ONELEVEL}, {@link com.box.androidlib.Box#PARAM_NOFILES},
+     *            {@link com.box.androidlib.Box#PARAM_SIMPLE}. {@link com.box.androidlib.Box#PARAM_NOZIP} is added or removed according to zipped.
+     * @param zipped
+     *            Set to true to have Box API send the tree compressed. This reduces the size of large trees several-fold at the cost of some CPU time to
+     *            inflate them, which happens while the response is being parsed.
+     * @return the response parser used to capture the data of interest from the response. See the doc for the specific parser type returned to see what data is
+     *         now available. All parsers implement getStatus() at a minimum. If the request was shared through
+     *         {@link BoxConfig#setRequestCoalescer(RequestCoalescer)}, other callers get the same parser and DAOs, so copy them before modifying them.
+     * @throws IOException
+     *             Can be thrown if there is no connection, or if some other connection problem exists.
+     */
+    public final AccountTreeResponseParser getAccountTree(final String authToken, final long folderId, final String[] params, final boolean zipped)
+        throws IOException {
+        // Zipped and unzipped trees are the same once inflated, so they share a cache entry and a request in flight.
+        final String key = getAccountTreeKey(authToken, folderId, params);
+        return coalesce(key, new RequestCoalescer.Request<AccountTreeResponseParser>() {
+
+            @Override
+            public AccountTreeResponseParser execute() throws IOException {
+                final AccountTreeResponseParser parser = new AccountTreeResponseParser();
+                cachedSaxRequest(parser, getAccountTreeUri(authToken, folderId, params, zipped), zipped, MetadataCache.ACTION_GET_ACCOUNT_TREE, key,
+                    GetAccountTreeListener.STATUS_LISTING_OK, null, 0);
+                return parser;
+            }
+        });
+    }
+
+    /**
+     * Streaming version of {@link #getAccountTree(String, long, String[])}. Instead of building the tree, folders and files are reported to the visitor as they
+     * are parsed, so that very large trees can be indexed or persisted with constant memory. Executes API action get_account_tree:
+     * {@link <a href="http://developers.box.net/w/page/12923929/ApiFunction_get_account_tree"> http://developers.box.net/w/page/12923929/ApiFunction_get_account_tree</a>}
+     * 
+     * @param authToken
+     *            The auth token retrieved through {@link BoxSynchronous#getAuthToken(String)}
+     * @param folderId
+     *            The ID of the root folder from which the tree begins. If this value is 0, the user's full account tree is returned.
+     * @param params
+     *            An array of strings. Possible values are {@link com.box.androidlib.Box#PARAM_ONELEVEL}, {@link com.box.androidlib.Box#PARAM_NOFILES},
+     *            {@link com.box.androidlib.Box#PARAM_NOZIP}, {@link com.box.androidlib.Box#PARAM_SIMPLE}. Currently, {@link com.box.androidlib.Box#PARAM_NOZIP}
+     *            is always included automatically.
+     * @param visitor
+     *            Receives the folders and files of the tree. Called on the current thread, before this method returns.
+     * @return the response parser used to capture the data of interest from the response. Use getStatus() to check whether the whole tree was received.
+     * @throws IOException
+     *             Can be thrown if there is no connection, or if some other connection problem exists.
+     */
+    public final StreamingAccountTreeResponseParser getAccountTree(final String authToken, final long folderId, final String[] params,
+        final AccountTreeVisitor visitor) throws IOException {
+        return getAccountTree(authToken, folderId, params, visitor, false);
+    }
+
+    /**
+     * Streaming version of {@link #getAccountTree(String, long, String[], boolean)}. Instead of building the tree, folders and files are reported to the
+     * visitor as they are parsed, so that very large trees can be indexed or persisted with constant memory. Executes API action get_account_tree:
+     * {@link <a href="http://developers.box.net/w/page/12923929/ApiFunction_get_account_tree"> http://developers.box.net/w/page/12923929/ApiFunction_get_account_tree</a>}
+     * 
+     * @param authToken
+     *            The auth token retrieved through {@link BoxSynchronous#getAuthToken(String)}
+     * @param folderId
+     *            The ID of the root folder from which the tree begins. If this value is 0, the user's full account tree is returned.
+     * @param params
+     *            An array of strings. Possible values are {@link com.box.androidlib.Box#PARAM_ONELEVEL}, {@link com.box.androidlib.Box#PARAM_NOFILES},
+     *            {@link com.box.androidlib.Box#PARAM_SIMPLE}. {@link com.box.androidlib.Box#PARAM_NOZIP} is added or removed according to zipped.
+     * @param visitor
+     *            Receives the folders and files of the tree. Called on the current thread, before this method returns.
+     * @param zipped
+     *            Set to true to have Box API send the tree compressed. The tree is inflated while it is being parsed.
+     * @return the response parser used to capture the data of interest from the response. Use getStatus() to check whether the whole tree was received.
+     * @throws IOException
+     *             Can be thrown if there is no connection, or if some other connection problem exists.
+     */
+    public final StreamingAccountTreeResponseParser getAccountTree(final String authToken, final long folderId, final String[] params,
+        final AccountTreeVisitor visitor, final boolean zipped) throws IOException {
+        final StreamingAccountTreeResponseParser parser = new StreamingAccountTreeResponseParser(visitor);
+        saxRequest(parser, getAccountTreeUri(authToken, folderId, params, zipped), zipped, null);
+        return parser;
+    }
+
+    /**
+     * Get the key of a get_account_tree request in the cache and in the request coalescer. The params are sorted, so that requests that differ only in their
+     * order share the key. The key is the same for zipped and unzipped trees.
+     * 
+     * @param authToken
+     *            The auth token
+     * @param folderId
+     *            The ID of the root folder from which the tree begins
+     * @param params
+     *            get_account_tree params, may be null
+     * @return the key
+     */
+    private String getAccountTreeKey(final String authToken, final long folderId, final String[] params) {
+        final TreeSet<String> sorted = new TreeSet<String>();
+        if (params != null) {
+            sorted.addAll(Arrays.asList(params));
+        }
+        sorted.remove(Box.PARAM_NOZIP);
+        return getAccountTreeUri(authToken, folderId, sorted.toArray(new String[sorted.size()]), false).toString();
+    }
 
-        // nozip should always be included
+    /**
+     * Build the URI of a get_account_tree request.
+     * 
+     * @param authToken
+     *            The auth token
+     * @param folderId
+     *            The ID of the root folder from which the tree begins
+     * @param params
+     *            get_account_tree params, may be null
+     * @param zipped
+     *            whether the tree should be sent zipped
+     * @return the request URI
+     */
+    private Uri getAccountTreeUri(final String authToken, final long folderId, final String[] params, final boolean zipped) {
+        // nozip is included unless the zipped tree was asked for
         final ArrayList<String> paramsList;
         if (params == null) {
             paramsList = new ArrayList<String>();
@@ -257,18 +422,19 @@ public class BoxSynchronous {
         else {
             paramsList = new ArrayList<String>(Arrays.asList(params));
         }
-        if (!paramsList.contains(Box.PARAM_NOZIP)) {
+        if (zipped) {
+            paramsList.remove(Box.PARAM_NOZIP);
+        }
+        else if (!paramsList.contains(Box.PARAM_NOZIP)) {
             paramsList.add(Box.PARAM_NOZIP);
         }
 
-        final AccountTreeResponseParser parser = new AccountTreeResponseParser();
         final Uri.Builder builder = BoxUriBuilder.getBuilder(mApiKey, authToken, "get_account_tree");
         builder.appendQueryParameter("folder_id", String.valueOf(folderId));
         for (int i = 0; i < paramsList.size(); i++) {
             builder.appendQueryParameter("params[" + i + "]", paramsList.get(i));
         }
-        saxRequest(parser, builder.build());
-        return parser;
+        return builder.build();
     }
 
     /**
@@ -280,14 +446,111 @@ public class BoxSynchronous {
      * @param fileId
      *            The id of the file for with you want to obtain more information.
      * @return the response parser used to capture the data of interest from the response. See the doc for the specific parser type returned to see what data is
-     *         now available. All parsers implement getStatus() at a minimum.
+     *         now available. All parsers implement getStatus() at a minimum. If the request was shared through
+     *         {@link BoxConfig#setRequestCoalescer(RequestCoalescer)}, other callers get the same parser and DAOs, so copy them before modifying them.
      * @throws IOException
      *             Can be thrown if there is no connection, or if some other connection problem exists.
      */
     public final FileResponseParser getFileInfo(final String authToken, final long fileId) throws IOException {
-        final FileResponseParser parser = new FileResponseParser();
-        saxRequest(parser, BoxUriBuilder.getBuilder(mApiKey, authToken, "get_file_info").appendQueryParameter("file_id", String.valueOf(fileId)).build());
-        return parser;
+        final Uri uri = BoxUriBuilder.getBuilder(mApiKey, authToken, "get_file_info").appendQueryParameter("file_id", String.valueOf(fileId)).build();
+        return coalesce(uri.toString(), new RequestCoalescer.Request<FileResponseParser>() {
+
+            @Override
+            public FileResponseParser execute() throws IOException {
+                final FileResponseParser parser = new FileResponseParser();
+                cachedSaxRequest(parser, uri, false, MetadataCache.ACTION_GET_FILE_INFO, uri.toString(), GetFileInfoListener.STATUS_S_GET_FILE_INFO,
+                    Box.TYPE_FILE, fileId);
+                return parser;
+            }
+        });
+    }
+
+    /**
+     * Retrieve the details of several files. Makes a get_file_info request for each file, up to {@link BoxConfig#getMaxConcurrentRequests()} at the same
+     * time.
+     * 
+     * @param authToken
+     *            The auth token retrieved through {@link BoxSynchronous#getAuthToken(String)}
+     * @param fileIds
+     *            The ids of the files
+     * @return the response of each request, in the order of fileIds. See {@link BatchResponseParser}.
+     */
+    public final BatchResponseParser<FileResponseParser> getFileInfo(final String authToken, final long[] fileIds) {
+        return getFileInfo(authToken, fileIds, BoxConfig.getInstance().getMaxConcurrentRequests(), null, null);
+    }
+
+    /**
+     * Retrieve the details of several files. Makes a get_file_info request for each file, up to maxConcurrency at the same time. A file id given more than
+     * once is requested once. If the thread is interrupted, requests in progress are interrupted, the rest are not made, and the status of the response is
+     * {@link BatchListener#STATUS_BATCH_CANCELLED}.
+     * 
+     * @param authToken
+     *            The auth token retrieved through {@link BoxSynchronous#getAuthToken(String)}
+     * @param fileIds
+     *            The ids of the files
+     * @param maxConcurrency
+     *            The most requests to make at the same time. Requests share the connections of {@link BoxConfig#getHttpTransport()}, so a value above
+     *            {@link BoxConfig#getMaxConnectionsPerHost()} does not help.
+     * @param listener
+     *            Receives onProgress as requests complete, or null. onComplete is not called.
+     * @param handler
+     *            The handler through which BatchListener.onProgress will be invoked, or null
+     * @return the response of each request, in the order of fileIds. See {@link BatchResponseParser}.
+     */
+    public final BatchResponseParser<FileResponseParser> getFileInfo(final String authToken, final long[] fileIds, final int maxConcurrency,
+        final BatchListener<FileResponseParser> listener, final Handler handler) {
+        return batch(null, fileIds, findDuplicates(null, fileIds), GetFileInfoListener.STATUS_S_GET_FILE_INFO, maxConcurrency,
+            new BatchRequest<FileResponseParser>() {
+
+                @Override
+                public FileResponseParser execute(final int index) throws IOException {
+                    return getFileInfo(authToken, fileIds[index]);
+                }
+            }, listener, handler);
+    }
+
+    /**
+     * Retrieve the details of several folders. Makes a get_account_tree request with {@link Box#PARAM_ONELEVEL} and {@link Box#PARAM_NOFILES} for each
+     * folder, up to {@link BoxConfig#getMaxConcurrentRequests()} at the same time.
+     * 
+     * @param authToken
+     *            The auth token retrieved through {@link BoxSynchronous#getAuthToken(String)}
+     * @param folderIds
+     *            The ids of the folders
+     * @return the response of each request, in the order of folderIds. See {@link BatchResponseParser}.
+     */
+    public final BatchResponseParser<AccountTreeResponseParser> getFolderInfo(final String authToken, final long[] folderIds) {
+        return getFolderInfo(authToken, folderIds, BoxConfig.getInstance().getMaxConcurrentRequests(), null, null);
+    }
+
+    /**
+     * Retrieve the details of several folders. Makes a get_account_tree request with {@link Box#PARAM_ONELEVEL} and {@link Box#PARAM_NOFILES} for each
+     * folder, up to maxConcurrency at the same time. The folder of each response has its subfolders but not their contents. A folder id given more than once
+     * is requested once. If the thread is interrupted, requests in progress are interrupted, the rest are not made, and the status of the response is
+     * {@link BatchListener#STATUS_BATCH_CANCELLED}.
+     * 
+     * @param authToken
+     *            The auth token retrieved through {@link BoxSynchronous#getAuthToken(String)}
+     * @param folderIds
+     *            The ids of the folders
+     * @param maxConcurrency
+     *            The most requests to make at the same time
+     * @param listener
+     *            Receives onProgress as requests complete, or null. onComplete is not called.
+     * @param handler
+     *            The handler through which BatchListener.onProgress will be invoked, or null
+     * @return the response of each request, in the order of folderIds. See {@link BatchResponseParser}.
+     */
+    public final BatchResponseParser<AccountTreeResponseParser> getFolderInfo(final String authToken, final long[] folderIds, final int maxConcurrency,
+        final BatchListener<AccountTreeResponseParser> listener, final Handler handler) {
+        return batch(null, folderIds, findDuplicates(null, folderIds), GetAccountTreeListener.STATUS_LISTING_OK, maxConcurrency,
+            new BatchRequest<AccountTreeResponseParser>() {
+
+                @Override
+                public AccountTreeResponseParser execute(final int index) throws IOException {
+                    return getAccountTree(authToken, folderIds[index], new String[] {Box.PARAM_ONELEVEL, Box.PARAM_NOFILES});
+                }
+            }, listener, handler);
     }
 
     /**
@@ -313,6 +576,9 @@ public class BoxSynchronous {
             parser,
             BoxUriBuilder.getBuilder(mApiKey, authToken, "create_folder").appendQueryParameter("name", folderName)
                 .appendQueryParameter("parent_id", String.valueOf(parentFolderId)).appendQueryParameter("share", share ? "1" : "0").build());
+        if (CreateFolderListener.STATUS_CREATE_OK.equals(parser.getStatus())) {
+            invalidateCache(Box.TYPE_FOLDER, parentFolderId);
+        }
         return parser;
     }
 
@@ -339,6 +605,9 @@ public class BoxSynchronous {
             parser,
             BoxUriBuilder.getBuilder(mApiKey, authToken, "copy").appendQueryParameter("target", type)
                 .appendQueryParameter("target_id", String.valueOf(targetId)).appendQueryParameter("destination_id", String.valueOf(destinationId)).build());
+        if (CopyListener.STATUS_S_COPY_NODE.equals(parser.getStatus())) {
+            invalidateCache(Box.TYPE_FOLDER, destinationId);
+        }
         return parser.getStatus();
     }
 
@@ -364,6 +633,9 @@ public class BoxSynchronous {
             parser,
             BoxUriBuilder.getBuilder(mApiKey, authToken, "delete").appendQueryParameter("target", type)
                 .appendQueryParameter("target_id", String.valueOf(targetId)).build());
+        if (DeleteListener.STATUS_S_DELETE_NODE.equals(parser.getStatus())) {
+            invalidateCache(type, targetId);
+        }
         return parser.getStatus();
     }
 
@@ -390,6 +662,10 @@ public class BoxSynchronous {
             parser,
             BoxUriBuilder.getBuilder(mApiKey, authToken, "move").appendQueryParameter("target", type)
                 .appendQueryParameter("target_id", String.valueOf(targetId)).appendQueryParameter("destination_id", String.valueOf(destinationId)).build());
+        if (MoveListener.STATUS_S_MOVE_NODE.equals(parser.getStatus())) {
+            invalidateCache(type, targetId);
+            invalidateCache(Box.TYPE_FOLDER, destinationId);
+        }
         return parser.getStatus();
     }
 
@@ -416,6 +692,9 @@ public class BoxSynchronous {
             parser,
             BoxUriBuilder.getBuilder(mApiKey, authToken, "rename").appendQueryParameter("target", type)
                 .appendQueryParameter("target_id", String.valueOf(targetId)).appendQueryParameter("new_name", newName).build());
+        if (RenameListener.STATUS_S_RENAME_NODE.equals(parser.getStatus())) {
+            invalidateCache(type, targetId);
+        }
         return parser.getStatus();
     }
 
@@ -488,9 +767,188 @@ public class BoxSynchronous {
             }
         }
         saxRequest(parser, builder.build());
+        if (AddToTagListener.STATUS_ADDTOTAG_OK.equals(parser.getStatus())) {
+            invalidateCache(type, targetId);
+        }
         return parser.getStatus();
     }
 
+    /**
+     * Delete several files and folders. Makes a delete request for each item, up to maxConcurrency at the same time. An item given more than once is deleted
+     * once. If a tree is given, an item inside a folder of the batch is not deleted on its own, as deleting the folder deletes it, and gets the response of
+     * the folder. If the thread is interrupted, requests in progress are interrupted, the rest are not made, and the status of the response is
+     * {@link BatchListener#STATUS_BATCH_CANCELLED}.
+     * 
+     * @param authToken
+     *            The auth token retrieved through {@link BoxSynchronous#getAuthToken(String)}
+     * @param types
+     *            The type of each item. Set to {@link com.box.androidlib.Box#TYPE_FILE} or {@link com.box.androidlib.Box#TYPE_FOLDER}
+     * @param targetIds
+     *            The file id or folder id of each item
+     * @param maxConcurrency
+     *            The most requests to make at the same time
+     * @param tree
+     *            The tree the items are in, or null. Read to find items inside folders of the batch, and changed in one pass once every request has stopped. Both
+     *            happen on the calling thread. See {@link BoxTree#remove(String, long)}.
+     * @param listener
+     *            Receives onProgress as requests complete, or null. onComplete is not called.
+     * @param handler
+     *            The handler through which BatchListener.onProgress will be invoked, or null
+     * @return the response of each item, in the order of targetIds. The status of each item is the status of its delete request, or
+     *         {@link BatchListener#STATUS_NOT_ATTEMPTED} if the batch was cancelled before it was made. See {@link BatchResponseParser}.
+     */
+    public final BatchResponseParser<DefaultResponseParser> delete(final String authToken, final String[] types, final long[] targetIds,
+        final int maxConcurrency, final BoxTree tree, final BatchListener<DefaultResponseParser> listener, final Handler handler) {
+        final BatchResponseParser<DefaultResponseParser> response = delete(authToken, types, targetIds, findDeletedWith(tree, types, targetIds),
+            maxConcurrency, listener, handler);
+        applyToTree(tree, response, false, 0);
+        return response;
+    }
+
+    /**
+     * Delete several files and folders, without changing a tree.
+     * 
+     * @param authToken
+     *            The auth token retrieved through {@link BoxSynchronous#getAuthToken(String)}
+     * @param types
+     *            The type of each item
+     * @param targetIds
+     *            The file id or folder id of each item
+     * @param sharedWith
+     *            See {@link #findDeletedWith(BoxTree, String[], long[])}
+     * @param maxConcurrency
+     *            The most requests to make at the same time
+     * @param listener
+     *            Receives onProgress as requests complete, or null
+     * @param handler
+     *            The handler through which BatchListener.onProgress will be invoked, or null
+     * @return the response of each item, in the order of targetIds
+     */
+    final BatchResponseParser<DefaultResponseParser> delete(final String authToken, final String[] types, final long[] targetIds, final int[] sharedWith,
+        final int maxConcurrency, final BatchListener<DefaultResponseParser> listener, final Handler handler) {
+        final BatchResponseParser<DefaultResponseParser> response = batch(types, targetIds, sharedWith, DeleteListener.STATUS_S_DELETE_NODE, maxConcurrency,
+            new BatchRequest<DefaultResponseParser>() {
+
+                @Override
+                public DefaultResponseParser execute(final int index) throws IOException {
+                    return toParser(delete(authToken, types[index], targetIds[index]));
+                }
+            }, listener, handler);
+        for (int i = 0; i < targetIds.length; i++) {
+            if (sharedWith[i] != i && response.isSucceeded(i)) {
+                invalidateCache(types[i], targetIds[i]);
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Move several files and folders into another folder. Makes a move request for each item, up to maxConcurrency at the same time. An item given more
+     * than once is moved once. If the thread is interrupted, requests in progress are interrupted, the rest are not made, and the status of the response is
+     * {@link BatchListener#STATUS_BATCH_CANCELLED}.
+     * 
+     * @param authToken
+     *            The auth token retrieved through {@link BoxSynchronous#getAuthToken(String)}
+     * @param types
+     *            The type of each item. Set to {@link com.box.androidlib.Box#TYPE_FILE} or {@link com.box.androidlib.Box#TYPE_FOLDER}
+     * @param targetIds
+     *            The file id or folder id of each item
+     * @param destinationId
+     *            The folder_id of the folder the items will be moved to
+     * @param maxConcurrency
+     *            The most requests to make at the same time
+     * @param tree
+     *            The tree to move the items in, or null. Changed in one pass on the calling thread once every request has stopped. See
+     *            {@link BoxTree#move(String, long, long)}.
+     * @param listener
+     *            Receives onProgress as requests complete, or null. onComplete is not called.
+     * @param handler
+     *            The handler through which BatchListener.onProgress will be invoked, or null
+     * @return the response of each item, in the order of targetIds. The status of each item is the status of its move request, or
+     *         {@link BatchListener#STATUS_NOT_ATTEMPTED} if the batch was cancelled before it was made. See {@link BatchResponseParser}.
+     */
+    public final BatchResponseParser<DefaultResponseParser> move(final String authToken, final String[] types, final long[] targetIds,
+        final long destinationId, final int maxConcurrency, final BoxTree tree, final BatchListener<DefaultResponseParser> listener, final Handler handler) {
+        final BatchResponseParser<DefaultResponseParser> response = batch(types, targetIds, findDuplicates(types, targetIds), MoveListener.STATUS_S_MOVE_NODE,
+            maxConcurrency, new BatchRequest<DefaultResponseParser>() {
+
+                @Override
+                public DefaultResponseParser execute(final int index) throws IOException {
+                    return toParser(move(authToken, types[index], targetIds[index], destinationId));
+                }
+            }, listener, handler);
+        applyToTree(tree, response, true, destinationId);
+        return response;
+    }
+
+    /**
+     * Copy several files into another folder. Makes a copy request for each item, up to maxConcurrency at the same time. An item given more than once is
+     * copied once. If the thread is interrupted, requests in progress are interrupted, the rest are not made, and the status of the response is
+     * {@link BatchListener#STATUS_BATCH_CANCELLED}. There is no tree to change, as the response of copy does not have the id of the new file.
+     * 
+     * @param authToken
+     *            The auth token retrieved through {@link BoxSynchronous#getAuthToken(String)}
+     * @param types
+     *            The type of each item. Currently, this should only be set to {@link com.box.androidlib.Box#TYPE_FILE}
+     * @param targetIds
+     *            The id of each item
+     * @param destinationId
+     *            The id of the folder to which the items will be copied
+     * @param maxConcurrency
+     *            The most requests to make at the same time
+     * @param listener
+     *            Receives onProgress as requests complete, or null. onComplete is not called.
+     * @param handler
+     *            The handler through which BatchListener.onProgress will be invoked, or null
+     * @return the response of each item, in the order of targetIds. The status of each item is the status of its copy request, or
+     *         {@link BatchListener#STATUS_NOT_ATTEMPTED} if the batch was cancelled before it was made. See {@link BatchResponseParser}.
+     */
+    public final BatchResponseParser<DefaultResponseParser> copy(final String authToken, final String[] types, final long[] targetIds,
+        final long destinationId, final int maxConcurrency, final BatchListener<DefaultResponseParser> listener, final Handler handler) {
+        return batch(types, targetIds, findDuplicates(types, targetIds), CopyListener.STATUS_S_COPY_NODE, maxConcurrency,
+            new BatchRequest<DefaultResponseParser>() {
+
+                @Override
+                public DefaultResponseParser execute(final int index) throws IOException {
+                    return toParser(copy(authToken, types[index], targetIds[index], destinationId));
+                }
+            }, listener, handler);
+    }
+
+    /**
+     * Apply tags to several files and folders. Makes an add_to_tag request for each item, up to maxConcurrency at the same time. An item given more than
+     * once is tagged once. If the thread is interrupted, requests in progress are interrupted, the rest are not made, and the status of the response is
+     * {@link BatchListener#STATUS_BATCH_CANCELLED}.
+     * 
+     * @param authToken
+     *            The auth token retrieved through {@link BoxSynchronous#getAuthToken(String)}
+     * @param types
+     *            The type of each item. Set to {@link com.box.androidlib.Box#TYPE_FILE} or {@link com.box.androidlib.Box#TYPE_FOLDER}
+     * @param targetIds
+     *            The file_id or folder_id of each item
+     * @param tagNames
+     *            Array of tag names, applied to every item
+     * @param maxConcurrency
+     *            The most requests to make at the same time
+     * @param listener
+     *            Receives onProgress as requests complete, or null. onComplete is not called.
+     * @param handler
+     *            The handler through which BatchListener.onProgress will be invoked, or null
+     * @return the response of each item, in the order of targetIds. The status of each item is the status of its add_to_tag request, or
+     *         {@link BatchListener#STATUS_NOT_ATTEMPTED} if the batch was cancelled before it was made. See {@link BatchResponseParser}.
+     */
+    public final BatchResponseParser<DefaultResponseParser> addToTag(final String authToken, final String[] types, final long[] targetIds,
+        final String[] tagNames, final int maxConcurrency, final BatchListener<DefaultResponseParser> listener, final Handler handler) {
+        return batch(types, targetIds, findDuplicates(types, targetIds), AddToTagListener.STATUS_ADDTOTAG_OK, maxConcurrency,
+            new BatchRequest<DefaultResponseParser>() {
+
+                @Override
+                public DefaultResponseParser execute(final int index) throws IOException {
+                    return toParser(addToTag(authToken, types[index], targetIds[index], tagNames));
+                }
+            }, listener, handler);
+    }
+
     /**
      * Get the comments of a file or folder. Executes API action get_comments:
      * {@link <a href="http://developers.box.net/w/page/22889464/ApiFunction_get_comments">http://developers.box.net/w/page/22889464/ApiFunction_get_comments</a>}
@@ -508,10 +966,9 @@ public class BoxSynchronous {
      */
     public final CommentsResponseParser getComments(final String authToken, final String type, final long targetId) throws IOException {
         final CommentsResponseParser parser = new CommentsResponseParser();
-        saxRequest(
-            parser,
-            BoxUriBuilder.getBuilder(mApiKey, authToken, "get_comments").appendQueryParameter("target", type)
-                .appendQueryParameter("target_id", String.valueOf(targetId)).build());
+        final Uri uri = BoxUriBuilder.getBuilder(mApiKey, authToken, "get_comments").appendQueryParameter("target", type)
+            .appendQueryParameter("target_id", String.valueOf(targetId)).build();
+        cachedSaxRequest(parser, uri, false, MetadataCache.ACTION_GET_COMMENTS, uri.toString(), GetCommentsListener.STATUS_GET_COMMENTS_OK, type, targetId);
         return parser;
     }
 
@@ -569,14 +1026,22 @@ public class BoxSynchronous {
      * @param authToken
      *            The auth token retrieved through {@link BoxSynchronous#getAuthToken(String)}
      * @return the response parser used to capture the data of interest from the response. See the doc for the specific parser type returned to see what data is
-     *         now available. All parsers implement getStatus() at a minimum.
+     *         now available. All parsers implement getStatus() at a minimum. If the request was shared through
+     *         {@link BoxConfig#setRequestCoalescer(RequestCoalescer)}, other callers get the same parser and DAOs, so copy them before modifying them.
      * @throws IOException
      *             Can be thrown if there is no connection, or if some other connection problem exists.
      */
     public final TagsResponseParser exportTags(final String authToken) throws IOException {
-        final TagsResponseParser parser = new TagsResponseParser();
-        saxRequest(parser, BoxUriBuilder.getBuilder(mApiKey, authToken, "export_tags").build());
-        return parser;
+        final Uri uri = BoxUriBuilder.getBuilder(mApiKey, authToken, "export_tags").build();
+        return coalesce(uri.toString(), new RequestCoalescer.Request<TagsResponseParser>() {
+
+            @Override
+            public TagsResponseParser execute() throws IOException {
+                final TagsResponseParser parser = new TagsResponseParser();
+                saxRequest(parser, uri);
+                return parser;
+            }
+        });
     }
 
     /**
@@ -661,10 +1126,9 @@ public class BoxSynchronous {
      */
     public final VersionsResponseParser getVersions(final String authToken, final String type, final long targetId) throws IOException {
         final VersionsResponseParser parser = new VersionsResponseParser();
-        saxRequest(
-            parser,
-            BoxUriBuilder.getBuilder(mApiKey, authToken, "get_versions").appendQueryParameter("target", type)
-                .appendQueryParameter("target_id", String.valueOf(targetId)).build());
+        final Uri uri = BoxUriBuilder.getBuilder(mApiKey, authToken, "get_versions").appendQueryParameter("target", type)
+            .appendQueryParameter("target_id", String.valueOf(targetId)).build();
+        cachedSaxRequest(parser, uri, false, MetadataCache.ACTION_GET_VERSIONS, uri.toString(), GetVersionsListener.STATUS_S_GET_VERSIONS, type, targetId);
         return parser;
     }
 
@@ -710,6 +1174,9 @@ public class BoxSynchronous {
             parser,
             BoxUriBuilder.getBuilder(mApiKey, authToken, "set_description").appendQueryParameter("target", type)
                 .appendQueryParameter("target_id", String.valueOf(targetId)).appendQueryParameter("description", description).build());
+        if (SetDescriptionListener.STATUS_S_SET_DESCRIPTION.equals(parser.getStatus())) {
+            invalidateCache(type, targetId);
+        }
         return parser.getStatus();
     }
 
@@ -887,9 +1354,10 @@ public class BoxSynchronous {
      */
     public CollaborationsResponseParser getCollaborations(final String authToken, final String type, final long targetId) throws IOException {
         CollaborationsResponseParser parser = new CollaborationsResponseParser();
-        final Uri.Builder builder = BoxUriBuilder.getBuilder(mApiKey, authToken, "get_collaborations").appendQueryParameter("target", type)
-            .appendQueryParameter("target_id", String.valueOf(targetId));
-        saxRequest(parser, builder.build());
+        final Uri uri = BoxUriBuilder.getBuilder(mApiKey, authToken, "get_collaborations").appendQueryParameter("target", type)
+            .appendQueryParameter("target_id", String.valueOf(targetId)).build();
+        cachedSaxRequest(parser, uri, false, MetadataCache.ACTION_GET_COLLABORATIONS, uri.toString(), GetCollaborationsListener.STATUS_S_GET_COLLABORATIONS,
+            type, targetId);
         return parser;
     }
 
@@ -971,6 +1439,76 @@ public class BoxSynchronous {
         return download.execute(fileId, destinationFile, versionId);
     }
 
+    /**
+     * Download a file, resuming a previous attempt if possible. Uses the download API as described here:
+     * {@link <a href="http://developers.box.net/w/page/12923951/ApiFunction_Upload-and-Download">http://developers.box.net/w/page/12923951/ApiFunction_Upload-and-Download</a>}
+     * 
+     * While the download is in progress, a journal is kept beside destinationFile. If the download is cancelled or fails with an IOException, calling this
+     * method again with the same file and destination continues from where it stopped, using an HTTP Range request. The size and sha1 of file are used to
+     * check that the data already downloaded belongs to the same file content; if the file has changed on Box, the download starts over.
+     * 
+     * If you want to cancel a download in progress, you must interrupt the thread that you executed this method in. For a more convenient way to cancel, use
+     * Box.download() which returns a Cancelable.
+     * 
+     * @param authToken
+     *            The auth token retrieved through {@link BoxSynchronous#getAuthToken(String)}
+     * @param file
+     *            The file to be downloaded, as obtained from getAccountTree or getFileInfo
+     * @param destinationFile
+     *            A java.io.File resource to which the downloaded file will be written. Ensure that this points to a valid file-path that can be written to.
+     * @param listener
+     *            A file download listener. You will likely be interested in callbacks
+     *            {@link com.box.androidlib.ResponseListeners.FileDownloadListener#onProgress(long)} and
+     *            {@link com.box.androidlib.ResponseListeners.FileDownloadListener#onComplete(String)}. When resuming, the first progress reported is the
+     *            number of bytes downloaded by previous attempts.
+     * @param handler
+     *            The handler through which FileDownloadListener.onProgress will be invoked.
+     * @throws IOException
+     *             Can be thrown if there is no connection, or if some other connection problem exists.
+     * @return a response handler
+     */
+    public final DefaultResponseParser download(final String authToken, final BoxFile file, final File destinationFile, final FileDownloadListener listener,
+        final Handler handler) throws IOException {
+        final BoxFileDownload download = new BoxFileDownload(authToken);
+        download.setListener(listener, handler);
+        return download.execute(file, destinationFile, null);
+    }
+
+    /**
+     * Download a large file over several connections at once. Uses the download API as described here:
+     * {@link <a href="http://developers.box.net/w/page/12923951/ApiFunction_Upload-and-Download">http://developers.box.net/w/page/12923951/ApiFunction_Upload-and-Download</a>}
+     * 
+     * The file is split into byte ranges that are fetched concurrently and written at their offsets into destinationFile. The download starts with one
+     * connection and opens more, up to {@link com.box.androidlib.Utils.BoxConfig#getMaxDownloadSegments()}, for as long as each one increases throughput. Files
+     * smaller than 2 MB are downloaded as a single stream. If the download is cancelled or fails with a connection error, the ranges already downloaded are
+     * kept, and downloading the same file to the same destination again fetches only the rest. See {@link BoxSegmentedFileDownload} for details.
+     * 
+     * If you want to cancel a download in progress, you must interrupt the thread that you executed this method in. For a more convenient way to cancel, use
+     * Box.downloadSegmented() which returns a Cancelable.
+     * 
+     * @param authToken
+     *            The auth token retrieved through {@link BoxSynchronous#getAuthToken(String)}
+     * @param file
+     *            The file to be downloaded, as obtained from getAccountTree or getFileInfo
+     * @param destinationFile
+     *            A java.io.File resource to which the downloaded file will be written. Ensure that this points to a valid file-path that can be written to.
+     * @param listener
+     *            A file download listener. You will likely be interested in callbacks
+     *            {@link com.box.androidlib.ResponseListeners.FileDownloadListener#onProgress(long)} and
+     *            {@link com.box.androidlib.ResponseListeners.FileDownloadListener#onComplete(String)}
+     * @param handler
+     *            The handler through which FileDownloadListener.onProgress will be invoked.
+     * @throws IOException
+     *             Can be thrown if there is no connection, or if some other connection problem exists.
+     * @return a response handler
+     */
+    public final DefaultResponseParser downloadSegmented(final String authToken, final BoxFile file, final File destinationFile,
+        final FileDownloadListener listener, final Handler handler) throws IOException {
+        final BoxSegmentedFileDownload download = new BoxSegmentedFileDownload(authToken);
+        download.setListener(listener, handler);
+        return download.execute(file, destinationFile, null);
+    }
+
     /**
      * Upload a file from the device to a folder at Box. Uses the upload API as described here: {@see {@link <a href=
      * "http://developers.box.net/w/page/12923951/ApiFunction_Upload-and-Download" >http://developers.box.net/w/page/12923951/ApiFunction_Upload-and- Download}
@@ -1006,9 +1544,7 @@ public class BoxSynchronous {
      */
     public final FileResponseParser upload(final String authToken, final String action, final File file, final String filename, final long destinationId,
         final FileUploadListener listener, final Handler handler) throws FileNotFoundException, MalformedURLException, IOException {
-        final BoxFileUpload upload = new BoxFileUpload(authToken);
-        upload.setListener(listener, handler);
-        return upload.execute(action, new FileInputStream(file), filename, destinationId);
+        return uploadForFiles(authToken, action, file, filename, destinationId, listener, handler);
     }
 
     /**
@@ -1016,13 +1552,16 @@ public class BoxSynchronous {
      * "http://developers.box.net/w/page/12923951/ApiFunction_Upload-and-Download" >http://developers.box.net/w/page/12923951/ApiFunction_Upload-and- Download}
      * </a>}
      * 
+     * Like {@link #upload(String, String, File, String, long, FileUploadListener, Handler)}, but returns an UploadResponseParser, whose
+     * {@link UploadResponseParser#getFiles()} lists every file in the response.
+     * 
      * @param authToken
      *            The auth token retrieved through {@link BoxSynchronous#getAuthToken(String)}
      * @param action
      *            Set to {@link com.box.androidlib.Box#UPLOAD_ACTION_UPLOAD} or {@link com.box.androidlib.Box#UPLOAD_ACTION_OVERWRITE} or
      *            {@link com.box.androidlib.Box#UPLOAD_ACTION_NEW_COPY}
-     * @param sourceInputStream
-     *            Input stream targetting the data to be uploaded.
+     * @param file
+     *            A File resource pointing to the file you wish to upload. Make sure File.isFile() and File.canRead() are true for this resource.
      * @param filename
      *            The desired filename on Box after upload (just the file name, do not include the path)
      * @param destinationId
@@ -1035,8 +1574,7 @@ public class BoxSynchronous {
      *            {@link com.box.androidlib.ResponseListeners.FileUploadListener#onComplete(com.box.androidlib.DAO.BoxFile, String)}
      * @param handler
      *            The handler through which FileUploadListener.onProgress will be invoked.
-     * @return the response parser used to capture the data of interest from the response. See the doc for the specific parser type returned to see what data is
-     *         now available. All parsers implement getStatus() at a minimum.
+     * @return the response parser with the status and the uploaded files
      * @throws IOException
      *             Can be thrown if there is no connection, or if some other connection problem exists.
      * @throws FileNotFoundException
@@ -1044,76 +1582,642 @@ public class BoxSynchronous {
      * @throws MalformedURLException
      *             Make sure you have specified a valid upload action
      */
-    public final FileResponseParser upload(final String authToken, final String action, final InputStream sourceInputStream, final String filename,
+    public final UploadResponseParser uploadForFiles(final String authToken, final String action, final File file, final String filename,
         final long destinationId, final FileUploadListener listener, final Handler handler) throws FileNotFoundException, MalformedURLException, IOException {
         final BoxFileUpload upload = new BoxFileUpload(authToken);
         upload.setListener(listener, handler);
-        return upload.execute(action, sourceInputStream, filename, destinationId);
+        final UploadResponseParser parser = upload.executeForFiles(action, new FileInputStream(file), filename, destinationId);
+        invalidateCacheAfterUpload(parser, action, destinationId);
+        return parser;
     }
 
     /**
-     * Executes an Http request and triggers response parsing by the specified parser.
+     * Upload a file from the device to a folder at Box so that the upload can be resumed. Uses the upload API as described here: {@see {@link <a href=
+     * "http://developers.box.net/w/page/12923951/ApiFunction_Upload-and-Download" >http://developers.box.net/w/page/12923951/ApiFunction_Upload-and- Download}
+     * </a>}
      * 
-     * @param parser
-     *            A BoxResponseParser configured to consume the response and capture data that is of interest
-     * @param uri
+     * Before the upload starts, a journal identifying the file, its sha1 and the destination is written to journalDirectory. It is removed once Box has
+     * answered. If the upload is cancelled, the process dies, or the connection breaks, calling this method again with the same arguments first checks whether
+     * Box already has a file of that name and sha1 at the destination, and only uploads the file again if it does not. An upload that fails with an IOException
+     * is retried the same way before the exception is thrown.
+     * 
+     * The upload API accepts the file in a single request, so an upload that did not reach Box is sent again from the start.
+     * 
+     * @param authToken
+     *            The auth token retrieved through {@link BoxSynchronous#getAuthToken(String)}
+     * @param action
+     *            Set to {@link com.box.androidlib.Box#UPLOAD_ACTION_UPLOAD} or {@link com.box.androidlib.Box#UPLOAD_ACTION_OVERWRITE} or
+     *            {@link com.box.androidlib.Box#UPLOAD_ACTION_NEW_COPY}
+     * @param file
+     *            A File resource pointing to the file you wish to upload. Make sure File.isFile() and File.canRead() are true for this resource.
+     * @param filename
+     *            The desired filename on Box after upload (just the file name, do not include the path)
+     * @param destinationId
+     *            If action is {@link com.box.androidlib.Box#UPLOAD_ACTION_UPLOAD}, then this is the folder id where the file will uploaded to. If action is
+     *            {@link com.box.androidlib.Box#UPLOAD_ACTION_OVERWRITE} or {@link com.box.androidlib.Box#UPLOAD_ACTION_NEW_COPY}, then this is the file_id that
+     *            is being overwritten, or copied.
+     * @param journalDirectory
+     *            Directory in which upload journals are kept. Use the same directory for every upload, such as a directory under Context.getFilesDir().
+     * @param listener
+     *            A file upload listener. You will likely be interested in callbacks
+     *            {@link com.box.androidlib.ResponseListeners.FileUploadListener#onProgress(long)} and
+     *            {@link com.box.androidlib.ResponseListeners.FileUploadListener#onComplete(com.box.androidlib.DAO.BoxFile, String)}
+     * @param handler
+     *            The handler through which FileUploadListener.onProgress will be invoked.
+     * @return the response parser used to capture the data of interest from the response. See the doc for the specific parser type returned to see what data is
+     *         now available. All parsers implement getStatus() at a minimum.
+     * @throws IOException
+     *             Can be thrown if there is no connection, or if some other connection problem exists.
+     * @throws FileNotFoundException
+     *             File being uploaded either doesn't exist, is not a file, or cannot be read
+     * @throws MalformedURLException
+     *             Make sure you have specified a valid upload action
+     */
+    public final FileResponseParser uploadResumable(final String authToken, final String action, final File file, final String filename,
+        final long destinationId, final File journalDirectory, final FileUploadListener listener, final Handler handler) throws FileNotFoundException,
+        MalformedURLException, IOException {
+        final BoxResumableFileUpload upload = new BoxResumableFileUpload(mApiKey, authToken, journalDirectory);
+        upload.setListener(listener, handler);
+        final FileResponseParser parser = upload.execute(action, file, filename, destinationId);
+        invalidateCacheAfterUpload(parser, action, destinationId);
+        return parser;
+    }
+
+    /**
+     * Upload a file from the device to a folder at Box. Uses the upload API as described here: {@see {@link <a href=
+     * "http://developers.box.net/w/page/12923951/ApiFunction_Upload-and-Download" >http://developers.box.net/w/page/12923951/ApiFunction_Upload-and- Download}
+     * </a>}
+     * 
+     * @param authToken
+     *            The auth token retrieved through {@link BoxSynchronous#getAuthToken(String)}
+     * @param action
+     *            Set to {@link com.box.androidlib.Box#UPLOAD_ACTION_UPLOAD} or {@link com.box.androidlib.Box#UPLOAD_ACTION_OVERWRITE} or
+     *            {@link com.box.androidlib.Box#UPLOAD_ACTION_NEW_COPY}
+     * @param sourceInputStream
+     *            Input stream targetting the data to be uploaded.
+     * @param filename
+     *            The desired filename on Box after upload (just the file name, do not include the path)
+     * @param destinationId
+     *            If action is {@link com.box.androidlib.Box#UPLOAD_ACTION_UPLOAD}, then this is the folder id where the file will uploaded to. If action is
+     *            {@link com.box.androidlib.Box#UPLOAD_ACTION_OVERWRITE} or {@link com.box.androidlib.Box#UPLOAD_ACTION_NEW_COPY}, then this is the file_id that
+     *            is being overwritten, or copied.
+     * @param listener
+     *            A file upload listener. You will likely be interested in callbacks
+     *            {@link com.box.androidlib.ResponseListeners.FileUploadListener#onProgress(long)} and
+     *            {@link com.box.androidlib.ResponseListeners.FileUploadListener#onComplete(com.box.androidlib.DAO.BoxFile, String)}
+     * @param handler
+     *            The handler through which FileUploadListener.onProgress will be invoked.
+     * @return the response parser used to capture the data of interest from the response. See the doc for the specific parser type returned to see what data is
+     *         now available. All parsers implement getStatus() at a minimum.
+     * @throws IOException
+     *             Can be thrown if there is no connection, or if some other connection problem exists.
+     * @throws FileNotFoundException
+     *             File being uploaded either doesn't exist, is not a file, or cannot be read
+     * @throws MalformedURLException
+     *             Make sure you have specified a valid upload action
+     */
+    public final FileResponseParser upload(final String authToken, final String action, final InputStream sourceInputStream, final String filename,
+        final long destinationId, final FileUploadListener listener, final Handler handler) throws FileNotFoundException, MalformedURLException, IOException {
+        return uploadForFiles(authToken, action, sourceInputStream, filename, destinationId, listener, handler);
+    }
+
+    /**
+     * Upload a file from the device to a folder at Box. Uses the upload API as described here: {@see {@link <a href=
+     * "http://developers.box.net/w/page/12923951/ApiFunction_Upload-and-Download" >http://developers.box.net/w/page/12923951/ApiFunction_Upload-and- Download}
+     * </a>}
+     * 
+     * Like {@link #upload(String, String, InputStream, String, long, FileUploadListener, Handler)}, but returns an UploadResponseParser, whose
+     * {@link UploadResponseParser#getFiles()} lists every file in the response.
+     * 
+     * @param authToken
+     *            The auth token retrieved through {@link BoxSynchronous#getAuthToken(String)}
+     * @param action
+     *            Set to {@link com.box.androidlib.Box#UPLOAD_ACTION_UPLOAD} or {@link com.box.androidlib.Box#UPLOAD_ACTION_OVERWRITE} or
+     *            {@link com.box.androidlib.Box#UPLOAD_ACTION_NEW_COPY}
+     * @param sourceInputStream
+     *            Input stream targetting the data to be uploaded.
+     * @param filename
+     *            The desired filename on Box after upload (just the file name, do not include the path)
+     * @param destinationId
+     *            If action is {@link com.box.androidlib.Box#UPLOAD_ACTION_UPLOAD}, then this is the folder id where the file will uploaded to. If action is
+     *            {@link com.box.androidlib.Box#UPLOAD_ACTION_OVERWRITE} or {@link com.box.androidlib.Box#UPLOAD_ACTION_NEW_COPY}, then this is the file_id that
+     *            is being overwritten, or copied.
+     * @param listener
+     *            A file upload listener. You will likely be interested in callbacks
+     *            {@link com.box.androidlib.ResponseListeners.FileUploadListener#onProgress(long)} and
+     *            {@link com.box.androidlib.ResponseListeners.FileUploadListener#onComplete(com.box.androidlib.DAO.BoxFile, String)}
+     * @param handler
+     *            The handler through which FileUploadListener.onProgress will be invoked.
+     * @return the response parser with the status and the uploaded files
+     * @throws IOException
+     *             Can be thrown if there is no connection, or if some other connection problem exists.
+     * @throws FileNotFoundException
+     *             File being uploaded either doesn't exist, is not a file, or cannot be read
+     * @throws MalformedURLException
+     *             Make sure you have specified a valid upload action
+     */
+    public final UploadResponseParser uploadForFiles(final String authToken, final String action, final InputStream sourceInputStream, final String filename,
+        final long destinationId, final FileUploadListener listener, final Handler handler) throws FileNotFoundException, MalformedURLException, IOException {
+        final BoxFileUpload upload = new BoxFileUpload(authToken);
+        upload.setListener(listener, handler);
+        final UploadResponseParser parser = upload.executeForFiles(action, sourceInputStream, filename, destinationId);
+        invalidateCacheAfterUpload(parser, action, destinationId);
+        return parser;
+    }
+
+    /**
+     * One request of a batch.
+     * 
+     * @param <T>
+     *            The response parser of the request
+     */
+    private interface BatchRequest<T extends DefaultResponseParser> {
+
+        /**
+         * Make the request for an item of the batch.
+         * 
+         * @param index
+         *            Index of the item
+         * @return the response parser
+         * @throws IOException
+         *             Can be thrown if there is no connection, or if some other connection problem exists.
+         */
+        T execute(int index) throws IOException;
+    }
+
+    /**
+     * Find the items of a batch that repeat an earlier item.
+     * 
+     * @param types
+     *            The type of each id, or null if they are all of the same type
+     * @param ids
+     *            The ids
+     * @return For each item, the index of the first item with the same type and id
+     */
+    private static int[] findDuplicates(final String[] types, final long[] ids) {
+        final int[] sharedWith = new int[ids.length];
+        final LongHashMap<Integer> firstFolders = new LongHashMap<Integer>();
+        final LongHashMap<Integer> firstFiles = new LongHashMap<Integer>(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            final LongHashMap<Integer> first = types != null && Box.TYPE_FOLDER.equals(types[i]) ? firstFolders : firstFiles;
+            final Integer index = first.get(ids[i]);
+            if (index == null) {
+                first.put(ids[i], Integer.valueOf(i));
+                sharedWith[i] = i;
+            }
+            else {
+                sharedWith[i] = index.intValue();
+            }
+        }
+        return sharedWith;
+    }
+
+    /**
+     * Find the items of a batch delete that need no request of their own: those that repeat an earlier item, and those inside a folder of the batch, which
+     * are deleted with it.
+     * 
+     * @param tree
+     *            The tree the items are in, or null to only find repeated items
+     * @param types
+     *            The type of each id
+     * @param ids
+     *            The ids
+     * @return For each item, its own index, or the index of the item whose delete request also deletes it
+     */
+    static int[] findDeletedWith(final BoxTree tree, final String[] types, final long[] ids) {
+        final int[] sharedWith = findDuplicates(types, ids);
+        if (tree == null) {
+            return sharedWith;
+        }
+        final LongHashMap<Integer> deletedFolders = new LongHashMap<Integer>();
+        for (int i = 0; i < ids.length; i++) {
+            if (sharedWith[i] == i && Box.TYPE_FOLDER.equals(types[i])) {
+                deletedFolders.put(ids[i], Integer.valueOf(i));
+            }
+        }
+        if (deletedFolders.size() == 0) {
+            return sharedWith;
+        }
+        for (int i = 0; i < ids.length; i++) {
+            BoxFolder parent;
+            if (Box.TYPE_FOLDER.equals(types[i])) {
+                final BoxFolder folder = tree.getFolder(ids[i]);
+                parent = folder == null || folder == tree.getRoot() ? null : folder.getParentFolder();
+            }
+            else {
+                final BoxFile file = tree.getFile(ids[i]);
+                parent = file == null ? null : file.getFolder();
+            }
+            // The outermost folder of the batch is the one whose request is made.
+            Integer deletedWith = null;
+            while (parent != null) {
+                final Integer index = deletedFolders.get(parent.getId());
+                if (index != null) {
+                    deletedWith = index;
+                }
+                parent = parent == tree.getRoot() ? null : parent.getParentFolder();
+            }
+            if (deletedWith != null) {
+                sharedWith[i] = deletedWith.intValue();
+            }
+        }
+        return sharedWith;
+    }
+
+    /**
+     * Apply the succeeded items of a batch delete or move to a tree.
+     * 
+     * @param tree
+     *            The tree, or null
+     * @param response
+     *            The response of the batch, with the type of each item
+     * @param move
+     *            true for a batch move, false for a batch delete
+     * @param destinationId
+     *            The folder the items were moved to
+     */
+    static void applyToTree(final BoxTree tree, final BatchResponseParser<?> response, final boolean move, final long destinationId) {
+        if (tree == null) {
+            return;
+        }
+        for (int i = 0; i < response.size(); i++) {
+            if (response.isSucceeded(i)) {
+                if (move) {
+                    tree.move(response.getType(i), response.getId(i), destinationId);
+                }
+                else {
+                    tree.remove(response.getType(i), response.getId(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Wrap the status of a request that only returns a status.
+     * 
+     * @param status
+     *            The status
+     * @return a response parser with the status
+     */
+    private static DefaultResponseParser toParser(final String status) {
+        final DefaultResponseParser parser = new DefaultResponseParser();
+        parser.setStatus(status);
+        return parser;
+    }
+
+    /**
+     * Make a request for each item of a batch, several at a time, and collect the responses in the order of the items.
+     * 
+     * @param <T>
+     *            The response parser of each request
+     * @param types
+     *            The type of each id, or null if they are all of the same type
+     * @param ids
+     *            The ids
+     * @param sharedWith
+     *            For each item, its own index to make its request, or the index of the item whose response it shares
+     * @param successStatus
+     *            The status of a successful request
+     * @param maxConcurrency
+     *            The most requests to make at the same time
+     * @param request
+     *            Makes the request for an item
+     * @param listener
+     *            Receives onProgress, or null
+     * @param handler
+     *            The handler through which onProgress is invoked, or null
+     * @return the responses
+     */
+    private static <T extends DefaultResponseParser> BatchResponseParser<T> batch(final String[] types, final long[] ids, final int[] sharedWith,
+        final String successStatus, final int maxConcurrency, final BatchRequest<T> request, final BatchListener<T> listener, final Handler handler) {
+        final BatchResponseParser<T> response = new BatchResponseParser<T>(types, ids, successStatus);
+        final ArrayList<Integer> indexes = new ArrayList<Integer>(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            if (sharedWith[i] == i) {
+                indexes.add(Integer.valueOf(i));
+            }
+        }
+
+        final int total = indexes.size();
+        final AtomicInteger completed = new AtomicInteger();
+        final AtomicLong lastProgressPost = new AtomicLong();
+        final Runnable onProgress = new Runnable() {
+
+            @Override
+            public void run() {
+                listener.onProgress(completed.get(), total);
+            }
+        };
+        final boolean reportProgress = listener != null && handler != null;
+        final ArrayList<Runnable> tasks = new ArrayList<Runnable>(total);
+        for (int i = 0; i < total; i++) {
+            final int index = indexes.get(i).intValue();
+            tasks.add(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        response.setResponse(index, request.execute(index));
+                    }
+                    catch (final IOException e) {
+                        response.setException(index, e);
+                        if (e instanceof InterruptedIOException) {
+                            // Keep the batch from starting more requests.
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    completed.incrementAndGet();
+                    if (reportProgress) {
+                        final long last = lastProgressPost.get();
+                        final long now = SystemClock.uptimeMillis();
+                        if (now - last > ON_PROGRESS_UPDATE_THRESHOLD && lastProgressPost.compareAndSet(last, now)) {
+                            handler.post(onProgress);
+                        }
+                    }
+                }
+            });
+        }
+        boolean cancelled = false;
+        try {
+            // Returns only once every request has stopped, also when interrupted, so the responses are complete from here on.
+            ParallelRunner.run(tasks, maxConcurrency);
+        }
+        catch (final InterruptedException e) {
+            cancelled = true;
+            Thread.currentThread().interrupt();
+        }
+        if (reportProgress) {
+            handler.post(onProgress);
+        }
+
+        for (int i = 0; i < ids.length; i++) {
+            if (sharedWith[i] != i) {
+                response.setResponse(i, response.getResponse(sharedWith[i]));
+                response.setException(i, response.getException(sharedWith[i]));
+            }
+        }
+        if (cancelled) {
+            response.setStatus(BatchListener.STATUS_BATCH_CANCELLED);
+        }
+        else if (response.getSucceededCount() == ids.length) {
+            response.setStatus(BatchListener.STATUS_BATCH_OK);
+        }
+        else {
+            response.setStatus(BatchListener.STATUS_BATCH_INCOMPLETE);
+        }
+        return response;
+    }
+
+    /**
+     * Run a read request through the coalescer set with {@link BoxConfig#setRequestCoalescer(RequestCoalescer)}, so that it shares an identical request in
+     * flight, or run it directly if there is no coalescer.
+     * 
+     * @param <T>
+     *            The response parser of the request
+     * @param key
+     *            The key of the request, its normalized URI
+     * @param request
+     *            The request
+     * @return The response parser, shared with the other callers of the same request
+     * @throws IOException
+     *             Can be thrown if there is no connection, or if some other connection problem exists.
+     */
+    private static <T> T coalesce(final String key, final RequestCoalescer.Request<T> request) throws IOException {
+        final RequestCoalescer coalescer = BoxConfig.getInstance().getRequestCoalescer();
+        if (coalescer == null) {
+            return request.execute();
+        }
+        return coalescer.execute(key, request);
+    }
+
+    /**
+     * Executes an Http request through the cache set with {@link BoxConfig#setMetadataCache(MetadataCache)}. If the cache has the response, it is parsed
+     * without a request. Otherwise the request is made and, if it succeeds, the response is stored with the ids of the folders and files it contains.
+     * 
+     * @param parser
+     *            A BoxResponseParser configured to consume the response and capture data that is of interest
+     * @param uri
+     *            The Uri of the request
+     * @param zippedTree
+     *            Set to true if the response is a get_account_tree response without nozip
+     * @param action
+     *            The cached action, one of the MetadataCache.ACTION_ constants
+     * @param key
+     *            The key of the response in the cache
+     * @param successStatus
+     *            The status of responses that may be cached
+     * @param type
+     *            {@link Box#TYPE_FILE} or {@link Box#TYPE_FOLDER} for a response about a single item, or null for a get_account_tree response, whose ids are
+     *            taken from the tree
+     * @param targetId
+     *            Id of the item the response is about
+     * @throws IOException
+     *             Can be thrown if there is no connection, or if some other connection problem exists.
+     */
+    private static void cachedSaxRequest(final DefaultResponseParser parser, final Uri uri, final boolean zippedTree, final String action, final String key,
+        final String successStatus, final String type, final long targetId) throws IOException {
+        final MetadataCache cache = BoxConfig.getInstance().getMetadataCache();
+        if (cache == null || !cache.isCached(action)) {
+            saxRequest(parser, uri, zippedTree, null);
+            return;
+        }
+        final byte[] cached = cache.get(key);
+        if (cached != null) {
+            parseCached(parser, cached);
+            return;
+        }
+        final ResponseRecorder recorder = new ResponseRecorder(cache.getMaxResponseSize());
+        saxRequest(parser, uri, zippedTree, recorder);
+        final byte[] response = recorder.getResponse();
+        if (response == null || !successStatus.equals(parser.getStatus())) {
+            return;
+        }
+        if (type == null) {
+            final LongArrayList folderIds = new LongArrayList();
+            final LongArrayList fileIds = new LongArrayList();
+            final BoxFolder root = ((AccountTreeResponseParser) parser).getFolder();
+            if (root != null) {
+                final ArrayList<BoxFolder> stack = new ArrayList<BoxFolder>();
+                stack.add(root);
+                while (!stack.isEmpty()) {
+                    final BoxFolder folder = stack.remove(stack.size() - 1);
+                    folderIds.addLong(folder.getId());
+                    for (int i = 0; i < folder.getFilesInFolder().size(); i++) {
+                        fileIds.addLong(folder.getFilesInFolder().get(i).getId());
+                    }
+                    stack.addAll(folder.getFoldersInFolder());
+                }
+            }
+            cache.put(action, key, response, toArray(folderIds), toArray(fileIds));
+        }
+        else if (Box.TYPE_FOLDER.equals(type)) {
+            cache.put(action, key, response, new long[] {targetId}, null);
+        }
+        else {
+            cache.put(action, key, response, null, new long[] {targetId});
+        }
+    }
+
+    /**
+     * Parse a cached response.
+     * 
+     * @param parser
+     *            A BoxResponseParser configured to consume the response and capture data that is of interest
+     * @param response
+     *            The response
+     * @throws IOException
+     *             never, the response is in memory
+     */
+    private static void parseCached(final DefaultResponseParser parser, final byte[] response) throws IOException {
+        try {
+            final XMLReader xmlReader = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
+            xmlReader.setContentHandler(parser);
+            xmlReader.parse(new InputSource(new ByteArrayInputStream(response)));
+        }
+        catch (final ParserConfigurationException e) {
+            e.printStackTrace();
+        }
+        catch (final SAXException e) {
+            e.printStackTrace();
+        }
+        catch (final FactoryConfigurationError e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Drop the cached responses that contain a file or folder, after it changed.
+     * 
+     * @param type
+     *            {@link Box#TYPE_FILE} or {@link Box#TYPE_FOLDER}
+     * @param id
+     *            Id of the file or folder
+     */
+    private static void invalidateCache(final String type, final long id) {
+        final MetadataCache cache = BoxConfig.getInstance().getMetadataCache();
+        if (cache != null) {
+            cache.invalidate(type, id);
+        }
+    }
+
+    /**
+     * Drop the cached responses affected by an upload, if it succeeded.
+     * 
+     * @param parser
+     *            The parser of the upload response, may be null
+     * @param action
+     *            The upload action
+     * @param destinationId
+     *            The folder uploaded to, or the file overwritten or copied
+     */
+    private static void invalidateCacheAfterUpload(final DefaultResponseParser parser, final String action, final long destinationId) {
+        if (parser != null && FileUploadListener.STATUS_UPLOAD_OK.equals(parser.getStatus())) {
+            invalidateCache(Box.UPLOAD_ACTION_UPLOAD.equals(action) ? Box.TYPE_FOLDER : Box.TYPE_FILE, destinationId);
+        }
+    }
+
+    /**
+     * Copy the ids of a list to an array.
+     * 
+     * @param ids
+     *            The list
+     * @return The array
+     */
+    private static long[] toArray(final LongArrayList ids) {
+        final long[] array = new long[ids.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = ids.getLong(i);
+        }
+        return array;
+    }
+
+    /**
+     * Executes an Http request and triggers response parsing by the specified parser.
+     * 
+     * @param parser
+     *            A BoxResponseParser configured to consume the response and capture data that is of interest
+     * @param uri
      *            The Uri of the request
      * @throws IOException
      *             Can be thrown if there is no connection, or if some other connection problem exists.
      */
     protected static void saxRequest(final DefaultResponseParser parser, final Uri uri) throws IOException {
+        saxRequest(parser, uri, false, null);
+    }
+
+    /**
+     * Executes an Http request and triggers response parsing by the specified parser.
+     * 
+     * @param parser
+     *            A BoxResponseParser configured to consume the response and capture data that is of interest
+     * @param uri
+     *            The Uri of the request
+     * @param zippedTree
+     *            Set to true if the response is a get_account_tree response without nozip. The zipped tree is then inflated while it is being parsed.
+     * @param recorder
+     *            Receives a copy of the response as it is parsed, inflated if it was zipped, or null
+     * @throws IOException
+     *             Can be thrown if there is no connection, or if some other connection problem exists.
+     */
+    private static void saxRequest(final DefaultResponseParser parser, final Uri uri, final boolean zippedTree, final ResponseRecorder recorder)
+        throws IOException {
         try {
             final XMLReader xmlReader = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
             xmlReader.setContentHandler(parser);
-            HttpURLConnection conn = (HttpURLConnection) (new URL(uri.toString())).openConnection();
-            conn.setRequestProperty("User-Agent", BoxConfig.getInstance().getUserAgent());
-            conn.setConnectTimeout(BoxConfig.getInstance().getConnectionTimeOut());
+            final BoxHttpRequest request = new BoxHttpRequest(BoxHttpRequest.METHOD_GET, uri.toString());
             if (BoxConfig.getInstance().getHttpLoggingEnabled()) {
                 DevUtils.logcat("URL: " + uri.toString());
             }
 
             int responseCode = -1;
+            BoxHttpResponse response = null;
             try {
-                conn.connect();
-                responseCode = conn.getResponseCode();
-                if (responseCode == HttpURLConnection.HTTP_OK) {
-                    InputStream inputStream = conn.getInputStream();
-                    xmlReader.parse(new InputSource(inputStream));
-                    inputStream.close();
+                response = BoxConfig.getInstance().getHttpTransport().execute(request);
+                responseCode = response.getStatusCode();
+                if (responseCode == HttpStatus.SC_OK) {
+                    if (zippedTree) {
+                        final ZippedTreeInputStream treeStream = new ZippedTreeInputStream(response.getContent());
+                        xmlReader.parse(new InputSource(recorder == null ? treeStream : recorder.record(treeStream)));
+                        if (BoxConfig.getInstance().getHttpLoggingEnabled()) {
+                            DevUtils.logcat("Zipped tree bytes: " + treeStream.getCompressedBytes());
+                        }
+                    }
+                    else {
+                        xmlReader.parse(new InputSource(recorder == null ? response.getContent() : recorder.record(response.getContent())));
+                    }
+                }
+                // Server returned a 503 Service Unavailable. Usually means a temporary unavailability.
+                else if (responseCode == HttpStatus.SC_SERVICE_UNAVAILABLE) {
+                    parser.setStatus(ResponseListener.STATUS_SERVICE_UNAVAILABLE);
                 }
                 else if (responseCode == -1) {
                     parser.setStatus(ResponseListener.STATUS_UNKNOWN_HTTP_RESPONSE_CODE);
                 }
+                // Read whatever is left of the response so that the connection can be reused.
+                response.close();
             }
             catch (IOException e) {
-                try {
-                    responseCode = conn.getResponseCode();
-                }
-                catch (NullPointerException ee) {
-                    // Honeycomb devices seem to throw a null pointer exception sometimes which traces to HttpURLConnectionImpl.
-                }
-                // Server returned a 503 Service Unavailable. Usually means a temporary unavailability.
-                if (responseCode == HttpURLConnection.HTTP_UNAVAILABLE) {
-                    parser.setStatus(ResponseListener.STATUS_SERVICE_UNAVAILABLE);
-                }
-                else {
-                    throw e;
+                if (response != null) {
+                    response.abort();
                 }
+                throw e;
+            }
+            catch (SAXException e) {
+                response.abort();
+                throw e;
             }
             finally {
                 if (BoxConfig.getInstance().getHttpLoggingEnabled()) {
                     DevUtils.logcat("Response Code: " + responseCode);
-                    DevUtils.logcat("User-Agent : " + conn.getRequestProperty("User-Agent"));
-                    Map<String, List<String>> headerfields = conn.getHeaderFields();
-                    if (headerfields != null) {
-                        Set<Entry<String, List<String>>> headers = headerfields.entrySet();
+                    DevUtils.logcat("User-Agent : " + BoxConfig.getInstance().getUserAgent());
+                    if (response != null) {
+                        Set<Entry<String, List<String>>> headers = response.getHeaders().entrySet();
                         for (Iterator<Map.Entry<String, List<String>>> i = headers.iterator(); i.hasNext();) {
                             Map.Entry<String, List<String>> map = i.next();
                             DevUtils.logcat(map.getKey() + " : " + map.getValue());
                         }
                     }
                 }
-                conn.disconnect();
             }
         }
         catch (final ParserConfigurationException e) {
@@ -1126,4 +2230,89 @@ public class BoxSynchronous {
             e.printStackTrace();
         }
     }
+
+    /**
+     * Keeps a copy of a response as it is read, so that it can be cached, unless it grows past a limit.
+     */
+    private static final class ResponseRecorder extends ByteArrayOutputStream {
+
+        /** Largest response kept. */
+        private final long mLimit;
+        /** Set once the response grew past the limit. */
+        private boolean mOverflow;
+        /** Buffer for bytes read one at a time. */
+        private final byte[] mSingle = new byte[1];
+
+        /**
+         * Create a recorder.
+         * 
+         * @param limit
+         *            Largest response kept
+         */
+        ResponseRecorder(final long limit) {
+            mLimit = limit;
+        }
+
+        /**
+         * Wrap a response stream so that what is read from it is recorded.
+         * 
+         * @param in
+         *            The response stream
+         * @return The stream to read instead
+         */
+        InputStream record(final InputStream in) {
+            return new FilterInputStream(in) {
+
+                @Override
+                public int read() throws IOException {
+                    final int b = super.read();
+                    if (b >= 0 && !mOverflow) {
+                        mSingle[0] = (byte) b;
+                        keep(mSingle, 0, 1);
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+                    final int read = super.read(buffer, offset, length);
+                    if (read > 0) {
+                        keep(buffer, offset, read);
+                    }
+                    return read;
+                }
+            };
+        }
+
+        /**
+         * Record bytes read, unless the limit was passed.
+         * 
+         * @param buffer
+         *            The bytes
+         * @param offset
+         *            Start of the bytes in buffer
+         * @param length
+         *            Number of bytes
+         */
+        private void keep(final byte[] buffer, final int offset, final int length) {
+            if (mOverflow) {
+                return;
+            }
+            if (size() + length > mLimit) {
+                mOverflow = true;
+                reset();
+                return;
+            }
+            write(buffer, offset, length);
+        }
+
+        /**
+         * Get the recorded response.
+         * 
+         * @return The response, or null if it was larger than the limit
+         */
+        byte[] getResponse() {
+            return mOverflow ? null : toByteArray();
+        }
+    }
 }
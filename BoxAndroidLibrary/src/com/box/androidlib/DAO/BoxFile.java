@@ -14,6 +14,8 @@ package com.box.androidlib.DAO;
 import java.util.ArrayList;
 
 import com.box.androidlib.Utils.BoxUtils;
+import com.box.androidlib.Utils.KeyTable;
+import com.box.androidlib.Utils.UrlTemplate;
 
 /**
  * Represents a file on Box.
@@ -27,6 +29,68 @@ public class BoxFile extends DAO {
      */
     private static final long serialVersionUID = 1L;
 
+    /** Attribute code for file_id and id. */
+    private static final int KEY_ID = 0;
+    /** Attribute code for folder_id. */
+    private static final int KEY_FOLDER_ID = 1;
+    /** Attribute code for file_name and name. */
+    private static final int KEY_FILE_NAME = 2;
+    /** Attribute code for shared_name. */
+    private static final int KEY_SHARED_NAME = 3;
+    /** Attribute code for pic_l. */
+    private static final int KEY_PIC_L = 4;
+    /** Attribute code for pic_s. */
+    private static final int KEY_PIC_S = 5;
+    /** Attribute code for pic_x. */
+    private static final int KEY_PIC_X = 6;
+    /** Attribute code for size. */
+    private static final int KEY_SIZE = 7;
+    /** Attribute code for sha1. */
+    private static final int KEY_SHA1 = 8;
+    /** Attribute code for created. */
+    private static final int KEY_CREATED = 9;
+    /** Attribute code for updated. */
+    private static final int KEY_UPDATED = 10;
+    /** Attribute code for thumbnail. */
+    private static final int KEY_THUMBNAIL = 11;
+    /** Attribute code for small_thumbnail. */
+    private static final int KEY_SMALL_THUMBNAIL = 12;
+    /** Attribute code for large_thumbnail. */
+    private static final int KEY_LARGE_THUMBNAIL = 13;
+    /** Attribute code for larger_thumbnail. */
+    private static final int KEY_LARGER_THUMBNAIL = 14;
+    /** Attribute code for preview_thumbnail. */
+    private static final int KEY_PREVIEW_THUMBNAIL = 15;
+    /** Attribute code for permissions. */
+    private static final int KEY_PERMISSIONS = 16;
+    /** Attribute code for comment_count. */
+    private static final int KEY_COMMENT_COUNT = 17;
+    /** Codes of the attributes handled by {@link #parseAttribute(String, CharSequence)}. */
+    private static final KeyTable ATTRIBUTE_KEYS = new KeyTable();
+
+    static {
+        ATTRIBUTE_KEYS.put("file_id", KEY_ID);
+        ATTRIBUTE_KEYS.put("id", KEY_ID);
+        ATTRIBUTE_KEYS.put("folder_id", KEY_FOLDER_ID);
+        ATTRIBUTE_KEYS.put("file_name", KEY_FILE_NAME);
+        ATTRIBUTE_KEYS.put("name", KEY_FILE_NAME);
+        ATTRIBUTE_KEYS.put("shared_name", KEY_SHARED_NAME);
+        ATTRIBUTE_KEYS.put("pic_l", KEY_PIC_L);
+        ATTRIBUTE_KEYS.put("pic_s", KEY_PIC_S);
+        ATTRIBUTE_KEYS.put("pic_x", KEY_PIC_X);
+        ATTRIBUTE_KEYS.put("size", KEY_SIZE);
+        ATTRIBUTE_KEYS.put("sha1", KEY_SHA1);
+        ATTRIBUTE_KEYS.put("created", KEY_CREATED);
+        ATTRIBUTE_KEYS.put("updated", KEY_UPDATED);
+        ATTRIBUTE_KEYS.put("thumbnail", KEY_THUMBNAIL);
+        ATTRIBUTE_KEYS.put("small_thumbnail", KEY_SMALL_THUMBNAIL);
+        ATTRIBUTE_KEYS.put("large_thumbnail", KEY_LARGE_THUMBNAIL);
+        ATTRIBUTE_KEYS.put("larger_thumbnail", KEY_LARGER_THUMBNAIL);
+        ATTRIBUTE_KEYS.put("preview_thumbnail", KEY_PREVIEW_THUMBNAIL);
+        ATTRIBUTE_KEYS.put("permissions", KEY_PERMISSIONS);
+        ATTRIBUTE_KEYS.put("comment_count", KEY_COMMENT_COUNT);
+    }
+
     /**
      * Id of the file.
      */
@@ -72,25 +136,26 @@ public class BoxFile extends DAO {
      */
     protected long mSize;
     /**
-     * Thumbnail for tree display.
+     * Thumbnail for tree display, stored as a template of the file id. The templates are not protected, as subclasses read and write thumbnails with the
+     * getters and setters, which keep the String type.
      */
-    protected String mThumbnail;
+    UrlTemplate mThumbnail;
     /**
-     * Small thumbnail for tree display.
+     * Small thumbnail for tree display, stored as a template of the file id.
      */
-    protected String mSmallThumbnail;
+    UrlTemplate mSmallThumbnail;
     /**
-     * Large thumbnail for tree display.
+     * Large thumbnail for tree display, stored as a template of the file id.
      */
-    protected String mLargeThumbnail;
+    UrlTemplate mLargeThumbnail;
     /**
-     * Larger thumbnail for tree display.
+     * Larger thumbnail for tree display, stored as a template of the file id.
      */
-    protected String mLargerThumbnail;
+    UrlTemplate mLargerThumbnail;
     /**
-     * Preview thumbnail for tree display.
+     * Preview thumbnail for tree display, stored as a template of the file id.
      */
-    protected String mPreviewThumbnail;
+    UrlTemplate mPreviewThumbnail;
     /**
      * Permissions.
      */
@@ -98,7 +163,7 @@ public class BoxFile extends DAO {
     /**
      * List of tag ids associated with the file.
      */
-    protected ArrayList<Long> mTagIds = new ArrayList<Long>();
+    protected ArrayList<Long> mTagIds = new ArrayList<Long>(0);
     /**
      * Number of comments.
      */
@@ -113,6 +178,13 @@ public class BoxFile extends DAO {
      *            The id of the file.
      */
     public void setId(final long fileId) {
+        if (fileId != mId) {
+            mThumbnail = rebase(mThumbnail, fileId);
+            mSmallThumbnail = rebase(mSmallThumbnail, fileId);
+            mLargeThumbnail = rebase(mLargeThumbnail, fileId);
+            mLargerThumbnail = rebase(mLargerThumbnail, fileId);
+            mPreviewThumbnail = rebase(mPreviewThumbnail, fileId);
+        }
         mId = fileId;
     }
 
@@ -223,7 +295,7 @@ public class BoxFile extends DAO {
      *            Thumbnail url.
      */
     public void setThumbnail(final String url) {
-        mThumbnail = url;
+        mThumbnail = UrlTemplate.of(url, mId);
     }
 
     /**
@@ -233,7 +305,7 @@ public class BoxFile extends DAO {
      *            Small thumbnail url
      */
     public void setSmallThumbnail(final String url) {
-        mSmallThumbnail = url;
+        mSmallThumbnail = UrlTemplate.of(url, mId);
     }
 
     /**
@@ -243,7 +315,7 @@ public class BoxFile extends DAO {
      *            Large thumbnail url
      */
     public void setLargeThumbnail(final String url) {
-        mLargeThumbnail = url;
+        mLargeThumbnail = UrlTemplate.of(url, mId);
     }
 
     /**
@@ -253,7 +325,7 @@ public class BoxFile extends DAO {
      *            Larger thumbnail url
      */
     public void setLargerThumbnail(final String url) {
-        mLargerThumbnail = url;
+        mLargerThumbnail = UrlTemplate.of(url, mId);
     }
 
     /**
@@ -263,7 +335,7 @@ public class BoxFile extends DAO {
      *            Preview thumbnail url
      */
     public void setPreviewThumbnail(final String url) {
-        mPreviewThumbnail = url;
+        mPreviewThumbnail = UrlTemplate.of(url, mId);
     }
 
     /**
@@ -384,16 +456,16 @@ public class BoxFile extends DAO {
      */
     public String getThumbnail() {
         if (mThumbnail != null) {
-            return mThumbnail;
+            return expand(mThumbnail);
         }
         else if (mLargerThumbnail != null) {
-            return mLargerThumbnail;
+            return expand(mLargerThumbnail);
         }
         else if (mLargeThumbnail != null) {
-            return mLargeThumbnail;
+            return expand(mLargeThumbnail);
         }
         else if (mSmallThumbnail != null) {
-            return mSmallThumbnail;
+            return expand(mSmallThumbnail);
         }
         else {
             return null;
@@ -406,7 +478,7 @@ public class BoxFile extends DAO {
      * @return Small thumbnail url
      */
     public String getSmallThumbnail() {
-        return mSmallThumbnail;
+        return expand(mSmallThumbnail);
     }
 
     /**
@@ -415,7 +487,7 @@ public class BoxFile extends DAO {
      * @return Large thumbnail url.
      */
     public String getLargeThumbnail() {
-        return mLargeThumbnail;
+        return expand(mLargeThumbnail);
     }
 
     /**
@@ -424,7 +496,7 @@ public class BoxFile extends DAO {
      * @return Larger thumbnail url.
      */
     public String getLargerThumbnail() {
-        return mLargerThumbnail;
+        return expand(mLargerThumbnail);
     }
 
     /**
@@ -433,7 +505,7 @@ public class BoxFile extends DAO {
      * @return Preview thumbnail url.
      */
     public String getPreviewThumbnail() {
-        return mPreviewThumbnail;
+        return expand(mPreviewThumbnail);
     }
 
     /**
@@ -454,6 +526,47 @@ public class BoxFile extends DAO {
         return mTagIds;
     }
 
+    /**
+     * Add a tag id to the file. Usually only called by the response parsers.
+     * 
+     * @param tagId
+     *            The tag id
+     */
+    public void addTagId(final long tagId) {
+        mTagIds.add(tagId);
+    }
+
+    /**
+     * Release unused capacity of the collections held by this file. Response parsers call this once the file has been parsed.
+     */
+    public void trimToSize() {
+        mTagIds.trimToSize();
+    }
+
+    /**
+     * Build a thumbnail url from its template.
+     * 
+     * @param template
+     *            The template, may be null
+     * @return The url, or null if template is null
+     */
+    private String expand(final UrlTemplate template) {
+        return template == null ? null : template.expand(mId);
+    }
+
+    /**
+     * Get the template of a thumbnail url for a new file id.
+     * 
+     * @param template
+     *            The template, may be null
+     * @param fileId
+     *            The new file id
+     * @return The template, or null if template is null
+     */
+    private UrlTemplate rebase(final UrlTemplate template, final long fileId) {
+        return template == null ? null : template.rebase(mId, fileId);
+    }
+
     /**
      * Get the number of comments that have been made on this file.
      * 
@@ -482,59 +595,93 @@ public class BoxFile extends DAO {
      *            The value to be set
      */
     public void parseAttribute(final String key, final String value) {
-        if (key.equals("file_id") || key.equals("id")) {
-            setId(BoxUtils.parseLong(value));
-        }
-        else if (key.equals("folder_id")) {
-            setFolderId(BoxUtils.parseLong(value, -1));
-        }
-        else if (key.equals("file_name") || key.equals("name")) {
-            setFileName(value);
-        }
-        else if (key.equals("shared_name")) {
-            setSharedName(value);
-        }
-        else if (key.equals("pic_l")) {
-            setLargeThumbnail(value);
-        }
-        else if (key.equals("pic_s")) {
-            setSmallThumbnail(value);
-        }
-        else if (key.equals("pic_x")) {
-            setLargerThumbnail(value);
-        }
-        else if (key.equals("size")) {
-            setSize(BoxUtils.parseSizeString(value));
-        }
-        else if (key.equals("sha1")) {
-            setSha1(value);
-        }
-        else if (key.equals("created")) {
-            setCreated(BoxUtils.parseLong(value));
-        }
-        else if (key.equals("updated")) {
-            setUpdated(BoxUtils.parseLong(value));
-        }
-        else if (key.equals("thumbnail")) {
-            setThumbnail(value);
-        }
-        else if (key.equals("small_thumbnail")) {
-            setSmallThumbnail(value);
-        }
-        else if (key.equals("large_thumbnail")) {
-            setLargeThumbnail(value);
-        }
-        else if (key.equals("larger_thumbnail")) {
-            setLargerThumbnail(value);
-        }
-        else if (key.equals("preview_thumbnail")) {
-            setPreviewThumbnail(value);
-        }
-        else if (key.equals("permissions")) {
-            setPermissions(value);
+        decodeAttribute(key, value);
+    }
+
+    /**
+     * Parse an attribute straight from the text collected by a SAX parser. Numbers and flags are decoded from the characters without creating a String, and
+     * only textual values are converted to Strings. Attributes this class does not handle are passed on to {@link #parseAttribute(String, String)}. In
+     * subclasses, such as those set with {@link com.box.androidlib.Box#setBoxFileClass(Class)}, every attribute is passed on to it, so that an override of
+     * that method sees all attributes.
+     * 
+     * @param key
+     *            Corresponds to attribute names and element names returned by Box API
+     * @param value
+     *            The characters of the value to be set
+     */
+    public void parseAttribute(final String key, final CharSequence value) {
+        if (getClass() != BoxFile.class || !decodeAttribute(key, value)) {
+            parseAttribute(key, value.toString());
         }
-        else if (key.equals("comment_count")) {
-            setCommentCount(BoxUtils.parseInt(value));
+    }
+
+    /**
+     * Set the member data for an attribute handled by this class.
+     * 
+     * @param key
+     *            Corresponds to attribute names and element names returned by Box API
+     * @param value
+     *            The characters of the value to be set
+     * @return true if the attribute is handled by this class
+     */
+    private boolean decodeAttribute(final String key, final CharSequence value) {
+        switch (ATTRIBUTE_KEYS.get(key)) {
+            case KEY_ID:
+                setId(BoxUtils.parseLong(value));
+                return true;
+            case KEY_FOLDER_ID:
+                setFolderId(BoxUtils.parseLong(value, -1));
+                return true;
+            case KEY_FILE_NAME:
+                setFileName(value.toString());
+                return true;
+            case KEY_SHARED_NAME:
+                setSharedName(value.toString());
+                return true;
+            case KEY_PIC_L:
+                setLargeThumbnail(value.toString());
+                return true;
+            case KEY_PIC_S:
+                setSmallThumbnail(value.toString());
+                return true;
+            case KEY_PIC_X:
+                setLargerThumbnail(value.toString());
+                return true;
+            case KEY_SIZE:
+                setSize(BoxUtils.parseSizeString(value));
+                return true;
+            case KEY_SHA1:
+                setSha1(value.toString());
+                return true;
+            case KEY_CREATED:
+                setCreated(BoxUtils.parseLong(value));
+                return true;
+            case KEY_UPDATED:
+                setUpdated(BoxUtils.parseLong(value));
+                return true;
+            case KEY_THUMBNAIL:
+                setThumbnail(value.toString());
+                return true;
+            case KEY_SMALL_THUMBNAIL:
+                setSmallThumbnail(value.toString());
+                return true;
+            case KEY_LARGE_THUMBNAIL:
+                setLargeThumbnail(value.toString());
+                return true;
+            case KEY_LARGER_THUMBNAIL:
+                setLargerThumbnail(value.toString());
+                return true;
+            case KEY_PREVIEW_THUMBNAIL:
+                setPreviewThumbnail(value.toString());
+                return true;
+            case KEY_PERMISSIONS:
+                setPermissions(value.toString());
+                return true;
+            case KEY_COMMENT_COUNT:
+                setCommentCount(BoxUtils.parseInt(value));
+                return true;
+            default:
+                return false;
         }
     }
 }
@@ -15,6 +15,8 @@ import java.util.ArrayList;
 import java.util.List;
 
 import com.box.androidlib.Utils.BoxUtils;
+import com.box.androidlib.Utils.KeyTable;
+import com.box.androidlib.Utils.UrlTemplate;
 
 /**
  * Represents a folder on Box.
@@ -28,6 +30,86 @@ public class BoxFolder extends DAO {
      */
     private static final long serialVersionUID = 1L;
 
+    /** Attribute code for folder_id and id. */
+    private static final int KEY_ID = 0;
+    /** Attribute code for folder_name and name. */
+    private static final int KEY_FOLDER_NAME = 1;
+    /** Attribute code for shared. */
+    private static final int KEY_SHARED = 2;
+    /** Attribute code for shared_name. */
+    private static final int KEY_SHARED_NAME = 3;
+    /** Attribute code for shared_link. */
+    private static final int KEY_SHARED_LINK = 4;
+    /** Attribute code for size. */
+    private static final int KEY_SIZE = 5;
+    /** Attribute code for pic_l. */
+    private static final int KEY_PIC_L = 6;
+    /** Attribute code for pic_s. */
+    private static final int KEY_PIC_S = 7;
+    /** Attribute code for pic_x. */
+    private static final int KEY_PIC_X = 8;
+    /** Attribute code for created. */
+    private static final int KEY_CREATED = 9;
+    /** Attribute code for updated. */
+    private static final int KEY_UPDATED = 10;
+    /** Attribute code for file_count. */
+    private static final int KEY_FILE_COUNT = 11;
+    /** Attribute code for user_id. */
+    private static final int KEY_USER_ID = 12;
+    /** Attribute code for path. */
+    private static final int KEY_PATH = 13;
+    /** Attribute code for public_name. */
+    private static final int KEY_PUBLIC_NAME = 14;
+    /** Attribute code for parent_folder_id. */
+    private static final int KEY_PARENT_FOLDER_ID = 15;
+    /** Attribute code for password. */
+    private static final int KEY_PASSWORD = 16;
+    /** Attribute code for thumbnail. */
+    private static final int KEY_THUMBNAIL = 17;
+    /** Attribute code for small_thumbnail. */
+    private static final int KEY_SMALL_THUMBNAIL = 18;
+    /** Attribute code for large_thumbnail. */
+    private static final int KEY_LARGE_THUMBNAIL = 19;
+    /** Attribute code for larger_thumbnail. */
+    private static final int KEY_LARGER_THUMBNAIL = 20;
+    /** Attribute code for permissions. */
+    private static final int KEY_PERMISSIONS = 21;
+    /** Attribute code for has_collaborators. */
+    private static final int KEY_HAS_COLLABORATORS = 22;
+    /** Attribute code for folder_path_ids. */
+    private static final int KEY_FOLDER_PATH_IDS = 23;
+    /** Codes of the attributes handled by {@link #parseAttribute(String, CharSequence)}. */
+    private static final KeyTable ATTRIBUTE_KEYS = new KeyTable();
+
+    static {
+        ATTRIBUTE_KEYS.put("folder_id", KEY_ID);
+        ATTRIBUTE_KEYS.put("id", KEY_ID);
+        ATTRIBUTE_KEYS.put("folder_name", KEY_FOLDER_NAME);
+        ATTRIBUTE_KEYS.put("name", KEY_FOLDER_NAME);
+        ATTRIBUTE_KEYS.put("shared", KEY_SHARED);
+        ATTRIBUTE_KEYS.put("shared_name", KEY_SHARED_NAME);
+        ATTRIBUTE_KEYS.put("shared_link", KEY_SHARED_LINK);
+        ATTRIBUTE_KEYS.put("size", KEY_SIZE);
+        ATTRIBUTE_KEYS.put("pic_l", KEY_PIC_L);
+        ATTRIBUTE_KEYS.put("pic_s", KEY_PIC_S);
+        ATTRIBUTE_KEYS.put("pic_x", KEY_PIC_X);
+        ATTRIBUTE_KEYS.put("created", KEY_CREATED);
+        ATTRIBUTE_KEYS.put("updated", KEY_UPDATED);
+        ATTRIBUTE_KEYS.put("file_count", KEY_FILE_COUNT);
+        ATTRIBUTE_KEYS.put("user_id", KEY_USER_ID);
+        ATTRIBUTE_KEYS.put("path", KEY_PATH);
+        ATTRIBUTE_KEYS.put("public_name", KEY_PUBLIC_NAME);
+        ATTRIBUTE_KEYS.put("parent_folder_id", KEY_PARENT_FOLDER_ID);
+        ATTRIBUTE_KEYS.put("password", KEY_PASSWORD);
+        ATTRIBUTE_KEYS.put("thumbnail", KEY_THUMBNAIL);
+        ATTRIBUTE_KEYS.put("small_thumbnail", KEY_SMALL_THUMBNAIL);
+        ATTRIBUTE_KEYS.put("large_thumbnail", KEY_LARGE_THUMBNAIL);
+        ATTRIBUTE_KEYS.put("larger_thumbnail", KEY_LARGER_THUMBNAIL);
+        ATTRIBUTE_KEYS.put("permissions", KEY_PERMISSIONS);
+        ATTRIBUTE_KEYS.put("has_collaborators", KEY_HAS_COLLABORATORS);
+        ATTRIBUTE_KEYS.put("folder_path_ids", KEY_FOLDER_PATH_IDS);
+    }
+
     /**
      * Folder id.
      */
@@ -85,21 +167,22 @@ public class BoxFolder extends DAO {
      */
     protected long mUpdated;
     /**
-     * Thumbnail for tree display.
+     * Thumbnail for tree display, stored as a template of the folder id. The templates are not protected, as subclasses read and write thumbnails with the
+     * getters and setters, which keep the String type.
      */
-    protected String mThumbnail;
+    UrlTemplate mThumbnail;
     /**
-     * Small thumbnail for tree display.
+     * Small thumbnail for tree display, stored as a template of the folder id.
      */
-    protected String mSmallThumbnail;
+    UrlTemplate mSmallThumbnail;
     /**
-     * Large thumbnail for tree display.
+     * Large thumbnail for tree display, stored as a template of the folder id.
      */
-    protected String mLargeThumbnail;
+    UrlTemplate mLargeThumbnail;
     /**
-     * Larger thumbnail for tree display.
+     * Larger thumbnail for tree display, stored as a template of the folder id.
      */
-    protected String mLargerThumbnail;
+    UrlTemplate mLargerThumbnail;
     /**
      * Represents the path from the root directory to this folder.
      */
@@ -131,7 +214,7 @@ public class BoxFolder extends DAO {
     /**
      * List of tag ids in the folder.
      */
-    protected ArrayList<Long> mTagIds = new ArrayList<Long>();
+    protected ArrayList<Long> mTagIds = new ArrayList<Long>(0);
 
     // Setters
 
@@ -142,6 +225,12 @@ public class BoxFolder extends DAO {
      *            file id
      */
     public void setId(final long id) {
+        if (id != mId) {
+            mThumbnail = rebase(mThumbnail, id);
+            mSmallThumbnail = rebase(mSmallThumbnail, id);
+            mLargeThumbnail = rebase(mLargeThumbnail, id);
+            mLargerThumbnail = rebase(mLargerThumbnail, id);
+        }
         mId = id;
     }
 
@@ -242,7 +331,7 @@ public class BoxFolder extends DAO {
      *            Thumbnail url.
      */
     public void setThumbnail(final String url) {
-        mThumbnail = url;
+        mThumbnail = UrlTemplate.of(url, mId);
     }
 
     /**
@@ -252,7 +341,7 @@ public class BoxFolder extends DAO {
      *            Small thumbnail url
      */
     public void setSmallThumbnail(final String url) {
-        mSmallThumbnail = url;
+        mSmallThumbnail = UrlTemplate.of(url, mId);
     }
 
     /**
@@ -262,7 +351,7 @@ public class BoxFolder extends DAO {
      *            Large thumbnail url
      */
     public void setLargeThumbnail(final String url) {
-        mLargeThumbnail = url;
+        mLargeThumbnail = UrlTemplate.of(url, mId);
     }
 
     /**
@@ -272,7 +361,7 @@ public class BoxFolder extends DAO {
      *            Larger thumbnail url
      */
     public void setLargerThumbnail(final String url) {
-        mLargerThumbnail = url;
+        mLargerThumbnail = UrlTemplate.of(url, mId);
     }
 
     /**
@@ -464,16 +553,16 @@ public class BoxFolder extends DAO {
      */
     public String getThumbnail() {
         if (mThumbnail != null) {
-            return mThumbnail;
+            return expand(mThumbnail);
         }
         else if (mLargerThumbnail != null) {
-            return mLargerThumbnail;
+            return expand(mLargerThumbnail);
         }
         else if (mLargeThumbnail != null) {
-            return mLargeThumbnail;
+            return expand(mLargeThumbnail);
         }
         else if (mSmallThumbnail != null) {
-            return mSmallThumbnail;
+            return expand(mSmallThumbnail);
         }
         else {
             return null;
@@ -486,7 +575,7 @@ public class BoxFolder extends DAO {
      * @return Small thumbnail url
      */
     public String getSmallThumbnail() {
-        return mSmallThumbnail;
+        return expand(mSmallThumbnail);
     }
 
     /**
@@ -495,7 +584,7 @@ public class BoxFolder extends DAO {
      * @return Large thumbnail url.
      */
     public String getLargeThumbnail() {
-        return mLargeThumbnail;
+        return expand(mLargeThumbnail);
     }
 
     /**
@@ -504,7 +593,7 @@ public class BoxFolder extends DAO {
      * @return Larger thumbnail url.
      */
     public String getLargerThumbnail() {
-        return mLargerThumbnail;
+        return expand(mLargerThumbnail);
     }
 
     /**
@@ -580,9 +669,10 @@ public class BoxFolder extends DAO {
     }
 
     /**
-     * Get the folder path ids. NOTE: This currently doesn't return anything.
+     * Get the folder path ids, from the top of the tree down to this folder. Box API does not return these, but {@link BoxTree} fills them in for the folders
+     * it indexes.
      * 
-     * @return The folder path ids. (e.g. /54325/643563/425)
+     * @return The folder path ids (e.g. /54325/643563/425), or null if unknown
      */
     public String getFolderPathIds() {
         return mFolderPathIds;
@@ -609,6 +699,24 @@ public class BoxFolder extends DAO {
         mFilesInFolder.add(boxFile);
     }
 
+    /**
+     * Remove a child file from this folder. The file is matched by reference. {@link BoxTree} always uses this method to remove child files, so if you
+     * override addChildFile() you will likely want to override this method too.
+     * 
+     * @param boxFile
+     *            The BoxFile to remove.
+     * @return true if the file was a child of this folder
+     */
+    public boolean removeChildFile(final BoxFile boxFile) {
+        for (int i = 0; i < mFilesInFolder.size(); i++) {
+            if (mFilesInFolder.get(i) == boxFile) {
+                mFilesInFolder.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Get list of folders in folder.
      * 
@@ -630,6 +738,24 @@ public class BoxFolder extends DAO {
         mFoldersInFolder.add(boxFolder);
     }
 
+    /**
+     * Remove a child folder from this folder. The folder is matched by reference. {@link BoxTree} always uses this method to remove child folders, so if you
+     * override addChildFolder() you will likely want to override this method too.
+     * 
+     * @param boxFolder
+     *            The BoxFolder to remove.
+     * @return true if the folder was a child of this folder
+     */
+    public boolean removeChildFolder(final BoxFolder boxFolder) {
+        for (int i = 0; i < mFoldersInFolder.size(); i++) {
+            if (mFoldersInFolder.get(i) == boxFolder) {
+                mFoldersInFolder.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Get list of tag ids in folder.
      * 
@@ -640,17 +766,67 @@ public class BoxFolder extends DAO {
     }
 
     /**
-     * Set upward references of all child folders and files to the parent folder.
+     * Add a tag id to the folder. Usually only called by the response parsers.
+     * 
+     * @param tagId
+     *            The tag id
+     */
+    public void addTagId(final long tagId) {
+        mTagIds.add(tagId);
+    }
+
+    /**
+     * Release unused capacity of the lists of child files, child folders and tag ids. Response parsers call this once all children of the folder have been
+     * parsed.
+     */
+    public void trimToSize() {
+        mFilesInFolder.trimToSize();
+        mFoldersInFolder.trimToSize();
+        mTagIds.trimToSize();
+    }
+
+    /**
+     * Build a thumbnail url from its template.
+     * 
+     * @param template
+     *            The template, may be null
+     * @return The url, or null if template is null
+     */
+    private String expand(final UrlTemplate template) {
+        return template == null ? null : template.expand(mId);
+    }
+
+    /**
+     * Get the template of a thumbnail url for a new folder id.
+     * 
+     * @param template
+     *            The template, may be null
+     * @param folderId
+     *            The new folder id
+     * @return The template, or null if template is null
+     */
+    private UrlTemplate rebase(final UrlTemplate template, final long folderId) {
+        return template == null ? null : template.rebase(mId, folderId);
+    }
+
+    /**
+     * Set upward references of all child folders and files to the parent folder. Walks the tree without recursion, so deep trees cannot overflow the stack.
      */
     public void repairParentFolderReferences() {
-        for (int i = 0; i < mFoldersInFolder.size(); i++) {
-            mFoldersInFolder.get(i).setParentFolderId(getId());
-            mFoldersInFolder.get(i).setParentFolder(this);
-            mFoldersInFolder.get(i).repairParentFolderReferences();
-        }
-        for (int i = 0; i < mFilesInFolder.size(); i++) {
-            mFilesInFolder.get(i).setFolderId(getId());
-            mFilesInFolder.get(i).setFolder(this);
+        final ArrayList<BoxFolder> stack = new ArrayList<BoxFolder>();
+        stack.add(this);
+        while (!stack.isEmpty()) {
+            final BoxFolder folder = stack.remove(stack.size() - 1);
+            for (int i = 0; i < folder.mFoldersInFolder.size(); i++) {
+                final BoxFolder child = folder.mFoldersInFolder.get(i);
+                child.setParentFolderId(folder.getId());
+                child.setParentFolder(folder);
+                stack.add(child);
+            }
+            for (int i = 0; i < folder.mFilesInFolder.size(); i++) {
+                folder.mFilesInFolder.get(i).setFolderId(folder.getId());
+                folder.mFilesInFolder.get(i).setFolder(folder);
+            }
         }
     }
 
@@ -663,77 +839,111 @@ public class BoxFolder extends DAO {
      *            The value to be set
      */
     public void parseAttribute(final String key, final String value) {
-        if (key.equals("folder_id") || key.equals("id")) {
-            setId(BoxUtils.parseLong(value));
-        }
-        else if (key.equals("folder_name") || key.equals("name")) {
-            setFolderName(value);
-        }
-        else if (key.equals("shared")) {
-            setShared(value.equals("1") ? true : false);
-        }
-        else if (key.equals("shared_name")) {
-            setSharedName(value);
-        }
-        else if (key.equals("shared_link")) {
-            setSharedLink(value);
-        }
-        else if (key.equals("size")) {
-            setSize(BoxUtils.parseSizeString(value));
-        }
-        else if (key.equals("pic_l")) {
-            setLargeThumbnail(value);
-        }
-        else if (key.equals("pic_s")) {
-            setSmallThumbnail(value);
-        }
-        else if (key.equals("pic_x")) {
-            setLargerThumbnail(value);
-        }
-        else if (key.equals("created")) {
-            setCreated(BoxUtils.parseLong(value));
-        }
-        else if (key.equals("updated")) {
-            setUpdated(BoxUtils.parseLong(value));
-        }
-        else if (key.equals("file_count")) {
-            setFileCount(BoxUtils.parseLong(value));
-        }
-        else if (key.equals("user_id")) {
-            setUserId(BoxUtils.parseLong(value));
-        }
-        else if (key.equals("path")) {
-            setPath(value);
-        }
-        else if (key.equals("public_name")) {
-            setPublicName(value);
-        }
-        else if (key.equals("parent_folder_id")) {
-            setParentFolderId(BoxUtils.parseLong(value));
-        }
-        else if (key.equals("password")) {
-            setPassword(value);
-        }
-        else if (key.equals("thumbnail")) {
-            setThumbnail(value);
-        }
-        else if (key.equals("small_thumbnail")) {
-            setSmallThumbnail(value);
-        }
-        else if (key.equals("large_thumbnail")) {
-            setLargeThumbnail(value);
-        }
-        else if (key.equals("larger_thumbnail")) {
-            setLargerThumbnail(value);
-        }
-        else if (key.equals("permissions")) {
-            setPermissions(value);
-        }
-        else if (key.equals("has_collaborators")) {
-            setHasCollaborators(value.equals("1") ? true : false);
+        decodeAttribute(key, value);
+    }
+
+    /**
+     * Parse an attribute straight from the text collected by a SAX parser. Numbers and flags are decoded from the characters without creating a String, and
+     * only textual values are converted to Strings. Attributes this class does not handle are passed on to {@link #parseAttribute(String, String)}. In
+     * subclasses, such as those set with {@link com.box.androidlib.Box#setBoxFolderClass(Class)}, every attribute is passed on to it, so that an override of
+     * that method sees all attributes.
+     * 
+     * @param key
+     *            Corresponds to attribute names and element names returned by Box API
+     * @param value
+     *            The characters of the value to be set
+     */
+    public void parseAttribute(final String key, final CharSequence value) {
+        if (getClass() != BoxFolder.class || !decodeAttribute(key, value)) {
+            parseAttribute(key, value.toString());
         }
-        else if (key.equals("folder_path_ids")) {
-            setFolderPathIds(value);
+    }
+
+    /**
+     * Set the member data for an attribute handled by this class.
+     * 
+     * @param key
+     *            Corresponds to attribute names and element names returned by Box API
+     * @param value
+     *            The characters of the value to be set
+     * @return true if the attribute is handled by this class
+     */
+    private boolean decodeAttribute(final String key, final CharSequence value) {
+        switch (ATTRIBUTE_KEYS.get(key)) {
+            case KEY_ID:
+                setId(BoxUtils.parseLong(value));
+                return true;
+            case KEY_FOLDER_NAME:
+                setFolderName(value.toString());
+                return true;
+            case KEY_SHARED:
+                setShared("1".contentEquals(value));
+                return true;
+            case KEY_SHARED_NAME:
+                setSharedName(value.toString());
+                return true;
+            case KEY_SHARED_LINK:
+                setSharedLink(value.toString());
+                return true;
+            case KEY_SIZE:
+                setSize(BoxUtils.parseSizeString(value));
+                return true;
+            case KEY_PIC_L:
+                setLargeThumbnail(value.toString());
+                return true;
+            case KEY_PIC_S:
+                setSmallThumbnail(value.toString());
+                return true;
+            case KEY_PIC_X:
+                setLargerThumbnail(value.toString());
+                return true;
+            case KEY_CREATED:
+                setCreated(BoxUtils.parseLong(value));
+                return true;
+            case KEY_UPDATED:
+                setUpdated(BoxUtils.parseLong(value));
+                return true;
+            case KEY_FILE_COUNT:
+                setFileCount(BoxUtils.parseLong(value));
+                return true;
+            case KEY_USER_ID:
+                setUserId(BoxUtils.parseLong(value));
+                return true;
+            case KEY_PATH:
+                setPath(value.toString());
+                return true;
+            case KEY_PUBLIC_NAME:
+                setPublicName(value.toString());
+                return true;
+            case KEY_PARENT_FOLDER_ID:
+                setParentFolderId(BoxUtils.parseLong(value));
+                return true;
+            case KEY_PASSWORD:
+                setPassword(value.toString());
+                return true;
+            case KEY_THUMBNAIL:
+                setThumbnail(value.toString());
+                return true;
+            case KEY_SMALL_THUMBNAIL:
+                setSmallThumbnail(value.toString());
+                return true;
+            case KEY_LARGE_THUMBNAIL:
+                setLargeThumbnail(value.toString());
+                return true;
+            case KEY_LARGER_THUMBNAIL:
+                setLargerThumbnail(value.toString());
+                return true;
+            case KEY_PERMISSIONS:
+                setPermissions(value.toString());
+                return true;
+            case KEY_HAS_COLLABORATORS:
+                setHasCollaborators("1".contentEquals(value));
+                return true;
+            case KEY_FOLDER_PATH_IDS:
+                setFolderPathIds(value.toString());
+                return true;
+            default:
+                return false;
         }
     }
 }
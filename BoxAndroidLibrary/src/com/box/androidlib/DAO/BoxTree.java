@@ -0,0 +1,734 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.DAO;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import com.box.androidlib.Box;
+import com.box.androidlib.Utils.LongHashMap;
+
+/**
+ * A tree of BoxFolder and BoxFile objects with indexes for finding files and folders by id or by path without walking the tree.
+ * {@link com.box.androidlib.ResponseParsers.AccountTreeResponseParser} builds one while parsing, or you can index a tree you already have.
+ * 
+ * The folder path ids of every folder are filled in with the ids from the root of the tree down to the folder, so that the chain of ancestors is available
+ * from {@link BoxFolder#getFolderPathIds()} as well as from {@link #getAncestors(long)}.
+ * 
+ * To keep the indexes consistent, make all changes to the structure of the tree and to names through the methods of this class rather than on the BoxFolder
+ * and BoxFile objects directly. Each change is reported to the registered {@link Listener}s, so that views showing part of the tree can update just the rows
+ * that changed. This class is not thread safe.
+ * 
+ * @author developers@box.net
+ */
+public class BoxTree {
+
+    /**
+     * Interface definition for a callback to be invoked when a tree changes. Called on the thread that changed the tree, after the change is made.
+     * 
+     * @author developers@box.net
+     */
+    public interface Listener {
+
+        /**
+         * Called when a file or folder has been added to the tree. A folder may have been added with children, for which this is not called.
+         * 
+         * @param type
+         *            {@link Box#TYPE_FILE} or {@link Box#TYPE_FOLDER}
+         * @param id
+         *            The file id or folder id
+         * @param parentId
+         *            Id of the folder it was added to
+         */
+        void onAdded(String type, long id, long parentId);
+
+        /**
+         * Called when a file or folder has been removed from the tree. A folder is removed with everything below it, for which this is not called.
+         * 
+         * @param type
+         *            {@link Box#TYPE_FILE} or {@link Box#TYPE_FOLDER}
+         * @param id
+         *            The file id or folder id
+         * @param parentId
+         *            Id of the folder it was removed from
+         */
+        void onRemoved(String type, long id, long parentId);
+
+        /**
+         * Called when a file or folder has been moved to another folder of the tree.
+         * 
+         * @param type
+         *            {@link Box#TYPE_FILE} or {@link Box#TYPE_FOLDER}
+         * @param id
+         *            The file id or folder id
+         * @param oldParentId
+         *            Id of the folder it was in
+         * @param newParentId
+         *            Id of the folder it is in now
+         */
+        void onMoved(String type, long id, long oldParentId, long newParentId);
+
+        /**
+         * Called when a file or folder of the tree has been renamed.
+         * 
+         * @param type
+         *            {@link Box#TYPE_FILE} or {@link Box#TYPE_FOLDER}
+         * @param id
+         *            The file id or folder id
+         * @param parentId
+         *            Id of the folder it is in
+         * @param oldName
+         *            The name it had before
+         */
+        void onRenamed(String type, long id, long parentId, String oldName);
+    }
+
+    /**
+     * The folder at the top of the tree.
+     */
+    private final BoxFolder mRoot;
+    /**
+     * Folders by id.
+     */
+    private final LongHashMap<BoxFolder> mFolders = new LongHashMap<BoxFolder>();
+    /**
+     * Files by id.
+     */
+    private final LongHashMap<BoxFile> mFiles = new LongHashMap<BoxFile>();
+    /**
+     * Child folders by name, per folder id. Built the first time a path is resolved through a folder, and dropped when the children of the folder change.
+     */
+    private final LongHashMap<HashMap<String, BoxFolder>> mFolderNames = new LongHashMap<HashMap<String, BoxFolder>>();
+    /**
+     * Child files by name, per folder id. Built the first time a path is resolved through a folder, and dropped when the children of the folder change.
+     */
+    private final LongHashMap<HashMap<String, BoxFile>> mFileNames = new LongHashMap<HashMap<String, BoxFile>>();
+    /**
+     * Listeners told about changes.
+     */
+    private final ArrayList<Listener> mListeners = new ArrayList<Listener>();
+
+    /**
+     * Index a tree. Parent references and folder path ids of all folders and files below the root are set as they are indexed.
+     * 
+     * @param root
+     *            The folder at the top of the tree
+     */
+    public BoxTree(final BoxFolder root) {
+        mRoot = root;
+        if (root.getFolderPathIds() == null) {
+            root.setFolderPathIds("/" + root.getId());
+        }
+        index(root);
+    }
+
+    /**
+     * Get the folder at the top of the tree.
+     * 
+     * @return The root folder
+     */
+    public BoxFolder getRoot() {
+        return mRoot;
+    }
+
+    /**
+     * Get a folder of the tree by id.
+     * 
+     * @param folderId
+     *            The folder id
+     * @return The folder, or null if it is not in the tree
+     */
+    public BoxFolder getFolder(final long folderId) {
+        return mFolders.get(folderId);
+    }
+
+    /**
+     * Get a file of the tree by id.
+     * 
+     * @param fileId
+     *            The file id
+     * @return The file, or null if it is not in the tree
+     */
+    public BoxFile getFile(final long fileId) {
+        return mFiles.get(fileId);
+    }
+
+    /**
+     * Get the number of folders in the tree, including the root.
+     * 
+     * @return number of folders
+     */
+    public int getFolderCount() {
+        return mFolders.size();
+    }
+
+    /**
+     * Get the number of files in the tree.
+     * 
+     * @return number of files
+     */
+    public int getFileCount() {
+        return mFiles.size();
+    }
+
+    /**
+     * Register a listener to be told about changes to the tree.
+     * 
+     * @param listener
+     *            The listener
+     */
+    public void addListener(final Listener listener) {
+        if (!mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+    }
+
+    /**
+     * Stop telling a listener about changes to the tree.
+     * 
+     * @param listener
+     *            The listener
+     */
+    public void removeListener(final Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Resolve a path to a folder. Paths are relative to the root of the tree, use / as separator and are matched exactly, e.g. "/Photos/2011". "/" or ""
+     * resolves to the root.
+     * 
+     * @param path
+     *            The path
+     * @return The folder, or null if there is no folder at that path
+     */
+    public BoxFolder getFolderByPath(final String path) {
+        final int nameStart = path.lastIndexOf('/') + 1;
+        final BoxFolder parent = resolveParent(path, nameStart);
+        if (parent == null || nameStart == path.length()) {
+            return parent;
+        }
+        return getFolderNames(parent).get(path.substring(nameStart));
+    }
+
+    /**
+     * Resolve a path to a file. Paths are relative to the root of the tree, use / as separator and are matched exactly, e.g. "/Photos/2011/beach.jpg".
+     * 
+     * @param path
+     *            The path
+     * @return The file, or null if there is no file at that path
+     */
+    public BoxFile getFileByPath(final String path) {
+        final int nameStart = path.lastIndexOf('/') + 1;
+        final BoxFolder parent = resolveParent(path, nameStart);
+        if (parent == null) {
+            return null;
+        }
+        return getFileNames(parent).get(path.substring(nameStart));
+    }
+
+    /**
+     * Get the ancestors of a folder.
+     * 
+     * @param folderId
+     *            The folder id
+     * @return The folders from the root of the tree down to the parent of the folder, empty for the root, or null if the folder is not in the tree
+     */
+    public List<BoxFolder> getAncestors(final long folderId) {
+        final BoxFolder folder = mFolders.get(folderId);
+        if (folder == null) {
+            return null;
+        }
+        final ArrayList<BoxFolder> ancestors = new ArrayList<BoxFolder>();
+        if (folder == mRoot) {
+            return ancestors;
+        }
+        for (BoxFolder parent = folder.getParentFolder(); parent != null; parent = parent.getParentFolder()) {
+            ancestors.add(0, parent);
+            if (parent == mRoot) {
+                break;
+            }
+        }
+        return ancestors;
+    }
+
+    /**
+     * Add a folder, with any children it already has, to a folder of the tree.
+     * 
+     * @param parentId
+     *            Id of the folder to add to
+     * @param folder
+     *            The folder to add
+     * @return true if the folder was added, false if the parent folder is not in the tree
+     */
+    public boolean addFolder(final long parentId, final BoxFolder folder) {
+        final BoxFolder parent = mFolders.get(parentId);
+        if (parent == null) {
+            return false;
+        }
+        parent.addChildFolder(folder);
+        link(parent, folder);
+        index(folder);
+        fireAdded(Box.TYPE_FOLDER, folder.getId(), parentId);
+        return true;
+    }
+
+    /**
+     * Add a file to a folder of the tree.
+     * 
+     * @param folderId
+     *            Id of the folder to add to
+     * @param file
+     *            The file to add
+     * @return true if the file was added, false if the folder is not in the tree
+     */
+    public boolean addFile(final long folderId, final BoxFile file) {
+        final BoxFolder folder = mFolders.get(folderId);
+        if (folder == null) {
+            return false;
+        }
+        attachFile(folder, file);
+        fireAdded(Box.TYPE_FILE, file.getId(), folderId);
+        return true;
+    }
+
+    /**
+     * Remove a folder and everything below it from the tree. The root cannot be removed.
+     * 
+     * @param folderId
+     *            The folder id
+     * @return The folder that was removed, or null if it is not in the tree or is the root
+     */
+    public BoxFolder removeFolder(final long folderId) {
+        final BoxFolder folder = mFolders.get(folderId);
+        if (folder == null || folder == mRoot) {
+            return null;
+        }
+        final long parentId = folder.getParentFolderId();
+        unlink(folder);
+        final ArrayList<BoxFolder> stack = new ArrayList<BoxFolder>();
+        stack.add(folder);
+        while (!stack.isEmpty()) {
+            final BoxFolder current = stack.remove(stack.size() - 1);
+            mFolders.remove(current.getId());
+            mFolderNames.remove(current.getId());
+            mFileNames.remove(current.getId());
+            final List<? extends BoxFile> files = current.getFilesInFolder();
+            for (int i = 0; i < files.size(); i++) {
+                mFiles.remove(files.get(i).getId());
+            }
+            stack.addAll(current.getFoldersInFolder());
+        }
+        fireRemoved(Box.TYPE_FOLDER, folderId, parentId);
+        return folder;
+    }
+
+    /**
+     * Remove a file from the tree.
+     * 
+     * @param fileId
+     *            The file id
+     * @return The file that was removed, or null if it is not in the tree
+     */
+    public BoxFile removeFile(final long fileId) {
+        final BoxFile file = mFiles.get(fileId);
+        if (file == null) {
+            return null;
+        }
+        final long folderId = file.getFolderId();
+        detachFile(file);
+        fireRemoved(Box.TYPE_FILE, fileId, folderId);
+        return file;
+    }
+
+    /**
+     * Move a folder, with everything below it, to another folder of the tree. Folder path ids below the folder are updated.
+     * 
+     * @param folderId
+     *            The folder id
+     * @param destinationFolderId
+     *            Id of the folder to move it to
+     * @return true if the folder was moved, false if either folder is not in the tree, the folder is the root or the destination is the folder itself or
+     *         below it
+     */
+    public boolean moveFolder(final long folderId, final long destinationFolderId) {
+        final BoxFolder folder = mFolders.get(folderId);
+        final BoxFolder destination = mFolders.get(destinationFolderId);
+        if (folder == null || destination == null || folder == mRoot) {
+            return false;
+        }
+        for (BoxFolder f = destination; f != null; f = f.getParentFolder()) {
+            if (f == folder) {
+                return false;
+            }
+        }
+        final long oldParentId = folder.getParentFolderId();
+        unlink(folder);
+        destination.addChildFolder(folder);
+        link(destination, folder);
+        final ArrayList<BoxFolder> stack = new ArrayList<BoxFolder>();
+        stack.addAll(folder.getFoldersInFolder());
+        while (!stack.isEmpty()) {
+            final BoxFolder current = stack.remove(stack.size() - 1);
+            current.setFolderPathIds(current.getParentFolder().getFolderPathIds() + "/" + current.getId());
+            stack.addAll(current.getFoldersInFolder());
+        }
+        fireMoved(Box.TYPE_FOLDER, folderId, oldParentId, destinationFolderId);
+        return true;
+    }
+
+    /**
+     * Move a file to another folder of the tree.
+     * 
+     * @param fileId
+     *            The file id
+     * @param destinationFolderId
+     *            Id of the folder to move it to
+     * @return true if the file was moved, false if the file or the folder is not in the tree
+     */
+    public boolean moveFile(final long fileId, final long destinationFolderId) {
+        final BoxFile file = mFiles.get(fileId);
+        final BoxFolder destination = mFolders.get(destinationFolderId);
+        if (file == null || destination == null) {
+            return false;
+        }
+        final long oldFolderId = file.getFolderId();
+        detachFile(file);
+        attachFile(destination, file);
+        fireMoved(Box.TYPE_FILE, fileId, oldFolderId, destinationFolderId);
+        return true;
+    }
+
+    /**
+     * Rename a folder of the tree.
+     * 
+     * @param folderId
+     *            The folder id
+     * @param name
+     *            The new name
+     * @return true if the folder was renamed, false if it is not in the tree
+     */
+    public boolean renameFolder(final long folderId, final String name) {
+        final BoxFolder folder = mFolders.get(folderId);
+        if (folder == null) {
+            return false;
+        }
+        final String oldName = folder.getFolderName();
+        folder.setFolderName(name);
+        if (folder.getParentFolder() != null) {
+            mFolderNames.remove(folder.getParentFolder().getId());
+        }
+        fireRenamed(Box.TYPE_FOLDER, folderId, folder.getParentFolderId(), oldName);
+        return true;
+    }
+
+    /**
+     * Rename a file of the tree.
+     * 
+     * @param fileId
+     *            The file id
+     * @param name
+     *            The new name
+     * @return true if the file was renamed, false if it is not in the tree
+     */
+    public boolean renameFile(final long fileId, final String name) {
+        final BoxFile file = mFiles.get(fileId);
+        if (file == null) {
+            return false;
+        }
+        final String oldName = file.getFileName();
+        file.setFileName(name);
+        if (file.getFolder() != null) {
+            mFileNames.remove(file.getFolder().getId());
+        }
+        fireRenamed(Box.TYPE_FILE, fileId, file.getFolderId(), oldName);
+        return true;
+    }
+
+    /**
+     * Apply a successful API action delete to the tree.
+     * 
+     * @param type
+     *            {@link Box#TYPE_FILE} or {@link Box#TYPE_FOLDER}
+     * @param targetId
+     *            The file id or folder id that was deleted
+     * @return true if the tree was changed, false if the item is not in the tree
+     */
+    public boolean remove(final String type, final long targetId) {
+        if (Box.TYPE_FOLDER.equals(type)) {
+            return removeFolder(targetId) != null;
+        }
+        return removeFile(targetId) != null;
+    }
+
+    /**
+     * Apply a successful API action move to the tree. If the destination folder is not in the tree, the item is removed from the tree, as it has moved out of
+     * the part of the account the tree holds.
+     * 
+     * @param type
+     *            {@link Box#TYPE_FILE} or {@link Box#TYPE_FOLDER}
+     * @param targetId
+     *            The file id or folder id that was moved
+     * @param destinationId
+     *            Id of the folder it was moved to
+     * @return true if the tree was changed, false if the item is not in the tree
+     */
+    public boolean move(final String type, final long targetId, final long destinationId) {
+        if (!mFolders.containsKey(destinationId)) {
+            return remove(type, targetId);
+        }
+        if (Box.TYPE_FOLDER.equals(type)) {
+            return moveFolder(targetId, destinationId);
+        }
+        return moveFile(targetId, destinationId);
+    }
+
+    /**
+     * Apply a successful API action rename to the tree.
+     * 
+     * @param type
+     *            {@link Box#TYPE_FILE} or {@link Box#TYPE_FOLDER}
+     * @param targetId
+     *            The file id or folder id that was renamed
+     * @param newName
+     *            The new name
+     * @return true if the tree was changed, false if the item is not in the tree
+     */
+    public boolean rename(final String type, final long targetId, final String newName) {
+        if (Box.TYPE_FOLDER.equals(type)) {
+            return renameFolder(targetId, newName);
+        }
+        return renameFile(targetId, newName);
+    }
+
+    /**
+     * Add a folder and everything below it to the indexes, setting parent references and folder path ids on the way.
+     * 
+     * @param folder
+     *            The folder
+     */
+    private void index(final BoxFolder folder) {
+        final ArrayList<BoxFolder> stack = new ArrayList<BoxFolder>();
+        stack.add(folder);
+        while (!stack.isEmpty()) {
+            final BoxFolder current = stack.remove(stack.size() - 1);
+            mFolders.put(current.getId(), current);
+            final List<? extends BoxFile> files = current.getFilesInFolder();
+            for (int i = 0; i < files.size(); i++) {
+                files.get(i).setFolder(current);
+                files.get(i).setFolderId(current.getId());
+                mFiles.put(files.get(i).getId(), files.get(i));
+            }
+            final List<? extends BoxFolder> folders = current.getFoldersInFolder();
+            for (int i = 0; i < folders.size(); i++) {
+                link(current, folders.get(i));
+                stack.add(folders.get(i));
+            }
+        }
+    }
+
+    /**
+     * Set the references of a folder to a new parent. The folder must already be in the children of the parent.
+     * 
+     * @param parent
+     *            The parent folder
+     * @param folder
+     *            The child folder
+     */
+    private void link(final BoxFolder parent, final BoxFolder folder) {
+        folder.setParentFolder(parent);
+        folder.setParentFolderId(parent.getId());
+        folder.setFolderPathIds(parent.getFolderPathIds() + "/" + folder.getId());
+        mFolderNames.remove(parent.getId());
+    }
+
+    /**
+     * Remove a folder from the children of its parent.
+     * 
+     * @param folder
+     *            The folder
+     */
+    private void unlink(final BoxFolder folder) {
+        final BoxFolder parent = folder.getParentFolder();
+        if (parent != null) {
+            parent.removeChildFolder(folder);
+            mFolderNames.remove(parent.getId());
+        }
+    }
+
+    /**
+     * Add a file to a folder and to the indexes.
+     * 
+     * @param folder
+     *            The folder
+     * @param file
+     *            The file
+     */
+    private void attachFile(final BoxFolder folder, final BoxFile file) {
+        folder.addChildFile(file);
+        file.setFolder(folder);
+        file.setFolderId(folder.getId());
+        mFiles.put(file.getId(), file);
+        mFileNames.remove(folder.getId());
+    }
+
+    /**
+     * Remove a file from its folder and from the indexes.
+     * 
+     * @param file
+     *            The file
+     */
+    private void detachFile(final BoxFile file) {
+        mFiles.remove(file.getId());
+        if (file.getFolder() != null) {
+            file.getFolder().removeChildFile(file);
+            mFileNames.remove(file.getFolder().getId());
+        }
+    }
+
+    /**
+     * Tell the listeners that an item was added.
+     * 
+     * @param type
+     *            {@link Box#TYPE_FILE} or {@link Box#TYPE_FOLDER}
+     * @param id
+     *            The item id
+     * @param parentId
+     *            Id of the folder it was added to
+     */
+    private void fireAdded(final String type, final long id, final long parentId) {
+        // Copy, so that listeners can remove themselves.
+        final Listener[] listeners = mListeners.toArray(new Listener[mListeners.size()]);
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].onAdded(type, id, parentId);
+        }
+    }
+
+    /**
+     * Tell the listeners that an item was removed.
+     * 
+     * @param type
+     *            {@link Box#TYPE_FILE} or {@link Box#TYPE_FOLDER}
+     * @param id
+     *            The item id
+     * @param parentId
+     *            Id of the folder it was removed from
+     */
+    private void fireRemoved(final String type, final long id, final long parentId) {
+        final Listener[] listeners = mListeners.toArray(new Listener[mListeners.size()]);
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].onRemoved(type, id, parentId);
+        }
+    }
+
+    /**
+     * Tell the listeners that an item was moved.
+     * 
+     * @param type
+     *            {@link Box#TYPE_FILE} or {@link Box#TYPE_FOLDER}
+     * @param id
+     *            The item id
+     * @param oldParentId
+     *            Id of the folder it was in
+     * @param newParentId
+     *            Id of the folder it is in now
+     */
+    private void fireMoved(final String type, final long id, final long oldParentId, final long newParentId) {
+        final Listener[] listeners = mListeners.toArray(new Listener[mListeners.size()]);
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].onMoved(type, id, oldParentId, newParentId);
+        }
+    }
+
+    /**
+     * Tell the listeners that an item was renamed.
+     * 
+     * @param type
+     *            {@link Box#TYPE_FILE} or {@link Box#TYPE_FOLDER}
+     * @param id
+     *            The item id
+     * @param parentId
+     *            Id of the folder it is in
+     * @param oldName
+     *            The name it had before
+     */
+    private void fireRenamed(final String type, final long id, final long parentId, final String oldName) {
+        final Listener[] listeners = mListeners.toArray(new Listener[mListeners.size()]);
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].onRenamed(type, id, parentId, oldName);
+        }
+    }
+
+    /**
+     * Resolve all but the last element of a path.
+     * 
+     * @param path
+     *            The path
+     * @param nameStart
+     *            Index of the last element of the path
+     * @return The folder containing the last element, or null if there is none
+     */
+    private BoxFolder resolveParent(final String path, final int nameStart) {
+        BoxFolder folder = mRoot;
+        int start = 0;
+        while (folder != null && start < nameStart) {
+            final int end = path.indexOf('/', start);
+            if (end > start) {
+                folder = getFolderNames(folder).get(path.substring(start, end));
+            }
+            start = end + 1;
+        }
+        return folder;
+    }
+
+    /**
+     * Get the child folders of a folder by name, building the map if needed.
+     * 
+     * @param folder
+     *            The folder
+     * @return Child folders by name
+     */
+    private HashMap<String, BoxFolder> getFolderNames(final BoxFolder folder) {
+        HashMap<String, BoxFolder> names = mFolderNames.get(folder.getId());
+        if (names == null) {
+            final List<? extends BoxFolder> folders = folder.getFoldersInFolder();
+            names = new HashMap<String, BoxFolder>(folders.size() * 2);
+            for (int i = folders.size() - 1; i >= 0; i--) {
+                // Iterate backwards so that the first of several children with the same name wins.
+                names.put(folders.get(i).getFolderName(), folders.get(i));
+            }
+            mFolderNames.put(folder.getId(), names);
+        }
+        return names;
+    }
+
+    /**
+     * Get the child files of a folder by name, building the map if needed.
+     * 
+     * @param folder
+     *            The folder
+     * @return Child files by name
+     */
+    private HashMap<String, BoxFile> getFileNames(final BoxFolder folder) {
+        HashMap<String, BoxFile> names = mFileNames.get(folder.getId());
+        if (names == null) {
+            final List<? extends BoxFile> files = folder.getFilesInFolder();
+            names = new HashMap<String, BoxFile>(files.size() * 2);
+            for (int i = files.size() - 1; i >= 0; i--) {
+                // Iterate backwards so that the first of several children with the same name wins.
+                names.put(files.get(i).getFileName(), files.get(i));
+            }
+            mFileNames.put(folder.getId(), names);
+        }
+        return names;
+    }
+}
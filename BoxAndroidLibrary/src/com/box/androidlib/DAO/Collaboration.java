@@ -1,6 +1,7 @@
 package com.box.androidlib.DAO;
 
 import com.box.androidlib.Utils.BoxUtils;
+import com.box.androidlib.Utils.KeyTable;
 
 /**
  * Represents a collaboration on Box.
@@ -13,6 +14,45 @@ public class Collaboration extends DAO {
      */
     private static final long serialVersionUID = 1L;
 
+    /** Attribute code for id. */
+    private static final int KEY_ID = 0;
+    /** Attribute code for item_role_name. */
+    private static final int KEY_ITEM_ROLE_NAME = 1;
+    /** Attribute code for status. */
+    private static final int KEY_STATUS = 2;
+    /** Attribute code for item_type. */
+    private static final int KEY_ITEM_TYPE = 3;
+    /** Attribute code for item_id. */
+    private static final int KEY_ITEM_ID = 4;
+    /** Attribute code for item_name. */
+    private static final int KEY_ITEM_NAME = 5;
+    /** Attribute code for item_user_id. */
+    private static final int KEY_ITEM_USER_ID = 6;
+    /** Attribute code for item_user_name. */
+    private static final int KEY_ITEM_USER_NAME = 7;
+    /** Attribute code for user_id. */
+    private static final int KEY_USER_ID = 8;
+    /** Attribute code for name. */
+    private static final int KEY_NAME = 9;
+    /** Attribute code for email. */
+    private static final int KEY_EMAIL = 10;
+    /** Codes of the attributes handled by {@link #parseAttribute(String, CharSequence)}. */
+    private static final KeyTable ATTRIBUTE_KEYS = new KeyTable();
+
+    static {
+        ATTRIBUTE_KEYS.put("id", KEY_ID);
+        ATTRIBUTE_KEYS.put("item_role_name", KEY_ITEM_ROLE_NAME);
+        ATTRIBUTE_KEYS.put("status", KEY_STATUS);
+        ATTRIBUTE_KEYS.put("item_type", KEY_ITEM_TYPE);
+        ATTRIBUTE_KEYS.put("item_id", KEY_ITEM_ID);
+        ATTRIBUTE_KEYS.put("item_name", KEY_ITEM_NAME);
+        ATTRIBUTE_KEYS.put("item_user_id", KEY_ITEM_USER_ID);
+        ATTRIBUTE_KEYS.put("item_user_name", KEY_ITEM_USER_NAME);
+        ATTRIBUTE_KEYS.put("user_id", KEY_USER_ID);
+        ATTRIBUTE_KEYS.put("name", KEY_NAME);
+        ATTRIBUTE_KEYS.put("email", KEY_EMAIL);
+    }
+
     /** Collaboration id. */
     private long mId;
     /** Item role name. */
@@ -235,38 +275,71 @@ public class Collaboration extends DAO {
      *            The value to be set
      */
     public void parseAttribute(final String key, final String value) {
-        if (key.equals("id")) {
-            setId(BoxUtils.parseLong(value, -1));
-        }
-        else if (key.equals("item_role_name")) {
-            setItemRoleName(value);
-        }
-        else if (key.equals("status")) {
-            setStatus(value);
-        }
-        else if (key.equals("item_type")) {
-            setItemType(value);
-        }
-        else if (key.equals("item_id")) {
-            setItemId(BoxUtils.parseLong(value, -1));
-        }
-        else if (key.equals("item_name")) {
-            setItemName(value);
-        }
-        else if (key.equals("item_user_id")) {
-            setItemUserId(BoxUtils.parseLong(value, -1));
-        }
-        else if (key.equals("item_user_name")) {
-            setItemUserName(value);
-        }
-        else if (key.equals("user_id")) {
-            setUserId(BoxUtils.parseLong(value, -1));
-        }
-        else if (key.equals("name")) {
-            setName(value);
+        decodeAttribute(key, value);
+    }
+
+    /**
+     * Parse an attribute straight from the text collected by a SAX parser. Numbers and flags are decoded from the characters without creating a String, and
+     * only textual values are converted to Strings. Attributes this class does not handle are passed on to {@link #parseAttribute(String, String)}. In
+     * subclasses every attribute is passed on to it, so that an override of that method sees all attributes.
+     * 
+     * @param key
+     *            Corresponds to attribute names and element names returned by Box API
+     * @param value
+     *            The characters of the value to be set
+     */
+    public void parseAttribute(final String key, final CharSequence value) {
+        if (getClass() != Collaboration.class || !decodeAttribute(key, value)) {
+            parseAttribute(key, value.toString());
         }
-        else if (key.equals("email")) {
-            setEmail(value);
+    }
+
+    /**
+     * Set the member data for an attribute handled by this class.
+     * 
+     * @param key
+     *            Corresponds to attribute names and element names returned by Box API
+     * @param value
+     *            The characters of the value to be set
+     * @return true if the attribute is handled by this class
+     */
+    private boolean decodeAttribute(final String key, final CharSequence value) {
+        switch (ATTRIBUTE_KEYS.get(key)) {
+            case KEY_ID:
+                setId(BoxUtils.parseLong(value, -1));
+                return true;
+            case KEY_ITEM_ROLE_NAME:
+                setItemRoleName(value.toString());
+                return true;
+            case KEY_STATUS:
+                setStatus(value.toString());
+                return true;
+            case KEY_ITEM_TYPE:
+                setItemType(value.toString());
+                return true;
+            case KEY_ITEM_ID:
+                setItemId(BoxUtils.parseLong(value, -1));
+                return true;
+            case KEY_ITEM_NAME:
+                setItemName(value.toString());
+                return true;
+            case KEY_ITEM_USER_ID:
+                setItemUserId(BoxUtils.parseLong(value, -1));
+                return true;
+            case KEY_ITEM_USER_NAME:
+                setItemUserName(value.toString());
+                return true;
+            case KEY_USER_ID:
+                setUserId(BoxUtils.parseLong(value, -1));
+                return true;
+            case KEY_NAME:
+                setName(value.toString());
+                return true;
+            case KEY_EMAIL:
+                setEmail(value.toString());
+                return true;
+            default:
+                return false;
         }
     }
 }
@@ -15,6 +15,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import com.box.androidlib.Utils.BoxUtils;
+import com.box.androidlib.Utils.KeyTable;
 
 /**
  * Represents a comment made on a file or folder on Box.
@@ -28,6 +29,31 @@ public class Comment extends DAO {
      */
     private static final long serialVersionUID = 1L;
 
+    /** Attribute code for comment_id and id. */
+    private static final int KEY_ID = 0;
+    /** Attribute code for message. */
+    private static final int KEY_MESSAGE = 1;
+    /** Attribute code for user_id. */
+    private static final int KEY_USER_ID = 2;
+    /** Attribute code for user_name. */
+    private static final int KEY_USER_NAME = 3;
+    /** Attribute code for created. */
+    private static final int KEY_CREATED = 4;
+    /** Attribute code for avatar_url. */
+    private static final int KEY_AVATAR_URL = 5;
+    /** Codes of the attributes handled by {@link #parseAttribute(String, CharSequence)}. */
+    private static final KeyTable ATTRIBUTE_KEYS = new KeyTable();
+
+    static {
+        ATTRIBUTE_KEYS.put("comment_id", KEY_ID);
+        ATTRIBUTE_KEYS.put("id", KEY_ID);
+        ATTRIBUTE_KEYS.put("message", KEY_MESSAGE);
+        ATTRIBUTE_KEYS.put("user_id", KEY_USER_ID);
+        ATTRIBUTE_KEYS.put("user_name", KEY_USER_NAME);
+        ATTRIBUTE_KEYS.put("created", KEY_CREATED);
+        ATTRIBUTE_KEYS.put("avatar_url", KEY_AVATAR_URL);
+    }
+
     /**
      * Comment id.
      */
@@ -222,23 +248,56 @@ public class Comment extends DAO {
      *            The value to be set
      */
     public void parseAttribute(final String key, final String value) {
-        if (key.equals("comment_id") || key.equals("id")) {
-            setId(BoxUtils.parseLong(value));
-        }
-        else if (key.equals("message")) {
-            setMessage(value.trim());
-        }
-        else if (key.equals("user_id")) {
-            setFromUserId(BoxUtils.parseLong(value));
-        }
-        else if (key.equals("user_name")) {
-            setFromUserName(value.trim());
-        }
-        else if (key.equals("created")) {
-            setCreated(BoxUtils.parseLong(value));
+        decodeAttribute(key, value);
+    }
+
+    /**
+     * Parse an attribute straight from the text collected by a SAX parser. Numbers and flags are decoded from the characters without creating a String, and
+     * only textual values are converted to Strings. Attributes this class does not handle are passed on to {@link #parseAttribute(String, String)}. In
+     * subclasses every attribute is passed on to it, so that an override of that method sees all attributes.
+     * 
+     * @param key
+     *            Corresponds to attribute names and element names returned by Box API
+     * @param value
+     *            The characters of the value to be set
+     */
+    public void parseAttribute(final String key, final CharSequence value) {
+        if (getClass() != Comment.class || !decodeAttribute(key, value)) {
+            parseAttribute(key, value.toString());
         }
-        else if (key.equals("avatar_url")) {
-            setAvatarURL(value);
+    }
+
+    /**
+     * Set the member data for an attribute handled by this class.
+     * 
+     * @param key
+     *            Corresponds to attribute names and element names returned by Box API
+     * @param value
+     *            The characters of the value to be set
+     * @return true if the attribute is handled by this class
+     */
+    private boolean decodeAttribute(final String key, final CharSequence value) {
+        switch (ATTRIBUTE_KEYS.get(key)) {
+            case KEY_ID:
+                setId(BoxUtils.parseLong(value));
+                return true;
+            case KEY_MESSAGE:
+                setMessage(value.toString().trim());
+                return true;
+            case KEY_USER_ID:
+                setFromUserId(BoxUtils.parseLong(value));
+                return true;
+            case KEY_USER_NAME:
+                setFromUserName(value.toString().trim());
+                return true;
+            case KEY_CREATED:
+                setCreated(BoxUtils.parseLong(value));
+                return true;
+            case KEY_AVATAR_URL:
+                setAvatarURL(value.toString());
+                return true;
+            default:
+                return false;
         }
     }
 
@@ -14,11 +14,21 @@ package com.box.androidlib.DAO;
 import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 
+import com.box.androidlib.Utils.UrlTemplate;
 import com.google.renamedgson.Gson;
+import com.google.renamedgson.GsonBuilder;
+import com.google.renamedgson.JsonDeserializationContext;
+import com.google.renamedgson.JsonDeserializer;
+import com.google.renamedgson.JsonElement;
+import com.google.renamedgson.JsonParseException;
+import com.google.renamedgson.JsonPrimitive;
+import com.google.renamedgson.JsonSerializationContext;
+import com.google.renamedgson.JsonSerializer;
 
 /**
  * Base DAO class.
@@ -180,7 +190,7 @@ public abstract class DAO implements Serializable {
      * @return A serialized JSON string.
      */
     public static String toJSON(final DAO dao) {
-        Gson gson = new Gson();
+        Gson gson = createGson();
         return gson.toJson(dao);
     }
 
@@ -197,7 +207,7 @@ public abstract class DAO implements Serializable {
      */
     @SuppressWarnings("unchecked")
     public static <T extends DAO> T fromJSON(final String json, final Class<? extends DAO> daoClass) {
-        Gson gson = new Gson();
+        Gson gson = createGson();
         T dao = (T) gson.fromJson(json, daoClass);
 
         // For BoxFolder, we need to repair the parent folder references of its
@@ -210,4 +220,29 @@ public abstract class DAO implements Serializable {
 
         return dao;
     }
+
+    /**
+     * Create a Gson instance that writes thumbnail templates as strings.
+     * 
+     * @return Gson instance
+     */
+    private static Gson createGson() {
+        return new GsonBuilder().registerTypeAdapter(UrlTemplate.class, new UrlTemplateAdapter()).create();
+    }
+
+    /**
+     * Converts UrlTemplate to and from a JSON string. Plain urls, as written before thumbnails were stored as templates, are read as they are.
+     */
+    private static class UrlTemplateAdapter implements JsonSerializer<UrlTemplate>, JsonDeserializer<UrlTemplate> {
+
+        @Override
+        public JsonElement serialize(final UrlTemplate src, final Type typeOfSrc, final JsonSerializationContext context) {
+            return new JsonPrimitive(src.toString());
+        }
+
+        @Override
+        public UrlTemplate deserialize(final JsonElement json, final Type typeOfT, final JsonDeserializationContext context) throws JsonParseException {
+            return UrlTemplate.parse(json.getAsString());
+        }
+    }
 }
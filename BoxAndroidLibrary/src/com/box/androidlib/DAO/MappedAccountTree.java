@@ -0,0 +1,725 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.DAO;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+
+import com.box.androidlib.Box;
+import com.box.androidlib.Utils.UrlTemplate;
+
+/**
+ * An account tree saved to a file that is memory-mapped and read lazily. Opening it only checks the header, and looking up a folder only decodes that folder,
+ * its files and its child folders, so an app can show the last known contents of a folder right after launch while it fetches the current tree with
+ * {@link Box#getAccountTree(String, long, String[], com.box.androidlib.ResponseListeners.GetAccountTreeListener)} in the background, then save the new tree with
+ * {@link #write(File, BoxFolder)}.
+ * 
+ * Folders and files are returned as instances of {@link Box#getBoxFolderClass()} and {@link Box#getBoxFileClass()}, with the fields of the base classes. Once
+ * opened, a MappedAccountTree never changes and is safe to use from several threads.
+ * 
+ * @author developers@box.net
+ */
+public final class MappedAccountTree {
+
+    /** Format version written by this class. */
+    public static final int VERSION = 1;
+
+    /** First bytes of every file ("BoxM"). */
+    private static final int MAGIC = 0x426f784d;
+    /** Size of the header. */
+    private static final int HEADER_SIZE = 40;
+    /** Marks a null string or a missing folder. */
+    private static final int NONE = -1;
+    /** Flag set when a folder or file is shared. */
+    private static final int FLAG_SHARED = 1;
+    /** Flag set when a folder has collaborators. */
+    private static final int FLAG_HAS_COLLABORATORS = 2;
+    /** Size of an entry of the id indexes: the id and the record number. */
+    private static final int INDEX_ENTRY_SIZE = 12;
+
+    // Folder records. Child folders of a folder are consecutive records, and so are the files of a folder.
+    /** Offset of the folder id. */
+    private static final int FOLDER_ID = 0;
+    /** Offset of the parent folder id. */
+    private static final int FOLDER_PARENT_ID = 8;
+    /** Offset of the user id. */
+    private static final int FOLDER_USER_ID = 16;
+    /** Offset of the size. */
+    private static final int FOLDER_SIZE = 24;
+    /** Offset of the file count reported by Box. */
+    private static final int FOLDER_FILE_COUNT = 32;
+    /** Offset of the created time. */
+    private static final int FOLDER_CREATED = 40;
+    /** Offset of the updated time. */
+    private static final int FOLDER_UPDATED = 48;
+    /** Offset of the time the DAO was created. */
+    private static final int FOLDER_DAO_CREATED = 56;
+    /** Offset of the time the DAO was updated. */
+    private static final int FOLDER_DAO_UPDATED = 64;
+    /** Offset of the flags. */
+    private static final int FOLDER_FLAGS = 72;
+    /** Offset of the number of the first tag id. */
+    private static final int FOLDER_FIRST_TAG = 76;
+    /** Offset of the number of tag ids. */
+    private static final int FOLDER_TAG_COUNT = 80;
+    /** Offset of the record number of the first child folder. */
+    private static final int FOLDER_FIRST_FOLDER = 84;
+    /** Offset of the number of child folders. */
+    private static final int FOLDER_FOLDER_COUNT = 88;
+    /** Offset of the record number of the first file. */
+    private static final int FOLDER_FIRST_FILE = 92;
+    /** Offset of the number of files. */
+    private static final int FOLDER_FILE_RECORDS = 96;
+    /** Offset of the string offsets, in the order of {@link #folderStrings(BoxFolder)}. */
+    private static final int FOLDER_STRINGS = 100;
+    /** Number of strings of a folder. */
+    private static final int FOLDER_STRING_COUNT = 13;
+    /** Size of a folder record. */
+    private static final int FOLDER_RECORD_SIZE = FOLDER_STRINGS + FOLDER_STRING_COUNT * 4;
+
+    // File records.
+    /** Offset of the file id. */
+    private static final int FILE_ID = 0;
+    /** Offset of the folder id. */
+    private static final int FILE_FOLDER_ID = 8;
+    /** Offset of the created time. */
+    private static final int FILE_CREATED = 16;
+    /** Offset of the updated time. */
+    private static final int FILE_UPDATED = 24;
+    /** Offset of the size. */
+    private static final int FILE_SIZE = 32;
+    /** Offset of the time the DAO was created. */
+    private static final int FILE_DAO_CREATED = 40;
+    /** Offset of the time the DAO was updated. */
+    private static final int FILE_DAO_UPDATED = 48;
+    /** Offset of the flags. */
+    private static final int FILE_FLAGS = 56;
+    /** Offset of the comment count. */
+    private static final int FILE_COMMENT_COUNT = 60;
+    /** Offset of the number of the first tag id. */
+    private static final int FILE_FIRST_TAG = 64;
+    /** Offset of the number of tag ids. */
+    private static final int FILE_TAG_COUNT = 68;
+    /** Offset of the string offsets, in the order of {@link #fileStrings(BoxFile)}. */
+    private static final int FILE_STRINGS = 72;
+    /** Number of strings of a file. */
+    private static final int FILE_STRING_COUNT = 10;
+    /** Size of a file record. */
+    private static final int FILE_RECORD_SIZE = FILE_STRINGS + FILE_STRING_COUNT * 4;
+
+    /** The mapped file. Only read with absolute gets, so it can be shared between threads. */
+    private final ByteBuffer mBuffer;
+    /** Number of folders. */
+    private final int mFolderCount;
+    /** Number of files. */
+    private final int mFileCount;
+    /** Start of the folder records. */
+    private final int mFoldersStart;
+    /** Start of the file records. */
+    private final int mFilesStart;
+    /** Start of the folder id index. */
+    private final int mFolderIndexStart;
+    /** Start of the file id index. */
+    private final int mFileIndexStart;
+    /** Start of the tag ids. */
+    private final int mTagsStart;
+    /** Start of the strings. */
+    private final int mStringsStart;
+
+    /**
+     * Create a tree over a mapped file whose header has been checked.
+     * 
+     * @param buffer
+     *            The mapped file
+     */
+    private MappedAccountTree(final ByteBuffer buffer) {
+        mBuffer = buffer;
+        mFolderCount = buffer.getInt(8);
+        mFileCount = buffer.getInt(12);
+        mFoldersStart = HEADER_SIZE;
+        mFilesStart = buffer.getInt(16);
+        mFolderIndexStart = buffer.getInt(20);
+        mFileIndexStart = buffer.getInt(24);
+        mTagsStart = buffer.getInt(28);
+        mStringsStart = buffer.getInt(32);
+    }
+
+    /**
+     * Open a tree written by {@link #write(File, BoxFolder)}.
+     * 
+     * @param file
+     *            The file
+     * @return The tree
+     * @throws IOException
+     *             if the file cannot be read, is corrupt, or was written by another version of this class. Fetch the tree again in that case.
+     */
+    public static MappedAccountTree open(final File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        final ByteBuffer buffer;
+        try {
+            final long length = raf.length();
+            if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+                throw new IOException("Not an account tree");
+            }
+            // The mapping stays valid once the file is closed.
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+        finally {
+            raf.close();
+        }
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not an account tree");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported account tree version " + buffer.getInt(4));
+        }
+        final MappedAccountTree tree = new MappedAccountTree(buffer);
+        if (tree.mFolderCount < 1 || tree.mFileCount < 0 || tree.mFolderCount > buffer.capacity() / FOLDER_RECORD_SIZE
+            || tree.mFileCount > buffer.capacity() / FILE_RECORD_SIZE || tree.mFilesStart != HEADER_SIZE + tree.mFolderCount * FOLDER_RECORD_SIZE
+            || tree.mFolderIndexStart != tree.mFilesStart + tree.mFileCount * FILE_RECORD_SIZE
+            || tree.mFileIndexStart != tree.mFolderIndexStart + tree.mFolderCount * INDEX_ENTRY_SIZE
+            || tree.mTagsStart != tree.mFileIndexStart + tree.mFileCount * INDEX_ENTRY_SIZE || tree.mStringsStart < tree.mTagsStart
+            || tree.mStringsStart > buffer.capacity()) {
+            throw new IOException("Corrupt account tree");
+        }
+        return tree;
+    }
+
+    /**
+     * Save a tree. The file is written under a temporary name and then renamed, so a tree that is open or being opened is never seen half written.
+     * 
+     * @param file
+     *            The file
+     * @param root
+     *            The folder at the top of the tree
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public static void write(final File file, final BoxFolder root) throws IOException {
+        // Number the folders breadth first, so that the child folders of every folder are consecutive.
+        final ArrayList<BoxFolder> folders = new ArrayList<BoxFolder>();
+        folders.add(root);
+        for (int i = 0; i < folders.size(); i++) {
+            folders.addAll(folders.get(i).getFoldersInFolder());
+        }
+        final ArrayList<BoxFile> files = new ArrayList<BoxFile>();
+        for (int i = 0; i < folders.size(); i++) {
+            files.addAll(folders.get(i).getFilesInFolder());
+        }
+
+        final int filesStart = HEADER_SIZE + folders.size() * FOLDER_RECORD_SIZE;
+        final int folderIndexStart = filesStart + files.size() * FILE_RECORD_SIZE;
+        final int fileIndexStart = folderIndexStart + folders.size() * INDEX_ENTRY_SIZE;
+        final int tagsStart = fileIndexStart + files.size() * INDEX_ENTRY_SIZE;
+        final ByteBuffer records = ByteBuffer.allocate(tagsStart);
+        final StringPool strings = new StringPool();
+        final ByteArrayOutputStream tags = new ByteArrayOutputStream();
+        int tagCount = 0;
+
+        records.putInt(MAGIC).putInt(VERSION).putInt(folders.size()).putInt(files.size());
+        records.putInt(filesStart).putInt(folderIndexStart).putInt(fileIndexStart).putInt(tagsStart);
+
+        int nextFolder = 1;
+        int nextFile = 0;
+        for (int i = 0; i < folders.size(); i++) {
+            final BoxFolder folder = folders.get(i);
+            final int pos = HEADER_SIZE + i * FOLDER_RECORD_SIZE;
+            records.putLong(pos + FOLDER_ID, folder.mId);
+            records.putLong(pos + FOLDER_PARENT_ID, folder.mParentFolderId);
+            records.putLong(pos + FOLDER_USER_ID, folder.mUserId);
+            records.putLong(pos + FOLDER_SIZE, folder.mSize);
+            records.putLong(pos + FOLDER_FILE_COUNT, folder.mFileCount);
+            records.putLong(pos + FOLDER_CREATED, folder.mCreated);
+            records.putLong(pos + FOLDER_UPDATED, folder.mUpdated);
+            records.putLong(pos + FOLDER_DAO_CREATED, folder.mDAOCreated);
+            records.putLong(pos + FOLDER_DAO_UPDATED, folder.mDAOUpdated);
+            records.putInt(pos + FOLDER_FLAGS, (folder.mShared ? FLAG_SHARED : 0) | (folder.mHasCollaborators ? FLAG_HAS_COLLABORATORS : 0));
+            records.putInt(pos + FOLDER_FIRST_TAG, tagCount);
+            records.putInt(pos + FOLDER_TAG_COUNT, folder.mTagIds.size());
+            tagCount += writeTags(tags, folder.mTagIds);
+            records.putInt(pos + FOLDER_FIRST_FOLDER, nextFolder);
+            records.putInt(pos + FOLDER_FOLDER_COUNT, folder.getFoldersInFolder().size());
+            nextFolder += folder.getFoldersInFolder().size();
+            records.putInt(pos + FOLDER_FIRST_FILE, nextFile);
+            records.putInt(pos + FOLDER_FILE_RECORDS, folder.getFilesInFolder().size());
+            nextFile += folder.getFilesInFolder().size();
+            final String[] values = folderStrings(folder);
+            for (int j = 0; j < FOLDER_STRING_COUNT; j++) {
+                records.putInt(pos + FOLDER_STRINGS + j * 4, strings.add(values[j]));
+            }
+        }
+        for (int i = 0; i < files.size(); i++) {
+            final BoxFile boxFile = files.get(i);
+            final int pos = filesStart + i * FILE_RECORD_SIZE;
+            records.putLong(pos + FILE_ID, boxFile.mId);
+            records.putLong(pos + FILE_FOLDER_ID, boxFile.mFolderId);
+            records.putLong(pos + FILE_CREATED, boxFile.mCreated);
+            records.putLong(pos + FILE_UPDATED, boxFile.mUpdated);
+            records.putLong(pos + FILE_SIZE, boxFile.mSize);
+            records.putLong(pos + FILE_DAO_CREATED, boxFile.mDAOCreated);
+            records.putLong(pos + FILE_DAO_UPDATED, boxFile.mDAOUpdated);
+            records.putInt(pos + FILE_FLAGS, boxFile.mShared ? FLAG_SHARED : 0);
+            records.putInt(pos + FILE_COMMENT_COUNT, boxFile.mCommentCount);
+            records.putInt(pos + FILE_FIRST_TAG, tagCount);
+            records.putInt(pos + FILE_TAG_COUNT, boxFile.mTagIds.size());
+            tagCount += writeTags(tags, boxFile.mTagIds);
+            final String[] values = fileStrings(boxFile);
+            for (int j = 0; j < FILE_STRING_COUNT; j++) {
+                records.putInt(pos + FILE_STRINGS + j * 4, strings.add(values[j]));
+            }
+        }
+        writeIndex(records, folderIndexStart, folders.size(), HEADER_SIZE, FOLDER_RECORD_SIZE);
+        writeIndex(records, fileIndexStart, files.size(), filesStart, FILE_RECORD_SIZE);
+        records.putInt(32, tagsStart + tags.size());
+        records.clear();
+
+        final File temp = new File(file.getPath() + ".tmp");
+        final RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+        try {
+            raf.setLength(0);
+            final FileChannel channel = raf.getChannel();
+            while (records.hasRemaining()) {
+                channel.write(records);
+            }
+            raf.write(tags.toByteArray());
+            strings.writeTo(raf);
+            channel.force(true);
+        }
+        finally {
+            raf.close();
+        }
+        if (!temp.renameTo(file)) {
+            file.delete();
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                throw new IOException("Cannot rename " + temp + " to " + file);
+            }
+        }
+    }
+
+    /**
+     * Get the number of folders in the tree.
+     * 
+     * @return number of folders
+     */
+    public int getFolderCount() {
+        return mFolderCount;
+    }
+
+    /**
+     * Get the number of files in the tree.
+     * 
+     * @return number of files
+     */
+    public int getFileCount() {
+        return mFileCount;
+    }
+
+    /**
+     * Get the id of the folder at the top of the tree.
+     * 
+     * @return folder id
+     */
+    public long getRootFolderId() {
+        return mBuffer.getLong(HEADER_SIZE + FOLDER_ID);
+    }
+
+    /**
+     * Get a folder with its files and child folders, the same way {@link Box#PARAM_ONELEVEL} gets them from Box. The child folders do not have their own
+     * contents filled in; get them with this method when they are needed. The folder has no parent folder set, but its parent folder id is set.
+     * 
+     * @param folderId
+     *            The folder id
+     * @return The folder, or null if the tree does not contain it
+     * @throws IOException
+     *             if the file is corrupt. Fetch the tree again in that case.
+     */
+    public BoxFolder getFolder(final long folderId) throws IOException {
+        final int record = find(mFolderIndexStart, mFolderCount, folderId);
+        if (record < 0) {
+            return null;
+        }
+        final BoxFolder folder = readFolder(record);
+        final int pos = mFoldersStart + record * FOLDER_RECORD_SIZE;
+        final int firstFolder = mBuffer.getInt(pos + FOLDER_FIRST_FOLDER);
+        final int folderCount = mBuffer.getInt(pos + FOLDER_FOLDER_COUNT);
+        for (int i = 0; i < folderCount; i++) {
+            final BoxFolder child = readFolder(firstFolder + i);
+            folder.addChildFolder(child);
+            child.setParentFolder(folder);
+        }
+        final int firstFile = mBuffer.getInt(pos + FOLDER_FIRST_FILE);
+        final int fileCount = mBuffer.getInt(pos + FOLDER_FILE_RECORDS);
+        for (int i = 0; i < fileCount; i++) {
+            final BoxFile file = readFile(firstFile + i);
+            folder.addChildFile(file);
+            file.setFolder(folder);
+        }
+        folder.trimToSize();
+        return folder;
+    }
+
+    /**
+     * Get a file. Its folder is not set, but its folder id is.
+     * 
+     * @param fileId
+     *            The file id
+     * @return The file, or null if the tree does not contain it
+     * @throws IOException
+     *             if the file is corrupt. Fetch the tree again in that case.
+     */
+    public BoxFile getFile(final long fileId) throws IOException {
+        final int record = find(mFileIndexStart, mFileCount, fileId);
+        if (record < 0) {
+            return null;
+        }
+        return readFile(record);
+    }
+
+    /**
+     * Decode a folder record, without its contents.
+     * 
+     * @param record
+     *            The record number
+     * @return The folder
+     * @throws IOException
+     *             if the record is not in the file
+     */
+    private BoxFolder readFolder(final int record) throws IOException {
+        if (record < 0 || record >= mFolderCount) {
+            throw new IOException("Corrupt account tree");
+        }
+        final BoxFolder folder;
+        try {
+            folder = Box.getBoxFolderClass().newInstance();
+        }
+        catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot create " + Box.getBoxFolderClass().getName());
+        }
+        catch (InstantiationException e) {
+            throw new IllegalStateException("Cannot create " + Box.getBoxFolderClass().getName());
+        }
+        final int pos = mFoldersStart + record * FOLDER_RECORD_SIZE;
+        folder.mId = mBuffer.getLong(pos + FOLDER_ID);
+        folder.mParentFolderId = mBuffer.getLong(pos + FOLDER_PARENT_ID);
+        folder.mUserId = mBuffer.getLong(pos + FOLDER_USER_ID);
+        folder.mSize = mBuffer.getLong(pos + FOLDER_SIZE);
+        folder.mFileCount = mBuffer.getLong(pos + FOLDER_FILE_COUNT);
+        folder.mCreated = mBuffer.getLong(pos + FOLDER_CREATED);
+        folder.mUpdated = mBuffer.getLong(pos + FOLDER_UPDATED);
+        folder.mDAOCreated = mBuffer.getLong(pos + FOLDER_DAO_CREATED);
+        folder.mDAOUpdated = mBuffer.getLong(pos + FOLDER_DAO_UPDATED);
+        final int flags = mBuffer.getInt(pos + FOLDER_FLAGS);
+        folder.mShared = (flags & FLAG_SHARED) != 0;
+        folder.mHasCollaborators = (flags & FLAG_HAS_COLLABORATORS) != 0;
+        readTags(folder.mTagIds, mBuffer.getInt(pos + FOLDER_FIRST_TAG), mBuffer.getInt(pos + FOLDER_TAG_COUNT));
+        int s = pos + FOLDER_STRINGS;
+        folder.mFolderName = readString(s);
+        folder.mDescription = readString(s += 4);
+        folder.mSharedName = readString(s += 4);
+        folder.mSharedLink = readString(s += 4);
+        folder.mPermissions = readString(s += 4);
+        folder.mPassword = readString(s += 4);
+        folder.mThumbnail = UrlTemplate.parse(readString(s += 4));
+        folder.mSmallThumbnail = UrlTemplate.parse(readString(s += 4));
+        folder.mLargeThumbnail = UrlTemplate.parse(readString(s += 4));
+        folder.mLargerThumbnail = UrlTemplate.parse(readString(s += 4));
+        folder.mPath = readString(s += 4);
+        folder.mPublicName = readString(s += 4);
+        folder.mFolderPathIds = readString(s += 4);
+        return folder;
+    }
+
+    /**
+     * Decode a file record.
+     * 
+     * @param record
+     *            The record number
+     * @return The file
+     * @throws IOException
+     *             if the record is not in the file
+     */
+    private BoxFile readFile(final int record) throws IOException {
+        if (record < 0 || record >= mFileCount) {
+            throw new IOException("Corrupt account tree");
+        }
+        final BoxFile file;
+        try {
+            file = Box.getBoxFileClass().newInstance();
+        }
+        catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot create " + Box.getBoxFileClass().getName());
+        }
+        catch (InstantiationException e) {
+            throw new IllegalStateException("Cannot create " + Box.getBoxFileClass().getName());
+        }
+        final int pos = mFilesStart + record * FILE_RECORD_SIZE;
+        file.mId = mBuffer.getLong(pos + FILE_ID);
+        file.mFolderId = mBuffer.getLong(pos + FILE_FOLDER_ID);
+        file.mCreated = mBuffer.getLong(pos + FILE_CREATED);
+        file.mUpdated = mBuffer.getLong(pos + FILE_UPDATED);
+        file.mSize = mBuffer.getLong(pos + FILE_SIZE);
+        file.mDAOCreated = mBuffer.getLong(pos + FILE_DAO_CREATED);
+        file.mDAOUpdated = mBuffer.getLong(pos + FILE_DAO_UPDATED);
+        file.mShared = (mBuffer.getInt(pos + FILE_FLAGS) & FLAG_SHARED) != 0;
+        file.mCommentCount = mBuffer.getInt(pos + FILE_COMMENT_COUNT);
+        readTags(file.mTagIds, mBuffer.getInt(pos + FILE_FIRST_TAG), mBuffer.getInt(pos + FILE_TAG_COUNT));
+        int s = pos + FILE_STRINGS;
+        file.mFileName = readString(s);
+        file.mDescription = readString(s += 4);
+        file.mSharedName = readString(s += 4);
+        file.mSha1 = readString(s += 4);
+        file.mPermissions = readString(s += 4);
+        file.mThumbnail = UrlTemplate.parse(readString(s += 4));
+        file.mSmallThumbnail = UrlTemplate.parse(readString(s += 4));
+        file.mLargeThumbnail = UrlTemplate.parse(readString(s += 4));
+        file.mLargerThumbnail = UrlTemplate.parse(readString(s += 4));
+        file.mPreviewThumbnail = UrlTemplate.parse(readString(s += 4));
+        return file;
+    }
+
+    /**
+     * Get the strings of a folder, in the order they are stored.
+     * 
+     * @param folder
+     *            The folder
+     * @return The strings, some may be null
+     */
+    private static String[] folderStrings(final BoxFolder folder) {
+        return new String[] {folder.mFolderName, folder.mDescription, folder.mSharedName, folder.mSharedLink, folder.mPermissions, folder.mPassword,
+                             templateString(folder.mThumbnail), templateString(folder.mSmallThumbnail), templateString(folder.mLargeThumbnail),
+                             templateString(folder.mLargerThumbnail), folder.mPath, folder.mPublicName, folder.mFolderPathIds};
+    }
+
+    /**
+     * Get the strings of a file, in the order they are stored.
+     * 
+     * @param file
+     *            The file
+     * @return The strings, some may be null
+     */
+    private static String[] fileStrings(final BoxFile file) {
+        return new String[] {file.mFileName, file.mDescription, file.mSharedName, file.mSha1, file.mPermissions, templateString(file.mThumbnail),
+                             templateString(file.mSmallThumbnail), templateString(file.mLargeThumbnail), templateString(file.mLargerThumbnail),
+                             templateString(file.mPreviewThumbnail)};
+    }
+
+    /**
+     * Get a thumbnail template as a string.
+     * 
+     * @param template
+     *            The template, may be null
+     * @return The template as a string, or null
+     */
+    private static String templateString(final UrlTemplate template) {
+        return template == null ? null : template.toString();
+    }
+
+    /**
+     * Append tag ids.
+     * 
+     * @param out
+     *            Where to append them
+     * @param tagIds
+     *            The tag ids
+     * @return Number of tag ids appended
+     */
+    private static int writeTags(final ByteArrayOutputStream out, final ArrayList<Long> tagIds) {
+        for (int i = 0; i < tagIds.size(); i++) {
+            final long tagId = tagIds.get(i);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                out.write((int) (tagId >>> shift));
+            }
+        }
+        return tagIds.size();
+    }
+
+    /**
+     * Read tag ids.
+     * 
+     * @param tagIds
+     *            Where to add them
+     * @param first
+     *            Number of the first tag id
+     * @param count
+     *            Number of tag ids
+     * @throws IOException
+     *             if the tag ids are not in the file
+     */
+    private void readTags(final ArrayList<Long> tagIds, final int first, final int count) throws IOException {
+        if (first < 0 || count < 0 || (long) first + count > (mStringsStart - mTagsStart) / 8) {
+            throw new IOException("Corrupt account tree");
+        }
+        for (int i = 0; i < count; i++) {
+            tagIds.add(mBuffer.getLong(mTagsStart + (first + i) * 8));
+        }
+        tagIds.trimToSize();
+    }
+
+    /**
+     * Write an id index: the ids of the records with their record numbers, sorted by id.
+     * 
+     * @param records
+     *            The buffer holding the records
+     * @param start
+     *            Where to write the index
+     * @param count
+     *            Number of records
+     * @param recordsStart
+     *            Start of the records
+     * @param recordSize
+     *            Size of a record, starting with the id
+     */
+    private static void writeIndex(final ByteBuffer records, final int start, final int count, final int recordsStart, final int recordSize) {
+        final Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = Integer.valueOf(i);
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+
+            @Override
+            public int compare(final Integer a, final Integer b) {
+                final long idA = records.getLong(recordsStart + a.intValue() * recordSize);
+                final long idB = records.getLong(recordsStart + b.intValue() * recordSize);
+                return idA < idB ? -1 : (idA == idB ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < count; i++) {
+            records.putLong(start + i * INDEX_ENTRY_SIZE, records.getLong(recordsStart + order[i].intValue() * recordSize));
+            records.putInt(start + i * INDEX_ENTRY_SIZE + 8, order[i].intValue());
+        }
+    }
+
+    /**
+     * Find the record number of an id.
+     * 
+     * @param start
+     *            Start of the id index
+     * @param count
+     *            Number of entries of the index
+     * @param id
+     *            The id
+     * @return The record number, or -1 if the id is not in the index
+     */
+    private int find(final int start, final int count, final long id) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final long midId = mBuffer.getLong(start + mid * INDEX_ENTRY_SIZE);
+            if (midId < id) {
+                low = mid + 1;
+            }
+            else if (midId > id) {
+                high = mid - 1;
+            }
+            else {
+                return mBuffer.getInt(start + mid * INDEX_ENTRY_SIZE + 8);
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Decode a string.
+     * 
+     * @param pos
+     *            Position of the offset of the string
+     * @return The string, or null
+     * @throws IOException
+     *             if the string is not in the file
+     */
+    private String readString(final int pos) throws IOException {
+        final int offset = mBuffer.getInt(pos);
+        if (offset == NONE) {
+            return null;
+        }
+        if (offset < 0 || offset > mBuffer.capacity() - mStringsStart - 4) {
+            throw new IOException("Corrupt account tree");
+        }
+        final int start = mStringsStart + offset;
+        final int length = mBuffer.getInt(start);
+        if (length < 0 || length > mBuffer.capacity() - start - 4) {
+            throw new IOException("Corrupt account tree");
+        }
+        final byte[] bytes = new byte[length];
+        final ByteBuffer view = mBuffer.duplicate();
+        view.position(start + 4);
+        view.get(bytes);
+        try {
+            return new String(bytes, "UTF-8");
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e.getMessage());
+        }
+    }
+
+    /**
+     * Strings of a tree being written. Each distinct string is stored once, as its length and UTF-8 bytes.
+     */
+    private static final class StringPool {
+
+        /** Offsets of the strings added so far. */
+        private final HashMap<String, Integer> mOffsets = new HashMap<String, Integer>();
+        /** The strings. */
+        private final ByteArrayOutputStream mBytes = new ByteArrayOutputStream();
+
+        /**
+         * Add a string.
+         * 
+         * @param string
+         *            The string, may be null
+         * @return Its offset, or -1 if it is null
+         * @throws IOException
+         *             never, UTF-8 is always supported
+         */
+        int add(final String string) throws IOException {
+            if (string == null) {
+                return NONE;
+            }
+            final Integer offset = mOffsets.get(string);
+            if (offset != null) {
+                return offset.intValue();
+            }
+            final int newOffset = mBytes.size();
+            final byte[] bytes = string.getBytes("UTF-8");
+            mBytes.write(bytes.length >>> 24);
+            mBytes.write(bytes.length >>> 16);
+            mBytes.write(bytes.length >>> 8);
+            mBytes.write(bytes.length);
+            mBytes.write(bytes);
+            mOffsets.put(string, Integer.valueOf(newOffset));
+            return newOffset;
+        }
+
+        /**
+         * Write all strings.
+         * 
+         * @param out
+         *            Where to write them
+         * @throws IOException
+         *             if they cannot be written
+         */
+        void writeTo(final RandomAccessFile out) throws IOException {
+            out.write(mBytes.toByteArray());
+        }
+    }
+}
@@ -0,0 +1,903 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.DAO;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import com.box.androidlib.Box;
+import com.box.androidlib.Utils.UrlTemplate;
+
+/**
+ * Compact, versioned binary snapshots of BoxFolder trees, BoxFiles, Updates and Users, for saving them to disk and reading them back much faster than with
+ * {@link DAO#toJSON(DAO)} and {@link DAO#fromJSON(String, Class)}. Trees are written and read without recursion, and parent references are restored as folders
+ * and files are read, so there is no need to call {@link BoxFolder#repairParentFolderReferences()}.
+ * 
+ * Folders and files are read back as instances of {@link Box#getBoxFolderClass()} and {@link Box#getBoxFileClass()}. If those classes have data of their own
+ * to keep, they can implement {@link Extension}. Extension data is skipped when reading it into a class that does not implement Extension.
+ * 
+ * A snapshot of a User includes its auth token, so keep snapshots in private storage.
+ * 
+ * @author developers@box.net
+ */
+public final class SnapshotCodec {
+
+    /**
+     * Implemented by BoxFolder and BoxFile subclasses that need to keep data of their own in snapshots.
+     */
+    public interface Extension {
+
+        /**
+         * Write the data of the subclass. Called after the fields of the base class have been written.
+         * 
+         * @param out
+         *            Where to write to
+         * @throws IOException
+         *             if the data cannot be written
+         */
+        void writeSnapshot(DataOutput out) throws IOException;
+
+        /**
+         * Read the data written by {@link #writeSnapshot(DataOutput)}. Called after the fields of the base class have been read.
+         * 
+         * @param in
+         *            Where to read from. Only holds the data written by writeSnapshot.
+         * @throws IOException
+         *             if the data cannot be read
+         */
+        void readSnapshot(DataInput in) throws IOException;
+    }
+
+    /** Format version written by this class. */
+    public static final int VERSION = 1;
+
+    /** First bytes of every snapshot ("BoxS"). */
+    private static final int MAGIC = 0x426f7853;
+    /** Snapshot kind of a folder tree. */
+    private static final int KIND_FOLDER = 1;
+    /** Snapshot kind of a file. */
+    private static final int KIND_FILE = 2;
+    /** Snapshot kind of a list of updates. */
+    private static final int KIND_UPDATES = 3;
+    /** Snapshot kind of a user. */
+    private static final int KIND_USER = 4;
+    /** Marks a null string. */
+    private static final int STRING_NULL = 0;
+    /** Marks a string written with writeUTF. */
+    private static final int STRING_UTF = 1;
+    /** Marks a string too long for writeUTF, written as chars. */
+    private static final int STRING_CHARS = 2;
+    /** Longest string that always fits in writeUTF, which allows 65535 bytes of at most 3 bytes per char. */
+    private static final int MAX_UTF_LENGTH = 65535 / 3;
+    /** Buffer size used for channels. */
+    private static final int CHANNEL_BUFFER_SIZE = 64 * 1024;
+
+    /** Where the snapshot is written. */
+    private final DataOutput mOut;
+    /** Where the snapshot is read from. */
+    private final DataInput mIn;
+    /** Indexes of repeated strings already written, such as permissions. */
+    private final HashMap<String, Integer> mWrittenStrings = new HashMap<String, Integer>();
+    /** Indexes of thumbnail templates already written. Templates are shared, so they are matched by reference. */
+    private final IdentityHashMap<UrlTemplate, Integer> mWrittenTemplates = new IdentityHashMap<UrlTemplate, Integer>();
+    /** Repeated strings read so far, by index. */
+    private final ArrayList<String> mReadStrings = new ArrayList<String>();
+    /** Thumbnail templates read so far, by index. */
+    private final ArrayList<UrlTemplate> mReadTemplates = new ArrayList<UrlTemplate>();
+
+    /**
+     * Create a codec for one snapshot.
+     * 
+     * @param out
+     *            Where to write, or null when reading
+     * @param in
+     *            Where to read from, or null when writing
+     */
+    private SnapshotCodec(final DataOutput out, final DataInput in) {
+        mOut = out;
+        mIn = in;
+    }
+
+    /**
+     * Write a folder with everything below it.
+     * 
+     * @param out
+     *            Where to write to
+     * @param folder
+     *            The folder at the top of the tree
+     * @throws IOException
+     *             if the snapshot cannot be written
+     */
+    public static void writeFolder(final DataOutput out, final BoxFolder folder) throws IOException {
+        final SnapshotCodec codec = new SnapshotCodec(out, null);
+        codec.writeHeader(KIND_FOLDER);
+        codec.writeTree(folder);
+    }
+
+    /**
+     * Read a folder with everything below it, as written by {@link #writeFolder(DataOutput, BoxFolder)}.
+     * 
+     * @param in
+     *            Where to read from
+     * @return The folder at the top of the tree
+     * @throws IOException
+     *             if the snapshot cannot be read, is corrupt or was written by a newer version of this class
+     */
+    public static BoxFolder readFolder(final DataInput in) throws IOException {
+        final SnapshotCodec codec = new SnapshotCodec(null, in);
+        codec.readHeader(KIND_FOLDER);
+        return codec.readTree();
+    }
+
+    /**
+     * Write a folder with everything below it to a channel, starting at its current position.
+     * 
+     * @param channel
+     *            Where to write to. It is not closed.
+     * @param folder
+     *            The folder at the top of the tree
+     * @throws IOException
+     *             if the snapshot cannot be written
+     */
+    public static void writeFolder(final FileChannel channel, final BoxFolder folder) throws IOException {
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), CHANNEL_BUFFER_SIZE));
+        writeFolder((DataOutput) out, folder);
+        out.flush();
+    }
+
+    /**
+     * Read a folder with everything below it from a channel, starting at its current position. The channel is read ahead, so its position afterwards may be
+     * past the end of the snapshot.
+     * 
+     * @param channel
+     *            Where to read from. It is not closed.
+     * @return The folder at the top of the tree
+     * @throws IOException
+     *             if the snapshot cannot be read, is corrupt or was written by a newer version of this class
+     */
+    public static BoxFolder readFolder(final FileChannel channel) throws IOException {
+        return readFolder((DataInput) new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), CHANNEL_BUFFER_SIZE)));
+    }
+
+    /**
+     * Write a file.
+     * 
+     * @param out
+     *            Where to write to
+     * @param file
+     *            The file
+     * @throws IOException
+     *             if the snapshot cannot be written
+     */
+    public static void writeFile(final DataOutput out, final BoxFile file) throws IOException {
+        final SnapshotCodec codec = new SnapshotCodec(out, null);
+        codec.writeHeader(KIND_FILE);
+        codec.writeFileRecord(file);
+    }
+
+    /**
+     * Read a file, as written by {@link #writeFile(DataOutput, BoxFile)}.
+     * 
+     * @param in
+     *            Where to read from
+     * @return The file
+     * @throws IOException
+     *             if the snapshot cannot be read, is corrupt or was written by a newer version of this class
+     */
+    public static BoxFile readFile(final DataInput in) throws IOException {
+        final SnapshotCodec codec = new SnapshotCodec(null, in);
+        codec.readHeader(KIND_FILE);
+        return codec.readFileRecord();
+    }
+
+    /**
+     * Write a list of updates, with their files and folders.
+     * 
+     * @param out
+     *            Where to write to
+     * @param updates
+     *            The updates
+     * @throws IOException
+     *             if the snapshot cannot be written
+     */
+    public static void writeUpdates(final DataOutput out, final List<? extends Update> updates) throws IOException {
+        final SnapshotCodec codec = new SnapshotCodec(out, null);
+        codec.writeHeader(KIND_UPDATES);
+        codec.writeVarLong(updates.size());
+        for (int i = 0; i < updates.size(); i++) {
+            codec.writeUpdateRecord(updates.get(i));
+        }
+    }
+
+    /**
+     * Read a list of updates, as written by {@link #writeUpdates(DataOutput, List)}.
+     * 
+     * @param in
+     *            Where to read from
+     * @return The updates
+     * @throws IOException
+     *             if the snapshot cannot be read, is corrupt or was written by a newer version of this class
+     */
+    public static ArrayList<Update> readUpdates(final DataInput in) throws IOException {
+        final SnapshotCodec codec = new SnapshotCodec(null, in);
+        codec.readHeader(KIND_UPDATES);
+        final int count = codec.readCount();
+        final ArrayList<Update> updates = new ArrayList<Update>(count);
+        for (int i = 0; i < count; i++) {
+            updates.add(codec.readUpdateRecord());
+        }
+        return updates;
+    }
+
+    /**
+     * Write a user.
+     * 
+     * @param out
+     *            Where to write to
+     * @param user
+     *            The user
+     * @throws IOException
+     *             if the snapshot cannot be written
+     */
+    public static void writeUser(final DataOutput out, final User user) throws IOException {
+        final SnapshotCodec codec = new SnapshotCodec(out, null);
+        codec.writeHeader(KIND_USER);
+        codec.writeDAO(user);
+        codec.writeVarLong(user.mUserId);
+        codec.writeVarLong(user.mAccessId);
+        codec.writeString(user.mAuthToken);
+        codec.writeString(user.mLogin);
+        codec.writeString(user.mEmail);
+        codec.writeVarLong(user.mSpaceAmount);
+        codec.writeVarLong(user.mSpaceUsed);
+        codec.writeVarLong(user.mMaxUploadSize);
+    }
+
+    /**
+     * Read a user, as written by {@link #writeUser(DataOutput, User)}.
+     * 
+     * @param in
+     *            Where to read from
+     * @return The user
+     * @throws IOException
+     *             if the snapshot cannot be read, is corrupt or was written by a newer version of this class
+     */
+    public static User readUser(final DataInput in) throws IOException {
+        final SnapshotCodec codec = new SnapshotCodec(null, in);
+        codec.readHeader(KIND_USER);
+        final User user = new User();
+        codec.readDAO(user);
+        user.mUserId = codec.readVarLong();
+        user.mAccessId = codec.readVarLong();
+        user.mAuthToken = codec.readString();
+        user.mLogin = codec.readString();
+        user.mEmail = codec.readString();
+        user.mSpaceAmount = codec.readVarLong();
+        user.mSpaceUsed = codec.readVarLong();
+        user.mMaxUploadSize = codec.readVarLong();
+        return user;
+    }
+
+    /**
+     * Write the start of a snapshot.
+     * 
+     * @param kind
+     *            What the snapshot holds
+     * @throws IOException
+     *             if it cannot be written
+     */
+    private void writeHeader(final int kind) throws IOException {
+        mOut.writeInt(MAGIC);
+        mOut.writeShort(VERSION);
+        mOut.writeByte(kind);
+    }
+
+    /**
+     * Read and check the start of a snapshot.
+     * 
+     * @param kind
+     *            What the snapshot should hold
+     * @throws IOException
+     *             if it cannot be read, or is not a snapshot of the expected kind and a known version
+     */
+    private void readHeader(final int kind) throws IOException {
+        if (mIn.readInt() != MAGIC) {
+            throw new IOException("Not a snapshot");
+        }
+        final int version = mIn.readUnsignedShort();
+        if (version > VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+        final int actualKind = mIn.readUnsignedByte();
+        if (actualKind != kind) {
+            throw new IOException("Snapshot holds kind " + actualKind + ", expected " + kind);
+        }
+    }
+
+    /**
+     * Write a folder tree depth first, each folder followed by its child folders.
+     * 
+     * @param root
+     *            The folder at the top of the tree
+     * @throws IOException
+     *             if it cannot be written
+     */
+    private void writeTree(final BoxFolder root) throws IOException {
+        final ArrayList<BoxFolder> stack = new ArrayList<BoxFolder>();
+        stack.add(root);
+        while (!stack.isEmpty()) {
+            final BoxFolder folder = stack.remove(stack.size() - 1);
+            writeFolderRecord(folder);
+            final List<? extends BoxFolder> children = folder.getFoldersInFolder();
+            for (int i = children.size() - 1; i >= 0; i--) {
+                stack.add(children.get(i));
+            }
+        }
+    }
+
+    /**
+     * Read a folder tree written by {@link #writeTree(BoxFolder)}, setting parent references on the way.
+     * 
+     * @return The folder at the top of the tree
+     * @throws IOException
+     *             if it cannot be read or is corrupt
+     */
+    private BoxFolder readTree() throws IOException {
+        final ArrayList<BoxFolder> stack = new ArrayList<BoxFolder>();
+        int[] remaining = new int[16];
+        final BoxFolder root = readFolderRecord();
+        stack.add(root);
+        remaining[0] = readCount();
+        while (!stack.isEmpty()) {
+            final int top = stack.size() - 1;
+            final BoxFolder parent = stack.get(top);
+            if (remaining[top] == 0) {
+                parent.trimToSize();
+                stack.remove(top);
+                continue;
+            }
+            remaining[top]--;
+            final BoxFolder folder = readFolderRecord();
+            parent.addChildFolder(folder);
+            folder.setParentFolder(parent);
+            folder.setParentFolderId(parent.getId());
+            if (top + 1 == remaining.length) {
+                final int[] grown = new int[remaining.length * 2];
+                System.arraycopy(remaining, 0, grown, 0, remaining.length);
+                remaining = grown;
+            }
+            stack.add(folder);
+            remaining[top + 1] = readCount();
+        }
+        return root;
+    }
+
+    /**
+     * Write the fields of a folder, its files and the number of its child folders.
+     * 
+     * @param folder
+     *            The folder
+     * @throws IOException
+     *             if it cannot be written
+     */
+    private void writeFolderRecord(final BoxFolder folder) throws IOException {
+        writeDAO(folder);
+        writeVarLong(folder.mId);
+        writeString(folder.mFolderName);
+        writeString(folder.mDescription);
+        writeVarLong(folder.mUserId);
+        mOut.writeBoolean(folder.mShared);
+        writeString(folder.mSharedName);
+        writeString(folder.mSharedLink);
+        mOut.writeBoolean(folder.mHasCollaborators);
+        writeRepeatedString(folder.mPermissions);
+        writeString(folder.mPassword);
+        writeVarLong(folder.mSize);
+        writeVarLong(folder.mFileCount);
+        writeVarLong(folder.mCreated);
+        writeVarLong(folder.mUpdated);
+        writeTemplate(folder.mThumbnail);
+        writeTemplate(folder.mSmallThumbnail);
+        writeTemplate(folder.mLargeThumbnail);
+        writeTemplate(folder.mLargerThumbnail);
+        writeString(folder.mPath);
+        writeString(folder.mPublicName);
+        writeVarLong(folder.mParentFolderId);
+        writeString(folder.mFolderPathIds);
+        writeVarLong(folder.mTagIds.size());
+        for (int i = 0; i < folder.mTagIds.size(); i++) {
+            writeVarLong(folder.mTagIds.get(i));
+        }
+        writeExtension(folder);
+        final List<? extends BoxFile> files = folder.getFilesInFolder();
+        writeVarLong(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            writeFileRecord(files.get(i));
+        }
+        writeVarLong(folder.getFoldersInFolder().size());
+    }
+
+    /**
+     * Read the fields of a folder and its files, as written by {@link #writeFolderRecord(BoxFolder)}, up to the number of its child folders.
+     * 
+     * @return The folder
+     * @throws IOException
+     *             if it cannot be read or is corrupt
+     */
+    private BoxFolder readFolderRecord() throws IOException {
+        final BoxFolder folder;
+        try {
+            folder = Box.getBoxFolderClass().newInstance();
+        }
+        catch (IllegalAccessException e) {
+            throw new IOException("Cannot create " + Box.getBoxFolderClass().getName());
+        }
+        catch (InstantiationException e) {
+            throw new IOException("Cannot create " + Box.getBoxFolderClass().getName());
+        }
+        readDAO(folder);
+        folder.mId = readVarLong();
+        folder.mFolderName = readString();
+        folder.mDescription = readString();
+        folder.mUserId = readVarLong();
+        folder.mShared = mIn.readBoolean();
+        folder.mSharedName = readString();
+        folder.mSharedLink = readString();
+        folder.mHasCollaborators = mIn.readBoolean();
+        folder.mPermissions = readRepeatedString();
+        folder.mPassword = readString();
+        folder.mSize = readVarLong();
+        folder.mFileCount = readVarLong();
+        folder.mCreated = readVarLong();
+        folder.mUpdated = readVarLong();
+        folder.mThumbnail = readTemplate();
+        folder.mSmallThumbnail = readTemplate();
+        folder.mLargeThumbnail = readTemplate();
+        folder.mLargerThumbnail = readTemplate();
+        folder.mPath = readString();
+        folder.mPublicName = readString();
+        folder.mParentFolderId = readVarLong();
+        folder.mFolderPathIds = readString();
+        final int tagCount = readCount();
+        for (int i = 0; i < tagCount; i++) {
+            folder.mTagIds.add(readVarLong());
+        }
+        readExtension(folder);
+        final int fileCount = readCount();
+        for (int i = 0; i < fileCount; i++) {
+            final BoxFile file = readFileRecord();
+            folder.addChildFile(file);
+            file.setFolder(folder);
+            file.setFolderId(folder.getId());
+        }
+        return folder;
+    }
+
+    /**
+     * Write the fields of a file.
+     * 
+     * @param file
+     *            The file
+     * @throws IOException
+     *             if it cannot be written
+     */
+    private void writeFileRecord(final BoxFile file) throws IOException {
+        writeDAO(file);
+        writeVarLong(file.mId);
+        writeString(file.mFileName);
+        writeString(file.mDescription);
+        writeVarLong(file.mFolderId);
+        mOut.writeBoolean(file.mShared);
+        writeString(file.mSharedName);
+        writeString(file.mSha1);
+        writeVarLong(file.mCreated);
+        writeVarLong(file.mUpdated);
+        writeVarLong(file.mSize);
+        writeTemplate(file.mThumbnail);
+        writeTemplate(file.mSmallThumbnail);
+        writeTemplate(file.mLargeThumbnail);
+        writeTemplate(file.mLargerThumbnail);
+        writeTemplate(file.mPreviewThumbnail);
+        writeRepeatedString(file.mPermissions);
+        writeVarLong(file.mTagIds.size());
+        for (int i = 0; i < file.mTagIds.size(); i++) {
+            writeVarLong(file.mTagIds.get(i));
+        }
+        writeVarLong(file.mCommentCount);
+        writeExtension(file);
+    }
+
+    /**
+     * Read the fields of a file, as written by {@link #writeFileRecord(BoxFile)}.
+     * 
+     * @return The file
+     * @throws IOException
+     *             if it cannot be read or is corrupt
+     */
+    private BoxFile readFileRecord() throws IOException {
+        final BoxFile file;
+        try {
+            file = Box.getBoxFileClass().newInstance();
+        }
+        catch (IllegalAccessException e) {
+            throw new IOException("Cannot create " + Box.getBoxFileClass().getName());
+        }
+        catch (InstantiationException e) {
+            throw new IOException("Cannot create " + Box.getBoxFileClass().getName());
+        }
+        readDAO(file);
+        file.mId = readVarLong();
+        file.mFileName = readString();
+        file.mDescription = readString();
+        file.mFolderId = readVarLong();
+        file.mShared = mIn.readBoolean();
+        file.mSharedName = readString();
+        file.mSha1 = readString();
+        file.mCreated = readVarLong();
+        file.mUpdated = readVarLong();
+        file.mSize = readVarLong();
+        file.mThumbnail = readTemplate();
+        file.mSmallThumbnail = readTemplate();
+        file.mLargeThumbnail = readTemplate();
+        file.mLargerThumbnail = readTemplate();
+        file.mPreviewThumbnail = readTemplate();
+        file.mPermissions = readRepeatedString();
+        final int tagCount = readCount();
+        for (int i = 0; i < tagCount; i++) {
+            file.mTagIds.add(readVarLong());
+        }
+        file.trimToSize();
+        file.mCommentCount = (int) readVarLong();
+        readExtension(file);
+        return file;
+    }
+
+    /**
+     * Write the fields of an update, with its files and folder trees.
+     * 
+     * @param update
+     *            The update
+     * @throws IOException
+     *             if it cannot be written
+     */
+    private void writeUpdateRecord(final Update update) throws IOException {
+        writeDAO(update);
+        writeVarLong(update.mId);
+        writeVarLong(update.mUserId);
+        writeRepeatedString(update.mUserName);
+        writeRepeatedString(update.mUserEmail);
+        writeVarLong(update.mUpdated);
+        writeRepeatedString(update.mUpdateType);
+        writeVarLong(update.mFolderId);
+        writeString(update.mFolderName);
+        mOut.writeBoolean(update.mShared);
+        writeString(update.mSharedName);
+        writeVarLong(update.mOwnerId);
+        writeString(update.mFolderPath);
+        mOut.writeBoolean(update.mCollabAccess);
+        writeVarLong(update.mFiles.size());
+        for (int i = 0; i < update.mFiles.size(); i++) {
+            writeFileRecord(update.mFiles.get(i));
+        }
+        writeVarLong(update.mFolders.size());
+        for (int i = 0; i < update.mFolders.size(); i++) {
+            writeTree(update.mFolders.get(i));
+        }
+    }
+
+    /**
+     * Read the fields of an update, as written by {@link #writeUpdateRecord(Update)}.
+     * 
+     * @return The update
+     * @throws IOException
+     *             if it cannot be read or is corrupt
+     */
+    private Update readUpdateRecord() throws IOException {
+        final Update update = new Update();
+        readDAO(update);
+        update.mId = readVarLong();
+        update.mUserId = readVarLong();
+        update.mUserName = readRepeatedString();
+        update.mUserEmail = readRepeatedString();
+        update.mUpdated = readVarLong();
+        update.mUpdateType = readRepeatedString();
+        update.mFolderId = readVarLong();
+        update.mFolderName = readString();
+        update.mShared = mIn.readBoolean();
+        update.mSharedName = readString();
+        update.mOwnerId = readVarLong();
+        update.mFolderPath = readString();
+        update.mCollabAccess = mIn.readBoolean();
+        final int fileCount = readCount();
+        for (int i = 0; i < fileCount; i++) {
+            update.mFiles.add(readFileRecord());
+        }
+        final int folderCount = readCount();
+        for (int i = 0; i < folderCount; i++) {
+            update.mFolders.add(readTree());
+        }
+        return update;
+    }
+
+    /**
+     * Write the fields of the DAO base class.
+     * 
+     * @param dao
+     *            The DAO
+     * @throws IOException
+     *             if they cannot be written
+     */
+    private void writeDAO(final DAO dao) throws IOException {
+        writeVarLong(dao.mDAOCreated);
+        writeVarLong(dao.mDAOUpdated);
+    }
+
+    /**
+     * Read the fields of the DAO base class.
+     * 
+     * @param dao
+     *            The DAO to read them into
+     * @throws IOException
+     *             if they cannot be read
+     */
+    private void readDAO(final DAO dao) throws IOException {
+        dao.mDAOCreated = readVarLong();
+        dao.mDAOUpdated = readVarLong();
+    }
+
+    /**
+     * Write the data of a subclass implementing {@link Extension}, prefixed by its length so that readers without the subclass can skip it.
+     * 
+     * @param dao
+     *            The folder or file
+     * @throws IOException
+     *             if it cannot be written
+     */
+    private void writeExtension(final DAO dao) throws IOException {
+        if (!(dao instanceof Extension)) {
+            writeVarLong(0);
+            return;
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ((Extension) dao).writeSnapshot(new DataOutputStream(bytes));
+        writeVarLong(bytes.size() + 1);
+        mOut.write(bytes.toByteArray());
+    }
+
+    /**
+     * Read the data written by {@link #writeExtension(DAO)}, or skip it if the folder or file does not implement {@link Extension}.
+     * 
+     * @param dao
+     *            The folder or file
+     * @throws IOException
+     *             if it cannot be read
+     */
+    private void readExtension(final DAO dao) throws IOException {
+        final int length = readCount() - 1;
+        if (length < 0) {
+            return;
+        }
+        final byte[] bytes = new byte[length];
+        mIn.readFully(bytes);
+        if (dao instanceof Extension) {
+            ((Extension) dao).readSnapshot(new DataInputStream(new ByteArrayInputStream(bytes)));
+        }
+    }
+
+    /**
+     * Write a string that may be null.
+     * 
+     * @param string
+     *            The string
+     * @throws IOException
+     *             if it cannot be written
+     */
+    private void writeString(final String string) throws IOException {
+        if (string == null) {
+            mOut.writeByte(STRING_NULL);
+        }
+        else if (string.length() <= MAX_UTF_LENGTH) {
+            mOut.writeByte(STRING_UTF);
+            mOut.writeUTF(string);
+        }
+        else {
+            mOut.writeByte(STRING_CHARS);
+            mOut.writeInt(string.length());
+            mOut.writeChars(string);
+        }
+    }
+
+    /**
+     * Read a string written by {@link #writeString(String)}.
+     * 
+     * @return The string, or null
+     * @throws IOException
+     *             if it cannot be read or is corrupt
+     */
+    private String readString() throws IOException {
+        final int type = mIn.readUnsignedByte();
+        if (type == STRING_NULL) {
+            return null;
+        }
+        else if (type == STRING_UTF) {
+            return mIn.readUTF();
+        }
+        else if (type == STRING_CHARS) {
+            final int length = mIn.readInt();
+            if (length < 0) {
+                throw new IOException("Corrupt snapshot");
+            }
+            final char[] chars = new char[length];
+            for (int i = 0; i < length; i++) {
+                chars[i] = mIn.readChar();
+            }
+            return new String(chars);
+        }
+        throw new IOException("Corrupt snapshot");
+    }
+
+    /**
+     * Write a string that is likely to occur many times, such as permissions. Strings written before are written as their index.
+     * 
+     * @param string
+     *            The string, may be null
+     * @throws IOException
+     *             if it cannot be written
+     */
+    private void writeRepeatedString(final String string) throws IOException {
+        if (string == null) {
+            writeVarLong(0);
+            return;
+        }
+        final Integer index = mWrittenStrings.get(string);
+        if (index != null) {
+            writeVarLong(index.intValue() + 2);
+            return;
+        }
+        mWrittenStrings.put(string, Integer.valueOf(mWrittenStrings.size()));
+        writeVarLong(1);
+        writeString(string);
+    }
+
+    /**
+     * Read a string written by {@link #writeRepeatedString(String)}.
+     * 
+     * @return The string, or null
+     * @throws IOException
+     *             if it cannot be read or is corrupt
+     */
+    private String readRepeatedString() throws IOException {
+        final int index = readCount();
+        if (index == 0) {
+            return null;
+        }
+        if (index == 1) {
+            final String string = readString();
+            mReadStrings.add(string);
+            return string;
+        }
+        if (index - 2 >= mReadStrings.size()) {
+            throw new IOException("Corrupt snapshot");
+        }
+        return mReadStrings.get(index - 2);
+    }
+
+    /**
+     * Write a thumbnail template. Templates written before are written as their index.
+     * 
+     * @param template
+     *            The template, may be null
+     * @throws IOException
+     *             if it cannot be written
+     */
+    private void writeTemplate(final UrlTemplate template) throws IOException {
+        if (template == null) {
+            writeVarLong(0);
+            return;
+        }
+        final Integer index = mWrittenTemplates.get(template);
+        if (index != null) {
+            writeVarLong(index.intValue() + 2);
+            return;
+        }
+        mWrittenTemplates.put(template, Integer.valueOf(mWrittenTemplates.size()));
+        writeVarLong(1);
+        writeString(template.toString());
+    }
+
+    /**
+     * Read a thumbnail template written by {@link #writeTemplate(UrlTemplate)}.
+     * 
+     * @return The template, or null
+     * @throws IOException
+     *             if it cannot be read or is corrupt
+     */
+    private UrlTemplate readTemplate() throws IOException {
+        final int index = readCount();
+        if (index == 0) {
+            return null;
+        }
+        if (index == 1) {
+            final UrlTemplate template = UrlTemplate.parse(readString());
+            mReadTemplates.add(template);
+            return template;
+        }
+        if (index - 2 >= mReadTemplates.size()) {
+            throw new IOException("Corrupt snapshot");
+        }
+        return mReadTemplates.get(index - 2);
+    }
+
+    /**
+     * Write a long in as few bytes as its magnitude needs, 7 bits per byte. Small negative values such as -1 are also short.
+     * 
+     * @param value
+     *            The value
+     * @throws IOException
+     *             if it cannot be written
+     */
+    private void writeVarLong(final long value) throws IOException {
+        long zigZag = (value << 1) ^ (value >> 63);
+        while ((zigZag & ~0x7fL) != 0) {
+            mOut.writeByte((int) ((zigZag & 0x7f) | 0x80));
+            zigZag >>>= 7;
+        }
+        mOut.writeByte((int) zigZag);
+    }
+
+    /**
+     * Read a long written by {@link #writeVarLong(long)}.
+     * 
+     * @return The value
+     * @throws IOException
+     *             if it cannot be read or is corrupt
+     */
+    private long readVarLong() throws IOException {
+        long zigZag = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = mIn.readUnsignedByte();
+            zigZag |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigZag >>> 1) ^ -(zigZag & 1);
+            }
+        }
+        throw new IOException("Corrupt snapshot");
+    }
+
+    /**
+     * Read a count or index written with {@link #writeVarLong(long)}.
+     * 
+     * @return The count, 0 or greater
+     * @throws IOException
+     *             if it cannot be read or is not a valid count
+     */
+    private int readCount() throws IOException {
+        final long count = readVarLong();
+        if (count < 0 || count > Integer.MAX_VALUE) {
+            throw new IOException("Corrupt snapshot");
+        }
+        return (int) count;
+    }
+}
@@ -14,6 +14,7 @@ package com.box.androidlib.DAO;
 import java.util.ArrayList;
 
 import com.box.androidlib.Utils.BoxUtils;
+import com.box.androidlib.Utils.KeyTable;
 
 /**
  * Represents an update item from the user's updates tab on Box.
@@ -27,6 +28,51 @@ public class Update extends DAO {
      */
     private static final long serialVersionUID = 1L;
 
+    /** Attribute code for update_id. */
+    private static final int KEY_UPDATE_ID = 0;
+    /** Attribute code for user_id. */
+    private static final int KEY_USER_ID = 1;
+    /** Attribute code for user_name. */
+    private static final int KEY_USER_NAME = 2;
+    /** Attribute code for user_email. */
+    private static final int KEY_USER_EMAIL = 3;
+    /** Attribute code for updated. */
+    private static final int KEY_UPDATED = 4;
+    /** Attribute code for update_type. */
+    private static final int KEY_UPDATE_TYPE = 5;
+    /** Attribute code for folder_id. */
+    private static final int KEY_FOLDER_ID = 6;
+    /** Attribute code for folder_name. */
+    private static final int KEY_FOLDER_NAME = 7;
+    /** Attribute code for shared. */
+    private static final int KEY_SHARED = 8;
+    /** Attribute code for shared_name. */
+    private static final int KEY_SHARED_NAME = 9;
+    /** Attribute code for owner_id. */
+    private static final int KEY_OWNER_ID = 10;
+    /** Attribute code for folder_path. */
+    private static final int KEY_FOLDER_PATH = 11;
+    /** Attribute code for collab_access. */
+    private static final int KEY_COLLAB_ACCESS = 12;
+    /** Codes of the attributes handled by {@link #parseAttribute(String, CharSequence)}. */
+    private static final KeyTable ATTRIBUTE_KEYS = new KeyTable();
+
+    static {
+        ATTRIBUTE_KEYS.put("update_id", KEY_UPDATE_ID);
+        ATTRIBUTE_KEYS.put("user_id", KEY_USER_ID);
+        ATTRIBUTE_KEYS.put("user_name", KEY_USER_NAME);
+        ATTRIBUTE_KEYS.put("user_email", KEY_USER_EMAIL);
+        ATTRIBUTE_KEYS.put("updated", KEY_UPDATED);
+        ATTRIBUTE_KEYS.put("update_type", KEY_UPDATE_TYPE);
+        ATTRIBUTE_KEYS.put("folder_id", KEY_FOLDER_ID);
+        ATTRIBUTE_KEYS.put("folder_name", KEY_FOLDER_NAME);
+        ATTRIBUTE_KEYS.put("shared", KEY_SHARED);
+        ATTRIBUTE_KEYS.put("shared_name", KEY_SHARED_NAME);
+        ATTRIBUTE_KEYS.put("owner_id", KEY_OWNER_ID);
+        ATTRIBUTE_KEYS.put("folder_path", KEY_FOLDER_PATH);
+        ATTRIBUTE_KEYS.put("collab_access", KEY_COLLAB_ACCESS);
+    }
+
     /**
      * update id.
      */
@@ -362,44 +408,77 @@ public class Update extends DAO {
      *            The value to be set
      */
     public void parseAttribute(final String key, final String value) {
-        if (key.equals("update_id")) {
-            setId(BoxUtils.parseLong(value));
-        }
-        else if (key.equals("user_id")) {
-            setUserId(BoxUtils.parseLong(value));
-        }
-        else if (key.equals("user_name")) {
-            setUserName(value);
-        }
-        else if (key.equals("user_email")) {
-            setUserEmail(value);
-        }
-        else if (key.equals("updated")) {
-            setUpdated(BoxUtils.parseLong(value));
-        }
-        else if (key.equals("update_type")) {
-            setUpdateType(value);
-        }
-        else if (key.equals("folder_id")) {
-            setFolderId(BoxUtils.parseLong(value));
-        }
-        else if (key.equals("folder_name")) {
-            setFolderName(value);
-        }
-        else if (key.equals("shared")) {
-            setShared(value.equals("1") ? true : false);
-        }
-        else if (key.equals("shared_name")) {
-            setSharedName(value);
-        }
-        else if (key.equals("owner_id")) {
-            setOwnerId(BoxUtils.parseLong(value));
-        }
-        else if (key.equals("folder_path")) {
-            setFolderPath(value);
+        decodeAttribute(key, value);
+    }
+
+    /**
+     * Parse an attribute straight from the text collected by a SAX parser. Numbers and flags are decoded from the characters without creating a String, and
+     * only textual values are converted to Strings. Attributes this class does not handle are passed on to {@link #parseAttribute(String, String)}. In
+     * subclasses every attribute is passed on to it, so that an override of that method sees all attributes.
+     * 
+     * @param key
+     *            Corresponds to attribute names and element names returned by Box API
+     * @param value
+     *            The characters of the value to be set
+     */
+    public void parseAttribute(final String key, final CharSequence value) {
+        if (getClass() != Update.class || !decodeAttribute(key, value)) {
+            parseAttribute(key, value.toString());
         }
-        else if (key.equals("collab_access")) {
-            setCollabAccess(value.equals("1") ? true : false);
+    }
+
+    /**
+     * Set the member data for an attribute handled by this class.
+     * 
+     * @param key
+     *            Corresponds to attribute names and element names returned by Box API
+     * @param value
+     *            The characters of the value to be set
+     * @return true if the attribute is handled by this class
+     */
+    private boolean decodeAttribute(final String key, final CharSequence value) {
+        switch (ATTRIBUTE_KEYS.get(key)) {
+            case KEY_UPDATE_ID:
+                setId(BoxUtils.parseLong(value));
+                return true;
+            case KEY_USER_ID:
+                setUserId(BoxUtils.parseLong(value));
+                return true;
+            case KEY_USER_NAME:
+                setUserName(value.toString());
+                return true;
+            case KEY_USER_EMAIL:
+                setUserEmail(value.toString());
+                return true;
+            case KEY_UPDATED:
+                setUpdated(BoxUtils.parseLong(value));
+                return true;
+            case KEY_UPDATE_TYPE:
+                setUpdateType(value.toString());
+                return true;
+            case KEY_FOLDER_ID:
+                setFolderId(BoxUtils.parseLong(value));
+                return true;
+            case KEY_FOLDER_NAME:
+                setFolderName(value.toString());
+                return true;
+            case KEY_SHARED:
+                setShared("1".contentEquals(value));
+                return true;
+            case KEY_SHARED_NAME:
+                setSharedName(value.toString());
+                return true;
+            case KEY_OWNER_ID:
+                setOwnerId(BoxUtils.parseLong(value));
+                return true;
+            case KEY_FOLDER_PATH:
+                setFolderPath(value.toString());
+                return true;
+            case KEY_COLLAB_ACCESS:
+                setCollabAccess("1".contentEquals(value));
+                return true;
+            default:
+                return false;
         }
     }
 }
@@ -12,6 +12,7 @@
 package com.box.androidlib.DAO;
 
 import com.box.androidlib.Utils.BoxUtils;
+import com.box.androidlib.Utils.KeyTable;
 
 /**
  * Represents an Box user.
@@ -25,6 +26,37 @@ public class User extends DAO {
      */
     private static final long serialVersionUID = 1L;
 
+    /** Attribute code for user_id and id. */
+    private static final int KEY_ID = 0;
+    /** Attribute code for login. */
+    private static final int KEY_LOGIN = 1;
+    /** Attribute code for email. */
+    private static final int KEY_EMAIL = 2;
+    /** Attribute code for space_amount. */
+    private static final int KEY_SPACE_AMOUNT = 3;
+    /** Attribute code for space_used. */
+    private static final int KEY_SPACE_USED = 4;
+    /** Attribute code for max_upload_size. */
+    private static final int KEY_MAX_UPLOAD_SIZE = 5;
+    /** Attribute code for access_id. */
+    private static final int KEY_ACCESS_ID = 6;
+    /** Attribute code for auth_token. */
+    private static final int KEY_AUTH_TOKEN = 7;
+    /** Codes of the attributes handled by {@link #parseAttribute(String, CharSequence)}. */
+    private static final KeyTable ATTRIBUTE_KEYS = new KeyTable();
+
+    static {
+        ATTRIBUTE_KEYS.put("user_id", KEY_ID);
+        ATTRIBUTE_KEYS.put("id", KEY_ID);
+        ATTRIBUTE_KEYS.put("login", KEY_LOGIN);
+        ATTRIBUTE_KEYS.put("email", KEY_EMAIL);
+        ATTRIBUTE_KEYS.put("space_amount", KEY_SPACE_AMOUNT);
+        ATTRIBUTE_KEYS.put("space_used", KEY_SPACE_USED);
+        ATTRIBUTE_KEYS.put("max_upload_size", KEY_MAX_UPLOAD_SIZE);
+        ATTRIBUTE_KEYS.put("access_id", KEY_ACCESS_ID);
+        ATTRIBUTE_KEYS.put("auth_token", KEY_AUTH_TOKEN);
+    }
+
     /**
      * User id.
      */
@@ -232,29 +264,62 @@ public class User extends DAO {
      *            The value to be set
      */
     public void parseAttribute(final String key, final String value) {
-        if (key.equals("user_id") || key.equals("id")) {
-            setId(BoxUtils.parseLong(value));
-        }
-        if (key.equals("login")) {
-            setLogin(value);
-        }
-        else if (key.equals("email")) {
-            setEmail(value);
-        }
-        else if (key.equals("space_amount")) {
-            setSpaceAmount(BoxUtils.parseLong(value));
-        }
-        else if (key.equals("space_used")) {
-            setSpaceUsed(BoxUtils.parseLong(value));
-        }
-        else if (key.equals("max_upload_size")) {
-            setMaxUploadSize(BoxUtils.parseLong(value));
-        }
-        else if (key.equals("access_id")) {
-            setAccessId(BoxUtils.parseLong(value));
+        decodeAttribute(key, value);
+    }
+
+    /**
+     * Parse an attribute straight from the text collected by a SAX parser. Numbers and flags are decoded from the characters without creating a String, and
+     * only textual values are converted to Strings. Attributes this class does not handle are passed on to {@link #parseAttribute(String, String)}. In
+     * subclasses every attribute is passed on to it, so that an override of that method sees all attributes.
+     * 
+     * @param key
+     *            Corresponds to attribute names and element names returned by Box API
+     * @param value
+     *            The characters of the value to be set
+     */
+    public void parseAttribute(final String key, final CharSequence value) {
+        if (getClass() != User.class || !decodeAttribute(key, value)) {
+            parseAttribute(key, value.toString());
         }
-        else if (key.equals("auth_token")) {
-            setAuthToken(value);
+    }
+
+    /**
+     * Set the member data for an attribute handled by this class.
+     * 
+     * @param key
+     *            Corresponds to attribute names and element names returned by Box API
+     * @param value
+     *            The characters of the value to be set
+     * @return true if the attribute is handled by this class
+     */
+    private boolean decodeAttribute(final String key, final CharSequence value) {
+        switch (ATTRIBUTE_KEYS.get(key)) {
+            case KEY_ID:
+                setId(BoxUtils.parseLong(value));
+                return true;
+            case KEY_LOGIN:
+                setLogin(value.toString());
+                return true;
+            case KEY_EMAIL:
+                setEmail(value.toString());
+                return true;
+            case KEY_SPACE_AMOUNT:
+                setSpaceAmount(BoxUtils.parseLong(value));
+                return true;
+            case KEY_SPACE_USED:
+                setSpaceUsed(BoxUtils.parseLong(value));
+                return true;
+            case KEY_MAX_UPLOAD_SIZE:
+                setMaxUploadSize(BoxUtils.parseLong(value));
+                return true;
+            case KEY_ACCESS_ID:
+                setAccessId(BoxUtils.parseLong(value));
+                return true;
+            case KEY_AUTH_TOKEN:
+                setAuthToken(value.toString());
+                return true;
+            default:
+                return false;
         }
     }
 }
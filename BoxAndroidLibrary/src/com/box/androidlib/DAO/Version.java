@@ -12,6 +12,7 @@
 package com.box.androidlib.DAO;
 
 import com.box.androidlib.Utils.BoxUtils;
+import com.box.androidlib.Utils.KeyTable;
 
 /**
  * Represents a version of a Box file.
@@ -25,6 +26,22 @@ public class Version extends DAO {
      */
     private static final long serialVersionUID = 1L;
 
+    /** Attribute code for version_id and id. */
+    private static final int KEY_ID = 0;
+    /** Attribute code for author. */
+    private static final int KEY_AUTHOR = 1;
+    /** Attribute code for updated. */
+    private static final int KEY_UPDATED = 2;
+    /** Codes of the attributes handled by {@link #parseAttribute(String, CharSequence)}. */
+    private static final KeyTable ATTRIBUTE_KEYS = new KeyTable();
+
+    static {
+        ATTRIBUTE_KEYS.put("version_id", KEY_ID);
+        ATTRIBUTE_KEYS.put("id", KEY_ID);
+        ATTRIBUTE_KEYS.put("author", KEY_AUTHOR);
+        ATTRIBUTE_KEYS.put("updated", KEY_UPDATED);
+    }
+
     /**
      * Version id.
      */
@@ -104,14 +121,47 @@ public class Version extends DAO {
      *            The value to be set
      */
     public void parseAttribute(final String key, final String value) {
-        if (key.equals("version_id") || key.equals("id")) {
-            setId(BoxUtils.parseLong(value));
-        }
-        else if (key.equals("author")) {
-            setAuthor(value);
+        decodeAttribute(key, value);
+    }
+
+    /**
+     * Parse an attribute straight from the text collected by a SAX parser. Numbers and flags are decoded from the characters without creating a String, and
+     * only textual values are converted to Strings. Attributes this class does not handle are passed on to {@link #parseAttribute(String, String)}. In
+     * subclasses every attribute is passed on to it, so that an override of that method sees all attributes.
+     * 
+     * @param key
+     *            Corresponds to attribute names and element names returned by Box API
+     * @param value
+     *            The characters of the value to be set
+     */
+    public void parseAttribute(final String key, final CharSequence value) {
+        if (getClass() != Version.class || !decodeAttribute(key, value)) {
+            parseAttribute(key, value.toString());
         }
-        else if (key.equals("updated")) {
-            setUpdated(BoxUtils.parseLong(value));
+    }
+
+    /**
+     * Set the member data for an attribute handled by this class.
+     * 
+     * @param key
+     *            Corresponds to attribute names and element names returned by Box API
+     * @param value
+     *            The characters of the value to be set
+     * @return true if the attribute is handled by this class
+     */
+    private boolean decodeAttribute(final String key, final CharSequence value) {
+        switch (ATTRIBUTE_KEYS.get(key)) {
+            case KEY_ID:
+                setId(BoxUtils.parseLong(value));
+                return true;
+            case KEY_AUTHOR:
+                setAuthor(value.toString());
+                return true;
+            case KEY_UPDATED:
+                setUpdated(BoxUtils.parseLong(value));
+                return true;
+            default:
+                return false;
         }
     }
 
@@ -16,25 +16,30 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.HttpURLConnection;
-import java.net.URI;
-import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
-import org.apache.http.Header;
-import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.params.HttpProtocolParams;
 
 import android.net.Uri;
 import android.os.Handler;
 import android.os.SystemClock;
 
+import com.box.androidlib.DAO.BoxFile;
 import com.box.androidlib.ResponseListeners.FileDownloadListener;
 import com.box.androidlib.ResponseListeners.ResponseListener;
 import com.box.androidlib.ResponseParsers.DefaultResponseParser;
+import com.box.androidlib.Transport.BoxHttpRequest;
+import com.box.androidlib.Transport.BoxHttpResponse;
 import com.box.androidlib.Utils.BoxConfig;
+import com.box.androidlib.Utils.BoxUtils;
 import com.box.androidlib.Utils.DevUtils;
 
 /**
@@ -68,9 +73,17 @@ public class BoxFileDownload {
     private long mBytesTransferred;
 
     /**
-     * size of buffer used when reading from download input stream.
+     * Smallest size of the buffer used when reading from download input stream.
      */
-    private static final int DOWNLOAD_BUFFER_SIZE = 4096;
+    private static final int DOWNLOAD_BUFFER_SIZE = 8192;
+    /**
+     * Largest size of the buffer used when reading from download input stream, used when the length of the response is not known.
+     */
+    private static final int MAX_DOWNLOAD_BUFFER_SIZE = 128 * 1024;
+    /**
+     * Number of bytes written between looking at the clock to decide whether to post progress.
+     */
+    private static final int CLOCK_CHECK_BYTES = 64 * 1024;
     /**
      * if downloaded file is less than this size (in bytes), then inspect it for an error message from Box API.
      */
@@ -92,6 +105,18 @@ public class BoxFileDownload {
         mAuthToken = authToken;
     }
 
+    /**
+     * Check whether a file is the journal that a resumable download keeps beside the file being downloaded, so that it can be left out of directory
+     * listings.
+     * 
+     * @param file
+     *            The file
+     * @return true if the file is a download journal
+     */
+    public static boolean isJournalFile(final File file) {
+        return file.getName().endsWith(DownloadJournal.JOURNAL_SUFFIX);
+    }
+
     /**
      * Set a download listener which allows you to monitor download progress and see the response status.
      * 
@@ -128,46 +153,122 @@ public class BoxFileDownload {
      *             Can be thrown if there was a connection error, or if destination file could not be written.
      */
     public DefaultResponseParser execute(final long fileId, final File destinationFile, final Long versionId) throws IOException {
+        return download(fileId, destinationFile, versionId, 0, null);
+    }
 
-        final DefaultResponseParser handler = new DefaultResponseParser();
+    /**
+     * Execute a resumable file download. A journal is kept beside destinationFile while the download is in progress. If the download is cancelled or fails,
+     * calling this method again with the same file and destination continues from where the previous attempt stopped, provided the size and sha1 of the file
+     * on Box have not changed in the meantime. Otherwise the download starts over.
+     * 
+     * If the sha1 of file is known, a digest of the data is computed as it is written and checked once the download is complete. If it does not match,
+     * {@link FileDownloadListener#STATUS_DOWNLOAD_SHA1_MISMATCH} is reported and destinationFile is deleted.
+     * 
+     * @param file
+     *            The file to be downloaded, as obtained from getAccountTree or getFileInfo. Its size and sha1 identify the data already downloaded.
+     * @param destinationFile
+     *            A java.io.File resource to which the downloaded file will be written. Ensure that this points to a valid file-path that can be written to.
+     * @param versionId
+     *            The version_id of the version of the file to download. Set to null to download the latest version of the file. If set, the size and sha1 of
+     *            file must be those of the version.
+     * @return a response handler
+     * @throws IOException
+     *             Can be thrown if there was a connection error, or if destination file could not be written. The partial download is kept and can be
+     *             resumed.
+     */
+    public DefaultResponseParser execute(final BoxFile file, final File destinationFile, final Long versionId) throws IOException {
+        final DownloadJournal journal = new DownloadJournal(destinationFile, file.getId(), versionId, file.getSize(), file.getSha1());
+        long offset = 0;
+        if (journal.matchesSaved() && destinationFile.length() <= file.getSize()) {
+            offset = destinationFile.length();
+        }
+        else {
+            journal.save();
+        }
 
-        final Uri.Builder builder = new Uri.Builder();
-        builder.scheme(BoxConfig.getInstance().getDownloadUrlScheme());
-        builder.encodedAuthority(BoxConfig.getInstance().getDownloadUrlAuthority());
-        builder.path(BoxConfig.getInstance().getDownloadUrlPath());
-        builder.appendPath(mAuthToken);
-        builder.appendPath(String.valueOf(fileId));
-        if (versionId != null) {
-            builder.appendPath(String.valueOf(versionId));
+        final MessageDigest digest = file.getSha1() != null && file.getSha1().length() > 0 ? newSha1Digest() : null;
+        final DefaultResponseParser handler;
+        if (offset > 0 && offset == file.getSize()) {
+            // Previous attempt received everything but did not get to finish.
+            handler = new DefaultResponseParser();
+            handler.setStatus(FileDownloadListener.STATUS_DOWNLOAD_OK);
+            if (digest != null) {
+                updateDigest(digest, destinationFile, offset);
+            }
+            mBytesTransferred = offset;
+            postProgress();
+        }
+        else {
+            handler = download(file.getId(), destinationFile, versionId, offset, digest);
         }
 
-        // We normally prefer to use HttpUrlConnection, however that appears to fail for certain types of files. For downloads, it appears DefaultHttpClient
-        // works more reliably.
-        final DefaultHttpClient httpclient = new DefaultHttpClient();
-        HttpProtocolParams.setUserAgent(httpclient.getParams(), BoxConfig.getInstance().getUserAgent());
-        HttpGet httpGet;
-        //
-        String theUri = builder.build().toString();
+        if (handler.getStatus().equals(FileDownloadListener.STATUS_DOWNLOAD_OK)) {
+            if (destinationFile.length() != file.getSize()) {
+                handler.setStatus(FileDownloadListener.STATUS_DOWNLOAD_FAIL);
+                if (destinationFile.length() > file.getSize()) {
+                    destinationFile.delete();
+                    journal.delete();
+                }
+            }
+            else if (digest != null && !BoxUtils.toHexString(digest.digest()).equalsIgnoreCase(file.getSha1())) {
+                // The data is corrupt, and there is no telling which part of it, so it cannot be resumed either.
+                handler.setStatus(FileDownloadListener.STATUS_DOWNLOAD_SHA1_MISMATCH);
+                destinationFile.delete();
+                journal.delete();
+            }
+            else {
+                journal.delete();
+            }
+        }
+        else if (!handler.getStatus().equals(FileDownloadListener.STATUS_DOWNLOAD_CANCELLED)
+            && !handler.getStatus().equals(ResponseListener.STATUS_SERVICE_UNAVAILABLE)) {
+            // Errors such as permission or auth token problems are reported in place of file content, so the partial file cannot be resumed.
+            journal.delete();
+        }
+        return handler;
+    }
+
+    /**
+     * Download a file, or the rest of it.
+     * 
+     * @param fileId
+     *            The file_id of the file to be downloaded
+     * @param destinationFile
+     *            The file to write to
+     * @param versionId
+     *            The version_id of the version of the file to download, or null for the latest version
+     * @param offset
+     *            Number of bytes at the start of destinationFile that have already been downloaded. If the server honors the Range request, the rest of the
+     *            file is appended to them. Otherwise destinationFile is overwritten.
+     * @param digest
+     *            If not null, receives all bytes of the file, including those already downloaded, as the download proceeds
+     * @return a response handler
+     * @throws IOException
+     *             Can be thrown if there was a connection error, or if destination file could not be written.
+     */
+    private DefaultResponseParser download(final long fileId, final File destinationFile, final Long versionId, final long offset,
+        final MessageDigest digest) throws IOException {
+
+        final DefaultResponseParser handler = new DefaultResponseParser();
+
+        String theUri = getDownloadUri(mAuthToken, fileId, versionId);
         if (BoxConfig.getInstance().getHttpLoggingEnabled()) {
-            DevUtils.logcat("User-Agent : " + HttpProtocolParams.getUserAgent(httpclient.getParams()));
+            DevUtils.logcat("User-Agent : " + BoxConfig.getInstance().getUserAgent());
             DevUtils.logcat("Downloading FileId " + fileId + " To: " + destinationFile.getAbsolutePath() + destinationFile.getName());
             DevUtils.logcat("Download URL : " + theUri);
         }
-        try {
-            httpGet = new HttpGet(new URI(theUri));
-        }
-        catch (URISyntaxException e) {
-            throw new IOException("Invalid Download URL");
+        final BoxHttpRequest request = new BoxHttpRequest(BoxHttpRequest.METHOD_GET, theUri);
+        if (offset > 0) {
+            request.setHeader("Range", "bytes=" + offset + "-");
         }
-        httpGet.setHeader("Connection", "close");
-        HttpResponse httpResponse = httpclient.execute(httpGet);
-        int responseCode = httpResponse.getStatusLine().getStatusCode();
+        final BoxHttpResponse response = BoxConfig.getInstance().getHttpTransport().execute(request);
+        int responseCode = response.getStatusCode();
 
         if (BoxConfig.getInstance().getHttpLoggingEnabled()) {
             DevUtils.logcat("HTTP Response Code: " + responseCode);
-            Header[] headers = httpResponse.getAllHeaders();
-            for (Header header : headers) {
-                DevUtils.logcat("Response Header: " + header.toString());
+            for (Iterator<Map.Entry<String, List<String>>> i = response.getHeaders().entrySet().iterator(); i.hasNext();) {
+                Map.Entry<String, List<String>> header = i.next();
+                DevUtils.logcat("Response Header: " + header.getKey() + ": " + header.getValue());
             }
         }
 
@@ -177,43 +278,105 @@ public class BoxFileDownload {
                 DevUtils.logcat("HTTP Response Code: " + HttpStatus.SC_SERVICE_UNAVAILABLE);
             }
             handler.setStatus(ResponseListener.STATUS_SERVICE_UNAVAILABLE);
+            // Release the connection back to the pool.
+            response.close();
             return handler;
         }
 
-        InputStream is = httpResponse.getEntity().getContent();
-        if (responseCode == HttpURLConnection.HTTP_OK) {
-            final FileOutputStream fos = new FileOutputStream(destinationFile);
-            final byte[] buffer = new byte[DOWNLOAD_BUFFER_SIZE];
+        // The partial content must start exactly where the data we have ends, otherwise start over.
+        if (responseCode == HttpStatus.SC_PARTIAL_CONTENT && getContentRangeStart(response) != offset) {
+            response.abort();
+            return download(fileId, destinationFile, versionId, 0, digest);
+        }
+
+        InputStream is = response.getContent();
+        if (responseCode == HttpURLConnection.HTTP_OK || responseCode == HttpStatus.SC_PARTIAL_CONTENT) {
+            final boolean append = responseCode == HttpStatus.SC_PARTIAL_CONTENT;
+            final FileOutputStream fos;
+            try {
+                fos = new FileOutputStream(destinationFile, append);
+            }
+            catch (IOException e) {
+                response.abort();
+                throw e;
+            }
+            final FileChannel channel = fos.getChannel();
+            // One buffer for the whole response, no larger than the response. A read returns what the connection has, up to the size of the buffer.
+            final long contentLength = getContentLength(response);
+            int bufferSize = MAX_DOWNLOAD_BUFFER_SIZE;
+            if (contentLength >= 0 && contentLength < bufferSize) {
+                bufferSize = Math.max(DOWNLOAD_BUFFER_SIZE, (int) contentLength);
+            }
+            final byte[] buffer = new byte[bufferSize];
+            final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
             int bufferLength = 0;
-            mBytesTransferred = 0;
+            mBytesTransferred = append ? offset : 0;
+            if (append) {
+                // Let the listener know where the download resumes from.
+                postProgress();
+            }
+            if (digest != null) {
+                digest.reset();
+                if (append) {
+                    updateDigest(digest, destinationFile, offset);
+                }
+            }
+            // The start of the response is kept in memory to check it for an error message from Box API.
+            final byte[] head = new byte[FILE_ERROR_SIZE];
+            final boolean reportProgress = mListener != null && mHandler != null;
             long lastOnProgressPost = 0;
-            while (!Thread.currentThread().isInterrupted() && (bufferLength = is.read(buffer)) > 0) {
-                fos.write(buffer, 0, bufferLength);
-                mBytesTransferred += bufferLength;
-                long currTime = SystemClock.uptimeMillis();
-                if (mListener != null && mHandler != null && currTime - lastOnProgressPost > ON_PROGRESS_UPDATE_THRESHOLD) {
-                    lastOnProgressPost = currTime;
-                    mHandler.post(mOnProgressRunnable);
+            long nextClockCheck = mBytesTransferred;
+            try {
+                while (!Thread.currentThread().isInterrupted() && (bufferLength = is.read(buffer, 0, buffer.length)) > 0) {
+                    // An interrupt closes the channel and makes the write throw ClosedByInterruptException, which is reported as cancelled below.
+                    byteBuffer.clear().limit(bufferLength);
+                    while (byteBuffer.hasRemaining()) {
+                        channel.write(byteBuffer);
+                    }
+                    if (digest != null) {
+                        digest.update(buffer, 0, bufferLength);
+                    }
+                    if (!append && mBytesTransferred < FILE_ERROR_SIZE) {
+                        System.arraycopy(buffer, 0, head, (int) mBytesTransferred, (int) Math.min(bufferLength, FILE_ERROR_SIZE - mBytesTransferred));
+                    }
+                    mBytesTransferred += bufferLength;
+                    if (reportProgress && mBytesTransferred >= nextClockCheck) {
+                        nextClockCheck = mBytesTransferred + CLOCK_CHECK_BYTES;
+                        final long currTime = SystemClock.uptimeMillis();
+                        if (currTime - lastOnProgressPost > ON_PROGRESS_UPDATE_THRESHOLD) {
+                            lastOnProgressPost = currTime;
+                            mHandler.post(mOnProgressRunnable);
+                        }
+                    }
                 }
             }
-            mHandler.post(mOnProgressRunnable);
+            catch (IOException e) {
+                // Do not return a half-read connection to the pool.
+                response.abort();
+                fos.close();
+                if (Thread.currentThread().isInterrupted() || e instanceof InterruptedIOException) {
+                    // The read or write was stopped by cancelling. What was written so far is kept for resuming.
+                    Thread.currentThread().interrupt();
+                    handler.setStatus(FileDownloadListener.STATUS_DOWNLOAD_CANCELLED);
+                    return handler;
+                }
+                throw e;
+            }
+            postProgress();
             fos.close();
             handler.setStatus(FileDownloadListener.STATUS_DOWNLOAD_OK);
 
             // If download thread was interrupted, set to
             // STATUS_DOWNLOAD_CANCELED
             if (Thread.currentThread().isInterrupted()) {
-                httpGet.abort();
+                response.abort();
                 handler.setStatus(FileDownloadListener.STATUS_DOWNLOAD_CANCELLED);
             }
             // Even if download completed, Box API may have put an error message
             // in the file itself. Refer to
             // http://developers.box.net/w/page/12923951/ApiFunction_Upload-and-Download
-            else if (destinationFile.length() < FILE_ERROR_SIZE) {
-                final byte[] buff = new byte[(int) destinationFile.length()];
-                final FileInputStream fis = new FileInputStream(destinationFile);
-                fis.read(buffer);
-                final String str = new String(buff).trim();
+            else if (!append && mBytesTransferred < FILE_ERROR_SIZE) {
+                final String str = new String(head, 0, (int) mBytesTransferred).trim();
                 if (str.equals(FileDownloadListener.STATUS_DOWNLOAD_WRONG_AUTH_TOKEN)) {
                     handler.setStatus(FileDownloadListener.STATUS_DOWNLOAD_WRONG_AUTH_TOKEN);
                 }
@@ -225,13 +388,155 @@ public class BoxFileDownload {
         else if (responseCode == HttpURLConnection.HTTP_FORBIDDEN) {
             handler.setStatus(FileDownloadListener.STATUS_DOWNLOAD_PERMISSIONS_ERROR);
         }
+        else if (responseCode == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE && offset > 0) {
+            // The data we have does not fit the file on the server, start over.
+            response.close();
+            return download(fileId, destinationFile, versionId, 0, digest);
+        }
         else {
             handler.setStatus(FileDownloadListener.STATUS_DOWNLOAD_FAIL);
         }
 
+        // Read the rest of the response so that the connection can be reused, unless the request was aborted.
+        if (!Thread.currentThread().isInterrupted()) {
+            response.close();
+        }
         is.close();
 
         return handler;
     }
 
+    /**
+     * Create a SHA-1 digest.
+     * 
+     * @return The digest, or null if the platform does not provide SHA-1, in which case downloads are not verified
+     */
+    private static MessageDigest newSha1Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Add the start of a file to a digest. Used when resuming a download, for the bytes downloaded by previous attempts.
+     * 
+     * @param digest
+     *            The digest to update
+     * @param file
+     *            The file to read
+     * @param length
+     *            Number of bytes to read from the start of file
+     * @throws IOException
+     *             if the file cannot be read, or is shorter than length
+     */
+    private static void updateDigest(final MessageDigest digest, final File file, final long length) throws IOException {
+        final FileInputStream fis = new FileInputStream(file);
+        try {
+            final byte[] buffer = new byte[DOWNLOAD_BUFFER_SIZE];
+            long remaining = length;
+            while (remaining > 0) {
+                final int bufferLength = fis.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (bufferLength < 0) {
+                    throw new IOException("File is shorter than " + length + " bytes");
+                }
+                digest.update(buffer, 0, bufferLength);
+                remaining -= bufferLength;
+            }
+        }
+        finally {
+            fis.close();
+        }
+    }
+
+    /**
+     * Post the number of bytes transferred so far to the listener.
+     */
+    private void postProgress() {
+        if (mListener != null && mHandler != null) {
+            mHandler.post(mOnProgressRunnable);
+        }
+    }
+
+    /**
+     * Build the URL from which a file is downloaded.
+     * 
+     * @param authToken
+     *            Auth token from Box
+     * @param fileId
+     *            The file_id of the file to be downloaded
+     * @param versionId
+     *            The version_id of the version of the file to download, or null for the latest version
+     * @return The download URL
+     */
+    static String getDownloadUri(final String authToken, final long fileId, final Long versionId) {
+        final Uri.Builder builder = new Uri.Builder();
+        builder.scheme(BoxConfig.getInstance().getDownloadUrlScheme());
+        builder.encodedAuthority(BoxConfig.getInstance().getDownloadUrlAuthority());
+        builder.path(BoxConfig.getInstance().getDownloadUrlPath());
+        builder.appendPath(authToken);
+        builder.appendPath(String.valueOf(fileId));
+        if (versionId != null) {
+            builder.appendPath(String.valueOf(versionId));
+        }
+        return builder.build().toString();
+    }
+
+    /**
+     * Get the length of a response from its Content-Length header.
+     * 
+     * @param response
+     *            The response
+     * @return The length, or -1 if the header is missing or malformed
+     */
+    private static long getContentLength(final BoxHttpResponse response) {
+        final String contentLength = response.getHeader("Content-Length");
+        if (contentLength == null) {
+            return -1;
+        }
+        return BoxUtils.parseLong(contentLength.trim(), -1);
+    }
+
+    /**
+     * Get the offset of the first byte of a 206 Partial Content response from its Content-Range header, formatted as "bytes first-last/length".
+     * 
+     * @param response
+     *            The response
+     * @return The offset, or -1 if the header is missing or malformed
+     */
+    static long getContentRangeStart(final BoxHttpResponse response) {
+        final String contentRange = response.getHeader("Content-Range");
+        if (contentRange == null) {
+            return -1;
+        }
+        final int start = contentRange.indexOf(' ') + 1;
+        final int end = contentRange.indexOf('-', start);
+        if (end < 0) {
+            return -1;
+        }
+        return BoxUtils.parseLong(contentRange.substring(start, end).trim(), -1);
+    }
+
+    /**
+     * Get the length of the whole file from the Content-Range header of a 206 Partial Content response, formatted as "bytes first-last/length".
+     * 
+     * @param response
+     *            The response
+     * @return The length, or -1 if the header is missing or malformed, or the server does not know the length
+     */
+    static long getContentRangeLength(final BoxHttpResponse response) {
+        final String contentRange = response.getHeader("Content-Range");
+        if (contentRange == null) {
+            return -1;
+        }
+        final int slash = contentRange.lastIndexOf('/');
+        if (slash < 0) {
+            return -1;
+        }
+        return BoxUtils.parseLong(contentRange.substring(slash + 1).trim(), -1);
+    }
+
 }
@@ -11,35 +11,30 @@
  ******************************************************************************/
 package com.box.androidlib.FileTransfer;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
 
-import org.apache.http.Header;
-import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
-import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.mime.HttpMultipartMode;
 import org.apache.http.entity.mime.MultipartEntity;
 import org.apache.http.entity.mime.content.InputStreamBody;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.params.HttpProtocolParams;
 import org.apache.http.protocol.HTTP;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 
 import android.net.Uri;
 import android.os.Handler;
@@ -49,6 +44,9 @@ import com.box.androidlib.DAO.BoxFile;
 import com.box.androidlib.ResponseListeners.FileUploadListener;
 import com.box.androidlib.ResponseListeners.ResponseListener;
 import com.box.androidlib.ResponseParsers.FileResponseParser;
+import com.box.androidlib.ResponseParsers.UploadResponseParser;
+import com.box.androidlib.Transport.BoxHttpRequest;
+import com.box.androidlib.Transport.BoxHttpResponse;
 import com.box.androidlib.Utils.BoxConfig;
 import com.box.androidlib.Utils.DevUtils;
 
@@ -61,6 +59,11 @@ import com.box.androidlib.Utils.DevUtils;
  */
 public class BoxFileUpload {
 
+    /**
+     * Number of bytes at the start of the response kept as text, for error responses which are not XML.
+     */
+    private static final int RAW_RESPONSE_SIZE = 1024;
+
     /**
      * auth token.
      */
@@ -113,7 +116,7 @@ public class BoxFileUpload {
      *            If action is {@link com.box.androidlib.Box#UPLOAD_ACTION_UPLOAD}, then this is the folder id where the file will uploaded to. If action is
      *            {@link com.box.androidlib.Box#UPLOAD_ACTION_OVERWRITE} or {@link com.box.androidlib.Box#UPLOAD_ACTION_NEW_COPY}, then this is the file_id that
      *            is being overwritten, or copied.
-     * @return A FileResponseParser with information about the upload.
+     * @return A FileResponseParser with information about the upload
      * @throws IOException
      *             Can be thrown if there is no connection, or if some other connection problem exists.
      * @throws FileNotFoundException
@@ -123,6 +126,34 @@ public class BoxFileUpload {
      */
     public FileResponseParser execute(final String action, final InputStream sourceInputStream, final String filename, final long destinationId)
         throws IOException, MalformedURLException, FileNotFoundException {
+        return executeForFiles(action, sourceInputStream, filename, destinationId);
+    }
+
+    /**
+     * Execute a file upload, and get every file in the response. Like {@link #execute(String, InputStream, String, long)}, but returns an
+     * UploadResponseParser.
+     * 
+     * @param action
+     *            Set to {@link com.box.androidlib.Box#UPLOAD_ACTION_UPLOAD} or {@link com.box.androidlib.Box#UPLOAD_ACTION_OVERWRITE} or
+     *            {@link com.box.androidlib.Box#UPLOAD_ACTION_NEW_COPY}
+     * @param sourceInputStream
+     *            Input stream targeting the data for the file you wish to create/upload to Box.
+     * @param filename
+     *            The desired filename on Box after upload (just the file name, do not include the path)
+     * @param destinationId
+     *            If action is {@link com.box.androidlib.Box#UPLOAD_ACTION_UPLOAD}, then this is the folder id where the file will uploaded to. If action is
+     *            {@link com.box.androidlib.Box#UPLOAD_ACTION_OVERWRITE} or {@link com.box.androidlib.Box#UPLOAD_ACTION_NEW_COPY}, then this is the file_id that
+     *            is being overwritten, or copied.
+     * @return An UploadResponseParser with information about the upload. {@link UploadResponseParser#getFiles()} lists every file in the response.
+     * @throws IOException
+     *             Can be thrown if there is no connection, or if some other connection problem exists.
+     * @throws FileNotFoundException
+     *             File being uploaded either doesn't exist, is not a file, or cannot be read
+     * @throws MalformedURLException
+     *             Make sure you have specified a valid upload action
+     */
+    public UploadResponseParser executeForFiles(final String action, final InputStream sourceInputStream, final String filename, final long destinationId)
+        throws IOException, MalformedURLException, FileNotFoundException {
 
         if (!action.equals(Box.UPLOAD_ACTION_UPLOAD) && !action.equals(Box.UPLOAD_ACTION_OVERWRITE) && !action.equals(Box.UPLOAD_ACTION_NEW_COPY)) {
             throw new MalformedURLException("action must be upload, overwrite or new_copy");
@@ -146,7 +177,7 @@ public class BoxFileUpload {
             DevUtils.logcat("Upload URL : " + builder.build().toString());
         }
         // Set up post body
-        final HttpPost post = new HttpPost(builder.build().toString());
+        final BoxHttpRequest post = new BoxHttpRequest(BoxHttpRequest.METHOD_POST, builder.build().toString());
         final MultipartEntityWithProgressListener reqEntity = new MultipartEntityWithProgressListener(HttpMultipartMode.BROWSER_COMPATIBLE, null,
             Charset.forName(HTTP.UTF_8));
 
@@ -173,14 +204,28 @@ public class BoxFileUpload {
                 return filename;
             }
         });
-        post.setEntity(reqEntity);
+        post.setBody(new BoxHttpRequest.Body() {
+
+            @Override
+            public String getContentType() {
+                return reqEntity.getContentType().getValue();
+            }
+
+            @Override
+            public long getContentLength() {
+                return reqEntity.getContentLength();
+            }
+
+            @Override
+            public void writeTo(final OutputStream out) throws IOException {
+                reqEntity.writeTo(out);
+            }
+        });
 
         // Send request
-        final HttpResponse httpResponse;
-        DefaultHttpClient httpClient = new DefaultHttpClient();
-        HttpProtocolParams.setUserAgent(httpClient.getParams(), BoxConfig.getInstance().getUserAgent());
+        final BoxHttpResponse httpResponse;
         try {
-            httpResponse = httpClient.execute(post);
+            httpResponse = BoxConfig.getInstance().getHttpTransport().execute(post);
         }
         catch (final IOException e) {
             // Detect if the download was cancelled through thread interrupt. See CountingOutputStream.write() for when this exception is thrown.
@@ -191,7 +236,7 @@ public class BoxFileUpload {
                 DevUtils.logcat("Upload URL : " + builder.build().toString());
             }
             if ((e.getMessage() != null && e.getMessage().equals(FileUploadListener.STATUS_CANCELLED)) || Thread.currentThread().isInterrupted()) {
-                final FileResponseParser handler = new FileResponseParser();
+                final UploadResponseParser handler = new UploadResponseParser();
                 handler.setStatus(FileUploadListener.STATUS_CANCELLED);
                 return handler;
             }
@@ -200,73 +245,46 @@ public class BoxFileUpload {
             }
         }
         if (BoxConfig.getInstance().getHttpLoggingEnabled()) {
-            DevUtils.logcat("HTTP Response Code: " + httpResponse.getStatusLine().getStatusCode());
-            Header[] headers = httpResponse.getAllHeaders();
-            DevUtils.logcat("User-Agent : " + HttpProtocolParams.getUserAgent(httpClient.getParams()));
-            for (Header header : headers) {
-                DevUtils.logcat("Response Header: " + header.toString());
+            DevUtils.logcat("HTTP Response Code: " + httpResponse.getStatusCode());
+            DevUtils.logcat("User-Agent : " + BoxConfig.getInstance().getUserAgent());
+            for (Iterator<Map.Entry<String, List<String>>> i = httpResponse.getHeaders().entrySet().iterator(); i.hasNext();) {
+                Map.Entry<String, List<String>> header = i.next();
+                DevUtils.logcat("Response Header: " + header.getKey() + ": " + header.getValue());
             }
         }
 
         // Server returned a 503 Service Unavailable. Usually means a temporary unavailability.
-        if (httpResponse.getStatusLine().getStatusCode() == HttpStatus.SC_SERVICE_UNAVAILABLE) {
-            final FileResponseParser handler = new FileResponseParser();
+        if (httpResponse.getStatusCode() == HttpStatus.SC_SERVICE_UNAVAILABLE) {
+            final UploadResponseParser handler = new UploadResponseParser();
             handler.setStatus(ResponseListener.STATUS_SERVICE_UNAVAILABLE);
+            // Release the connection back to the pool.
+            httpResponse.close();
             return handler;
         }
 
-        String status = null;
-        BoxFile boxFile = null;
-        final InputStream is = httpResponse.getEntity().getContent();
-        final BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-        final StringBuilder sb = new StringBuilder();
-        String line = null;
-        while ((line = reader.readLine()) != null) {
-            sb.append(line);
-        }
-        is.close();
-        httpResponse.getEntity().consumeContent();
-        final String xml = sb.toString();
-
+        final UploadResponseParser handler = new UploadResponseParser();
+        final HeadRecordingInputStream is = new HeadRecordingInputStream(httpResponse.getContent(), RAW_RESPONSE_SIZE);
         try {
-            final Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes()));
-            final Node statusNode = doc.getElementsByTagName("status").item(0);
-            if (statusNode != null) {
-                status = statusNode.getFirstChild().getNodeValue();
-            }
-            final Element fileEl = (Element) doc.getElementsByTagName("file").item(0);
-            if (fileEl != null) {
-                try {
-                    boxFile = Box.getBoxFileClass().newInstance();
-                }
-                catch (InstantiationException e) {
-                    e.printStackTrace();
-                }
-                catch (IllegalAccessException e) {
-                    e.printStackTrace();
-                }
-                for (int i = 0; i < fileEl.getAttributes().getLength(); i++) {
-                    boxFile.parseAttribute(fileEl.getAttributes().item(i).getNodeName(), fileEl.getAttributes().item(i).getNodeValue());
-                }
-            }
-
-            // errors are NOT returned as properly formatted XML yet so in this case the raw response is the error status code see
-            // http://developers.box.net/w/page/12923951/ApiFunction_Upload-and-Download
-            if (status == null) {
-                status = xml;
-            }
+            final XMLReader xmlReader = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
+            xmlReader.setContentHandler(handler);
+            xmlReader.parse(new InputSource(is));
         }
         catch (final SAXException e) {
             // errors are NOT returned as properly formatted XML yet so in this case the raw response is the error status code see
             // http://developers.box.net/w/page/12923951/ApiFunction_Upload-and-Download
-            status = xml;
+            handler.setStatus("");
         }
         catch (final ParserConfigurationException e) {
             e.printStackTrace();
         }
-        final FileResponseParser handler = new FileResponseParser();
-        handler.setFile(boxFile);
-        handler.setStatus(status);
+        catch (final IOException e) {
+            httpResponse.abort();
+            throw e;
+        }
+        if (handler.getStatus().length() == 0) {
+            handler.setStatus(is.readHead().trim());
+        }
+        httpResponse.close();
         return handler;
     }
 
@@ -388,4 +406,70 @@ public class BoxFileUpload {
             }
         }
     }
+
+    /**
+     * FilterInputStream that keeps a copy of the first bytes read, so that a response that turns out not to be XML can still be read as text.
+     */
+    private static class HeadRecordingInputStream extends FilterInputStream {
+
+        /**
+         * the first bytes read.
+         */
+        private final byte[] mHead;
+        /**
+         * number of bytes in mHead.
+         */
+        private int mHeadLength;
+
+        /**
+         * constructor.
+         * 
+         * @param in
+         *            input stream
+         * @param headSize
+         *            number of bytes to keep
+         */
+        public HeadRecordingInputStream(final InputStream in, final int headSize) {
+            super(in);
+            mHead = new byte[headSize];
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = in.read();
+            if (b >= 0 && mHeadLength < mHead.length) {
+                mHead[mHeadLength++] = (byte) b;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            final int bytesRead = in.read(buffer, offset, length);
+            if (bytesRead > 0 && mHeadLength < mHead.length) {
+                final int count = Math.min(bytesRead, mHead.length - mHeadLength);
+                System.arraycopy(buffer, offset, mHead, mHeadLength, count);
+                mHeadLength += count;
+            }
+            return bytesRead;
+        }
+
+        /**
+         * Read the rest of the head if the parser stopped early, and return it as text.
+         * 
+         * @return the first bytes of the stream, decoded as UTF-8
+         * @throws IOException
+         *             if the stream cannot be read
+         */
+        public String readHead() throws IOException {
+            int bytesRead = 0;
+            while (mHeadLength < mHead.length && bytesRead >= 0) {
+                bytesRead = in.read(mHead, mHeadLength, mHead.length - mHeadLength);
+                if (bytesRead > 0) {
+                    mHeadLength += bytesRead;
+                }
+            }
+            return new String(mHead, 0, mHeadLength, "UTF-8");
+        }
+    }
 }
@@ -0,0 +1,375 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.FileTransfer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import android.os.Handler;
+
+import com.box.androidlib.Box;
+import com.box.androidlib.BoxSynchronous;
+import com.box.androidlib.DAO.BoxFile;
+import com.box.androidlib.DAO.BoxFolder;
+import com.box.androidlib.ResponseListeners.FileUploadListener;
+import com.box.androidlib.ResponseListeners.ResponseListener;
+import com.box.androidlib.ResponseParsers.FileResponseParser;
+import com.box.androidlib.Utils.BoxConfig;
+import com.box.androidlib.Utils.BoxUtils;
+import com.box.androidlib.Utils.DevUtils;
+
+/**
+ * Uploads a file so that a failed, cancelled or interrupted upload can be completed without uploading the file twice. A journal is written before the upload
+ * starts and removed once Box has answered. If a journal for the same file, content and destination is found when the upload is started again, for example
+ * after a process restart, Box is first asked whether the file already arrived, identified by its name and sha1, and the upload is skipped if it did. Uploads
+ * that fail with an IOException are retried the same way. Box is not asked when the journal shows that no POST can have stored the file: each POST that Box
+ * answered with 503 Service Unavailable, or that failed or was cancelled before the whole file was read, is recorded as such.
+ * 
+ * You should not call this directly, and instead use
+ * {@link com.box.androidlib.Box#uploadResumable(String, String, File, String, long, File, FileUploadListener)} or
+ * {@link com.box.androidlib.BoxSynchronous#uploadResumable(String, String, File, String, long, File, FileUploadListener, Handler)}.
+ * 
+ * @author developers@box.net
+ */
+public class BoxResumableFileUpload {
+
+    /**
+     * Number of times an upload is retried after an IOException before giving up. The journal is kept, so the upload can still be resumed later.
+     */
+    private static final int MAX_RETRIES = 2;
+    /**
+     * size of buffer used when computing the sha1 of the file.
+     */
+    private static final int DIGEST_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * API key.
+     */
+    private final String mApiKey;
+    /**
+     * auth token.
+     */
+    private final String mAuthToken;
+    /**
+     * Directory in which upload journals are kept.
+     */
+    private final File mJournalDirectory;
+    /**
+     * response listener.
+     */
+    private FileUploadListener mListener;
+    /**
+     * Handler to execute onProgress callbacks.
+     */
+    private Handler mHandler;
+
+    /**
+     * Instantiate a new BoxResumableFileUpload.
+     * 
+     * @param apiKey
+     *            API key, used to check whether an earlier attempt reached Box
+     * @param authToken
+     *            auth token
+     * @param journalDirectory
+     *            Directory in which upload journals are kept. Use the same directory every time, such as a directory under Context.getFilesDir(), so that
+     *            uploads can be resumed after a process restart.
+     */
+    public BoxResumableFileUpload(final String apiKey, final String authToken, final File journalDirectory) {
+        mApiKey = apiKey;
+        mAuthToken = authToken;
+        mJournalDirectory = journalDirectory;
+    }
+
+    /**
+     * Set an upload listener which allows you to monitor upload progress and see the response status.
+     * 
+     * @param listener
+     *            A file upload listener. You will likely be interested in callbacks
+     *            {@link com.box.androidlib.ResponseListeners.FileUploadListener#onProgress(long)} and
+     *            {@link com.box.androidlib.ResponseListeners.FileUploadListener#onComplete(BoxFile, String)}
+     * @param handler
+     *            The handler through which FileUploadListener.onProgress will be invoked.
+     */
+    public void setListener(final FileUploadListener listener, final Handler handler) {
+        mListener = listener;
+        mHandler = handler;
+    }
+
+    /**
+     * Execute a resumable file upload.
+     * 
+     * @param action
+     *            Set to {@link com.box.androidlib.Box#UPLOAD_ACTION_UPLOAD} or {@link com.box.androidlib.Box#UPLOAD_ACTION_OVERWRITE} or
+     *            {@link com.box.androidlib.Box#UPLOAD_ACTION_NEW_COPY}
+     * @param file
+     *            The file to upload
+     * @param filename
+     *            The desired filename on Box after upload (just the file name, do not include the path)
+     * @param destinationId
+     *            If action is {@link com.box.androidlib.Box#UPLOAD_ACTION_UPLOAD}, then this is the folder id where the file will uploaded to. If action is
+     *            {@link com.box.androidlib.Box#UPLOAD_ACTION_OVERWRITE} or {@link com.box.androidlib.Box#UPLOAD_ACTION_NEW_COPY}, then this is the file_id that
+     *            is being overwritten, or copied.
+     * @return A FileResponseParser with information about the upload. If an earlier attempt had already reached Box, the status is
+     *         {@link FileUploadListener#STATUS_UPLOAD_OK} and the file is the one found on Box.
+     * @throws IOException
+     *             Can be thrown if there is no connection, or if some other connection problem persisted through retries. The journal is kept.
+     * @throws FileNotFoundException
+     *             File being uploaded either doesn't exist, is not a file, or cannot be read
+     * @throws MalformedURLException
+     *             Make sure you have specified a valid upload action
+     */
+    public FileResponseParser execute(final String action, final File file, final String filename, final long destinationId) throws IOException,
+        MalformedURLException, FileNotFoundException {
+        if (!action.equals(Box.UPLOAD_ACTION_UPLOAD) && !action.equals(Box.UPLOAD_ACTION_OVERWRITE) && !action.equals(Box.UPLOAD_ACTION_NEW_COPY)) {
+            throw new MalformedURLException("action must be upload, overwrite or new_copy");
+        }
+        final String sha1 = getSha1(file);
+        if (sha1 == null) {
+            final FileResponseParser handler = new FileResponseParser();
+            handler.setStatus(FileUploadListener.STATUS_CANCELLED);
+            return handler;
+        }
+
+        final UploadJournal journal = new UploadJournal(mJournalDirectory, file, action, filename, destinationId, sha1);
+        if (journal.matchesSaved() && journal.isSavedPosted()) {
+            final FileResponseParser committed = findUploadedFile(action, filename, destinationId, sha1, file.length());
+            if (committed != null) {
+                journal.delete();
+                return committed;
+            }
+        }
+        mJournalDirectory.mkdirs();
+
+        final BoxFileUpload upload = new BoxFileUpload(mAuthToken);
+        upload.setListener(mListener, mHandler);
+        // Whether a POST of this call may have stored the file.
+        boolean posted = false;
+        int attempt = 0;
+        while (true) {
+            // Saved before every POST, so that a process that dies during it leaves a journal saying that the file may have arrived.
+            journal.setPosted(true);
+            journal.save();
+            final FileResponseParser handler;
+            final CountingInputStream in = new CountingInputStream(new FileInputStream(file));
+            try {
+                try {
+                    handler = upload.execute(action, in, filename, destinationId);
+                }
+                finally {
+                    in.close();
+                }
+            }
+            catch (IOException e) {
+                // Box cannot have stored the file unless all of it was sent.
+                final boolean sentWhole = in.getCount() >= file.length();
+                posted |= sentWhole;
+                if (e instanceof FileNotFoundException || attempt >= MAX_RETRIES || Thread.currentThread().isInterrupted()) {
+                    journal.setPosted(posted);
+                    journal.save();
+                    throw e;
+                }
+                attempt++;
+                if (BoxConfig.getInstance().getHttpLoggingEnabled()) {
+                    DevUtils.logcat("Retrying upload of " + filename + " after " + e);
+                }
+                if (sentWhole) {
+                    // The connection may have broken after Box received the file, but before the response arrived.
+                    final FileResponseParser committed = findUploadedFile(action, filename, destinationId, sha1, file.length());
+                    if (committed != null) {
+                        journal.delete();
+                        return committed;
+                    }
+                }
+                continue;
+            }
+            if (FileUploadListener.STATUS_CANCELLED.equals(handler.getStatus())) {
+                posted |= in.getCount() >= file.length();
+                journal.setPosted(posted);
+                journal.save();
+            }
+            else if (ResponseListener.STATUS_SERVICE_UNAVAILABLE.equals(handler.getStatus())) {
+                // Box answered without storing the file.
+                journal.setPosted(posted);
+                journal.save();
+            }
+            else {
+                journal.delete();
+            }
+            return handler;
+        }
+    }
+
+    /**
+     * Look for the file at Box, as it would be after a successful upload.
+     * 
+     * @param action
+     *            The upload action
+     * @param filename
+     *            The file name on Box
+     * @param destinationId
+     *            The folder or file id the upload goes to
+     * @param sha1
+     *            sha1 of the file being uploaded
+     * @param size
+     *            size of the file being uploaded, reported as progress if the file is found
+     * @return A FileResponseParser with status {@link FileUploadListener#STATUS_UPLOAD_OK} and the file, or null if the file was not found or Box could not be
+     *         reached
+     */
+    private FileResponseParser findUploadedFile(final String action, final String filename, final long destinationId, final String sha1, final long size) {
+        final BoxSynchronous boxSynchronous = BoxSynchronous.getInstance(mApiKey);
+        BoxFile found = null;
+        try {
+            long folderId = destinationId;
+            if (!action.equals(Box.UPLOAD_ACTION_UPLOAD)) {
+                final BoxFile target = boxSynchronous.getFileInfo(mAuthToken, destinationId).getFile();
+                if (target == null) {
+                    return null;
+                }
+                if (action.equals(Box.UPLOAD_ACTION_OVERWRITE)) {
+                    found = sha1.equalsIgnoreCase(target.getSha1()) ? target : null;
+                }
+                folderId = target.getFolderId();
+            }
+            if (!action.equals(Box.UPLOAD_ACTION_OVERWRITE)) {
+                final BoxFolder folder = boxSynchronous.getAccountTree(mAuthToken, folderId, new String[] {Box.PARAM_ONELEVEL}).getFolder();
+                if (folder == null) {
+                    return null;
+                }
+                final List<? extends BoxFile> files = folder.getFilesInFolder();
+                for (int i = 0; i < files.size() && found == null; i++) {
+                    if (filename.equals(files.get(i).getFileName()) && sha1.equalsIgnoreCase(files.get(i).getSha1())) {
+                        found = files.get(i);
+                    }
+                }
+            }
+        }
+        catch (IOException e) {
+            return null;
+        }
+        if (found == null) {
+            return null;
+        }
+        if (BoxConfig.getInstance().getHttpLoggingEnabled()) {
+            DevUtils.logcat("Upload of " + filename + " had already reached Box as file " + found.getId());
+        }
+        if (mListener != null && mHandler != null) {
+            mHandler.post(new Runnable() {
+
+                @Override
+                public void run() {
+                    mListener.onProgress(size);
+                }
+            });
+        }
+        final FileResponseParser handler = new FileResponseParser();
+        handler.setFile(found);
+        handler.setStatus(FileUploadListener.STATUS_UPLOAD_OK);
+        return handler;
+    }
+
+    /**
+     * Compute the sha1 of a file, the way Box API reports it.
+     * 
+     * @param file
+     *            The file
+     * @return The sha1, or null if the thread was interrupted
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private static String getSha1(final File file) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-1 is not available");
+        }
+        final FileInputStream in = new FileInputStream(file);
+        try {
+            final byte[] buffer = new byte[DIGEST_BUFFER_SIZE];
+            int bufferLength;
+            while ((bufferLength = in.read(buffer)) > 0) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return null;
+                }
+                digest.update(buffer, 0, bufferLength);
+            }
+        }
+        finally {
+            in.close();
+        }
+        return BoxUtils.toHexString(digest.digest());
+    }
+
+    /**
+     * Input stream that counts the bytes read from it.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        /**
+         * number of bytes read.
+         */
+        private long mCount;
+
+        /**
+         * constructor.
+         * 
+         * @param in
+         *            input stream
+         */
+        public CountingInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = in.read();
+            if (b >= 0) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            final int bytesRead = in.read(buffer, offset, length);
+            if (bytesRead > 0) {
+                mCount += bytesRead;
+            }
+            return bytesRead;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = in.skip(n);
+            mCount += skipped;
+            return skipped;
+        }
+
+        /**
+         * Get the number of bytes read.
+         * 
+         * @return number of bytes read
+         */
+        public long getCount() {
+            return mCount;
+        }
+    }
+}
@@ -0,0 +1,649 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.FileTransfer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpStatus;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import com.box.androidlib.DAO.BoxFile;
+import com.box.androidlib.ResponseListeners.FileDownloadListener;
+import com.box.androidlib.ResponseListeners.ResponseListener;
+import com.box.androidlib.ResponseParsers.DefaultResponseParser;
+import com.box.androidlib.Transport.BoxHttpRequest;
+import com.box.androidlib.Transport.BoxHttpResponse;
+import com.box.androidlib.Utils.BoxConfig;
+import com.box.androidlib.Utils.BoxExecutor;
+import com.box.androidlib.Utils.DevUtils;
+import com.box.androidlib.Utils.ParallelRunner;
+
+/**
+ * Downloads a large file over several connections at once. The file is split into byte ranges which are fetched concurrently with HTTP Range requests and
+ * written at their offsets into the preallocated destination file. The connections run through {@link ParallelRunner} on
+ * {@link BoxExecutor#LANE_TRANSFER}, the calling thread being one of them. The download starts with one connection and adds another, up to
+ * {@link BoxConfig#getMaxDownloadSegments()}, whenever the previous one increased throughput. A range that fails with an IOException is retried from the last
+ * byte written. Every range must come from a file of the expected size, so that a file changed during the download is not stitched together from two
+ * versions. If the download is cancelled or fails with a connection error, the ranges still missing are written to a journal beside the destination file,
+ * and the next download of the same file to the same destination fetches only those. If the server does not honor Range requests, or the file is small, the
+ * file is downloaded as a single stream by {@link BoxFileDownload}.
+ * 
+ * You should not call this directly, and instead use {@link com.box.androidlib.Box#downloadSegmented(String, BoxFile, File, FileDownloadListener)} or
+ * {@link com.box.androidlib.BoxSynchronous#downloadSegmented(String, BoxFile, File, FileDownloadListener, Handler)}.
+ * 
+ * @author developers@box.net
+ */
+public class BoxSegmentedFileDownload {
+
+    /**
+     * Ranges are never smaller than this many bytes, and files smaller than two ranges are downloaded as a single stream.
+     */
+    private static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+    /**
+     * The file is split into this many ranges per connection, so that connections which finish early can help with the rest of the file.
+     */
+    private static final int SEGMENTS_PER_CONNECTION = 4;
+    /**
+     * Number of times a range is retried after an IOException or a 503 Service Unavailable before the download fails.
+     */
+    private static final int MAX_SEGMENT_RETRIES = 3;
+    /**
+     * Time in milliseconds to wait before retrying a range that received a 503 Service Unavailable, multiplied by the number of the attempt.
+     */
+    private static final int RETRY_BACKOFF = 1000;
+    /**
+     * Time in milliseconds over which throughput is measured before deciding whether to open another connection.
+     */
+    private static final int RAMP_UP_INTERVAL = 500;
+    /**
+     * Another connection is opened only if the last one increased throughput by at least this factor.
+     */
+    private static final double RAMP_UP_MIN_GAIN = 1.1;
+    /**
+     * size of buffer used when reading from download input streams.
+     */
+    private static final int DOWNLOAD_BUFFER_SIZE = 16 * 1024;
+    /**
+     * The minimum time in milliseconds that must pass between each call to FileDownloadListener.onProgress.
+     */
+    private static final int ON_PROGRESS_UPDATE_THRESHOLD = 100;
+    /**
+     * Number of bytes written between two looks at the clock to post progress and decide on opening another connection.
+     */
+    private static final long CLOCK_CHECK_BYTES = 64 * 1024;
+
+    /**
+     * auth token from Box.
+     */
+    private final String mAuthToken;
+    /**
+     * FileDownloadListener that can notify you of download progress.
+     */
+    private FileDownloadListener mListener;
+    /**
+     * Handler to execute onProgress callbacks.
+     */
+    private Handler mHandler;
+    /**
+     * Runnable for FileDownloadListener.onProgress.
+     */
+    private Runnable mOnProgressRunnable;
+    /**
+     * Bytes written so far by all connections together.
+     */
+    private final AtomicLong mBytesTransferred = new AtomicLong();
+    /**
+     * Ranges that no connection has started on yet.
+     */
+    private final ConcurrentLinkedQueue<Segment> mSegments = new ConcurrentLinkedQueue<Segment>();
+    /**
+     * All ranges of this download, to journal the missing ones if it does not complete.
+     */
+    private final List<Segment> mAllSegments = new ArrayList<Segment>();
+    /**
+     * Status of the first range that failed, or null while all ranges are going well.
+     */
+    private volatile String mFailureStatus;
+    /**
+     * The IOException with which the first range failed, if any.
+     */
+    private volatile IOException mFailureException;
+    /**
+     * Whether the data written so far can be kept and resumed after the failure.
+     */
+    private volatile boolean mResumable;
+    /**
+     * Value of mBytesTransferred at which to look at the clock next.
+     */
+    private volatile long mNextClockCheck;
+    /**
+     * Number of connections that may fetch ranges. Guarded by this.
+     */
+    private int mAllowedConnections = 1;
+    /**
+     * Whether connections are still being added. Guarded by this.
+     */
+    private boolean mRampingUp = true;
+    /**
+     * Time of the last decision on opening another connection. Guarded by this.
+     */
+    private long mLastRampUpCheck;
+    /**
+     * Value of mBytesTransferred at the last decision on opening another connection. Guarded by this.
+     */
+    private long mLastRampUpBytes;
+    /**
+     * Throughput in bytes per millisecond measured at the last decision on opening another connection. Guarded by this.
+     */
+    private double mLastRate;
+    /**
+     * Time progress was last posted. Guarded by this.
+     */
+    private long mLastProgressPost;
+    /**
+     * Set if the server answered a range request with the whole file.
+     */
+    private volatile boolean mRangesUnsupported;
+
+    /**
+     * Instantiate a new BoxSegmentedFileDownload.
+     * 
+     * @param authToken
+     *            Auth token from Box
+     */
+    public BoxSegmentedFileDownload(final String authToken) {
+        mAuthToken = authToken;
+    }
+
+    /**
+     * Set a download listener which allows you to monitor download progress and see the response status.
+     * 
+     * @param listener
+     *            A file download listener. Progress is the total number of bytes written by all connections.
+     * @param handler
+     *            The handler through which FileDownloadListener.onProgress will be invoked.
+     */
+    public void setListener(final FileDownloadListener listener, final Handler handler) {
+        mListener = listener;
+        mHandler = handler;
+        mOnProgressRunnable = new Runnable() {
+
+            @Override
+            public void run() {
+                mListener.onProgress(mBytesTransferred.get());
+            }
+        };
+    }
+
+    /**
+     * Execute a segmented file download. The calling thread is one of the connections, and reports progress together with the others. Interrupt the calling
+     * thread to cancel the download.
+     * 
+     * @param file
+     *            The file to be downloaded, as obtained from getAccountTree or getFileInfo. Its size is used to split it into ranges, and the download fails
+     *            if the server reports another size.
+     * @param destinationFile
+     *            A java.io.File resource to which the downloaded file will be written. Ensure that this points to a valid file-path that can be written to.
+     *            If the download is cancelled, or fails with a connection error or a 503 Service Unavailable, it is kept together with a journal of the
+     *            ranges still missing, and calling this method again with the same file and destination fetches only those. Otherwise it is deleted if the
+     *            download does not complete.
+     * @param versionId
+     *            The version_id of the version of the file to download. Set to null to download the latest version of the file. If set, the size of file
+     *            must be that of the version.
+     * @return a response handler
+     * @throws IOException
+     *             Can be thrown if there was a connection error that persisted through retries, or if destination file could not be written.
+     */
+    public DefaultResponseParser execute(final BoxFile file, final File destinationFile, final Long versionId) throws IOException {
+        final long size = file.getSize();
+        final int maxConnections = BoxConfig.getInstance().getMaxDownloadSegments();
+        if (maxConnections < 2 || size < 2 * MIN_SEGMENT_SIZE) {
+            return downloadSingleStream(file.getId(), destinationFile, versionId);
+        }
+
+        final String uri = BoxFileDownload.getDownloadUri(mAuthToken, file.getId(), versionId);
+        final DownloadJournal journal = new DownloadJournal(destinationFile, file.getId(), versionId, size, file.getSha1());
+        List<long[]> missing = destinationFile.length() == size ? journal.loadMissingRanges() : null;
+        if (missing == null) {
+            missing = new ArrayList<long[]>();
+            missing.add(new long[] {0, size});
+        }
+        final long segmentSize = Math.max(MIN_SEGMENT_SIZE, size / (maxConnections * SEGMENTS_PER_CONNECTION));
+        long missingBytes = 0;
+        for (int i = 0; i < missing.size(); i++) {
+            final long[] range = missing.get(i);
+            for (long start = range[0]; start < range[1]; start += segmentSize) {
+                mAllSegments.add(new Segment(start, Math.min(start + segmentSize, range[1])));
+            }
+            missingBytes += range[1] - range[0];
+        }
+        mSegments.addAll(mAllSegments);
+        mBytesTransferred.set(size - missingBytes);
+        mNextClockCheck = mBytesTransferred.get() + CLOCK_CHECK_BYTES;
+        // Until the download stops, the journal lists every range this attempt has to fetch, so that a process that dies only loses this attempt.
+        journal.setMissingRanges(missing);
+        journal.save();
+        if (BoxConfig.getInstance().getHttpLoggingEnabled()) {
+            DevUtils.logcat("Downloading FileId " + file.getId() + " To: " + destinationFile.getAbsolutePath() + " in " + mSegments.size() + " segments, "
+                + missingBytes + " of " + size + " bytes missing");
+            DevUtils.logcat("Download URL : " + uri);
+        }
+
+        final DefaultResponseParser handler = new DefaultResponseParser();
+        final RandomAccessFile raf = new RandomAccessFile(destinationFile, "rw");
+        boolean complete = false;
+        try {
+            raf.setLength(size);
+            final List<SegmentWorker> connections = new ArrayList<SegmentWorker>();
+            for (int i = 0; i < maxConnections; i++) {
+                connections.add(new SegmentWorker(uri, size, destinationFile, i));
+            }
+            synchronized (this) {
+                mLastRampUpCheck = SystemClock.uptimeMillis();
+                mLastRampUpBytes = mBytesTransferred.get();
+            }
+            postProgress();
+            try {
+                // Returns only once every connection has stopped, so the positions of the ranges are final.
+                ParallelRunner.run(connections, maxConnections, BoxExecutor.LANE_TRANSFER);
+            }
+            catch (InterruptedException e) {
+                fail(FileDownloadListener.STATUS_DOWNLOAD_CANCELLED, null, true);
+                Thread.currentThread().interrupt();
+            }
+
+            if (mFailureStatus == null && !getMissingRanges().isEmpty()) {
+                // Every connection stopped without finishing its ranges or reporting why.
+                fail(FileDownloadListener.STATUS_DOWNLOAD_FAIL, null, true);
+            }
+            if (mFailureStatus == null) {
+                postProgress();
+                handler.setStatus(FileDownloadListener.STATUS_DOWNLOAD_OK);
+                complete = true;
+            }
+            else {
+                handler.setStatus(mFailureStatus);
+                if (mResumable) {
+                    // Not through a FileChannel, which an interrupt of a cancelled download would close.
+                    raf.getFD().sync();
+                }
+            }
+        }
+        finally {
+            raf.close();
+        }
+
+        if (complete) {
+            journal.delete();
+        }
+        else if (mResumable) {
+            journal.setMissingRanges(getMissingRanges());
+            journal.save();
+        }
+        else {
+            destinationFile.delete();
+            journal.delete();
+        }
+        if (mRangesUnsupported) {
+            // The server answered a range request with the whole file, so start over as a single stream.
+            mBytesTransferred.set(0);
+            return downloadSingleStream(file.getId(), destinationFile, versionId);
+        }
+        if (mFailureException != null) {
+            throw mFailureException;
+        }
+        return handler;
+    }
+
+    /**
+     * Get the ranges that have not been downloaded, merging adjacent ones.
+     * 
+     * @return The missing ranges, each as {start, end} with end exclusive
+     */
+    private List<long[]> getMissingRanges() {
+        final List<long[]> missing = new ArrayList<long[]>();
+        for (int i = 0; i < mAllSegments.size(); i++) {
+            final Segment segment = mAllSegments.get(i);
+            if (segment.mPosition >= segment.mEnd) {
+                continue;
+            }
+            final long[] last = missing.isEmpty() ? null : missing.get(missing.size() - 1);
+            if (last != null && last[1] == segment.mPosition) {
+                last[1] = segment.mEnd;
+            }
+            else {
+                missing.add(new long[] {segment.mPosition, segment.mEnd});
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Download the file as a single stream, for files too small to be worth splitting and servers that do not honor Range requests.
+     * 
+     * @param fileId
+     *            The file_id of the file to be downloaded
+     * @param destinationFile
+     *            The file to write to
+     * @param versionId
+     *            The version_id of the version of the file to download, or null for the latest version
+     * @return a response handler
+     * @throws IOException
+     *             Can be thrown if there was a connection error, or if destination file could not be written.
+     */
+    private DefaultResponseParser downloadSingleStream(final long fileId, final File destinationFile, final Long versionId) throws IOException {
+        final BoxFileDownload download = new BoxFileDownload(mAuthToken);
+        download.setListener(mListener, mHandler);
+        return download.execute(fileId, destinationFile, versionId);
+    }
+
+    /**
+     * Post the number of bytes transferred so far to the listener.
+     */
+    private void postProgress() {
+        if (mListener != null && mHandler != null) {
+            mHandler.post(mOnProgressRunnable);
+        }
+    }
+
+    /**
+     * Record why the download failed, and wake connections waiting to start. Only the first failure is kept, later ones are usually caused by the download
+     * being stopped.
+     * 
+     * @param status
+     *            The status to report
+     * @param e
+     *            The exception that caused the failure, or null
+     * @param resumable
+     *            Whether the data written so far is good and can be resumed
+     */
+    private synchronized void fail(final String status, final IOException e, final boolean resumable) {
+        if (mFailureStatus == null) {
+            mFailureException = e;
+            mResumable = resumable;
+            mFailureStatus = status;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Count bytes written, and every {@link #CLOCK_CHECK_BYTES} post progress if it is due and decide on opening another connection.
+     * 
+     * @param count
+     *            Number of bytes written
+     */
+    private void onBytesWritten(final int count) {
+        final long bytes = mBytesTransferred.addAndGet(count);
+        if (bytes < mNextClockCheck) {
+            return;
+        }
+        synchronized (this) {
+            if (bytes < mNextClockCheck) {
+                return;
+            }
+            mNextClockCheck = bytes + CLOCK_CHECK_BYTES;
+            final long now = SystemClock.uptimeMillis();
+            if (now - mLastProgressPost >= ON_PROGRESS_UPDATE_THRESHOLD) {
+                mLastProgressPost = now;
+                postProgress();
+            }
+            if (mRampingUp && now - mLastRampUpCheck >= RAMP_UP_INTERVAL) {
+                final double rate = (double) (bytes - mLastRampUpBytes) / (now - mLastRampUpCheck);
+                if (mAllowedConnections < BoxConfig.getInstance().getMaxDownloadSegments() && !mSegments.isEmpty() && rate >= mLastRate * RAMP_UP_MIN_GAIN) {
+                    mAllowedConnections++;
+                    if (BoxConfig.getInstance().getHttpLoggingEnabled()) {
+                        DevUtils.logcat("Segmented download at " + (long) rate + " bytes/ms, opening connection " + mAllowedConnections);
+                    }
+                }
+                else {
+                    mRampingUp = false;
+                }
+                notifyAll();
+                mLastRate = rate;
+                mLastRampUpCheck = now;
+                mLastRampUpBytes = bytes;
+            }
+        }
+    }
+
+    /**
+     * Wait until a connection may start fetching ranges.
+     * 
+     * @param index
+     *            Number of the connection, starting at 0
+     * @return true if the connection may start, false if it is not needed because ramping up has stopped, no ranges are left, or the download failed
+     */
+    private synchronized boolean awaitConnection(final int index) {
+        while (index >= mAllowedConnections && mRampingUp && mFailureStatus == null && !mSegments.isEmpty()) {
+            try {
+                wait();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return index < mAllowedConnections && mFailureStatus == null;
+    }
+
+    /**
+     * Wake connections waiting to start, as no ranges are left for them.
+     */
+    private synchronized void onSegmentsTaken() {
+        notifyAll();
+    }
+
+    /**
+     * A byte range of the file.
+     */
+    private static final class Segment {
+
+        /** Offset of the next byte to download. */
+        private long mPosition;
+        /** Offset just past the last byte of the range. */
+        private final long mEnd;
+
+        /**
+         * Constructor.
+         * 
+         * @param start
+         *            offset of the first byte of the range
+         * @param end
+         *            offset just past the last byte of the range
+         */
+        public Segment(final long start, final long end) {
+            mPosition = start;
+            mEnd = end;
+        }
+    }
+
+    /**
+     * One connection of the download. Waits until the download ramps up to it, then fetches ranges from the queue until it is empty or the download fails.
+     */
+    private final class SegmentWorker implements Runnable {
+
+        /** The download URL. */
+        private final String mUri;
+        /** Size of the whole file. */
+        private final long mSize;
+        /** The destination file. */
+        private final File mDestination;
+        /**
+         * The destination file opened for this connection while it runs. Each connection has its own, because writes at an offset through one shared
+         * FileChannel would close it for all of them when a cancelled connection is interrupted.
+         */
+        private RandomAccessFile mFile;
+        /** Number of this connection, starting at 0. */
+        private final int mIndex;
+        /** Buffer for reading from the connection, reused for every range. */
+        private final byte[] mBuffer = new byte[DOWNLOAD_BUFFER_SIZE];
+
+        /**
+         * Constructor.
+         * 
+         * @param uri
+         *            the download URL
+         * @param size
+         *            size of the whole file
+         * @param destination
+         *            the destination file, already at its full size
+         * @param index
+         *            number of this connection, starting at 0
+         */
+        public SegmentWorker(final String uri, final long size, final File destination, final int index) {
+            mUri = uri;
+            mSize = size;
+            mDestination = destination;
+            mIndex = index;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (awaitConnection(mIndex)) {
+                    mFile = new RandomAccessFile(mDestination, "rw");
+                    try {
+                        fetchSegments();
+                    }
+                    finally {
+                        mFile.close();
+                    }
+                    onSegmentsTaken();
+                }
+            }
+            catch (Throwable t) {
+                // Without this the range of this connection would be reported as downloaded.
+                final IOException e = new IOException("Segmented download failed: " + t);
+                e.initCause(t);
+                fail(FileDownloadListener.STATUS_DOWNLOAD_FAIL, e, false);
+            }
+        }
+
+        /**
+         * Fetch ranges from the queue until it is empty or the download fails.
+         */
+        private void fetchSegments() {
+            Segment segment;
+            while (mFailureStatus == null && !Thread.currentThread().isInterrupted() && (segment = mSegments.poll()) != null) {
+                int attempt = 0;
+                while (true) {
+                    try {
+                        final int responseCode = download(segment);
+                        if (responseCode == HttpStatus.SC_PARTIAL_CONTENT) {
+                            break;
+                        }
+                        else if (responseCode == HttpStatus.SC_SERVICE_UNAVAILABLE && attempt < MAX_SEGMENT_RETRIES) {
+                            attempt++;
+                            Thread.sleep(RETRY_BACKOFF * attempt);
+                        }
+                        else if (responseCode == HttpStatus.SC_SERVICE_UNAVAILABLE) {
+                            fail(ResponseListener.STATUS_SERVICE_UNAVAILABLE, null, true);
+                            return;
+                        }
+                        else if (responseCode == HttpURLConnection.HTTP_OK) {
+                            mRangesUnsupported = true;
+                            fail(FileDownloadListener.STATUS_DOWNLOAD_FAIL, null, false);
+                            return;
+                        }
+                        else if (responseCode == HttpURLConnection.HTTP_FORBIDDEN) {
+                            fail(FileDownloadListener.STATUS_DOWNLOAD_PERMISSIONS_ERROR, null, false);
+                            return;
+                        }
+                        else {
+                            fail(FileDownloadListener.STATUS_DOWNLOAD_FAIL, null, false);
+                            return;
+                        }
+                    }
+                    catch (IOException e) {
+                        if (Thread.currentThread().isInterrupted() || mFailureStatus != null) {
+                            return;
+                        }
+                        if (attempt >= MAX_SEGMENT_RETRIES) {
+                            fail(FileDownloadListener.STATUS_DOWNLOAD_FAIL, e, true);
+                            return;
+                        }
+                        attempt++;
+                        if (BoxConfig.getInstance().getHttpLoggingEnabled()) {
+                            DevUtils.logcat("Retrying segment at " + segment.mPosition + " after " + e);
+                        }
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Download the rest of a range and write it at its offset.
+         * 
+         * @param segment
+         *            the range. Its position is advanced as bytes are written, so that a retry continues where this attempt stopped.
+         * @return The HTTP response code. The range has been downloaded completely if this is 206 Partial Content. 416 Requested Range Not Satisfiable is
+         *         returned if the response does not start at the position of the range or is not from a file of the expected size.
+         * @throws IOException
+         *             Can be thrown if there was a connection error, if the range ended early, or if destination file could not be written.
+         */
+        private int download(final Segment segment) throws IOException {
+            final BoxHttpRequest request = new BoxHttpRequest(BoxHttpRequest.METHOD_GET, mUri);
+            request.setHeader("Range", "bytes=" + segment.mPosition + "-" + (segment.mEnd - 1));
+            final BoxHttpResponse response = BoxConfig.getInstance().getHttpTransport().execute(request);
+            final int responseCode = response.getStatusCode();
+            if (responseCode != HttpStatus.SC_PARTIAL_CONTENT) {
+                response.abort();
+                return responseCode;
+            }
+            final long length = BoxFileDownload.getContentRangeLength(response);
+            if (BoxFileDownload.getContentRangeStart(response) != segment.mPosition || length >= 0 && length != mSize) {
+                if (BoxConfig.getInstance().getHttpLoggingEnabled()) {
+                    DevUtils.logcat("Segment at " + segment.mPosition + " answered with Content-Range " + response.getHeader("Content-Range"));
+                }
+                response.abort();
+                return HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE;
+            }
+
+            try {
+                final InputStream is = response.getContent();
+                while (segment.mPosition < segment.mEnd) {
+                    if (Thread.currentThread().isInterrupted() || mFailureStatus != null) {
+                        throw new IOException("Segmented download stopped");
+                    }
+                    final int bufferLength = is.read(mBuffer, 0, (int) Math.min(mBuffer.length, segment.mEnd - segment.mPosition));
+                    if (bufferLength < 0) {
+                        throw new IOException("Segment ended at " + segment.mPosition + " of " + segment.mEnd);
+                    }
+                    mFile.seek(segment.mPosition);
+                    mFile.write(mBuffer, 0, bufferLength);
+                    segment.mPosition += bufferLength;
+                    onBytesWritten(bufferLength);
+                }
+            }
+            catch (IOException e) {
+                response.abort();
+                throw e;
+            }
+            response.close();
+            return responseCode;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.FileTransfer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Journal kept beside a partially downloaded file, identifying which file and version the partial data belongs to so that the download can be resumed. A
+ * single stream download has the file up to its length. A segmented download also records the byte ranges that are still missing, and its journal never
+ * matches that of a single stream download, as the file of a segmented download is full length from the start.
+ * 
+ * @author developers@box.net
+ */
+final class DownloadJournal {
+
+    /** Suffix appended to the destination file name to get the journal file name. */
+    static final String JOURNAL_SUFFIX = ".boxdownload";
+
+    /** Journal property for the file id. */
+    private static final String KEY_FILE_ID = "file_id";
+    /** Journal property for the version id. */
+    private static final String KEY_VERSION_ID = "version_id";
+    /** Journal property for the size of the complete file. */
+    private static final String KEY_SIZE = "size";
+    /** Journal property for the sha1 of the complete file. */
+    private static final String KEY_SHA1 = "sha1";
+    /** Journal property for the missing ranges of a segmented download, as comma separated "start-end" pairs with end exclusive. */
+    private static final String KEY_RANGES = "ranges";
+
+    /** The journal file. */
+    private final File mJournalFile;
+    /** Contents of the journal. */
+    private final Properties mProperties = new Properties();
+
+    /**
+     * Create a journal for a download. Nothing is written until {@link #save()} is called.
+     * 
+     * @param destinationFile
+     *            The file being downloaded to
+     * @param fileId
+     *            file_id of the file being downloaded
+     * @param versionId
+     *            version_id of the version being downloaded, or null for the latest version
+     * @param size
+     *            size of the complete file
+     * @param sha1
+     *            sha1 of the complete file, or null if not known
+     */
+    DownloadJournal(final File destinationFile, final long fileId, final Long versionId, final long size, final String sha1) {
+        mJournalFile = getJournalFile(destinationFile);
+        mProperties.setProperty(KEY_FILE_ID, String.valueOf(fileId));
+        mProperties.setProperty(KEY_VERSION_ID, versionId != null ? String.valueOf(versionId) : "");
+        mProperties.setProperty(KEY_SIZE, String.valueOf(size));
+        mProperties.setProperty(KEY_SHA1, sha1 != null ? sha1 : "");
+    }
+
+    /**
+     * Get the journal file of a destination file.
+     * 
+     * @param destinationFile
+     *            The file being downloaded to
+     * @return The journal file
+     */
+    static File getJournalFile(final File destinationFile) {
+        return new File(destinationFile.getPath() + JOURNAL_SUFFIX);
+    }
+
+    /**
+     * Check whether a journal describing the same download exists on disk, meaning the partial data in the destination file can be resumed.
+     * 
+     * @return true if the journal on disk matches this one
+     */
+    boolean matchesSaved() {
+        final Properties saved = load();
+        return saved != null && mProperties.equals(saved);
+    }
+
+    /**
+     * Set the byte ranges of a segmented download that are still missing. They are written by the next {@link #save()}.
+     * 
+     * @param ranges
+     *            The missing ranges, each as {start, end} with end exclusive
+     */
+    void setMissingRanges(final List<long[]> ranges) {
+        final StringBuilder value = new StringBuilder();
+        for (int i = 0; i < ranges.size(); i++) {
+            if (i > 0) {
+                value.append(',');
+            }
+            value.append(ranges.get(i)[0]).append('-').append(ranges.get(i)[1]);
+        }
+        mProperties.setProperty(KEY_RANGES, value.toString());
+    }
+
+    /**
+     * Get the missing ranges of a segmented download of the same file and version from the journal on disk.
+     * 
+     * @return The missing ranges, each as {start, end} with end exclusive, or null if there is no journal of a segmented download of the same file
+     */
+    List<long[]> loadMissingRanges() {
+        final Properties saved = load();
+        if (saved == null || saved.getProperty(KEY_RANGES) == null) {
+            return null;
+        }
+        final String[] keys = {KEY_FILE_ID, KEY_VERSION_ID, KEY_SIZE, KEY_SHA1};
+        for (int i = 0; i < keys.length; i++) {
+            if (!mProperties.getProperty(keys[i]).equals(saved.getProperty(keys[i]))) {
+                return null;
+            }
+        }
+        final long size = Long.parseLong(mProperties.getProperty(KEY_SIZE));
+        final List<long[]> ranges = new ArrayList<long[]>();
+        final String value = saved.getProperty(KEY_RANGES);
+        if (value.length() == 0) {
+            return ranges;
+        }
+        final String[] pairs = value.split(",");
+        try {
+            for (int i = 0; i < pairs.length; i++) {
+                final int dash = pairs[i].indexOf('-');
+                final long start = Long.parseLong(pairs[i].substring(0, dash));
+                final long end = Long.parseLong(pairs[i].substring(dash + 1));
+                if (start < 0 || start >= end || end > size) {
+                    return null;
+                }
+                ranges.add(new long[] {start, end});
+            }
+        }
+        catch (RuntimeException e) {
+            // Malformed journal.
+            return null;
+        }
+        return ranges;
+    }
+
+    /**
+     * Write the journal to disk.
+     * 
+     * @throws IOException
+     *             if the journal cannot be written
+     */
+    void save() throws IOException {
+        final FileOutputStream out = new FileOutputStream(mJournalFile);
+        try {
+            mProperties.store(out, null);
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Read the journal on disk.
+     * 
+     * @return Its properties, or null if there is none or it cannot be read
+     */
+    private Properties load() {
+        if (!mJournalFile.isFile()) {
+            return null;
+        }
+        final Properties saved = new Properties();
+        try {
+            final FileInputStream in = new FileInputStream(mJournalFile);
+            try {
+                saved.load(in);
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch (IOException e) {
+            return null;
+        }
+        return saved;
+    }
+
+    /**
+     * Delete the journal from disk.
+     */
+    void delete() {
+        mJournalFile.delete();
+    }
+}
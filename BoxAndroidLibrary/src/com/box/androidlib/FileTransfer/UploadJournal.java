@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.FileTransfer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+import com.box.androidlib.Utils.BoxUtils;
+
+/**
+ * Journal recording that an upload has been started, so that after a failure or a process restart it can be determined whether the file already reached Box
+ * before sending it again. The journal also records whether a POST of the file may have reached Box, so that Box is only asked about uploads that could have
+ * arrived.
+ * 
+ * @author developers@box.net
+ */
+final class UploadJournal {
+
+    /** Suffix of journal file names. */
+    static final String JOURNAL_SUFFIX = ".boxupload";
+
+    /** Journal property for the absolute path of the file being uploaded. */
+    private static final String KEY_PATH = "path";
+    /** Journal property for the upload action. */
+    private static final String KEY_ACTION = "action";
+    /** Journal property for the file name on Box. */
+    private static final String KEY_FILE_NAME = "file_name";
+    /** Journal property for the destination folder or file id. */
+    private static final String KEY_DESTINATION_ID = "destination_id";
+    /** Journal property for the size of the file being uploaded. */
+    private static final String KEY_SIZE = "size";
+    /** Journal property for the sha1 of the file being uploaded. */
+    private static final String KEY_SHA1 = "sha1";
+    /** Journal property for whether a POST of the file may have reached Box. Journals without it are taken to have been posted. */
+    private static final String KEY_POSTED = "posted";
+
+    /** The journal file. */
+    private final File mJournalFile;
+    /** Contents of the journal. */
+    private final Properties mProperties = new Properties();
+
+    /**
+     * Create a journal for an upload. Nothing is written until {@link #save()} is called.
+     * 
+     * @param journalDirectory
+     *            Directory in which upload journals are kept
+     * @param file
+     *            The file being uploaded
+     * @param action
+     *            The upload action
+     * @param filename
+     *            The file name on Box
+     * @param destinationId
+     *            The folder or file id the upload goes to
+     * @param sha1
+     *            sha1 of the file being uploaded
+     */
+    UploadJournal(final File journalDirectory, final File file, final String action, final String filename, final long destinationId, final String sha1) {
+        mProperties.setProperty(KEY_PATH, file.getAbsolutePath());
+        mProperties.setProperty(KEY_ACTION, action);
+        mProperties.setProperty(KEY_FILE_NAME, filename);
+        mProperties.setProperty(KEY_DESTINATION_ID, String.valueOf(destinationId));
+        mProperties.setProperty(KEY_SIZE, String.valueOf(file.length()));
+        mProperties.setProperty(KEY_SHA1, sha1);
+        // One journal per upload target, so that uploading changed content to the same target replaces the old journal.
+        final String key = file.getAbsolutePath() + '\n' + action + '\n' + filename + '\n' + destinationId;
+        String name;
+        try {
+            name = BoxUtils.toHexString(MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8")));
+        }
+        catch (NoSuchAlgorithmException e) {
+            name = Integer.toHexString(key.hashCode());
+        }
+        catch (IOException e) {
+            name = Integer.toHexString(key.hashCode());
+        }
+        mJournalFile = new File(journalDirectory, name + JOURNAL_SUFFIX);
+    }
+
+    /**
+     * Set whether a POST of the file may have reached Box. Takes effect on disk with the next {@link #save()}.
+     * 
+     * @param posted
+     *            false if every POST so far is known not to have stored the file, because Box answered without it or the file was not sent completely
+     */
+    void setPosted(final boolean posted) {
+        mProperties.setProperty(KEY_POSTED, String.valueOf(posted));
+    }
+
+    /**
+     * Check whether a journal describing the same upload of the same content exists on disk, meaning an earlier attempt was started.
+     * 
+     * @return true if the journal on disk matches this one
+     */
+    boolean matchesSaved() {
+        final Properties saved = load();
+        if (saved == null) {
+            return false;
+        }
+        saved.remove(KEY_POSTED);
+        final Properties expected = new Properties();
+        expected.putAll(mProperties);
+        expected.remove(KEY_POSTED);
+        return expected.equals(saved);
+    }
+
+    /**
+     * Check whether the journal on disk records that a POST of the file may have reached Box. Only meaningful if {@link #matchesSaved()}.
+     * 
+     * @return false if the journal on disk records that no POST stored the file
+     */
+    boolean isSavedPosted() {
+        final Properties saved = load();
+        return saved == null || !"false".equals(saved.getProperty(KEY_POSTED));
+    }
+
+    /**
+     * Read the journal on disk.
+     * 
+     * @return the properties of the journal on disk, or null if there is none or it cannot be read
+     */
+    private Properties load() {
+        if (!mJournalFile.isFile()) {
+            return null;
+        }
+        final Properties saved = new Properties();
+        try {
+            final FileInputStream in = new FileInputStream(mJournalFile);
+            try {
+                saved.load(in);
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch (IOException e) {
+            return null;
+        }
+        return saved;
+    }
+
+    /**
+     * Write the journal to disk.
+     * 
+     * @throws IOException
+     *             if the journal cannot be written
+     */
+    void save() throws IOException {
+        final FileOutputStream out = new FileOutputStream(mJournalFile);
+        try {
+            mProperties.store(out, null);
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Delete the journal from disk.
+     */
+    void delete() {
+        mJournalFile.delete();
+    }
+}
@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.ResponseListeners;
+
+import com.box.androidlib.ResponseParsers.BatchResponseParser;
+import com.box.androidlib.ResponseParsers.DefaultResponseParser;
+
+/**
+ * Interface definition for a callback to be invoked when a batch of requests, such as Box.getFileInfo() with several file ids, is called. The batch reports
+ * its progress as a whole rather than calling back for each request, and reports the outcome of each request in its response. IOExceptions of single
+ * requests are reported in the response too, so onIOException is not called.
+ * 
+ * @param <T>
+ *            The response parser of each request
+ * @author developers@box.net
+ */
+public interface BatchListener<T extends DefaultResponseParser> extends ResponseListener {
+
+    /** Every request of the batch succeeded. */
+    String STATUS_BATCH_OK = "batch_ok";
+    /** Every request of the batch was made, but some failed. Check the status of each item. */
+    String STATUS_BATCH_INCOMPLETE = "batch_incomplete";
+    /** The batch was cancelled. Requests not made yet have neither a response nor an exception. */
+    String STATUS_BATCH_CANCELLED = "batch_cancelled";
+    /** Status of an item whose request was not made because the batch was cancelled. */
+    String STATUS_NOT_ATTEMPTED = "not_attempted";
+
+    /**
+     * Called as requests of the batch complete, at most every 100 milliseconds and once when the last one completes.
+     * 
+     * @param completedCount
+     *            Number of requests completed, successfully or not
+     * @param totalCount
+     *            Number of requests in the batch
+     */
+    void onProgress(int completedCount, int totalCount);
+
+    /**
+     * Called when all requests of the batch have completed, or the batch was cancelled.
+     * 
+     * @param response
+     *            The response of each request, in the order of the ids given
+     * @param status
+     *            One of the STATUS_BATCH_ constants
+     */
+    void onComplete(BatchResponseParser<T> response, String status);
+}
@@ -46,6 +46,11 @@ public interface FileDownloadListener extends ResponseListener {
      * download the file.
      */
     String STATUS_DOWNLOAD_PERMISSIONS_ERROR = "permissions_error";
+    /**
+     * download status to indicate that the downloaded data did not match the
+     * sha1 of the file, and was deleted.
+     */
+    String STATUS_DOWNLOAD_SHA1_MISMATCH = "download_sha1_mismatch";
 
     /**
      * Called when the file has been downloaded. Note: even if a file is
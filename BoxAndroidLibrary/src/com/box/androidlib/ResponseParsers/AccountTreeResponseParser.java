@@ -11,107 +11,54 @@
  ******************************************************************************/
 package com.box.androidlib.ResponseParsers;
 
-import org.xml.sax.Attributes;
-import org.xml.sax.SAXException;
-
-import com.box.androidlib.Box;
 import com.box.androidlib.DAO.BoxFile;
 import com.box.androidlib.DAO.BoxFolder;
-import com.box.androidlib.Utils.BoxUtils;
+import com.box.androidlib.DAO.BoxTree;
 
 /**
- * Response parser for get_account_tree API request.
+ * Response parser for get_account_tree API request. Builds the complete tree of BoxFolder and BoxFile objects, indexed by id and path as a {@link BoxTree}.
+ * For very large trees, consider {@link StreamingAccountTreeResponseParser} instead.
  * 
  * @author developers@box.net
  */
-public class AccountTreeResponseParser extends DefaultResponseParser {
+public class AccountTreeResponseParser extends StreamingAccountTreeResponseParser {
 
     /**
      * The BoxFolder that whose tree is being requested.
      */
     private BoxFolder mTargetFolder = null;
     /**
-     * The BoxFolder currently being parsed.
-     */
-    private BoxFolder mCurrFolder = null;
-    /**
-     * The BoxFile currently being parsed.
+     * Index of the tree, built as folders and files are parsed.
      */
-    private BoxFile mBoxFile = null;
+    private BoxTree mTree = null;
 
     /**
-     * Enum definition to indicate whether we are currently parsing a file or folder element.
+     * Create a parser that builds the tree.
      */
-    private enum FileOrFolder {
-        /** Indicates that we are processing a file. */
-        FILE,
-        /** Indicates that we are processing a folder. */
-        FOLDER
-    };
-
-    /**
-     * Instance of FileOrFolder.
-     */
-    private FileOrFolder mFileOrFolder;
+    public AccountTreeResponseParser() {
+        super(null);
+    }
 
     @Override
-    public void startElement(final String uri, final String localName, final String qName, final Attributes attributes) throws SAXException {
-        super.startElement(uri, localName, qName, attributes);
-
-        try {
-            if (localName.equals("folder")) {
-                mFileOrFolder = FileOrFolder.FOLDER;
-                if (mTargetFolder == null) {
-                    mTargetFolder = Box.getBoxFolderClass().newInstance();
-                    mCurrFolder = mTargetFolder;
-                    for (int i = 0; i < attributes.getLength(); i++) {
-                        mCurrFolder.parseAttribute(attributes.getLocalName(i), attributes.getValue(i));
-                    }
-                }
-                else {
-                    final BoxFolder parentFolder = mCurrFolder;
-                    mCurrFolder = Box.getBoxFolderClass().newInstance();
-                    for (int i = 0; i < attributes.getLength(); i++) {
-                        mCurrFolder.parseAttribute(attributes.getLocalName(i), attributes.getValue(i));
-                    }
-                    mCurrFolder.setParentFolder(parentFolder);
-                    mCurrFolder.setParentFolderId(parentFolder.getId());
-                    parentFolder.addChildFolder(mCurrFolder);
-                }
-            }
-            else if (localName.equals("file")) {
-                mFileOrFolder = FileOrFolder.FILE;
-                mBoxFile = Box.getBoxFileClass().newInstance();
-                for (int i = 0; i < attributes.getLength(); i++) {
-                    mBoxFile.parseAttribute(attributes.getLocalName(i), attributes.getValue(i));
-                }
-                mCurrFolder.addChildFile(mBoxFile);
-                mBoxFile.setFolder(mCurrFolder);
-                mBoxFile.setFolderId(mCurrFolder.getId());
-            }
-            else if (localName.equals("tag")) {
-                if (mFileOrFolder == FileOrFolder.FILE) {
-                    mBoxFile.getTagIds().add(BoxUtils.parseLong(attributes.getValue("id")));
-                }
-                else if (mFileOrFolder == FileOrFolder.FOLDER) {
-                    mCurrFolder.getTagIds().add(BoxUtils.parseLong(attributes.getValue("id")));
-                }
-            }
-        }
-        catch (IllegalAccessException e) {
-            e.printStackTrace();
+    protected void onFolderStart(final BoxFolder folder) {
+        if (mTargetFolder == null) {
+            mTargetFolder = folder;
+            mTree = new BoxTree(folder);
         }
-        catch (InstantiationException e) {
-            e.printStackTrace();
+        else {
+            mTree.addFolder(folder.getParentFolderId(), folder);
         }
     }
 
     @Override
-    public void endElement(final String uri, final String localName, final String qName) throws SAXException {
-        super.endElement(uri, localName, qName);
-        if (localName.equals("folder")) {
-            mCurrFolder = mCurrFolder.getParentFolder();
-        }
+    protected void onFile(final BoxFile file) {
+        file.trimToSize();
+        mTree.addFile(file.getFolderId(), file);
+    }
+
+    @Override
+    protected void onFolderEnd(final BoxFolder folder) {
+        folder.trimToSize();
     }
 
     /**
@@ -122,4 +69,13 @@ public class AccountTreeResponseParser extends DefaultResponseParser {
     public BoxFolder getFolder() {
         return mTargetFolder;
     }
+
+    /**
+     * Get the tree that was requested, indexed by id and path.
+     * 
+     * @return BoxTree, or null if the response had no tree
+     */
+    public BoxTree getTree() {
+        return mTree;
+    }
 }
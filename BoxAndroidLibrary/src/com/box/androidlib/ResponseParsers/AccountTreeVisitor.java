@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.ResponseParsers;
+
+import com.box.androidlib.DAO.BoxFile;
+import com.box.androidlib.DAO.BoxFolder;
+
+/**
+ * Receives the folders and files of a get_account_tree response one at a time, as they are parsed. Used with
+ * {@link com.box.androidlib.BoxSynchronous#getAccountTree(String, long, String[], AccountTreeVisitor)} to index or persist very large trees without holding
+ * the entire tree in memory. Callbacks are invoked on the thread that made the request, in document order.
+ * 
+ * @author developers@box.net
+ */
+public interface AccountTreeVisitor {
+
+    /**
+     * Called when a folder is entered. The folder has its attributes and tags, and references its parent folder (null for the requested folder). Its
+     * children have not been parsed yet and are not added to it; they are reported through the following callbacks, up to the matching
+     * {@link #onFolderEnd(BoxFolder)}.
+     * 
+     * @param folder
+     *            The folder
+     */
+    void onFolderStart(BoxFolder folder);
+
+    /**
+     * Called for every file, after its attributes and tags have been parsed. The file references the folder it is in, but is not added to that folder.
+     * 
+     * @param file
+     *            The file
+     */
+    void onFile(BoxFile file);
+
+    /**
+     * Called when all children of a folder have been reported.
+     * 
+     * @param folder
+     *            The same folder that was passed to {@link #onFolderStart(BoxFolder)}
+     */
+    void onFolderEnd(BoxFolder folder);
+}
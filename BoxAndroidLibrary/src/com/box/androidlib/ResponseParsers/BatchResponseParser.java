@@ -0,0 +1,213 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.ResponseParsers;
+
+import java.io.IOException;
+
+import com.box.androidlib.ResponseListeners.BatchListener;
+
+/**
+ * The responses to a batch of requests, one per id, in the order of the ids. Each item has the response parser of its request, or the IOException the
+ * request failed with, or neither if the batch was cancelled before the request was made. The status of the batch is one of the STATUS_ constants of
+ * {@link BatchListener}. The items are set by the threads making the requests, so access to them is synchronized.
+ * 
+ * @param <T>
+ *            The response parser of each request
+ * @author developers@box.net
+ */
+public class BatchResponseParser<T extends DefaultResponseParser> extends DefaultResponseParser {
+
+    /**
+     * The type of each id, or null.
+     */
+    private final String[] mTypes;
+    /**
+     * The ids the requests were made for.
+     */
+    private final long[] mIds;
+    /**
+     * The status of a successful request.
+     */
+    private final String mSuccessStatus;
+    /**
+     * The response of each request, or null.
+     */
+    private final Object[] mResponses;
+    /**
+     * The exception of each request, or null.
+     */
+    private final IOException[] mExceptions;
+
+    /**
+     * Create the responses of a batch, with no request made yet.
+     * 
+     * @param ids
+     *            The ids the requests are made for
+     * @param successStatus
+     *            The status of a successful request
+     */
+    public BatchResponseParser(final long[] ids, final String successStatus) {
+        this(null, ids, successStatus);
+    }
+
+    /**
+     * Create the responses of a batch of requests on files and folders, with no request made yet.
+     * 
+     * @param types
+     *            The type of each id, {@link com.box.androidlib.Box#TYPE_FILE} or {@link com.box.androidlib.Box#TYPE_FOLDER}, or null if the ids are all of
+     *            the same type
+     * @param ids
+     *            The ids the requests are made for
+     * @param successStatus
+     *            The status of a successful request
+     */
+    public BatchResponseParser(final String[] types, final long[] ids, final String successStatus) {
+        mTypes = types == null ? null : types.clone();
+        mIds = ids.clone();
+        mSuccessStatus = successStatus;
+        mResponses = new Object[ids.length];
+        mExceptions = new IOException[ids.length];
+    }
+
+    /**
+     * Get the number of items.
+     * 
+     * @return number of ids in the batch
+     */
+    public int size() {
+        return mIds.length;
+    }
+
+    /**
+     * Get the id of an item.
+     * 
+     * @param index
+     *            Index of the item, in the order of the ids given
+     * @return The id
+     */
+    public long getId(final int index) {
+        return mIds[index];
+    }
+
+    /**
+     * Get the type of an item.
+     * 
+     * @param index
+     *            Index of the item
+     * @return {@link com.box.androidlib.Box#TYPE_FILE} or {@link com.box.androidlib.Box#TYPE_FOLDER}, or null if the batch was not given types
+     */
+    public String getType(final int index) {
+        return mTypes == null ? null : mTypes[index];
+    }
+
+    /**
+     * Get the response of an item.
+     * 
+     * @param index
+     *            Index of the item
+     * @return The response parser, or null if the request failed with an IOException or was not made
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized T getResponse(final int index) {
+        return (T) mResponses[index];
+    }
+
+    /**
+     * Get the status of an item.
+     * 
+     * @param index
+     *            Index of the item
+     * @return The status from Box API, null if the request failed with an IOException, or {@link BatchListener#STATUS_NOT_ATTEMPTED} if it was not made
+     */
+    public synchronized String getStatus(final int index) {
+        if (mResponses[index] == null) {
+            return mExceptions[index] == null ? BatchListener.STATUS_NOT_ATTEMPTED : null;
+        }
+        return getResponse(index).getStatus();
+    }
+
+    /**
+     * Get the exception an item failed with.
+     * 
+     * @param index
+     *            Index of the item
+     * @return The IOException, or null if the request got a response or was not made
+     */
+    public synchronized IOException getException(final int index) {
+        return mExceptions[index];
+    }
+
+    /**
+     * Check whether the request of an item succeeded.
+     * 
+     * @param index
+     *            Index of the item
+     * @return true if the request got the success status
+     */
+    public boolean isSucceeded(final int index) {
+        return mSuccessStatus.equals(getStatus(index));
+    }
+
+    /**
+     * Get the number of items whose request succeeded.
+     * 
+     * @return number of items
+     */
+    public synchronized int getSucceededCount() {
+        int count = 0;
+        for (int i = 0; i < mIds.length; i++) {
+            if (isSucceeded(i)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the number of items whose request was made, successfully or not.
+     * 
+     * @return number of items
+     */
+    public synchronized int getCompletedCount() {
+        int count = 0;
+        for (int i = 0; i < mIds.length; i++) {
+            if (mResponses[i] != null || mExceptions[i] != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Set the response of an item.
+     * 
+     * @param index
+     *            Index of the item
+     * @param response
+     *            The response parser
+     */
+    public synchronized void setResponse(final int index, final T response) {
+        mResponses[index] = response;
+    }
+
+    /**
+     * Set the exception an item failed with.
+     * 
+     * @param index
+     *            Index of the item
+     * @param e
+     *            The IOException
+     */
+    public synchronized void setException(final int index, final IOException e) {
+        mExceptions[index] = e;
+    }
+}
@@ -36,7 +36,7 @@ public class CollaborationsResponseParser extends DefaultResponseParser {
             collaboration = null;
         }
         else if (collaboration != null) {
-            collaboration.parseAttribute(localName, mTextNode.toString());
+            collaboration.parseAttribute(localName, mTextNode);
         }
     }
 
@@ -46,7 +46,7 @@ public class CommentResponseParser extends DefaultResponseParser {
         throws SAXException {
         super.endElement(uri, localName, qName);
         if (mComment != null) {
-            mComment.parseAttribute(localName, mTextNode.toString());
+            mComment.parseAttribute(localName, mTextNode);
         }
     }
 
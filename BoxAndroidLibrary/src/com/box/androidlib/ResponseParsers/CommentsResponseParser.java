@@ -85,10 +85,10 @@ public class CommentsResponseParser extends DefaultResponseParser {
             }
         }
         else if (mParentOrChild == ParentOrChild.PARENT && mComment != null) {
-            mComment.parseAttribute(localName, mTextNode.toString());
+            mComment.parseAttribute(localName, mTextNode);
         }
         else if (mParentOrChild == ParentOrChild.CHILD && mReplyComment != null) {
-            mReplyComment.parseAttribute(localName, mTextNode.toString());
+            mReplyComment.parseAttribute(localName, mTextNode);
         }
     }
 
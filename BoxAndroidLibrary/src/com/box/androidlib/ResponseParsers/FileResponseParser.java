@@ -49,7 +49,7 @@ public class FileResponseParser extends DefaultResponseParser {
     public void endElement(final String uri, final String localName, final String qName) throws SAXException {
         super.endElement(uri, localName, qName);
         if (mFile != null) {
-            mFile.parseAttribute(localName, mTextNode.toString());
+            mFile.parseAttribute(localName, mTextNode);
         }
     }
 
@@ -49,7 +49,7 @@ public class FolderResponseParser extends DefaultResponseParser {
     public void endElement(final String uri, final String localName, final String qName) throws SAXException {
         super.endElement(uri, localName, qName);
         if (mBoxFolder != null) {
-            mBoxFolder.parseAttribute(localName, mTextNode.toString());
+            mBoxFolder.parseAttribute(localName, mTextNode);
         }
     }
 
@@ -115,10 +115,10 @@ public class SearchResponseParser extends DefaultResponseParser {
                 // If we ever care about folder match type, process it here
             }
             else if (mFileOrFolder == FileOrFolder.FOLDER && mFolder != null) {
-                mFolder.parseAttribute(localName, mTextNode.toString());
+                mFolder.parseAttribute(localName, mTextNode);
             }
             else if (mFileOrFolder == FileOrFolder.FILE && mFile != null) {
-                mFile.parseAttribute(localName, mTextNode.toString());
+                mFile.parseAttribute(localName, mTextNode);
             }
         }
     }
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.ResponseParsers;
+
+import java.util.ArrayList;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+
+import com.box.androidlib.Box;
+import com.box.androidlib.DAO.BoxFile;
+import com.box.androidlib.DAO.BoxFolder;
+import com.box.androidlib.Utils.BoxUtils;
+
+/**
+ * Response parser for get_account_tree API request that reports folders and files to an {@link AccountTreeVisitor} as they are parsed, instead of building
+ * the tree. Only the folders on the path from the requested folder to the element being parsed are held in memory.
+ * 
+ * @author developers@box.net
+ */
+public class StreamingAccountTreeResponseParser extends DefaultResponseParser {
+
+    /**
+     * Visitor to report folders and files to.
+     */
+    private final AccountTreeVisitor mVisitor;
+    /**
+     * Folders from the requested folder down to the folder currently being parsed.
+     */
+    private final ArrayList<BoxFolder> mFolderStack = new ArrayList<BoxFolder>();
+    /**
+     * Whether the folder at the top of mFolderStack has been reported yet. Folders are reported once their tags have been parsed, i.e. when their first child
+     * element other than tags starts.
+     */
+    private boolean mCurrFolderReported;
+    /**
+     * The BoxFile currently being parsed, or null if not inside a file element.
+     */
+    private BoxFile mBoxFile;
+
+    /**
+     * Create a parser that reports to the given visitor.
+     * 
+     * @param visitor
+     *            The visitor
+     */
+    public StreamingAccountTreeResponseParser(final AccountTreeVisitor visitor) {
+        mVisitor = visitor;
+    }
+
+    @Override
+    public void startElement(final String uri, final String localName, final String qName, final Attributes attributes) throws SAXException {
+        super.startElement(uri, localName, qName, attributes);
+
+        try {
+            if (localName.equals("folder")) {
+                reportCurrFolder();
+                final BoxFolder folder = Box.getBoxFolderClass().newInstance();
+                for (int i = 0; i < attributes.getLength(); i++) {
+                    folder.parseAttribute(attributes.getLocalName(i), attributes.getValue(i));
+                }
+                if (!mFolderStack.isEmpty()) {
+                    final BoxFolder parentFolder = mFolderStack.get(mFolderStack.size() - 1);
+                    folder.setParentFolder(parentFolder);
+                    folder.setParentFolderId(parentFolder.getId());
+                }
+                mFolderStack.add(folder);
+                mCurrFolderReported = false;
+            }
+            else if (localName.equals("file")) {
+                reportCurrFolder();
+                final BoxFolder folder = mFolderStack.get(mFolderStack.size() - 1);
+                mBoxFile = Box.getBoxFileClass().newInstance();
+                for (int i = 0; i < attributes.getLength(); i++) {
+                    mBoxFile.parseAttribute(attributes.getLocalName(i), attributes.getValue(i));
+                }
+                mBoxFile.setFolder(folder);
+                mBoxFile.setFolderId(folder.getId());
+            }
+            else if (localName.equals("tag")) {
+                if (mBoxFile != null) {
+                    mBoxFile.addTagId(BoxUtils.parseLong(attributes.getValue("id")));
+                }
+                else if (!mFolderStack.isEmpty()) {
+                    mFolderStack.get(mFolderStack.size() - 1).addTagId(BoxUtils.parseLong(attributes.getValue("id")));
+                }
+            }
+            else if (localName.equals("folders") || localName.equals("files")) {
+                reportCurrFolder();
+            }
+        }
+        catch (IllegalAccessException e) {
+            e.printStackTrace();
+        }
+        catch (InstantiationException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void endElement(final String uri, final String localName, final String qName) throws SAXException {
+        super.endElement(uri, localName, qName);
+        if (localName.equals("folder")) {
+            reportCurrFolder();
+            onFolderEnd(mFolderStack.remove(mFolderStack.size() - 1));
+            // The parent folder has already been reported
+            mCurrFolderReported = true;
+        }
+        else if (localName.equals("file") && mBoxFile != null) {
+            final BoxFile file = mBoxFile;
+            mBoxFile = null;
+            onFile(file);
+        }
+    }
+
+    /**
+     * Report the folder currently being parsed, if it has not been reported yet.
+     */
+    private void reportCurrFolder() {
+        if (!mCurrFolderReported && !mFolderStack.isEmpty()) {
+            mCurrFolderReported = true;
+            onFolderStart(mFolderStack.get(mFolderStack.size() - 1));
+        }
+    }
+
+    /**
+     * Called when a folder is entered. By default, reports the folder to the visitor.
+     * 
+     * @param folder
+     *            The folder
+     * @see AccountTreeVisitor#onFolderStart(BoxFolder)
+     */
+    protected void onFolderStart(final BoxFolder folder) {
+        if (mVisitor != null) {
+            mVisitor.onFolderStart(folder);
+        }
+    }
+
+    /**
+     * Called for every file. By default, reports the file to the visitor.
+     * 
+     * @param file
+     *            The file
+     * @see AccountTreeVisitor#onFile(BoxFile)
+     */
+    protected void onFile(final BoxFile file) {
+        if (mVisitor != null) {
+            mVisitor.onFile(file);
+        }
+    }
+
+    /**
+     * Called when all children of a folder have been parsed. By default, reports the folder to the visitor.
+     * 
+     * @param folder
+     *            The folder
+     * @see AccountTreeVisitor#onFolderEnd(BoxFolder)
+     */
+    protected void onFolderEnd(final BoxFolder folder) {
+        if (mVisitor != null) {
+            mVisitor.onFolderEnd(folder);
+        }
+    }
+}
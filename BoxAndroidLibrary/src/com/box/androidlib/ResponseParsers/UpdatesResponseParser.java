@@ -121,7 +121,7 @@ public class UpdatesResponseParser extends DefaultResponseParser {
         if (mCurrentlyParsing != null) {
             switch (mCurrentlyParsing) {
                 case UPDATE:
-                    update.parseAttribute(localName, mTextNode.toString());
+                    update.parseAttribute(localName, mTextNode);
                     break;
                 default:
                     break;
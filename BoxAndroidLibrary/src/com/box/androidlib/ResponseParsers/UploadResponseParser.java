@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.ResponseParsers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+
+import com.box.androidlib.Box;
+import com.box.androidlib.DAO.BoxFile;
+
+/**
+ * Response parser for the upload API. Collects a BoxFile for every file element of the response, in the format
+ * &lt;response&gt;&lt;status&gt;upload_ok&lt;/status&gt;&lt;files&gt;&lt;file file_name="..." id="..." .../&gt;&lt;/files&gt;&lt;/response&gt;.
+ * 
+ * @author developers@box.net
+ */
+public class UploadResponseParser extends FileResponseParser {
+
+    /**
+     * The uploaded files, in the order of the response.
+     */
+    private final List<BoxFile> mFiles = new ArrayList<BoxFile>();
+
+    @Override
+    public void startElement(final String uri, final String localName, final String qName, final Attributes attributes) throws SAXException {
+        super.startElement(uri, localName, qName, attributes);
+        if (localName.equals("file")) {
+            try {
+                final BoxFile boxFile = Box.getBoxFileClass().newInstance();
+                for (int i = 0; i < attributes.getLength(); i++) {
+                    boxFile.parseAttribute(attributes.getLocalName(i), attributes.getValue(i));
+                }
+                mFiles.add(boxFile);
+            }
+            catch (InstantiationException e) {
+                e.printStackTrace();
+            }
+            catch (IllegalAccessException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Get the first file of the upload response.
+     * 
+     * @return The first uploaded file, or null if the response did not contain one
+     */
+    @Override
+    public BoxFile getFile() {
+        return mFiles.isEmpty() ? null : mFiles.get(0);
+    }
+
+    /**
+     * Set the file of the response, replacing any files parsed.
+     * 
+     * @param file
+     *            BoxFile, or null for none
+     */
+    @Override
+    public void setFile(final BoxFile file) {
+        mFiles.clear();
+        if (file != null) {
+            mFiles.add(file);
+        }
+    }
+
+    /**
+     * Get all files of the upload response.
+     * 
+     * @return The uploaded files, in the order of the response. Empty if the response did not contain any.
+     */
+    public List<BoxFile> getFiles() {
+        return mFiles;
+    }
+}
@@ -50,7 +50,7 @@ public class UserResponseParser extends DefaultResponseParser {
         throws SAXException {
         super.endElement(uri, localName, qName);
         if (mUser != null) {
-            mUser.parseAttribute(localName, mTextNode.toString());
+            mUser.parseAttribute(localName, mTextNode);
         }
         if (localName.equals("auth_token")) {
             mAuthToken = mTextNode.toString();
@@ -57,7 +57,7 @@ public class VersionsResponseParser extends DefaultResponseParser {
         }
         else {
             if (version != null) {
-                version.parseAttribute(localName, mTextNode.toString());
+                version.parseAttribute(localName, mTextNode);
             }
         }
     }
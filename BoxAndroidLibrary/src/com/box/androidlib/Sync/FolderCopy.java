@@ -0,0 +1,794 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.Sync;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import com.box.androidlib.Box;
+import com.box.androidlib.BoxSynchronous;
+import com.box.androidlib.DAO.BoxFile;
+import com.box.androidlib.DAO.BoxFolder;
+import com.box.androidlib.ResponseListeners.CopyListener;
+import com.box.androidlib.ResponseListeners.CreateFolderListener;
+import com.box.androidlib.ResponseParsers.FolderResponseParser;
+import com.box.androidlib.Utils.BoxConfig;
+import com.box.androidlib.Utils.LongArrayList;
+import com.box.androidlib.Utils.ParallelRunner;
+
+/**
+ * Copies a Box folder, with everything below it, into another folder. The copy API action only copies files, so {@link #execute(BoxFolder)} walks the source
+ * folder as fetched with get_account_tree and rebuilds it: it creates the folders level by level, the folders of a level in parallel, and then copies all
+ * files in parallel into the folders created for them.
+ * 
+ * What has been copied is remembered, so a copy that failed or was interrupted is resumed by calling {@link #execute(BoxFolder)} again: folders already
+ * created are reused and files already copied are not copied again. If a state file is given, it is kept there too, so that the copy can be resumed after
+ * the process restarts. Requests whose answer was lost are remembered as well, so that a folder or file of the same name found by the next run is known to
+ * be the copy. Any other folder or file of the same name already in the destination is not merged into or overwritten, and is reported as a failure.
+ * 
+ * {@link #execute(BoxFolder)} makes network requests and blocks, so call it from a background thread.
+ * 
+ * @author developers@box.net
+ */
+public class FolderCopy {
+
+    /**
+     * Interface definition for a callback to be invoked as a copy progresses.
+     */
+    public interface Listener {
+
+        /**
+         * Called as folders are created and files copied, at most every 100 milliseconds and once when the copy ends.
+         * 
+         * @param completedCount
+         *            Number of folders and files done, successfully or not, including those done by an earlier run
+         * @param totalCount
+         *            Number of folders and files to copy, including the source folder
+         * @param bytesCopied
+         *            Size of the files done
+         * @param totalBytes
+         *            Size of all files to copy
+         */
+        void onProgress(int completedCount, int totalCount, long bytesCopied, long totalBytes);
+    }
+
+    /**
+     * Version of the state file format.
+     */
+    private static final int STATE_VERSION = 2;
+    /**
+     * Least time between two onProgress calls, in milliseconds.
+     */
+    private static final int ON_PROGRESS_UPDATE_THRESHOLD = 100;
+
+    /**
+     * The API key.
+     */
+    private final String mApiKey;
+    /**
+     * The auth token.
+     */
+    private final String mAuthToken;
+    /**
+     * The folder to copy into.
+     */
+    private final long mDestinationFolderId;
+    /**
+     * File in which what has been copied is kept, or null.
+     */
+    private final File mStateFile;
+    /**
+     * Most requests to make at the same time.
+     */
+    private int mMaxConcurrency = BoxConfig.getInstance().getMaxConcurrentRequests();
+    /**
+     * Receives progress, or null.
+     */
+    private Listener mListener;
+    /**
+     * The handler through which the listener is invoked.
+     */
+    private Handler mHandler;
+    /**
+     * Id of the folder created for each source folder, or null before the state is read. Also the lock of both maps.
+     */
+    private HashMap<Long, Long> mCopiedFolders;
+    /**
+     * Id of the folder each source file was copied to, or null before the state is read.
+     */
+    private HashMap<Long, Long> mCopiedFiles;
+    /**
+     * Source folders whose create_folder request was sent without an answer, with the folder it was sent for. Saved before the requests are sent, so that a
+     * folder found to exist by a later run is known to be its own.
+     */
+    private HashMap<Long, Long> mSentFolders;
+    /**
+     * Source files whose copy request was sent without an answer, with the folder it was sent for.
+     */
+    private HashMap<Long, Long> mSentFiles;
+
+    /**
+     * A folder or file that could not be copied.
+     */
+    public static final class Failure {
+
+        /** {@link Box#TYPE_FOLDER} or {@link Box#TYPE_FILE}. */
+        private final String mType;
+        /** Id of the source folder or file. */
+        private final long mId;
+        /** Name of the source folder or file. */
+        private final String mName;
+        /** Status the request failed with. */
+        private final String mStatus;
+
+        /**
+         * Create a failure.
+         * 
+         * @param type
+         *            {@link Box#TYPE_FOLDER} or {@link Box#TYPE_FILE}
+         * @param id
+         *            Id of the source folder or file
+         * @param name
+         *            Name of the source folder or file
+         * @param status
+         *            Status the request failed with
+         */
+        private Failure(final String type, final long id, final String name, final String status) {
+            mType = type;
+            mId = id;
+            mName = name;
+            mStatus = status;
+        }
+
+        /**
+         * Get the type of the item.
+         * 
+         * @return {@link Box#TYPE_FOLDER} or {@link Box#TYPE_FILE}
+         */
+        public String getType() {
+            return mType;
+        }
+
+        /**
+         * Get the id of the source folder or file.
+         * 
+         * @return the id
+         */
+        public long getId() {
+            return mId;
+        }
+
+        /**
+         * Get the name of the source folder or file.
+         * 
+         * @return the name
+         */
+        public String getName() {
+            return mName;
+        }
+
+        /**
+         * Get the status the request failed with.
+         * 
+         * @return Status from Box API, or the message of the IOException
+         */
+        public String getStatus() {
+            return mStatus;
+        }
+    }
+
+    /**
+     * What {@link FolderCopy#execute(BoxFolder)} did.
+     */
+    public static final class Report {
+
+        /** Number of folders and files to copy. */
+        private int mTotalCount;
+        /** Size of all files to copy. */
+        private long mTotalBytes;
+        /** Number of folders and files done, successfully or not. */
+        private int mCompletedCount;
+        /** Size of the files done. */
+        private long mBytesCopied;
+        /** Number of folders created by this run. */
+        private int mFoldersCreated;
+        /** Number of files copied by this run. */
+        private int mFilesCopied;
+        /** Number of folders and files copied by an earlier run. */
+        private int mAlreadyCopiedCount;
+        /** Folders and files that could not be copied. */
+        private final ArrayList<Failure> mFailures = new ArrayList<Failure>();
+        /** Id of the copy of the source folder, or 0. */
+        private long mCopyFolderId;
+        /** Time taken, in milliseconds. */
+        private long mElapsedTime;
+        /** Whether the run was interrupted before everything was copied. */
+        private boolean mInterrupted;
+
+        /**
+         * Record the outcome of a folder or file.
+         * 
+         * @param type
+         *            {@link Box#TYPE_FOLDER} or {@link Box#TYPE_FILE}
+         * @param size
+         *            Size of the file, 0 for a folder
+         * @param copied
+         *            Whether this run copied it
+         * @param failure
+         *            The failure, or null
+         */
+        private synchronized void record(final String type, final long size, final boolean copied, final Failure failure) {
+            mCompletedCount++;
+            mBytesCopied += size;
+            if (failure != null) {
+                mFailures.add(failure);
+            }
+            else if (!copied) {
+                mAlreadyCopiedCount++;
+            }
+            else if (Box.TYPE_FOLDER.equals(type)) {
+                mFoldersCreated++;
+            }
+            else {
+                mFilesCopied++;
+            }
+        }
+
+        /**
+         * Get the number of folders and files to copy.
+         * 
+         * @return number of folders and files, including the source folder
+         */
+        public synchronized int getTotalCount() {
+            return mTotalCount;
+        }
+
+        /**
+         * Get the number of folders and files done, successfully or not. Items below a folder that could not be created are not done.
+         * 
+         * @return number of folders and files
+         */
+        public synchronized int getCompletedCount() {
+            return mCompletedCount;
+        }
+
+        /**
+         * Get the number of folders created by this run.
+         * 
+         * @return number of folders
+         */
+        public synchronized int getFoldersCreatedCount() {
+            return mFoldersCreated;
+        }
+
+        /**
+         * Get the number of files copied by this run.
+         * 
+         * @return number of files
+         */
+        public synchronized int getFilesCopiedCount() {
+            return mFilesCopied;
+        }
+
+        /**
+         * Get the number of folders and files copied by an earlier run, and skipped by this one.
+         * 
+         * @return number of folders and files
+         */
+        public synchronized int getAlreadyCopiedCount() {
+            return mAlreadyCopiedCount;
+        }
+
+        /**
+         * Get the folders and files that could not be copied. They are tried again by the next run.
+         * 
+         * @return The failures
+         */
+        public synchronized List<Failure> getFailures() {
+            return new ArrayList<Failure>(mFailures);
+        }
+
+        /**
+         * Get the size of the files done.
+         * 
+         * @return bytes
+         */
+        public synchronized long getBytesCopied() {
+            return mBytesCopied;
+        }
+
+        /**
+         * Get the size of all files to copy.
+         * 
+         * @return bytes
+         */
+        public synchronized long getTotalBytes() {
+            return mTotalBytes;
+        }
+
+        /**
+         * Get the id of the copy of the source folder.
+         * 
+         * @return the folder id, or 0 if it could not be created
+         */
+        public long getCopyFolderId() {
+            return mCopyFolderId;
+        }
+
+        /**
+         * Get the time the run took.
+         * 
+         * @return time in milliseconds
+         */
+        public long getElapsedTime() {
+            return mElapsedTime;
+        }
+
+        /**
+         * Check whether the run was interrupted. What was not copied is copied by the next run.
+         * 
+         * @return true if the thread running the copy was interrupted
+         */
+        public boolean isInterrupted() {
+            return mInterrupted;
+        }
+
+        /**
+         * Check whether everything has been copied.
+         * 
+         * @return true if the run was not interrupted and nothing failed
+         */
+        public synchronized boolean isComplete() {
+            return !mInterrupted && mFailures.isEmpty() && mCompletedCount == mTotalCount;
+        }
+    }
+
+    /**
+     * Set up the copy of a folder.
+     * 
+     * @param apiKey
+     *            The API key
+     * @param authToken
+     *            The auth token retrieved through {@link BoxSynchronous#getAuthToken(String)}
+     * @param destinationFolderId
+     *            The folder to copy into. The copy is a new folder in it, with the name of the source folder.
+     * @param stateFile
+     *            File in which to keep what has been copied, such as a file under Context.getFilesDir(), or null to only keep it in this object. Use one file
+     *            per pair of source and destination folder.
+     */
+    public FolderCopy(final String apiKey, final String authToken, final long destinationFolderId, final File stateFile) {
+        mApiKey = apiKey;
+        mAuthToken = authToken;
+        mDestinationFolderId = destinationFolderId;
+        mStateFile = stateFile;
+    }
+
+    /**
+     * Set the most requests to make at the same time. Defaults to {@link BoxConfig#getMaxConcurrentRequests()}.
+     * 
+     * @param maxConcurrency
+     *            Most requests at the same time
+     */
+    public void setMaxConcurrency(final int maxConcurrency) {
+        mMaxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Set the listener to report progress to.
+     * 
+     * @param listener
+     *            The listener, or null
+     * @param handler
+     *            The handler through which the listener will be invoked
+     */
+    public void setListener(final Listener listener, final Handler handler) {
+        mListener = listener;
+        mHandler = handler;
+    }
+
+    /**
+     * Copy a folder. Folders are created level by level, parents before children, with the folders of a level created in parallel. Then all files are
+     * copied in parallel. Folders and files copied by an earlier run are skipped. The state is saved before each level and before the files, and at the
+     * end once every request has stopped, also if the run fails or is interrupted, so that the next run only has what is left to do.
+     * 
+     * @param sourceFolder
+     *            The folder to copy with everything below it, as returned by get_account_tree without {@link Box#PARAM_ONELEVEL} or {@link Box#PARAM_NOFILES}
+     * @return What was done
+     * @throws IOException
+     *             If the state file could not be read or written
+     */
+    public Report execute(final BoxFolder sourceFolder) throws IOException {
+        final long start = SystemClock.uptimeMillis();
+        if (mCopiedFolders == null) {
+            readState();
+        }
+        // Requests sent by earlier runs without an answer. Those sent by this run cannot explain a folder or file that exists already.
+        final HashMap<Long, Long> earlierFolders;
+        final HashMap<Long, Long> earlierFiles;
+        synchronized (mCopiedFolders) {
+            earlierFolders = new HashMap<Long, Long>(mSentFolders);
+            earlierFiles = new HashMap<Long, Long>(mSentFiles);
+        }
+        final Report report = new Report();
+        final ArrayList<BoxFolder> folders = new ArrayList<BoxFolder>();
+        final ArrayList<BoxFile> files = new ArrayList<BoxFile>();
+        // The folder of each file, as the files of a get_account_tree response do not have it.
+        final LongArrayList fileFolderIds = new LongArrayList();
+        folders.add(sourceFolder);
+        for (int i = 0; i < folders.size(); i++) {
+            final BoxFolder folder = folders.get(i);
+            folders.addAll(folder.getFoldersInFolder());
+            final List<? extends BoxFile> folderFiles = folder.getFilesInFolder();
+            for (int j = 0; j < folderFiles.size(); j++) {
+                files.add(folderFiles.get(j));
+                fileFolderIds.addLong(folder.getId());
+            }
+        }
+        report.mTotalCount = folders.size() + files.size();
+        for (int i = 0; i < files.size(); i++) {
+            report.mTotalBytes += files.get(i).getSize();
+        }
+
+        final AtomicLong lastProgressPost = new AtomicLong();
+        try {
+            // Folders, one level at a time, as each needs the id of the copy of its parent.
+            ArrayList<BoxFolder> level = new ArrayList<BoxFolder>();
+            LongArrayList levelParentIds = new LongArrayList();
+            level.add(sourceFolder);
+            levelParentIds.addLong(mDestinationFolderId);
+            while (!level.isEmpty()) {
+                final ArrayList<Runnable> tasks = new ArrayList<Runnable>(level.size());
+                for (int i = 0; i < level.size(); i++) {
+                    final BoxFolder folder = level.get(i);
+                    final long parentId = levelParentIds.getLong(i);
+                    markSent(mSentFolders, mCopiedFolders, folder.getId(), parentId);
+                    tasks.add(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            copyFolder(folder, parentId, earlierFolders, report);
+                            onProgress(report, lastProgressPost, false);
+                        }
+                    });
+                }
+                writeState();
+                ParallelRunner.run(tasks, mMaxConcurrency);
+                final ArrayList<BoxFolder> next = new ArrayList<BoxFolder>();
+                final LongArrayList nextParentIds = new LongArrayList();
+                for (int i = 0; i < level.size(); i++) {
+                    final Long copyId = getCopy(mCopiedFolders, level.get(i).getId());
+                    if (copyId != null) {
+                        final List<? extends BoxFolder> children = level.get(i).getFoldersInFolder();
+                        for (int j = 0; j < children.size(); j++) {
+                            next.add(children.get(j));
+                            nextParentIds.addLong(copyId.longValue());
+                        }
+                    }
+                }
+                level = next;
+                levelParentIds = nextParentIds;
+            }
+            final Long copyFolderId = getCopy(mCopiedFolders, sourceFolder.getId());
+            report.mCopyFolderId = copyFolderId != null ? copyFolderId.longValue() : 0;
+
+            // Files, into the folders that could be created.
+            final ArrayList<Runnable> tasks = new ArrayList<Runnable>(files.size());
+            for (int i = 0; i < files.size(); i++) {
+                final BoxFile file = files.get(i);
+                final Long folderId = getCopy(mCopiedFolders, fileFolderIds.getLong(i));
+                if (folderId == null) {
+                    continue;
+                }
+                markSent(mSentFiles, mCopiedFiles, file.getId(), folderId.longValue());
+                tasks.add(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        copyFile(file, folderId.longValue(), earlierFiles, report);
+                        onProgress(report, lastProgressPost, false);
+                    }
+                });
+            }
+            writeState();
+            ParallelRunner.run(tasks, mMaxConcurrency);
+        }
+        catch (final InterruptedException e) {
+            report.mInterrupted = true;
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            // ParallelRunner returns only once every request has stopped, so the state is complete.
+            writeState();
+            report.mElapsedTime = SystemClock.uptimeMillis() - start;
+            onProgress(report, lastProgressPost, true);
+        }
+        return report;
+    }
+
+    /**
+     * Create the copy of a folder, unless an earlier run did, and record the outcome.
+     * 
+     * @param folder
+     *            The source folder
+     * @param parentId
+     *            Id of the folder to create it in
+     * @param earlierFolders
+     *            Folders whose create_folder request an earlier run sent without an answer
+     * @param report
+     *            The report to record the outcome in
+     */
+    private void copyFolder(final BoxFolder folder, final long parentId, final HashMap<Long, Long> earlierFolders, final Report report) {
+        if (getCopy(mCopiedFolders, folder.getId()) != null) {
+            report.record(Box.TYPE_FOLDER, 0, false, null);
+            return;
+        }
+        String status;
+        try {
+            final FolderResponseParser parser = BoxSynchronous.getInstance(mApiKey).createFolder(mAuthToken, parentId, folder.getFolderName(), false);
+            status = parser.getStatus();
+            // A folder that exists already is the copy only if an earlier run sent the same request and did not get the answer.
+            final boolean created = CreateFolderListener.STATUS_CREATE_OK.equals(status)
+                || CreateFolderListener.STATUS_S_FOLDER_EXISTS.equals(status) && isSentFor(earlierFolders, folder.getId(), parentId);
+            synchronized (mCopiedFolders) {
+                mSentFolders.remove(folder.getId());
+                if (created && parser.getFolder() != null) {
+                    mCopiedFolders.put(folder.getId(), parser.getFolder().getId());
+                    report.record(Box.TYPE_FOLDER, 0, true, null);
+                    return;
+                }
+            }
+        }
+        catch (final IOException e) {
+            status = e.getMessage() != null ? e.getMessage() : e.toString();
+        }
+        report.record(Box.TYPE_FOLDER, 0, false, new Failure(Box.TYPE_FOLDER, folder.getId(), folder.getFolderName(), status));
+    }
+
+    /**
+     * Copy a file, unless an earlier run did, and record the outcome.
+     * 
+     * @param file
+     *            The source file
+     * @param folderId
+     *            Id of the folder to copy it to
+     * @param earlierFiles
+     *            Files whose copy request an earlier run sent without an answer
+     * @param report
+     *            The report to record the outcome in
+     */
+    private void copyFile(final BoxFile file, final long folderId, final HashMap<Long, Long> earlierFiles, final Report report) {
+        final Long copiedTo = getCopy(mCopiedFiles, file.getId());
+        if (copiedTo != null && copiedTo.longValue() == folderId) {
+            report.record(Box.TYPE_FILE, file.getSize(), false, null);
+            return;
+        }
+        String status;
+        try {
+            status = BoxSynchronous.getInstance(mApiKey).copy(mAuthToken, Box.TYPE_FILE, file.getId(), folderId);
+            // As with folders, a file of the same name is the copy only if an earlier run sent the same request and did not get the answer.
+            final boolean copied = CopyListener.STATUS_S_COPY_NODE.equals(status)
+                || CopyListener.STATUS_FILENAME_IN_USE.equals(status) && isSentFor(earlierFiles, file.getId(), folderId);
+            synchronized (mCopiedFolders) {
+                mSentFiles.remove(file.getId());
+                if (copied) {
+                    mCopiedFiles.put(file.getId(), folderId);
+                    report.record(Box.TYPE_FILE, file.getSize(), true, null);
+                    return;
+                }
+            }
+        }
+        catch (final IOException e) {
+            status = e.getMessage() != null ? e.getMessage() : e.toString();
+        }
+        report.record(Box.TYPE_FILE, file.getSize(), false, new Failure(Box.TYPE_FILE, file.getId(), file.getFileName(), status));
+    }
+
+    /**
+     * Post the progress of a run to the listener, at most every {@link #ON_PROGRESS_UPDATE_THRESHOLD} milliseconds unless forced.
+     * 
+     * @param report
+     *            The report of the run
+     * @param lastProgressPost
+     *            Time of the last post
+     * @param force
+     *            Whether to post regardless of the time of the last post
+     */
+    private void onProgress(final Report report, final AtomicLong lastProgressPost, final boolean force) {
+        final Listener listener = mListener;
+        if (listener == null || mHandler == null) {
+            return;
+        }
+        final long last = lastProgressPost.get();
+        final long now = SystemClock.uptimeMillis();
+        if (!force && (now - last <= ON_PROGRESS_UPDATE_THRESHOLD || !lastProgressPost.compareAndSet(last, now))) {
+            return;
+        }
+        final int completedCount;
+        final long bytesCopied;
+        synchronized (report) {
+            completedCount = report.mCompletedCount;
+            bytesCopied = report.mBytesCopied;
+        }
+        mHandler.post(new Runnable() {
+
+            @Override
+            public void run() {
+                listener.onProgress(completedCount, report.mTotalCount, bytesCopied, report.mTotalBytes);
+            }
+        });
+    }
+
+    /**
+     * Remember that a request is about to be sent for a folder or file that has not been copied yet.
+     * 
+     * @param sent
+     *            {@link #mSentFolders} or {@link #mSentFiles}
+     * @param copies
+     *            {@link #mCopiedFolders} or {@link #mCopiedFiles}
+     * @param id
+     *            Id of the source folder or file
+     * @param destinationId
+     *            Id of the folder the request is for
+     */
+    private void markSent(final HashMap<Long, Long> sent, final HashMap<Long, Long> copies, final long id, final long destinationId) {
+        synchronized (mCopiedFolders) {
+            final Long copy = copies.get(id);
+            if (copy == null || copies == mCopiedFiles && copy.longValue() != destinationId) {
+                sent.put(id, destinationId);
+            }
+        }
+    }
+
+    /**
+     * Check whether an earlier run sent the request for a folder or file to the same destination.
+     * 
+     * @param earlier
+     *            The requests sent by earlier runs without an answer
+     * @param id
+     *            Id of the source folder or file
+     * @param destinationId
+     *            Id of the folder the request is for
+     * @return true if the folder or file of the same name in the destination is its copy
+     */
+    private static boolean isSentFor(final HashMap<Long, Long> earlier, final long id, final long destinationId) {
+        final Long sentFor = earlier.get(id);
+        return sentFor != null && sentFor.longValue() == destinationId;
+    }
+
+    /**
+     * Get the copy of a folder or file from the state.
+     * 
+     * @param copies
+     *            {@link #mCopiedFolders} or {@link #mCopiedFiles}
+     * @param id
+     *            Id of the source folder or file
+     * @return the id of the copy, or of the folder the file was copied to, or null if it has not been copied
+     */
+    private Long getCopy(final HashMap<Long, Long> copies, final long id) {
+        synchronized (mCopiedFolders) {
+            return copies.get(id);
+        }
+    }
+
+    /**
+     * Read what an earlier run copied from the state file.
+     * 
+     * @throws IOException
+     *             If the state file could not be read
+     */
+    private void readState() throws IOException {
+        mCopiedFolders = new HashMap<Long, Long>();
+        mCopiedFiles = new HashMap<Long, Long>();
+        mSentFolders = new HashMap<Long, Long>();
+        mSentFiles = new HashMap<Long, Long>();
+        if (mStateFile == null || !mStateFile.exists()) {
+            return;
+        }
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mStateFile)));
+        try {
+            if (in.readInt() != STATE_VERSION || in.readLong() != mDestinationFolderId) {
+                // Written by another version or for another copy. Folders and files already copied are reported as existing.
+                return;
+            }
+            readCopies(in, mCopiedFolders);
+            readCopies(in, mCopiedFiles);
+            readCopies(in, mSentFolders);
+            readCopies(in, mSentFiles);
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Write what has been copied to the state file, replacing it.
+     * 
+     * @throws IOException
+     *             If the state file could not be written
+     */
+    private void writeState() throws IOException {
+        if (mStateFile == null) {
+            return;
+        }
+        final File temp = new File(mStateFile.getPath() + ".tmp");
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            synchronized (mCopiedFolders) {
+                out.writeInt(STATE_VERSION);
+                out.writeLong(mDestinationFolderId);
+                writeCopies(out, mCopiedFolders);
+                writeCopies(out, mCopiedFiles);
+                writeCopies(out, mSentFolders);
+                writeCopies(out, mSentFiles);
+            }
+        }
+        finally {
+            out.close();
+        }
+        if (!temp.renameTo(mStateFile)) {
+            mStateFile.delete();
+            if (!temp.renameTo(mStateFile)) {
+                throw new IOException("Could not rename " + temp + " to " + mStateFile);
+            }
+        }
+    }
+
+    /**
+     * Read the copies of folders or files, or the requests sent for them.
+     * 
+     * @param in
+     *            The stream to read from
+     * @param copies
+     *            The map to read into
+     * @throws IOException
+     *             If the stream could not be read
+     */
+    private static void readCopies(final DataInputStream in, final HashMap<Long, Long> copies) throws IOException {
+        final int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            copies.put(in.readLong(), in.readLong());
+        }
+    }
+
+    /**
+     * Write the copies of folders or files, or the requests sent for them.
+     * 
+     * @param out
+     *            The stream to write to
+     * @param copies
+     *            {@link #mCopiedFolders} or {@link #mCopiedFiles}
+     * @throws IOException
+     *             If the stream could not be written
+     */
+    private static void writeCopies(final DataOutputStream out, final HashMap<Long, Long> copies) throws IOException {
+        out.writeInt(copies.size());
+        for (final Iterator<Long> i = copies.keySet().iterator(); i.hasNext();) {
+            final Long id = i.next();
+            out.writeLong(id.longValue());
+            out.writeLong(copies.get(id).longValue());
+        }
+    }
+}
@@ -0,0 +1,1359 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.Sync;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+
+import android.os.SystemClock;
+
+import com.box.androidlib.Box;
+import com.box.androidlib.BoxSynchronous;
+import com.box.androidlib.DAO.BoxFile;
+import com.box.androidlib.DAO.BoxFolder;
+import com.box.androidlib.FileTransfer.BoxFileDownload;
+import com.box.androidlib.ResponseListeners.CreateFolderListener;
+import com.box.androidlib.ResponseListeners.DeleteListener;
+import com.box.androidlib.ResponseListeners.FileDownloadListener;
+import com.box.androidlib.ResponseListeners.FileUploadListener;
+import com.box.androidlib.ResponseListeners.MoveListener;
+import com.box.androidlib.ResponseListeners.RenameListener;
+import com.box.androidlib.ResponseParsers.DefaultResponseParser;
+import com.box.androidlib.ResponseParsers.FolderResponseParser;
+import com.box.androidlib.ResponseParsers.UploadResponseParser;
+import com.box.androidlib.Utils.BoxConfig;
+import com.box.androidlib.Utils.BoxExecutor;
+import com.box.androidlib.Utils.BoxUtils;
+import com.box.androidlib.Utils.ParallelRunner;
+
+/**
+ * Two-way sync between a local directory and a Box folder. {@link #plan(BoxFolder)} compares the directory with the folder, as fetched with get_account_tree,
+ * and with the state both were in at the end of the last sync, and works out the operations that bring them back in line: uploads, downloads, create_folder,
+ * move, rename and delete on Box, and the same on the local directory. {@link #execute(Plan)} runs them, several at a time, and reports what it did.
+ * 
+ * The state of the last sync is kept in a file: for each path, the id and sha1 of the file on Box and the size and modification time of the local file.
+ * A local file whose size and modification time have not changed since the last sync is taken to be unchanged without reading it, and a file on Box whose
+ * id and sha1 have not changed is unchanged on Box, so a folder in which nothing changed is checked without hashing or transferring anything. Local files are
+ * hashed only when they changed and have to be compared with the file on Box. Files moved on one side are moved on the other instead of being transferred
+ * again. A file changed on both sides to different contents is a conflict, and is left alone on both sides for the user to resolve.
+ * 
+ * Both methods make network requests and block, so call them from a background thread.
+ * 
+ * @author developers@box.net
+ */
+public class FolderSync {
+
+    /** Create a folder on Box. */
+    public static final int OP_CREATE_REMOTE_FOLDER = 0;
+    /** Create a local directory. */
+    public static final int OP_CREATE_LOCAL_FOLDER = 1;
+    /** Move or rename a file on Box to where it was moved locally. */
+    public static final int OP_MOVE_REMOTE = 2;
+    /** Move or rename a local file to where it was moved on Box. */
+    public static final int OP_MOVE_LOCAL = 3;
+    /** Upload a new file. */
+    public static final int OP_UPLOAD = 4;
+    /** Upload a new version of a file. */
+    public static final int OP_UPLOAD_OVERWRITE = 5;
+    /** Download a file. */
+    public static final int OP_DOWNLOAD = 6;
+    /** Delete a file or folder on Box. */
+    public static final int OP_DELETE_REMOTE = 7;
+    /** Delete a local file or directory. */
+    public static final int OP_DELETE_LOCAL = 8;
+    /** A file changed on both sides. Nothing is done. */
+    public static final int OP_CONFLICT = 9;
+    /** Number of kinds of operations. */
+    public static final int OP_COUNT = 10;
+
+    /**
+     * Version of the state file format.
+     */
+    private static final int STATE_VERSION = 1;
+    /**
+     * Size of the buffer used to hash local files.
+     */
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The API key.
+     */
+    private final String mApiKey;
+    /**
+     * The auth token.
+     */
+    private final String mAuthToken;
+    /**
+     * The local directory.
+     */
+    private final File mLocalDirectory;
+    /**
+     * File in which the state of the last sync is kept.
+     */
+    private final File mStateFile;
+    /**
+     * Most operations to run at the same time.
+     */
+    private int mMaxConcurrency = BoxConfig.getInstance().getMaxConcurrentTransfers();
+
+    /**
+     * What a file or folder was like on both sides at the end of the last sync.
+     */
+    private static final class Entry {
+
+        /** Whether it is a folder. */
+        private final boolean mFolder;
+        /** The file id or folder id on Box. */
+        private final long mRemoteId;
+        /** sha1 of the file, or null. */
+        private final String mSha1;
+        /** Size of the local file. */
+        private final long mSize;
+        /** Modification time of the local file. */
+        private final long mModified;
+
+        /**
+         * Create an entry.
+         * 
+         * @param folder
+         *            Whether it is a folder
+         * @param remoteId
+         *            The file id or folder id
+         * @param sha1
+         *            sha1 of the file, or null
+         * @param size
+         *            Size of the local file
+         * @param modified
+         *            Modification time of the local file
+         */
+        private Entry(final boolean folder, final long remoteId, final String sha1, final long size, final long modified) {
+            mFolder = folder;
+            mRemoteId = remoteId;
+            mSha1 = sha1;
+            mSize = size;
+            mModified = modified;
+        }
+
+        /**
+         * Check whether a local file is as it was.
+         * 
+         * @param file
+         *            The local file
+         * @return true if size and modification time are the same
+         */
+        private boolean isLocalUnchanged(final File file) {
+            return file.length() == mSize && file.lastModified() == mModified;
+        }
+
+        /**
+         * Check whether a file on Box is as it was.
+         * 
+         * @param file
+         *            The file on Box
+         * @return true if id and sha1 are the same
+         */
+        private boolean isRemoteUnchanged(final BoxFile file) {
+            return file.getId() == mRemoteId && sha1Equals(file.getSha1(), mSha1);
+        }
+    }
+
+    /**
+     * One operation of a plan.
+     */
+    public static final class Operation {
+
+        /** Kind of operation, one of the OP_ constants. */
+        private final int mKind;
+        /** Path of the file or folder, relative to the synced folder, with / as separator. */
+        private final String mPath;
+        /** For moves, the path it is moved from. */
+        private final String mFromPath;
+        /** The file or folder id on Box, or 0 if it does not exist on Box yet. */
+        private final long mRemoteId;
+        /** The file on Box, for downloads and remote moves. */
+        private final BoxFile mRemoteFile;
+        /** Number of bytes transferred. */
+        private final long mSize;
+        /** Whether the operation is on a folder. */
+        private final boolean mFolder;
+        /** Status of the operation once run, null before. */
+        private volatile String mStatus;
+
+        /**
+         * Create an operation.
+         * 
+         * @param kind
+         *            Kind of operation
+         * @param path
+         *            Path of the file or folder
+         * @param fromPath
+         *            Path moved from, or null
+         * @param remoteId
+         *            Id on Box, or 0
+         * @param remoteFile
+         *            The file on Box, or null
+         * @param size
+         *            Bytes to transfer
+         * @param folder
+         *            Whether it is a folder
+         */
+        private Operation(final int kind, final String path, final String fromPath, final long remoteId, final BoxFile remoteFile, final long size,
+            final boolean folder) {
+            mKind = kind;
+            mPath = path;
+            mFromPath = fromPath;
+            mRemoteId = remoteId;
+            mRemoteFile = remoteFile;
+            mSize = size;
+            mFolder = folder;
+        }
+
+        /**
+         * Get the kind of operation.
+         * 
+         * @return One of the OP_ constants of {@link FolderSync}
+         */
+        public int getKind() {
+            return mKind;
+        }
+
+        /**
+         * Get the path of the file or folder.
+         * 
+         * @return Path relative to the synced folder, with / as separator
+         */
+        public String getPath() {
+            return mPath;
+        }
+
+        /**
+         * Get the path a file is moved from.
+         * 
+         * @return Path relative to the synced folder, or null if this is not a move
+         */
+        public String getFromPath() {
+            return mFromPath;
+        }
+
+        /**
+         * Get the number of bytes the operation transfers.
+         * 
+         * @return Bytes to upload or download, 0 for other operations
+         */
+        public long getSize() {
+            return mSize;
+        }
+
+        /**
+         * Check whether the operation is on a folder.
+         * 
+         * @return true for folders, false for files
+         */
+        public boolean isFolder() {
+            return mFolder;
+        }
+
+        /**
+         * Get the status the operation ended with.
+         * 
+         * @return The status from Box API, or the result of the local operation, or null if it has not run
+         */
+        public String getStatus() {
+            return mStatus;
+        }
+    }
+
+    /**
+     * The operations that bring a local directory and a folder in line, worked out by {@link FolderSync#plan(BoxFolder)}.
+     */
+    public static final class Plan {
+
+        /** The operations. */
+        private final ArrayList<Operation> mOperations = new ArrayList<Operation>();
+        /** State of the last sync, updated as operations succeed. */
+        private final HashMap<String, Entry> mState;
+        /** Folder ids on Box by path, including folders created while the plan runs. */
+        private final HashMap<String, Long> mFolderIds = new HashMap<String, Long>();
+        /** Number of files found unchanged on both sides. */
+        private int mUnchangedCount;
+        /** Number of local files hashed. */
+        private int mHashedCount;
+        /** Time taken to make the plan, in milliseconds. */
+        private long mPlanTime;
+
+        /**
+         * Create a plan.
+         * 
+         * @param state
+         *            State of the last sync
+         */
+        private Plan(final HashMap<String, Entry> state) {
+            mState = state;
+        }
+
+        /**
+         * Get the operations, in no particular order. {@link FolderSync#execute(Plan)} runs them in an order that respects their dependencies.
+         * 
+         * @return The operations
+         */
+        public List<Operation> getOperations() {
+            return Collections.unmodifiableList(mOperations);
+        }
+
+        /**
+         * Get the number of files found unchanged on both sides since the last sync, which need no operation.
+         * 
+         * @return number of unchanged files
+         */
+        public int getUnchangedCount() {
+            return mUnchangedCount;
+        }
+
+        /**
+         * Get the number of local files that had to be hashed to make the plan.
+         * 
+         * @return number of files hashed
+         */
+        public int getHashedCount() {
+            return mHashedCount;
+        }
+
+        /**
+         * Get the time it took to compare the directory with the folder.
+         * 
+         * @return time in milliseconds
+         */
+        public long getPlanTime() {
+            return mPlanTime;
+        }
+
+        /**
+         * Add an operation.
+         * 
+         * @param operation
+         *            The operation
+         * @return The operation
+         */
+        private Operation add(final Operation operation) {
+            mOperations.add(operation);
+            return operation;
+        }
+    }
+
+    /**
+     * What {@link FolderSync#execute(Plan)} did.
+     */
+    public static final class Report {
+
+        /** Number of operations that succeeded, by kind. */
+        private final int[] mSucceeded = new int[OP_COUNT];
+        /** Number of operations that failed, by kind. */
+        private final int[] mFailed = new int[OP_COUNT];
+        /** Operations that failed. */
+        private final ArrayList<Operation> mFailures = new ArrayList<Operation>();
+        /** Bytes uploaded. */
+        private long mBytesUploaded;
+        /** Bytes downloaded. */
+        private long mBytesDownloaded;
+        /** Time taken, in milliseconds. */
+        private long mElapsedTime;
+        /** Whether the run was interrupted before all operations ran. */
+        private boolean mInterrupted;
+
+        /**
+         * Record the outcome of an operation.
+         * 
+         * @param operation
+         *            The operation
+         * @param succeeded
+         *            Whether it succeeded
+         */
+        private synchronized void record(final Operation operation, final boolean succeeded) {
+            if (succeeded) {
+                mSucceeded[operation.mKind]++;
+                if (operation.mKind == OP_DOWNLOAD) {
+                    mBytesDownloaded += operation.mSize;
+                }
+                else if (operation.mKind == OP_UPLOAD || operation.mKind == OP_UPLOAD_OVERWRITE) {
+                    mBytesUploaded += operation.mSize;
+                }
+            }
+            else {
+                mFailed[operation.mKind]++;
+                mFailures.add(operation);
+            }
+        }
+
+        /**
+         * Get the number of operations of a kind that succeeded.
+         * 
+         * @param kind
+         *            One of the OP_ constants of {@link FolderSync}
+         * @return number of operations
+         */
+        public synchronized int getSucceededCount(final int kind) {
+            return mSucceeded[kind];
+        }
+
+        /**
+         * Get the number of operations of a kind that failed. Conflicts are counted as failed.
+         * 
+         * @param kind
+         *            One of the OP_ constants of {@link FolderSync}
+         * @return number of operations
+         */
+        public synchronized int getFailedCount(final int kind) {
+            return mFailed[kind];
+        }
+
+        /**
+         * Get the operations that failed, with the status they failed with. They are tried again by the next sync.
+         * 
+         * @return The failed operations
+         */
+        public synchronized List<Operation> getFailures() {
+            return new ArrayList<Operation>(mFailures);
+        }
+
+        /**
+         * Get the number of bytes uploaded.
+         * 
+         * @return bytes uploaded
+         */
+        public synchronized long getBytesUploaded() {
+            return mBytesUploaded;
+        }
+
+        /**
+         * Get the number of bytes downloaded.
+         * 
+         * @return bytes downloaded
+         */
+        public synchronized long getBytesDownloaded() {
+            return mBytesDownloaded;
+        }
+
+        /**
+         * Get the time it took to run the plan.
+         * 
+         * @return time in milliseconds
+         */
+        public long getElapsedTime() {
+            return mElapsedTime;
+        }
+
+        /**
+         * Get the number of bytes uploaded and downloaded per second over the whole run.
+         * 
+         * @return bytes per second
+         */
+        public synchronized long getBytesPerSecond() {
+            return (mBytesUploaded + mBytesDownloaded) * 1000 / Math.max(mElapsedTime, 1);
+        }
+
+        /**
+         * Check whether the run was interrupted. Operations that did not run are planned again by the next sync.
+         * 
+         * @return true if the thread running the plan was interrupted
+         */
+        public boolean isInterrupted() {
+            return mInterrupted;
+        }
+    }
+
+    /**
+     * Set up the sync of a local directory with a Box folder.
+     * 
+     * @param apiKey
+     *            The API key
+     * @param authToken
+     *            The auth token retrieved through {@link BoxSynchronous#getAuthToken(String)}
+     * @param localDirectory
+     *            The local directory
+     * @param stateFile
+     *            File in which to keep the state of the last sync, such as a file under Context.getFilesDir(). Use one file per pair of directory and folder.
+     *            If it is inside the local directory, it is not synced.
+     */
+    public FolderSync(final String apiKey, final String authToken, final File localDirectory, final File stateFile) {
+        mApiKey = apiKey;
+        mAuthToken = authToken;
+        mLocalDirectory = localDirectory;
+        mStateFile = stateFile;
+    }
+
+    /**
+     * Set the most operations to run at the same time. Defaults to {@link BoxConfig#getMaxConcurrentTransfers()}.
+     * 
+     * @param maxConcurrency
+     *            Most operations at the same time
+     */
+    public void setMaxConcurrency(final int maxConcurrency) {
+        mMaxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Compare the local directory with a folder and work out the operations that bring them in line.
+     * 
+     * @param remoteFolder
+     *            The folder with everything below it, as returned by get_account_tree without {@link Box#PARAM_ONELEVEL} or {@link Box#PARAM_NOFILES}
+     * @return The plan
+     * @throws IOException
+     *             If the state file or a local file could not be read
+     */
+    public Plan plan(final BoxFolder remoteFolder) throws IOException {
+        final long start = SystemClock.uptimeMillis();
+        final Plan plan = new Plan(readState());
+        final HashMap<String, Entry> state = plan.mState;
+
+        // Index both sides by path.
+        final HashMap<String, BoxFile> remoteFiles = new HashMap<String, BoxFile>();
+        final HashMap<String, BoxFolder> remoteFolders = new HashMap<String, BoxFolder>();
+        final ArrayList<BoxFolder> folderStack = new ArrayList<BoxFolder>();
+        final ArrayList<String> pathStack = new ArrayList<String>();
+        plan.mFolderIds.put("", remoteFolder.getId());
+        folderStack.add(remoteFolder);
+        pathStack.add("");
+        while (!folderStack.isEmpty()) {
+            final BoxFolder folder = folderStack.remove(folderStack.size() - 1);
+            final String path = pathStack.remove(pathStack.size() - 1);
+            final List<? extends BoxFile> files = folder.getFilesInFolder();
+            for (int i = 0; i < files.size(); i++) {
+                remoteFiles.put(child(path, files.get(i).getFileName()), files.get(i));
+            }
+            final List<? extends BoxFolder> folders = folder.getFoldersInFolder();
+            for (int i = 0; i < folders.size(); i++) {
+                final String childPath = child(path, folders.get(i).getFolderName());
+                remoteFolders.put(childPath, folders.get(i));
+                plan.mFolderIds.put(childPath, folders.get(i).getId());
+                folderStack.add(folders.get(i));
+                pathStack.add(childPath);
+            }
+        }
+        final HashMap<String, File> localFiles = new HashMap<String, File>();
+        final HashMap<String, File> localFolders = new HashMap<String, File>();
+        final ArrayList<File> dirStack = new ArrayList<File>();
+        dirStack.add(mLocalDirectory);
+        pathStack.add("");
+        while (!dirStack.isEmpty()) {
+            final File dir = dirStack.remove(dirStack.size() - 1);
+            final String path = pathStack.remove(pathStack.size() - 1);
+            final File[] children = dir.listFiles();
+            if (children == null) {
+                continue;
+            }
+            for (int i = 0; i < children.length; i++) {
+                final String childPath = child(path, children[i].getName());
+                if (children[i].isDirectory()) {
+                    localFolders.put(childPath, children[i]);
+                    dirStack.add(children[i]);
+                    pathStack.add(childPath);
+                }
+                else if (!isPrivateFile(children[i])) {
+                    localFiles.put(childPath, children[i]);
+                }
+            }
+        }
+
+        final HashSet<String> handled = new HashSet<String>();
+        detectMoves(plan, remoteFiles, localFiles, handled);
+
+        // Files.
+        final HashSet<String> filePaths = new HashSet<String>(localFiles.keySet());
+        filePaths.addAll(remoteFiles.keySet());
+        for (final Iterator<String> i = state.keySet().iterator(); i.hasNext();) {
+            final String path = i.next();
+            if (!state.get(path).mFolder) {
+                filePaths.add(path);
+            }
+        }
+        for (final Iterator<String> i = filePaths.iterator(); i.hasNext();) {
+            final String path = i.next();
+            if (!handled.contains(path)) {
+                planFile(plan, path, localFiles.get(path), remoteFiles.get(path), state.get(path));
+            }
+        }
+
+        // Folders, deepest first, keeping any folder that an operation below it needs.
+        final HashSet<String> neededRemote = new HashSet<String>();
+        final HashSet<String> neededLocal = new HashSet<String>();
+        for (int i = 0; i < plan.mOperations.size(); i++) {
+            final Operation operation = plan.mOperations.get(i);
+            if (operation.mKind == OP_UPLOAD || operation.mKind == OP_UPLOAD_OVERWRITE || operation.mKind == OP_MOVE_REMOTE) {
+                addAncestors(neededRemote, operation.mPath);
+            }
+            else if (operation.mKind == OP_DOWNLOAD || operation.mKind == OP_MOVE_LOCAL) {
+                addAncestors(neededLocal, operation.mPath);
+            }
+        }
+        final HashSet<String> folderPathSet = new HashSet<String>(localFolders.keySet());
+        folderPathSet.addAll(remoteFolders.keySet());
+        for (final Iterator<String> i = state.keySet().iterator(); i.hasNext();) {
+            final String path = i.next();
+            if (state.get(path).mFolder) {
+                folderPathSet.add(path);
+            }
+        }
+        final ArrayList<String> folderPaths = new ArrayList<String>(folderPathSet);
+        Collections.sort(folderPaths, new Comparator<String>() {
+
+            @Override
+            public int compare(final String a, final String b) {
+                return depth(b) - depth(a);
+            }
+        });
+        final HashSet<String> deletedRemoteFolders = new HashSet<String>();
+        for (int i = 0; i < folderPaths.size(); i++) {
+            final String path = folderPaths.get(i);
+            final File local = localFolders.get(path);
+            final BoxFolder remote = remoteFolders.get(path);
+            final Entry entry = state.get(path);
+            if (local != null && remote != null) {
+                if (entry == null || entry.mRemoteId != remote.getId()) {
+                    state.put(path, new Entry(true, remote.getId(), null, 0, 0));
+                }
+            }
+            else if (local != null) {
+                if (entry == null || neededRemote.contains(path)) {
+                    plan.add(new Operation(OP_CREATE_REMOTE_FOLDER, path, null, 0, null, 0, true));
+                    addAncestors(neededRemote, path);
+                }
+                else {
+                    // Deleted on Box, and nothing new below it locally.
+                    plan.add(new Operation(OP_DELETE_LOCAL, path, null, 0, null, 0, true));
+                }
+            }
+            else if (remote != null) {
+                if (entry == null || neededLocal.contains(path)) {
+                    plan.add(new Operation(OP_CREATE_LOCAL_FOLDER, path, null, remote.getId(), null, 0, true));
+                    addAncestors(neededLocal, path);
+                }
+                else {
+                    // Deleted locally, and nothing new below it on Box.
+                    plan.add(new Operation(OP_DELETE_REMOTE, path, null, remote.getId(), null, 0, true));
+                    deletedRemoteFolders.add(path);
+                }
+            }
+            else {
+                state.remove(path);
+            }
+        }
+
+        // Deleting a folder on Box deletes everything below it, so drop the deletes below deleted folders.
+        if (!deletedRemoteFolders.isEmpty()) {
+            for (final Iterator<Operation> i = plan.mOperations.iterator(); i.hasNext();) {
+                final Operation operation = i.next();
+                if (operation.mKind == OP_DELETE_REMOTE && hasAncestorIn(deletedRemoteFolders, operation.mPath)) {
+                    i.remove();
+                }
+            }
+        }
+        plan.mPlanTime = SystemClock.uptimeMillis() - start;
+        return plan;
+    }
+
+    /**
+     * Run a plan. Operations that depend on others run after them: folders are created first, parents before children, then files are moved, transferred
+     * and deleted, and folders are deleted last, children before parents. Independent operations run in parallel. The state of the sync is saved at the
+     * end, also if the run is interrupted, so that the next plan only has what is left to do.
+     * 
+     * @param plan
+     *            The plan, from {@link #plan(BoxFolder)}
+     * @return What was done
+     * @throws IOException
+     *             If the state file could not be written
+     */
+    public Report execute(final Plan plan) throws IOException {
+        final long start = SystemClock.uptimeMillis();
+        final Report report = new Report();
+        final List<List<Operation>> byKind = groupByKind(plan.mOperations);
+        try {
+            // Folders, parents first. Folders at the same depth are created in parallel.
+            final List<Operation> localFolders = byKind.get(OP_CREATE_LOCAL_FOLDER);
+            for (int i = 0; i < localFolders.size(); i++) {
+                run(plan, localFolders.get(i), report);
+            }
+            final List<Operation> remoteFolders = byKind.get(OP_CREATE_REMOTE_FOLDER);
+            Collections.sort(remoteFolders, new Comparator<Operation>() {
+
+                @Override
+                public int compare(final Operation a, final Operation b) {
+                    return depth(a.mPath) - depth(b.mPath);
+                }
+            });
+            for (int from = 0; from < remoteFolders.size();) {
+                int to = from + 1;
+                while (to < remoteFolders.size() && depth(remoteFolders.get(to).mPath) == depth(remoteFolders.get(from).mPath)) {
+                    to++;
+                }
+                runAll(plan, remoteFolders.subList(from, to), report);
+                from = to;
+            }
+
+            // Files.
+            final List<Operation> localMoves = byKind.get(OP_MOVE_LOCAL);
+            for (int i = 0; i < localMoves.size(); i++) {
+                run(plan, localMoves.get(i), report);
+            }
+            runAll(plan, byKind.get(OP_MOVE_REMOTE), report);
+            final ArrayList<Operation> transfers = new ArrayList<Operation>(byKind.get(OP_UPLOAD));
+            transfers.addAll(byKind.get(OP_UPLOAD_OVERWRITE));
+            transfers.addAll(byKind.get(OP_DOWNLOAD));
+            runAll(plan, transfers, report);
+            for (int i = 0; i < byKind.get(OP_CONFLICT).size(); i++) {
+                byKind.get(OP_CONFLICT).get(i).mStatus = "conflict";
+                report.record(byKind.get(OP_CONFLICT).get(i), false);
+            }
+
+            // Deletes, files before folders and children before parents.
+            runAll(plan, byKind.get(OP_DELETE_REMOTE), report);
+            final List<Operation> localDeletes = byKind.get(OP_DELETE_LOCAL);
+            Collections.sort(localDeletes, new Comparator<Operation>() {
+
+                @Override
+                public int compare(final Operation a, final Operation b) {
+                    if (a.mFolder != b.mFolder) {
+                        return a.mFolder ? 1 : -1;
+                    }
+                    return depth(b.mPath) - depth(a.mPath);
+                }
+            });
+            for (int i = 0; i < localDeletes.size(); i++) {
+                run(plan, localDeletes.get(i), report);
+            }
+        }
+        catch (final InterruptedException e) {
+            report.mInterrupted = true;
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            synchronized (plan.mState) {
+                writeState(plan.mState);
+            }
+            report.mElapsedTime = SystemClock.uptimeMillis() - start;
+        }
+        return report;
+    }
+
+    /**
+     * Find files moved on one side since the last sync, and plan to move them on the other side.
+     * 
+     * @param plan
+     *            The plan
+     * @param remoteFiles
+     *            Files on Box by path
+     * @param localFiles
+     *            Local files by path
+     * @param handled
+     *            Receives the paths of both ends of each move
+     */
+    private void detectMoves(final Plan plan, final HashMap<String, BoxFile> remoteFiles, final HashMap<String, File> localFiles,
+        final HashSet<String> handled) {
+        final HashMap<String, Entry> state = plan.mState;
+        // Where each file on Box was at the last sync, and the local files that are gone since, by size and modification time.
+        final HashMap<Long, String> pathsById = new HashMap<Long, String>();
+        final HashMap<String, String> goneLocally = new HashMap<String, String>();
+        for (final Iterator<String> i = state.keySet().iterator(); i.hasNext();) {
+            final String path = i.next();
+            final Entry entry = state.get(path);
+            if (entry.mFolder) {
+                continue;
+            }
+            pathsById.put(entry.mRemoteId, path);
+            final BoxFile remote = remoteFiles.get(path);
+            if (!localFiles.containsKey(path) && remote != null && entry.isRemoteUnchanged(remote)) {
+                final String key = entry.mSize + ":" + entry.mModified;
+                // Two candidates are ambiguous, so neither is used.
+                goneLocally.put(key, goneLocally.containsKey(key) ? null : path);
+            }
+        }
+
+        for (final Iterator<String> i = remoteFiles.keySet().iterator(); i.hasNext();) {
+            final String path = i.next();
+            if (state.containsKey(path) || localFiles.containsKey(path)) {
+                continue;
+            }
+            final BoxFile remote = remoteFiles.get(path);
+            final String from = pathsById.get(remote.getId());
+            if (from == null || handled.contains(from)) {
+                continue;
+            }
+            final Entry entry = state.get(from);
+            final File local = localFiles.get(from);
+            final BoxFile remoteAtFrom = remoteFiles.get(from);
+            if (local != null && entry.isLocalUnchanged(local) && sha1Equals(remote.getSha1(), entry.mSha1)
+                && (remoteAtFrom == null || remoteAtFrom.getId() != remote.getId())) {
+                plan.add(new Operation(OP_MOVE_LOCAL, path, from, remote.getId(), remote, 0, false));
+                handled.add(path);
+                handled.add(from);
+            }
+        }
+
+        for (final Iterator<String> i = localFiles.keySet().iterator(); i.hasNext();) {
+            final String path = i.next();
+            if (handled.contains(path) || state.containsKey(path) || remoteFiles.containsKey(path)) {
+                continue;
+            }
+            final File local = localFiles.get(path);
+            final String from = goneLocally.get(local.length() + ":" + local.lastModified());
+            if (from != null && !handled.contains(from)) {
+                final BoxFile remote = remoteFiles.get(from);
+                plan.add(new Operation(OP_MOVE_REMOTE, path, from, remote.getId(), remote, 0, false));
+                handled.add(path);
+                handled.add(from);
+            }
+        }
+    }
+
+    /**
+     * Plan the operation for a file.
+     * 
+     * @param plan
+     *            The plan
+     * @param path
+     *            Path of the file
+     * @param local
+     *            The local file, or null
+     * @param remote
+     *            The file on Box, or null
+     * @param entry
+     *            The state of the file at the last sync, or null
+     * @throws IOException
+     *             If the local file could not be read
+     */
+    private void planFile(final Plan plan, final String path, final File local, final BoxFile remote, final Entry entry) throws IOException {
+        final boolean localChanged = local != null && (entry == null || !entry.isLocalUnchanged(local));
+        final boolean remoteChanged = remote != null && (entry == null || !entry.isRemoteUnchanged(remote));
+        if (local != null && remote != null) {
+            if (!localChanged && !remoteChanged) {
+                plan.mUnchangedCount++;
+            }
+            else if (!localChanged) {
+                plan.add(new Operation(OP_DOWNLOAD, path, null, remote.getId(), remote, remote.getSize(), false));
+            }
+            else {
+                // Changed locally, perhaps on both sides. Same content on both sides needs no transfer.
+                final String sha1 = sha1(local);
+                plan.mHashedCount++;
+                if (sha1Equals(sha1, remote.getSha1())) {
+                    plan.mState.put(path, new Entry(false, remote.getId(), remote.getSha1(), local.length(), local.lastModified()));
+                    plan.mUnchangedCount++;
+                }
+                else if (!remoteChanged) {
+                    plan.add(new Operation(OP_UPLOAD_OVERWRITE, path, null, remote.getId(), remote, local.length(), false));
+                }
+                else {
+                    plan.add(new Operation(OP_CONFLICT, path, null, remote.getId(), remote, 0, false));
+                }
+            }
+        }
+        else if (local != null) {
+            if (entry == null || localChanged) {
+                // New, or deleted on Box after being changed locally.
+                plan.add(new Operation(OP_UPLOAD, path, null, 0, null, local.length(), false));
+            }
+            else {
+                plan.add(new Operation(OP_DELETE_LOCAL, path, null, 0, null, 0, false));
+            }
+        }
+        else if (remote != null) {
+            if (entry == null || remoteChanged) {
+                plan.add(new Operation(OP_DOWNLOAD, path, null, remote.getId(), remote, remote.getSize(), false));
+            }
+            else {
+                plan.add(new Operation(OP_DELETE_REMOTE, path, null, remote.getId(), remote, 0, false));
+            }
+        }
+        else {
+            plan.mState.remove(path);
+        }
+    }
+
+    /**
+     * Run operations in parallel and wait for them.
+     * 
+     * @param plan
+     *            The plan
+     * @param operations
+     *            The operations
+     * @param report
+     *            The report to record outcomes in
+     * @throws InterruptedException
+     *             If the thread is interrupted
+     */
+    private void runAll(final Plan plan, final List<Operation> operations, final Report report) throws InterruptedException {
+        final ArrayList<Runnable> tasks = new ArrayList<Runnable>(operations.size());
+        for (int i = 0; i < operations.size(); i++) {
+            final Operation operation = operations.get(i);
+            tasks.add(new Runnable() {
+
+                @Override
+                public void run() {
+                    FolderSync.this.run(plan, operation, report);
+                }
+            });
+        }
+        ParallelRunner.run(tasks, mMaxConcurrency, BoxExecutor.LANE_TRANSFER);
+    }
+
+    /**
+     * Run one operation, update the state if it succeeds and record the outcome.
+     * 
+     * @param plan
+     *            The plan
+     * @param operation
+     *            The operation
+     * @param report
+     *            The report to record outcomes in
+     */
+    private void run(final Plan plan, final Operation operation, final Report report) {
+        boolean succeeded = false;
+        try {
+            succeeded = perform(plan, operation);
+        }
+        catch (final IOException e) {
+            operation.mStatus = e.getMessage() != null ? e.getMessage() : e.toString();
+        }
+        report.record(operation, succeeded);
+    }
+
+    /**
+     * Perform one operation.
+     * 
+     * @param plan
+     *            The plan
+     * @param operation
+     *            The operation
+     * @return true if it succeeded. The status of the operation is set either way.
+     * @throws IOException
+     *             If a request or a local file operation failed
+     */
+    private boolean perform(final Plan plan, final Operation operation) throws IOException {
+        final BoxSynchronous boxSynchronous = BoxSynchronous.getInstance(mApiKey);
+        final String path = operation.mPath;
+        final File local = new File(mLocalDirectory, path);
+        switch (operation.mKind) {
+            case OP_CREATE_LOCAL_FOLDER:
+                if (!local.isDirectory() && !local.mkdirs()) {
+                    operation.mStatus = "mkdirs_failed";
+                    return false;
+                }
+                putState(plan, path, new Entry(true, operation.mRemoteId, null, 0, 0));
+                operation.mStatus = "ok";
+                return true;
+            case OP_CREATE_REMOTE_FOLDER: {
+                final Long parentId = getFolderId(plan, parent(path));
+                if (parentId == null) {
+                    operation.mStatus = CreateFolderListener.STATUS_NO_PARENT;
+                    return false;
+                }
+                final FolderResponseParser parser = boxSynchronous.createFolder(mAuthToken, parentId, name(path), false);
+                operation.mStatus = parser.getStatus();
+                if (parser.getFolder() == null
+                    || !CreateFolderListener.STATUS_CREATE_OK.equals(parser.getStatus()) && !CreateFolderListener.STATUS_S_FOLDER_EXISTS.equals(parser.getStatus())) {
+                    return false;
+                }
+                synchronized (plan.mState) {
+                    plan.mFolderIds.put(path, parser.getFolder().getId());
+                }
+                putState(plan, path, new Entry(true, parser.getFolder().getId(), null, 0, 0));
+                return true;
+            }
+            case OP_MOVE_LOCAL: {
+                final File from = new File(mLocalDirectory, operation.mFromPath);
+                local.getParentFile().mkdirs();
+                if (local.exists() || !from.renameTo(local)) {
+                    operation.mStatus = "rename_failed";
+                    return false;
+                }
+                final BoxFile remote = operation.mRemoteFile;
+                removeState(plan, operation.mFromPath);
+                putState(plan, path, new Entry(false, remote.getId(), remote.getSha1(), local.length(), local.lastModified()));
+                operation.mStatus = "ok";
+                return true;
+            }
+            case OP_MOVE_REMOTE: {
+                final BoxFile remote = operation.mRemoteFile;
+                if (!parent(path).equals(parent(operation.mFromPath))) {
+                    final Long parentId = getFolderId(plan, parent(path));
+                    if (parentId == null) {
+                        operation.mStatus = CreateFolderListener.STATUS_NO_PARENT;
+                        return false;
+                    }
+                    operation.mStatus = boxSynchronous.move(mAuthToken, Box.TYPE_FILE, remote.getId(), parentId);
+                    if (!MoveListener.STATUS_S_MOVE_NODE.equals(operation.mStatus)) {
+                        return false;
+                    }
+                }
+                if (!name(path).equals(name(operation.mFromPath))) {
+                    operation.mStatus = boxSynchronous.rename(mAuthToken, Box.TYPE_FILE, remote.getId(), name(path));
+                    if (!RenameListener.STATUS_S_RENAME_NODE.equals(operation.mStatus)) {
+                        return false;
+                    }
+                }
+                removeState(plan, operation.mFromPath);
+                putState(plan, path, new Entry(false, remote.getId(), remote.getSha1(), local.length(), local.lastModified()));
+                return true;
+            }
+            case OP_UPLOAD:
+            case OP_UPLOAD_OVERWRITE: {
+                final long size = local.length();
+                final long modified = local.lastModified();
+                final long destinationId;
+                if (operation.mKind == OP_UPLOAD) {
+                    final Long parentId = getFolderId(plan, parent(path));
+                    if (parentId == null) {
+                        operation.mStatus = FileUploadListener.STATUS_UPLOAD_WRONG_FOLDER_ID;
+                        return false;
+                    }
+                    destinationId = parentId;
+                }
+                else {
+                    destinationId = operation.mRemoteId;
+                }
+                final UploadResponseParser parser = boxSynchronous.uploadForFiles(mAuthToken, operation.mKind == OP_UPLOAD ? Box.UPLOAD_ACTION_UPLOAD
+                    : Box.UPLOAD_ACTION_OVERWRITE, local, name(path), destinationId, null, null);
+                operation.mStatus = parser.getStatus();
+                if (!FileUploadListener.STATUS_UPLOAD_OK.equals(parser.getStatus()) || parser.getFile() == null) {
+                    return false;
+                }
+                final BoxFile uploaded = parser.getFile();
+                final String sha1 = uploaded.getSha1() != null && uploaded.getSha1().length() > 0 ? uploaded.getSha1() : sha1(local);
+                putState(plan, path, new Entry(false, uploaded.getId(), sha1, size, modified));
+                return true;
+            }
+            case OP_DOWNLOAD: {
+                local.getParentFile().mkdirs();
+                final BoxFile remote = operation.mRemoteFile;
+                final DefaultResponseParser parser = boxSynchronous.download(mAuthToken, remote, local, null, null);
+                operation.mStatus = parser.getStatus();
+                if (!FileDownloadListener.STATUS_DOWNLOAD_OK.equals(parser.getStatus())) {
+                    return false;
+                }
+                putState(plan, path, new Entry(false, remote.getId(), remote.getSha1(), local.length(), local.lastModified()));
+                return true;
+            }
+            case OP_DELETE_REMOTE:
+                operation.mStatus = boxSynchronous.delete(mAuthToken, operation.mFolder ? Box.TYPE_FOLDER : Box.TYPE_FILE, operation.mRemoteId);
+                if (!DeleteListener.STATUS_S_DELETE_NODE.equals(operation.mStatus)) {
+                    return false;
+                }
+                removeState(plan, path);
+                return true;
+            case OP_DELETE_LOCAL:
+                // Directories are only deleted once empty, so that nothing the plan did not know about is lost.
+                if (local.exists() && !local.delete()) {
+                    operation.mStatus = "delete_failed";
+                    return false;
+                }
+                removeState(plan, path);
+                operation.mStatus = "ok";
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Get the folder id on Box of a path, including folders created by the plan.
+     * 
+     * @param plan
+     *            The plan
+     * @param path
+     *            The path
+     * @return The folder id, or null if there is no folder at that path
+     */
+    private static Long getFolderId(final Plan plan, final String path) {
+        synchronized (plan.mState) {
+            return plan.mFolderIds.get(path);
+        }
+    }
+
+    /**
+     * Record the state of a path after an operation.
+     * 
+     * @param plan
+     *            The plan
+     * @param path
+     *            The path
+     * @param entry
+     *            The state
+     */
+    private static void putState(final Plan plan, final String path, final Entry entry) {
+        synchronized (plan.mState) {
+            plan.mState.put(path, entry);
+        }
+    }
+
+    /**
+     * Forget the state of a path and, for folders, of everything below it.
+     * 
+     * @param plan
+     *            The plan
+     * @param path
+     *            The path
+     */
+    private static void removeState(final Plan plan, final String path) {
+        synchronized (plan.mState) {
+            final Entry entry = plan.mState.remove(path);
+            if (entry != null && entry.mFolder) {
+                final String prefix = path + "/";
+                for (final Iterator<String> i = plan.mState.keySet().iterator(); i.hasNext();) {
+                    if (i.next().startsWith(prefix)) {
+                        i.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the state of the last sync.
+     * 
+     * @return State by path, empty if there was no sync yet
+     * @throws IOException
+     *             If the state file could not be read
+     */
+    private HashMap<String, Entry> readState() throws IOException {
+        final HashMap<String, Entry> state = new HashMap<String, Entry>();
+        if (!mStateFile.exists()) {
+            return state;
+        }
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mStateFile)));
+        try {
+            if (in.readInt() != STATE_VERSION) {
+                // Written by another version. Syncing without it compares contents instead.
+                return state;
+            }
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                final String path = in.readUTF();
+                final boolean folder = in.readBoolean();
+                final long remoteId = in.readLong();
+                final String sha1 = in.readUTF();
+                state.put(path, new Entry(folder, remoteId, sha1.length() > 0 ? sha1 : null, in.readLong(), in.readLong()));
+            }
+        }
+        finally {
+            in.close();
+        }
+        return state;
+    }
+
+    /**
+     * Write the state of the sync, replacing the state file.
+     * 
+     * @param state
+     *            State by path
+     * @throws IOException
+     *             If the state file could not be written
+     */
+    private void writeState(final HashMap<String, Entry> state) throws IOException {
+        final File temp = new File(mStateFile.getPath() + ".tmp");
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(STATE_VERSION);
+            out.writeInt(state.size());
+            for (final Iterator<String> i = state.keySet().iterator(); i.hasNext();) {
+                final String path = i.next();
+                final Entry entry = state.get(path);
+                out.writeUTF(path);
+                out.writeBoolean(entry.mFolder);
+                out.writeLong(entry.mRemoteId);
+                out.writeUTF(entry.mSha1 != null ? entry.mSha1 : "");
+                out.writeLong(entry.mSize);
+                out.writeLong(entry.mModified);
+            }
+        }
+        finally {
+            out.close();
+        }
+        if (!temp.renameTo(mStateFile)) {
+            mStateFile.delete();
+            if (!temp.renameTo(mStateFile)) {
+                throw new IOException("Could not rename " + temp + " to " + mStateFile);
+            }
+        }
+    }
+
+    /**
+     * Check whether a local file belongs to the sync or to a download rather than to the user.
+     * 
+     * @param file
+     *            The file
+     * @return true if the file is not to be synced
+     */
+    private boolean isPrivateFile(final File file) {
+        return file.equals(mStateFile) || file.getPath().equals(mStateFile.getPath() + ".tmp") || BoxFileDownload.isJournalFile(file);
+    }
+
+    /**
+     * Group operations by kind.
+     * 
+     * @param operations
+     *            The operations
+     * @return A list of operations per kind
+     */
+    private static List<List<Operation>> groupByKind(final List<Operation> operations) {
+        final List<List<Operation>> byKind = new ArrayList<List<Operation>>(OP_COUNT);
+        for (int i = 0; i < OP_COUNT; i++) {
+            byKind.add(new ArrayList<Operation>());
+        }
+        for (int i = 0; i < operations.size(); i++) {
+            byKind.get(operations.get(i).mKind).add(operations.get(i));
+        }
+        return byKind;
+    }
+
+    /**
+     * Hash a local file.
+     * 
+     * @param file
+     *            The file
+     * @return sha1 of the file as a hex string
+     * @throws IOException
+     *             If the file could not be read
+     */
+    private static String sha1(final File file) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        }
+        catch (final NoSuchAlgorithmException e) {
+            throw new IOException("SHA-1 not available");
+        }
+        final InputStream in = new FileInputStream(file);
+        try {
+            final byte[] buffer = new byte[HASH_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        finally {
+            in.close();
+        }
+        return BoxUtils.toHexString(digest.digest());
+    }
+
+    /**
+     * Compare two sha1 hex strings.
+     * 
+     * @param a
+     *            A sha1, or null
+     * @param b
+     *            A sha1, or null
+     * @return true if both are known and equal
+     */
+    private static boolean sha1Equals(final String a, final String b) {
+        return a != null && a.length() > 0 && a.equalsIgnoreCase(b);
+    }
+
+    /**
+     * Add all ancestors of a path, not including the path itself, to a set.
+     * 
+     * @param set
+     *            The set
+     * @param path
+     *            The path
+     */
+    private static void addAncestors(final HashSet<String> set, final String path) {
+        for (String parent = parent(path); parent.length() > 0 && set.add(parent); parent = parent(parent)) {
+            continue;
+        }
+    }
+
+    /**
+     * Check whether any ancestor of a path is in a set.
+     * 
+     * @param set
+     *            The set
+     * @param path
+     *            The path
+     * @return true if an ancestor is in the set
+     */
+    private static boolean hasAncestorIn(final HashSet<String> set, final String path) {
+        for (String parent = parent(path); parent.length() > 0; parent = parent(parent)) {
+            if (set.contains(parent)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the path of a child.
+     * 
+     * @param path
+     *            Path of the parent, "" for the synced folder
+     * @param name
+     *            Name of the child
+     * @return Path of the child
+     */
+    private static String child(final String path, final String name) {
+        return path.length() == 0 ? name : path + "/" + name;
+    }
+
+    /**
+     * Get the path of the parent.
+     * 
+     * @param path
+     *            A path
+     * @return Path of the parent, "" for the synced folder
+     */
+    private static String parent(final String path) {
+        final int slash = path.lastIndexOf('/');
+        return slash < 0 ? "" : path.substring(0, slash);
+    }
+
+    /**
+     * Get the last element of a path.
+     * 
+     * @param path
+     *            A path
+     * @return The name
+     */
+    private static String name(final String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Get the number of elements of a path.
+     * 
+     * @param path
+     *            A path
+     * @return The depth
+     */
+    private static int depth(final String path) {
+        int depth = 1;
+        for (int i = path.indexOf('/'); i >= 0; i = path.indexOf('/', i + 1)) {
+            depth++;
+        }
+        return depth;
+    }
+}
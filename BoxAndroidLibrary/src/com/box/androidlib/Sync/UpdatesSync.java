@@ -0,0 +1,514 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.Sync;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.box.androidlib.Box;
+import com.box.androidlib.BoxSynchronous;
+import com.box.androidlib.DAO.BoxFile;
+import com.box.androidlib.DAO.BoxFolder;
+import com.box.androidlib.DAO.BoxTree;
+import com.box.androidlib.DAO.SnapshotCodec;
+import com.box.androidlib.DAO.Update;
+import com.box.androidlib.ResponseListeners.GetAccountTreeListener;
+import com.box.androidlib.ResponseListeners.GetUpdatesListener;
+import com.box.androidlib.ResponseParsers.AccountTreeResponseParser;
+import com.box.androidlib.ResponseParsers.UpdatesResponseParser;
+import com.box.androidlib.Utils.BoxConfig;
+import com.box.androidlib.Utils.LongArrayList;
+import com.box.androidlib.Utils.LongHashMap;
+import com.box.androidlib.Utils.MetadataCache;
+
+/**
+ * Keeps a local tree up to date from the account's updates. Each call to {@link #poll()} asks API action get_updates for everything that happened since the
+ * last update applied (the high-water mark), and applies the files and folders of each update to the tree through the methods of {@link BoxTree}, so that
+ * the tree's listeners see each change. The work done is proportional to the number of updates, not to the size of the tree.
+ * 
+ * Where an update does not say what changed, for example a deletion that lists no files or folders, or an update type this class does not know, the folder
+ * the update happened in is fetched again with {@link Box#PARAM_ONELEVEL} and its children are compared with the tree. Folders that appear in the tree
+ * without their contents, because they were moved or copied in from outside the tree, are fetched the same way.
+ * 
+ * poll() makes network requests and changes the tree on the calling thread, so call it from a background thread, and do not use the tree from other threads
+ * while it runs. The tree, the high-water mark and the folders still to be fetched can be saved with {@link #save(File)} and restored with
+ * {@link #load(String, String, File)}, so that the next run starts from where this one stopped instead of fetching the whole tree again.
+ * 
+ * @author developers@box.net
+ */
+public class UpdatesSync {
+
+    /**
+     * Update types that do not change the files and folders of the account.
+     */
+    private static final String[] READ_ONLY_TYPES = {"downloaded", "previewed", "sent", "commented"};
+    /**
+     * Update types that remove the files and folders of the update from the folder of the update.
+     */
+    private static final String[] REMOVE_TYPES = {"deleted", "removed", "trashed"};
+    /**
+     * Update types for new folders that are known to be empty.
+     */
+    private static final String[] CREATE_TYPES = {"created"};
+    /**
+     * Version of the format written by {@link #save(File)}.
+     */
+    private static final int SAVE_VERSION = 1;
+
+    /**
+     * The API key.
+     */
+    private final String mApiKey;
+    /**
+     * The auth token.
+     */
+    private final String mAuthToken;
+    /**
+     * The tree kept up to date.
+     */
+    private final BoxTree mTree;
+    /**
+     * Time stamp of the most recent update applied.
+     */
+    private long mHighWaterMark;
+    /**
+     * Ids of the updates applied that happened at the high-water mark. get_updates is asked for updates from the high-water mark on, so that updates made in
+     * the same second as the last one applied are not missed, and these are skipped.
+     */
+    private final LongArrayList mHighWaterUpdateIds = new LongArrayList();
+    /**
+     * Folders whose children have to be fetched again, in the order they are fetched (last first).
+     */
+    private final LongArrayList mPendingFolders = new LongArrayList();
+    /**
+     * Number of updates applied by the last poll.
+     */
+    private int mLastUpdateCount;
+    /**
+     * Number of folders fetched by the last poll.
+     */
+    private int mLastFetchCount;
+
+    /**
+     * Start keeping a tree up to date.
+     * 
+     * @param apiKey
+     *            The API key
+     * @param authToken
+     *            The auth token retrieved through {@link BoxSynchronous#getAuthToken(String)}
+     * @param tree
+     *            The tree. Its root is usually the folder fetched with get_account_tree, or folder 0 for the whole account.
+     * @param highWaterMark
+     *            The unix time stamp the tree is up to date with, usually the time just before the tree was fetched. Updates from then on are applied.
+     */
+    public UpdatesSync(final String apiKey, final String authToken, final BoxTree tree, final long highWaterMark) {
+        mApiKey = apiKey;
+        mAuthToken = authToken;
+        mTree = tree;
+        mHighWaterMark = highWaterMark;
+    }
+
+    /**
+     * Get the tree kept up to date.
+     * 
+     * @return The tree
+     */
+    public BoxTree getTree() {
+        return mTree;
+    }
+
+    /**
+     * Get the unix time stamp of the most recent update applied, or the one given to the constructor if none have been.
+     * 
+     * @return The high-water mark
+     */
+    public long getHighWaterMark() {
+        return mHighWaterMark;
+    }
+
+    /**
+     * Get the number of updates applied by the last call to {@link #poll()}.
+     * 
+     * @return number of updates
+     */
+    public int getLastUpdateCount() {
+        return mLastUpdateCount;
+    }
+
+    /**
+     * Get the number of folders fetched by the last call to {@link #poll()} because the updates did not say exactly what changed in them.
+     * 
+     * @return number of folders fetched
+     */
+    public int getLastFetchCount() {
+        return mLastFetchCount;
+    }
+
+    /**
+     * Apply the updates made since the last one applied to the tree. Folders that have to be fetched again are fetched before this returns. If a request
+     * fails, the updates applied so far stay applied, and the folders not fetched yet are fetched by the next poll.
+     * 
+     * @return The status of get_updates, {@link GetUpdatesListener#STATUS_S_GET_UPDATES} if the updates were applied
+     * @throws IOException
+     *             Can be thrown if there is no connection, or if some other connection problem exists.
+     */
+    public String poll() throws IOException {
+        mLastUpdateCount = 0;
+        mLastFetchCount = 0;
+        final BoxSynchronous boxSynchronous = BoxSynchronous.getInstance(mApiKey);
+        final long now = System.currentTimeMillis() / 1000;
+        final UpdatesResponseParser parser = boxSynchronous.getUpdates(mAuthToken, mHighWaterMark, Math.max(now, mHighWaterMark), new String[] {Box.PARAM_NOZIP});
+        if (!GetUpdatesListener.STATUS_S_GET_UPDATES.equals(parser.getStatus())) {
+            return parser.getStatus();
+        }
+        if (parser.getUpdates() != null) {
+            final ArrayList<Update> updates = new ArrayList<Update>(parser.getUpdates());
+            Collections.sort(updates, new Comparator<Update>() {
+
+                @Override
+                public int compare(final Update a, final Update b) {
+                    return a.getUpdated() < b.getUpdated() ? -1 : (a.getUpdated() == b.getUpdated() ? 0 : 1);
+                }
+            });
+            for (int i = 0; i < updates.size(); i++) {
+                final Update update = updates.get(i);
+                if (update.getUpdated() < mHighWaterMark || update.getUpdated() == mHighWaterMark && mHighWaterUpdateIds.containsLong(update.getId())) {
+                    continue;
+                }
+                apply(update);
+                mLastUpdateCount++;
+                if (update.getUpdated() > mHighWaterMark) {
+                    mHighWaterMark = update.getUpdated();
+                    mHighWaterUpdateIds.clear();
+                }
+                mHighWaterUpdateIds.addLong(update.getId());
+            }
+        }
+        while (!mPendingFolders.isEmpty()) {
+            final long folderId = mPendingFolders.getLong(mPendingFolders.size() - 1);
+            if (mTree.getFolder(folderId) != null) {
+                invalidateCache(Box.TYPE_FOLDER, folderId);
+                final AccountTreeResponseParser listing = boxSynchronous.getAccountTree(mAuthToken, folderId, new String[] {Box.PARAM_ONELEVEL});
+                mLastFetchCount++;
+                // Remove it only now, so that it is fetched by the next poll if the request failed. Reconciling may add more folders after it.
+                mPendingFolders.remove(mPendingFolders.size() - 1);
+                if (GetAccountTreeListener.STATUS_LISTING_OK.equals(listing.getStatus()) && listing.getFolder() != null) {
+                    reconcile(folderId, listing.getFolder());
+                }
+                else if (GetAccountTreeListener.STATUS_E_FOLDER_ID.equals(listing.getStatus())) {
+                    mTree.removeFolder(folderId);
+                }
+            }
+            else {
+                mPendingFolders.remove(mPendingFolders.size() - 1);
+            }
+        }
+        return parser.getStatus();
+    }
+
+    /**
+     * Save the tree, the high-water mark and the folders still to be fetched, replacing the file if it exists.
+     * 
+     * @param file
+     *            The file to save to
+     * @throws IOException
+     *             If the file could not be written
+     */
+    public void save(final File file) throws IOException {
+        final File temp = new File(file.getPath() + ".tmp");
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(SAVE_VERSION);
+            out.writeLong(mHighWaterMark);
+            writeLongs(out, mHighWaterUpdateIds);
+            writeLongs(out, mPendingFolders);
+            SnapshotCodec.writeFolder(out, mTree.getRoot());
+        }
+        finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            file.delete();
+            if (!temp.renameTo(file)) {
+                throw new IOException("Could not rename " + temp + " to " + file);
+            }
+        }
+    }
+
+    /**
+     * Load a tree saved with {@link #save(File)}, and continue keeping it up to date.
+     * 
+     * @param apiKey
+     *            The API key
+     * @param authToken
+     *            The auth token retrieved through {@link BoxSynchronous#getAuthToken(String)}
+     * @param file
+     *            The file saved to
+     * @return The sync, with a new tree. Listeners have to be added to the tree again.
+     * @throws IOException
+     *             If the file could not be read, or was saved by a newer version of this class
+     */
+    public static UpdatesSync load(final String apiKey, final String authToken, final File file) throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != SAVE_VERSION) {
+                throw new IOException("Unsupported version in " + file);
+            }
+            final long highWaterMark = in.readLong();
+            final LongArrayList highWaterUpdateIds = readLongs(in);
+            final LongArrayList pendingFolders = readLongs(in);
+            final UpdatesSync sync = new UpdatesSync(apiKey, authToken, new BoxTree(SnapshotCodec.readFolder(in)), highWaterMark);
+            sync.mHighWaterUpdateIds.addAll(highWaterUpdateIds);
+            sync.mPendingFolders.addAll(pendingFolders);
+            return sync;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Apply one update to the tree.
+     * 
+     * @param update
+     *            The update
+     */
+    private void apply(final Update update) {
+        final String type = update.getUpdateType();
+        final long folderId = update.getFolderId();
+        final List<BoxFile> files = update.getFiles();
+        final List<BoxFolder> folders = update.getFolders();
+        invalidateCache(Box.TYPE_FOLDER, folderId);
+        for (int i = 0; i < files.size(); i++) {
+            invalidateCache(Box.TYPE_FILE, files.get(i).getId());
+        }
+        for (int i = 0; i < folders.size(); i++) {
+            invalidateCache(Box.TYPE_FOLDER, folders.get(i).getId());
+        }
+
+        if (contains(READ_ONLY_TYPES, type)) {
+            return;
+        }
+        if (files.isEmpty() && folders.isEmpty()) {
+            // The update does not say what changed in the folder.
+            addPendingFolder(folderId);
+            return;
+        }
+        final boolean remove = contains(REMOVE_TYPES, type);
+        // Files and folders that are no longer in the tree's part of the account are removed.
+        final boolean outside = mTree.getFolder(folderId) == null;
+        for (int i = 0; i < files.size(); i++) {
+            if (remove || outside) {
+                mTree.removeFile(files.get(i).getId());
+            }
+            else {
+                putFile(folderId, files.get(i));
+            }
+        }
+        for (int i = 0; i < folders.size(); i++) {
+            if (remove || outside) {
+                mTree.removeFolder(folders.get(i).getId());
+            }
+            else {
+                putFolder(folderId, folders.get(i), !contains(CREATE_TYPES, type));
+            }
+        }
+    }
+
+    /**
+     * Make the children of a folder of the tree match a listing of the folder, and queue new child folders to be fetched.
+     * 
+     * @param folderId
+     *            The folder id
+     * @param listing
+     *            The folder fetched with {@link Box#PARAM_ONELEVEL}
+     */
+    private void reconcile(final long folderId, final BoxFolder listing) {
+        final BoxFolder folder = mTree.getFolder(folderId);
+        if (folder == null) {
+            return;
+        }
+        if (listing.getFolderName() != null && !listing.getFolderName().equals(folder.getFolderName())) {
+            mTree.renameFolder(folderId, listing.getFolderName());
+        }
+        final LongHashMap<Boolean> listed = new LongHashMap<Boolean>();
+        // Copy, as adding to the tree takes the children out of the listing.
+        final ArrayList<BoxFolder> listedFolders = new ArrayList<BoxFolder>(listing.getFoldersInFolder());
+        final ArrayList<BoxFile> listedFiles = new ArrayList<BoxFile>(listing.getFilesInFolder());
+        for (int i = 0; i < listedFolders.size(); i++) {
+            listed.put(listedFolders.get(i).getId(), Boolean.TRUE);
+            putFolder(folderId, listedFolders.get(i), true);
+        }
+        for (int i = 0; i < listedFiles.size(); i++) {
+            listed.put(listedFiles.get(i).getId(), Boolean.TRUE);
+            putFile(folderId, listedFiles.get(i));
+        }
+        final ArrayList<BoxFolder> childFolders = new ArrayList<BoxFolder>(folder.getFoldersInFolder());
+        for (int i = 0; i < childFolders.size(); i++) {
+            if (!listed.containsKey(childFolders.get(i).getId())) {
+                mTree.removeFolder(childFolders.get(i).getId());
+            }
+        }
+        final ArrayList<BoxFile> childFiles = new ArrayList<BoxFile>(folder.getFilesInFolder());
+        for (int i = 0; i < childFiles.size(); i++) {
+            if (!listed.containsKey(childFiles.get(i).getId())) {
+                mTree.removeFile(childFiles.get(i).getId());
+            }
+        }
+    }
+
+    /**
+     * Put a file into a folder of the tree, moving, renaming or replacing the file of the tree with the same id.
+     * 
+     * @param folderId
+     *            Id of the folder the file is in
+     * @param file
+     *            The file as the server has it now
+     */
+    private void putFile(final long folderId, final BoxFile file) {
+        final BoxFile existing = mTree.getFile(file.getId());
+        if (existing == null) {
+            mTree.addFile(folderId, file);
+        }
+        else if (file.getUpdated() > existing.getUpdated()) {
+            // The contents or details changed, so replace the file with the one the server sent.
+            mTree.removeFile(file.getId());
+            mTree.addFile(folderId, file);
+        }
+        else {
+            if (existing.getFolderId() != folderId) {
+                mTree.moveFile(file.getId(), folderId);
+            }
+            if (file.getFileName() != null && !file.getFileName().equals(existing.getFileName())) {
+                mTree.renameFile(file.getId(), file.getFileName());
+            }
+        }
+    }
+
+    /**
+     * Put a folder into a folder of the tree, moving or renaming the folder of the tree with the same id. Folders new to the tree are added without children.
+     * 
+     * @param parentId
+     *            Id of the folder the folder is in
+     * @param folder
+     *            The folder as the server has it now
+     * @param fetchIfNew
+     *            Whether to fetch the children of the folder if it is new to the tree
+     */
+    private void putFolder(final long parentId, final BoxFolder folder, final boolean fetchIfNew) {
+        final BoxFolder existing = mTree.getFolder(folder.getId());
+        if (existing == null) {
+            folder.getFoldersInFolder().clear();
+            folder.getFilesInFolder().clear();
+            if (mTree.addFolder(parentId, folder) && fetchIfNew) {
+                addPendingFolder(folder.getId());
+            }
+            return;
+        }
+        if (folder.getId() != parentId && existing.getParentFolderId() != parentId) {
+            mTree.moveFolder(folder.getId(), parentId);
+        }
+        if (folder.getFolderName() != null && !folder.getFolderName().equals(existing.getFolderName())) {
+            mTree.renameFolder(folder.getId(), folder.getFolderName());
+        }
+    }
+
+    /**
+     * Queue a folder to have its children fetched again, unless it already is.
+     * 
+     * @param folderId
+     *            The folder id
+     */
+    private void addPendingFolder(final long folderId) {
+        if (!mPendingFolders.containsLong(folderId)) {
+            mPendingFolders.addLong(folderId);
+        }
+    }
+
+    /**
+     * Drop the cached responses for a file or folder, since it changed.
+     * 
+     * @param type
+     *            {@link Box#TYPE_FILE} or {@link Box#TYPE_FOLDER}
+     * @param id
+     *            Id of the file or folder
+     */
+    private static void invalidateCache(final String type, final long id) {
+        final MetadataCache cache = BoxConfig.getInstance().getMetadataCache();
+        if (cache != null) {
+            cache.invalidate(type, id);
+        }
+    }
+
+    /**
+     * Check whether an update type is one of a list.
+     * 
+     * @param types
+     *            The list
+     * @param type
+     *            The update type, may be null
+     * @return true if the type is in the list
+     */
+    private static boolean contains(final String[] types, final String type) {
+        for (int i = 0; i < types.length; i++) {
+            if (types[i].equals(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Write a list of longs.
+     * 
+     * @param out
+     *            The output
+     * @param longs
+     *            The list
+     * @throws IOException
+     *             If the output could not be written
+     */
+    private static void writeLongs(final DataOutputStream out, final LongArrayList longs) throws IOException {
+        out.writeInt(longs.size());
+        for (int i = 0; i < longs.size(); i++) {
+            out.writeLong(longs.getLong(i));
+        }
+    }
+
+    /**
+     * Read a list of longs written by {@link #writeLongs(DataOutputStream, LongArrayList)}.
+     * 
+     * @param in
+     *            The input
+     * @return The list
+     * @throws IOException
+     *             If the input could not be read
+     */
+    private static LongArrayList readLongs(final DataInputStream in) throws IOException {
+        final int size = in.readInt();
+        final LongArrayList longs = new LongArrayList();
+        for (int i = 0; i < size; i++) {
+            longs.addLong(in.readLong());
+        }
+        return longs;
+    }
+}
@@ -0,0 +1,5 @@
+/**
+Classes that keep local copies of Box folders up to date, and that copy folders on Box.
+@author developers@box.net
+ */
+package com.box.androidlib.Sync;
@@ -0,0 +1,352 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.Transport;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRoute;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.scheme.LayeredSocketFactory;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.scheme.SocketFactory;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+
+import com.box.androidlib.Utils.BoxConfig;
+import com.box.androidlib.Utils.DevUtils;
+
+/**
+ * Shared, thread-safe HTTP client used for API requests, downloads and uploads. Connections to the API, upload and download hosts configured in
+ * {@link BoxConfig} are pooled and kept alive between requests, so that consecutive calls do not each pay for a new TCP and TLS handshake. Each of these hosts
+ * has its own connection limit. Idle connections are evicted by a background thread that runs while the pool holds connections, or explicitly through
+ * {@link #evictIdleConnections()}.
+ * 
+ * @author developers@box.net
+ */
+public final class BoxHttpClient {
+
+    /** Default HTTP port. */
+    private static final int HTTP_PORT = 80;
+    /** Default HTTPS port. */
+    private static final int HTTPS_PORT = 443;
+    /** Shortest time in milliseconds the evictor waits between two evictions. */
+    private static final long MIN_EVICTION_INTERVAL = 50;
+
+    /** Singleton instance. */
+    private static BoxHttpClient mInstance;
+
+    /** The pooling connection manager shared by all requests. */
+    private final ThreadSafeClientConnManager mConnectionManager;
+    /** The client that executes requests on top of the pooled connection manager. */
+    private final DefaultHttpClient mHttpClient;
+    /** Number of requests executed through this client. */
+    private final AtomicLong mRequestCount = new AtomicLong();
+    /** Number of new socket connections opened by the pool. requests - connections is the number of requests that reused a kept-alive connection. */
+    private final AtomicLong mConnectionCount = new AtomicLong();
+    /** Daemon thread evicting idle connections while the pool holds connections, or null if it is not running. Guarded by this. */
+    private Thread mEvictor;
+
+    /**
+     * Private constructor. Creates the connection pool using the connection limits of {@link BoxConfig}.
+     */
+    private BoxHttpClient() {
+        final BoxConfig config = BoxConfig.getInstance();
+        final HttpParams params = new BasicHttpParams();
+        ConnManagerParams.setMaxTotalConnections(params, config.getMaxTotalConnections());
+        ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRoute() {
+
+            @Override
+            public int getMaxForRoute(final HttpRoute route) {
+                return getMaxConnections(route.getTargetHost());
+            }
+        });
+        HttpConnectionParams.setStaleCheckingEnabled(params, true);
+        HttpProtocolParams.setUserAgent(params, config.getUserAgent());
+
+        final SchemeRegistry schemeRegistry = new SchemeRegistry();
+        schemeRegistry.register(new Scheme("http", new CountingSocketFactory(PlainSocketFactory.getSocketFactory(), mConnectionCount), HTTP_PORT));
+        schemeRegistry.register(new Scheme("https", new CountingLayeredSocketFactory(SSLSocketFactory.getSocketFactory(), mConnectionCount), HTTPS_PORT));
+
+        mConnectionManager = new ThreadSafeClientConnManager(params, schemeRegistry);
+        mHttpClient = new DefaultHttpClient(mConnectionManager, params);
+    }
+
+    /**
+     * Get the shared instance, creating the connection pool if necessary.
+     * 
+     * @return instance of BoxHttpClient
+     */
+    public static synchronized BoxHttpClient getInstance() {
+        if (mInstance == null) {
+            mInstance = new BoxHttpClient();
+        }
+        return mInstance;
+    }
+
+    /**
+     * Close all pooled connections and discard the shared instance. The next call to {@link #getInstance()} creates a new pool, so this can also be used to
+     * apply changed connection limits from {@link BoxConfig}.
+     */
+    public static synchronized void shutdown() {
+        if (mInstance != null) {
+            mInstance.stopEvictor();
+            mInstance.mConnectionManager.shutdown();
+            mInstance = null;
+        }
+    }
+
+    /**
+     * Execute a request on a pooled connection. The User-Agent and connection timeout of {@link BoxConfig} are applied to the request. The caller must either
+     * consume the response entity completely, or abort the request, so that the connection is returned to the pool.
+     * 
+     * @param request
+     *            The request to execute
+     * @return The HTTP response
+     * @throws IOException
+     *             Can be thrown if there is no connection, or if some other connection problem exists.
+     */
+    public HttpResponse execute(final HttpUriRequest request) throws IOException {
+        request.setHeader("User-Agent", BoxConfig.getInstance().getUserAgent());
+        HttpConnectionParams.setConnectionTimeout(request.getParams(), BoxConfig.getInstance().getConnectionTimeOut());
+        mRequestCount.incrementAndGet();
+        final HttpResponse response = mHttpClient.execute(request);
+        // Started once the connection is leased, so that an evictor finding the pool empty cannot miss it.
+        startEvictor();
+        return response;
+    }
+
+    /**
+     * Close expired connections and connections that have been idle for longer than {@link BoxConfig#getIdleConnectionTimeout()}.
+     */
+    public void evictIdleConnections() {
+        mConnectionManager.closeExpiredConnections();
+        mConnectionManager.closeIdleConnections(BoxConfig.getInstance().getIdleConnectionTimeout(), TimeUnit.MILLISECONDS);
+        if (BoxConfig.getInstance().getHttpLoggingEnabled()) {
+            DevUtils.logcat("Connection pool after eviction: " + getConnectionsInPool() + " connections");
+        }
+    }
+
+    /**
+     * Get the maximum number of pooled connections to a host. The API, upload and download hosts of {@link BoxConfig} have their own limits, summed where two
+     * of them are the same host. Any other host gets {@link BoxConfig#getMaxConnectionsPerHost()}.
+     * 
+     * @param host
+     *            The target host of a route
+     * @return Maximum number of connections to the host
+     */
+    static int getMaxConnections(final HttpHost host) {
+        final BoxConfig config = BoxConfig.getInstance();
+        int max = 0;
+        if (isAuthorityOf(config.getApiUrlAuthority(), host)) {
+            max += config.getMaxApiConnections();
+        }
+        if (isAuthorityOf(config.getUploadUrlAuthority(), host)) {
+            max += config.getMaxUploadConnections();
+        }
+        if (isAuthorityOf(config.getDownloadUrlAuthority(), host)) {
+            max += config.getMaxDownloadConnections();
+        }
+        return max > 0 ? max : config.getMaxConnectionsPerHost();
+    }
+
+    /**
+     * Check whether a configured URL authority names a host. An authority without a port matches the host on any port.
+     * 
+     * @param authority
+     *            URL authority, e.g. "www.box.net" or "127.0.0.1:8080"
+     * @param host
+     *            The host to check
+     * @return true if the authority names the host
+     */
+    private static boolean isAuthorityOf(final String authority, final HttpHost host) {
+        if (authority == null) {
+            return false;
+        }
+        String hostName = authority;
+        final int colon = authority.lastIndexOf(':');
+        if (colon > authority.lastIndexOf(']')) {
+            hostName = authority.substring(0, colon);
+            try {
+                if (Integer.parseInt(authority.substring(colon + 1)) != host.getPort()) {
+                    return false;
+                }
+            }
+            catch (final NumberFormatException e) {
+                return false;
+            }
+        }
+        return hostName.equalsIgnoreCase(host.getHostName());
+    }
+
+    /**
+     * Start the evictor thread if it is not running.
+     */
+    private synchronized void startEvictor() {
+        if (mEvictor != null) {
+            return;
+        }
+        mEvictor = new Thread("BoxHttpClient evictor") {
+
+            @Override
+            public void run() {
+                runEvictor();
+            }
+        };
+        mEvictor.setDaemon(true);
+        mEvictor.start();
+    }
+
+    /**
+     * Stop the evictor thread if it is running.
+     */
+    private synchronized void stopEvictor() {
+        if (mEvictor != null) {
+            mEvictor.interrupt();
+            mEvictor = null;
+        }
+    }
+
+    /**
+     * Body of the evictor thread. Evicts idle connections every half idle timeout, so that a connection is closed at most one and a half idle timeouts after
+     * its last use, and exits once the pool is empty. The next request starts a new evictor.
+     */
+    private void runEvictor() {
+        try {
+            while (true) {
+                Thread.sleep(Math.max(MIN_EVICTION_INTERVAL, BoxConfig.getInstance().getIdleConnectionTimeout() / 2));
+                evictIdleConnections();
+                synchronized (this) {
+                    if (mEvictor != Thread.currentThread()) {
+                        return;
+                    }
+                    if (getConnectionsInPool() == 0) {
+                        mEvictor = null;
+                        return;
+                    }
+                }
+            }
+        }
+        catch (final InterruptedException e) {
+            // Stopped by shutdown().
+        }
+    }
+
+    /**
+     * Get the number of connections currently held by the pool, both leased and idle.
+     * 
+     * @return number of pooled connections
+     */
+    public int getConnectionsInPool() {
+        return mConnectionManager.getConnectionsInPool();
+    }
+
+    /**
+     * Get the number of requests executed through the pool since it was created.
+     * 
+     * @return number of requests
+     */
+    public long getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * Get the number of socket connections the pool has opened since it was created. Comparing this with {@link #getRequestCount()} shows how many requests
+     * reused a kept-alive connection.
+     * 
+     * @return number of connections opened
+     */
+    public long getConnectionCount() {
+        return mConnectionCount.get();
+    }
+
+    /**
+     * Socket factory that counts the connections it opens, delegating everything else to the plain socket factory.
+     */
+    private static class CountingSocketFactory implements SocketFactory {
+
+        /** The socket factory doing the actual work. */
+        protected final SocketFactory mDelegate;
+        /** Counter to increment for every connection opened. */
+        private final AtomicLong mCounter;
+
+        /**
+         * Constructor.
+         * 
+         * @param delegate
+         *            socket factory to delegate to
+         * @param counter
+         *            counter to increment for every connection opened
+         */
+        public CountingSocketFactory(final SocketFactory delegate, final AtomicLong counter) {
+            mDelegate = delegate;
+            mCounter = counter;
+        }
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return mDelegate.createSocket();
+        }
+
+        @Override
+        public Socket connectSocket(final Socket sock, final String host, final int port, final InetAddress localAddress, final int localPort,
+            final HttpParams params) throws IOException, UnknownHostException, ConnectTimeoutException {
+            mCounter.incrementAndGet();
+            return mDelegate.connectSocket(sock, host, port, localAddress, localPort, params);
+        }
+
+        @Override
+        public boolean isSecure(final Socket sock) {
+            return mDelegate.isSecure(sock);
+        }
+    }
+
+    /**
+     * Socket factory that counts the connections it opens, delegating everything else to the SSL socket factory.
+     */
+    private static final class CountingLayeredSocketFactory extends CountingSocketFactory implements LayeredSocketFactory {
+
+        /**
+         * Constructor.
+         * 
+         * @param delegate
+         *            layered socket factory to delegate to
+         * @param counter
+         *            counter to increment for every connection opened
+         */
+        public CountingLayeredSocketFactory(final LayeredSocketFactory delegate, final AtomicLong counter) {
+            super(delegate, counter);
+        }
+
+        @Override
+        public Socket createSocket(final Socket socket, final String host, final int port, final boolean autoClose) throws IOException,
+            UnknownHostException {
+            return ((LayeredSocketFactory) mDelegate).createSocket(socket, host, port, autoClose);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.Transport;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Request to be executed by a {@link BoxHttpTransport}.
+ * 
+ * @author developers@box.net
+ */
+public class BoxHttpRequest {
+
+    /** HTTP GET method. */
+    public static final String METHOD_GET = "GET";
+    /** HTTP POST method. */
+    public static final String METHOD_POST = "POST";
+
+    /** HTTP method. */
+    private final String mMethod;
+    /** Request URL. */
+    private final String mUrl;
+    /** Request headers. */
+    private final Map<String, String> mHeaders = new LinkedHashMap<String, String>();
+    /** Request body, or null if the request has no body. */
+    private Body mBody;
+
+    /**
+     * Create a new request.
+     * 
+     * @param method
+     *            HTTP method. Set to {@link #METHOD_GET} or {@link #METHOD_POST}
+     * @param url
+     *            Request URL
+     */
+    public BoxHttpRequest(final String method, final String url) {
+        mMethod = method;
+        mUrl = url;
+    }
+
+    /**
+     * Get the HTTP method.
+     * 
+     * @return HTTP method
+     */
+    public String getMethod() {
+        return mMethod;
+    }
+
+    /**
+     * Get the request URL.
+     * 
+     * @return request URL
+     */
+    public String getUrl() {
+        return mUrl;
+    }
+
+    /**
+     * Set a request header, replacing any previous value of the header.
+     * 
+     * @param name
+     *            Header name
+     * @param value
+     *            Header value
+     */
+    public void setHeader(final String name, final String value) {
+        mHeaders.put(name, value);
+    }
+
+    /**
+     * Get the request headers. The User-Agent header is added by the transport and is not included.
+     * 
+     * @return Map of header names to values
+     */
+    public Map<String, String> getHeaders() {
+        return mHeaders;
+    }
+
+    /**
+     * Set the request body.
+     * 
+     * @param body
+     *            Request body
+     */
+    public void setBody(final Body body) {
+        mBody = body;
+    }
+
+    /**
+     * Get the request body.
+     * 
+     * @return Request body, or null if the request has no body
+     */
+    public Body getBody() {
+        return mBody;
+    }
+
+    /**
+     * Streaming request body.
+     */
+    public interface Body {
+
+        /**
+         * Get the value of the Content-Type header of the body.
+         * 
+         * @return Content type
+         */
+        String getContentType();
+
+        /**
+         * Get the length of the body in bytes.
+         * 
+         * @return Length of the body, or -1 if it is not known in advance
+         */
+        long getContentLength();
+
+        /**
+         * Write the body to the given stream. This is called at most once per request.
+         * 
+         * @param out
+         *            Stream to write to
+         * @throws IOException
+         *             Can be thrown if the body cannot be read or written
+         */
+        void writeTo(OutputStream out) throws IOException;
+    }
+}
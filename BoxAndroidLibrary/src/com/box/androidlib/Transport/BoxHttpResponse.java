@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.Transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Response returned by a {@link BoxHttpTransport}.
+ * 
+ * @author developers@box.net
+ */
+public interface BoxHttpResponse {
+
+    /**
+     * Get the HTTP status code of the response, or -1 if it could not be determined.
+     * 
+     * @return HTTP status code
+     */
+    int getStatusCode();
+
+    /**
+     * Get the value of the first response header with the given name.
+     * 
+     * @param name
+     *            Header name, case-insensitive
+     * @return Header value, or null if the response does not have the header
+     */
+    String getHeader(String name);
+
+    /**
+     * Get all response headers.
+     * 
+     * @return Map of header names to the values of the header
+     */
+    Map<String, List<String>> getHeaders();
+
+    /**
+     * Get the response body as a stream. The stream is read at most once.
+     * 
+     * @return Response body stream. Never null, an empty stream is returned if the response has no body.
+     * @throws IOException
+     *             Can be thrown if the response body cannot be read.
+     */
+    InputStream getContent() throws IOException;
+
+    /**
+     * Release the response. If little or nothing is left of the response body, the rest is read so that the underlying connection can be reused. Otherwise
+     * the connection is discarded, as with {@link #abort()}, so that closing a large body early does not download the rest of it.
+     * 
+     * @throws IOException
+     *             Can be thrown if the rest of the response body cannot be read.
+     */
+    void close() throws IOException;
+
+    /**
+     * Release the response without reading the rest of the response body. The underlying connection is discarded. Use this if the request failed or was
+     * cancelled midway.
+     */
+    void abort();
+}
@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.Transport;
+
+import java.io.IOException;
+
+/**
+ * Interface through which all HTTP requests against Box API are made, including file downloads and uploads. The default implementation is
+ * {@link DefaultHttpTransport}. A different implementation can be installed with {@link com.box.androidlib.Utils.BoxConfig#setHttpTransport(BoxHttpTransport)},
+ * for example {@link LoopbackHttpTransport} to serve responses from memory.
+ * 
+ * @author developers@box.net
+ */
+public interface BoxHttpTransport {
+
+    /**
+     * Execute a request. Implementations must be thread-safe, as requests are made from multiple threads concurrently. The caller must either close or abort
+     * the returned response.
+     * 
+     * @param request
+     *            The request to execute
+     * @return The response. The status code and headers are available immediately, the body is streamed through {@link BoxHttpResponse#getContent()}.
+     * @throws IOException
+     *             Can be thrown if there is no connection, or if some other connection problem exists.
+     */
+    BoxHttpResponse execute(BoxHttpRequest request) throws IOException;
+}
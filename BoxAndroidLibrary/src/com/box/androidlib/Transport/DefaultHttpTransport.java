@@ -0,0 +1,283 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.Transport;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.AbstractHttpEntity;
+
+/**
+ * Default {@link BoxHttpTransport} which executes requests over the network using the shared connection pool of {@link BoxHttpClient}.
+ * 
+ * @author developers@box.net
+ */
+public class DefaultHttpTransport implements BoxHttpTransport {
+
+    @Override
+    public BoxHttpResponse execute(final BoxHttpRequest request) throws IOException {
+        final URI uri;
+        try {
+            uri = new URI(request.getUrl());
+        }
+        catch (URISyntaxException e) {
+            throw new IOException("Invalid URL: " + request.getUrl());
+        }
+
+        final HttpRequestBase httpRequest;
+        if (request.getMethod().equals(BoxHttpRequest.METHOD_POST)) {
+            final HttpPost httpPost = new HttpPost(uri);
+            if (request.getBody() != null) {
+                httpPost.setEntity(new BodyEntity(request.getBody()));
+            }
+            httpRequest = httpPost;
+        }
+        else if (request.getMethod().equals(BoxHttpRequest.METHOD_GET)) {
+            httpRequest = new HttpGet(uri);
+        }
+        else {
+            throw new IOException("Unsupported HTTP method: " + request.getMethod());
+        }
+        for (Iterator<Map.Entry<String, String>> i = request.getHeaders().entrySet().iterator(); i.hasNext();) {
+            final Map.Entry<String, String> header = i.next();
+            httpRequest.setHeader(header.getKey(), header.getValue());
+        }
+
+        try {
+            return new Response(httpRequest, BoxHttpClient.getInstance().execute(httpRequest));
+        }
+        catch (IOException e) {
+            httpRequest.abort();
+            throw e;
+        }
+    }
+
+    /**
+     * Response backed by a pooled HttpClient connection.
+     */
+    private static class Response implements BoxHttpResponse {
+
+        /**
+         * Most bytes left unread in a body that {@link #close()} reads to the end so that the connection can be reused. The connection of a body with more
+         * left, or of unknown length, is discarded instead, so that closing a download early does not download the rest of it.
+         */
+        private static final long DRAIN_LIMIT = 8192;
+
+        /** The request, kept so that it can be aborted. */
+        private final HttpRequestBase mRequest;
+        /** The response. */
+        private final HttpResponse mResponse;
+        /** The body stream handed out, or null if the body has not been asked for. */
+        private CountingInputStream mContent;
+
+        /**
+         * Constructor.
+         * 
+         * @param request
+         *            request that was executed
+         * @param response
+         *            response to the request
+         */
+        public Response(final HttpRequestBase request, final HttpResponse response) {
+            mRequest = request;
+            mResponse = response;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return mResponse.getStatusLine() != null ? mResponse.getStatusLine().getStatusCode() : -1;
+        }
+
+        @Override
+        public String getHeader(final String name) {
+            final Header header = mResponse.getFirstHeader(name);
+            return header != null ? header.getValue() : null;
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaders() {
+            final Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+            final Header[] allHeaders = mResponse.getAllHeaders();
+            for (int i = 0; i < allHeaders.length; i++) {
+                List<String> values = headers.get(allHeaders[i].getName());
+                if (values == null) {
+                    values = new ArrayList<String>(1);
+                    headers.put(allHeaders[i].getName(), values);
+                }
+                values.add(allHeaders[i].getValue());
+            }
+            return headers;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            final HttpEntity entity = mResponse.getEntity();
+            if (entity == null) {
+                return new ByteArrayInputStream(new byte[0]);
+            }
+            if (mContent == null) {
+                mContent = new CountingInputStream(entity.getContent());
+            }
+            return mContent;
+        }
+
+        @Override
+        public void close() throws IOException {
+            final HttpEntity entity = mResponse.getEntity();
+            if (entity == null) {
+                return;
+            }
+            final long remaining;
+            if (mContent != null && mContent.mEnd) {
+                remaining = 0;
+            }
+            else if (entity.getContentLength() >= 0) {
+                remaining = entity.getContentLength() - (mContent != null ? mContent.mCount : 0);
+            }
+            else {
+                remaining = -1;
+            }
+            if (remaining >= 0 && remaining <= DRAIN_LIMIT) {
+                entity.consumeContent();
+            }
+            else {
+                mRequest.abort();
+            }
+        }
+
+        @Override
+        public void abort() {
+            mRequest.abort();
+        }
+    }
+
+    /**
+     * Counts the bytes read from a response body and notes when its end is reached.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        /** Number of bytes read. */
+        private long mCount;
+        /** Whether the end of the body has been reached. */
+        private boolean mEnd;
+
+        /**
+         * Constructor.
+         * 
+         * @param in
+         *            response body
+         */
+        public CountingInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b < 0) {
+                mEnd = true;
+            }
+            else {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            final int n = super.read(buffer, offset, length);
+            if (n < 0) {
+                mEnd = true;
+            }
+            else {
+                mCount += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = super.skip(n);
+            mCount += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    /**
+     * Adapts a {@link BoxHttpRequest.Body} to an HttpEntity. HttpClient sends a request entity through {@link #writeTo(OutputStream)} and does not call
+     * {@link #getContent()} for it, so the body never has to be turned into a stream.
+     */
+    private static class BodyEntity extends AbstractHttpEntity {
+
+        /** The request body. */
+        private final BoxHttpRequest.Body mBody;
+
+        /**
+         * Constructor.
+         * 
+         * @param body
+         *            request body
+         */
+        public BodyEntity(final BoxHttpRequest.Body body) {
+            mBody = body;
+            setContentType(body.getContentType());
+            setChunked(body.getContentLength() < 0);
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        @Override
+        public long getContentLength() {
+            return mBody.getContentLength();
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            // A body is written once, straight from its source, and cannot be turned into a stream without holding all of it in memory.
+            throw new UnsupportedOperationException("Request body can only be written");
+        }
+
+        @Override
+        public void writeTo(final OutputStream outstream) throws IOException {
+            mBody.writeTo(outstream);
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+    }
+}
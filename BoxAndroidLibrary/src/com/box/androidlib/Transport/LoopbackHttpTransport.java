@@ -0,0 +1,223 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.Transport;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link BoxHttpTransport} that serves responses from memory instead of the network. Request bodies are fully read (so upload progress callbacks fire as
+ * usual) and handed to a {@link Responder} together with the request. Useful for offline development and for measuring the parsing and dispatch layers of the
+ * library without network noise.
+ * 
+ * @author developers@box.net
+ */
+public class LoopbackHttpTransport implements BoxHttpTransport {
+
+    /** HTTP status code returned when the responder has no response for a request. */
+    private static final int HTTP_NOT_FOUND = 404;
+
+    /** Produces responses for requests. */
+    private final Responder mResponder;
+    /** Number of requests executed. */
+    private final AtomicLong mRequestCount = new AtomicLong();
+
+    /**
+     * Create a loopback transport that asks the given responder for the response to every request.
+     * 
+     * @param responder
+     *            Produces responses for requests
+     */
+    public LoopbackHttpTransport(final Responder responder) {
+        mResponder = responder;
+    }
+
+    /**
+     * Create a loopback transport that returns the same response to every request.
+     * 
+     * @param statusCode
+     *            HTTP status code of the response
+     * @param body
+     *            Response body
+     */
+    public LoopbackHttpTransport(final int statusCode, final byte[] body) {
+        this(new Responder() {
+
+            @Override
+            public BoxHttpResponse respond(final BoxHttpRequest request, final byte[] requestBody) {
+                return newResponse(statusCode, body);
+            }
+        });
+    }
+
+    @Override
+    public BoxHttpResponse execute(final BoxHttpRequest request) throws IOException {
+        mRequestCount.incrementAndGet();
+        byte[] requestBody = null;
+        if (request.getBody() != null) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            request.getBody().writeTo(out);
+            requestBody = out.toByteArray();
+        }
+        final BoxHttpResponse response = mResponder.respond(request, requestBody);
+        if (response == null) {
+            return newResponse(HTTP_NOT_FOUND, new byte[0]);
+        }
+        return response;
+    }
+
+    /**
+     * Get the number of requests executed by this transport.
+     * 
+     * @return number of requests
+     */
+    public long getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * Create an in-memory response without headers.
+     * 
+     * @param statusCode
+     *            HTTP status code
+     * @param body
+     *            Response body. The array is not copied.
+     * @return response
+     */
+    public static BoxHttpResponse newResponse(final int statusCode, final byte[] body) {
+        return newResponse(statusCode, Collections.<String, List<String>> emptyMap(), body);
+    }
+
+    /**
+     * Create an in-memory response without headers.
+     * 
+     * @param statusCode
+     *            HTTP status code
+     * @param body
+     *            Response body, which will be UTF-8 encoded
+     * @return response
+     */
+    public static BoxHttpResponse newResponse(final int statusCode, final String body) {
+        try {
+            return newResponse(statusCode, body.getBytes("UTF-8"));
+        }
+        catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported.
+            throw new IllegalStateException(e.getMessage());
+        }
+    }
+
+    /**
+     * Create an in-memory response.
+     * 
+     * @param statusCode
+     *            HTTP status code
+     * @param headers
+     *            Map of header names to the values of the header
+     * @param body
+     *            Response body. The array is not copied.
+     * @return response
+     */
+    public static BoxHttpResponse newResponse(final int statusCode, final Map<String, List<String>> headers, final byte[] body) {
+        return new LoopbackResponse(statusCode, headers, body);
+    }
+
+    /**
+     * Produces the responses of a {@link LoopbackHttpTransport}. Implementations must be thread-safe.
+     */
+    public interface Responder {
+
+        /**
+         * Produce the response to a request.
+         * 
+         * @param request
+         *            The request
+         * @param requestBody
+         *            The request body, or null if the request has no body
+         * @return The response, or null to respond with 404 Not Found
+         * @throws IOException
+         *             Thrown to simulate a connection problem
+         */
+        BoxHttpResponse respond(BoxHttpRequest request, byte[] requestBody) throws IOException;
+    }
+
+    /**
+     * Response served from memory.
+     */
+    private static class LoopbackResponse implements BoxHttpResponse {
+
+        /** HTTP status code. */
+        private final int mStatusCode;
+        /** Response headers. */
+        private final Map<String, List<String>> mHeaders;
+        /** Response body. */
+        private final InputStream mContent;
+
+        /**
+         * Constructor.
+         * 
+         * @param statusCode
+         *            HTTP status code
+         * @param headers
+         *            response headers
+         * @param body
+         *            response body
+         */
+        public LoopbackResponse(final int statusCode, final Map<String, List<String>> headers, final byte[] body) {
+            mStatusCode = statusCode;
+            mHeaders = headers;
+            mContent = new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public int getStatusCode() {
+            return mStatusCode;
+        }
+
+        @Override
+        public String getHeader(final String name) {
+            for (Iterator<Map.Entry<String, List<String>>> i = mHeaders.entrySet().iterator(); i.hasNext();) {
+                final Map.Entry<String, List<String>> header = i.next();
+                if (header.getKey().equalsIgnoreCase(name) && !header.getValue().isEmpty()) {
+                    return header.getValue().get(0);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaders() {
+            return mHeaders;
+        }
+
+        @Override
+        public InputStream getContent() {
+            return mContent;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void abort() {
+        }
+    }
+}
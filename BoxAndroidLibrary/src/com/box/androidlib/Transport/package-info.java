@@ -0,0 +1,6 @@
+/**
+HTTP transport classes shared by all requests against Box API. You need not use these directly.
+@author developers@box.net
+ */
+package com.box.androidlib.Transport;
+
@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.Utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+
+/**
+ * Decodes base64 text from an underlying stream as it is read. Whitespace is skipped. Decoding stops at the first byte that is neither base64 nor whitespace
+ * (for example the '&lt;' of a closing XML tag), which is left unread in the underlying stream so the caller can continue reading from there.
+ * 
+ * @author developers@box.net
+ */
+public class Base64InputStream extends FilterInputStream {
+
+    /** Marks bytes that are not part of the base64 alphabet. */
+    private static final int INVALID = -1;
+    /** Marks whitespace bytes. */
+    private static final int WHITESPACE = -2;
+    /** Marks the padding byte. */
+    private static final int PADDING = -3;
+    /** Number of 4 character groups decoded per read from the underlying stream. */
+    private static final int GROUPS_PER_READ = 1024;
+    /** Minimum size of the pushback buffer of the underlying stream. */
+    public static final int PUSHBACK_BUFFER_SIZE = GROUPS_PER_READ * 4;
+    /** Maps input bytes to their 6 bit value, or one of INVALID, WHITESPACE, PADDING. */
+    private static final int[] DECODE_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < DECODE_TABLE.length; i++) {
+            DECODE_TABLE[i] = INVALID;
+        }
+        final String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            DECODE_TABLE[alphabet.charAt(i)] = i;
+        }
+        // URL-safe alphabet
+        DECODE_TABLE['-'] = DECODE_TABLE['+'];
+        DECODE_TABLE['_'] = DECODE_TABLE['/'];
+        DECODE_TABLE['='] = PADDING;
+        DECODE_TABLE[' '] = WHITESPACE;
+        DECODE_TABLE['\t'] = WHITESPACE;
+        DECODE_TABLE['\r'] = WHITESPACE;
+        DECODE_TABLE['\n'] = WHITESPACE;
+    }
+
+    /** The underlying stream, through which the terminating byte is pushed back. */
+    private final PushbackInputStream mIn;
+    /** Raw base64 bytes read from the underlying stream. */
+    private final byte[] mInBuffer = new byte[GROUPS_PER_READ * 4];
+    /** Decoded bytes not yet returned. */
+    private final byte[] mOutBuffer = new byte[GROUPS_PER_READ * 3];
+    /** Read position in mOutBuffer. */
+    private int mOutPos;
+    /** Number of valid bytes in mOutBuffer. */
+    private int mOutLength;
+    /** 6 bit values of a group that is not complete yet. */
+    private int mGroup;
+    /** Number of characters in mGroup. */
+    private int mGroupLength;
+    /** Whether the end of the base64 text has been reached. */
+    private boolean mEnd;
+
+    /**
+     * Create a stream that decodes base64 text read from the given stream.
+     * 
+     * @param in
+     *            Stream of base64 text, with a pushback buffer of at least {@link #PUSHBACK_BUFFER_SIZE} bytes. The bytes following the text are pushed back
+     *            into this stream.
+     */
+    public Base64InputStream(final PushbackInputStream in) {
+        super(in);
+        mIn = in;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] b = new byte[1];
+        int n;
+        while ((n = read(b, 0, 1)) == 0) {
+            continue;
+        }
+        return n < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (mOutPos == mOutLength) {
+            if (mEnd) {
+                return -1;
+            }
+            fill();
+        }
+        final int n = Math.min(len, mOutLength - mOutPos);
+        System.arraycopy(mOutBuffer, mOutPos, b, off, n);
+        mOutPos += n;
+        return n;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        final byte[] b = new byte[(int) Math.min(n, mOutBuffer.length)];
+        long skipped = 0;
+        int read;
+        while (skipped < n && (read = read(b, 0, (int) Math.min(n - skipped, b.length))) > 0) {
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return mOutLength - mOutPos;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Decode the next chunk of base64 text into mOutBuffer.
+     * 
+     * @throws IOException
+     *             if the underlying stream cannot be read
+     */
+    private void fill() throws IOException {
+        mOutPos = 0;
+        mOutLength = 0;
+        final int n = mIn.read(mInBuffer, 0, mInBuffer.length);
+        if (n < 0) {
+            mEnd = true;
+            flushPartialGroup();
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            final int value = DECODE_TABLE[mInBuffer[i] & 0xff];
+            if (value >= 0) {
+                mGroup = (mGroup << 6) | value;
+                if (++mGroupLength == 4) {
+                    mOutBuffer[mOutLength++] = (byte) (mGroup >> 16);
+                    mOutBuffer[mOutLength++] = (byte) (mGroup >> 8);
+                    mOutBuffer[mOutLength++] = (byte) mGroup;
+                    mGroup = 0;
+                    mGroupLength = 0;
+                }
+            }
+            else if (value == INVALID) {
+                mIn.unread(mInBuffer, i, n - i);
+                mEnd = true;
+                break;
+            }
+            else if (value == PADDING) {
+                flushPartialGroup();
+            }
+        }
+        if (mEnd) {
+            flushPartialGroup();
+        }
+    }
+
+    /**
+     * Decode the bytes of an incomplete group at the end of the text.
+     */
+    private void flushPartialGroup() {
+        if (mGroupLength == 2) {
+            mOutBuffer[mOutLength++] = (byte) (mGroup >> 4);
+        }
+        else if (mGroupLength == 3) {
+            mOutBuffer[mOutLength++] = (byte) (mGroup >> 10);
+            mOutBuffer[mOutLength++] = (byte) (mGroup >> 2);
+        }
+        mGroup = 0;
+        mGroupLength = 0;
+    }
+}
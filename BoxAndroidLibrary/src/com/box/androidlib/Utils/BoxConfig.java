@@ -11,6 +11,9 @@
  ******************************************************************************/
 package com.box.androidlib.Utils;
 
+import com.box.androidlib.Transport.BoxHttpTransport;
+import com.box.androidlib.Transport.DefaultHttpTransport;
+
 /**
  * Class for retrieving configuration parameters.
  * 
@@ -41,6 +44,24 @@ public final class BoxConfig {
     private static final String DOWNLOAD_URL_PATH = "/api/1.0/download/";
     /** Default User-Agent String. */
     private static final String USER_AGENT = "BoxAndroidLibrary";
+    /** Default maximum number of pooled connections to a single host other than the API, upload and download hosts. */
+    private static final int MAX_CONNECTIONS_PER_HOST = 4;
+    /** Default maximum number of pooled connections to the API host. */
+    private static final int MAX_API_CONNECTIONS = 4;
+    /** Default maximum number of pooled connections to the upload host. */
+    private static final int MAX_UPLOAD_CONNECTIONS = 2;
+    /** Default maximum number of pooled connections to the download host, enough for two segmented downloads. */
+    private static final int MAX_DOWNLOAD_CONNECTIONS = 8;
+    /** Default maximum number of pooled connections across all hosts. */
+    private static final int MAX_TOTAL_CONNECTIONS = 12;
+    /** Default time in milliseconds an idle pooled connection is kept alive. */
+    private static final long IDLE_CONNECTION_TIMEOUT = 30000;
+    /** Default maximum number of asynchronous API requests running at the same time. */
+    private static final int MAX_CONCURRENT_REQUESTS = 4;
+    /** Default maximum number of asynchronous downloads and uploads running at the same time. */
+    private static final int MAX_CONCURRENT_TRANSFERS = 2;
+    /** Default maximum number of connections used by a single segmented download. */
+    private static final int MAX_DOWNLOAD_SEGMENTS = 4;
 
     /** API url scheme. */
     private String mApiUrlScheme = API_URL_SCHEME;
@@ -69,6 +90,30 @@ public final class BoxConfig {
 
     /** Time to wait before connection timeout. */
     private static int mConnectionTimout = 0;
+    /** Maximum number of pooled connections to a single host other than the API, upload and download hosts. */
+    private int mMaxConnectionsPerHost = MAX_CONNECTIONS_PER_HOST;
+    /** Maximum number of pooled connections to the API host. */
+    private int mMaxApiConnections = MAX_API_CONNECTIONS;
+    /** Maximum number of pooled connections to the upload host. */
+    private int mMaxUploadConnections = MAX_UPLOAD_CONNECTIONS;
+    /** Maximum number of pooled connections to the download host. */
+    private int mMaxDownloadConnections = MAX_DOWNLOAD_CONNECTIONS;
+    /** Maximum number of pooled connections across all hosts. */
+    private int mMaxTotalConnections = MAX_TOTAL_CONNECTIONS;
+    /** Time in milliseconds an idle pooled connection is kept alive. */
+    private long mIdleConnectionTimeout = IDLE_CONNECTION_TIMEOUT;
+    /** Transport through which all HTTP requests are made. */
+    private BoxHttpTransport mHttpTransport;
+    /** Cache of API responses, or null if responses are not cached. */
+    private MetadataCache mMetadataCache;
+    /** Shares identical read requests in flight, or null if they are not shared. */
+    private RequestCoalescer mRequestCoalescer;
+    /** Maximum number of asynchronous API requests running at the same time. */
+    private int mMaxConcurrentRequests = MAX_CONCURRENT_REQUESTS;
+    /** Maximum number of asynchronous downloads and uploads running at the same time. */
+    private int mMaxConcurrentTransfers = MAX_CONCURRENT_TRANSFERS;
+    /** Maximum number of connections used by a single segmented download. */
+    private int mMaxDownloadSegments = MAX_DOWNLOAD_SEGMENTS;
 
     /** Singleton instance. */
     private static BoxConfig mInstance;
@@ -300,6 +345,251 @@ public final class BoxConfig {
         return mUserAgent;
     }
 
+    /**
+     * Set the maximum number of connections to a single host other than the API, upload and download hosts that are kept in the connection pool. Default is
+     * 4. Takes effect when the pool is created, see {@link com.box.androidlib.Transport.BoxHttpClient#shutdown()}.
+     * 
+     * @param max
+     *            Maximum connections per host
+     */
+    public void setMaxConnectionsPerHost(final int max) {
+        mMaxConnectionsPerHost = max;
+    }
+
+    /**
+     * Get the maximum number of connections to a single host other than the API, upload and download hosts that are kept in the connection pool.
+     * 
+     * @return Maximum connections per host
+     */
+    public int getMaxConnectionsPerHost() {
+        return mMaxConnectionsPerHost;
+    }
+
+    /**
+     * Set the maximum number of connections to the API host that are kept in the connection pool. Default is 4. Where the API, upload and download hosts are
+     * the same host, as the API and download hosts are by default, that host gets the sum of their limits. Takes effect when the pool is created, see
+     * {@link com.box.androidlib.Transport.BoxHttpClient#shutdown()}.
+     * 
+     * @param max
+     *            Maximum connections to the API host
+     */
+    public void setMaxApiConnections(final int max) {
+        mMaxApiConnections = max;
+    }
+
+    /**
+     * Get the maximum number of connections to the API host that are kept in the connection pool.
+     * 
+     * @return Maximum connections to the API host
+     */
+    public int getMaxApiConnections() {
+        return mMaxApiConnections;
+    }
+
+    /**
+     * Set the maximum number of connections to the upload host that are kept in the connection pool. Default is 2. Takes effect when the pool is created, see
+     * {@link com.box.androidlib.Transport.BoxHttpClient#shutdown()}.
+     * 
+     * @param max
+     *            Maximum connections to the upload host
+     */
+    public void setMaxUploadConnections(final int max) {
+        mMaxUploadConnections = max;
+    }
+
+    /**
+     * Get the maximum number of connections to the upload host that are kept in the connection pool.
+     * 
+     * @return Maximum connections to the upload host
+     */
+    public int getMaxUploadConnections() {
+        return mMaxUploadConnections;
+    }
+
+    /**
+     * Set the maximum number of connections to the download host that are kept in the connection pool. Default is 8, so that two segmented downloads can use
+     * all their segments. Takes effect when the pool is created, see {@link com.box.androidlib.Transport.BoxHttpClient#shutdown()}.
+     * 
+     * @param max
+     *            Maximum connections to the download host
+     */
+    public void setMaxDownloadConnections(final int max) {
+        mMaxDownloadConnections = max;
+    }
+
+    /**
+     * Get the maximum number of connections to the download host that are kept in the connection pool.
+     * 
+     * @return Maximum connections to the download host
+     */
+    public int getMaxDownloadConnections() {
+        return mMaxDownloadConnections;
+    }
+
+    /**
+     * Set the maximum number of connections kept in the connection pool across all hosts. Default is 12. Takes effect when the pool is created, see
+     * {@link com.box.androidlib.Transport.BoxHttpClient#shutdown()}.
+     * 
+     * @param max
+     *            Maximum connections in total
+     */
+    public void setMaxTotalConnections(final int max) {
+        mMaxTotalConnections = max;
+    }
+
+    /**
+     * Get the maximum number of connections kept in the connection pool across all hosts.
+     * 
+     * @return Maximum connections in total
+     */
+    public int getMaxTotalConnections() {
+        return mMaxTotalConnections;
+    }
+
+    /**
+     * Set the amount of time in milliseconds that an idle pooled connection is kept alive before it is closed. Idle connections are closed in the background
+     * within one and a half times this. Default is 30 seconds.
+     * 
+     * @param timeout
+     *            Idle connection timeout
+     */
+    public void setIdleConnectionTimeout(final long timeout) {
+        mIdleConnectionTimeout = timeout;
+    }
+
+    /**
+     * Get the amount of time in milliseconds that an idle pooled connection is kept alive before it is closed.
+     * 
+     * @return Idle connection timeout
+     */
+    public long getIdleConnectionTimeout() {
+        return mIdleConnectionTimeout;
+    }
+
+    /**
+     * Set the maximum number of asynchronous API requests made through {@link com.box.androidlib.Box} that run at the same time. Further requests are queued.
+     * Default is 4.
+     * 
+     * @param max
+     *            Maximum concurrent requests
+     */
+    public void setMaxConcurrentRequests(final int max) {
+        mMaxConcurrentRequests = max;
+    }
+
+    /**
+     * Get the maximum number of asynchronous API requests that run at the same time.
+     * 
+     * @return Maximum concurrent requests
+     */
+    public int getMaxConcurrentRequests() {
+        return mMaxConcurrentRequests;
+    }
+
+    /**
+     * Set the maximum number of asynchronous downloads and uploads made through {@link com.box.androidlib.Box} that run at the same time. Further transfers
+     * are queued. Default is 2.
+     * 
+     * @param max
+     *            Maximum concurrent transfers
+     */
+    public void setMaxConcurrentTransfers(final int max) {
+        mMaxConcurrentTransfers = max;
+    }
+
+    /**
+     * Get the maximum number of asynchronous downloads and uploads that run at the same time.
+     * 
+     * @return Maximum concurrent transfers
+     */
+    public int getMaxConcurrentTransfers() {
+        return mMaxConcurrentTransfers;
+    }
+
+    /**
+     * Set the maximum number of connections a single segmented download may use to fetch parts of the file in parallel. Default is 4. The download starts
+     * with one connection and adds more only while doing so increases throughput.
+     * 
+     * @param max
+     *            Maximum segments per download
+     */
+    public void setMaxDownloadSegments(final int max) {
+        mMaxDownloadSegments = max;
+    }
+
+    /**
+     * Get the maximum number of connections a single segmented download may use.
+     * 
+     * @return Maximum segments per download
+     */
+    public int getMaxDownloadSegments() {
+        return mMaxDownloadSegments;
+    }
+
+    /**
+     * Set the transport through which all HTTP requests (API calls, downloads and uploads) are made. Default is {@link DefaultHttpTransport}.
+     * 
+     * @param transport
+     *            Transport to use, or null to restore the default
+     */
+    public synchronized void setHttpTransport(final BoxHttpTransport transport) {
+        mHttpTransport = transport;
+    }
+
+    /**
+     * Get the transport through which all HTTP requests are made.
+     * 
+     * @return the transport
+     */
+    public synchronized BoxHttpTransport getHttpTransport() {
+        if (mHttpTransport == null) {
+            mHttpTransport = new DefaultHttpTransport();
+        }
+        return mHttpTransport;
+    }
+
+    /**
+     * Set the cache from which get_account_tree, get_file_info, get_comments, get_versions and get_collaborations responses are answered. Default is no
+     * cache.
+     * 
+     * @param cache
+     *            Cache to use, or null to stop caching
+     */
+    public synchronized void setMetadataCache(final MetadataCache cache) {
+        mMetadataCache = cache;
+    }
+
+    /**
+     * Get the cache of API responses.
+     * 
+     * @return the cache, or null if responses are not cached
+     */
+    public synchronized MetadataCache getMetadataCache() {
+        return mMetadataCache;
+    }
+
+    /**
+     * Set the coalescer through which identical get_account_tree, get_file_info and export_tags requests made at the same time share one request. Default is
+     * none, so every call makes its own request.
+     * 
+     * Callers that share a request get the same response parser and DAOs. Copy them before modifying them if another part of the app may be reading them.
+     * 
+     * @param coalescer
+     *            Coalescer to use, or null to stop sharing requests
+     */
+    public synchronized void setRequestCoalescer(final RequestCoalescer coalescer) {
+        mRequestCoalescer = coalescer;
+    }
+
+    /**
+     * Get the coalescer of identical read requests.
+     * 
+     * @return the coalescer, or null if requests are not shared
+     */
+    public synchronized RequestCoalescer getRequestCoalescer() {
+        return mRequestCoalescer;
+    }
+
     /**
      * SHOULD NEVER BE ENABLED FOR PRODUCTION BUILDS
      * 
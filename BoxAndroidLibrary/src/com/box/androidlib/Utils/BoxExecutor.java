@@ -0,0 +1,328 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.Utils;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.os.Process;
+
+/**
+ * Bounded executor on which the asynchronous methods of {@link com.box.androidlib.Box} run. Work is split into two lanes, each with its own thread pool and
+ * FIFO queue, so that a burst of file transfers cannot starve the short metadata requests that a UI is waiting on:
+ * <ul>
+ * <li>{@link #LANE_INTERACTIVE} for API calls such as getAccountTree and getFileInfo, limited by {@link BoxConfig#getMaxConcurrentRequests()}</li>
+ * <li>{@link #LANE_TRANSFER} for downloads and uploads, limited by {@link BoxConfig#getMaxConcurrentTransfers()}. These threads run at background priority.</li>
+ * </ul>
+ * 
+ * @author developers@box.net
+ */
+public final class BoxExecutor {
+
+    /** Lane for interactive metadata requests. */
+    public static final int LANE_INTERACTIVE = 0;
+    /** Lane for bulk file transfers. */
+    public static final int LANE_TRANSFER = 1;
+    /** Number of lanes. */
+    private static final int LANE_COUNT = 2;
+    /** Names of the lanes, used in thread names. */
+    private static final String[] LANE_NAMES = {"interactive", "transfer"};
+
+    /** Singleton instance. */
+    private static BoxExecutor mInstance;
+
+    /** Thread pool of each lane. */
+    private final ThreadPoolExecutor[] mExecutors = new ThreadPoolExecutor[LANE_COUNT];
+    /**
+     * Permits of each lane, one per task that may run. A task takes a permit before it runs, so that a thread left over from before the limit was lowered
+     * waits instead of running its task above the limit.
+     */
+    private final LanePermits[] mPermits = new LanePermits[LANE_COUNT];
+    /** Limit each lane's permits were last set to. Guarded by the lane's executor. */
+    private final int[] mLimits = new int[LANE_COUNT];
+    /** Highest queue depth observed on each lane. */
+    private final AtomicInteger[] mLargestQueueDepths = new AtomicInteger[LANE_COUNT];
+
+    /**
+     * Private constructor.
+     */
+    private BoxExecutor() {
+        for (int lane = 0; lane < LANE_COUNT; lane++) {
+            final int maxConcurrency = getConfiguredConcurrency(lane);
+            mExecutors[lane] = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                new LaneThreadFactory(lane));
+            mPermits[lane] = new LanePermits(maxConcurrency);
+            mLimits[lane] = maxConcurrency;
+            mLargestQueueDepths[lane] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * Get a singleton instance.
+     * 
+     * @return instance of BoxExecutor
+     */
+    public static synchronized BoxExecutor getInstance() {
+        if (mInstance == null) {
+            mInstance = new BoxExecutor();
+        }
+        return mInstance;
+    }
+
+    /**
+     * Queue a task on a lane. Tasks on the same lane start in the order they were submitted.
+     * 
+     * @param lane
+     *            {@link #LANE_INTERACTIVE} or {@link #LANE_TRANSFER}
+     * @param task
+     *            The task to run
+     * @return A Future that can be used to cancel the task
+     */
+    public Future<?> submit(final int lane, final Runnable task) {
+        final ThreadPoolExecutor executor = mExecutors[lane];
+        final LanePermits permits = mPermits[lane];
+        applyConcurrency(lane);
+        final Future<?> future = executor.submit(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    permits.acquire();
+                }
+                catch (InterruptedException e) {
+                    // Cancelled while waiting for a permit.
+                    return;
+                }
+                try {
+                    task.run();
+                }
+                finally {
+                    permits.release();
+                }
+            }
+        });
+        final int queueDepth = getQueueDepth(lane);
+        int largest;
+        while (queueDepth > (largest = mLargestQueueDepths[lane].get())) {
+            if (mLargestQueueDepths[lane].compareAndSet(largest, queueDepth)) {
+                break;
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Queue a task on a lane and get a Cancelable for it. Canceling interrupts the task if it is running. If the task has not started yet, it is removed from
+     * the queue and onCancelledBeforeStart is run instead, so that the caller still gets to notify its listener. Exactly one of task and
+     * onCancelledBeforeStart is run, unless the task has already finished.
+     * 
+     * @param lane
+     *            {@link #LANE_INTERACTIVE} or {@link #LANE_TRANSFER}
+     * @param task
+     *            The task to run
+     * @param onCancelledBeforeStart
+     *            Run on the thread calling {@link Cancelable#cancel()} if the task is cancelled before it started.
+     * @return A Cancelable that allows you to try to cancel the task.
+     */
+    public Cancelable submit(final int lane, final Runnable task, final Runnable onCancelledBeforeStart) {
+        final AtomicBoolean claimed = new AtomicBoolean();
+        final Future<?> future = submit(lane, new Runnable() {
+
+            @Override
+            public void run() {
+                if (claimed.compareAndSet(false, true)) {
+                    task.run();
+                }
+            }
+        });
+        return new Cancelable() {
+
+            @Override
+            public boolean cancel() {
+                if (!future.cancel(true)) {
+                    return false;
+                }
+                if (claimed.compareAndSet(false, true)) {
+                    if (future instanceof Runnable) {
+                        mExecutors[lane].remove((Runnable) future);
+                    }
+                    onCancelledBeforeStart.run();
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Get the number of tasks waiting to start on a lane, including tasks that a thread has taken from the queue but that wait for a permit.
+     * 
+     * @param lane
+     *            {@link #LANE_INTERACTIVE} or {@link #LANE_TRANSFER}
+     * @return number of queued tasks
+     */
+    public int getQueueDepth(final int lane) {
+        return mExecutors[lane].getQueue().size() + mPermits[lane].getQueueLength();
+    }
+
+    /**
+     * Get the highest number of tasks that have been waiting to start on a lane at the same time.
+     * 
+     * @param lane
+     *            {@link #LANE_INTERACTIVE} or {@link #LANE_TRANSFER}
+     * @return highest queue depth observed
+     */
+    public int getLargestQueueDepth(final int lane) {
+        return mLargestQueueDepths[lane].get();
+    }
+
+    /**
+     * Get the number of tasks currently running on a lane.
+     * 
+     * @param lane
+     *            {@link #LANE_INTERACTIVE} or {@link #LANE_TRANSFER}
+     * @return number of running tasks
+     */
+    public int getActiveCount(final int lane) {
+        synchronized (mExecutors[lane]) {
+            return mLimits[lane] - mPermits[lane].availablePermits();
+        }
+    }
+
+    /**
+     * Get the number of tasks that have finished on a lane.
+     * 
+     * @param lane
+     *            {@link #LANE_INTERACTIVE} or {@link #LANE_TRANSFER}
+     * @return number of completed tasks
+     */
+    public long getCompletedTaskCount(final int lane) {
+        return mExecutors[lane].getCompletedTaskCount();
+    }
+
+    /**
+     * Resize the thread pool and the permits of a lane if its limit in {@link BoxConfig} has changed. Threads above a lowered limit exit once they are idle.
+     * Until then the permits keep them from running tasks above the limit.
+     * 
+     * @param lane
+     *            the lane
+     */
+    private void applyConcurrency(final int lane) {
+        final ThreadPoolExecutor executor = mExecutors[lane];
+        final int maxConcurrency = getConfiguredConcurrency(lane);
+        if (executor.getCorePoolSize() == maxConcurrency) {
+            return;
+        }
+        synchronized (executor) {
+            // The maximum pool size may never be smaller than the core pool size, so the order of the calls matters.
+            if (maxConcurrency > executor.getMaximumPoolSize()) {
+                executor.setMaximumPoolSize(maxConcurrency);
+                executor.setCorePoolSize(maxConcurrency);
+            }
+            else {
+                executor.setCorePoolSize(maxConcurrency);
+                executor.setMaximumPoolSize(maxConcurrency);
+            }
+            final int change = maxConcurrency - mLimits[lane];
+            if (change > 0) {
+                mPermits[lane].release(change);
+            }
+            else if (change < 0) {
+                // Running tasks keep their permits, so the number of permits goes below zero until enough of them are done.
+                mPermits[lane].reducePermits(-change);
+            }
+            mLimits[lane] = maxConcurrency;
+        }
+    }
+
+    /**
+     * Get the concurrency limit of a lane from {@link BoxConfig}.
+     * 
+     * @param lane
+     *            the lane
+     * @return maximum number of tasks that may run on the lane at the same time
+     */
+    private static int getConfiguredConcurrency(final int lane) {
+        final int maxConcurrency;
+        if (lane == LANE_TRANSFER) {
+            maxConcurrency = BoxConfig.getInstance().getMaxConcurrentTransfers();
+        }
+        else {
+            maxConcurrency = BoxConfig.getInstance().getMaxConcurrentRequests();
+        }
+        return Math.max(1, maxConcurrency);
+    }
+
+    /**
+     * Fair semaphore whose number of permits can be lowered without waiting for them.
+     */
+    private static final class LanePermits extends Semaphore {
+
+        /** Serial version UID. */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Constructor.
+         * 
+         * @param permits
+         *            initial number of permits
+         */
+        public LanePermits(final int permits) {
+            super(permits, true);
+        }
+
+        @Override
+        public void reducePermits(final int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+
+    /**
+     * Creates named threads for a lane. Transfer threads run at background priority so that they do not compete with the UI thread.
+     */
+    private static class LaneThreadFactory implements ThreadFactory {
+
+        /** The lane. */
+        private final int mLane;
+        /** Number of threads created so far. */
+        private final AtomicInteger mThreadCount = new AtomicInteger();
+
+        /**
+         * Constructor.
+         * 
+         * @param lane
+         *            the lane
+         */
+        public LaneThreadFactory(final int lane) {
+            mLane = lane;
+        }
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            return new Thread("Box-" + LANE_NAMES[mLane] + "-" + mThreadCount.incrementAndGet()) {
+
+                @Override
+                public void run() {
+                    if (mLane == LANE_TRANSFER) {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    }
+                    r.run();
+                }
+            };
+        }
+    }
+}
@@ -24,6 +24,12 @@ public final class BoxUtils {
     private static final long BYTES_IN_MEGABYTE = 1048576;
     /** number of bytes in a gigabyte (1073741824). */
     private static final long BYTES_IN_GIGABYTE = 1073741824;
+    /** integers below this value are exact as floats. */
+    private static final long FLOAT_EXACT_LIMIT = 1L << 24;
+    /** powers of ten that are exact as floats. */
+    private static final float[] POWERS_OF_TEN = {1f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f};
+    /** digits used by {@link #toHexString(byte[])}. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
 
     /**
      * No instantiation allowed.
@@ -42,12 +48,7 @@ public final class BoxUtils {
      * @return parsed int value
      */
     public static int parseInt(final String string, final int defaultValue) {
-        try {
-            return Integer.parseInt(string);
-        }
-        catch (final Exception e) {
-            return defaultValue;
-        }
+        return parseInt((CharSequence) string, defaultValue);
     }
 
     /**
@@ -61,6 +62,35 @@ public final class BoxUtils {
         return parseInt(string, 0);
     }
 
+    /**
+     * Convert characters to an int if possible, without creating a String. Accepts what Integer.parseInt() accepts in base 10, and returns a specified
+     * default int value for anything else.
+     * 
+     * @param chars
+     *            Characters to be parsed
+     * @param defaultValue
+     *            default value to be returned if there is a parse error
+     * @return parsed int value
+     */
+    public static int parseInt(final CharSequence chars, final int defaultValue) {
+        final long value = parseLong(chars, Long.MIN_VALUE);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            return defaultValue;
+        }
+        return (int) value;
+    }
+
+    /**
+     * Convert characters to an int if possible, without creating a String. Return 0 if an error is encountered.
+     * 
+     * @param chars
+     *            Characters to be parsed
+     * @return parsed int value
+     */
+    public static int parseInt(final CharSequence chars) {
+        return parseInt(chars, 0);
+    }
+
     /**
      * Convert a String to a long if possible. Instead of throwing an exception like Long.parseLong() does, return a specified default long value if an error is
      * encountered.
@@ -72,12 +102,7 @@ public final class BoxUtils {
      * @return parsed long value
      */
     public static long parseLong(final String string, final long defaultValue) {
-        try {
-            return Long.parseLong(string);
-        }
-        catch (final Exception e) {
-            return defaultValue;
-        }
+        return parseLong((CharSequence) string, defaultValue);
     }
 
     /**
@@ -91,6 +116,60 @@ public final class BoxUtils {
         return parseLong(string, 0L);
     }
 
+    /**
+     * Convert characters to a long if possible, without creating a String. Accepts what Long.parseLong() accepts in base 10, and returns a specified default
+     * long value for anything else.
+     * 
+     * @param chars
+     *            Characters to be parsed
+     * @param defaultValue
+     *            default value to be returned if there is a parse error
+     * @return parsed long value
+     */
+    public static long parseLong(final CharSequence chars, final long defaultValue) {
+        if (chars == null || chars.length() == 0) {
+            return defaultValue;
+        }
+        final int length = chars.length();
+        int i = 0;
+        boolean negative = false;
+        final char first = chars.charAt(0);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+            if (length == 1) {
+                return defaultValue;
+            }
+        }
+        // Accumulate negatively like Long.parseLong(), so that Long.MIN_VALUE can be represented.
+        final long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        final long multiplyLimit = limit / 10;
+        long result = 0;
+        for (; i < length; i++) {
+            final int digit = chars.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || result < multiplyLimit) {
+                return defaultValue;
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                return defaultValue;
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * Convert characters to a long if possible, without creating a String. Return 0 if an error is encountered.
+     * 
+     * @param chars
+     *            Characters to be parsed
+     * @return parsed long value
+     */
+    public static long parseLong(final CharSequence chars) {
+        return parseLong(chars, 0L);
+    }
+
     /**
      * Convert a String to a float if possible. Instead of throwing an exception like Float.parseFloat() does, return a specified default value if an error is
      * encountered
@@ -129,20 +208,86 @@ public final class BoxUtils {
      * @return the equivalent number of bytes.
      */
     public static long parseSizeString(final String string) {
-        long factor = 1;
-        final String string2 = string.toLowerCase().trim();
-        if (string2.endsWith("kb")) {
-            factor = BYTES_IN_KILOBYTE;
+        return parseSizeString((CharSequence) string);
+    }
+
+    /**
+     * Box API sometimes returns sizes as just the number of bytes, and sometimes returns sizes as strings like "7.4KB". This normalizes to a number of bytes.
+     * Plain numbers and simple sizes like "7.4 KB" are decoded without creating a String.
+     * 
+     * @param chars
+     *            The size string from Box API
+     * @return the equivalent number of bytes.
+     */
+    public static long parseSizeString(final CharSequence chars) {
+        int start = 0;
+        int end = chars.length();
+        while (start < end && chars.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && chars.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (end - start < 2 || Character.toLowerCase(chars.charAt(end - 1)) != 'b') {
+            return parseLong(chars);
         }
-        else if (string2.endsWith("mb")) {
-            factor = BYTES_IN_MEGABYTE;
+        final long factor;
+        switch (Character.toLowerCase(chars.charAt(end - 2))) {
+            case 'k':
+                factor = BYTES_IN_KILOBYTE;
+                break;
+            case 'm':
+                factor = BYTES_IN_MEGABYTE;
+                break;
+            case 'g':
+                factor = BYTES_IN_GIGABYTE;
+                break;
+            default:
+                return parseLong(chars);
         }
-        else if (string2.endsWith("gb")) {
-            factor = BYTES_IN_GIGABYTE;
+        end -= 2;
+        while (end > start && chars.charAt(end - 1) <= ' ') {
+            end--;
         }
-        else {
-            return parseLong(string);
+        // Digits with an optional decimal point. Both parts are exact as floats, so the quotient is what Float.parseFloat() returns.
+        long mantissa = 0;
+        int scale = -1;
+        int i = start;
+        for (; i < end && mantissa < FLOAT_EXACT_LIMIT; i++) {
+            final char c = chars.charAt(i);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                if (scale >= 0) {
+                    scale++;
+                }
+            }
+            else if (c == '.' && scale < 0) {
+                scale = 0;
+            }
+            else {
+                break;
+            }
         }
+        if (i == end && i > start && mantissa < FLOAT_EXACT_LIMIT && scale < POWERS_OF_TEN.length && !(scale == 0 && end - start == 1)) {
+            return (long) ((float) mantissa / POWERS_OF_TEN[Math.max(scale, 0)] * factor);
+        }
+        final String string2 = chars.toString().toLowerCase().trim();
         return (long) (BoxUtils.parseFloat(string2.replaceAll("kb", "").replaceAll("mb", "").replaceAll("gb", "").replaceAll("bytes", "").trim()) * factor);
     }
+
+    /**
+     * Format bytes, such as a digest, as a lower case hexadecimal string like the sha1 values returned by Box API.
+     * 
+     * @param bytes
+     *            The bytes to format
+     * @return hexadecimal string, two characters per byte
+     */
+    public static String toHexString(final byte[] bytes) {
+        final char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
 }
@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.Utils;
+
+/**
+ * Maps a fixed set of attribute names to int codes, so that DAOs can dispatch on the name of an attribute with a switch instead of comparing it with every
+ * name they know. The table grows until no two names share a slot, so a lookup costs one hash and one string comparison. Lookups do not allocate and are safe
+ * from any thread once the table has been filled.
+ * 
+ * @author developers@box.net
+ */
+public final class KeyTable {
+
+    /** Code returned by {@link #get(String)} for names that are not in the table. */
+    public static final int NOT_FOUND = -1;
+
+    /** Initial number of slots. */
+    private static final int INITIAL_SIZE = 16;
+    /** The table stops growing to avoid collisions at this number of slots, and falls back to probing. */
+    private static final int MAX_SIZE = 4096;
+
+    /** Names, indexed by slot. */
+    private String[] mKeys = new String[INITIAL_SIZE];
+    /** Codes, indexed by slot. */
+    private int[] mCodes = new int[INITIAL_SIZE];
+    /** Number of names in the table. */
+    private int mCount;
+
+    /**
+     * Add a name to the table. Meant to be called from static initializers only.
+     * 
+     * @param key
+     *            The attribute name
+     * @param code
+     *            The code to return for it, 0 or greater
+     */
+    public void put(final String key, final int code) {
+        while ((mCount + 1) * 2 > mKeys.length || (!isFree(mKeys, slot(key, mKeys.length), key) && mKeys.length < MAX_SIZE)) {
+            resize(mKeys.length * 2);
+        }
+        if (insert(mKeys, mCodes, key, code, true)) {
+            mCount++;
+        }
+    }
+
+    /**
+     * Get the code of a name.
+     * 
+     * @param key
+     *            The attribute name
+     * @return The code, or {@link #NOT_FOUND}
+     */
+    public int get(final String key) {
+        final int mask = mKeys.length - 1;
+        for (int i = slot(key, mKeys.length);; i = (i + 1) & mask) {
+            final String k = mKeys[i];
+            if (k == null) {
+                return NOT_FOUND;
+            }
+            if (k.equals(key)) {
+                return mCodes[i];
+            }
+        }
+    }
+
+    /**
+     * Move all names to a table of at least the given size, doubling it further while any two names would share a slot.
+     * 
+     * @param minSize
+     *            Minimum number of slots, a power of two
+     */
+    private void resize(final int minSize) {
+        int size = minSize;
+        while (true) {
+            final String[] keys = new String[size];
+            final int[] codes = new int[size];
+            boolean collisionFree = true;
+            for (int i = 0; i < mKeys.length; i++) {
+                if (mKeys[i] != null) {
+                    collisionFree &= isFree(keys, slot(mKeys[i], size), mKeys[i]);
+                    insert(keys, codes, mKeys[i], mCodes[i], false);
+                }
+            }
+            if (collisionFree || size >= MAX_SIZE) {
+                mKeys = keys;
+                mCodes = codes;
+                return;
+            }
+            size *= 2;
+        }
+    }
+
+    /**
+     * Store a name in a table, in its slot or the first free slot after it.
+     * 
+     * @param keys
+     *            Names of the table
+     * @param codes
+     *            Codes of the table
+     * @param key
+     *            The name
+     * @param code
+     *            The code
+     * @param replace
+     *            Whether to replace the code if the name is already there
+     * @return true if the name was not in the table yet
+     */
+    private static boolean insert(final String[] keys, final int[] codes, final String key, final int code, final boolean replace) {
+        final int mask = keys.length - 1;
+        int i = slot(key, keys.length);
+        while (keys[i] != null && !keys[i].equals(key)) {
+            i = (i + 1) & mask;
+        }
+        final boolean added = keys[i] == null;
+        if (added || replace) {
+            keys[i] = key;
+            codes[i] = code;
+        }
+        return added;
+    }
+
+    /**
+     * Check whether a slot is empty or already holds the name.
+     * 
+     * @param keys
+     *            Names of the table
+     * @param slot
+     *            The slot
+     * @param key
+     *            The name
+     * @return true if the name can be stored in the slot
+     */
+    private static boolean isFree(final String[] keys, final int slot, final String key) {
+        return keys[slot] == null || keys[slot].equals(key);
+    }
+
+    /**
+     * Get the preferred slot of a name.
+     * 
+     * @param key
+     *            The name
+     * @param size
+     *            Number of slots, a power of two
+     * @return The slot
+     */
+    private static int slot(final String key, final int size) {
+        final int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (size - 1);
+    }
+}
@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.Utils;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * List of longs backed by a long[], so that values are not boxed while stored. It can be used as a List&lt;Long&gt;, which boxes values as they are read, or
+ * through {@link #getLong(int)} and {@link #addLong(long)}, which do not. An empty list holds no array. Not thread safe.
+ * 
+ * @author developers@box.net
+ */
+public final class LongArrayList extends AbstractList<Long> implements RandomAccess, Serializable {
+
+    /**
+     * Serialialization version id.
+     */
+    private static final long serialVersionUID = 1L;
+    /** Shared array of empty lists. */
+    private static final long[] EMPTY = new long[0];
+    /** Capacity of the array once the first value is added. */
+    private static final int MIN_CAPACITY = 4;
+
+    /** The values, followed by unused capacity. */
+    private long[] mValues = EMPTY;
+    /** Number of values. */
+    private int mSize;
+
+    /**
+     * Get a value without boxing it.
+     * 
+     * @param index
+     *            Index of the value
+     * @return The value
+     */
+    public long getLong(final int index) {
+        checkIndex(index, mSize);
+        return mValues[index];
+    }
+
+    /**
+     * Append a value without boxing it.
+     * 
+     * @param value
+     *            The value
+     */
+    public void addLong(final long value) {
+        ensureCapacity(mSize + 1);
+        mValues[mSize++] = value;
+        modCount++;
+    }
+
+    /**
+     * Check whether the list contains a value.
+     * 
+     * @param value
+     *            The value
+     * @return true if the list contains it
+     */
+    public boolean containsLong(final long value) {
+        for (int i = 0; i < mSize; i++) {
+            if (mValues[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Shrink the array to the number of values, releasing the unused capacity.
+     */
+    public void trimToSize() {
+        if (mValues.length > mSize) {
+            final long[] values = mSize == 0 ? EMPTY : new long[mSize];
+            System.arraycopy(mValues, 0, values, 0, mSize);
+            mValues = values;
+        }
+    }
+
+    @Override
+    public Long get(final int index) {
+        return Long.valueOf(getLong(index));
+    }
+
+    @Override
+    public Long set(final int index, final Long value) {
+        final Long previous = get(index);
+        mValues[index] = value.longValue();
+        return previous;
+    }
+
+    @Override
+    public void add(final int index, final Long value) {
+        checkIndex(index, mSize + 1);
+        ensureCapacity(mSize + 1);
+        System.arraycopy(mValues, index, mValues, index + 1, mSize - index);
+        mValues[index] = value.longValue();
+        mSize++;
+        modCount++;
+    }
+
+    @Override
+    public Long remove(final int index) {
+        final Long previous = get(index);
+        System.arraycopy(mValues, index + 1, mValues, index, mSize - index - 1);
+        mSize--;
+        modCount++;
+        return previous;
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    @Override
+    public void clear() {
+        mSize = 0;
+        modCount++;
+    }
+
+    /**
+     * Grow the array if needed.
+     * 
+     * @param capacity
+     *            Number of values the array needs to hold
+     */
+    private void ensureCapacity(final int capacity) {
+        if (capacity > mValues.length) {
+            final long[] values = new long[Math.max(capacity, Math.max(MIN_CAPACITY, mValues.length * 2))];
+            System.arraycopy(mValues, 0, values, 0, mSize);
+            mValues = values;
+        }
+    }
+
+    /**
+     * Check that an index is in range.
+     * 
+     * @param index
+     *            The index
+     * @param limit
+     *            The first index out of range
+     */
+    private static void checkIndex(final int index, final int limit) {
+        if (index < 0 || index >= limit) {
+            throw new IndexOutOfBoundsException("Index: " + index);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.Utils;
+
+/**
+ * Hash map from long keys, such as Box ids, to objects. Keys are stored unboxed, so lookups do not allocate. Null values are not supported. Not thread safe.
+ * 
+ * @param <V>
+ *            Type of the values
+ * @author developers@box.net
+ */
+public final class LongHashMap<V> {
+
+    /** Initial number of slots. */
+    private static final int INITIAL_SIZE = 16;
+
+    /** Keys, indexed by slot. */
+    private long[] mKeys;
+    /** Values, indexed by slot. A null value marks an empty slot. */
+    private Object[] mValues;
+    /** Number of entries. */
+    private int mSize;
+
+    /**
+     * Create an empty map.
+     */
+    public LongHashMap() {
+        this(INITIAL_SIZE);
+    }
+
+    /**
+     * Create an empty map with room for the given number of entries before it needs to grow.
+     * 
+     * @param capacity
+     *            Expected number of entries
+     */
+    public LongHashMap(final int capacity) {
+        int size = INITIAL_SIZE;
+        while (size < capacity * 2) {
+            size *= 2;
+        }
+        mKeys = new long[size];
+        mValues = new Object[size];
+    }
+
+    /**
+     * Get the value for a key.
+     * 
+     * @param key
+     *            The key
+     * @return The value, or null if the key is not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V get(final long key) {
+        final int mask = mKeys.length - 1;
+        for (int i = slot(key, mask);; i = (i + 1) & mask) {
+            if (mValues[i] == null) {
+                return null;
+            }
+            if (mKeys[i] == key) {
+                return (V) mValues[i];
+            }
+        }
+    }
+
+    /**
+     * Check whether a key is in the map.
+     * 
+     * @param key
+     *            The key
+     * @return true if the map has a value for the key
+     */
+    public boolean containsKey(final long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Set the value for a key.
+     * 
+     * @param key
+     *            The key
+     * @param value
+     *            The value, not null
+     * @return The previous value, or null if the key was not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V put(final long key, final V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("null values are not supported");
+        }
+        if ((mSize + 1) * 2 > mKeys.length) {
+            resize(mKeys.length * 2);
+        }
+        final int mask = mKeys.length - 1;
+        int i = slot(key, mask);
+        while (mValues[i] != null) {
+            if (mKeys[i] == key) {
+                final V previous = (V) mValues[i];
+                mValues[i] = value;
+                return previous;
+            }
+            i = (i + 1) & mask;
+        }
+        mKeys[i] = key;
+        mValues[i] = value;
+        mSize++;
+        return null;
+    }
+
+    /**
+     * Remove a key from the map.
+     * 
+     * @param key
+     *            The key
+     * @return The value it had, or null if the key was not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(final long key) {
+        final int mask = mKeys.length - 1;
+        int i = slot(key, mask);
+        while (mValues[i] != null && mKeys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (mValues[i] == null) {
+            return null;
+        }
+        final V previous = (V) mValues[i];
+        mValues[i] = null;
+        mSize--;
+        // Shift back the entries after the removed one that would not be found past the new gap otherwise.
+        for (int j = (i + 1) & mask; mValues[j] != null; j = (j + 1) & mask) {
+            final int k = slot(mKeys[j], mask);
+            if (i <= j ? (k <= i || k > j) : (k <= i && k > j)) {
+                mKeys[i] = mKeys[j];
+                mValues[i] = mValues[j];
+                mValues[j] = null;
+                i = j;
+            }
+        }
+        return previous;
+    }
+
+    /**
+     * Get the number of entries.
+     * 
+     * @return number of entries
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public void clear() {
+        for (int i = 0; i < mValues.length; i++) {
+            mValues[i] = null;
+        }
+        mSize = 0;
+    }
+
+    /**
+     * Move all entries to a table of the given size.
+     * 
+     * @param size
+     *            Number of slots, a power of two
+     */
+    private void resize(final int size) {
+        final long[] keys = mKeys;
+        final Object[] values = mValues;
+        mKeys = new long[size];
+        mValues = new Object[size];
+        final int mask = size - 1;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                int j = slot(keys[i], mask);
+                while (mValues[j] != null) {
+                    j = (j + 1) & mask;
+                }
+                mKeys[j] = keys[i];
+                mValues[j] = values[i];
+            }
+        }
+    }
+
+    /**
+     * Get the preferred slot of a key.
+     * 
+     * @param key
+     *            The key
+     * @param mask
+     *            Number of slots minus one
+     * @return The slot
+     */
+    private static int slot(final long key, final int mask) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
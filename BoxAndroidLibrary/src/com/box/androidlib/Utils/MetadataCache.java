@@ -0,0 +1,835 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.Utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import com.box.androidlib.Box;
+
+/**
+ * Cache of Box API responses that are read often and change rarely: get_account_tree, get_file_info, get_comments, get_versions and get_collaborations. It is
+ * off unless set with {@link BoxConfig#setMetadataCache(MetadataCache)}, after which {@link com.box.androidlib.BoxSynchronous} (and so
+ * {@link com.box.androidlib.Box}) answers these requests from the cache while the response is younger than the time to live of its action.
+ * 
+ * Responses are kept as the XML Box sent and parsed again on every hit, so callers get their own DAOs and can modify them freely. Recently used responses are
+ * kept in memory up to a number of bytes, and all responses are also written to a directory, up to a number of bytes, so that they survive the process.
+ * 
+ * Each response is stored with the ids of the folders and files it contains. When {@link com.box.androidlib.BoxSynchronous} renames, moves, copies, deletes,
+ * creates, uploads, describes or tags an item successfully, the responses containing the item or the destination folder are dropped.
+ * 
+ * Cached responses include the contents of the user's account. The disk tier only stores a hash of the request URLs, which contain the auth token, but keep
+ * the directory in the app's private storage, such as under Context.getCacheDir(), and call {@link #clear()} on logout.
+ * 
+ * Files are read and written outside the lock of the cache, so a slow disk does not hold up requests answered from memory.
+ * 
+ * @author developers@box.net
+ */
+public final class MetadataCache {
+
+    /** get_account_tree action. */
+    public static final String ACTION_GET_ACCOUNT_TREE = "get_account_tree";
+    /** get_file_info action. */
+    public static final String ACTION_GET_FILE_INFO = "get_file_info";
+    /** get_comments action. */
+    public static final String ACTION_GET_COMMENTS = "get_comments";
+    /** get_versions action. */
+    public static final String ACTION_GET_VERSIONS = "get_versions";
+    /** get_collaborations action. */
+    public static final String ACTION_GET_COLLABORATIONS = "get_collaborations";
+
+    /** Default time to live of trees and comments, which change the most. */
+    private static final long SHORT_TIME_TO_LIVE = 60 * 1000;
+    /** Default time to live of file info, versions and collaborations. */
+    private static final long LONG_TIME_TO_LIVE = 5 * 60 * 1000;
+    /** Approximate memory used by an entry besides its response and ids. */
+    private static final int ENTRY_OVERHEAD = 128;
+    /** Largest share of the memory bound a single response may take. Larger responses are only kept on disk. */
+    private static final int MAX_MEMORY_ENTRY_FRACTION = 4;
+    /** First bytes of every cache file ("BoxD"). Files of the earlier format, which held the request URL, are deleted when the directory is read. */
+    private static final int FILE_MAGIC = 0x426f7844;
+    /** Suffix of cache files. */
+    private static final String FILE_SUFFIX = ".cache";
+    /** Ids of an entry that contains no folders or files. */
+    private static final long[] NO_IDS = new long[0];
+
+    /** Maximum bytes of responses kept in memory. */
+    private final long mMaxMemoryBytes;
+    /** Directory of the disk tier, or null if there is none. */
+    private final File mDirectory;
+    /** Maximum bytes of files in the disk tier. */
+    private final long mMaxDiskBytes;
+    /** Time to live in milliseconds by action. Actions without one are not cached. */
+    private final HashMap<String, Long> mTimesToLive = new HashMap<String, Long>();
+    /** Entries held in memory by key, least recently used first. */
+    private final LinkedHashMap<String, Entry> mMemory = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    /** Entries of the disk tier by hash of their key, least recently used first, without their responses. Loaded on first use. */
+    private LinkedHashMap<String, Entry> mDisk;
+    /** Held while the directory is read, so that it is read once. The lock of the cache is not held meanwhile. */
+    private final Object mDiskLoadLock = new Object();
+    /** Bytes held in memory. */
+    private long mMemoryBytes;
+    /** Bytes held on disk. */
+    private long mDiskBytes;
+    /** Number of requests answered from the cache. */
+    private long mHitCount;
+    /** Number of requests answered from the disk tier. Included in mHitCount. */
+    private long mDiskHitCount;
+    /** Number of requests that were not in the cache, or had expired. */
+    private long mMissCount;
+    /** Number of entries dropped from memory to stay within its bound. */
+    private long mEvictionCount;
+    /** Number of entries dropped from disk to stay within its bound. */
+    private long mDiskEvictionCount;
+    /** Number of entries dropped because an item they contain changed. */
+    private long mInvalidationCount;
+
+    /**
+     * Create a cache. Trees and comments live for a minute and the other actions for five minutes, until changed with
+     * {@link #setTimeToLive(String, long)}.
+     * 
+     * @param maxMemoryBytes
+     *            Maximum bytes of responses kept in memory
+     * @param directory
+     *            Directory of the disk tier, or null to only keep responses in memory. It is created if needed, and should not be used for anything else.
+     * @param maxDiskBytes
+     *            Maximum bytes of responses kept on disk
+     */
+    public MetadataCache(final long maxMemoryBytes, final File directory, final long maxDiskBytes) {
+        mMaxMemoryBytes = maxMemoryBytes;
+        mDirectory = directory;
+        mMaxDiskBytes = directory == null ? 0 : maxDiskBytes;
+        mTimesToLive.put(ACTION_GET_ACCOUNT_TREE, Long.valueOf(SHORT_TIME_TO_LIVE));
+        mTimesToLive.put(ACTION_GET_COMMENTS, Long.valueOf(SHORT_TIME_TO_LIVE));
+        mTimesToLive.put(ACTION_GET_FILE_INFO, Long.valueOf(LONG_TIME_TO_LIVE));
+        mTimesToLive.put(ACTION_GET_VERSIONS, Long.valueOf(LONG_TIME_TO_LIVE));
+        mTimesToLive.put(ACTION_GET_COLLABORATIONS, Long.valueOf(LONG_TIME_TO_LIVE));
+    }
+
+    /**
+     * Set how long the responses of an action are used. Responses already cached keep the time to live they were stored with.
+     * 
+     * @param action
+     *            One of the ACTION_ constants
+     * @param millis
+     *            Time to live in milliseconds, or 0 to stop caching the action
+     */
+    public synchronized void setTimeToLive(final String action, final long millis) {
+        mTimesToLive.put(action, Long.valueOf(millis));
+    }
+
+    /**
+     * Check whether responses of an action are cached.
+     * 
+     * @param action
+     *            The API action
+     * @return true if the action has a time to live
+     */
+    public synchronized boolean isCached(final String action) {
+        final Long timeToLive = mTimesToLive.get(action);
+        return timeToLive != null && timeToLive.longValue() > 0;
+    }
+
+    /**
+     * Get the largest response that can be stored, in memory or on disk.
+     * 
+     * @return size in bytes
+     */
+    public long getMaxResponseSize() {
+        return Math.max(mMaxMemoryBytes / MAX_MEMORY_ENTRY_FRACTION, mMaxDiskBytes);
+    }
+
+    /**
+     * Get a cached response.
+     * 
+     * @param key
+     *            The request URL
+     * @return The response, or null if it is not cached or has expired
+     */
+    public byte[] get(final String key) {
+        final String name = getDiskName(key);
+        final ArrayList<File> deletions = new ArrayList<File>();
+        Entry header = null;
+        synchronized (this) {
+            final long now = System.currentTimeMillis();
+            final Entry entry = mMemory.get(key);
+            if (entry != null && entry.mExpires > now) {
+                mHitCount++;
+                return entry.mResponse;
+            }
+            if (entry == null && name != null) {
+                header = mDisk.get(name);
+            }
+            if (entry != null || header != null && header.mExpires <= now) {
+                remove(key, name, deletions);
+                header = null;
+            }
+            if (header == null || header.mFile == null) {
+                // Not cached, or still being written, in which case it is in memory unless it is too large.
+                mMissCount++;
+                header = null;
+            }
+        }
+        byte[] response = null;
+        if (header != null) {
+            final Entry read = readFile(header, key);
+            synchronized (this) {
+                if (mDisk.get(name) != header) {
+                    // Replaced or dropped while it was read.
+                    mMissCount++;
+                }
+                else if (read == null) {
+                    remove(key, name, deletions);
+                    mMissCount++;
+                }
+                else {
+                    mHitCount++;
+                    mDiskHitCount++;
+                    putMemory(read);
+                    response = read.mResponse;
+                }
+            }
+        }
+        deleteFiles(deletions);
+        return response;
+    }
+
+    /**
+     * Store a response.
+     * 
+     * @param action
+     *            The API action of the request
+     * @param key
+     *            The request URL
+     * @param response
+     *            The response
+     * @param folderIds
+     *            Ids of the folders the response contains, or null
+     * @param fileIds
+     *            Ids of the files the response contains, or null
+     */
+    public void put(final String action, final String key, final byte[] response, final long[] folderIds, final long[] fileIds) {
+        final String name = getDiskName(key);
+        final ArrayList<File> deletions = new ArrayList<File>();
+        Entry header = null;
+        synchronized (this) {
+            final Long timeToLive = mTimesToLive.get(action);
+            if (timeToLive == null || timeToLive.longValue() <= 0) {
+                return;
+            }
+            remove(key, name, deletions);
+            final Entry entry = new Entry(key, System.currentTimeMillis() + timeToLive.longValue(), sorted(folderIds), sorted(fileIds));
+            entry.mResponse = response;
+            putMemory(entry);
+            if (name != null && response.length <= mMaxDiskBytes) {
+                // Listed before it is written, so that it is dropped if the response is invalidated meanwhile.
+                header = new Entry(name, entry.mExpires, entry.mFolderIds, entry.mFileIds);
+                mDisk.put(name, header);
+            }
+        }
+        if (header != null) {
+            final File file = writeFile(header, response);
+            final long fileSize = file == null ? 0 : file.length();
+            synchronized (this) {
+                if (mDisk.get(name) != header) {
+                    if (file != null) {
+                        deletions.add(file);
+                    }
+                }
+                else if (file == null) {
+                    mDisk.remove(name);
+                }
+                else {
+                    header.mFile = file;
+                    header.mFileSize = fileSize;
+                    mDiskBytes += fileSize;
+                    for (Iterator<Entry> i = mDisk.values().iterator(); mDiskBytes > mMaxDiskBytes && i.hasNext();) {
+                        final Entry eldest = i.next();
+                        i.remove();
+                        dropFile(eldest, deletions);
+                        mDiskEvictionCount++;
+                    }
+                }
+            }
+        }
+        deleteFiles(deletions);
+    }
+
+    /**
+     * Drop the responses that contain a file or folder.
+     * 
+     * @param type
+     *            {@link Box#TYPE_FILE} or {@link Box#TYPE_FOLDER}
+     * @param id
+     *            Id of the file or folder
+     */
+    public void invalidate(final String type, final long id) {
+        if (Box.TYPE_FOLDER.equals(type)) {
+            invalidateFolder(id);
+        }
+        else {
+            invalidateFile(id);
+        }
+    }
+
+    /**
+     * Drop the responses that contain a folder, such as its listing, the listings of folders above it and its collaborations.
+     * 
+     * @param folderId
+     *            The folder id
+     */
+    public void invalidateFolder(final long folderId) {
+        invalidate(folderId, true);
+    }
+
+    /**
+     * Drop the responses that contain a file, such as its info, its versions and the listings of folders above it.
+     * 
+     * @param fileId
+     *            The file id
+     */
+    public void invalidateFile(final long fileId) {
+        invalidate(fileId, false);
+    }
+
+    /**
+     * Drop all responses, in memory and on disk.
+     */
+    public void clear() {
+        loadDisk();
+        final ArrayList<File> deletions = new ArrayList<File>();
+        synchronized (this) {
+            mMemory.clear();
+            mMemoryBytes = 0;
+            if (mDirectory != null) {
+                for (Iterator<Entry> i = mDisk.values().iterator(); i.hasNext();) {
+                    dropFile(i.next(), deletions);
+                }
+                mDisk = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+                mDiskBytes = 0;
+            }
+        }
+        deleteFiles(deletions);
+    }
+
+    /**
+     * Get the number of requests answered from the cache, from memory or disk.
+     * 
+     * @return number of hits
+     */
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * Get the number of requests answered from the disk tier. These are also counted by {@link #getHitCount()}.
+     * 
+     * @return number of disk hits
+     */
+    public synchronized long getDiskHitCount() {
+        return mDiskHitCount;
+    }
+
+    /**
+     * Get the number of requests that were not cached, or had expired.
+     * 
+     * @return number of misses
+     */
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Get the number of responses dropped from memory to stay within its bound. They may still be on disk.
+     * 
+     * @return number of evictions
+     */
+    public synchronized long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * Get the number of responses dropped from disk to stay within its bound.
+     * 
+     * @return number of evictions
+     */
+    public synchronized long getDiskEvictionCount() {
+        return mDiskEvictionCount;
+    }
+
+    /**
+     * Get the number of responses dropped because an item they contain changed.
+     * 
+     * @return number of invalidations
+     */
+    public synchronized long getInvalidationCount() {
+        return mInvalidationCount;
+    }
+
+    /**
+     * Get the bytes of responses held in memory.
+     * 
+     * @return size in bytes
+     */
+    public synchronized long getMemorySize() {
+        return mMemoryBytes;
+    }
+
+    /**
+     * Get the bytes of responses held on disk.
+     * 
+     * @return size in bytes
+     */
+    public long getDiskSize() {
+        loadDisk();
+        synchronized (this) {
+            return mDiskBytes;
+        }
+    }
+
+    /**
+     * Drop the responses that contain an id.
+     * 
+     * @param id
+     *            The folder or file id
+     * @param folder
+     *            true if id is a folder id
+     */
+    private void invalidate(final long id, final boolean folder) {
+        loadDisk();
+        final ArrayList<File> deletions = new ArrayList<File>();
+        synchronized (this) {
+            final HashSet<String> removed = new HashSet<String>();
+            for (Iterator<Entry> i = mMemory.values().iterator(); i.hasNext();) {
+                final Entry entry = i.next();
+                if (entry.contains(id, folder)) {
+                    i.remove();
+                    mMemoryBytes -= entry.memorySize();
+                    // Counted by the name the disk tier knows it by, so that a response in both tiers is counted once.
+                    final String name = mDirectory == null ? null : hashKey(entry.mKey);
+                    removed.add(name == null ? entry.mKey : name);
+                }
+            }
+            if (mDirectory != null) {
+                for (Iterator<Entry> i = mDisk.values().iterator(); i.hasNext();) {
+                    final Entry entry = i.next();
+                    if (entry.contains(id, folder)) {
+                        i.remove();
+                        dropFile(entry, deletions);
+                        removed.add(entry.mKey);
+                    }
+                }
+            }
+            mInvalidationCount += removed.size();
+        }
+        deleteFiles(deletions);
+    }
+
+    /**
+     * Remove an entry from both tiers. Must be called with the lock held.
+     * 
+     * @param key
+     *            The request URL
+     * @param name
+     *            Hash of the key in the disk tier, or null
+     * @param deletions
+     *            Where to add the file of the entry, to be deleted once the lock is released
+     */
+    private void remove(final String key, final String name, final ArrayList<File> deletions) {
+        final Entry entry = mMemory.remove(key);
+        if (entry != null) {
+            mMemoryBytes -= entry.memorySize();
+        }
+        if (name != null) {
+            final Entry header = mDisk.remove(name);
+            if (header != null) {
+                dropFile(header, deletions);
+            }
+        }
+    }
+
+    /**
+     * Account for an entry removed from the disk tier. Must be called with the lock held.
+     * 
+     * @param header
+     *            The entry
+     * @param deletions
+     *            Where to add its file, to be deleted once the lock is released
+     */
+    private void dropFile(final Entry header, final ArrayList<File> deletions) {
+        if (header.mFile != null) {
+            deletions.add(header.mFile);
+            mDiskBytes -= header.mFileSize;
+        }
+    }
+
+    /**
+     * Add an entry to memory, evicting the least recently used entries past the bound. Must be called with the lock held.
+     * 
+     * @param entry
+     *            The entry, with its response
+     */
+    private void putMemory(final Entry entry) {
+        if (entry.memorySize() > mMaxMemoryBytes / MAX_MEMORY_ENTRY_FRACTION) {
+            return;
+        }
+        mMemory.put(entry.mKey, entry);
+        mMemoryBytes += entry.memorySize();
+        for (Iterator<Entry> i = mMemory.values().iterator(); mMemoryBytes > mMaxMemoryBytes && i.hasNext();) {
+            final Entry eldest = i.next();
+            i.remove();
+            mMemoryBytes -= eldest.memorySize();
+            mEvictionCount++;
+        }
+    }
+
+    /**
+     * Read the headers of the files of the disk tier the first time it is used. Files that are not valid, have expired or are superseded are deleted. The
+     * lock of the cache must not be held.
+     */
+    private void loadDisk() {
+        if (mDirectory == null) {
+            return;
+        }
+        synchronized (mDiskLoadLock) {
+            synchronized (this) {
+                if (mDisk != null) {
+                    return;
+                }
+            }
+            final LinkedHashMap<String, Entry> disk = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+            long diskBytes = 0;
+            final File[] files = mDirectory.listFiles();
+            if (files != null) {
+                final long now = System.currentTimeMillis();
+                for (int i = 0; i < files.length; i++) {
+                    if (!files[i].getName().endsWith(FILE_SUFFIX)) {
+                        continue;
+                    }
+                    final Entry entry = readHeader(files[i]);
+                    if (entry == null || entry.mExpires <= now) {
+                        files[i].delete();
+                        continue;
+                    }
+                    final Entry other = disk.get(entry.mKey);
+                    if (other != null && other.mExpires >= entry.mExpires) {
+                        files[i].delete();
+                        continue;
+                    }
+                    if (other != null) {
+                        other.mFile.delete();
+                        diskBytes -= other.mFileSize;
+                    }
+                    disk.put(entry.mKey, entry);
+                    diskBytes += entry.mFileSize;
+                }
+            }
+            synchronized (this) {
+                mDisk = disk;
+                mDiskBytes = diskBytes;
+            }
+        }
+    }
+
+    /**
+     * Write the response of an entry of the disk tier to a new file. The lock of the cache must not be held.
+     * 
+     * @param header
+     *            The entry
+     * @param response
+     *            The response
+     * @return The file, or null if it could not be written
+     */
+    private File writeFile(final Entry header, final byte[] response) {
+        File file = null;
+        try {
+            mDirectory.mkdirs();
+            // Every write has a file of its own, so that a write that is superseded or invalidated can delete its file without touching a newer one.
+            file = File.createTempFile(header.mKey + "-", FILE_SUFFIX, mDirectory);
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            try {
+                out.writeInt(FILE_MAGIC);
+                out.writeLong(header.mExpires);
+                out.writeUTF(header.mKey);
+                writeIds(out, header.mFolderIds);
+                writeIds(out, header.mFileIds);
+                out.writeInt(response.length);
+                out.write(response);
+            }
+            finally {
+                out.close();
+            }
+            return file;
+        }
+        catch (IOException e) {
+            // The disk tier is best effort. The response is still in memory.
+            e.printStackTrace();
+            if (file != null) {
+                file.delete();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Read the header of a cache file.
+     * 
+     * @param file
+     *            The file
+     * @return The entry without its response, or null if the file is not a valid cache file
+     */
+    private static Entry readHeader(final File file) {
+        try {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1024));
+            try {
+                if (in.readInt() != FILE_MAGIC) {
+                    return null;
+                }
+                final long expires = in.readLong();
+                final String name = in.readUTF();
+                if (!file.getName().startsWith(name + "-")) {
+                    return null;
+                }
+                final Entry entry = new Entry(name, expires, readIds(in), readIds(in));
+                entry.mFile = file;
+                entry.mFileSize = file.length();
+                return entry;
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Read the response of an entry of the disk tier. The lock of the cache must not be held.
+     * 
+     * @param header
+     *            The entry
+     * @param key
+     *            The request URL
+     * @return The entry for memory, with its response, or null if the file cannot be read
+     */
+    private static Entry readFile(final Entry header, final String key) {
+        try {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(header.mFile)));
+            try {
+                if (in.readInt() != FILE_MAGIC) {
+                    return null;
+                }
+                final long expires = in.readLong();
+                if (!header.mKey.equals(in.readUTF())) {
+                    return null;
+                }
+                final Entry entry = new Entry(key, expires, readIds(in), readIds(in));
+                final int length = in.readInt();
+                if (length < 0 || length > header.mFileSize) {
+                    return null;
+                }
+                entry.mResponse = new byte[length];
+                in.readFully(entry.mResponse);
+                return entry;
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Delete files of entries dropped from the disk tier. The lock of the cache must not be held.
+     * 
+     * @param files
+     *            The files
+     */
+    private static void deleteFiles(final ArrayList<File> files) {
+        for (int i = 0; i < files.size(); i++) {
+            files.get(i).delete();
+        }
+    }
+
+    /**
+     * Get the name of a key in the disk tier, a hash of the key, so that request URLs and the auth tokens in them are not written to disk. Reads the
+     * directory the first time. The lock of the cache must not be held.
+     * 
+     * @param key
+     *            The request URL
+     * @return The name, or null if there is no disk tier
+     */
+    private String getDiskName(final String key) {
+        if (mDirectory == null) {
+            return null;
+        }
+        loadDisk();
+        return hashKey(key);
+    }
+
+    /**
+     * Hash a key.
+     * 
+     * @param key
+     *            The request URL
+     * @return The SHA-1 of the key in hex, or null if SHA-1 is not available
+     */
+    private static String hashKey(final String key) {
+        try {
+            return BoxUtils.toHexString(MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8")));
+        }
+        catch (NoSuchAlgorithmException e) {
+            // Without a hash that cannot collide, the disk tier is not used.
+            return null;
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Write ids.
+     * 
+     * @param out
+     *            Where to write them
+     * @param ids
+     *            The ids
+     * @throws IOException
+     *             if they cannot be written
+     */
+    private static void writeIds(final DataOutputStream out, final long[] ids) throws IOException {
+        out.writeInt(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            out.writeLong(ids[i]);
+        }
+    }
+
+    /**
+     * Read ids written by {@link #writeIds(DataOutputStream, long[])}.
+     * 
+     * @param in
+     *            Where to read them from
+     * @return The ids
+     * @throws IOException
+     *             if they cannot be read
+     */
+    private static long[] readIds(final DataInputStream in) throws IOException {
+        final int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Corrupt cache file");
+        }
+        if (count == 0) {
+            return NO_IDS;
+        }
+        final long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = in.readLong();
+        }
+        return ids;
+    }
+
+    /**
+     * Get a sorted copy of ids.
+     * 
+     * @param ids
+     *            The ids, or null
+     * @return The ids sorted
+     */
+    private static long[] sorted(final long[] ids) {
+        if (ids == null || ids.length == 0) {
+            return NO_IDS;
+        }
+        final long[] copy = new long[ids.length];
+        System.arraycopy(ids, 0, copy, 0, ids.length);
+        Arrays.sort(copy);
+        return copy;
+    }
+
+    /**
+     * A cached response with the ids it contains.
+     */
+    private static final class Entry {
+
+        /** The request URL, or a hash of it for entries of the disk tier. */
+        private final String mKey;
+        /** Time the entry expires, in milliseconds. */
+        private final long mExpires;
+        /** Sorted ids of the folders the response contains. */
+        private long[] mFolderIds;
+        /** Sorted ids of the files the response contains. */
+        private long[] mFileIds;
+        /** The response, or null for entries of the disk index. */
+        private byte[] mResponse;
+        /** File of an entry of the disk tier, or null while it is being written. */
+        private File mFile;
+        /** Size of the cache file of the entry. */
+        private long mFileSize;
+
+        /**
+         * Create an entry.
+         * 
+         * @param key
+         *            The request URL, or a hash of it for entries of the disk tier
+         * @param expires
+         *            Time the entry expires, in milliseconds
+         * @param folderIds
+         *            Sorted ids of the folders the response contains
+         * @param fileIds
+         *            Sorted ids of the files the response contains
+         */
+        Entry(final String key, final long expires, final long[] folderIds, final long[] fileIds) {
+            mKey = key;
+            mExpires = expires;
+            mFolderIds = folderIds;
+            mFileIds = fileIds;
+        }
+
+        /**
+         * Check whether the response contains an id.
+         * 
+         * @param id
+         *            The folder or file id
+         * @param folder
+         *            true if id is a folder id
+         * @return true if the response contains it
+         */
+        boolean contains(final long id, final boolean folder) {
+            return Arrays.binarySearch(folder ? mFolderIds : mFileIds, id) >= 0;
+        }
+
+        /**
+         * Get the approximate memory used by the entry.
+         * 
+         * @return size in bytes
+         */
+        long memorySize() {
+            return ENTRY_OVERHEAD + mKey.length() * 2 + (mFolderIds.length + mFileIds.length) * 8 + (mResponse == null ? 0 : mResponse.length);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.Utils;
+
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a list of tasks with at most a given number running at the same time, and waits for them. The calling thread runs tasks itself, and the other
+ * workers are queued on a lane of {@link BoxExecutor}, so the number of threads stays within the limits of the lane. As the calling thread takes tasks until
+ * none are left, a run finishes even if the lane has no free thread, and so it can be called from a task running on the same lane. Tasks are started in list
+ * order.
+ * 
+ * @author developers@box.net
+ */
+public final class ParallelRunner {
+
+    /**
+     * The workers of one run, and the tasks they share.
+     */
+    private static final class Run implements Runnable {
+
+        /** The tasks. */
+        private final List<? extends Runnable> mTasks;
+        /** Index of the next task to start. */
+        private final AtomicInteger mNext = new AtomicInteger();
+        /** Number of workers taking tasks. Guarded by this. */
+        private int mActiveCount;
+        /** The first RuntimeException thrown by a task. Guarded by this. */
+        private RuntimeException mFailure;
+
+        /**
+         * Create a run.
+         * 
+         * @param tasks
+         *            The tasks
+         */
+        private Run(final List<? extends Runnable> tasks) {
+            mTasks = tasks;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                mActiveCount++;
+            }
+            try {
+                for (int i = mNext.getAndIncrement(); i < mTasks.size() && !Thread.currentThread().isInterrupted(); i = mNext.getAndIncrement()) {
+                    try {
+                        mTasks.get(i).run();
+                    }
+                    catch (final RuntimeException e) {
+                        synchronized (this) {
+                            if (mFailure == null) {
+                                mFailure = e;
+                            }
+                        }
+                    }
+                }
+            }
+            finally {
+                synchronized (this) {
+                    mActiveCount--;
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Wait until no worker is taking tasks any more. Interrupts are not waited out but remembered.
+         * 
+         * @return true if the calling thread was interrupted while waiting
+         */
+        private synchronized boolean awaitWorkers() {
+            boolean interrupted = false;
+            while (mActiveCount > 0) {
+                try {
+                    wait();
+                }
+                catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            return interrupted;
+        }
+    }
+
+    /**
+     * This class is not instantiated.
+     */
+    private ParallelRunner() {
+    }
+
+    /**
+     * Run tasks on the {@link BoxExecutor#LANE_INTERACTIVE} lane and the calling thread, and wait until all of them have finished. See
+     * {@link #run(List, int, int)}.
+     * 
+     * @param tasks
+     *            The tasks
+     * @param maxConcurrency
+     *            The most tasks to run at the same time
+     * @throws InterruptedException
+     *             If the calling thread is interrupted
+     */
+    public static void run(final List<? extends Runnable> tasks, final int maxConcurrency) throws InterruptedException {
+        run(tasks, maxConcurrency, BoxExecutor.LANE_INTERACTIVE);
+    }
+
+    /**
+     * Run tasks and wait until all of them have finished. With a concurrency of 1, or a single task, the tasks run on the calling thread.
+     * 
+     * @param tasks
+     *            The tasks. A task should handle its own failures; a RuntimeException thrown by a task is thrown again by this method once the other tasks
+     *            have finished. A task that is interrupted should return with the interrupt status still set, as the calling thread runs tasks too.
+     * @param maxConcurrency
+     *            The most tasks to run at the same time, including the calling thread. The lane may run fewer.
+     * @param lane
+     *            The lane of {@link BoxExecutor} to run the other workers on, {@link BoxExecutor#LANE_INTERACTIVE} or {@link BoxExecutor#LANE_TRANSFER}
+     * @throws InterruptedException
+     *             If the calling thread is interrupted. Running tasks are interrupted, tasks not started yet are not started, and the method returns only
+     *             once the running tasks have returned, so that what they wrote can be read safely.
+     */
+    public static void run(final List<? extends Runnable> tasks, final int maxConcurrency, final int lane) throws InterruptedException {
+        final int workerCount = Math.min(Math.max(maxConcurrency, 1), tasks.size());
+        if (workerCount <= 1) {
+            for (int i = 0; i < tasks.size(); i++) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                tasks.get(i).run();
+            }
+            return;
+        }
+
+        final Run run = new Run(tasks);
+        final Future<?>[] helpers = new Future<?>[workerCount - 1];
+        for (int i = 0; i < helpers.length; i++) {
+            helpers[i] = BoxExecutor.getInstance().submit(lane, run);
+        }
+        run.run();
+        boolean interrupted = Thread.interrupted();
+        if (interrupted) {
+            stop(run, helpers);
+        }
+        if (run.awaitWorkers()) {
+            interrupted = true;
+            stop(run, helpers);
+            run.awaitWorkers();
+        }
+        // Workers still queued have no tasks left to take.
+        for (int i = 0; i < helpers.length; i++) {
+            helpers[i].cancel(false);
+        }
+        if (interrupted) {
+            throw new InterruptedException();
+        }
+        synchronized (run) {
+            if (run.mFailure != null) {
+                throw run.mFailure;
+            }
+        }
+    }
+
+    /**
+     * Stop a run: keep tasks from starting and interrupt the running ones.
+     * 
+     * @param run
+     *            The run
+     * @param helpers
+     *            The workers queued on the lane
+     */
+    private static void stop(final Run run, final Future<?>[] helpers) {
+        run.mNext.set(run.mTasks.size());
+        for (int i = 0; i < helpers.length; i++) {
+            helpers[i].cancel(true);
+        }
+    }
+}
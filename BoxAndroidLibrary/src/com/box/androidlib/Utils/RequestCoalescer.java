@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.Utils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+
+/**
+ * Lets identical read requests made at the same time share one request. It is off unless set with {@link BoxConfig#setRequestCoalescer(RequestCoalescer)},
+ * after which {@link com.box.androidlib.BoxSynchronous} (and so {@link com.box.androidlib.Box}) sends get_account_tree, get_file_info and export_tags through
+ * it. A request made while an identical one is in flight waits for it and gets its result instead of being sent again. Requests are identical if they have
+ * the same action, auth token and parameters; the order of get_account_tree params and whether the tree is zipped do not matter.
+ * 
+ * Callers that share a request get the same response parser, and so the same DAOs. Copy them before modifying them if another part of the app may be
+ * reading them.
+ * 
+ * A caller waiting for another's request can be cancelled by interrupting its thread, which makes it throw an InterruptedIOException without affecting the
+ * request or the other callers. If the caller that sent the request is interrupted and the request fails, the callers waiting for it do not get that failure
+ * and send the request again instead. Any other IOException is thrown to every caller of the request.
+ * 
+ * @author developers@box.net
+ */
+public final class RequestCoalescer {
+
+    /**
+     * A request that may be shared.
+     * 
+     * @param <T>
+     *            The result of the request
+     */
+    public interface Request<T> {
+
+        /**
+         * Send the request and parse the response.
+         * 
+         * @return The result
+         * @throws IOException
+         *             If the request failed
+         */
+        T execute() throws IOException;
+    }
+
+    /**
+     * A request in flight, with the callers waiting for it.
+     */
+    private static final class Flight {
+
+        /** Whether the request has finished. */
+        private boolean mDone;
+        /** Whether the request failed in a way the waiting callers should not see, so that they send it again. */
+        private boolean mAbandoned;
+        /** The result, if the request succeeded. */
+        private Object mResult;
+        /** The exception, if the request failed. */
+        private IOException mException;
+    }
+
+    /** Requests in flight by key. */
+    private final HashMap<String, Flight> mFlights = new HashMap<String, Flight>();
+    /** Number of requests sent. */
+    private long mRequestCount;
+    /** Number of requests that shared a request already in flight instead of being sent. */
+    private long mCoalescedCount;
+
+    /**
+     * Run a request, or wait for the identical request in flight and get its result.
+     * 
+     * @param <T>
+     *            The result of the request
+     * @param key
+     *            Identifies the request. Requests with the same key must have the same result.
+     * @param request
+     *            The request
+     * @return The result of the request, shared with the other callers of the same request
+     * @throws IOException
+     *             If the request failed, or InterruptedIOException if the thread was interrupted while waiting for the request of another caller
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(final String key, final Request<T> request) throws IOException {
+        while (true) {
+            Flight flight;
+            final boolean leader;
+            synchronized (mFlights) {
+                flight = mFlights.get(key);
+                leader = flight == null;
+                if (leader) {
+                    flight = new Flight();
+                    mFlights.put(key, flight);
+                    mRequestCount++;
+                }
+                else {
+                    mCoalescedCount++;
+                }
+            }
+            if (leader) {
+                return lead(key, flight, request);
+            }
+
+            synchronized (flight) {
+                while (!flight.mDone) {
+                    try {
+                        flight.wait();
+                    }
+                    catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Cancelled while waiting for an identical request");
+                    }
+                }
+            }
+            if (!flight.mAbandoned) {
+                if (flight.mException != null) {
+                    throw flight.mException;
+                }
+                return (T) flight.mResult;
+            }
+            // The caller that sent the request was cancelled. Send it again, or join whoever did first.
+        }
+    }
+
+    /**
+     * Send a request and hand its result to the callers waiting for it.
+     * 
+     * @param <T>
+     *            The result of the request
+     * @param key
+     *            Identifies the request
+     * @param flight
+     *            The flight of the request
+     * @param request
+     *            The request
+     * @return The result of the request
+     * @throws IOException
+     *             If the request failed
+     */
+    private <T> T lead(final String key, final Flight flight, final Request<T> request) throws IOException {
+        boolean succeeded = false;
+        T result = null;
+        IOException exception = null;
+        try {
+            result = request.execute();
+            succeeded = true;
+            return result;
+        }
+        catch (final IOException e) {
+            exception = e;
+            throw e;
+        }
+        finally {
+            synchronized (mFlights) {
+                mFlights.remove(key);
+            }
+            synchronized (flight) {
+                flight.mResult = result;
+                flight.mException = exception;
+                // A failure caused by cancelling this caller, or an unexpected exception, is not passed on.
+                flight.mAbandoned = !succeeded
+                    && (exception == null || exception instanceof InterruptedIOException || Thread.currentThread().isInterrupted());
+                flight.mDone = true;
+                flight.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Get the number of requests in flight.
+     * 
+     * @return number of distinct requests being sent
+     */
+    public int getInFlightCount() {
+        synchronized (mFlights) {
+            return mFlights.size();
+        }
+    }
+
+    /**
+     * Get the number of requests sent through the coalescer.
+     * 
+     * @return number of requests sent
+     */
+    public long getRequestCount() {
+        synchronized (mFlights) {
+            return mRequestCount;
+        }
+    }
+
+    /**
+     * Get the number of requests that shared an identical request in flight instead of being sent.
+     * 
+     * @return number of requests saved
+     */
+    public long getCoalescedCount() {
+        synchronized (mFlights) {
+            return mCoalescedCount;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.Utils;
+
+import java.io.Serializable;
+
+/**
+ * A URL that contains the id of the file or folder it belongs to, such as a thumbnail URL, stored as the text before and after the id. Thumbnail URLs of
+ * different files only differ by the id, so files share the same few templates instead of holding a String per URL, and the URL is rebuilt from the id when
+ * it is read. URLs that do not contain the id are kept as they are, and shared as well. A URL is only shared once the id it belongs to is known, so that a
+ * URL parsed before the id of its file does not leave a template of the wrong id in the pool.
+ * 
+ * @author developers@box.net
+ */
+public final class UrlTemplate implements Serializable {
+
+    /**
+     * Serialialization version id.
+     */
+    private static final long serialVersionUID = 1L;
+    /** Marks the position of the id in {@link #toString()}. */
+    public static final String ID_PLACEHOLDER = "{id}";
+    /** Maximum number of templates shared. Past this, new templates are not shared, so unusual URLs cannot grow the pool without bound. */
+    private static final int MAX_POOL_SIZE = 1024;
+
+    /** Shared templates, open addressing. Guarded by the class lock. */
+    private static UrlTemplate[] sPool = new UrlTemplate[64];
+    /** Number of shared templates. Guarded by the class lock. */
+    private static int sPoolSize;
+
+    /** Text before the id, or the whole URL if it does not contain the id. */
+    private final String mPrefix;
+    /** Text after the id, or null if the URL does not contain the id. */
+    private final String mSuffix;
+
+    /**
+     * Create a template.
+     * 
+     * @param prefix
+     *            Text before the id, or the whole URL
+     * @param suffix
+     *            Text after the id, or null if the URL does not contain the id
+     */
+    private UrlTemplate(final String prefix, final String suffix) {
+        mPrefix = prefix;
+        mSuffix = suffix;
+    }
+
+    /**
+     * Get the template of a URL.
+     * 
+     * @param url
+     *            The URL, may be null
+     * @param id
+     *            The id of the file or folder the URL belongs to, or 0 if it is not known yet. Use {@link #rebase(long, long)} once it is known.
+     * @return The template, shared with other URLs that only differ by the id, or null if url is null
+     */
+    public static UrlTemplate of(final String url, final long id) {
+        if (url == null) {
+            return null;
+        }
+        if (id <= 0) {
+            return new UrlTemplate(url, null);
+        }
+        // Find the last occurrence of the id, which is usually in the file name part of the URL.
+        for (int end = url.length(); end > 0; end--) {
+            final int start = matchNumberEndingAt(url, end, id);
+            if (start >= 0) {
+                return intern(url, start, end);
+            }
+        }
+        return intern(url, -1, -1);
+    }
+
+    /**
+     * Parse a template written by {@link #toString()}.
+     * 
+     * @param string
+     *            The template, or a plain URL
+     * @return The template, or null if string is null
+     */
+    public static UrlTemplate parse(final String string) {
+        if (string == null) {
+            return null;
+        }
+        final int start = string.indexOf(ID_PLACEHOLDER);
+        if (start < 0) {
+            return intern(string, -1, -1);
+        }
+        return intern(string, start, start + ID_PLACEHOLDER.length());
+    }
+
+    /**
+     * Build the URL for an id.
+     * 
+     * @param id
+     *            The id of the file or folder the URL belongs to
+     * @return The URL
+     */
+    public String expand(final long id) {
+        if (mSuffix == null) {
+            return mPrefix;
+        }
+        return new StringBuilder(mPrefix.length() + 20 + mSuffix.length()).append(mPrefix).append(id).append(mSuffix).toString();
+    }
+
+    /**
+     * Get the template for the same URL, once the id it belongs to changes.
+     * 
+     * @param oldId
+     *            The id the template was made with
+     * @param newId
+     *            The new id
+     * @return The template
+     */
+    public UrlTemplate rebase(final long oldId, final long newId) {
+        return of(expand(oldId), newId);
+    }
+
+    /**
+     * Get the template with {@link #ID_PLACEHOLDER} in place of the id, or the URL if it does not contain the id.
+     * 
+     * @return The template as a string
+     */
+    @Override
+    public String toString() {
+        return mSuffix == null ? mPrefix : mPrefix + ID_PLACEHOLDER + mSuffix;
+    }
+
+    /**
+     * Share templates again when they are deserialized.
+     * 
+     * @return The shared template
+     */
+    private Object readResolve() {
+        return mSuffix == null ? intern(mPrefix, -1, -1) : intern(mPrefix + mSuffix, mPrefix.length(), mPrefix.length());
+    }
+
+    /**
+     * Check whether the decimal digits before a position of a string are the given number.
+     * 
+     * @param string
+     *            The string
+     * @param end
+     *            The position after the last digit
+     * @param number
+     *            The number, 0 or greater
+     * @return The position of the first digit, or -1 if the digits before end are not the number
+     */
+    private static int matchNumberEndingAt(final String string, final int end, final long number) {
+        long remaining = number;
+        int i = end;
+        do {
+            if (i == 0 || string.charAt(i - 1) != (char) ('0' + remaining % 10)) {
+                return -1;
+            }
+            remaining /= 10;
+            i--;
+        } while (remaining > 0);
+        if (i > 0 && string.charAt(i - 1) >= '0' && string.charAt(i - 1) <= '9') {
+            return -1;
+        }
+        if (end < string.length() && string.charAt(end) >= '0' && string.charAt(end) <= '9') {
+            return -1;
+        }
+        return i;
+    }
+
+    /**
+     * Get the shared template for a URL, or create one.
+     * 
+     * @param url
+     *            The URL
+     * @param start
+     *            Start of the id in the URL, or -1 if the URL does not contain the id
+     * @param end
+     *            End of the id in the URL, or -1 if the URL does not contain the id
+     * @return The template
+     */
+    private static synchronized UrlTemplate intern(final String url, final int start, final int end) {
+        final int hash = start < 0 ? hash(url, 0, url.length()) : hash(url, 0, start) * 31 + hash(url, end, url.length());
+        final int mask = sPool.length - 1;
+        int i = hash & mask;
+        for (UrlTemplate t = sPool[i]; t != null; t = sPool[i]) {
+            if (start < 0 ? t.mSuffix == null && t.mPrefix.equals(url) : t.mSuffix != null && t.mPrefix.length() == start
+                && t.mSuffix.length() == url.length() - end && url.startsWith(t.mPrefix) && url.endsWith(t.mSuffix)) {
+                return t;
+            }
+            i = (i + 1) & mask;
+        }
+        final UrlTemplate template = start < 0 ? new UrlTemplate(url, null) : new UrlTemplate(url.substring(0, start), url.substring(end));
+        if (sPoolSize < MAX_POOL_SIZE) {
+            sPool[i] = template;
+            sPoolSize++;
+            if (sPoolSize * 2 > sPool.length) {
+                final UrlTemplate[] pool = new UrlTemplate[sPool.length * 2];
+                for (int j = 0; j < sPool.length; j++) {
+                    if (sPool[j] != null) {
+                        final String prefix = sPool[j].mPrefix;
+                        final String suffix = sPool[j].mSuffix;
+                        int k = (suffix == null ? hash(prefix, 0, prefix.length()) : hash(prefix, 0, prefix.length()) * 31 + hash(suffix, 0, suffix.length()))
+                            & (pool.length - 1);
+                        while (pool[k] != null) {
+                            k = (k + 1) & (pool.length - 1);
+                        }
+                        pool[k] = sPool[j];
+                    }
+                }
+                sPool = pool;
+            }
+        }
+        return template;
+    }
+
+    /**
+     * Get the number of shared templates.
+     * 
+     * @return The number of templates in the pool
+     */
+    static synchronized int getPoolSize() {
+        return sPoolSize;
+    }
+
+    /**
+     * Hash a region of a string.
+     * 
+     * @param string
+     *            The string
+     * @param start
+     *            Start of the region
+     * @param end
+     *            End of the region
+     * @return The hash
+     */
+    private static int hash(final String string, final int start, final int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = h * 31 + string.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+}
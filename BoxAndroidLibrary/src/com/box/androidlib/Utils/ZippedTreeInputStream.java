@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.Utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Turns a zipped get_account_tree response into the equivalent nozip response while it is being read. In a zipped response, the content of the tree element
+ * is the base64 encoded, compressed tree XML. This stream passes the response through up to and including the opening tree tag, then decodes and inflates
+ * the tree XML in place (dropping its XML declaration), then passes the rest of the response through. Nothing is buffered beyond a few kilobytes, so the
+ * response can be fed straight into a SAX parser.
+ * 
+ * @author developers@box.net
+ */
+public class ZippedTreeInputStream extends InputStream {
+
+    /** Tag after which the zipped tree starts. */
+    private static final byte[] TREE_TAG = {'<', 't', 'r', 'e', 'e', '>'};
+    /** Size of the pushback buffer used to look ahead in the inflated tree. */
+    private static final int LOOKAHEAD = 128;
+
+    /** Passing through the response before the tree. */
+    private static final int STATE_PREFIX = 0;
+    /** Reading the inflated tree. */
+    private static final int STATE_TREE = 1;
+    /** Passing through the response after the tree. */
+    private static final int STATE_SUFFIX = 2;
+
+    /** The raw response. */
+    private final PushbackInputStream mIn;
+    /** The inflated tree, once the tree tag has been reached. */
+    private InputStream mTree;
+    /** The decoded, still compressed tree, once the tree tag has been reached. */
+    private InputStream mCompressed;
+    /** One of STATE_PREFIX, STATE_TREE, STATE_SUFFIX. */
+    private int mState = STATE_PREFIX;
+    /** Number of bytes of TREE_TAG matched so far. */
+    private int mTagMatched;
+    /** Number of compressed bytes read, i.e. the decoded size of the base64 text. */
+    private long mCompressedBytes;
+
+    /**
+     * Create a stream that inflates the tree in a zipped get_account_tree response.
+     * 
+     * @param in
+     *            The raw response
+     */
+    public ZippedTreeInputStream(final InputStream in) {
+        mIn = new PushbackInputStream(in, Base64InputStream.PUSHBACK_BUFFER_SIZE);
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] b = new byte[1];
+        int n;
+        while ((n = read(b, 0, 1)) == 0) {
+            continue;
+        }
+        return n < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (mState == STATE_PREFIX) {
+            // The prefix is short, read it byte by byte so that nothing past the tree tag is consumed.
+            int n = 0;
+            while (n < len && mState == STATE_PREFIX) {
+                final int c = mIn.read();
+                if (c < 0) {
+                    return n > 0 ? n : -1;
+                }
+                b[off + n++] = (byte) c;
+                if (c == TREE_TAG[mTagMatched]) {
+                    if (++mTagMatched == TREE_TAG.length) {
+                        openTree();
+                    }
+                }
+                else {
+                    mTagMatched = c == TREE_TAG[0] ? 1 : 0;
+                }
+            }
+            return n;
+        }
+        if (mState == STATE_TREE) {
+            final int n = mTree.read(b, off, len);
+            if (n >= 0) {
+                return n;
+            }
+            skipCompressed();
+        }
+        return mIn.read(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mIn.close();
+    }
+
+    /**
+     * Get the number of compressed bytes of the tree read so far.
+     * 
+     * @return size of the compressed tree
+     */
+    public long getCompressedBytes() {
+        return mCompressedBytes;
+    }
+
+    /**
+     * Set up decoding and inflating of the tree, which starts at the current position of the raw response.
+     * 
+     * @throws IOException
+     *             if the response cannot be read
+     */
+    private void openTree() throws IOException {
+        mState = STATE_TREE;
+        final PushbackInputStream compressed = new PushbackInputStream(new Base64InputStream(mIn) {
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                final int n = super.read(b, off, len);
+                if (n > 0) {
+                    mCompressedBytes += n;
+                }
+                return n;
+            }
+        }, 2);
+        mCompressed = compressed;
+        final int b0 = compressed.read();
+        final int b1 = compressed.read();
+        if (b1 >= 0) {
+            compressed.unread(b1);
+        }
+        if (b0 >= 0) {
+            compressed.unread(b0);
+        }
+
+        final InputStream inflated;
+        if (b0 == 'P' && b1 == 'K') {
+            final ZipInputStream zip = new ZipInputStream(compressed);
+            if (zip.getNextEntry() == null) {
+                skipCompressed();
+                return;
+            }
+            inflated = zip;
+        }
+        else if (b0 == 0x1f && b1 == 0x8b) {
+            inflated = new GZIPInputStream(compressed);
+        }
+        else if (b0 == 0x78) {
+            inflated = new InflaterInputStream(compressed);
+        }
+        else {
+            // Not compressed, or empty.
+            inflated = compressed;
+        }
+        mTree = skipXmlDeclaration(new PushbackInputStream(inflated, LOOKAHEAD));
+    }
+
+    /**
+     * Skip what is left of the compressed tree once the tree has been inflated, such as the central directory of a zip archive, so that the rest of the
+     * response is passed through from the byte that ends the base64 text.
+     * 
+     * @throws IOException
+     *             if the response cannot be read
+     */
+    private void skipCompressed() throws IOException {
+        final byte[] rest = new byte[Base64InputStream.PUSHBACK_BUFFER_SIZE];
+        while (mCompressed.read(rest, 0, rest.length) >= 0) {
+            continue;
+        }
+        mState = STATE_SUFFIX;
+    }
+
+    /**
+     * Skip the byte order mark and XML declaration at the start of the tree, which may not appear inside the response document.
+     * 
+     * @param in
+     *            The inflated tree
+     * @return The same stream, positioned after the XML declaration
+     * @throws IOException
+     *             if the tree cannot be read
+     */
+    private static InputStream skipXmlDeclaration(final PushbackInputStream in) throws IOException {
+        final byte[] head = new byte[LOOKAHEAD];
+        int n = 0;
+        int read;
+        while (n < head.length && (read = in.read(head, n, head.length - n)) > 0) {
+            n += read;
+        }
+        int start = 0;
+        if (n >= 3 && (head[0] & 0xff) == 0xef && (head[1] & 0xff) == 0xbb && (head[2] & 0xff) == 0xbf) {
+            start = 3;
+        }
+        if (n - start >= 5 && head[start] == '<' && head[start + 1] == '?' && head[start + 2] == 'x' && head[start + 3] == 'm' && head[start + 4] == 'l') {
+            for (int i = start + 5; i < n - 1; i++) {
+                if (head[i] == '?' && head[i + 1] == '>') {
+                    start = i + 2;
+                    break;
+                }
+            }
+        }
+        if (n > start) {
+            in.unread(head, start, n - start);
+        }
+        return in;
+    }
+}
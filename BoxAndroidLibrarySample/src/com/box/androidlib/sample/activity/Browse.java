@@ -53,6 +53,8 @@ import android.widget.Toast;
 import com.box.androidlib.Box;
 import com.box.androidlib.DAO.BoxFile;
 import com.box.androidlib.DAO.BoxFolder;
+import com.box.androidlib.DAO.BoxTree;
+import com.box.androidlib.DAO.MappedAccountTree;
 import com.box.androidlib.ResponseListeners.CreateFolderListener;
 import com.box.androidlib.ResponseListeners.DeleteListener;
 import com.box.androidlib.ResponseListeners.FileDownloadListener;
@@ -69,6 +71,8 @@ public class Browse extends ListActivity {
     private TreeListItem[] items;
     private String authToken;
     private long folderId;
+    private File treeFile;
+    private BoxTree tree;
 
     // Menu button options
     private static final int MENU_ID_UPLOAD = 1;
@@ -113,10 +117,54 @@ public class Browse extends ListActivity {
         adapter = new MyArrayAdapter(this, 0, items);
         setListAdapter(adapter);
 
-        // Go get the account tree
+        // Show the folder as it was the last time it was fetched, if we have
+        // it, then go get the account tree
+        treeFile = new File(getCacheDir(), "tree_" + folderId);
+        showSavedTree();
         refresh();
     }
 
+    /**
+     * Show the tree saved by the last refresh. MappedAccountTree only reads the parts of the file it needs, so this is fast enough to do before the first
+     * screen is drawn.
+     */
+    private void showSavedTree() {
+        if (!treeFile.exists()) {
+            return;
+        }
+        try {
+            BoxFolder boxFolder = MappedAccountTree.open(treeFile).getFolder(folderId);
+            if (boxFolder != null) {
+                showFolder(boxFolder);
+            }
+        }
+        catch (IOException e) {
+            // Saved by an older version of the library, or damaged. The refresh will replace it.
+            treeFile.delete();
+        }
+    }
+
+    /**
+     * Save a tree in the background, so that it can be shown right away next time.
+     * 
+     * @param boxFolder
+     *            The folder to save
+     */
+    private void saveTree(final BoxFolder boxFolder) {
+        new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    MappedAccountTree.write(treeFile, boxFolder);
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }.start();
+    }
+
     /**
      * Refresh the tree.
      */
@@ -132,44 +180,13 @@ public class Browse extends ListActivity {
                     return;
                 }
 
-                /**
-                 * Box.getAccountTree() was successful. boxFolder contains a list of subfolders and files. Shove those into an array so that our list adapter
-                 * displays them.
-                 */
-
-                items = new TreeListItem[boxFolder.getFoldersInFolder().size() + boxFolder.getFilesInFolder().size()];
-
-                int i = 0;
-
-                Iterator<? extends BoxFolder> foldersIterator = boxFolder.getFoldersInFolder().iterator();
-                while (foldersIterator.hasNext()) {
-                    BoxFolder subfolder = foldersIterator.next();
-                    TreeListItem item = new TreeListItem();
-                    item.id = subfolder.getId();
-                    item.name = subfolder.getFolderName();
-                    item.type = TreeListItem.TYPE_FOLDER;
-                    item.folder = subfolder;
-                    item.updated = subfolder.getUpdated();
-                    items[i] = item;
-                    i++;
+                if (tree != null) {
+                    tree.removeListener(treeListener);
                 }
-
-                Iterator<? extends BoxFile> filesIterator = boxFolder.getFilesInFolder().iterator();
-                while (filesIterator.hasNext()) {
-                    BoxFile boxFile = filesIterator.next();
-                    TreeListItem item = new TreeListItem();
-                    item.id = boxFile.getId();
-                    item.name = boxFile.getFileName();
-                    item.type = TreeListItem.TYPE_FILE;
-                    item.file = boxFile;
-                    item.updated = boxFile.getUpdated();
-                    items[i] = item;
-                    i++;
-                }
-
-                adapter.notifyDataSetChanged();
-                ProgressBar progressBar = (ProgressBar) findViewById(R.id.progressBar);
-                progressBar.setVisibility(View.GONE);
+                tree = new BoxTree(boxFolder);
+                tree.addListener(treeListener);
+                showFolder(boxFolder);
+                saveTree(boxFolder);
             }
 
             @Override
@@ -179,6 +196,87 @@ public class Browse extends ListActivity {
         });
     }
 
+    /**
+     * Delete, rename and create folder change the tree in place when they succeed, instead of us fetching the whole folder again. Show the change, and save it
+     * for next time.
+     */
+    private final BoxTree.Listener treeListener = new BoxTree.Listener() {
+
+        @Override
+        public void onAdded(String type, long id, long parentId) {
+            onChanged(parentId);
+        }
+
+        @Override
+        public void onRemoved(String type, long id, long parentId) {
+            onChanged(parentId);
+        }
+
+        @Override
+        public void onMoved(String type, long id, long oldParentId, long newParentId) {
+            onChanged(oldParentId);
+            onChanged(newParentId);
+        }
+
+        @Override
+        public void onRenamed(String type, long id, long parentId, String oldName) {
+            onChanged(parentId);
+        }
+
+        private void onChanged(long parentId) {
+            if (parentId == folderId) {
+                showFolder(tree.getRoot());
+                saveTree(tree.getRoot());
+            }
+        }
+    };
+
+    /**
+     * Show the contents of a folder.
+     * 
+     * @param boxFolder
+     *            The folder, with its subfolders and files
+     */
+    private void showFolder(BoxFolder boxFolder) {
+        /**
+         * boxFolder contains a list of subfolders and files. Shove those into an array so that our list adapter displays them.
+         */
+
+        items = new TreeListItem[boxFolder.getFoldersInFolder().size() + boxFolder.getFilesInFolder().size()];
+
+        int i = 0;
+
+        Iterator<? extends BoxFolder> foldersIterator = boxFolder.getFoldersInFolder().iterator();
+        while (foldersIterator.hasNext()) {
+            BoxFolder subfolder = foldersIterator.next();
+            TreeListItem item = new TreeListItem();
+            item.id = subfolder.getId();
+            item.name = subfolder.getFolderName();
+            item.type = TreeListItem.TYPE_FOLDER;
+            item.folder = subfolder;
+            item.updated = subfolder.getUpdated();
+            items[i] = item;
+            i++;
+        }
+
+        Iterator<? extends BoxFile> filesIterator = boxFolder.getFilesInFolder().iterator();
+        while (filesIterator.hasNext()) {
+            BoxFile boxFile = filesIterator.next();
+            TreeListItem item = new TreeListItem();
+            item.id = boxFile.getId();
+            item.name = boxFile.getFileName();
+            item.type = TreeListItem.TYPE_FILE;
+            item.file = boxFile;
+            item.updated = boxFile.getUpdated();
+            items[i] = item;
+            i++;
+        }
+
+        adapter.notifyDataSetChanged();
+        ProgressBar progressBar = (ProgressBar) findViewById(R.id.progressBar);
+        progressBar.setVisibility(View.GONE);
+    }
+
     @Override
     protected void onListItemClick(ListView l, View v, final int position, long id) {
 
@@ -284,13 +382,14 @@ public class Browse extends ListActivity {
                     else {
                         target = Box.TYPE_FILE;
                     }
-                    box.delete(authToken, target, items[position].id, new DeleteListener() {
+                    // The list is rebuilt before onComplete runs, so remember the name now
+                    final String name = items[position].name;
+                    box.delete(authToken, target, items[position].id, tree, new DeleteListener() {
 
                         @Override
                         public void onComplete(final String status) {
                             if (status.equals(DeleteListener.STATUS_S_DELETE_NODE)) {
-                                Toast.makeText(getApplicationContext(), "Successfully deleted " + items[position].name, Toast.LENGTH_SHORT).show();
-                                refresh();
+                                Toast.makeText(getApplicationContext(), "Successfully deleted " + name, Toast.LENGTH_SHORT).show();
                             }
                             else {
                                 Toast.makeText(getApplicationContext(), "Delete failed - " + status, Toast.LENGTH_SHORT).show();
@@ -315,13 +414,14 @@ public class Browse extends ListActivity {
                     else {
                         target = Box.TYPE_FILE;
                     }
-                    box.rename(authToken, target, items[position].id, "renamed " + items[position].name, new RenameListener() {
+                    // The list is rebuilt before onComplete runs, so remember the name now
+                    final String name = items[position].name;
+                    box.rename(authToken, target, items[position].id, "renamed " + name, tree, new RenameListener() {
 
                         @Override
                         public void onComplete(final String status) {
                             if (status.equals(RenameListener.STATUS_S_RENAME_NODE)) {
-                                Toast.makeText(getApplicationContext(), "Successfully renamed " + items[position].name, Toast.LENGTH_SHORT).show();
-                                refresh();
+                                Toast.makeText(getApplicationContext(), "Successfully renamed " + name, Toast.LENGTH_SHORT).show();
                             }
                             else {
                                 Toast.makeText(getApplicationContext(), "Rename failed - " + status, Toast.LENGTH_SHORT).show();
@@ -417,13 +517,12 @@ public class Browse extends ListActivity {
                 Date d = new Date();
                 SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-DD HH.mm.ss");
                 String new_folder_name = sdf.format(d);
-                box.createFolder(authToken, folderId, new_folder_name, false, new CreateFolderListener() {
+                box.createFolder(authToken, folderId, new_folder_name, false, tree, new CreateFolderListener() {
 
                     @Override
                     public void onComplete(final BoxFolder boxFolder, final String status) {
                         if (status.equals(CreateFolderListener.STATUS_CREATE_OK)) {
                             Toast.makeText(getApplicationContext(), "Folder created - " + boxFolder.getFolderName(), Toast.LENGTH_SHORT).show();
-                            refresh();
                         }
                         else {
                             Toast.makeText(getApplicationContext(), "Folder creation failed - " + status, Toast.LENGTH_LONG).show();
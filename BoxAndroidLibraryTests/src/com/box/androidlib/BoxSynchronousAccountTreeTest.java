@@ -0,0 +1,371 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import com.box.androidlib.DAO.BoxFile;
+import com.box.androidlib.DAO.BoxFolder;
+import com.box.androidlib.ResponseParsers.AccountTreeResponseParser;
+import com.box.androidlib.ResponseParsers.AccountTreeVisitor;
+import com.box.androidlib.Transport.BoxHttpRequest;
+import com.box.androidlib.Transport.BoxHttpResponse;
+import com.box.androidlib.Transport.LoopbackHttpTransport;
+import com.box.androidlib.Utils.ZippedTreeInputStreamTest;
+
+/**
+ * Tests for get_account_tree in {@link BoxSynchronous}: the streaming visitor and the tree built by {@link AccountTreeResponseParser} both report what a DOM
+ * parse of the same response finds, with the same parents and in document order, whether the tree is sent zipped or not.
+ * 
+ * @author developers@box.net
+ */
+public class BoxSynchronousAccountTreeTest extends LoopbackTestCase {
+
+    /** Folder id of the requested tree. */
+    private static final long ROOT_ID = 0;
+
+    /** Instance under test. */
+    private BoxSynchronous mBoxSynchronous;
+    /** The tree XML the fake API returns, from the opening to the closing tree tag. */
+    private String mTreeXml;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mBoxSynchronous = BoxSynchronous.getInstance(API_KEY);
+        mTreeXml = buildTree(new Random(4), 4);
+        serve(new LoopbackHttpTransport.Responder() {
+
+            @Override
+            public BoxHttpResponse respond(final BoxHttpRequest request, final byte[] requestBody) throws IOException {
+                assertEquals("get_account_tree", getParam(request, "action"));
+                if (request.getUrl().indexOf("nozip") >= 0) {
+                    return xml("<status>listing_ok</status>" + mTreeXml);
+                }
+                final String tree = mTreeXml.substring("<tree>".length(), mTreeXml.length() - "</tree>".length());
+                return xml("<status>listing_ok</status><tree>"
+                    + ZippedTreeInputStreamTest.zipTree("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + tree, ZippedTreeInputStreamTest.FORMAT_ZIP) + "</tree>");
+            }
+        });
+    }
+
+    /**
+     * The visitor is called for every folder and file in document order, with the attributes, tags and parent ids of the response.
+     * 
+     * @throws Exception
+     *             if the test fails
+     */
+    public void testVisitorMatchesDomParse() throws Exception {
+        final StringBuilder visited = new StringBuilder();
+        mBoxSynchronous.getAccountTree(AUTH_TOKEN, ROOT_ID, new String[] {}, new AccountTreeVisitor() {
+
+            /** Depth of the current folder. */
+            private int mDepth;
+
+            @Override
+            public void onFolderStart(final BoxFolder folder) {
+                appendFolder(visited, mDepth++, folder.getId(), folder.getFolderName(), mDepth == 1 ? -1 : folder.getParentFolderId(), folder.getTagIds());
+                assertTrue(folder.getFilesInFolder().isEmpty());
+                assertTrue(folder.getFoldersInFolder().isEmpty());
+            }
+
+            @Override
+            public void onFile(final BoxFile file) {
+                assertEquals(file.getFolderId(), file.getFolder().getId());
+                appendFile(visited, mDepth, file.getId(), file.getFileName(), file.getFolderId(), file.getSize(), file.getSha1(), file.getTagIds());
+            }
+
+            @Override
+            public void onFolderEnd(final BoxFolder folder) {
+                mDepth--;
+            }
+        });
+        assertEquals(domOutline(), visited.toString());
+    }
+
+    /**
+     * The built tree holds every folder and file of the response in order, linked to its parent.
+     * 
+     * @throws Exception
+     *             if the test fails
+     */
+    public void testTreeMatchesDomParse() throws Exception {
+        final AccountTreeResponseParser parser = mBoxSynchronous.getAccountTree(AUTH_TOKEN, ROOT_ID, new String[] {});
+        assertEquals("listing_ok", parser.getStatus());
+        final StringBuilder built = new StringBuilder();
+        appendTree(built, 0, parser.getFolder(), null);
+        assertEquals(domOutline(), built.toString());
+        assertSame(parser.getFolder(), parser.getTree().getFolder(ROOT_ID));
+    }
+
+    /**
+     * A zipped tree is inflated while it is parsed into the same tree as the nozip response.
+     * 
+     * @throws Exception
+     *             if the test fails
+     */
+    public void testZippedTreeMatchesDomParse() throws Exception {
+        final AccountTreeResponseParser parser = mBoxSynchronous.getAccountTree(AUTH_TOKEN, ROOT_ID, new String[] {}, true);
+        assertEquals("listing_ok", parser.getStatus());
+        final StringBuilder built = new StringBuilder();
+        appendTree(built, 0, parser.getFolder(), null);
+        assertEquals(domOutline(), built.toString());
+    }
+
+    /**
+     * Outline the tree of the response by walking its DOM.
+     * 
+     * @return One line per folder and file
+     * @throws Exception
+     *             if the XML cannot be parsed
+     */
+    private String domOutline() throws Exception {
+        final Element tree = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(mTreeXml.getBytes("UTF-8")))
+            .getDocumentElement();
+        final StringBuilder outline = new StringBuilder();
+        appendDomFolder(outline, 0, child(tree, "folder"), -1);
+        return outline.toString();
+    }
+
+    /**
+     * Outline a folder element and everything in it.
+     * 
+     * @param outline
+     *            Where to append
+     * @param depth
+     *            Depth of the folder
+     * @param folder
+     *            The folder element
+     * @param parentId
+     *            Id of the parent folder, or -1 for the requested folder
+     */
+    private static void appendDomFolder(final StringBuilder outline, final int depth, final Element folder, final long parentId) {
+        final long id = Long.parseLong(folder.getAttribute("id"));
+        appendFolder(outline, depth, id, folder.getAttribute("name"), parentId, domTags(folder));
+        final Element files = child(folder, "files");
+        for (Node node = files == null ? null : files.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element) {
+                final Element file = (Element) node;
+                appendFile(outline, depth + 1, Long.parseLong(file.getAttribute("id")), file.getAttribute("file_name"), id,
+                    Long.parseLong(file.getAttribute("size")), file.getAttribute("sha1"), domTags(file));
+            }
+        }
+        final Element folders = child(folder, "folders");
+        for (Node node = folders == null ? null : folders.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element) {
+                appendDomFolder(outline, depth + 1, (Element) node, id);
+            }
+        }
+    }
+
+    /**
+     * Outline a built folder and everything in it.
+     * 
+     * @param outline
+     *            Where to append
+     * @param depth
+     *            Depth of the folder
+     * @param folder
+     *            The folder
+     * @param parent
+     *            Its parent folder, or null for the requested folder
+     */
+    private static void appendTree(final StringBuilder outline, final int depth, final BoxFolder folder, final BoxFolder parent) {
+        assertSame(parent, folder.getParentFolder());
+        appendFolder(outline, depth, folder.getId(), folder.getFolderName(), parent == null ? -1 : folder.getParentFolderId(), folder.getTagIds());
+        final List<? extends BoxFile> files = folder.getFilesInFolder();
+        for (int i = 0; i < files.size(); i++) {
+            final BoxFile file = files.get(i);
+            assertSame(folder, file.getFolder());
+            appendFile(outline, depth + 1, file.getId(), file.getFileName(), file.getFolderId(), file.getSize(), file.getSha1(), file.getTagIds());
+        }
+        final List<? extends BoxFolder> folders = folder.getFoldersInFolder();
+        for (int i = 0; i < folders.size(); i++) {
+            appendTree(outline, depth + 1, folders.get(i), folder);
+        }
+    }
+
+    /**
+     * Append the outline line of a folder.
+     * 
+     * @param outline
+     *            Where to append
+     * @param depth
+     *            Depth of the folder
+     * @param id
+     *            Its id
+     * @param name
+     *            Its name
+     * @param parentId
+     *            Id of its parent, or -1
+     * @param tagIds
+     *            Its tag ids
+     */
+    private static void appendFolder(final StringBuilder outline, final int depth, final long id, final String name, final long parentId,
+        final List<Long> tagIds) {
+        indent(outline, depth);
+        outline.append("folder ").append(id).append(" '").append(name).append("' in ").append(parentId).append(" tags ").append(tagIds).append('\n');
+    }
+
+    /**
+     * Append the outline line of a file.
+     * 
+     * @param outline
+     *            Where to append
+     * @param depth
+     *            Depth of the file
+     * @param id
+     *            Its id
+     * @param name
+     *            Its name
+     * @param folderId
+     *            Id of its folder
+     * @param size
+     *            Its size
+     * @param sha1
+     *            Its sha1
+     * @param tagIds
+     *            Its tag ids
+     */
+    private static void appendFile(final StringBuilder outline, final int depth, final long id, final String name, final long folderId, final long size,
+        final String sha1, final List<Long> tagIds) {
+        indent(outline, depth);
+        outline.append("file ").append(id).append(" '").append(name).append("' in ").append(folderId).append(' ').append(size).append(' ').append(sha1)
+            .append(" tags ").append(tagIds).append('\n');
+    }
+
+    /**
+     * Indent an outline line.
+     * 
+     * @param outline
+     *            Where to append
+     * @param depth
+     *            Depth of the line
+     */
+    private static void indent(final StringBuilder outline, final int depth) {
+        for (int i = 0; i < depth; i++) {
+            outline.append("  ");
+        }
+    }
+
+    /**
+     * Get the tag ids of a folder or file element.
+     * 
+     * @param element
+     *            The element
+     * @return Its tag ids, in order
+     */
+    private static List<Long> domTags(final Element element) {
+        final List<Long> ids = new ArrayList<Long>();
+        final Element tags = child(element, "tags");
+        for (Node node = tags == null ? null : tags.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element) {
+                ids.add(Long.valueOf(((Element) node).getAttribute("id")));
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Get the first child element with a name.
+     * 
+     * @param parent
+     *            The parent element
+     * @param name
+     *            Name of the child
+     * @return The child, or null
+     */
+    private static Element child(final Element parent, final String name) {
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element && node.getNodeName().equals(name)) {
+                return (Element) node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Build the tree XML of a response: folders with tags, files and subfolders, and names that need escaping.
+     * 
+     * @param random
+     *            Source of the shape of the tree
+     * @param depth
+     *            Number of folder levels below the requested folder
+     * @return The tree element
+     */
+    static String buildTree(final Random random, final int depth) {
+        final StringBuilder xml = new StringBuilder("<tree>");
+        appendXmlFolder(xml, random, new long[] {ROOT_ID}, depth);
+        return xml.append("</tree>").toString();
+    }
+
+    /**
+     * Append a folder element with random content.
+     * 
+     * @param xml
+     *            Where to append
+     * @param random
+     *            Source of the shape of the tree
+     * @param nextId
+     *            Next id to use, incremented for every folder and file
+     * @param depth
+     *            Number of folder levels below this one
+     */
+    private static void appendXmlFolder(final StringBuilder xml, final Random random, final long[] nextId, final int depth) {
+        final long id = nextId[0]++;
+        xml.append("<folder id=\"").append(id).append("\" name=\"folder &amp; ").append(id).append(" \u00e9\" shared=\"0\">");
+        appendXmlTags(xml, random);
+        xml.append("<files>");
+        final int files = random.nextInt(4);
+        for (int i = 0; i < files; i++) {
+            final long fileId = nextId[0]++;
+            xml.append("<file id=\"").append(fileId).append("\" file_name=\"file &lt;").append(fileId).append("&gt;.txt\" size=\"")
+                .append(random.nextInt(1000000)).append("\" sha1=\"").append(Long.toHexString(random.nextLong())).append("\">");
+            appendXmlTags(xml, random);
+            xml.append("</file>");
+        }
+        xml.append("</files><folders>");
+        if (depth > 0) {
+            final int folders = 1 + random.nextInt(3);
+            for (int i = 0; i < folders; i++) {
+                appendXmlFolder(xml, random, nextId, depth - 1);
+            }
+        }
+        xml.append("</folders></folder>");
+    }
+
+    /**
+     * Append a tags element with zero to two tags.
+     * 
+     * @param xml
+     *            Where to append
+     * @param random
+     *            Source of the tags
+     */
+    private static void appendXmlTags(final StringBuilder xml, final Random random) {
+        xml.append("<tags>");
+        final int tags = random.nextInt(3);
+        for (int i = 0; i < tags; i++) {
+            xml.append("<tag id=\"").append(100 + random.nextInt(50)).append("\"/>");
+        }
+        xml.append("</tags>");
+    }
+}
@@ -0,0 +1,267 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.box.androidlib.DAO.BoxFile;
+import com.box.androidlib.DAO.BoxFolder;
+import com.box.androidlib.DAO.BoxTree;
+import com.box.androidlib.ResponseListeners.AddToTagListener;
+import com.box.androidlib.ResponseListeners.BatchListener;
+import com.box.androidlib.ResponseListeners.DeleteListener;
+import com.box.androidlib.ResponseListeners.GetFileInfoListener;
+import com.box.androidlib.ResponseListeners.MoveListener;
+import com.box.androidlib.ResponseParsers.BatchResponseParser;
+import com.box.androidlib.ResponseParsers.DefaultResponseParser;
+import com.box.androidlib.ResponseParsers.FileResponseParser;
+import com.box.androidlib.Transport.BoxHttpRequest;
+import com.box.androidlib.Transport.BoxHttpResponse;
+import com.box.androidlib.Transport.LoopbackHttpTransport;
+
+/**
+ * Tests for the batch methods of {@link BoxSynchronous}: getFileInfo for several files, and delete, move and addToTag for several items.
+ * 
+ * @author developers@box.net
+ */
+public class BoxSynchronousBatchTest extends LoopbackTestCase {
+
+    /** The API. */
+    private BoxSynchronous mBoxSynchronous;
+    /** The fake Box API. */
+    private FakeApi mApi;
+    /** Its transport. */
+    private LoopbackHttpTransport mTransport;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mBoxSynchronous = BoxSynchronous.getInstance(API_KEY);
+        mApi = new FakeApi();
+        mTransport = serve(mApi);
+    }
+
+    /**
+     * Responses are in the order of the ids, an id given twice is requested once, and no more requests are made at a time than asked for.
+     */
+    public void testGetFileInfo() {
+        mApi.mDelay = 10;
+        final long[] ids = {5, 3, 5, 9, 11, 12, 13, 14};
+        final BatchResponseParser<FileResponseParser> response = mBoxSynchronous.getFileInfo(AUTH_TOKEN, ids, 3, null, null);
+        assertEquals(BatchListener.STATUS_BATCH_OK, response.getStatus());
+        assertEquals(ids.length, response.size());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(GetFileInfoListener.STATUS_S_GET_FILE_INFO, response.getStatus(i));
+            assertEquals(ids[i], response.getResponse(i).getFile().getId());
+        }
+        assertEquals(7, mTransport.getRequestCount());
+        assertTrue("at most 3 requests at a time, saw " + mApi.mMostInFlight.get(), mApi.mMostInFlight.get() <= 3);
+        assertTrue(mApi.mMostInFlight.get() > 1);
+    }
+
+    /**
+     * Each item gets its own status or IOException, and the batch is incomplete.
+     */
+    public void testPartialFailure() {
+        mApi.mFailingIds.add(Long.valueOf(3));
+        mApi.mDeniedIds.add(Long.valueOf(4));
+        final BatchResponseParser<FileResponseParser> response = mBoxSynchronous.getFileInfo(AUTH_TOKEN, new long[] {1, 3, 4, 5}, 4, null, null);
+        assertEquals(BatchListener.STATUS_BATCH_INCOMPLETE, response.getStatus());
+        assertEquals(2, response.getSucceededCount());
+        assertTrue(response.isSucceeded(0));
+        assertNull(response.getStatus(1));
+        assertEquals("connection reset", response.getException(1).getMessage());
+        assertEquals("e_access_denied", response.getStatus(2));
+        assertFalse(response.isSucceeded(2));
+        assertTrue(response.isSucceeded(3));
+    }
+
+    /**
+     * Interrupting the calling thread cancels the batch. The batch returns only once its requests have stopped, and the items it did not get to are not
+     * attempted.
+     * 
+     * @throws InterruptedException
+     *             if the test is interrupted
+     */
+    public void testCancel() throws InterruptedException {
+        mApi.mDelay = 20;
+        final long[] ids = new long[100];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i + 1;
+        }
+        final AtomicReference<BatchResponseParser<FileResponseParser>> result = new AtomicReference<BatchResponseParser<FileResponseParser>>();
+        final Thread caller = new Thread() {
+
+            @Override
+            public void run() {
+                result.set(mBoxSynchronous.getFileInfo(AUTH_TOKEN, ids, 4, null, null));
+            }
+        };
+        caller.start();
+        Thread.sleep(100);
+        caller.interrupt();
+        caller.join(5000);
+        assertFalse(caller.isAlive());
+        final BatchResponseParser<FileResponseParser> response = result.get();
+        assertEquals(BatchListener.STATUS_BATCH_CANCELLED, response.getStatus());
+        final int completed = response.getCompletedCount();
+        assertTrue(completed > 0);
+        assertTrue(completed < ids.length);
+        assertEquals(BatchListener.STATUS_NOT_ATTEMPTED, response.getStatus(ids.length - 1));
+        Thread.sleep(100);
+        assertEquals(completed, response.getCompletedCount());
+        assertEquals(0, mApi.mInFlight.get());
+    }
+
+    /**
+     * Moving items changes the tree for the items that were moved, and only for those.
+     */
+    public void testMoveChangesTree() {
+        final BoxTree tree = newTree();
+        mApi.mDeniedIds.add(Long.valueOf(11));
+        final String[] types = {Box.TYPE_FILE, Box.TYPE_FILE, Box.TYPE_FOLDER};
+        final BatchResponseParser<DefaultResponseParser> response = mBoxSynchronous.move(AUTH_TOKEN, types, new long[] {10, 11, 3}, 1, 4, tree, null,
+            null);
+        assertEquals(BatchListener.STATUS_BATCH_INCOMPLETE, response.getStatus());
+        assertEquals(MoveListener.STATUS_S_MOVE_NODE, response.getStatus(0));
+        assertEquals("e_access_denied", response.getStatus(1));
+        assertEquals(1, tree.getFile(10).getFolderId());
+        assertEquals(0, tree.getFile(11).getFolderId());
+        assertEquals(1, tree.getFolder(3).getParentFolderId());
+    }
+
+    /**
+     * Items inside a folder that is deleted in the same batch are not deleted on their own, and get the response of the folder. An item given twice is
+     * deleted once.
+     */
+    public void testDeleteSkipsNestedItems() {
+        final BoxTree tree = newTree();
+        final String[] types = {Box.TYPE_FILE, Box.TYPE_FOLDER, Box.TYPE_FILE, Box.TYPE_FILE};
+        final BatchResponseParser<DefaultResponseParser> response = mBoxSynchronous.delete(AUTH_TOKEN, types, new long[] {30, 3, 10, 10}, 4, tree, null,
+            null);
+        assertEquals(BatchListener.STATUS_BATCH_OK, response.getStatus());
+        for (int i = 0; i < response.size(); i++) {
+            assertEquals(DeleteListener.STATUS_S_DELETE_NODE, response.getStatus(i));
+        }
+        assertEquals(2, mTransport.getRequestCount());
+        assertFalse(mApi.mTargets.contains(Long.valueOf(30)));
+        assertNull(tree.getFolder(3));
+        assertNull(tree.getFile(30));
+        assertNull(tree.getFile(10));
+        assertNotNull(tree.getFile(11));
+    }
+
+    /**
+     * addToTag sends the tags with every request.
+     */
+    public void testAddToTag() {
+        final BatchResponseParser<DefaultResponseParser> response = mBoxSynchronous.addToTag(AUTH_TOKEN,
+            new String[] {Box.TYPE_FILE, Box.TYPE_FOLDER}, new long[] {10, 3}, new String[] {"red", "blue"}, 2, null, null);
+        assertEquals(BatchListener.STATUS_BATCH_OK, response.getStatus());
+        assertEquals(AddToTagListener.STATUS_ADDTOTAG_OK, response.getStatus(1));
+        assertEquals(2, mApi.mTaggedRequests.get());
+    }
+
+    /**
+     * Build a tree: folder 0 holds folders 1 and 3 and files 10 and 11, folder 3 holds file 30.
+     * 
+     * @return The tree
+     */
+    private static BoxTree newTree() {
+        final BoxFolder root = new BoxFolder();
+        root.setId(0);
+        final BoxTree tree = new BoxTree(root);
+        final long[] folderIds = {1, 3};
+        for (int i = 0; i < folderIds.length; i++) {
+            final BoxFolder folder = new BoxFolder();
+            folder.setId(folderIds[i]);
+            folder.setFolderName("folder" + folderIds[i]);
+            tree.addFolder(0, folder);
+        }
+        final long[] fileIds = {10, 11, 30};
+        for (int i = 0; i < fileIds.length; i++) {
+            final BoxFile file = new BoxFile();
+            file.setId(fileIds[i]);
+            file.setFileName("file" + fileIds[i]);
+            tree.addFile(fileIds[i] == 30 ? 3 : 0, file);
+        }
+        return tree;
+    }
+
+    /**
+     * Fake Box API answering get_file_info, delete, move and add_to_tag.
+     */
+    private static final class FakeApi implements LoopbackHttpTransport.Responder {
+
+        /** Milliseconds to take for every request. */
+        private volatile long mDelay;
+        /** Ids whose requests fail with an IOException. */
+        private final Set<Long> mFailingIds = Collections.synchronizedSet(new HashSet<Long>());
+        /** Ids whose requests are answered with e_access_denied. */
+        private final Set<Long> mDeniedIds = Collections.synchronizedSet(new HashSet<Long>());
+        /** Target ids of the requests. */
+        private final Set<Long> mTargets = Collections.synchronizedSet(new HashSet<Long>());
+        /** Number of add_to_tag requests with both tags. */
+        private final AtomicInteger mTaggedRequests = new AtomicInteger();
+        /** Number of requests being answered. */
+        private final AtomicInteger mInFlight = new AtomicInteger();
+        /** Highest number of requests answered at the same time. */
+        private final AtomicInteger mMostInFlight = new AtomicInteger();
+
+        @Override
+        public BoxHttpResponse respond(final BoxHttpRequest request, final byte[] requestBody) throws IOException {
+            final int inFlight = mInFlight.incrementAndGet();
+            try {
+                synchronized (mMostInFlight) {
+                    mMostInFlight.set(Math.max(mMostInFlight.get(), inFlight));
+                }
+                if (mDelay > 0) {
+                    try {
+                        Thread.sleep(mDelay);
+                    }
+                    catch (InterruptedException e) {
+                        throw new InterruptedIOException();
+                    }
+                }
+                final String action = getParam(request, "action");
+                final String fileId = getParam(request, "file_id");
+                final Long id = Long.valueOf(fileId != null ? fileId : getParam(request, "target_id"));
+                mTargets.add(id);
+                if (mFailingIds.contains(id)) {
+                    throw new IOException("connection reset");
+                }
+                if (mDeniedIds.contains(id)) {
+                    return status("e_access_denied");
+                }
+                if ("get_file_info".equals(action)) {
+                    return xml("<status>s_get_file_info</status><info><file_id>" + id + "</file_id><file_name>file" + id + "</file_name></info>");
+                }
+                if ("add_to_tag".equals(action)) {
+                    if ("red".equals(getParam(request, "tags[0]")) && "blue".equals(getParam(request, "tags[1]"))) {
+                        mTaggedRequests.incrementAndGet();
+                    }
+                    return status(AddToTagListener.STATUS_ADDTOTAG_OK);
+                }
+                return status("s_" + action + "_node");
+            }
+            finally {
+                mInFlight.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.box.androidlib.DAO.BoxFile;
+import com.box.androidlib.DAO.BoxFolder;
+import com.box.androidlib.DAO.BoxTree;
+import com.box.androidlib.ResponseListeners.CreateFolderListener;
+import com.box.androidlib.ResponseListeners.DeleteListener;
+import com.box.androidlib.ResponseListeners.MoveListener;
+import com.box.androidlib.ResponseListeners.RenameListener;
+import com.box.androidlib.Transport.BoxHttpRequest;
+import com.box.androidlib.Transport.BoxHttpResponse;
+import com.box.androidlib.Transport.LoopbackHttpTransport;
+
+/**
+ * Tests that {@link Box} patches a tree after createFolder, delete, move and rename succeed, and leaves it alone when they do not.
+ * 
+ * @author developers@box.net
+ */
+public class BoxTreePatchTest extends LoopbackTestCase {
+
+    /** The API. */
+    private Box mBox;
+    /** The tree, folder 1 holding folders 2 and 3 and file 10. */
+    private BoxTree mTree;
+    /** Status of the next response, or null to fail the request. */
+    private volatile String mStatus;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mBox = Box.getInstance(API_KEY);
+        serve(new LoopbackHttpTransport.Responder() {
+
+            @Override
+            public BoxHttpResponse respond(final BoxHttpRequest request, final byte[] requestBody) throws IOException {
+                if (mStatus == null) {
+                    throw new IOException("connection reset");
+                }
+                if ("create_folder".equals(getParam(request, "action"))) {
+                    return xml("<status>" + mStatus + "</status><folder><folder_id>5</folder_id><folder_name>" + getParam(request, "name")
+                        + "</folder_name></folder>");
+                }
+                return status(mStatus);
+            }
+        });
+        final BoxFolder root = new BoxFolder();
+        root.setId(1);
+        mTree = new BoxTree(root);
+        for (long id = 2; id <= 3; id++) {
+            final BoxFolder folder = new BoxFolder();
+            folder.setId(id);
+            folder.setFolderName("folder" + id);
+            mTree.addFolder(1, folder);
+        }
+        final BoxFile file = new BoxFile();
+        file.setId(10);
+        file.setFileName("file10");
+        mTree.addFile(1, file);
+    }
+
+    /**
+     * A folder created under a folder of the tree is added to it.
+     * 
+     * @throws InterruptedException
+     *             if the test is interrupted
+     */
+    public void testCreateFolder() throws InterruptedException {
+        mStatus = CreateFolderListener.STATUS_CREATE_OK;
+        final Callback callback = new Callback();
+        mBox.createFolder(AUTH_TOKEN, 2, "new", false, mTree, callback);
+        callback.await();
+        assertEquals(CreateFolderListener.STATUS_CREATE_OK, callback.mStatus);
+        assertSame(callback.mFolder, mTree.getFolder(5));
+        assertSame(mTree.getFolder(5), mTree.getFolderByPath("/folder2/new"));
+    }
+
+    /**
+     * Successful delete, move and rename change the tree before the listener runs.
+     * 
+     * @throws InterruptedException
+     *             if the test is interrupted
+     */
+    public void testDeleteMoveRename() throws InterruptedException {
+        mStatus = RenameListener.STATUS_S_RENAME_NODE;
+        Callback callback = new Callback();
+        mBox.rename(AUTH_TOKEN, Box.TYPE_FILE, 10, "renamed", mTree, callback);
+        callback.await();
+        assertEquals("renamed", callback.mFileName);
+
+        mStatus = MoveListener.STATUS_S_MOVE_NODE;
+        callback = new Callback();
+        mBox.move(AUTH_TOKEN, Box.TYPE_FOLDER, 3, 2, mTree, callback);
+        callback.await();
+        assertEquals(2, mTree.getFolder(3).getParentFolderId());
+
+        mStatus = DeleteListener.STATUS_S_DELETE_NODE;
+        callback = new Callback();
+        mBox.delete(AUTH_TOKEN, Box.TYPE_FOLDER, 2, mTree, callback);
+        callback.await();
+        assertNull(mTree.getFolder(2));
+        assertNull(mTree.getFolder(3));
+        assertEquals(1, mTree.getFolderCount());
+    }
+
+    /**
+     * A failed status or an IOException leaves the tree as it was.
+     * 
+     * @throws InterruptedException
+     *             if the test is interrupted
+     */
+    public void testFailureLeavesTree() throws InterruptedException {
+        mStatus = RenameListener.STATUS_E_FILENAME_IN_USE;
+        Callback callback = new Callback();
+        mBox.rename(AUTH_TOKEN, Box.TYPE_FILE, 10, "renamed", mTree, callback);
+        callback.await();
+        assertEquals("file10", callback.mFileName);
+
+        mStatus = null;
+        callback = new Callback();
+        mBox.delete(AUTH_TOKEN, Box.TYPE_FOLDER, 2, mTree, callback);
+        callback.await();
+        assertNotNull(callback.mException);
+        assertNotNull(mTree.getFolder(2));
+        assertEquals(3, mTree.getFolderCount());
+    }
+
+    /**
+     * Listener for every action, recording what it was told and what the tree looked like at that time.
+     */
+    private final class Callback implements CreateFolderListener, DeleteListener, MoveListener, RenameListener {
+
+        /** Released when the listener has run. */
+        private final CountDownLatch mDone = new CountDownLatch(1);
+        /** The status. */
+        private String mStatus;
+        /** The folder created. */
+        private BoxFolder mFolder;
+        /** Name of file 10 in the tree when the listener ran. */
+        private String mFileName;
+        /** The IOException. */
+        private IOException mException;
+
+        @Override
+        public void onComplete(final BoxFolder boxFolder, final String status) {
+            mFolder = boxFolder;
+            onComplete(status);
+        }
+
+        @Override
+        public void onComplete(final String status) {
+            mStatus = status;
+            mFileName = mTree.getFile(10).getFileName();
+            mDone.countDown();
+        }
+
+        @Override
+        public void onIOException(final IOException e) {
+            mException = e;
+            mDone.countDown();
+        }
+
+        /**
+         * Wait for the listener to run.
+         * 
+         * @throws InterruptedException
+         *             if the test is interrupted
+         */
+        private void await() throws InterruptedException {
+            assertTrue(mDone.await(5, TimeUnit.SECONDS));
+        }
+    }
+}
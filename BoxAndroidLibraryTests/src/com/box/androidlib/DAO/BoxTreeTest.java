@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.DAO;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.box.androidlib.Box;
+
+/**
+ * Tests for {@link BoxTree}: patching in place keeps the indexes, parent references and folder paths as a fresh index would build them, and tells the
+ * listeners.
+ * 
+ * @author developers@box.net
+ */
+public class BoxTreeTest extends TestCase {
+
+    /** The tree. */
+    private BoxTree mTree;
+    /** Events told to the listener, e.g. "moved file 10 1>3". */
+    private final List<String> mEvents = new ArrayList<String>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mTree = newTree();
+        mTree.addListener(new BoxTree.Listener() {
+
+            @Override
+            public void onAdded(final String type, final long id, final long parentId) {
+                mEvents.add("added " + type + " " + id + " " + parentId);
+            }
+
+            @Override
+            public void onRemoved(final String type, final long id, final long parentId) {
+                mEvents.add("removed " + type + " " + id + " " + parentId);
+            }
+
+            @Override
+            public void onMoved(final String type, final long id, final long oldParentId, final long newParentId) {
+                mEvents.add("moved " + type + " " + id + " " + oldParentId + ">" + newParentId);
+            }
+
+            @Override
+            public void onRenamed(final String type, final long id, final long parentId, final String oldName) {
+                mEvents.add("renamed " + type + " " + id + " " + oldName);
+            }
+        });
+    }
+
+    /**
+     * Renaming changes the name the item is found by.
+     */
+    public void testRename() {
+        assertNotNull(mTree.getFileByPath("/a/file20"));
+        assertTrue(mTree.rename(Box.TYPE_FILE, 20, "renamed"));
+        assertTrue(mTree.rename(Box.TYPE_FOLDER, 2, "b"));
+        assertNull(mTree.getFileByPath("/a/file20"));
+        assertSame(mTree.getFile(20), mTree.getFileByPath("/b/renamed"));
+        assertSame(mTree.getFolder(4), mTree.getFolderByPath("/b/a1"));
+        assertEquals("[renamed file 20 file20, renamed folder 2 a]", mEvents.toString());
+        assertFalse(mTree.rename(Box.TYPE_FILE, 99, "missing"));
+        assertEquals(2, mEvents.size());
+    }
+
+    /**
+     * Removing a folder removes everything below it from the indexes.
+     */
+    public void testRemove() {
+        assertTrue(mTree.remove(Box.TYPE_FOLDER, 2));
+        assertNull(mTree.getFolder(2));
+        assertNull(mTree.getFolder(4));
+        assertNull(mTree.getFile(20));
+        assertNull(mTree.getFile(40));
+        assertNull(mTree.getFolderByPath("/a"));
+        assertEquals(2, mTree.getFolderCount());
+        assertEquals(1, mTree.getFileCount());
+        assertEquals(1, mTree.getRoot().getFoldersInFolder().size());
+        assertTrue(mTree.remove(Box.TYPE_FILE, 10));
+        assertTrue(mTree.getRoot().getFilesInFolder().isEmpty());
+        assertFalse(mTree.remove(Box.TYPE_FILE, 10));
+        assertFalse(mTree.remove(Box.TYPE_FOLDER, 1));
+        assertEquals("[removed folder 2 1, removed file 10 1]", mEvents.toString());
+    }
+
+    /**
+     * Moving a folder updates the folder paths of everything below it, a folder cannot be moved into itself, and a move out of the tree removes the item.
+     */
+    public void testMove() {
+        assertTrue(mTree.move(Box.TYPE_FOLDER, 2, 3));
+        assertEquals(3, mTree.getFolder(2).getParentFolderId());
+        assertEquals("/1/3/2/4", mTree.getFolder(4).getFolderPathIds());
+        assertSame(mTree.getFile(40), mTree.getFileByPath("/c/a/a1/file40"));
+        assertTrue(mTree.move(Box.TYPE_FILE, 10, 4));
+        assertSame(mTree.getFolder(4), mTree.getFile(10).getFolder());
+        assertEquals(4, mTree.getFile(10).getFolderId());
+        assertFalse(mTree.move(Box.TYPE_FOLDER, 3, 4));
+        assertEquals(1, mTree.getFolder(3).getParentFolderId());
+        assertTrue(mTree.move(Box.TYPE_FILE, 20, 99));
+        assertNull(mTree.getFile(20));
+        assertEquals("[moved folder 2 1>3, moved file 10 1>4, removed file 20 2]", mEvents.toString());
+
+        final BoxTree fresh = new BoxTree(mTree.getRoot());
+        assertEquals(fresh.getFolderCount(), mTree.getFolderCount());
+        assertEquals(fresh.getFileCount(), mTree.getFileCount());
+    }
+
+    /**
+     * An added folder is indexed with its children, and its path is set.
+     */
+    public void testAddFolder() {
+        final BoxFolder folder = newFolder(5, "new");
+        final BoxFile file = new BoxFile();
+        file.setId(50);
+        file.setFileName("file50");
+        folder.addChildFile(file);
+        assertTrue(mTree.addFolder(4, folder));
+        assertSame(folder, mTree.getFolderByPath("/a/a1/new"));
+        assertSame(file, mTree.getFile(50));
+        assertEquals("/1/2/4/5", folder.getFolderPathIds());
+        assertFalse(mTree.addFolder(99, newFolder(6, "orphan")));
+        assertNull(mTree.getFolder(6));
+        assertEquals("[added folder 5 4]", mEvents.toString());
+    }
+
+    /**
+     * Build a tree: folder 1 holds folders a (2) and c (3) and file 10, a holds folder a1 (4) and file 20, and a1 holds file 40.
+     * 
+     * @return The tree
+     */
+    private static BoxTree newTree() {
+        final BoxTree tree = new BoxTree(newFolder(1, "root"));
+        tree.addFolder(1, newFolder(2, "a"));
+        tree.addFolder(1, newFolder(3, "c"));
+        tree.addFolder(2, newFolder(4, "a1"));
+        final long[] fileIds = {10, 20, 40};
+        final long[] folderIds = {1, 2, 4};
+        for (int i = 0; i < fileIds.length; i++) {
+            final BoxFile file = new BoxFile();
+            file.setId(fileIds[i]);
+            file.setFileName("file" + fileIds[i]);
+            tree.addFile(folderIds[i], file);
+        }
+        return tree;
+    }
+
+    /**
+     * Build a folder.
+     * 
+     * @param id
+     *            Its id
+     * @param name
+     *            Its name
+     * @return The folder
+     */
+    private static BoxFolder newFolder(final long id, final String name) {
+        final BoxFolder folder = new BoxFolder();
+        folder.setId(id);
+        folder.setFolderName(name);
+        return folder;
+    }
+}
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.DAO;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link MappedAccountTree}, including files damaged after they were written.
+ * 
+ * @author developers@box.net
+ */
+public class MappedAccountTreeTest extends TestCase {
+
+    /** Position of the offset of the name of the root folder: the header, then the fixed fields of the folder record. */
+    private static final int ROOT_NAME = 40 + 100;
+    /** Position of the record number of the first child folder of the root folder. */
+    private static final int ROOT_FIRST_FOLDER = 40 + 84;
+    /** Position of the number of tag ids of the root folder. */
+    private static final int ROOT_TAG_COUNT = 40 + 80;
+    /** Position of the start of the strings in the header. */
+    private static final int STRINGS_START = 32;
+
+    /** The saved tree. */
+    private File mFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFile = File.createTempFile("tree", ".map");
+        final BoxFolder root = new BoxFolder();
+        root.setId(1);
+        root.setFolderName("root");
+        root.addTagId(7);
+        final BoxFolder child = new BoxFolder();
+        child.setId(2);
+        child.setFolderName("child");
+        child.setParentFolderId(1);
+        root.addChildFolder(child);
+        for (int i = 0; i < 2; i++) {
+            final BoxFile file = new BoxFile();
+            file.setId(10 + i);
+            file.setFileName("file" + i);
+            file.setFolderId(1);
+            root.addChildFile(file);
+        }
+        MappedAccountTree.write(mFile, root);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mFile.delete();
+        super.tearDown();
+    }
+
+    /**
+     * A saved tree reads back the same.
+     * 
+     * @throws IOException
+     *             if the tree cannot be read
+     */
+    public void testRoundTrip() throws IOException {
+        final MappedAccountTree tree = MappedAccountTree.open(mFile);
+        assertEquals(2, tree.getFolderCount());
+        assertEquals(2, tree.getFileCount());
+        final BoxFolder root = tree.getFolder(1);
+        assertEquals("root", root.getFolderName());
+        assertEquals(1, root.getTagIds().size());
+        assertEquals(7L, root.getTagIds().get(0).longValue());
+        assertEquals(1, root.getFoldersInFolder().size());
+        assertEquals("child", root.getFoldersInFolder().get(0).getFolderName());
+        assertEquals(2, root.getFilesInFolder().size());
+        assertEquals("file1", tree.getFile(11).getFileName());
+        assertNull(tree.getFile(12));
+    }
+
+    /**
+     * A string offset past the end of the file is reported as an IOException.
+     * 
+     * @throws IOException
+     *             if the file cannot be changed
+     */
+    public void testStringOffsetOutOfRange() throws IOException {
+        putInt(ROOT_NAME, Integer.MAX_VALUE - 8);
+        assertCorrupt();
+        putInt(ROOT_NAME, -5);
+        assertCorrupt();
+    }
+
+    /**
+     * A string length past the end of the file is reported as an IOException.
+     * 
+     * @throws IOException
+     *             if the file cannot be changed
+     */
+    public void testStringLengthOutOfRange() throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(mFile, "r");
+        raf.seek(STRINGS_START);
+        final int stringsStart = raf.readInt();
+        raf.close();
+        // The name of the root folder is the first string.
+        putInt(stringsStart, Integer.MAX_VALUE);
+        assertCorrupt();
+        putInt(stringsStart, -1);
+        assertCorrupt();
+    }
+
+    /**
+     * Record numbers and tag ids outside the file are reported as an IOException.
+     * 
+     * @throws IOException
+     *             if the file cannot be changed
+     */
+    public void testRecordsOutOfRange() throws IOException {
+        putInt(ROOT_FIRST_FOLDER, 5);
+        assertCorrupt();
+        putInt(ROOT_FIRST_FOLDER, 1);
+        putInt(ROOT_TAG_COUNT, 1000);
+        assertCorrupt();
+    }
+
+    /**
+     * Check that looking up the root folder fails with an IOException.
+     * 
+     * @throws IOException
+     *             if the tree cannot be opened
+     */
+    private void assertCorrupt() throws IOException {
+        final MappedAccountTree tree = MappedAccountTree.open(mFile);
+        try {
+            tree.getFolder(1);
+            fail("Corrupt tree was read");
+        }
+        catch (IOException e) {
+            assertEquals("Corrupt account tree", e.getMessage());
+        }
+    }
+
+    /**
+     * Overwrite an int of the saved tree.
+     * 
+     * @param pos
+     *            Position of the int
+     * @param value
+     *            New value
+     * @throws IOException
+     *             if the file cannot be changed
+     */
+    private void putInt(final int pos, final int value) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+        try {
+            raf.seek(pos);
+            raf.writeInt(value);
+        }
+        finally {
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.DAO;
+
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests that attributes parsed from the text of elements reach the DAOs, and the subclasses that override parseAttribute(String, String), the same as
+ * attributes passed as Strings.
+ * 
+ * @author developers@box.net
+ */
+public class ParseAttributeTest extends TestCase {
+
+    /**
+     * A file that records the attributes it is given and stores file names in upper case.
+     */
+    private static class CustomFile extends BoxFile {
+
+        /** Names of the attributes given, in order. */
+        private final ArrayList<String> mKeys = new ArrayList<String>();
+
+        @Override
+        public void parseAttribute(final String key, final String value) {
+            mKeys.add(key);
+            if (key.equals("file_name")) {
+                setFileName(value.toUpperCase());
+            }
+            else {
+                super.parseAttribute(key, value);
+            }
+        }
+    }
+
+    /**
+     * A folder that records the attributes it is given and keeps an attribute BoxFolder does not know.
+     */
+    private static class CustomFolder extends BoxFolder {
+
+        /** Names of the attributes given, in order. */
+        private final ArrayList<String> mKeys = new ArrayList<String>();
+        /** Value of the color attribute. */
+        private String mColor;
+
+        @Override
+        public void parseAttribute(final String key, final String value) {
+            mKeys.add(key);
+            if (key.equals("color")) {
+                mColor = value;
+            }
+            else {
+                super.parseAttribute(key, value);
+            }
+        }
+    }
+
+    /**
+     * Numbers and flags decoded from text equal those decoded from Strings.
+     */
+    public void testBoxFileTextEqualsString() {
+        final String[][] attributes = { {"id", "1234567890"}, {"folder_id", "77"}, {"file_name", "a.txt"}, {"size", "1048576"}, {"created", "1317420000"},
+            {"updated", "1317506400"}, {"sha1", "2fd4e1c67a2d28fced849ee1bb76e7391b93eb12"}, {"comment_count", "3"}};
+        final BoxFile fromStrings = new BoxFile();
+        final BoxFile fromText = new BoxFile();
+        for (int i = 0; i < attributes.length; i++) {
+            fromStrings.parseAttribute(attributes[i][0], attributes[i][1]);
+            fromText.parseAttribute(attributes[i][0], new StringBuilder(attributes[i][1]));
+        }
+        assertEquals(1234567890L, fromText.getId());
+        assertEquals(fromStrings.getId(), fromText.getId());
+        assertEquals(fromStrings.getFolderId(), fromText.getFolderId());
+        assertEquals(fromStrings.getFileName(), fromText.getFileName());
+        assertEquals(fromStrings.getSize(), fromText.getSize());
+        assertEquals(fromStrings.getCreated(), fromText.getCreated());
+        assertEquals(fromStrings.getUpdated(), fromText.getUpdated());
+        assertEquals(fromStrings.getSha1(), fromText.getSha1());
+        assertEquals(fromStrings.getCommentCount(), fromText.getCommentCount());
+    }
+
+    /**
+     * A subclass of BoxFile sees every attribute parsed from text, including those BoxFile handles itself.
+     */
+    public void testBoxFileSubclassSeesAllAttributes() {
+        final CustomFile file = new CustomFile();
+        file.parseAttribute("id", new StringBuilder("5"));
+        file.parseAttribute("file_name", new StringBuilder("a.txt"));
+        file.parseAttribute("size", new StringBuilder("10"));
+        assertEquals(3, file.mKeys.size());
+        assertEquals("file_name", file.mKeys.get(1));
+        assertEquals("A.TXT", file.getFileName());
+        assertEquals(5, file.getId());
+        assertEquals(10, file.getSize());
+    }
+
+    /**
+     * A subclass of BoxFolder sees every attribute parsed from text, and attributes BoxFolder does not know.
+     */
+    public void testBoxFolderSubclassSeesAllAttributes() {
+        final CustomFolder folder = new CustomFolder();
+        folder.parseAttribute("id", new StringBuilder("8"));
+        folder.parseAttribute("name", new StringBuilder("Projects"));
+        folder.parseAttribute("file_count", new StringBuilder("42"));
+        folder.parseAttribute("color", new StringBuilder("blue"));
+        assertEquals(4, folder.mKeys.size());
+        assertEquals("blue", folder.mColor);
+        assertEquals(8, folder.getId());
+        assertEquals("Projects", folder.getFolderName());
+        assertEquals(42, folder.getFileCount());
+    }
+
+    /**
+     * Subclasses of the other DAOs see every attribute parsed from text, including those the DAOs handle themselves.
+     */
+    public void testOtherSubclassesSeeAllAttributes() {
+        final ArrayList<String> keys = new ArrayList<String>();
+        final Update update = new Update() {
+
+            @Override
+            public void parseAttribute(final String key, final String value) {
+                keys.add(key);
+                super.parseAttribute(key, value);
+            }
+        };
+        update.parseAttribute("update_id", new StringBuilder("11"));
+        assertEquals(11, update.getId());
+
+        final User user = new User() {
+
+            @Override
+            public void parseAttribute(final String key, final String value) {
+                keys.add(key);
+                super.parseAttribute(key, value);
+            }
+        };
+        user.parseAttribute("user_id", new StringBuilder("12"));
+        assertEquals(12, user.getId());
+
+        final Comment comment = new Comment() {
+
+            @Override
+            public void parseAttribute(final String key, final String value) {
+                keys.add(key);
+                super.parseAttribute(key, value);
+            }
+        };
+        comment.parseAttribute("comment_id", new StringBuilder("13"));
+        assertEquals(13, comment.getId());
+
+        final Version version = new Version() {
+
+            @Override
+            public void parseAttribute(final String key, final String value) {
+                keys.add(key);
+                super.parseAttribute(key, value);
+            }
+        };
+        version.parseAttribute("version_id", new StringBuilder("14"));
+        assertEquals(14, version.getId());
+
+        final Collaboration collaboration = new Collaboration() {
+
+            @Override
+            public void parseAttribute(final String key, final String value) {
+                keys.add(key);
+                super.parseAttribute(key, value);
+            }
+        };
+        collaboration.parseAttribute("id", new StringBuilder("15"));
+        assertEquals(15, collaboration.getId());
+
+        assertEquals(5, keys.size());
+    }
+}
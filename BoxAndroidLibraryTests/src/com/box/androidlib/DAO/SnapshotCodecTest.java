@@ -0,0 +1,359 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.DAO;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.box.androidlib.Box;
+
+/**
+ * Tests for {@link SnapshotCodec}: trees read back equal the trees written, with their parent references, however deep, and data of subclasses is kept or
+ * skipped.
+ * 
+ * @author developers@box.net
+ */
+public class SnapshotCodecTest extends TestCase {
+
+    /** Depth of the deep chain of folders. */
+    private static final int DEEP_CHAIN = 20000;
+
+    /**
+     * A file that keeps a label in snapshots.
+     */
+    public static class LabelledFile extends BoxFile implements SnapshotCodec.Extension {
+
+        /** Serial version UID. */
+        private static final long serialVersionUID = 1L;
+        /** The label. */
+        private String mLabel;
+
+        @Override
+        public void writeSnapshot(final DataOutput out) throws IOException {
+            out.writeUTF(mLabel == null ? "" : mLabel);
+        }
+
+        @Override
+        public void readSnapshot(final DataInput in) throws IOException {
+            mLabel = in.readUTF();
+        }
+    }
+
+    /** Folder class before the test. */
+    private Class<? extends BoxFolder> mFolderClass;
+    /** File class before the test. */
+    private Class<? extends BoxFile> mFileClass;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFolderClass = Box.getBoxFolderClass();
+        mFileClass = Box.getBoxFileClass();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Box.setBoxFolderClass(mFolderClass);
+        Box.setBoxFileClass(mFileClass);
+        super.tearDown();
+    }
+
+    /**
+     * A tree read back has the same fields as the tree written, as compared through its JSON.
+     * 
+     * @throws IOException
+     *             if the snapshot cannot be read
+     */
+    public void testTreeRoundTrip() throws IOException {
+        final BoxFolder root = buildTree(new Random(1), 4, 4, 5);
+        final BoxFolder read = SnapshotCodec.readFolder(toInput(write(root)));
+        assertEquals(DAO.toJSON(root), DAO.toJSON(read));
+        assertEquals(countFiles(root), countFiles(read));
+    }
+
+    /**
+     * A tree written to a FileChannel is read back the same.
+     * 
+     * @throws IOException
+     *             if the snapshot cannot be written or read
+     */
+    public void testChannelRoundTrip() throws IOException {
+        final BoxFolder root = buildTree(new Random(2), 3, 5, 3);
+        final File file = File.createTempFile("snapshot", ".bin");
+        try {
+            final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                final FileChannel channel = raf.getChannel();
+                SnapshotCodec.writeFolder(channel, root);
+                channel.position(0);
+                assertEquals(DAO.toJSON(root), DAO.toJSON(SnapshotCodec.readFolder(channel)));
+            }
+            finally {
+                raf.close();
+            }
+        }
+        finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Every folder and file read back refers to the folder that holds it.
+     * 
+     * @throws IOException
+     *             if the snapshot cannot be read
+     */
+    public void testParentReferences() throws IOException {
+        final BoxFolder read = SnapshotCodec.readFolder(toInput(write(buildTree(new Random(3), 3, 3, 4))));
+        assertNull(read.getParentFolder());
+        final List<BoxFolder> folders = new ArrayList<BoxFolder>();
+        folders.add(read);
+        while (!folders.isEmpty()) {
+            final BoxFolder folder = folders.remove(folders.size() - 1);
+            for (final BoxFolder child : folder.getFoldersInFolder()) {
+                assertSame(folder, child.getParentFolder());
+                assertEquals(folder.getId(), child.getParentFolderId());
+                folders.add(child);
+            }
+            for (final BoxFile file : folder.getFilesInFolder()) {
+                assertSame(folder, file.getFolder());
+                assertEquals(folder.getId(), file.getFolderId());
+            }
+        }
+    }
+
+    /**
+     * A chain of folders deeper than the stack would allow for recursion is written and read back.
+     * 
+     * @throws IOException
+     *             if the snapshot cannot be read
+     */
+    public void testDeepChain() throws IOException {
+        final BoxFolder root = new BoxFolder();
+        root.setId(1);
+        BoxFolder parent = root;
+        for (int i = 2; i <= DEEP_CHAIN; i++) {
+            final BoxFolder folder = new BoxFolder();
+            folder.setId(i);
+            parent.addChildFolder(folder);
+            folder.setParentFolder(parent);
+            parent = folder;
+        }
+        BoxFolder folder = SnapshotCodec.readFolder(toInput(write(root)));
+        for (int i = 1; i < DEEP_CHAIN; i++) {
+            assertEquals(i, folder.getId());
+            assertEquals(1, folder.getFoldersInFolder().size());
+            folder = folder.getFoldersInFolder().get(0);
+        }
+        assertEquals(DEEP_CHAIN, folder.getId());
+        assertEquals(DEEP_CHAIN - 1, folder.getParentFolder().getId());
+        assertTrue(folder.getFoldersInFolder().isEmpty());
+    }
+
+    /**
+     * Data of a subclass implementing Extension is read back into the subclass, and skipped when reading into BoxFile, leaving the fields after it intact.
+     * 
+     * @throws IOException
+     *             if the snapshot cannot be read
+     */
+    public void testExtensionData() throws IOException {
+        final BoxFolder root = new BoxFolder();
+        root.setId(1);
+        for (int i = 0; i < 3; i++) {
+            final LabelledFile file = new LabelledFile();
+            file.setId(10 + i);
+            file.setFileName("file " + i);
+            file.mLabel = "label \u00e9 " + i;
+            root.addChildFile(file);
+        }
+        final BoxFolder child = new BoxFolder();
+        child.setId(2);
+        child.setFolderName("after the files");
+        root.addChildFolder(child);
+        final byte[] snapshot = write(root);
+
+        final BoxFolder plain = SnapshotCodec.readFolder(toInput(snapshot));
+        assertEquals(3, plain.getFilesInFolder().size());
+        for (int i = 0; i < 3; i++) {
+            final BoxFile file = plain.getFilesInFolder().get(i);
+            assertEquals(BoxFile.class, file.getClass());
+            assertEquals(10 + i, file.getId());
+            assertEquals("file " + i, file.getFileName());
+        }
+        assertEquals("after the files", plain.getFoldersInFolder().get(0).getFolderName());
+
+        Box.setBoxFileClass(LabelledFile.class);
+        final BoxFolder labelled = SnapshotCodec.readFolder(toInput(snapshot));
+        for (int i = 0; i < 3; i++) {
+            assertEquals("label \u00e9 " + i, ((LabelledFile) labelled.getFilesInFolder().get(i)).mLabel);
+        }
+        assertEquals("after the files", labelled.getFoldersInFolder().get(0).getFolderName());
+    }
+
+    /**
+     * A snapshot of a newer format version, or of another kind, is rejected.
+     * 
+     * @throws IOException
+     *             if the snapshot cannot be written
+     */
+    public void testRejectsNewerVersionAndOtherKind() throws IOException {
+        final byte[] snapshot = write(buildTree(new Random(4), 1, 2, 2));
+        final byte[] newer = snapshot.clone();
+        // The version follows the four bytes of the magic number.
+        newer[4] = (byte) ((SnapshotCodec.VERSION + 1) >> 8);
+        newer[5] = (byte) (SnapshotCodec.VERSION + 1);
+        try {
+            SnapshotCodec.readFolder(toInput(newer));
+            fail("a newer version was read");
+        }
+        catch (IOException e) {
+            assertEquals("Unsupported snapshot version " + (SnapshotCodec.VERSION + 1), e.getMessage());
+        }
+        try {
+            SnapshotCodec.readFile(toInput(snapshot));
+            fail("a folder was read as a file");
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Snapshot holds kind"));
+        }
+    }
+
+    /**
+     * Build a tree of folders and files with the attributes found in get_account_tree responses.
+     * 
+     * @param random
+     *            Source of the ids, names and sizes
+     * @param depth
+     *            Number of levels of folders below the root
+     * @param foldersPerFolder
+     *            Number of child folders of each folder above the lowest level
+     * @param filesPerFolder
+     *            Number of files in each folder
+     * @return The root folder, with parent references set
+     */
+    public static BoxFolder buildTree(final Random random, final int depth, final int foldersPerFolder, final int filesPerFolder) {
+        final BoxFolder root = newFolder(random, 0);
+        final List<BoxFolder> level = new ArrayList<BoxFolder>();
+        level.add(root);
+        for (int d = 0; d <= depth; d++) {
+            final List<BoxFolder> next = new ArrayList<BoxFolder>();
+            for (int i = 0; i < level.size(); i++) {
+                final BoxFolder folder = level.get(i);
+                for (int j = 0; j < filesPerFolder; j++) {
+                    final BoxFile file = new BoxFile();
+                    file.parseAttribute("id", String.valueOf(random.nextInt(Integer.MAX_VALUE)));
+                    file.parseAttribute("file_name", "IMG_" + random.nextInt(10000) + (j % 3 == 0 ? " \u00e9t\u00e9.jpg" : ".jpg"));
+                    file.parseAttribute("size", String.valueOf(random.nextInt(1 << 30)));
+                    file.parseAttribute("sha1", Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong()));
+                    file.parseAttribute("created", String.valueOf(1300000000 + random.nextInt(10000000)));
+                    file.parseAttribute("updated", String.valueOf(1300000000 + random.nextInt(10000000)));
+                    file.parseAttribute("permissions", j % 2 == 0 ? "gdupnsvckteh" : "gdn");
+                    file.parseAttribute("shared", "0");
+                    file.parseAttribute("thumbnail", "https://www.box.net/api/thumbs/" + file.getId() + "/small.png");
+                    if (j % 4 == 0) {
+                        file.getTagIds().add(Long.valueOf(random.nextInt(100)));
+                    }
+                    folder.addChildFile(file);
+                    file.setFolder(folder);
+                    file.setFolderId(folder.getId());
+                }
+                if (d < depth) {
+                    for (int j = 0; j < foldersPerFolder; j++) {
+                        final BoxFolder child = newFolder(random, folder.getId());
+                        folder.addChildFolder(child);
+                        child.setParentFolder(folder);
+                        next.add(child);
+                    }
+                }
+            }
+            level.clear();
+            level.addAll(next);
+        }
+        return root;
+    }
+
+    /**
+     * Create a folder with the attributes found in get_account_tree responses.
+     * 
+     * @param random
+     *            Source of the id and name
+     * @param parentId
+     *            Id of the parent folder
+     * @return The folder, without children
+     */
+    private static BoxFolder newFolder(final Random random, final long parentId) {
+        final BoxFolder folder = new BoxFolder();
+        folder.parseAttribute("id", String.valueOf(random.nextInt(Integer.MAX_VALUE)));
+        folder.parseAttribute("name", "Folder " + random.nextInt(1000));
+        folder.parseAttribute("shared", String.valueOf(random.nextInt(2)));
+        folder.parseAttribute("permissions", "gdupnsvckteh");
+        folder.parseAttribute("parent_folder_id", String.valueOf(parentId));
+        folder.parseAttribute("created", String.valueOf(1300000000 + random.nextInt(10000000)));
+        return folder;
+    }
+
+    /**
+     * Write a snapshot of a tree.
+     * 
+     * @param root
+     *            The tree
+     * @return The snapshot
+     * @throws IOException
+     *             if it cannot be written
+     */
+    public static byte[] write(final BoxFolder root) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        SnapshotCodec.writeFolder(out, root);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Read from a snapshot in memory.
+     * 
+     * @param snapshot
+     *            The snapshot
+     * @return Input reading the snapshot
+     */
+    private static DataInput toInput(final byte[] snapshot) {
+        return new DataInputStream(new ByteArrayInputStream(snapshot));
+    }
+
+    /**
+     * Count the files in a tree.
+     * 
+     * @param root
+     *            The tree
+     * @return Number of files
+     */
+    private static int countFiles(final BoxFolder root) {
+        int count = root.getFilesInFolder().size();
+        for (final BoxFolder child : root.getFoldersInFolder()) {
+            count += countFiles(child);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,418 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.FileTransfer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.box.androidlib.LoopbackTestCase;
+import com.box.androidlib.DAO.BoxFile;
+import com.box.androidlib.ResponseListeners.FileDownloadListener;
+import com.box.androidlib.ResponseParsers.DefaultResponseParser;
+import com.box.androidlib.Transport.BoxHttpRequest;
+import com.box.androidlib.Transport.BoxHttpResponse;
+import com.box.androidlib.Transport.LoopbackHttpTransport;
+import com.box.androidlib.Utils.BoxUtils;
+
+/**
+ * Tests for the resumable download of {@link BoxFileDownload}, against a fake download server that answers Range requests from memory.
+ * 
+ * @author developers@box.net
+ */
+public class BoxFileDownloadTest extends LoopbackTestCase {
+
+    /** Size of the file. */
+    private static final int SIZE = 300 * 1024 + 17;
+    /** Number of bytes the first attempt gets before its connection breaks. */
+    private static final int BREAK_AFTER = 100 * 1024 + 5;
+
+    /** Contents of the file. */
+    private byte[] mContents;
+    /** The file being downloaded. */
+    private BoxFile mFile;
+    /** Where it is downloaded to. */
+    private File mDestination;
+    /** The fake server. */
+    private DownloadServer mServer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContents = new byte[SIZE];
+        new Random(6).nextBytes(mContents);
+        mFile = newFile(mContents);
+        mDestination = File.createTempFile("download", ".bin");
+        mDestination.delete();
+        mServer = new DownloadServer();
+        mServer.mContents = mContents;
+        serve(mServer);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDestination.delete();
+        DownloadJournal.getJournalFile(mDestination).delete();
+        super.tearDown();
+    }
+
+    /**
+     * A download whose connection breaks keeps what it got and its journal, and the next attempt asks for the rest with a Range request and appends it.
+     * 
+     * @throws IOException
+     *             if a download fails
+     */
+    public void testResumeAppendsRest() throws IOException {
+        breakFirstAttempt();
+        final DefaultResponseParser parser = new BoxFileDownload(AUTH_TOKEN).execute(mFile, mDestination, null);
+        assertEquals(FileDownloadListener.STATUS_DOWNLOAD_OK, parser.getStatus());
+        assertEquals(Arrays.asList(new String[] {null, "bytes=" + BREAK_AFTER + "-"}), mServer.mRanges);
+        assertTrue(Arrays.equals(mContents, read(mDestination)));
+        assertFalse(DownloadJournal.getJournalFile(mDestination).exists());
+    }
+
+    /**
+     * A download cancelled while it writes reports it, keeps what it wrote and its journal, and the next attempt asks for the rest.
+     * 
+     * @throws IOException
+     *             if a download fails
+     */
+    public void testCancelledWriteIsResumed() throws IOException {
+        mServer.mBreakAfter = BREAK_AFTER;
+        mServer.mInterruptAtBreak = true;
+        final DefaultResponseParser cancelled;
+        try {
+            cancelled = new BoxFileDownload(AUTH_TOKEN).execute(mFile, mDestination, null);
+        }
+        finally {
+            // Clear the interrupt for the next attempt and the rest of the test run.
+            assertTrue(Thread.interrupted());
+        }
+        assertEquals(FileDownloadListener.STATUS_DOWNLOAD_CANCELLED, cancelled.getStatus());
+        assertEquals(BREAK_AFTER, mDestination.length());
+        assertTrue(DownloadJournal.getJournalFile(mDestination).exists());
+
+        mServer.mBreakAfter = -1;
+        final DefaultResponseParser parser = new BoxFileDownload(AUTH_TOKEN).execute(mFile, mDestination, null);
+        assertEquals(FileDownloadListener.STATUS_DOWNLOAD_OK, parser.getStatus());
+        assertEquals(Arrays.asList(new String[] {null, "bytes=" + BREAK_AFTER + "-"}), mServer.mRanges);
+        assertTrue(Arrays.equals(mContents, read(mDestination)));
+    }
+
+    /**
+     * A partial file left by a download of another version of the file is not resumed: the journal does not match, and the file is downloaded whole.
+     * 
+     * @throws IOException
+     *             if a download fails
+     */
+    public void testJournalMismatchRestarts() throws IOException {
+        breakFirstAttempt();
+        final byte[] newContents = new byte[SIZE + 1000];
+        new Random(7).nextBytes(newContents);
+        mServer.mContents = newContents;
+        final DefaultResponseParser parser = new BoxFileDownload(AUTH_TOKEN).execute(newFile(newContents), mDestination, null);
+        assertEquals(FileDownloadListener.STATUS_DOWNLOAD_OK, parser.getStatus());
+        assertEquals(Arrays.asList(new String[] {null, null}), mServer.mRanges);
+        assertTrue(Arrays.equals(newContents, read(mDestination)));
+        assertFalse(DownloadJournal.getJournalFile(mDestination).exists());
+    }
+
+    /**
+     * A partial file without a journal is not trusted, and is overwritten.
+     * 
+     * @throws IOException
+     *             if the download fails
+     */
+    public void testPartialFileWithoutJournalRestarts() throws IOException {
+        final FileOutputStream out = new FileOutputStream(mDestination);
+        out.write(new byte[BREAK_AFTER]);
+        out.close();
+        final DefaultResponseParser parser = new BoxFileDownload(AUTH_TOKEN).execute(mFile, mDestination, null);
+        assertEquals(FileDownloadListener.STATUS_DOWNLOAD_OK, parser.getStatus());
+        assertEquals(Collections.singletonList(null), mServer.mRanges);
+        assertTrue(Arrays.equals(mContents, read(mDestination)));
+    }
+
+    /**
+     * Partial content that does not start where the partial file ends is not appended, and the file is downloaded whole instead.
+     * 
+     * @throws IOException
+     *             if a download fails
+     */
+    public void testMisplacedRangeRestarts() throws IOException {
+        breakFirstAttempt();
+        mServer.mRangeShift = 10;
+        final DefaultResponseParser parser = new BoxFileDownload(AUTH_TOKEN).execute(mFile, mDestination, null);
+        assertEquals(FileDownloadListener.STATUS_DOWNLOAD_OK, parser.getStatus());
+        assertEquals(Arrays.asList(new String[] {null, "bytes=" + BREAK_AFTER + "-", null}), mServer.mRanges);
+        assertTrue(Arrays.equals(mContents, read(mDestination)));
+    }
+
+    /**
+     * A server that ignores Range sends the whole file, which replaces the partial file instead of being appended to it.
+     * 
+     * @throws IOException
+     *             if a download fails
+     */
+    public void testServerIgnoringRangeOverwrites() throws IOException {
+        breakFirstAttempt();
+        mServer.mIgnoreRanges = true;
+        final DefaultResponseParser parser = new BoxFileDownload(AUTH_TOKEN).execute(mFile, mDestination, null);
+        assertEquals(FileDownloadListener.STATUS_DOWNLOAD_OK, parser.getStatus());
+        assertEquals(2, mServer.mRanges.size());
+        assertTrue(Arrays.equals(mContents, read(mDestination)));
+    }
+
+    /**
+     * A download whose data does not have the sha1 of the file reports it and deletes the file and its journal.
+     * 
+     * @throws IOException
+     *             if the download fails
+     */
+    public void testCorruptBodyIsRejected() throws IOException {
+        mServer.mCorruptAt = SIZE / 2;
+        final DefaultResponseParser parser = new BoxFileDownload(AUTH_TOKEN).execute(mFile, mDestination, null);
+        assertEquals(FileDownloadListener.STATUS_DOWNLOAD_SHA1_MISMATCH, parser.getStatus());
+        assertFalse(mDestination.exists());
+        assertFalse(DownloadJournal.getJournalFile(mDestination).exists());
+    }
+
+    /**
+     * The sha1 of a resumed download covers the part appended by the second attempt.
+     * 
+     * @throws IOException
+     *             if a download fails
+     */
+    public void testCorruptResumedPartIsRejected() throws IOException {
+        breakFirstAttempt();
+        mServer.mCorruptAt = SIZE - 1;
+        final DefaultResponseParser parser = new BoxFileDownload(AUTH_TOKEN).execute(mFile, mDestination, null);
+        assertEquals(FileDownloadListener.STATUS_DOWNLOAD_SHA1_MISMATCH, parser.getStatus());
+        assertFalse(mDestination.exists());
+        assertFalse(DownloadJournal.getJournalFile(mDestination).exists());
+    }
+
+    /**
+     * The sha1 of a resumed download covers the part kept from the first attempt, which is read back from the file.
+     * 
+     * @throws IOException
+     *             if a download fails
+     */
+    public void testCorruptPartialFileIsRejected() throws IOException {
+        breakFirstAttempt();
+        final RandomAccessFile partial = new RandomAccessFile(mDestination, "rw");
+        try {
+            partial.seek(BREAK_AFTER / 2);
+            partial.write(mContents[BREAK_AFTER / 2] ^ 1);
+        }
+        finally {
+            partial.close();
+        }
+        final DefaultResponseParser parser = new BoxFileDownload(AUTH_TOKEN).execute(mFile, mDestination, null);
+        assertEquals(FileDownloadListener.STATUS_DOWNLOAD_SHA1_MISMATCH, parser.getStatus());
+        assertEquals(Arrays.asList(new String[] {null, "bytes=" + BREAK_AFTER + "-"}), mServer.mRanges);
+        assertFalse(mDestination.exists());
+    }
+
+    /**
+     * An error message that Box API puts in place of the file is reported, found in the start of the data kept in memory.
+     * 
+     * @throws IOException
+     *             if a download fails
+     */
+    public void testErrorMessageInBodyIsReported() throws IOException {
+        mServer.mContents = (FileDownloadListener.STATUS_DOWNLOAD_WRONG_AUTH_TOKEN + "\n").getBytes("UTF-8");
+        assertEquals(FileDownloadListener.STATUS_DOWNLOAD_WRONG_AUTH_TOKEN, new BoxFileDownload(AUTH_TOKEN).execute(1, mDestination, null).getStatus());
+        mServer.mContents = FileDownloadListener.STATUS_DOWNLOAD_RESTRICTED.getBytes("UTF-8");
+        assertEquals(FileDownloadListener.STATUS_DOWNLOAD_RESTRICTED, new BoxFileDownload(AUTH_TOKEN).execute(1, mDestination, null).getStatus());
+        mServer.mContents = "a small file".getBytes("UTF-8");
+        assertEquals(FileDownloadListener.STATUS_DOWNLOAD_OK, new BoxFileDownload(AUTH_TOKEN).execute(1, mDestination, null).getStatus());
+    }
+
+    /**
+     * Make a first attempt whose connection breaks, and check that it leaves the partial file and its journal.
+     * 
+     * @throws IOException
+     *             if the attempt fails other than by the broken connection
+     */
+    private void breakFirstAttempt() throws IOException {
+        mServer.mBreakAfter = BREAK_AFTER;
+        try {
+            new BoxFileDownload(AUTH_TOKEN).execute(mFile, mDestination, null);
+            fail("the connection broke");
+        }
+        catch (IOException e) {
+            assertEquals("connection reset", e.getMessage());
+        }
+        mServer.mBreakAfter = -1;
+        assertEquals(BREAK_AFTER, mDestination.length());
+        assertTrue(DownloadJournal.getJournalFile(mDestination).exists());
+    }
+
+    /**
+     * Create a BoxFile describing some contents.
+     * 
+     * @param contents
+     *            The contents
+     * @return The file, with id, size and sha1
+     * @throws IOException
+     *             if SHA-1 is not available
+     */
+    static BoxFile newFile(final byte[] contents) throws IOException {
+        final BoxFile file = new BoxFile();
+        file.setId(42);
+        file.setSize(contents.length);
+        try {
+            file.setSha1(BoxUtils.toHexString(MessageDigest.getInstance("SHA-1").digest(contents)));
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IOException(e.getMessage());
+        }
+        return file;
+    }
+
+    /**
+     * Read a whole file.
+     * 
+     * @param file
+     *            The file
+     * @return Its contents
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    static byte[] read(final File file) throws IOException {
+        final byte[] contents = new byte[(int) file.length()];
+        final FileInputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            int n;
+            while (read < contents.length && (n = in.read(contents, read, contents.length - read)) > 0) {
+                read += n;
+            }
+        }
+        finally {
+            in.close();
+        }
+        return contents;
+    }
+
+    /**
+     * Fake download server.
+     */
+    static final class DownloadServer implements LoopbackHttpTransport.Responder {
+
+        /** Contents of the file served. */
+        volatile byte[] mContents;
+        /** Range header of every request, null for requests without one. */
+        final List<String> mRanges = Collections.synchronizedList(new ArrayList<String>());
+        /** Number of body bytes after which the connection breaks, or -1. */
+        volatile int mBreakAfter = -1;
+        /** Whether the reading thread is interrupted after mBreakAfter bytes, as by cancelling, instead of the connection breaking. */
+        volatile boolean mInterruptAtBreak;
+        /** Added to the start of the partial content served for a Range request. */
+        volatile int mRangeShift;
+        /** Whether Range headers are ignored. */
+        volatile boolean mIgnoreRanges;
+        /** Offset in the file of a byte that is served with a bit flipped, or -1. */
+        volatile int mCorruptAt = -1;
+
+        @Override
+        public BoxHttpResponse respond(final BoxHttpRequest request, final byte[] requestBody) throws IOException {
+            final String range = request.getHeaders().get("Range");
+            mRanges.add(range);
+            final byte[] contents = mContents;
+            int start = 0;
+            final Map<String, List<String>> headers = new HashMap<String, List<String>>();
+            if (range != null && !mIgnoreRanges) {
+                start = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-'))) + mRangeShift;
+                headers.put("Content-Range", Collections.singletonList("bytes " + start + "-" + (contents.length - 1) + "/" + contents.length));
+            }
+            final byte[] body = new byte[contents.length - start];
+            System.arraycopy(contents, start, body, 0, body.length);
+            final int corruptAt = mCorruptAt;
+            if (corruptAt >= start && corruptAt < contents.length) {
+                body[corruptAt - start] ^= 1;
+            }
+            final BoxHttpResponse response = LoopbackHttpTransport.newResponse(start > 0 || headers.size() > 0 ? 206 : 200, headers, body);
+            final int breakAfter = mBreakAfter;
+            final boolean interruptAtBreak = mInterruptAtBreak;
+            if (breakAfter < 0) {
+                return response;
+            }
+            return new BoxHttpResponse() {
+
+                @Override
+                public int getStatusCode() {
+                    return response.getStatusCode();
+                }
+
+                @Override
+                public String getHeader(final String name) {
+                    return response.getHeader(name);
+                }
+
+                @Override
+                public Map<String, List<String>> getHeaders() {
+                    return response.getHeaders();
+                }
+
+                @Override
+                public InputStream getContent() throws IOException {
+                    return new FilterInputStream(response.getContent()) {
+
+                        /** Bytes read so far. */
+                        private int mRead;
+
+                        @Override
+                        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+                            if (mRead >= breakAfter && interruptAtBreak) {
+                                Thread.currentThread().interrupt();
+                                return super.read(buffer, offset, length);
+                            }
+                            if (mRead >= breakAfter) {
+                                throw new IOException("connection reset");
+                            }
+                            final int n = super.read(buffer, offset, Math.min(length, breakAfter - mRead));
+                            if (n > 0) {
+                                mRead += n;
+                            }
+                            return n;
+                        }
+                    };
+                }
+
+                @Override
+                public void close() throws IOException {
+                    response.close();
+                }
+
+                @Override
+                public void abort() {
+                    response.abort();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,352 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.FileTransfer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.box.androidlib.Box;
+import com.box.androidlib.LoopbackTestCase;
+import com.box.androidlib.DAO.BoxFile;
+import com.box.androidlib.ResponseListeners.FileUploadListener;
+import com.box.androidlib.ResponseListeners.ResponseListener;
+import com.box.androidlib.ResponseParsers.FileResponseParser;
+import com.box.androidlib.Transport.BoxHttpRequest;
+import com.box.androidlib.Transport.BoxHttpResponse;
+import com.box.androidlib.Transport.BoxHttpTransport;
+import com.box.androidlib.Transport.LoopbackHttpTransport;
+import com.box.androidlib.Utils.BoxConfig;
+import com.box.androidlib.Utils.ZippedTreeInputStreamTest;
+
+/**
+ * Tests for {@link BoxResumableFileUpload}: an upload whose response is lost, or whose process died, is found on Box instead of being sent again, and Box is
+ * only asked about uploads that can have arrived.
+ * 
+ * @author developers@box.net
+ */
+public class BoxResumableFileUploadTest extends LoopbackTestCase {
+
+    /** Size of the uploaded file. */
+    private static final int SIZE = 200 * 1024 + 3;
+    /** Id of the folder uploaded to. */
+    private static final long FOLDER_ID = 77;
+    /** Name of the file on Box. */
+    private static final String FILE_NAME = "video.mp4";
+
+    /** The file to upload. */
+    private File mFile;
+    /** sha1 of the file. */
+    private String mSha1;
+    /** Directory of the upload journals. */
+    private File mJournalDirectory;
+    /** The fake Box API. */
+    private UploadServer mServer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        final byte[] contents = new byte[SIZE];
+        new Random(SIZE).nextBytes(contents);
+        final BoxFile file = BoxFileDownloadTest.newFile(contents);
+        mSha1 = file.getSha1();
+        mFile = File.createTempFile("upload", ".bin");
+        final FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            out.write(contents);
+        }
+        finally {
+            out.close();
+        }
+        mJournalDirectory = new File(mFile.getPath() + ".journals");
+        mServer = new UploadServer(mSha1);
+        BoxConfig.getInstance().setHttpTransport(mServer);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        final File[] journals = mJournalDirectory.listFiles();
+        for (int i = 0; journals != null && i < journals.length; i++) {
+            journals[i].delete();
+        }
+        mJournalDirectory.delete();
+        mFile.delete();
+        super.tearDown();
+    }
+
+    /**
+     * An upload whose response is lost after Box stored the file finds the file with one listing instead of uploading it again.
+     * 
+     * @throws IOException
+     *             if the upload fails
+     */
+    public void testDroppedResponseFindsStoredFile() throws IOException {
+        mServer.mDropResponses = 1;
+        final FileResponseParser parser = upload();
+        assertEquals(FileUploadListener.STATUS_UPLOAD_OK, parser.getStatus());
+        assertEquals(mServer.mStoredIds.get(0).longValue(), parser.getFile().getId());
+        assertEquals(1, mServer.mPosts.get());
+        assertEquals(1, mServer.mListings.get());
+        assertEquals(0, countJournals());
+    }
+
+    /**
+     * A journal left by a process that died while posting makes the next upload look for the file first, and not upload it if Box has it.
+     * 
+     * @throws IOException
+     *             if the upload fails
+     */
+    public void testDeadProcessJournalFindsStoredFile() throws IOException {
+        leaveDeadProcessJournal();
+        mServer.mStoredIds.add(Long.valueOf(1000));
+        final FileResponseParser parser = upload();
+        assertEquals(FileUploadListener.STATUS_UPLOAD_OK, parser.getStatus());
+        assertEquals(1000, parser.getFile().getId());
+        assertEquals(0, mServer.mPosts.get());
+        assertEquals(1, mServer.mListings.get());
+        assertEquals(0, countJournals());
+    }
+
+    /**
+     * A journal left by a process that died while posting, for a file that did not arrive, makes the next upload look once and then upload it.
+     * 
+     * @throws IOException
+     *             if the upload fails
+     */
+    public void testDeadProcessJournalUploadsMissingFile() throws IOException {
+        leaveDeadProcessJournal();
+        assertEquals(FileUploadListener.STATUS_UPLOAD_OK, upload().getStatus());
+        assertEquals(1, mServer.mPosts.get());
+        assertEquals(1, mServer.mListings.get());
+        assertEquals(0, countJournals());
+    }
+
+    /**
+     * An upload whose connection breaks after every whole POST gives up after its retries, looking for the file after each of the retried POSTs, and keeps
+     * its journal. The next upload looks for the file before posting again.
+     * 
+     * @throws IOException
+     *             if the second upload fails
+     */
+    public void testRetriesExhaustedKeepsJournal() throws IOException {
+        mServer.mFailPosts = Integer.MAX_VALUE;
+        try {
+            upload();
+            fail("the upload did not fail");
+        }
+        catch (IOException e) {
+            assertEquals("connection reset", e.getMessage());
+        }
+        assertEquals(3, mServer.mPosts.get());
+        assertEquals(2, mServer.mListings.get());
+        assertEquals(1, countJournals());
+
+        mServer.mFailPosts = 0;
+        assertEquals(FileUploadListener.STATUS_UPLOAD_OK, upload().getStatus());
+        assertEquals(4, mServer.mPosts.get());
+        assertEquals(3, mServer.mListings.get());
+        assertEquals(0, countJournals());
+    }
+
+    /**
+     * A POST that breaks before the whole file was sent is retried without looking for the file.
+     * 
+     * @throws IOException
+     *             if the upload fails
+     */
+    public void testBrokenBodyIsRetriedWithoutListing() throws IOException {
+        mServer.mBreakBodyAfter = SIZE / 2;
+        mServer.mFailPosts = 1;
+        assertEquals(FileUploadListener.STATUS_UPLOAD_OK, upload().getStatus());
+        assertEquals(2, mServer.mPosts.get());
+        assertEquals(0, mServer.mListings.get());
+    }
+
+    /**
+     * After Box answers 503 Service Unavailable, the journal is kept but the next upload does not look for the file.
+     * 
+     * @throws IOException
+     *             if an upload fails
+     */
+    public void testServiceUnavailableSkipsListing() throws IOException {
+        mServer.mUnavailablePosts = 1;
+        assertEquals(ResponseListener.STATUS_SERVICE_UNAVAILABLE, upload().getStatus());
+        assertEquals(1, countJournals());
+        assertEquals(FileUploadListener.STATUS_UPLOAD_OK, upload().getStatus());
+        assertEquals(2, mServer.mPosts.get());
+        assertEquals(0, mServer.mListings.get());
+        assertEquals(0, countJournals());
+    }
+
+    /**
+     * After an upload is cancelled before the whole file was sent, the journal is kept but the next upload does not look for the file.
+     * 
+     * @throws IOException
+     *             if an upload fails
+     */
+    public void testCancelledUploadSkipsListing() throws IOException {
+        mServer.mBreakBodyAfter = SIZE / 2;
+        mServer.mCancelPosts = 1;
+        final FileResponseParser cancelled;
+        try {
+            cancelled = upload();
+        }
+        finally {
+            assertTrue(Thread.interrupted());
+        }
+        assertEquals(FileUploadListener.STATUS_CANCELLED, cancelled.getStatus());
+        assertEquals(1, countJournals());
+        assertEquals(FileUploadListener.STATUS_UPLOAD_OK, upload().getStatus());
+        assertEquals(2, mServer.mPosts.get());
+        assertEquals(0, mServer.mListings.get());
+    }
+
+    /**
+     * Upload the file to the folder.
+     * 
+     * @return the result
+     * @throws IOException
+     *             if the upload fails
+     */
+    private FileResponseParser upload() throws IOException {
+        return new BoxResumableFileUpload(API_KEY, AUTH_TOKEN, mJournalDirectory).execute(Box.UPLOAD_ACTION_UPLOAD, mFile, FILE_NAME, FOLDER_ID);
+    }
+
+    /**
+     * Leave the journal that a process dying during a POST of the file leaves.
+     * 
+     * @throws IOException
+     *             if the journal cannot be written
+     */
+    private void leaveDeadProcessJournal() throws IOException {
+        mJournalDirectory.mkdirs();
+        final UploadJournal journal = new UploadJournal(mJournalDirectory, mFile, Box.UPLOAD_ACTION_UPLOAD, FILE_NAME, FOLDER_ID, mSha1);
+        journal.setPosted(true);
+        journal.save();
+    }
+
+    /**
+     * Count the journals in the journal directory.
+     * 
+     * @return number of journals
+     */
+    private int countJournals() {
+        final File[] journals = mJournalDirectory.listFiles();
+        return journals == null ? 0 : journals.length;
+    }
+
+    /**
+     * Fake Box API answering uploads to a folder and one level listings of it. The files stored in the folder all have the sha1 of the uploaded file.
+     */
+    private static final class UploadServer implements BoxHttpTransport {
+
+        /** sha1 of the uploaded file. */
+        private final String mSha1;
+        /** Ids of the files stored in the folder. */
+        private final List<Long> mStoredIds = new ArrayList<Long>();
+        /** Number of POSTs. */
+        private final AtomicInteger mPosts = new AtomicInteger();
+        /** Number of listings. */
+        private final AtomicInteger mListings = new AtomicInteger();
+        /** Number of the next POSTs whose connection breaks without storing the file. */
+        private volatile int mFailPosts;
+        /** Number of the next POSTs whose response is lost after the file was stored. */
+        private volatile int mDropResponses;
+        /** Number of the next POSTs answered with 503 Service Unavailable. */
+        private volatile int mUnavailablePosts;
+        /** Number of the next POSTs that are cancelled. */
+        private volatile int mCancelPosts;
+        /** Number of body bytes after which failing or cancelled POSTs stop, or -1 to fail them after the whole body. */
+        private volatile int mBreakBodyAfter = -1;
+
+        /**
+         * Constructor.
+         * 
+         * @param sha1
+         *            sha1 of the uploaded file
+         */
+        public UploadServer(final String sha1) {
+            mSha1 = sha1;
+        }
+
+        @Override
+        public synchronized BoxHttpResponse execute(final BoxHttpRequest request) throws IOException {
+            if (!BoxHttpRequest.METHOD_POST.equals(request.getMethod())) {
+                assertEquals("get_account_tree", getParam(request, "action"));
+                assertEquals(String.valueOf(FOLDER_ID), getParam(request, "folder_id"));
+                mListings.incrementAndGet();
+                final StringBuilder tree = new StringBuilder("<folder id=\"" + FOLDER_ID + "\" name=\"f\"><files>");
+                for (int i = 0; i < mStoredIds.size(); i++) {
+                    tree.append("<file id=\"" + mStoredIds.get(i) + "\" file_name=\"" + FILE_NAME + "\" sha1=\"" + mSha1 + "\" size=\"" + SIZE + "\"/>");
+                }
+                tree.append("</files></folder>");
+                if (request.getUrl().indexOf("nozip") >= 0) {
+                    return xml("<status>listing_ok</status><tree>" + tree + "</tree>");
+                }
+                return xml("<status>listing_ok</status><tree>"
+                    + ZippedTreeInputStreamTest.zipTree("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + tree, ZippedTreeInputStreamTest.FORMAT_ZIP) + "</tree>");
+            }
+            assertTrue(request.getUrl(), request.getUrl().endsWith("/upload/" + AUTH_TOKEN + "/" + FOLDER_ID));
+            mPosts.incrementAndGet();
+            final boolean cancel = mCancelPosts > 0;
+            final boolean fail = mFailPosts > 0;
+            if (cancel) {
+                mCancelPosts--;
+            }
+            else if (fail) {
+                mFailPosts--;
+            }
+            final int breakAfter = cancel || fail ? mBreakBodyAfter : -1;
+            request.getBody().writeTo(new OutputStream() {
+
+                /** Bytes written so far. */
+                private int mWritten;
+
+                @Override
+                public void write(final int b) throws IOException {
+                    write(new byte[] {(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(final byte[] buffer, final int offset, final int length) throws IOException {
+                    mWritten += length;
+                    if (breakAfter >= 0 && mWritten > breakAfter) {
+                        if (cancel) {
+                            Thread.currentThread().interrupt();
+                        }
+                        throw new IOException("connection reset");
+                    }
+                }
+            });
+            if (fail) {
+                throw new IOException("connection reset");
+            }
+            if (mUnavailablePosts > 0) {
+                mUnavailablePosts--;
+                return LoopbackHttpTransport.newResponse(503, new byte[0]);
+            }
+            final Long id = Long.valueOf(1000 + mStoredIds.size());
+            mStoredIds.add(id);
+            if (mDropResponses > 0) {
+                mDropResponses--;
+                throw new IOException("connection reset");
+            }
+            return xml("<status>upload_ok</status><files><file file_name=\"" + FILE_NAME + "\" id=\"" + id + "\" folder_id=\"" + FOLDER_ID + "\" sha1=\""
+                + mSha1 + "\"/></files>");
+        }
+    }
+}
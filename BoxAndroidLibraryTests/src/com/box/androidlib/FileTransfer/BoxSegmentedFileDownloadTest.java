@@ -0,0 +1,433 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.FileTransfer;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.box.androidlib.LoopbackTestCase;
+import com.box.androidlib.DAO.BoxFile;
+import com.box.androidlib.ResponseListeners.FileDownloadListener;
+import com.box.androidlib.ResponseParsers.DefaultResponseParser;
+import com.box.androidlib.Transport.BoxHttpRequest;
+import com.box.androidlib.Transport.BoxHttpResponse;
+import com.box.androidlib.Transport.LoopbackHttpTransport;
+import com.box.androidlib.Utils.BoxConfig;
+
+/**
+ * Tests for {@link BoxSegmentedFileDownload}, against a fake download server that answers Range requests from memory.
+ * 
+ * @author developers@box.net
+ */
+public class BoxSegmentedFileDownloadTest extends LoopbackTestCase {
+
+    /** Size of the file, large enough to be split into several ranges. */
+    private static final int SIZE = 6 * 1024 * 1024 + 123;
+
+    /** Contents of the file. */
+    private byte[] mContents;
+    /** The file being downloaded. */
+    private BoxFile mFile;
+    /** Where it is downloaded to. */
+    private File mDestination;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        BoxConfig.getInstance().setMaxDownloadSegments(4);
+        mContents = new byte[SIZE];
+        new Random(1).nextBytes(mContents);
+        mFile = new BoxFile();
+        mFile.setId(42);
+        mFile.setSize(SIZE);
+        mDestination = File.createTempFile("segmented", ".bin");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDestination.delete();
+        DownloadJournal.getJournalFile(mDestination).delete();
+        super.tearDown();
+    }
+
+    /**
+     * The ranges are written at their offsets, so the file is downloaded whole.
+     * 
+     * @throws IOException
+     *             if the download fails
+     */
+    public void testRangesAreReassembled() throws IOException {
+        final RangeServer server = new RangeServer();
+        final LoopbackHttpTransport transport = serve(server);
+        final DefaultResponseParser parser = new BoxSegmentedFileDownload(AUTH_TOKEN).execute(mFile, mDestination, null);
+        assertEquals(FileDownloadListener.STATUS_DOWNLOAD_OK, parser.getStatus());
+        assertTrue(transport.getRequestCount() > 1);
+        assertEquals(0, server.mFullRequests.get());
+        assertTrue(Arrays.equals(mContents, readDestination()));
+    }
+
+    /**
+     * Ranges are fetched over several connections at the same time when that makes the download faster.
+     * 
+     * @throws IOException
+     *             if the download fails
+     */
+    public void testSlowServerGetsMoreConnections() throws IOException {
+        final RangeServer server = new RangeServer();
+        server.mDelayPerRead = 2;
+        serve(server);
+        final DefaultResponseParser parser = new BoxSegmentedFileDownload(AUTH_TOKEN).execute(mFile, mDestination, null);
+        assertEquals(FileDownloadListener.STATUS_DOWNLOAD_OK, parser.getStatus());
+        assertTrue("most ranges at a time " + server.mMostInFlight.get(), server.mMostInFlight.get() > 1);
+        assertTrue("most ranges at a time " + server.mMostInFlight.get(), server.mMostInFlight.get() <= 4);
+        assertTrue(Arrays.equals(mContents, readDestination()));
+    }
+
+    /**
+     * A server that ignores Range gets the file again as a single stream.
+     * 
+     * @throws IOException
+     *             if the download fails
+     */
+    public void testServerWithoutRanges() throws IOException {
+        final RangeServer server = new RangeServer();
+        server.mIgnoreRanges = true;
+        serve(server);
+        final DefaultResponseParser parser = new BoxSegmentedFileDownload(AUTH_TOKEN).execute(mFile, mDestination, null);
+        assertEquals(FileDownloadListener.STATUS_DOWNLOAD_OK, parser.getStatus());
+        assertTrue(Arrays.equals(mContents, readDestination()));
+    }
+
+    /**
+     * The download fails, and leaves no file, when the server reports a size other than that of the BoxFile.
+     * 
+     * @throws IOException
+     *             if the download throws
+     */
+    public void testSizeMismatchFails() throws IOException {
+        final RangeServer server = new RangeServer();
+        server.mReportedSize = SIZE + 1;
+        serve(server);
+        final DefaultResponseParser parser = new BoxSegmentedFileDownload(AUTH_TOKEN).execute(mFile, mDestination, null);
+        assertEquals(FileDownloadListener.STATUS_DOWNLOAD_FAIL, parser.getStatus());
+        assertFalse(mDestination.exists());
+    }
+
+    /**
+     * A connection error on a range is retried, continuing where the range stopped.
+     * 
+     * @throws IOException
+     *             if the download fails
+     */
+    public void testBrokenRangeIsRetried() throws IOException {
+        final RangeServer server = new RangeServer();
+        server.mBreakRequest = 2;
+        serve(server);
+        final DefaultResponseParser parser = new BoxSegmentedFileDownload(AUTH_TOKEN).execute(mFile, mDestination, null);
+        assertEquals(FileDownloadListener.STATUS_DOWNLOAD_OK, parser.getStatus());
+        assertTrue(Arrays.equals(mContents, readDestination()));
+    }
+
+    /**
+     * An unexpected exception in a connection fails the download with an IOException instead of leaving it waiting for the range forever.
+     */
+    public void testUnexpectedExceptionFailsDownload() {
+        final RangeServer server = new RangeServer();
+        server.mCrashRequest = 2;
+        serve(server);
+        try {
+            new BoxSegmentedFileDownload(AUTH_TOKEN).execute(mFile, mDestination, null);
+            fail("The download did not fail");
+        }
+        catch (IOException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertFalse(mDestination.exists());
+    }
+
+    /**
+     * The connections that a slow server ramps up to run on the calling thread or on threads of the transfer lane, and the journal is gone once the download
+     * is complete.
+     * 
+     * @throws IOException
+     *             if the download fails
+     */
+    public void testConnectionsRunOnTransferLane() throws IOException {
+        final RangeServer server = new RangeServer();
+        server.mDelayPerRead = 2;
+        serve(server);
+        final DefaultResponseParser parser = new BoxSegmentedFileDownload(AUTH_TOKEN).execute(mFile, mDestination, null);
+        assertEquals(FileDownloadListener.STATUS_DOWNLOAD_OK, parser.getStatus());
+        final Set<String> names = new HashSet<String>(server.mThreadNames);
+        names.remove(Thread.currentThread().getName());
+        assertFalse(names.isEmpty());
+        for (final String name : names) {
+            assertTrue(name, name.startsWith("Box-transfer-"));
+        }
+        assertFalse(DownloadJournal.getJournalFile(mDestination).exists());
+    }
+
+    /**
+     * A download that fails with a connection error keeps the ranges it got, and the next download fetches only the missing ones.
+     * 
+     * @throws IOException
+     *             if the second download fails
+     */
+    public void testFailedDownloadResumesMissingRanges() throws IOException {
+        final RangeServer server = new RangeServer();
+        server.mFailAt = SIZE / 2;
+        serve(server);
+        try {
+            new BoxSegmentedFileDownload(AUTH_TOKEN).execute(mFile, mDestination, null);
+            fail("The download did not fail");
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Segment ended"));
+        }
+        assertEquals(SIZE, mDestination.length());
+        assertTrue(DownloadJournal.getJournalFile(mDestination).exists());
+
+        final RangeServer resumed = new RangeServer();
+        serve(resumed);
+        final DefaultResponseParser parser = new BoxSegmentedFileDownload(AUTH_TOKEN).execute(mFile, mDestination, null);
+        assertEquals(FileDownloadListener.STATUS_DOWNLOAD_OK, parser.getStatus());
+        assertTrue(Arrays.equals(mContents, readDestination()));
+        assertTrue("served " + resumed.mBytesServed.get(), resumed.mBytesServed.get() < SIZE);
+        assertFalse(DownloadJournal.getJournalFile(mDestination).exists());
+    }
+
+    /**
+     * A cancelled download keeps the ranges it got, and the next download fetches only the missing ones.
+     * 
+     * @throws Exception
+     *             if the test fails
+     */
+    public void testCancelledDownloadResumesMissingRanges() throws Exception {
+        final RangeServer server = new RangeServer();
+        server.mDelayPerRead = 1;
+        serve(server);
+        final AtomicReference<String> status = new AtomicReference<String>();
+        final Thread thread = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    status.set(new BoxSegmentedFileDownload(AUTH_TOKEN).execute(mFile, mDestination, null).getStatus());
+                }
+                catch (IOException e) {
+                    status.set(e.toString());
+                }
+            }
+        };
+        thread.start();
+        while (server.mBytesServed.get() < SIZE / 4 && thread.isAlive()) {
+            Thread.sleep(5);
+        }
+        thread.interrupt();
+        thread.join(10000);
+        assertFalse(thread.isAlive());
+        assertEquals(FileDownloadListener.STATUS_DOWNLOAD_CANCELLED, status.get());
+        assertTrue(DownloadJournal.getJournalFile(mDestination).exists());
+
+        final RangeServer resumed = new RangeServer();
+        serve(resumed);
+        final DefaultResponseParser parser = new BoxSegmentedFileDownload(AUTH_TOKEN).execute(mFile, mDestination, null);
+        assertEquals(FileDownloadListener.STATUS_DOWNLOAD_OK, parser.getStatus());
+        assertTrue(Arrays.equals(mContents, readDestination()));
+        assertTrue("served " + resumed.mBytesServed.get(), resumed.mBytesServed.get() < SIZE);
+    }
+
+    /**
+     * Ranges journalled for another version of the file are not used, and the file is downloaded whole.
+     * 
+     * @throws IOException
+     *             if the second download fails
+     */
+    public void testJournalOfOtherVersionIsIgnored() throws IOException {
+        final RangeServer server = new RangeServer();
+        server.mFailAt = SIZE / 2;
+        serve(server);
+        try {
+            new BoxSegmentedFileDownload(AUTH_TOKEN).execute(mFile, mDestination, null);
+            fail("The download did not fail");
+        }
+        catch (IOException e) {
+            // Leaves the journal.
+        }
+        mFile.setSha1("0123456789abcdef0123456789abcdef01234567");
+        final RangeServer resumed = new RangeServer();
+        serve(resumed);
+        final DefaultResponseParser parser = new BoxSegmentedFileDownload(AUTH_TOKEN).execute(mFile, mDestination, null);
+        assertEquals(FileDownloadListener.STATUS_DOWNLOAD_OK, parser.getStatus());
+        assertTrue(Arrays.equals(mContents, readDestination()));
+        assertEquals(SIZE, resumed.mBytesServed.get());
+    }
+
+    /**
+     * Read the downloaded file.
+     * 
+     * @return Its contents
+     * @throws IOException
+     *             if it cannot be read
+     */
+    private byte[] readDestination() throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(mDestination, "r");
+        try {
+            final byte[] contents = new byte[(int) raf.length()];
+            raf.readFully(contents);
+            return contents;
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Fake download server serving {@link BoxSegmentedFileDownloadTest#mContents}.
+     */
+    private final class RangeServer implements LoopbackHttpTransport.Responder {
+
+        /** Size reported in Content-Range. */
+        private volatile long mReportedSize = SIZE;
+        /** Whether to answer range requests with the whole file. */
+        private volatile boolean mIgnoreRanges;
+        /** Milliseconds to wait on every read of a response. */
+        private volatile long mDelayPerRead;
+        /** Number of the request whose response breaks halfway, or 0. */
+        private volatile int mBreakRequest;
+        /** Number of the request that throws an IllegalStateException, or 0. */
+        private volatile int mCrashRequest;
+        /** Number of requests so far. */
+        private final AtomicInteger mRequests = new AtomicInteger();
+        /** Number of requests for the whole file. */
+        private final AtomicInteger mFullRequests = new AtomicInteger();
+        /** Number of responses not closed yet. */
+        private final AtomicInteger mInFlight = new AtomicInteger();
+        /** Highest number of responses being read at the same time. */
+        private final AtomicInteger mMostInFlight = new AtomicInteger();
+        /** Offset at which every range that covers it ends early, or -1. */
+        private volatile long mFailAt = -1;
+        /** Number of body bytes served. */
+        private final AtomicLong mBytesServed = new AtomicLong();
+        /** Names of the threads that made requests. */
+        private final Set<String> mThreadNames = Collections.synchronizedSet(new HashSet<String>());
+
+        @Override
+        public BoxHttpResponse respond(final BoxHttpRequest request, final byte[] requestBody) throws IOException {
+            final int number = mRequests.incrementAndGet();
+            mThreadNames.add(Thread.currentThread().getName());
+            if (number == mCrashRequest) {
+                throw new IllegalStateException("request " + number);
+            }
+            final String range = request.getHeaders().get("Range");
+            if (range == null || mIgnoreRanges) {
+                mFullRequests.incrementAndGet();
+                return LoopbackHttpTransport.newResponse(200, mContents);
+            }
+            final String[] bounds = range.substring("bytes=".length()).split("-");
+            final int start = Integer.parseInt(bounds[0]);
+            int end = Integer.parseInt(bounds[1]) + 1;
+            final Map<String, List<String>> headers = new HashMap<String, List<String>>();
+            final List<String> contentRange = new ArrayList<String>();
+            contentRange.add("bytes " + start + "-" + (end - 1) + "/" + mReportedSize);
+            headers.put("Content-Range", contentRange);
+            if (number == mBreakRequest) {
+                end = start + (end - start) / 2;
+            }
+            if (mFailAt >= start && mFailAt < end) {
+                end = (int) mFailAt;
+            }
+            final byte[] body = new byte[end - start];
+            System.arraycopy(mContents, start, body, 0, body.length);
+            final BoxHttpResponse response = LoopbackHttpTransport.newResponse(206, headers, body);
+            return new BoxHttpResponse() {
+
+                /** Whether the response has been closed or aborted. */
+                private final AtomicBoolean mDone = new AtomicBoolean();
+
+                @Override
+                public int getStatusCode() {
+                    return response.getStatusCode();
+                }
+
+                @Override
+                public String getHeader(final String name) {
+                    return response.getHeader(name);
+                }
+
+                @Override
+                public Map<String, List<String>> getHeaders() {
+                    return response.getHeaders();
+                }
+
+                @Override
+                public InputStream getContent() throws IOException {
+                    final int inFlight = mInFlight.incrementAndGet();
+                    synchronized (mMostInFlight) {
+                        mMostInFlight.set(Math.max(mMostInFlight.get(), inFlight));
+                    }
+                    return new FilterInputStream(response.getContent()) {
+
+                        @Override
+                        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+                            if (mDelayPerRead > 0) {
+                                sleep(mDelayPerRead);
+                            }
+                            final int n = super.read(buffer, offset, length);
+                            if (n > 0) {
+                                mBytesServed.addAndGet(n);
+                            }
+                            return n;
+                        }
+                    };
+                }
+
+                @Override
+                public void close() throws IOException {
+                    done();
+                    response.close();
+                }
+
+                @Override
+                public void abort() {
+                    done();
+                    response.abort();
+                }
+
+                /**
+                 * Count the response as no longer being read.
+                 */
+                private void done() {
+                    if (mDone.compareAndSet(false, true)) {
+                        mInFlight.decrementAndGet();
+                    }
+                }
+            };
+        }
+    }
+}
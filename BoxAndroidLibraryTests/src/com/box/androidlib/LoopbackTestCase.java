@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+
+import junit.framework.TestCase;
+
+import com.box.androidlib.Transport.BoxHttpRequest;
+import com.box.androidlib.Transport.BoxHttpResponse;
+import com.box.androidlib.Transport.BoxHttpTransport;
+import com.box.androidlib.Transport.LoopbackHttpTransport;
+import com.box.androidlib.Utils.BoxConfig;
+import com.box.androidlib.Utils.MetadataCache;
+import com.box.androidlib.Utils.RequestCoalescer;
+
+/**
+ * Base class of the tests that talk to a fake Box API through a {@link LoopbackHttpTransport}. The transport, cache, coalescer and concurrency limits set in
+ * {@link BoxConfig} by a test are put back afterwards.
+ * 
+ * @author developers@box.net
+ */
+public abstract class LoopbackTestCase extends TestCase {
+
+    /** API key used by the tests. */
+    protected static final String API_KEY = "apikey";
+    /** Auth token used by the tests. */
+    protected static final String AUTH_TOKEN = "authtoken";
+
+    /** Transport before the test. */
+    private BoxHttpTransport mTransport;
+    /** Cache before the test. */
+    private MetadataCache mMetadataCache;
+    /** Coalescer before the test. */
+    private RequestCoalescer mRequestCoalescer;
+    /** Limit of the interactive lane before the test. */
+    private int mMaxConcurrentRequests;
+    /** Limit of the transfer lane before the test. */
+    private int mMaxConcurrentTransfers;
+    /** Most segments of a download before the test. */
+    private int mMaxDownloadSegments;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        final BoxConfig config = BoxConfig.getInstance();
+        mTransport = config.getHttpTransport();
+        mMetadataCache = config.getMetadataCache();
+        mRequestCoalescer = config.getRequestCoalescer();
+        mMaxConcurrentRequests = config.getMaxConcurrentRequests();
+        mMaxConcurrentTransfers = config.getMaxConcurrentTransfers();
+        mMaxDownloadSegments = config.getMaxDownloadSegments();
+        config.setMetadataCache(null);
+        config.setRequestCoalescer(null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        final BoxConfig config = BoxConfig.getInstance();
+        config.setHttpTransport(mTransport);
+        config.setMetadataCache(mMetadataCache);
+        config.setRequestCoalescer(mRequestCoalescer);
+        config.setMaxConcurrentRequests(mMaxConcurrentRequests);
+        config.setMaxConcurrentTransfers(mMaxConcurrentTransfers);
+        config.setMaxDownloadSegments(mMaxDownloadSegments);
+        super.tearDown();
+    }
+
+    /**
+     * Send every request to a responder.
+     * 
+     * @param responder
+     *            The fake Box API
+     * @return The transport, which counts the requests
+     */
+    protected final LoopbackHttpTransport serve(final LoopbackHttpTransport.Responder responder) {
+        final LoopbackHttpTransport transport = new LoopbackHttpTransport(responder);
+        BoxConfig.getInstance().setHttpTransport(transport);
+        return transport;
+    }
+
+    /**
+     * Get a query parameter of a request.
+     * 
+     * @param request
+     *            The request
+     * @param name
+     *            Name of the parameter
+     * @return The decoded value of its first occurrence, or null if the request does not have it
+     */
+    protected static String getParam(final BoxHttpRequest request, final String name) {
+        final String url = request.getUrl();
+        final int query = url.indexOf('?');
+        if (query < 0) {
+            return null;
+        }
+        final String[] pairs = url.substring(query + 1).split("&");
+        for (int i = 0; i < pairs.length; i++) {
+            final int equals = pairs[i].indexOf('=');
+            if (equals > 0 && decode(pairs[i].substring(0, equals)).equals(name)) {
+                return decode(pairs[i].substring(equals + 1));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Decode a part of a query.
+     * 
+     * @param encoded
+     *            The encoded part
+     * @return The decoded part
+     */
+    private static String decode(final String encoded) {
+        try {
+            return URLDecoder.decode(encoded, "UTF-8");
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e.getMessage());
+        }
+    }
+
+    /**
+     * Build an API response.
+     * 
+     * @param body
+     *            What goes inside the response element
+     * @return A 200 response with the XML
+     */
+    protected static BoxHttpResponse xml(final String body) {
+        return LoopbackHttpTransport.newResponse(200, "<?xml version=\"1.0\" encoding=\"UTF-8\"?><response>" + body + "</response>");
+    }
+
+    /**
+     * Build an API response holding only a status.
+     * 
+     * @param status
+     *            The status
+     * @return A 200 response with the XML
+     */
+    protected static BoxHttpResponse status(final String status) {
+        return xml("<status>" + status + "</status>");
+    }
+
+    /**
+     * Sleep, keeping the interrupt status.
+     * 
+     * @param millis
+     *            Time to sleep
+     */
+    protected static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
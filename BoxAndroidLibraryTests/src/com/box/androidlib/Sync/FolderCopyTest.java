@@ -0,0 +1,283 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.Sync;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.box.androidlib.Box;
+import com.box.androidlib.LoopbackTestCase;
+import com.box.androidlib.DAO.BoxFile;
+import com.box.androidlib.DAO.BoxFolder;
+import com.box.androidlib.DAO.BoxTree;
+import com.box.androidlib.ResponseListeners.CopyListener;
+import com.box.androidlib.ResponseListeners.CreateFolderListener;
+import com.box.androidlib.Transport.BoxHttpRequest;
+import com.box.androidlib.Transport.BoxHttpResponse;
+import com.box.androidlib.Transport.LoopbackHttpTransport;
+
+/**
+ * Tests for {@link FolderCopy}: copying a tree, resuming from the state file, and which existing folders and files are taken as copies.
+ * 
+ * @author developers@box.net
+ */
+public class FolderCopyTest extends LoopbackTestCase {
+
+    /** Id of the folder to copy into. */
+    private static final long DESTINATION_ID = 7;
+
+    /** The fake Box API. */
+    private FakeApi mApi;
+    /** Its transport. */
+    private LoopbackHttpTransport mTransport;
+    /** The state file. */
+    private File mStateFile;
+    /** The folder to copy. */
+    private BoxFolder mSource;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mApi = new FakeApi();
+        mTransport = serve(mApi);
+        mStateFile = File.createTempFile("foldercopy", ".state");
+        mStateFile.delete();
+        mSource = newSource();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mStateFile.delete();
+        super.tearDown();
+    }
+
+    /**
+     * Every folder and file is copied once, the copy keeps the structure, and no more requests are made at a time than asked for.
+     * 
+     * @throws IOException
+     *             if the state file cannot be used
+     */
+    public void testCopiesTree() throws IOException {
+        mApi.mDelay = 5;
+        final FolderCopy copy = new FolderCopy(API_KEY, AUTH_TOKEN, DESTINATION_ID, mStateFile);
+        copy.setMaxConcurrency(4);
+        final FolderCopy.Report report = copy.execute(mSource);
+        assertTrue(report.isComplete());
+        assertEquals(5, report.getFoldersCreatedCount());
+        assertEquals(10, report.getFilesCopiedCount());
+        assertEquals(15, report.getCompletedCount());
+        assertEquals(15, report.getTotalCount());
+        assertEquals(1000, report.getBytesCopied());
+        assertEquals(1000, report.getTotalBytes());
+        assertEquals(15, mTransport.getRequestCount());
+        final Long rootCopy = mApi.mFolders.get(DESTINATION_ID + "/src");
+        assertEquals(rootCopy.longValue(), report.getCopyFolderId());
+        final Long childCopy = mApi.mFolders.get(rootCopy + "/a");
+        assertNotNull(mApi.mFolders.get(childCopy + "/a1"));
+        assertTrue(mApi.mCopies.contains(childCopy + "/20"));
+        assertTrue("at most 4 requests at a time, saw " + mApi.mMostInFlight.get(), mApi.mMostInFlight.get() <= 4);
+        assertTrue(mApi.mMostInFlight.get() > 1);
+    }
+
+    /**
+     * A failed run reports what failed, and a new instance with the same state file sends only the requests that did not succeed.
+     * 
+     * @throws IOException
+     *             if the state file cannot be used
+     */
+    public void testResumeFromStateFile() throws IOException {
+        mApi.mDeniedNames.add("b");
+        mApi.mDeniedNames.add("10");
+        FolderCopy.Report report = new FolderCopy(API_KEY, AUTH_TOKEN, DESTINATION_ID, mStateFile).execute(mSource);
+        assertFalse(report.isComplete());
+        // Folder b and its file are not attempted once b fails, but they count towards the total.
+        assertEquals(2, report.getFailures().size());
+        assertEquals(15, report.getTotalCount());
+        assertEquals(12, report.getCompletedCount());
+        final Set<String> failed = new HashSet<String>();
+        for (int i = 0; i < report.getFailures().size(); i++) {
+            failed.add(report.getFailures().get(i).getType() + " " + report.getFailures().get(i).getId());
+            assertEquals("e_access_denied", report.getFailures().get(i).getStatus());
+        }
+        assertTrue(failed.contains(Box.TYPE_FOLDER + " 3"));
+        assertTrue(failed.contains(Box.TYPE_FILE + " 10"));
+
+        mApi.mDeniedNames.clear();
+        final long before = mTransport.getRequestCount();
+        report = new FolderCopy(API_KEY, AUTH_TOKEN, DESTINATION_ID, mStateFile).execute(mSource);
+        assertTrue(report.isComplete());
+        // b, b1 and their files were not copied, nor was file 10.
+        assertEquals(2, report.getFoldersCreatedCount());
+        assertEquals(3, report.getFilesCopiedCount());
+        assertEquals(10, report.getAlreadyCopiedCount());
+        assertEquals(5, mTransport.getRequestCount() - before);
+        assertEquals(5, mApi.mFolders.size());
+        assertEquals(10, mApi.mCopies.size());
+    }
+
+    /**
+     * When the answers to requests are lost after the server acted on them, the next run takes the folders and files that exist as the copies.
+     * 
+     * @throws IOException
+     *             if the state file cannot be used
+     */
+    public void testLostAnswersAreAccepted() throws IOException {
+        mApi.mLostNames.add("a");
+        mApi.mLostNames.add("11");
+        FolderCopy.Report report = new FolderCopy(API_KEY, AUTH_TOKEN, DESTINATION_ID, mStateFile).execute(mSource);
+        assertFalse(report.isComplete());
+        assertEquals(2, report.getFailures().size());
+
+        mApi.mLostNames.clear();
+        report = new FolderCopy(API_KEY, AUTH_TOKEN, DESTINATION_ID, mStateFile).execute(mSource);
+        assertTrue(report.isComplete());
+        assertTrue(report.getFailures().isEmpty());
+        assertEquals(5, mApi.mFolders.size());
+        assertEquals(10, mApi.mCopies.size());
+    }
+
+    /**
+     * A folder or file that exists before any run sent the request is not taken as the copy.
+     * 
+     * @throws IOException
+     *             if the state file cannot be used
+     */
+    public void testExistingTargetsWithoutRequestFail() throws IOException {
+        final FolderCopy.Report first = new FolderCopy(API_KEY, AUTH_TOKEN, DESTINATION_ID, mStateFile).execute(mSource);
+        assertTrue(first.isComplete());
+
+        // Without the state file, nothing shows the existing items are copies from this source.
+        mStateFile.delete();
+        final FolderCopy.Report report = new FolderCopy(API_KEY, AUTH_TOKEN, DESTINATION_ID, mStateFile).execute(mSource);
+        assertFalse(report.isComplete());
+        assertEquals(1, report.getFailures().size());
+        assertEquals(CreateFolderListener.STATUS_S_FOLDER_EXISTS, report.getFailures().get(0).getStatus());
+        assertEquals(0, report.getFoldersCreatedCount());
+        assertEquals(0, report.getCopyFolderId());
+    }
+
+    /**
+     * Build the folder to copy: src holds folders a and b and files 10 and 11, a holds folder a1 and files 20 to 23, a1 holds files 30 to 31, and b holds
+     * file 40 and folder b1 with file 41. Each file is 100 bytes.
+     * 
+     * @return The folder
+     */
+    private static BoxFolder newSource() {
+        final BoxFolder root = newFolder(1, "src");
+        final BoxTree tree = new BoxTree(root);
+        tree.addFolder(1, newFolder(2, "a"));
+        tree.addFolder(1, newFolder(3, "b"));
+        tree.addFolder(2, newFolder(4, "a1"));
+        tree.addFolder(3, newFolder(5, "b1"));
+        final long[] fileIds = {10, 11, 20, 21, 22, 23, 30, 31, 40, 41};
+        final long[] folderIds = {1, 1, 2, 2, 2, 2, 4, 4, 3, 5};
+        for (int i = 0; i < fileIds.length; i++) {
+            final BoxFile file = new BoxFile();
+            file.setId(fileIds[i]);
+            file.setFileName("file" + fileIds[i]);
+            file.setSize(100);
+            tree.addFile(folderIds[i], file);
+        }
+        return root;
+    }
+
+    /**
+     * Build a folder.
+     * 
+     * @param id
+     *            Its id
+     * @param name
+     *            Its name
+     * @return The folder
+     */
+    private static BoxFolder newFolder(final long id, final String name) {
+        final BoxFolder folder = new BoxFolder();
+        folder.setId(id);
+        folder.setFolderName(name);
+        return folder;
+    }
+
+    /**
+     * Fake Box API answering create_folder and copy like the server does for folders and files that exist.
+     */
+    private static final class FakeApi implements LoopbackHttpTransport.Responder {
+
+        /** Milliseconds to take for every request. */
+        private volatile long mDelay;
+        /** Folder names and file ids whose requests are answered with e_access_denied. */
+        private final Set<String> mDeniedNames = Collections.synchronizedSet(new HashSet<String>());
+        /** Folder names and file ids whose requests are carried out, but whose answers are lost. */
+        private final Set<String> mLostNames = Collections.synchronizedSet(new HashSet<String>());
+        /** Ids of the created folders, by parent id and name. */
+        private final Map<String, Long> mFolders = Collections.synchronizedMap(new HashMap<String, Long>());
+        /** Copies, as destination id and file id. */
+        private final Set<String> mCopies = Collections.synchronizedSet(new HashSet<String>());
+        /** Next folder id. */
+        private final AtomicInteger mNextId = new AtomicInteger(1000);
+        /** Number of requests being answered. */
+        private final AtomicInteger mInFlight = new AtomicInteger();
+        /** Highest number of requests answered at the same time. */
+        private final AtomicInteger mMostInFlight = new AtomicInteger();
+
+        @Override
+        public BoxHttpResponse respond(final BoxHttpRequest request, final byte[] requestBody) throws IOException {
+            final int inFlight = mInFlight.incrementAndGet();
+            try {
+                synchronized (mMostInFlight) {
+                    mMostInFlight.set(Math.max(mMostInFlight.get(), inFlight));
+                }
+                sleep(mDelay);
+                final String name;
+                final BoxHttpResponse response;
+                if ("create_folder".equals(getParam(request, "action"))) {
+                    name = getParam(request, "name");
+                    if (mDeniedNames.contains(name)) {
+                        return status("e_access_denied");
+                    }
+                    final String key = getParam(request, "parent_id") + "/" + name;
+                    synchronized (mFolders) {
+                        Long id = mFolders.get(key);
+                        String status = CreateFolderListener.STATUS_S_FOLDER_EXISTS;
+                        if (id == null) {
+                            id = Long.valueOf(mNextId.incrementAndGet());
+                            mFolders.put(key, id);
+                            status = CreateFolderListener.STATUS_CREATE_OK;
+                        }
+                        response = xml("<status>" + status + "</status><folder><folder_id>" + id + "</folder_id><folder_name>" + name
+                            + "</folder_name></folder>");
+                    }
+                }
+                else {
+                    name = getParam(request, "target_id");
+                    if (mDeniedNames.contains(name)) {
+                        return status("e_access_denied");
+                    }
+                    final boolean added = mCopies.add(getParam(request, "destination_id") + "/" + name);
+                    response = status(added ? CopyListener.STATUS_S_COPY_NODE : CopyListener.STATUS_FILENAME_IN_USE);
+                }
+                if (mLostNames.contains(name)) {
+                    throw new IOException("connection reset");
+                }
+                return response;
+            }
+            finally {
+                mInFlight.decrementAndGet();
+            }
+        }
+    }
+}
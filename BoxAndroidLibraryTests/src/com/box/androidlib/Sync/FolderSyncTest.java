@@ -0,0 +1,534 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.Sync;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.box.androidlib.Box;
+import com.box.androidlib.BoxSynchronous;
+import com.box.androidlib.LoopbackTestCase;
+import com.box.androidlib.DAO.BoxFolder;
+import com.box.androidlib.Transport.BoxHttpRequest;
+import com.box.androidlib.Transport.BoxHttpResponse;
+import com.box.androidlib.Transport.LoopbackHttpTransport;
+import com.box.androidlib.Utils.BoxUtils;
+
+/**
+ * Tests for {@link FolderSync}: a first sync merges both sides, a sync with nothing changed does nothing, changes on either side are carried to the other,
+ * and a file changed on both sides is left alone.
+ * 
+ * @author developers@box.net
+ */
+public class FolderSyncTest extends LoopbackTestCase {
+
+    /** The fake Box API. */
+    private FakeApi mApi;
+    /** The local directory. */
+    private File mDirectory;
+    /** The state file. */
+    private File mStateFile;
+    /** The sync. */
+    private FolderSync mSync;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mApi = new FakeApi();
+        serve(mApi);
+        mDirectory = File.createTempFile("foldersync", "");
+        mDirectory.delete();
+        mDirectory.mkdirs();
+        mStateFile = new File(mDirectory.getPath() + ".state");
+        mSync = new FolderSync(API_KEY, AUTH_TOKEN, mDirectory, mStateFile);
+
+        final Node d1 = mApi.add(0, "d1", null);
+        mApi.add(d1.mId, "f1.txt", "remote one");
+        mApi.add(0, "f2.txt", "remote two");
+        new File(mDirectory, "local").mkdirs();
+        write("local/l1.txt", "local one");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        delete(mDirectory);
+        mStateFile.delete();
+        super.tearDown();
+    }
+
+    /**
+     * The first sync brings the files of each side to the other, and the next finds nothing to do without hashing anything.
+     * 
+     * @throws IOException
+     *             if the sync fails
+     */
+    public void testFirstSync() throws IOException {
+        FolderSync.Plan plan = mSync.plan(fetch());
+        assertEquals(1, count(plan, FolderSync.OP_CREATE_LOCAL_FOLDER));
+        assertEquals(1, count(plan, FolderSync.OP_CREATE_REMOTE_FOLDER));
+        assertEquals(2, count(plan, FolderSync.OP_DOWNLOAD));
+        assertEquals(1, count(plan, FolderSync.OP_UPLOAD));
+        final FolderSync.Report report = mSync.execute(plan);
+        assertTrue(report.getFailures().isEmpty());
+        assertEquals("local one".length(), report.getBytesUploaded());
+        assertEquals("remote one".length() + "remote two".length(), report.getBytesDownloaded());
+        assertEquals("remote one", read("d1/f1.txt"));
+        assertEquals("local one", mApi.child(mApi.child(0, "local").mId, "l1.txt").mData);
+
+        final int requests = mApi.mRequestCount;
+        plan = mSync.plan(fetch());
+        assertTrue(plan.getOperations().isEmpty());
+        assertEquals(0, plan.getHashedCount());
+        assertEquals(3, plan.getUnchangedCount());
+        mSync.execute(plan);
+        assertEquals(requests + 1, mApi.mRequestCount);
+    }
+
+    /**
+     * Changes made on either side since the last sync are made on the other side.
+     * 
+     * @throws IOException
+     *             if the sync fails
+     */
+    public void testChangesOnBothSides() throws IOException {
+        final long d1 = mApi.child(0, "d1").mId;
+        mApi.add(d1, "keep.txt", "keep");
+        mApi.add(d1, "gone.txt", "gone");
+        mSync.execute(mSync.plan(fetch()));
+
+        write("d1/keep.txt", "keep, edited");
+        write("new/n.txt", "new");
+        new File(mDirectory, "f2.txt").renameTo(new File(mDirectory, "d1/f2-moved.txt"));
+        mApi.child(d1, "f1.txt").setData("remote one, edited");
+        mApi.add(d1, "f3.txt", "remote three");
+        mApi.delete(mApi.child(d1, "gone.txt").mId);
+
+        final FolderSync.Plan plan = mSync.plan(fetch());
+        assertEquals(1, count(plan, FolderSync.OP_UPLOAD_OVERWRITE));
+        assertEquals(1, count(plan, FolderSync.OP_UPLOAD));
+        assertEquals(1, count(plan, FolderSync.OP_CREATE_REMOTE_FOLDER));
+        assertEquals(1, count(plan, FolderSync.OP_MOVE_REMOTE));
+        assertEquals(2, count(plan, FolderSync.OP_DOWNLOAD));
+        assertEquals(1, count(plan, FolderSync.OP_DELETE_LOCAL));
+        assertEquals(7, plan.getOperations().size());
+        final FolderSync.Report report = mSync.execute(plan);
+        assertTrue(report.getFailures().isEmpty());
+        assertEquals("keep, edited", mApi.child(d1, "keep.txt").mData);
+        assertEquals("new", mApi.child(mApi.child(0, "new").mId, "n.txt").mData);
+        assertEquals("remote two", mApi.child(d1, "f2-moved.txt").mData);
+        assertNull(mApi.child(0, "f2.txt"));
+        assertEquals("remote one, edited", read("d1/f1.txt"));
+        assertEquals("remote three", read("d1/f3.txt"));
+        assertFalse(new File(mDirectory, "d1/gone.txt").exists());
+
+        assertTrue(mSync.plan(fetch()).getOperations().isEmpty());
+    }
+
+    /**
+     * A folder deleted on Box is deleted locally, unless a file in it was changed locally since, which is uploaded again.
+     * 
+     * @throws IOException
+     *             if the sync fails
+     */
+    public void testDeletedFolderKeepsLocalEdits() throws IOException {
+        mSync.execute(mSync.plan(fetch()));
+        write("local/l1.txt", "local one, edited");
+        mApi.delete(mApi.child(0, "local").mId);
+        mApi.delete(mApi.child(0, "d1").mId);
+
+        final FolderSync.Plan plan = mSync.plan(fetch());
+        assertEquals(1, count(plan, FolderSync.OP_CREATE_REMOTE_FOLDER));
+        assertEquals(1, count(plan, FolderSync.OP_UPLOAD));
+        assertEquals(2, count(plan, FolderSync.OP_DELETE_LOCAL));
+        mSync.execute(plan);
+        assertFalse(new File(mDirectory, "d1").exists());
+        assertEquals("local one, edited", mApi.child(mApi.child(0, "local").mId, "l1.txt").mData);
+        assertTrue(mSync.plan(fetch()).getOperations().isEmpty());
+    }
+
+    /**
+     * A file changed on both sides to different contents is reported as a conflict and left alone, and is synced once the user resolves it.
+     * 
+     * @throws IOException
+     *             if the sync fails
+     */
+    public void testConflict() throws IOException {
+        mSync.execute(mSync.plan(fetch()));
+        write("f2.txt", "changed here");
+        mApi.child(0, "f2.txt").setData("changed on Box");
+
+        FolderSync.Plan plan = mSync.plan(fetch());
+        assertEquals(1, plan.getOperations().size());
+        assertEquals(FolderSync.OP_CONFLICT, plan.getOperations().get(0).getKind());
+        final FolderSync.Report report = mSync.execute(plan);
+        assertEquals(1, report.getFailedCount(FolderSync.OP_CONFLICT));
+        assertEquals("conflict", report.getFailures().get(0).getStatus());
+        assertEquals("changed here", read("f2.txt"));
+        assertEquals("changed on Box", mApi.child(0, "f2.txt").mData);
+
+        // Keep the file on Box.
+        new File(mDirectory, "f2.txt").delete();
+        plan = mSync.plan(fetch());
+        assertEquals(1, count(plan, FolderSync.OP_DOWNLOAD));
+        mSync.execute(plan);
+        assertEquals("changed on Box", read("f2.txt"));
+    }
+
+    /**
+     * Fetch the account tree.
+     * 
+     * @return The root folder
+     * @throws IOException
+     *             if the request fails
+     */
+    private static BoxFolder fetch() throws IOException {
+        return BoxSynchronous.getInstance(API_KEY).getAccountTree(AUTH_TOKEN, 0, new String[] {Box.PARAM_NOZIP}).getFolder();
+    }
+
+    /**
+     * Count the operations of a kind.
+     * 
+     * @param plan
+     *            The plan
+     * @param kind
+     *            One of the OP_ constants of {@link FolderSync}
+     * @return The number of operations of that kind
+     */
+    private static int count(final FolderSync.Plan plan, final int kind) {
+        int count = 0;
+        for (int i = 0; i < plan.getOperations().size(); i++) {
+            if (plan.getOperations().get(i).getKind() == kind) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Write a local file, creating its directory, and give it a modification time the last sync cannot have seen.
+     * 
+     * @param path
+     *            Path in the local directory
+     * @param text
+     *            The contents
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    private void write(final String path, final String text) throws IOException {
+        final File file = new File(mDirectory, path);
+        file.getParentFile().mkdirs();
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(text.getBytes("UTF-8"));
+        }
+        finally {
+            out.close();
+        }
+        file.setLastModified(System.currentTimeMillis() - 60000);
+    }
+
+    /**
+     * Read a local file.
+     * 
+     * @param path
+     *            Path in the local directory
+     * @return The contents
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private String read(final String path) throws IOException {
+        final File file = new File(mDirectory, path);
+        final byte[] bytes = new byte[(int) file.length()];
+        final DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(bytes);
+        }
+        finally {
+            in.close();
+        }
+        return new String(bytes, "UTF-8");
+    }
+
+    /**
+     * Delete a file or directory and everything in it.
+     * 
+     * @param file
+     *            The file or directory
+     */
+    private static void delete(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (int i = 0; i < children.length; i++) {
+                delete(children[i]);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Escape text for an XML attribute.
+     * 
+     * @param text
+     *            The text
+     * @return The escaped text
+     */
+    private static String escape(final String text) {
+        return text.replace("&", "&amp;").replace("\"", "&quot;").replace("<", "&lt;");
+    }
+
+    /**
+     * A file or folder on the fake Box.
+     */
+    private static final class Node {
+
+        /** Its id. */
+        private final long mId;
+        /** Id of its folder. */
+        private long mParentId;
+        /** Its name. */
+        private String mName;
+        /** Contents of a file, null for a folder. */
+        private String mData;
+        /** sha1 of the contents of a file. */
+        private String mSha1;
+
+        /**
+         * Create a node.
+         * 
+         * @param id
+         *            Its id
+         * @param parentId
+         *            Id of its folder
+         * @param name
+         *            Its name
+         */
+        private Node(final long id, final long parentId, final String name) {
+            mId = id;
+            mParentId = parentId;
+            mName = name;
+        }
+
+        /**
+         * Change the contents of a file.
+         * 
+         * @param data
+         *            The contents
+         */
+        private void setData(final String data) {
+            mData = data;
+            try {
+                mSha1 = BoxUtils.toHexString(MessageDigest.getInstance("SHA-1").digest(data.getBytes("UTF-8")));
+            }
+            catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e.getMessage());
+            }
+            catch (IOException e) {
+                throw new IllegalStateException(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Fake Box API answering get_account_tree, create_folder, move, rename, delete, upload, overwrite and download.
+     */
+    private static final class FakeApi implements LoopbackHttpTransport.Responder {
+
+        /** The root folder. */
+        private final Node mRoot = new Node(0, -1, "All Files");
+        /** Files and folders by id, without the root. */
+        private final Map<Long, Node> mNodes = new HashMap<Long, Node>();
+        /** Next id. */
+        private long mNextId = 1000;
+        /** Number of requests. */
+        private volatile int mRequestCount;
+
+        /**
+         * Add a file or folder.
+         * 
+         * @param parentId
+         *            Id of its folder
+         * @param name
+         *            Its name
+         * @param data
+         *            Contents of a file, or null for a folder
+         * @return The node
+         */
+        private synchronized Node add(final long parentId, final String name, final String data) {
+            final Node node = new Node(mNextId++, parentId, name);
+            if (data != null) {
+                node.setData(data);
+            }
+            mNodes.put(Long.valueOf(node.mId), node);
+            return node;
+        }
+
+        /**
+         * Find a file or folder by name.
+         * 
+         * @param parentId
+         *            Id of its folder
+         * @param name
+         *            Its name
+         * @return The node, or null if there is none
+         */
+        private synchronized Node child(final long parentId, final String name) {
+            for (Iterator<Node> i = mNodes.values().iterator(); i.hasNext();) {
+                final Node node = i.next();
+                if (node.mParentId == parentId && node.mName.equals(name)) {
+                    return node;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Delete a file or folder and everything in it.
+         * 
+         * @param id
+         *            Its id
+         */
+        private synchronized void delete(final long id) {
+            mNodes.remove(Long.valueOf(id));
+            final List<Node> children = new ArrayList<Node>();
+            for (Iterator<Node> i = mNodes.values().iterator(); i.hasNext();) {
+                final Node node = i.next();
+                if (node.mParentId == id) {
+                    children.add(node);
+                }
+            }
+            for (int i = 0; i < children.size(); i++) {
+                delete(children.get(i).mId);
+            }
+        }
+
+        /**
+         * Write the XML of a folder and everything in it.
+         * 
+         * @param xml
+         *            Where to write it
+         * @param folder
+         *            The folder
+         */
+        private synchronized void writeFolder(final StringBuilder xml, final Node folder) {
+            xml.append("<folder id=\"" + folder.mId + "\" name=\"" + escape(folder.mName) + "\"><files>");
+            final List<Node> folders = new ArrayList<Node>();
+            for (Iterator<Node> i = mNodes.values().iterator(); i.hasNext();) {
+                final Node node = i.next();
+                if (node.mParentId != folder.mId) {
+                    continue;
+                }
+                if (node.mData == null) {
+                    folders.add(node);
+                }
+                else {
+                    xml.append("<file id=\"" + node.mId + "\" file_name=\"" + escape(node.mName) + "\" size=\"" + node.mData.length() + "\" sha1=\""
+                        + node.mSha1 + "\"/>");
+                }
+            }
+            xml.append("</files><folders>");
+            for (int i = 0; i < folders.size(); i++) {
+                writeFolder(xml, folders.get(i));
+            }
+            xml.append("</folders></folder>");
+        }
+
+        @Override
+        public synchronized BoxHttpResponse respond(final BoxHttpRequest request, final byte[] requestBody) throws IOException {
+            mRequestCount++;
+            final String url = request.getUrl();
+            final String path = url.indexOf('?') < 0 ? url : url.substring(0, url.indexOf('?'));
+            if (path.indexOf("/download/") >= 0) {
+                final Node node = mNodes.get(Long.valueOf(path.substring(path.lastIndexOf('/') + 1)));
+                return node == null ? null : LoopbackHttpTransport.newResponse(200, node.mData);
+            }
+            if (path.indexOf("/upload/") >= 0 || path.indexOf("/overwrite/") >= 0) {
+                return upload(path.indexOf("/upload/") >= 0, Long.parseLong(path.substring(path.lastIndexOf('/') + 1)), requestBody);
+            }
+            final String action = getParam(request, "action");
+            if ("get_account_tree".equals(action)) {
+                final StringBuilder xml = new StringBuilder("<status>listing_ok</status><tree>");
+                writeFolder(xml, mRoot);
+                return xml(xml.append("</tree>").toString());
+            }
+            if ("create_folder".equals(action)) {
+                final long parentId = Long.parseLong(getParam(request, "parent_id"));
+                Node folder = child(parentId, getParam(request, "name"));
+                final String status = folder != null ? "s_folder_exists" : "create_ok";
+                if (folder == null) {
+                    folder = add(parentId, getParam(request, "name"), null);
+                }
+                return xml("<status>" + status + "</status><folder><folder_id>" + folder.mId + "</folder_id><folder_name>" + escape(folder.mName)
+                    + "</folder_name></folder>");
+            }
+            final Node target = mNodes.get(Long.valueOf(getParam(request, "target_id")));
+            if ("move".equals(action)) {
+                target.mParentId = Long.parseLong(getParam(request, "destination_id"));
+                return status("s_move_node");
+            }
+            if ("rename".equals(action)) {
+                target.mName = getParam(request, "new_name");
+                return status("s_rename_node");
+            }
+            if ("delete".equals(action)) {
+                delete(target.mId);
+                return status("s_delete_node");
+            }
+            return status("unknown");
+        }
+
+        /**
+         * Answer an upload or overwrite.
+         * 
+         * @param upload
+         *            Whether it is an upload, which creates a file, or an overwrite
+         * @param id
+         *            Id of the folder to upload to, or of the file to overwrite
+         * @param body
+         *            The multipart request body
+         * @return The response
+         * @throws IOException
+         *             if the body is not understood
+         */
+        private BoxHttpResponse upload(final boolean upload, final long id, final byte[] body) throws IOException {
+            final String text = new String(body, "ISO-8859-1");
+            final String boundary = text.substring(0, text.indexOf("\r\n"));
+            final int nameStart = text.indexOf("filename=\"") + 10;
+            final String name = new String(text.substring(nameStart, text.indexOf('"', nameStart)).getBytes("ISO-8859-1"), "UTF-8");
+            final int dataStart = text.indexOf("\r\n\r\n", nameStart) + 4;
+            final int dataEnd = text.indexOf("\r\n" + boundary, dataStart);
+            final String data = new String(body, dataStart, dataEnd - dataStart, "UTF-8");
+            Node file;
+            if (upload) {
+                if (child(id, name) != null) {
+                    return status("upload_some_files_failed");
+                }
+                file = add(id, name, data);
+            }
+            else {
+                file = mNodes.get(Long.valueOf(id));
+                file.setData(data);
+            }
+            return xml("<status>upload_ok</status><files><file file_name=\"" + escape(file.mName) + "\" id=\"" + file.mId + "\" folder_id=\"" + file.mParentId
+                + "\" sha1=\"" + file.mSha1 + "\"/></files>");
+        }
+    }
+}
@@ -0,0 +1,326 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.Sync;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.box.androidlib.LoopbackTestCase;
+import com.box.androidlib.DAO.BoxFile;
+import com.box.androidlib.DAO.BoxFolder;
+import com.box.androidlib.DAO.BoxTree;
+import com.box.androidlib.ResponseListeners.GetUpdatesListener;
+import com.box.androidlib.Transport.BoxHttpRequest;
+import com.box.androidlib.Transport.BoxHttpResponse;
+import com.box.androidlib.Transport.LoopbackHttpTransport;
+
+/**
+ * Tests for {@link UpdatesSync}: updates are applied to the tree, folders are fetched only where an update does not say what changed, updates are applied
+ * once, and the state survives save and load.
+ * 
+ * @author developers@box.net
+ */
+public class UpdatesSyncTest extends LoopbackTestCase {
+
+    /** Time stamp the tree is up to date with. */
+    private static final long START = System.currentTimeMillis() / 1000 - 1000;
+
+    /** The fake Box API. */
+    private FakeApi mApi;
+    /** The tree kept up to date, folder 1 holding folders 2 and 3 and files 10 and 11, and folder 2 holding file 20. */
+    private BoxTree mTree;
+    /** The sync. */
+    private UpdatesSync mSync;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mApi = new FakeApi();
+        serve(mApi);
+        mTree = new BoxTree(newFolder(1, "root"));
+        mTree.addFolder(1, newFolder(2, "a"));
+        mTree.addFolder(1, newFolder(3, "b"));
+        mTree.addFile(1, newFile(10, "file10"));
+        mTree.addFile(1, newFile(11, "file11"));
+        mTree.addFile(2, newFile(20, "file20"));
+        mSync = new UpdatesSync(API_KEY, AUTH_TOKEN, mTree, START);
+    }
+
+    /**
+     * Updates that list their files and folders are applied without fetching anything, and read-only updates change nothing.
+     * 
+     * @throws IOException
+     *             if a request fails
+     */
+    public void testAppliesUpdates() throws IOException {
+        mApi.addUpdate(START + 1, "uploaded", 2, "<files>" + fileXml(21, "new", START + 1) + "</files>");
+        mApi.addUpdate(START + 2, "moved", 3, "<files>" + fileXml(10, "file10", 0) + "</files>");
+        mApi.addUpdate(START + 3, "updated", 1, "<files>" + fileXml(11, "renamed", 0) + "</files>");
+        mApi.addUpdate(START + 4, "deleted", 2, "<files>" + fileXml(20, "file20", 0) + "</files>");
+        mApi.addUpdate(START + 5, "created", 3, "<folders>" + folderXml(4, "c") + "</folders>");
+        mApi.addUpdate(START + 6, "downloaded", 1, "<files>" + fileXml(11, "other", 0) + "</files>");
+        assertEquals(GetUpdatesListener.STATUS_S_GET_UPDATES, mSync.poll());
+        assertEquals(6, mSync.getLastUpdateCount());
+        assertEquals(0, mSync.getLastFetchCount());
+        assertEquals(0, mApi.mListings.size());
+        assertEquals(START + 6, mSync.getHighWaterMark());
+        assertSame(mTree.getFile(21), mTree.getFileByPath("/a/new"));
+        assertEquals(3, mTree.getFile(10).getFolderId());
+        assertEquals("renamed", mTree.getFile(11).getFileName());
+        assertNull(mTree.getFile(20));
+        assertSame(mTree.getFolder(4), mTree.getFolderByPath("/b/c"));
+    }
+
+    /**
+     * An update that does not say what changed makes the folder be fetched one level deep and compared with the tree.
+     * 
+     * @throws IOException
+     *             if a request fails
+     */
+    public void testAmbiguousUpdateFetchesFolder() throws IOException {
+        mApi.addUpdate(START + 1, "deleted", 1, "");
+        mApi.mFolders.put(Long.valueOf(1), "<folder id=\"1\" name=\"root\"><files>" + fileXml(10, "file10", 0) + "</files><folders>" + folderXml(3, "b")
+            + "</folders></folder>");
+        mSync.poll();
+        assertEquals(1, mSync.getLastFetchCount());
+        assertEquals("[1 onelevel]", mApi.mListings.toString());
+        assertNotNull(mTree.getFile(10));
+        assertNull(mTree.getFile(11));
+        assertNull(mTree.getFolder(2));
+        assertNull(mTree.getFile(20));
+        assertNotNull(mTree.getFolder(3));
+    }
+
+    /**
+     * A folder moved in from outside the tree arrives without its contents, which are fetched.
+     * 
+     * @throws IOException
+     *             if a request fails
+     */
+    public void testFolderMovedInIsFetched() throws IOException {
+        mApi.addUpdate(START + 1, "moved", 3, "<folders>" + folderXml(7, "moved in") + "</folders>");
+        mApi.mFolders.put(Long.valueOf(7), "<folder id=\"7\" name=\"moved in\"><files>" + fileXml(70, "file70", 0) + "</files><folders></folders></folder>");
+        mSync.poll();
+        assertEquals(1, mSync.getLastFetchCount());
+        assertSame(mTree.getFile(70), mTree.getFileByPath("/b/moved in/file70"));
+    }
+
+    /**
+     * Each update is applied once, including updates made in the same second as the last one applied.
+     * 
+     * @throws IOException
+     *             if a request fails
+     */
+    public void testUpdatesAppliedOnce() throws IOException {
+        mApi.addUpdate(START + 1, "updated", 1, "<files>" + fileXml(10, "first", 0) + "</files>");
+        mSync.poll();
+        assertEquals(1, mSync.getLastUpdateCount());
+        mSync.poll();
+        assertEquals(0, mSync.getLastUpdateCount());
+
+        mApi.addUpdate(START + 1, "updated", 1, "<files>" + fileXml(11, "same second", 0) + "</files>");
+        mSync.poll();
+        assertEquals(1, mSync.getLastUpdateCount());
+        assertEquals("same second", mTree.getFile(11).getFileName());
+        assertEquals("first", mTree.getFile(10).getFileName());
+        assertEquals(String.valueOf(START), mApi.mBeginTimestamps.get(0));
+        assertEquals(String.valueOf(START + 1), mApi.mBeginTimestamps.get(2));
+    }
+
+    /**
+     * A loaded sync has the tree, the high-water mark and the folders still to fetch of the saved one.
+     * 
+     * @throws IOException
+     *             if a request fails or the file cannot be used
+     */
+    public void testSaveAndLoad() throws IOException {
+        mApi.addUpdate(START + 1, "uploaded", 2, "<files>" + fileXml(21, "new", START + 1) + "</files>");
+        mApi.addUpdate(START + 2, "trashed", 3, "");
+        mApi.mFailListings = true;
+        try {
+            mSync.poll();
+            fail("the listing should fail");
+        }
+        catch (IOException e) {
+            // The folder is still to be fetched.
+        }
+        final File file = File.createTempFile("updatessync", ".state");
+        try {
+            mSync.save(file);
+            final UpdatesSync loaded = UpdatesSync.load(API_KEY, AUTH_TOKEN, file);
+            assertEquals(START + 2, loaded.getHighWaterMark());
+            assertEquals(3, loaded.getTree().getFolderCount());
+            assertEquals("/a/new", path(loaded.getTree(), 21));
+
+            mApi.mFailListings = false;
+            mApi.mFolders.put(Long.valueOf(3), "<folder id=\"3\" name=\"b\"><files></files><folders></folders></folder>");
+            loaded.poll();
+            assertEquals(0, loaded.getLastUpdateCount());
+            assertEquals(1, loaded.getLastFetchCount());
+        }
+        finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Get the path of a file.
+     * 
+     * @param tree
+     *            The tree
+     * @param fileId
+     *            The file id
+     * @return The path from the root
+     */
+    private static String path(final BoxTree tree, final long fileId) {
+        final BoxFile file = tree.getFile(fileId);
+        final StringBuilder path = new StringBuilder("/" + file.getFileName());
+        for (BoxFolder folder = file.getFolder(); folder != tree.getRoot(); folder = folder.getParentFolder()) {
+            path.insert(0, "/" + folder.getFolderName());
+        }
+        return path.toString();
+    }
+
+    /**
+     * Build a folder.
+     * 
+     * @param id
+     *            Its id
+     * @param name
+     *            Its name
+     * @return The folder
+     */
+    private static BoxFolder newFolder(final long id, final String name) {
+        final BoxFolder folder = new BoxFolder();
+        folder.setId(id);
+        folder.setFolderName(name);
+        return folder;
+    }
+
+    /**
+     * Build a file.
+     * 
+     * @param id
+     *            Its id
+     * @param name
+     *            Its name
+     * @return The file
+     */
+    private static BoxFile newFile(final long id, final String name) {
+        final BoxFile file = new BoxFile();
+        file.setId(id);
+        file.setFileName(name);
+        return file;
+    }
+
+    /**
+     * Build the XML of a file.
+     * 
+     * @param id
+     *            Its id
+     * @param name
+     *            Its name
+     * @param updated
+     *            When it was last updated
+     * @return The file element
+     */
+    private static String fileXml(final long id, final String name, final long updated) {
+        return "<file id=\"" + id + "\" file_name=\"" + name + "\" updated=\"" + updated + "\"/>";
+    }
+
+    /**
+     * Build the XML of a folder.
+     * 
+     * @param id
+     *            Its id
+     * @param name
+     *            Its name
+     * @return The folder element
+     */
+    private static String folderXml(final long id, final String name) {
+        return "<folder id=\"" + id + "\" name=\"" + name + "\"/>";
+    }
+
+    /**
+     * Fake Box API answering get_updates from a list of updates, and get_account_tree from listings set by the tests.
+     */
+    private static final class FakeApi implements LoopbackHttpTransport.Responder {
+
+        /** The updates, oldest first. */
+        private final List<String> mUpdates = Collections.synchronizedList(new ArrayList<String>());
+        /** Time stamps of the updates. */
+        private final List<Long> mUpdateTimes = Collections.synchronizedList(new ArrayList<Long>());
+        /** XML of the folders, one level deep, by id. */
+        private final Map<Long, String> mFolders = Collections.synchronizedMap(new HashMap<Long, String>());
+        /** Folders fetched and the parameter they were fetched with. */
+        private final List<String> mListings = Collections.synchronizedList(new ArrayList<String>());
+        /** Begin time stamps asked for. */
+        private final List<String> mBeginTimestamps = Collections.synchronizedList(new ArrayList<String>());
+        /** Whether get_account_tree fails. */
+        private volatile boolean mFailListings;
+
+        /**
+         * Add an update.
+         * 
+         * @param updated
+         *            When it happened
+         * @param type
+         *            The update type
+         * @param folderId
+         *            The folder it happened in
+         * @param entries
+         *            The files and folders elements
+         */
+        private void addUpdate(final long updated, final String type, final long folderId, final String entries) {
+            mUpdateTimes.add(Long.valueOf(updated));
+            mUpdates.add("<update><update_id>" + (mUpdates.size() + 1) + "</update_id><updated>" + updated + "</updated><update_type>" + type
+                + "</update_type><folder_id>" + folderId + "</folder_id>" + entries + "</update>");
+        }
+
+        @Override
+        public BoxHttpResponse respond(final BoxHttpRequest request, final byte[] requestBody) throws IOException {
+            final String action = getParam(request, "action");
+            if ("get_updates".equals(action)) {
+                mBeginTimestamps.add(getParam(request, "begin_timestamp"));
+                final long begin = Long.parseLong(getParam(request, "begin_timestamp"));
+                final long end = Long.parseLong(getParam(request, "end_timestamp"));
+                final StringBuilder body = new StringBuilder("<status>s_get_updates</status><updates>");
+                // Newest first, as the server sends them.
+                for (int i = mUpdates.size() - 1; i >= 0; i--) {
+                    final long updated = mUpdateTimes.get(i).longValue();
+                    if (updated >= begin && updated <= end) {
+                        body.append(mUpdates.get(i));
+                    }
+                }
+                return xml(body.append("</updates>").toString());
+            }
+            if ("get_account_tree".equals(action)) {
+                if (mFailListings) {
+                    throw new IOException("connection reset");
+                }
+                final String folderId = getParam(request, "folder_id");
+                mListings.add(folderId + " " + getParam(request, "params[0]"));
+                final String folder = mFolders.get(Long.valueOf(folderId));
+                if (folder == null) {
+                    return status("e_folder_id");
+                }
+                return xml("<status>listing_ok</status><tree>" + folder + "</tree>");
+            }
+            return status("unknown");
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.Transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.apache.http.HttpHost;
+
+import com.box.androidlib.Utils.BoxConfig;
+
+/**
+ * Tests for the connection pool of {@link BoxHttpClient}: consecutive requests reuse one connection, the API, upload and download hosts each keep to their
+ * own connection limit, and idle connections are closed without further requests.
+ * 
+ * @author developers@box.net
+ */
+public class BoxHttpClientTest extends TestCase {
+
+    /** Configuration saved in setUp. */
+    private String mApiAuthority;
+    /** Configuration saved in setUp. */
+    private String mUploadAuthority;
+    /** Configuration saved in setUp. */
+    private String mDownloadAuthority;
+    /** Configuration saved in setUp. */
+    private int mMaxApi;
+    /** Configuration saved in setUp. */
+    private int mMaxUpload;
+    /** Configuration saved in setUp. */
+    private int mMaxDownload;
+    /** Configuration saved in setUp. */
+    private int mMaxPerHost;
+    /** Configuration saved in setUp. */
+    private long mIdleTimeout;
+    /** Servers started by the test. */
+    private final List<LocalHttpServer> mServers = new ArrayList<LocalHttpServer>();
+    /** Released to let requests to /block complete. */
+    private final CountDownLatch mUnblock = new CountDownLatch(1);
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        final BoxConfig config = BoxConfig.getInstance();
+        mApiAuthority = config.getApiUrlAuthority();
+        mUploadAuthority = config.getUploadUrlAuthority();
+        mDownloadAuthority = config.getDownloadUrlAuthority();
+        mMaxApi = config.getMaxApiConnections();
+        mMaxUpload = config.getMaxUploadConnections();
+        mMaxDownload = config.getMaxDownloadConnections();
+        mMaxPerHost = config.getMaxConnectionsPerHost();
+        mIdleTimeout = config.getIdleConnectionTimeout();
+        BoxHttpClient.shutdown();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mUnblock.countDown();
+        for (int i = 0; i < mServers.size(); i++) {
+            mServers.get(i).close();
+        }
+        BoxHttpClient.shutdown();
+        final BoxConfig config = BoxConfig.getInstance();
+        config.setApiUrlAuthority(mApiAuthority);
+        config.setUploadUrlAuthority(mUploadAuthority);
+        config.setDownloadUrlAuthority(mDownloadAuthority);
+        config.setMaxApiConnections(mMaxApi);
+        config.setMaxUploadConnections(mMaxUpload);
+        config.setMaxDownloadConnections(mMaxDownload);
+        config.setMaxConnectionsPerHost(mMaxPerHost);
+        config.setIdleConnectionTimeout(mIdleTimeout);
+        super.tearDown();
+    }
+
+    /**
+     * Consecutive requests to a host go over a single kept-alive connection.
+     * 
+     * @throws IOException
+     *             if a request fails
+     */
+    public void testConsecutiveRequestsReuseConnection() throws IOException {
+        final LocalHttpServer server = startServer();
+        for (int i = 0; i < 5; i++) {
+            assertEquals("ok", get(server, "/ok"));
+        }
+        assertEquals(5, BoxHttpClient.getInstance().getRequestCount());
+        assertEquals(1, BoxHttpClient.getInstance().getConnectionCount());
+        assertEquals(1, server.getConnectionCount());
+    }
+
+    /**
+     * Each configured host gets its own limit, summed where hosts coincide, and other hosts get the per-host default.
+     */
+    public void testLimitsAreKeyedOnHost() {
+        final BoxConfig config = BoxConfig.getInstance();
+        config.setApiUrlAuthority("www.box.net");
+        config.setDownloadUrlAuthority("www.box.net");
+        config.setUploadUrlAuthority("upload.box.net:8443");
+        config.setMaxApiConnections(3);
+        config.setMaxDownloadConnections(5);
+        config.setMaxUploadConnections(2);
+        config.setMaxConnectionsPerHost(7);
+        assertEquals(8, BoxHttpClient.getMaxConnections(new HttpHost("www.box.net", 443, "https")));
+        assertEquals(8, BoxHttpClient.getMaxConnections(new HttpHost("WWW.BOX.NET", 80, "http")));
+        assertEquals(2, BoxHttpClient.getMaxConnections(new HttpHost("upload.box.net", 8443, "https")));
+        assertEquals(7, BoxHttpClient.getMaxConnections(new HttpHost("upload.box.net", 443, "https")));
+        assertEquals(7, BoxHttpClient.getMaxConnections(new HttpHost("example.com", 443, "https")));
+    }
+
+    /**
+     * Concurrent requests to the API and download hosts open no more connections to either host than its limit, and the requests waiting for a connection
+     * complete once one is free.
+     * 
+     * @throws Exception
+     *             if the test fails
+     */
+    public void testConcurrentRequestsKeepToHostLimits() throws Exception {
+        final LocalHttpServer api = startServer();
+        final LocalHttpServer download = startServer();
+        final BoxConfig config = BoxConfig.getInstance();
+        config.setApiUrlAuthority(api.getAuthority());
+        config.setDownloadUrlAuthority(download.getAuthority());
+        config.setUploadUrlAuthority("upload.invalid");
+        config.setMaxApiConnections(2);
+        config.setMaxDownloadConnections(3);
+
+        final int requestsPerHost = 6;
+        final AtomicInteger completed = new AtomicInteger();
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < requestsPerHost * 2; i++) {
+            final LocalHttpServer server = i % 2 == 0 ? api : download;
+            final Thread thread = new Thread() {
+
+                @Override
+                public void run() {
+                    try {
+                        if ("ok".equals(get(server, "/block"))) {
+                            completed.incrementAndGet();
+                        }
+                    }
+                    catch (IOException e) {
+                        // Counted as not completed.
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        waitForRequests(api, 2);
+        waitForRequests(download, 3);
+        Thread.sleep(200);
+        assertEquals(2, api.getRequests().size());
+        assertEquals(3, download.getRequests().size());
+
+        mUnblock.countDown();
+        for (int i = 0; i < threads.size(); i++) {
+            threads.get(i).join(10000);
+        }
+        assertEquals(requestsPerHost * 2, completed.get());
+        assertEquals(2, api.getConnectionCount());
+        assertEquals(3, download.getConnectionCount());
+    }
+
+    /**
+     * An idle connection is closed in the background after the idle timeout, without another request, and the next request opens a new one.
+     * 
+     * @throws Exception
+     *             if the test fails
+     */
+    public void testIdleConnectionsAreEvictedInBackground() throws Exception {
+        BoxConfig.getInstance().setIdleConnectionTimeout(200);
+        final LocalHttpServer server = startServer();
+        final BoxHttpClient client = BoxHttpClient.getInstance();
+        for (int round = 1; round <= 2; round++) {
+            assertEquals("ok", get(server, "/ok"));
+            assertEquals(1, client.getConnectionsInPool());
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (client.getConnectionsInPool() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertEquals(0, client.getConnectionsInPool());
+            assertEquals(round, client.getConnectionCount());
+        }
+    }
+
+    /**
+     * Start a server answering "ok", after mUnblock is released for /block.
+     * 
+     * @return The server
+     * @throws IOException
+     *             if no port is free
+     */
+    private LocalHttpServer startServer() throws IOException {
+        final LocalHttpServer server = new LocalHttpServer(new LocalHttpServer.Handler() {
+
+            @Override
+            public void respond(final LocalHttpServer.Request request, final OutputStream out) throws IOException {
+                if (request.getPath().startsWith("/block")) {
+                    try {
+                        mUnblock.await(10, TimeUnit.SECONDS);
+                    }
+                    catch (InterruptedException e) {
+                        throw new IOException("interrupted");
+                    }
+                }
+                LocalHttpServer.writeResponse(out, 200, "ok".getBytes("UTF-8"));
+            }
+        });
+        mServers.add(server);
+        return server;
+    }
+
+    /**
+     * Send a GET request through the shared pool and read the whole response.
+     * 
+     * @param server
+     *            The server
+     * @param path
+     *            Path on the server
+     * @return The response body
+     * @throws IOException
+     *             if the request fails
+     */
+    private static String get(final LocalHttpServer server, final String path) throws IOException {
+        final BoxHttpResponse response = new DefaultHttpTransport().execute(new BoxHttpRequest(BoxHttpRequest.METHOD_GET, server.getUrl(path)));
+        try {
+            final InputStream in = response.getContent();
+            final StringBuilder body = new StringBuilder();
+            int c;
+            while ((c = in.read()) >= 0) {
+                body.append((char) c);
+            }
+            return body.toString();
+        }
+        finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Wait until a server has received a number of requests.
+     * 
+     * @param server
+     *            The server
+     * @param count
+     *            Number of requests
+     * @throws InterruptedException
+     *             if the test is interrupted
+     */
+    private static void waitForRequests(final LocalHttpServer server, final int count) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (server.getRequests().size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.Transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link DefaultHttpTransport} over real sockets: request bodies are written, read responses leave the connection for the next request, and
+ * closing a large body early discards the connection instead of downloading the rest.
+ * 
+ * @author developers@box.net
+ */
+public class DefaultHttpTransportTest extends TestCase {
+
+    /** Length of the body of /large, far more than the socket buffers hold. */
+    private static final long LARGE_LENGTH = 256L * 1024 * 1024;
+
+    /** The server. */
+    private LocalHttpServer mServer;
+    /** The transport. */
+    private DefaultHttpTransport mTransport;
+    /** Bytes of /large written before the client went away. */
+    private final AtomicLong mLargeWritten = new AtomicLong();
+    /** Released when /large stops being written. */
+    private final CountDownLatch mLargeDone = new CountDownLatch(1);
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mTransport = new DefaultHttpTransport();
+        mServer = new LocalHttpServer(new LocalHttpServer.Handler() {
+
+            @Override
+            public void respond(final LocalHttpServer.Request request, final OutputStream out) throws IOException {
+                if (request.getPath().startsWith("/large")) {
+                    writeLarge(out);
+                }
+                else if (request.getPath().startsWith("/echo")) {
+                    LocalHttpServer.writeResponse(out, 200, request.getBody());
+                }
+                else {
+                    final byte[] body = new byte[Integer.parseInt(request.getPath().substring(request.getPath().indexOf('=') + 1))];
+                    Arrays.fill(body, (byte) 'x');
+                    LocalHttpServer.writeResponse(out, 200, body);
+                }
+            }
+        });
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.close();
+        super.tearDown();
+    }
+
+    /**
+     * Bodies of known and of unknown length are sent as they are written, the latter in chunks.
+     * 
+     * @throws IOException
+     *             if a request fails
+     */
+    public void testPostBodies() throws IOException {
+        final byte[] small = "hello".getBytes("UTF-8");
+        final byte[] large = new byte[100000];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = (byte) i;
+        }
+        assertTrue(Arrays.equals(small, post(small, small.length)));
+        assertTrue(Arrays.equals(large, post(large, -1)));
+        assertFalse(mServer.getRequests().get(0).isChunked());
+        assertTrue(mServer.getRequests().get(1).isChunked());
+    }
+
+    /**
+     * Responses read to the end, or with only a little left, leave their connection to the next request.
+     * 
+     * @throws IOException
+     *             if a request fails
+     */
+    public void testReadResponsesKeepConnection() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            final BoxHttpResponse response = get("/small?n=100");
+            assertEquals(100, readAll(response.getContent(), Long.MAX_VALUE));
+            response.close();
+        }
+        final BoxHttpResponse response = get("/small?n=5000");
+        assertEquals(10, readAll(response.getContent(), 10));
+        response.close();
+        final BoxHttpResponse unread = get("/small?n=100");
+        unread.close();
+        get("/small?n=1").close();
+        assertEquals(1, mServer.getConnectionCount());
+    }
+
+    /**
+     * Closing a response with most of a large body unread discards the connection at once, and the next request gets a new one.
+     * 
+     * @throws IOException
+     *             if a request fails
+     * @throws InterruptedException
+     *             if the test is interrupted
+     */
+    public void testEarlyCloseDoesNotReadLargeBody() throws IOException, InterruptedException {
+        final BoxHttpResponse response = get("/large");
+        assertEquals(1000, readAll(response.getContent(), 1000));
+        final long start = System.currentTimeMillis();
+        response.close();
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        assertTrue(mLargeDone.await(10, TimeUnit.SECONDS));
+        assertTrue("server wrote " + mLargeWritten.get() + " bytes", mLargeWritten.get() < LARGE_LENGTH / 4);
+
+        final BoxHttpResponse next = get("/small?n=10");
+        assertEquals(10, readAll(next.getContent(), Long.MAX_VALUE));
+        next.close();
+        assertEquals(2, mServer.getConnectionCount());
+    }
+
+    /**
+     * Send a GET request.
+     * 
+     * @param path
+     *            Path on the server
+     * @return The response
+     * @throws IOException
+     *             if the request fails
+     */
+    private BoxHttpResponse get(final String path) throws IOException {
+        return mTransport.execute(new BoxHttpRequest(BoxHttpRequest.METHOD_GET, mServer.getUrl(path)));
+    }
+
+    /**
+     * Post a body to /echo.
+     * 
+     * @param bytes
+     *            The body
+     * @param contentLength
+     *            Its length, or -1 to send it without a length
+     * @return The body the server received
+     * @throws IOException
+     *             if the request fails
+     */
+    private byte[] post(final byte[] bytes, final long contentLength) throws IOException {
+        final BoxHttpRequest request = new BoxHttpRequest(BoxHttpRequest.METHOD_POST, mServer.getUrl("/echo"));
+        request.setBody(new BoxHttpRequest.Body() {
+
+            @Override
+            public String getContentType() {
+                return "application/octet-stream";
+            }
+
+            @Override
+            public long getContentLength() {
+                return contentLength;
+            }
+
+            @Override
+            public void writeTo(final OutputStream out) throws IOException {
+                out.write(bytes);
+            }
+        });
+        final BoxHttpResponse response = mTransport.execute(request);
+        try {
+            final InputStream in = response.getContent();
+            final byte[] echo = new byte[bytes.length];
+            int read = 0;
+            int n;
+            while (read < echo.length && (n = in.read(echo, read, echo.length - read)) > 0) {
+                read += n;
+            }
+            assertEquals(-1, in.read());
+            return echo;
+        }
+        finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Write the response of /large until the client goes away.
+     * 
+     * @param out
+     *            Stream of the connection
+     * @throws IOException
+     *             when the client goes away
+     */
+    private void writeLarge(final OutputStream out) throws IOException {
+        try {
+            out.write(("HTTP/1.1 200 OK\r\nContent-Length: " + LARGE_LENGTH + "\r\n\r\n").getBytes("ISO-8859-1"));
+            final byte[] chunk = new byte[65536];
+            while (mLargeWritten.get() < LARGE_LENGTH) {
+                out.write(chunk);
+                mLargeWritten.addAndGet(chunk.length);
+            }
+            out.flush();
+        }
+        finally {
+            mLargeDone.countDown();
+        }
+    }
+
+    /**
+     * Read from a stream.
+     * 
+     * @param in
+     *            The stream
+     * @param limit
+     *            Most bytes to read
+     * @return Number of bytes read
+     * @throws IOException
+     *             if the stream cannot be read
+     */
+    private static long readAll(final InputStream in, final long limit) throws IOException {
+        final byte[] buffer = new byte[4096];
+        long total = 0;
+        int n;
+        while (total < limit && (n = in.read(buffer, 0, (int) Math.min(buffer.length, limit - total))) > 0) {
+            total += n;
+        }
+        return total;
+    }
+}
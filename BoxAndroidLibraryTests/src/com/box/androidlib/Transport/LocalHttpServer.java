@@ -0,0 +1,362 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.Transport;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal HTTP/1.1 server on the loopback interface, for testing code that goes over real sockets. Connections are kept alive, request bodies of known
+ * length and chunked ones are read, and a {@link Handler} writes each response.
+ * 
+ * @author developers@box.net
+ */
+public class LocalHttpServer {
+
+    /**
+     * Writes the response to a request.
+     */
+    public interface Handler {
+
+        /**
+         * Write the whole response to a request, status line and headers included.
+         * 
+         * @param request
+         *            The request
+         * @param out
+         *            Stream of the connection
+         * @throws IOException
+         *             if the response cannot be written
+         */
+        void respond(Request request, OutputStream out) throws IOException;
+    }
+
+    /**
+     * A request received.
+     */
+    public static final class Request {
+
+        /** The method. */
+        private final String mMethod;
+        /** The path and query. */
+        private final String mPath;
+        /** The body, empty if there is none. */
+        private final byte[] mBody;
+        /** Whether the body was chunked. */
+        private final boolean mChunked;
+
+        /**
+         * Constructor.
+         * 
+         * @param method
+         *            The method
+         * @param path
+         *            The path and query
+         * @param body
+         *            The body
+         * @param chunked
+         *            Whether the body was chunked
+         */
+        private Request(final String method, final String path, final byte[] body, final boolean chunked) {
+            mMethod = method;
+            mPath = path;
+            mBody = body;
+            mChunked = chunked;
+        }
+
+        /**
+         * Get the method.
+         * 
+         * @return The method
+         */
+        public String getMethod() {
+            return mMethod;
+        }
+
+        /**
+         * Get the path and query.
+         * 
+         * @return The path and query
+         */
+        public String getPath() {
+            return mPath;
+        }
+
+        /**
+         * Get the body.
+         * 
+         * @return The body, empty if there is none
+         */
+        public byte[] getBody() {
+            return mBody;
+        }
+
+        /**
+         * Find out whether the body was sent in chunks.
+         * 
+         * @return Whether the body was chunked
+         */
+        public boolean isChunked() {
+            return mChunked;
+        }
+    }
+
+    /** The server socket. */
+    private final ServerSocket mServerSocket;
+    /** The handler. */
+    private final Handler mHandler;
+    /** Sockets of the connections accepted. */
+    private final List<Socket> mSockets = Collections.synchronizedList(new ArrayList<Socket>());
+    /** Requests received. */
+    private final List<Request> mRequests = Collections.synchronizedList(new ArrayList<Request>());
+    /** Number of connections accepted. */
+    private final AtomicInteger mConnectionCount = new AtomicInteger();
+
+    /**
+     * Start a server on a free port of the loopback interface.
+     * 
+     * @param handler
+     *            Writes the responses
+     * @throws IOException
+     *             if no port is free
+     */
+    public LocalHttpServer(final Handler handler) throws IOException {
+        mHandler = handler;
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        final Thread acceptor = new Thread("LocalHttpServer") {
+
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        final Socket socket = mServerSocket.accept();
+                        mConnectionCount.incrementAndGet();
+                        mSockets.add(socket);
+                        new Thread("LocalHttpServer connection") {
+
+                            @Override
+                            public void run() {
+                                serve(socket);
+                            }
+                        }.start();
+                    }
+                }
+                catch (IOException e) {
+                    // Closed.
+                }
+            }
+        };
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Get the URL of a path on this server.
+     * 
+     * @param path
+     *            The path, starting with /
+     * @return The URL
+     */
+    public String getUrl(final String path) {
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + path;
+    }
+
+    /**
+     * Get the authority of this server, as set with {@link com.box.androidlib.Utils.BoxConfig#setApiUrlAuthority(String)}.
+     * 
+     * @return host and port
+     */
+    public String getAuthority() {
+        return "127.0.0.1:" + mServerSocket.getLocalPort();
+    }
+
+    /**
+     * Get the number of connections accepted.
+     * 
+     * @return number of connections
+     */
+    public int getConnectionCount() {
+        return mConnectionCount.get();
+    }
+
+    /**
+     * Get the requests received.
+     * 
+     * @return The requests, oldest first
+     */
+    public List<Request> getRequests() {
+        synchronized (mRequests) {
+            return new ArrayList<Request>(mRequests);
+        }
+    }
+
+    /**
+     * Stop the server and close its connections.
+     */
+    public void close() {
+        try {
+            mServerSocket.close();
+        }
+        catch (IOException e) {
+            // Closed anyway.
+        }
+        synchronized (mSockets) {
+            for (int i = 0; i < mSockets.size(); i++) {
+                try {
+                    mSockets.get(i).close();
+                }
+                catch (IOException e) {
+                    // Closed anyway.
+                }
+            }
+        }
+    }
+
+    /**
+     * Write a whole response with a body of known length.
+     * 
+     * @param out
+     *            Stream of the connection
+     * @param status
+     *            The status code
+     * @param body
+     *            The body
+     * @throws IOException
+     *             if the response cannot be written
+     */
+    public static void writeResponse(final OutputStream out, final int status, final byte[] body) throws IOException {
+        out.write(("HTTP/1.1 " + status + " Status\r\nContent-Length: " + body.length + "\r\n\r\n").getBytes("ISO-8859-1"));
+        out.write(body);
+        out.flush();
+    }
+
+    /**
+     * Answer the requests of a connection until it is closed.
+     * 
+     * @param socket
+     *            The connection
+     */
+    private void serve(final Socket socket) {
+        try {
+            final InputStream in = new BufferedInputStream(socket.getInputStream());
+            final OutputStream out = socket.getOutputStream();
+            String requestLine;
+            while ((requestLine = readLine(in)) != null) {
+                if (requestLine.length() == 0) {
+                    continue;
+                }
+                long contentLength = 0;
+                boolean chunked = false;
+                String header;
+                while ((header = readLine(in)) != null && header.length() > 0) {
+                    final String lower = header.toLowerCase(Locale.US);
+                    if (lower.startsWith("content-length:")) {
+                        contentLength = Long.parseLong(header.substring(15).trim());
+                    }
+                    else if (lower.startsWith("transfer-encoding:") && lower.indexOf("chunked") >= 0) {
+                        chunked = true;
+                    }
+                }
+                final ByteArrayOutputStream body = new ByteArrayOutputStream();
+                if (chunked) {
+                    long size;
+                    while ((size = Long.parseLong(readLine(in).trim(), 16)) > 0) {
+                        copy(in, body, size);
+                        readLine(in);
+                    }
+                    while ((header = readLine(in)) != null && header.length() > 0) {
+                        // Trailers.
+                    }
+                }
+                else {
+                    copy(in, body, contentLength);
+                }
+                final String[] parts = requestLine.split(" ");
+                final Request request = new Request(parts[0], parts[1], body.toByteArray(), chunked);
+                mRequests.add(request);
+                mHandler.respond(request, out);
+            }
+        }
+        catch (IOException e) {
+            // The client went away.
+        }
+        finally {
+            try {
+                socket.close();
+            }
+            catch (IOException e) {
+                // Closed anyway.
+            }
+        }
+    }
+
+    /**
+     * Copy bytes of a request.
+     * 
+     * @param in
+     *            Stream of the connection
+     * @param out
+     *            Where to copy to
+     * @param length
+     *            Number of bytes
+     * @throws IOException
+     *             if the connection ends first
+     */
+    private static void copy(final InputStream in, final OutputStream out, final long length) throws IOException {
+        final byte[] buffer = new byte[8192];
+        long left = length;
+        while (left > 0) {
+            final int n = in.read(buffer, 0, (int) Math.min(buffer.length, left));
+            if (n < 0) {
+                throw new IOException("Connection closed in a body");
+            }
+            out.write(buffer, 0, n);
+            left -= n;
+        }
+    }
+
+    /**
+     * Read a line ending with CRLF.
+     * 
+     * @param in
+     *            Stream of the connection
+     * @return The line without the line end, or null at the end of the stream
+     * @throws IOException
+     *             if the connection fails
+     */
+    private static String readLine(final InputStream in) throws IOException {
+        final StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) >= 0) {
+            if (c == '\n') {
+                final int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') {
+                    line.setLength(length - 1);
+                }
+                return line.toString();
+            }
+            line.append((char) c);
+        }
+        return line.length() > 0 ? line.toString() : null;
+    }
+}
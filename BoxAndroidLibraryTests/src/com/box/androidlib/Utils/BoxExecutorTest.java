@@ -0,0 +1,287 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.Utils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link BoxExecutor}.
+ * 
+ * @author developers@box.net
+ */
+public class BoxExecutorTest extends TestCase {
+
+    /** Limit of the interactive lane before the test. */
+    private int mMaxConcurrentRequests;
+    /** Limit of the transfer lane before the test. */
+    private int mMaxConcurrentTransfers;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mMaxConcurrentRequests = BoxConfig.getInstance().getMaxConcurrentRequests();
+        mMaxConcurrentTransfers = BoxConfig.getInstance().getMaxConcurrentTransfers();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        BoxConfig.getInstance().setMaxConcurrentRequests(mMaxConcurrentRequests);
+        BoxConfig.getInstance().setMaxConcurrentTransfers(mMaxConcurrentTransfers);
+        super.tearDown();
+    }
+
+    /**
+     * No more tasks run at the same time than the limit of the lane, and every task runs.
+     * 
+     * @throws InterruptedException
+     *             if the test is interrupted
+     */
+    public void testConcurrencyIsBounded() throws InterruptedException {
+        BoxConfig.getInstance().setMaxConcurrentRequests(3);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger mostRunning = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(12);
+        for (int i = 0; i < 12; i++) {
+            BoxExecutor.getInstance().submit(BoxExecutor.LANE_INTERACTIVE, new Runnable() {
+
+                @Override
+                public void run() {
+                    final int now = running.incrementAndGet();
+                    synchronized (mostRunning) {
+                        mostRunning.set(Math.max(mostRunning.get(), now));
+                    }
+                    try {
+                        Thread.sleep(20);
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue("at most 3 tasks at a time, saw " + mostRunning.get(), mostRunning.get() <= 3);
+        assertTrue(mostRunning.get() > 1);
+    }
+
+    /**
+     * Right after the limit of a lane is lowered, tasks submitted to it keep to the new limit, even while the threads of the old limit have not exited yet.
+     * 
+     * @throws InterruptedException
+     *             if the test is interrupted
+     */
+    public void testLoweredLimitIsKeptAtOnce() throws InterruptedException {
+        final BoxExecutor executor = BoxExecutor.getInstance();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger mostRunning = new AtomicInteger();
+        for (int round = 0; round < 50; round++) {
+            BoxConfig.getInstance().setMaxConcurrentTransfers(3);
+            final CountDownLatch allStarted = new CountDownLatch(3);
+            final CountDownLatch wideDone = new CountDownLatch(3);
+            for (int i = 0; i < 3; i++) {
+                executor.submit(BoxExecutor.LANE_TRANSFER, new Runnable() {
+
+                    @Override
+                    public void run() {
+                        allStarted.countDown();
+                        try {
+                            allStarted.await();
+                        }
+                        catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        wideDone.countDown();
+                    }
+                });
+            }
+            assertTrue(wideDone.await(5, TimeUnit.SECONDS));
+
+            BoxConfig.getInstance().setMaxConcurrentTransfers(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            final CountDownLatch firstStarted = new CountDownLatch(1);
+            final CountDownLatch narrowDone = new CountDownLatch(2);
+            for (int i = 0; i < 2; i++) {
+                executor.submit(BoxExecutor.LANE_TRANSFER, new Runnable() {
+
+                    @Override
+                    public void run() {
+                        final int now = running.incrementAndGet();
+                        synchronized (mostRunning) {
+                            mostRunning.set(Math.max(mostRunning.get(), now));
+                        }
+                        firstStarted.countDown();
+                        try {
+                            release.await();
+                        }
+                        catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        running.decrementAndGet();
+                        narrowDone.countDown();
+                    }
+                });
+            }
+            assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+            Thread.sleep(2);
+            assertEquals(1, executor.getActiveCount(BoxExecutor.LANE_TRANSFER));
+            assertEquals(1, executor.getQueueDepth(BoxExecutor.LANE_TRANSFER));
+            release.countDown();
+            assertTrue(narrowDone.await(5, TimeUnit.SECONDS));
+        }
+        assertEquals("tasks running at once after lowering the limit to 1", 1, mostRunning.get());
+    }
+
+    /**
+     * A full transfer lane does not hold up interactive tasks.
+     * 
+     * @throws InterruptedException
+     *             if the test is interrupted
+     */
+    public void testLanesAreIndependent() throws InterruptedException {
+        BoxConfig.getInstance().setMaxConcurrentTransfers(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch transfersDone = new CountDownLatch(2);
+        for (int i = 0; i < 2; i++) {
+            BoxExecutor.getInstance().submit(BoxExecutor.LANE_TRANSFER, new Runnable() {
+
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        release.await();
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    transfersDone.countDown();
+                }
+            });
+        }
+        final CountDownLatch interactive = new CountDownLatch(1);
+        BoxExecutor.getInstance().submit(BoxExecutor.LANE_INTERACTIVE, new Runnable() {
+
+            @Override
+            public void run() {
+                interactive.countDown();
+            }
+        });
+        try {
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            assertTrue(interactive.await(5, TimeUnit.SECONDS));
+            assertEquals(1, BoxExecutor.getInstance().getQueueDepth(BoxExecutor.LANE_TRANSFER));
+        }
+        finally {
+            release.countDown();
+        }
+        assertTrue(transfersDone.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * A task cancelled before it started does not run, and its cancel callback runs instead.
+     * 
+     * @throws InterruptedException
+     *             if the test is interrupted
+     */
+    public void testCancelBeforeStart() throws InterruptedException {
+        BoxConfig.getInstance().setMaxConcurrentTransfers(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch blockerStarted = new CountDownLatch(1);
+        final CountDownLatch blockerDone = new CountDownLatch(1);
+        BoxExecutor.getInstance().submit(BoxExecutor.LANE_TRANSFER, new Runnable() {
+
+            @Override
+            public void run() {
+                blockerStarted.countDown();
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                blockerDone.countDown();
+            }
+        });
+        assertTrue(blockerStarted.await(5, TimeUnit.SECONDS));
+        final AtomicBoolean ran = new AtomicBoolean();
+        final AtomicInteger cancelled = new AtomicInteger();
+        final Cancelable cancelable = BoxExecutor.getInstance().submit(BoxExecutor.LANE_TRANSFER, new Runnable() {
+
+            @Override
+            public void run() {
+                ran.set(true);
+            }
+        }, new Runnable() {
+
+            @Override
+            public void run() {
+                cancelled.incrementAndGet();
+            }
+        });
+        assertTrue(cancelable.cancel());
+        assertEquals(1, cancelled.get());
+        // A thread left over from a higher limit may have taken the task and be waiting for a permit, and leaves the queue when interrupted.
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (BoxExecutor.getInstance().getQueueDepth(BoxExecutor.LANE_TRANSFER) > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, BoxExecutor.getInstance().getQueueDepth(BoxExecutor.LANE_TRANSFER));
+        release.countDown();
+        assertTrue(blockerDone.await(5, TimeUnit.SECONDS));
+        assertFalse(cancelable.cancel());
+        Thread.sleep(50);
+        assertFalse(ran.get());
+        assertEquals(1, cancelled.get());
+    }
+
+    /**
+     * Cancelling a running task interrupts it, and does not run the cancel callback.
+     * 
+     * @throws InterruptedException
+     *             if the test is interrupted
+     */
+    public void testCancelRunningTask() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final AtomicInteger cancelled = new AtomicInteger();
+        final Cancelable cancelable = BoxExecutor.getInstance().submit(BoxExecutor.LANE_INTERACTIVE, new Runnable() {
+
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    Thread.sleep(10000);
+                }
+                catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+            }
+        }, new Runnable() {
+
+            @Override
+            public void run() {
+                cancelled.incrementAndGet();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(cancelable.cancel());
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertEquals(0, cancelled.get());
+    }
+}
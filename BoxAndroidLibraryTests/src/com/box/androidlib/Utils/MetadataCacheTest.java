@@ -0,0 +1,242 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.Utils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import android.test.AndroidTestCase;
+
+/**
+ * Tests for {@link MetadataCache}, with its disk tier in the cache directory of the test app.
+ * 
+ * @author developers@box.net
+ */
+public class MetadataCacheTest extends AndroidTestCase {
+
+    /**
+     * Request URL with an auth token, as BoxSynchronous caches them.
+     */
+    private static final String KEY = "https://www.box.net/api/1.0/rest?action=get_file_info&api_key=key&auth_token=SECRETTOKEN&file_id=";
+    /**
+     * The directory of the disk tier.
+     */
+    private File mDirectory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDirectory = new File(getContext().getCacheDir(), "MetadataCacheTest");
+        deleteDirectory();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteDirectory();
+        super.tearDown();
+    }
+
+    /**
+     * Responses are answered from memory, and from disk by a new cache.
+     */
+    public void testDiskTierSurvivesNewCache() {
+        final MetadataCache cache = new MetadataCache(1 << 20, mDirectory, 1 << 20);
+        cache.put(MetadataCache.ACTION_GET_FILE_INFO, KEY + 1, response(1), null, new long[] {1});
+        assertTrue(Arrays.equals(response(1), cache.get(KEY + 1)));
+        assertEquals(1, cache.getHitCount());
+
+        final MetadataCache restarted = new MetadataCache(1 << 20, mDirectory, 1 << 20);
+        assertTrue(Arrays.equals(response(1), restarted.get(KEY + 1)));
+        assertEquals(1, restarted.getDiskHitCount());
+        assertNull(restarted.get(KEY + 2));
+        assertEquals(1, restarted.getMissCount());
+    }
+
+    /**
+     * The files of the disk tier do not contain the request URL, and so not the auth token.
+     * 
+     * @throws IOException
+     *             if the files cannot be read
+     */
+    public void testDiskTierDoesNotStoreUrls() throws IOException {
+        final MetadataCache cache = new MetadataCache(1 << 20, mDirectory, 1 << 20);
+        cache.put(MetadataCache.ACTION_GET_FILE_INFO, KEY + 1, response(1), null, new long[] {1});
+        final File[] files = mDirectory.listFiles();
+        assertEquals(1, files.length);
+        final String contents = new String(readFile(files[0]), "ISO-8859-1");
+        assertEquals(-1, contents.indexOf("SECRETTOKEN"));
+        assertEquals(-1, contents.indexOf("action="));
+    }
+
+    /**
+     * Keys longer than 64 KB, which DataOutputStream.writeUTF cannot write, are stored on disk.
+     */
+    public void testLongKey() {
+        final char[] padding = new char[70000];
+        Arrays.fill(padding, 'x');
+        final String key = KEY + new String(padding);
+        final MetadataCache cache = new MetadataCache(1 << 20, mDirectory, 1 << 20);
+        cache.put(MetadataCache.ACTION_GET_FILE_INFO, key, response(1), null, new long[] {1});
+        final MetadataCache restarted = new MetadataCache(1 << 20, mDirectory, 1 << 20);
+        assertTrue(Arrays.equals(response(1), restarted.get(key)));
+    }
+
+    /**
+     * Files written by the earlier format, which held the request URL, are deleted when the directory is read.
+     * 
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public void testOldFilesAreDeleted() throws IOException {
+        mDirectory.mkdirs();
+        final File old = new File(mDirectory, "0123456789abcdef0123456789abcdef01234567.cache");
+        final DataOutputStream out = new DataOutputStream(new FileOutputStream(old));
+        out.writeInt(0x426f7843);
+        out.writeLong(Long.MAX_VALUE);
+        out.writeUTF(KEY + 1);
+        out.close();
+        final MetadataCache cache = new MetadataCache(1 << 20, mDirectory, 1 << 20);
+        assertEquals(0, cache.getDiskSize());
+        assertFalse(old.exists());
+    }
+
+    /**
+     * Invalidating an item drops the responses that contain it from both tiers, and deletes their files.
+     */
+    public void testInvalidate() {
+        final MetadataCache cache = new MetadataCache(1 << 20, mDirectory, 1 << 20);
+        cache.put(MetadataCache.ACTION_GET_FILE_INFO, KEY + 1, response(1), null, new long[] {1});
+        cache.put(MetadataCache.ACTION_GET_FILE_INFO, KEY + 2, response(2), null, new long[] {2});
+        cache.invalidateFile(1);
+        assertEquals(1, cache.getInvalidationCount());
+        assertNull(cache.get(KEY + 1));
+        assertTrue(Arrays.equals(response(2), cache.get(KEY + 2)));
+        assertEquals(1, mDirectory.listFiles().length);
+        assertNull(new MetadataCache(1 << 20, mDirectory, 1 << 20).get(KEY + 1));
+    }
+
+    /**
+     * Concurrent puts, gets and invalidations leave the disk tier consistent with the directory, with every response read whole.
+     * 
+     * @throws Exception
+     *             if a thread fails
+     */
+    public void testConcurrentUse() throws Exception {
+        final MetadataCache cache = new MetadataCache(16 * 1024, mDirectory, 64 * 1024);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final long seed = t;
+            threads[t] = new Thread() {
+
+                @Override
+                public void run() {
+                    final Random random = new Random(seed);
+                    try {
+                        for (int i = 0; i < 2000; i++) {
+                            final int id = random.nextInt(50);
+                            switch (random.nextInt(4)) {
+                                case 0:
+                                    cache.put(MetadataCache.ACTION_GET_FILE_INFO, KEY + id, response(id), null, new long[] {id});
+                                    break;
+                                case 1:
+                                    cache.invalidateFile(id);
+                                    break;
+                                default:
+                                    final byte[] response = cache.get(KEY + id);
+                                    if (response != null && !Arrays.equals(response(id), response)) {
+                                        throw new AssertionError("Wrong response for " + id);
+                                    }
+                            }
+                        }
+                    }
+                    catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; t++) {
+            threads[t].join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+
+        long size = 0;
+        final File[] files = mDirectory.listFiles();
+        for (int i = 0; i < files.length; i++) {
+            size += files[i].length();
+        }
+        assertEquals(size, cache.getDiskSize());
+        assertTrue(cache.getDiskSize() <= 64 * 1024);
+        final MetadataCache restarted = new MetadataCache(16 * 1024, mDirectory, 64 * 1024);
+        assertEquals(size, restarted.getDiskSize());
+        cache.clear();
+        assertEquals(0, mDirectory.listFiles().length);
+    }
+
+    /**
+     * Build the response for an id. Responses differ in content and length.
+     * 
+     * @param id
+     *            The id
+     * @return The response
+     */
+    private static byte[] response(final int id) {
+        final byte[] response = new byte[1000 + id * 37];
+        new Random(id).nextBytes(response);
+        return response;
+    }
+
+    /**
+     * Read a whole file.
+     * 
+     * @param file
+     *            The file
+     * @return Its contents
+     * @throws IOException
+     *             if it cannot be read
+     */
+    private static byte[] readFile(final File file) throws IOException {
+        final byte[] contents = new byte[(int) file.length()];
+        final DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(contents);
+        }
+        finally {
+            in.close();
+        }
+        return contents;
+    }
+
+    /**
+     * Delete the directory of the disk tier.
+     */
+    private void deleteDirectory() {
+        final File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                files[i].delete();
+            }
+        }
+        mDirectory.delete();
+    }
+}
@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.Utils;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link ParallelRunner}.
+ * 
+ * @author developers@box.net
+ */
+public class ParallelRunnerTest extends TestCase {
+
+    /** Limit of the interactive lane before the test. */
+    private int mMaxConcurrentRequests;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mMaxConcurrentRequests = BoxConfig.getInstance().getMaxConcurrentRequests();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        BoxConfig.getInstance().setMaxConcurrentRequests(mMaxConcurrentRequests);
+        super.tearDown();
+    }
+
+    /**
+     * Every task runs once, with no more tasks at a time than asked for.
+     * 
+     * @throws InterruptedException
+     *             if the test is interrupted
+     */
+    public void testEveryTaskRunsOnce() throws InterruptedException {
+        BoxConfig.getInstance().setMaxConcurrentRequests(8);
+        final AtomicIntegerArray runs = new AtomicIntegerArray(40);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger mostRunning = new AtomicInteger();
+        final ArrayList<Runnable> tasks = new ArrayList<Runnable>();
+        for (int i = 0; i < runs.length(); i++) {
+            final int index = i;
+            tasks.add(new Runnable() {
+
+                @Override
+                public void run() {
+                    final int now = running.incrementAndGet();
+                    synchronized (mostRunning) {
+                        mostRunning.set(Math.max(mostRunning.get(), now));
+                    }
+                    sleep(5);
+                    runs.incrementAndGet(index);
+                    running.decrementAndGet();
+                }
+            });
+        }
+        ParallelRunner.run(tasks, 4);
+        for (int i = 0; i < runs.length(); i++) {
+            assertEquals(1, runs.get(i));
+        }
+        assertTrue("at most 4 tasks at a time, saw " + mostRunning.get(), mostRunning.get() <= 4);
+        assertTrue(mostRunning.get() > 1);
+    }
+
+    /**
+     * A RuntimeException thrown by a task is thrown by the run once the other tasks have finished.
+     * 
+     * @throws InterruptedException
+     *             if the test is interrupted
+     */
+    public void testFailureIsThrownAfterOtherTasks() throws InterruptedException {
+        final AtomicInteger finished = new AtomicInteger();
+        final ArrayList<Runnable> tasks = new ArrayList<Runnable>();
+        for (int i = 0; i < 10; i++) {
+            final int index = i;
+            tasks.add(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (index == 2) {
+                        throw new IllegalStateException("task 2");
+                    }
+                    sleep(10);
+                    finished.incrementAndGet();
+                }
+            });
+        }
+        try {
+            ParallelRunner.run(tasks, 3);
+            fail("The failure of task 2 was not thrown");
+        }
+        catch (IllegalStateException e) {
+            assertEquals("task 2", e.getMessage());
+        }
+        assertEquals(9, finished.get());
+    }
+
+    /**
+     * A run started from a task of the same lane finishes even when the lane has a single thread, which is busy running that task.
+     * 
+     * @throws InterruptedException
+     *             if the test is interrupted
+     */
+    public void testNestedRunOnFullLane() throws InterruptedException {
+        BoxConfig.getInstance().setMaxConcurrentRequests(1);
+        final AtomicInteger inner = new AtomicInteger();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CountDownLatch done = new CountDownLatch(1);
+        BoxExecutor.getInstance().submit(BoxExecutor.LANE_INTERACTIVE, new Runnable() {
+
+            @Override
+            public void run() {
+                final ArrayList<Runnable> tasks = new ArrayList<Runnable>();
+                for (int i = 0; i < 5; i++) {
+                    tasks.add(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            inner.incrementAndGet();
+                        }
+                    });
+                }
+                try {
+                    ParallelRunner.run(tasks, 4);
+                }
+                catch (Throwable e) {
+                    failure.set(e);
+                }
+                done.countDown();
+            }
+        });
+        assertTrue("nested run did not finish", done.await(5, TimeUnit.SECONDS));
+        assertNull(failure.get());
+        assertEquals(5, inner.get());
+    }
+
+    /**
+     * Interrupting the calling thread stops the run: tasks not started yet do not start, and the run returns only once the running tasks have returned.
+     * 
+     * @throws InterruptedException
+     *             if the test is interrupted
+     */
+    public void testInterruptStopsRun() throws InterruptedException {
+        BoxConfig.getInstance().setMaxConcurrentRequests(8);
+        final AtomicInteger started = new AtomicInteger();
+        final AtomicInteger running = new AtomicInteger();
+        final CountDownLatch allBusy = new CountDownLatch(4);
+        final ArrayList<Runnable> tasks = new ArrayList<Runnable>();
+        for (int i = 0; i < 20; i++) {
+            tasks.add(new Runnable() {
+
+                @Override
+                public void run() {
+                    started.incrementAndGet();
+                    running.incrementAndGet();
+                    allBusy.countDown();
+                    try {
+                        Thread.sleep(10000);
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    finally {
+                        running.decrementAndGet();
+                    }
+                }
+            });
+        }
+        final AtomicReference<Throwable> thrown = new AtomicReference<Throwable>();
+        final AtomicInteger runningAtReturn = new AtomicInteger(-1);
+        final Thread caller = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    ParallelRunner.run(tasks, 4);
+                }
+                catch (Throwable e) {
+                    thrown.set(e);
+                }
+                runningAtReturn.set(running.get());
+            }
+        };
+        caller.start();
+        assertTrue(allBusy.await(5, TimeUnit.SECONDS));
+        caller.interrupt();
+        caller.join(5000);
+        assertFalse("run did not return", caller.isAlive());
+        assertTrue(thrown.get() instanceof InterruptedException);
+        assertEquals(0, runningAtReturn.get());
+        assertEquals(4, started.get());
+    }
+
+    /**
+     * Sleep, keeping the interrupt status.
+     * 
+     * @param millis
+     *            Time to sleep
+     */
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
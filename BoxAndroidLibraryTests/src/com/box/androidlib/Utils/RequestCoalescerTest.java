@@ -0,0 +1,333 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.Utils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.box.androidlib.Box;
+import com.box.androidlib.BoxSynchronous;
+import com.box.androidlib.LoopbackTestCase;
+import com.box.androidlib.Transport.BoxHttpRequest;
+import com.box.androidlib.Transport.BoxHttpResponse;
+import com.box.androidlib.Transport.LoopbackHttpTransport;
+
+/**
+ * Tests for {@link RequestCoalescer}, alone and through {@link BoxSynchronous}.
+ * 
+ * @author developers@box.net
+ */
+public class RequestCoalescerTest extends LoopbackTestCase {
+
+    /** The coalescer. */
+    private RequestCoalescer mCoalescer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCoalescer = new RequestCoalescer();
+    }
+
+    /**
+     * Callers of an identical request in flight share its one execution and its result.
+     * 
+     * @throws Exception
+     *             if a caller fails
+     */
+    public void testIdenticalRequestsShareResult() throws Exception {
+        final BlockingRequest request = new BlockingRequest();
+        final Caller[] callers = startCallers("a", request, 5);
+        request.release();
+        for (int i = 0; i < callers.length; i++) {
+            callers[i].join();
+            assertSame(request.mResult, callers[i].mResult);
+        }
+        assertEquals(1, request.mExecutions.get());
+        assertEquals(1, mCoalescer.getRequestCount());
+        assertEquals(4, mCoalescer.getCoalescedCount());
+        assertEquals(0, mCoalescer.getInFlightCount());
+    }
+
+    /**
+     * Requests with different keys are not shared.
+     * 
+     * @throws IOException
+     *             if a request fails
+     */
+    public void testDifferentKeysAreNotShared() throws IOException {
+        final AtomicInteger executions = new AtomicInteger();
+        final RequestCoalescer.Request<Integer> request = new RequestCoalescer.Request<Integer>() {
+
+            @Override
+            public Integer execute() {
+                return Integer.valueOf(executions.incrementAndGet());
+            }
+        };
+        assertEquals(1, mCoalescer.execute("a", request).intValue());
+        assertEquals(2, mCoalescer.execute("b", request).intValue());
+        assertEquals(3, mCoalescer.execute("a", request).intValue());
+    }
+
+    /**
+     * A failure of the request is thrown to every caller.
+     * 
+     * @throws Exception
+     *             if a caller fails unexpectedly
+     */
+    public void testFailureIsShared() throws Exception {
+        final BlockingRequest request = new BlockingRequest();
+        request.mFailure = new IOException("connection reset");
+        final Caller[] callers = startCallers("a", request, 3);
+        request.release();
+        for (int i = 0; i < callers.length; i++) {
+            callers[i].join();
+            assertSame(request.mFailure, callers[i].mFailure);
+        }
+        assertEquals(1, request.mExecutions.get());
+    }
+
+    /**
+     * Interrupting a waiting caller makes it throw InterruptedIOException, and does not affect the request or the other callers.
+     * 
+     * @throws Exception
+     *             if a caller fails unexpectedly
+     */
+    public void testInterruptedWaiterLeavesOthers() throws Exception {
+        final BlockingRequest request = new BlockingRequest();
+        final Caller[] callers = startCallers("a", request, 3);
+        callers[1].interrupt();
+        callers[1].join();
+        assertTrue(callers[1].mFailure instanceof InterruptedIOException);
+        request.release();
+        callers[0].join();
+        callers[2].join();
+        assertSame(request.mResult, callers[0].mResult);
+        assertSame(request.mResult, callers[2].mResult);
+        assertEquals(1, request.mExecutions.get());
+    }
+
+    /**
+     * If the caller that sent the request is interrupted and the request fails, the waiting callers send it again instead of seeing that failure.
+     * 
+     * @throws Exception
+     *             if a caller fails unexpectedly
+     */
+    public void testInterruptedSenderIsRetried() throws Exception {
+        final BlockingRequest request = new BlockingRequest();
+        final Caller[] callers = startCallers("a", request, 3);
+        callers[0].interrupt();
+        callers[0].join();
+        assertTrue(callers[0].mFailure instanceof InterruptedIOException);
+        // One of the waiting callers sends the request again and the other one waits for it.
+        waitFor(mCoalescer, 3);
+        request.release();
+        callers[1].join();
+        callers[2].join();
+        assertSame(request.mResult, callers[1].mResult);
+        assertSame(request.mResult, callers[2].mResult);
+        assertEquals(2, request.mExecutions.get());
+    }
+
+    /**
+     * Identical get_account_tree and get_file_info calls made at the same time through BoxSynchronous send one request each. The order of the params and
+     * whether the tree is zipped do not matter.
+     * 
+     * @throws Exception
+     *             if a call fails
+     */
+    public void testBoxSynchronousSharesRequests() throws Exception {
+        BoxConfig.getInstance().setRequestCoalescer(mCoalescer);
+        final CountDownLatch release = new CountDownLatch(1);
+        final LoopbackHttpTransport transport = serve(new LoopbackHttpTransport.Responder() {
+
+            @Override
+            public BoxHttpResponse respond(final BoxHttpRequest request, final byte[] requestBody) throws IOException {
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                if ("get_account_tree".equals(getParam(request, "action"))) {
+                    return xml("<status>listing_ok</status><tree><folder id=\"5\" name=\"docs\"><files><file id=\"7\" file_name=\"a.txt\"/></files>"
+                               + "</folder></tree>");
+                }
+                return xml("<status>s_get_file_info</status><info><file_id>7</file_id><file_name>a.txt</file_name></info>");
+            }
+        });
+        final String[][] params = { {Box.PARAM_ONELEVEL, Box.PARAM_NOFILES}, {Box.PARAM_NOFILES, Box.PARAM_ONELEVEL},
+                                   {Box.PARAM_NOZIP, Box.PARAM_NOFILES, Box.PARAM_ONELEVEL}};
+        final BoxSynchronous boxSynchronous = BoxSynchronous.getInstance(API_KEY);
+        final AtomicReferenceArray<Object> results = new AtomicReferenceArray<Object>(6);
+        final ArrayList<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < results.length(); i++) {
+            final int index = i;
+            final Thread thread = new Thread() {
+
+                @Override
+                public void run() {
+                    try {
+                        if (index % 2 == 0) {
+                            results.set(index, boxSynchronous.getAccountTree(AUTH_TOKEN, 5, params[index / 2]));
+                        }
+                        else {
+                            results.set(index, boxSynchronous.getFileInfo(AUTH_TOKEN, 7));
+                        }
+                    }
+                    catch (IOException e) {
+                        results.set(index, e);
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        waitFor(mCoalescer, 4);
+        release.countDown();
+        for (int i = 0; i < threads.size(); i++) {
+            threads.get(i).join();
+        }
+        assertEquals(2, transport.getRequestCount());
+        assertSame(results.get(0), results.get(2));
+        assertSame(results.get(0), results.get(4));
+        assertSame(results.get(1), results.get(3));
+        assertSame(results.get(1), results.get(5));
+    }
+
+    /**
+     * Start callers of a request, the first of which sends it, and wait until the others are waiting for it.
+     * 
+     * @param key
+     *            Key of the request
+     * @param request
+     *            The request
+     * @param count
+     *            Number of callers
+     * @return The callers
+     * @throws InterruptedException
+     *             if the test is interrupted
+     */
+    private Caller[] startCallers(final String key, final BlockingRequest request, final int count) throws InterruptedException {
+        final Caller[] callers = new Caller[count];
+        for (int i = 0; i < count; i++) {
+            callers[i] = new Caller(key, request);
+            callers[i].start();
+            if (i == 0) {
+                assertTrue(request.mStarted.await(5, TimeUnit.SECONDS));
+            }
+        }
+        waitFor(mCoalescer, count - 1);
+        return callers;
+    }
+
+    /**
+     * Wait until a number of callers share a request in flight.
+     * 
+     * @param coalescer
+     *            The coalescer
+     * @param coalesced
+     *            Number of callers
+     */
+    private static void waitFor(final RequestCoalescer coalescer, final int coalesced) {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (coalescer.getCoalescedCount() < coalesced) {
+            assertTrue("callers did not join the request", System.currentTimeMillis() < deadline);
+            sleep(1);
+        }
+        // The count is raised just before a caller waits.
+        sleep(50);
+    }
+
+    /**
+     * A request that waits until it is released.
+     */
+    private static final class BlockingRequest implements RequestCoalescer.Request<Object> {
+
+        /** Counts down when the request is first sent. */
+        private final CountDownLatch mStarted = new CountDownLatch(1);
+        /** Released by the test. */
+        private final CountDownLatch mRelease = new CountDownLatch(1);
+        /** Number of times the request was sent. */
+        private final AtomicInteger mExecutions = new AtomicInteger();
+        /** The result. */
+        private final Object mResult = new Object();
+        /** Thrown instead of returning the result, if set. */
+        private volatile IOException mFailure;
+
+        @Override
+        public Object execute() throws IOException {
+            mExecutions.incrementAndGet();
+            mStarted.countDown();
+            try {
+                mRelease.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            if (mFailure != null) {
+                throw mFailure;
+            }
+            return mResult;
+        }
+
+        /**
+         * Let the request finish.
+         */
+        private void release() {
+            mRelease.countDown();
+        }
+    }
+
+    /**
+     * A thread calling a request through the coalescer.
+     */
+    private final class Caller extends Thread {
+
+        /** Key of the request. */
+        private final String mKey;
+        /** The request. */
+        private final BlockingRequest mRequest;
+        /** The result. */
+        private volatile Object mResult;
+        /** The exception thrown, if any. */
+        private volatile IOException mFailure;
+
+        /**
+         * Create a caller.
+         * 
+         * @param key
+         *            Key of the request
+         * @param request
+         *            The request
+         */
+        private Caller(final String key, final BlockingRequest request) {
+            mKey = key;
+            mRequest = request;
+        }
+
+        @Override
+        public void run() {
+            try {
+                mResult = mCoalescer.execute(mKey, mRequest);
+            }
+            catch (IOException e) {
+                mFailure = e;
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.Utils;
+
+import junit.framework.TestCase;
+
+import com.box.androidlib.DAO.BoxFile;
+
+/**
+ * Tests for {@link UrlTemplate}.
+ * 
+ * @author developers@box.net
+ */
+public class UrlTemplateTest extends TestCase {
+
+    /**
+     * URLs that only differ by the id share a template, which rebuilds each URL.
+     */
+    public void testUrlsWithIdShareTemplate() {
+        final UrlTemplate a = UrlTemplate.of("https://www.box.net/api/thumbs/1234_small.png", 1234);
+        final UrlTemplate b = UrlTemplate.of("https://www.box.net/api/thumbs/5678_small.png", 5678);
+        assertSame(a, b);
+        assertEquals("https://www.box.net/api/thumbs/1234_small.png", a.expand(1234));
+        assertEquals("https://www.box.net/api/thumbs/{id}_small.png", a.toString());
+        assertSame(a, UrlTemplate.parse(a.toString()));
+    }
+
+    /**
+     * URLs without the id are shared as they are.
+     */
+    public void testUrlsWithoutIdAreShared() {
+        final UrlTemplate a = UrlTemplate.of("https://www.box.net/img/icons/pdf.png", 1234);
+        final UrlTemplate b = UrlTemplate.of("https://www.box.net/img/icons/pdf.png", 5678);
+        assertSame(a, b);
+        assertEquals("https://www.box.net/img/icons/pdf.png", a.expand(5678));
+        assertSame(a, UrlTemplate.parse("https://www.box.net/img/icons/pdf.png"));
+    }
+
+    /**
+     * A URL given before the id is known is not shared, and does not add a template of the wrong id to the pool.
+     */
+    public void testUrlBeforeIdIsNotShared() {
+        final String url = "https://www.box.net/api/1.0/thumbs/98765.png";
+        final int poolSize = UrlTemplate.getPoolSize();
+        final UrlTemplate early = UrlTemplate.of(url, 0);
+        assertEquals(poolSize, UrlTemplate.getPoolSize());
+        assertEquals(url, early.expand(0));
+
+        final UrlTemplate rebased = early.rebase(0, 98765);
+        assertEquals("https://www.box.net/api/1.0/thumbs/{id}.png", rebased.toString());
+        assertSame(rebased, UrlTemplate.of("https://www.box.net/api/1.0/thumbs/111.png", 111));
+    }
+
+    /**
+     * A file whose thumbnail is parsed before its id gets the right URL and shares its template.
+     */
+    public void testBoxFileThumbnailBeforeId() {
+        final BoxFile first = new BoxFile();
+        first.parseAttribute("thumbnail", "https://www.box.net/api/1.0/thumbs/40.png");
+        first.parseAttribute("id", "40");
+        final int poolSize = UrlTemplate.getPoolSize();
+        final BoxFile second = new BoxFile();
+        second.parseAttribute("thumbnail", "https://www.box.net/api/1.0/thumbs/50.png");
+        second.parseAttribute("id", "50");
+        assertEquals("https://www.box.net/api/1.0/thumbs/40.png", first.getThumbnail());
+        assertEquals("https://www.box.net/api/1.0/thumbs/50.png", second.getThumbnail());
+        assertEquals(poolSize, UrlTemplate.getPoolSize());
+    }
+
+    /**
+     * Tag ids are kept in the list returned by getTagIds.
+     */
+    public void testTagIds() {
+        final BoxFile file = new BoxFile();
+        file.addTagId(7);
+        file.getTagIds().add(8L);
+        assertEquals(2, file.getTagIds().size());
+        assertEquals(Long.valueOf(7), file.getTagIds().get(0));
+        assertEquals(Long.valueOf(8), file.getTagIds().get(1));
+    }
+}
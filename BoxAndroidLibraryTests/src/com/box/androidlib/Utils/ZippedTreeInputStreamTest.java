@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.Utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link Base64InputStream} and {@link ZippedTreeInputStream}: base64 text is decoded across reads of any size and up to the byte that ends it,
+ * and zip, gzip and zlib compressed trees are turned back into the nozip response.
+ * 
+ * @author developers@box.net
+ */
+public class ZippedTreeInputStreamTest extends TestCase {
+
+    /** Tree compressed into a zip entry. */
+    public static final int FORMAT_ZIP = 0;
+    /** Tree compressed with gzip. */
+    public static final int FORMAT_GZIP = 1;
+    /** Tree compressed with zlib. */
+    public static final int FORMAT_ZLIB = 2;
+
+    /** The base64 alphabet. */
+    private static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+    /**
+     * Base64 text of any length, with line breaks and padding, decodes to the original bytes, and the byte that ends the text is left in the underlying
+     * stream.
+     * 
+     * @throws IOException
+     *             if a stream cannot be read
+     */
+    public void testBase64Decodes() throws IOException {
+        final Random random = new Random(5);
+        final int[] lengths = {0, 1, 2, 3, 4, 5, 100, 3071, 3072, 3073, 20000};
+        for (int i = 0; i < lengths.length; i++) {
+            final byte[] data = new byte[lengths[i]];
+            random.nextBytes(data);
+            for (int trickle = 0; trickle < 2; trickle++) {
+                final PushbackInputStream in = new PushbackInputStream(input((base64(data, 76) + "</tree>").getBytes("US-ASCII"), trickle == 1),
+                    Base64InputStream.PUSHBACK_BUFFER_SIZE);
+                assertTrue("length " + lengths[i], Arrays.equals(data, readAll(new Base64InputStream(in), trickle == 1)));
+                assertEquals("</tree>", new String(readAll(in, false), "US-ASCII"));
+            }
+        }
+    }
+
+    /**
+     * The URL-safe alphabet and text without padding decode too.
+     * 
+     * @throws IOException
+     *             if a stream cannot be read
+     */
+    public void testBase64UrlSafeWithoutPadding() throws IOException {
+        final byte[] data = {(byte) 0xfb, (byte) 0xff, (byte) 0xbf, 0x10};
+        assertEquals("+/+/EA==", base64(data, 0));
+        final PushbackInputStream in = new PushbackInputStream(new ByteArrayInputStream("-_-_EA<".getBytes("US-ASCII")), Base64InputStream.PUSHBACK_BUFFER_SIZE);
+        assertTrue(Arrays.equals(data, readAll(new Base64InputStream(in), false)));
+        assertEquals('<', in.read());
+    }
+
+    /**
+     * Zip, gzip and zlib compressed trees are inflated in place, without their byte order mark and XML declaration, and the rest of the response is passed
+     * through.
+     * 
+     * @throws IOException
+     *             if a stream cannot be read
+     */
+    public void testCompressedTreesInflate() throws IOException {
+        final StringBuilder tree = new StringBuilder("<folder id=\"0\" name=\"All Files\"><files>");
+        for (int i = 1; i <= 500; i++) {
+            tree.append("<file id=\"").append(i).append("\" file_name=\"file ").append(i).append(".txt\"/>");
+        }
+        tree.append("</files><folders></folders></folder>");
+        final String prefix = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><response><status>listing_ok</status><tree>";
+        final String suffix = "</tree></response>";
+        final String expected = prefix + tree + suffix;
+        final String[] declarations = {"", "<?xml version=\"1.0\" encoding=\"UTF-8\"?>", "\ufeff<?xml version=\"1.0\"?>"};
+        final int[] formats = {FORMAT_ZIP, FORMAT_GZIP, FORMAT_ZLIB};
+        for (int f = 0; f < formats.length; f++) {
+            for (int d = 0; d < declarations.length; d++) {
+                final String compressed = zipTree(declarations[d] + tree, formats[f]);
+                for (int trickle = 0; trickle < 2; trickle++) {
+                    final ZippedTreeInputStream in = new ZippedTreeInputStream(input((prefix + compressed + suffix).getBytes("UTF-8"), trickle == 1));
+                    assertEquals("format " + f + ", declaration " + d, expected, new String(readAll(in, trickle == 1), "UTF-8"));
+                    assertTrue(in.getCompressedBytes() > 0);
+                    assertTrue(in.getCompressedBytes() < tree.length());
+                }
+            }
+        }
+    }
+
+    /**
+     * An empty tree element passes through unchanged.
+     * 
+     * @throws IOException
+     *             if a stream cannot be read
+     */
+    public void testEmptyTree() throws IOException {
+        final String response = "<response><status>not_logged_in</status><tree></tree></response>";
+        assertEquals(response, new String(readAll(new ZippedTreeInputStream(new ByteArrayInputStream(response.getBytes("UTF-8"))), false), "UTF-8"));
+    }
+
+    /**
+     * Compress a tree the way a zipped get_account_tree response holds it.
+     * 
+     * @param treeXml
+     *            The tree XML
+     * @param format
+     *            {@link #FORMAT_ZIP}, {@link #FORMAT_GZIP} or {@link #FORMAT_ZLIB}
+     * @return The base64 text of the compressed tree
+     * @throws IOException
+     *             if the tree cannot be compressed
+     */
+    public static String zipTree(final String treeXml, final int format) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        if (format == FORMAT_ZIP) {
+            final ZipOutputStream zip = new ZipOutputStream(bytes);
+            zip.putNextEntry(new ZipEntry("tree.xml"));
+            zip.write(treeXml.getBytes("UTF-8"));
+            zip.closeEntry();
+            zip.close();
+        }
+        else {
+            final DeflaterOutputStream out = format == FORMAT_GZIP ? new GZIPOutputStream(bytes) : new DeflaterOutputStream(bytes);
+            out.write(treeXml.getBytes("UTF-8"));
+            out.close();
+        }
+        return base64(bytes.toByteArray(), 76);
+    }
+
+    /**
+     * Encode bytes as base64.
+     * 
+     * @param data
+     *            The bytes
+     * @param lineLength
+     *            Characters per line, or 0 for a single line
+     * @return The padded base64 text
+     */
+    private static String base64(final byte[] data, final int lineLength) {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < data.length; i += 3) {
+            final int n = Math.min(3, data.length - i);
+            int group = (data[i] & 0xff) << 16;
+            if (n > 1) {
+                group |= (data[i + 1] & 0xff) << 8;
+            }
+            if (n > 2) {
+                group |= data[i + 2] & 0xff;
+            }
+            for (int j = 0; j < 4; j++) {
+                text.append(j <= n ? ALPHABET.charAt((group >> (18 - 6 * j)) & 0x3f) : '=');
+                if (lineLength > 0 && (text.length() + 1) % (lineLength + 1) == 0) {
+                    text.append('\n');
+                }
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Get a stream of bytes.
+     * 
+     * @param bytes
+     *            The bytes
+     * @param trickle
+     *            Whether reads return one byte at a time
+     * @return The stream
+     */
+    private static InputStream input(final byte[] bytes, final boolean trickle) {
+        return new ByteArrayInputStream(bytes) {
+
+            @Override
+            public synchronized int read(final byte[] b, final int off, final int len) {
+                return super.read(b, off, trickle ? Math.min(len, 1) : len);
+            }
+        };
+    }
+
+    /**
+     * Read a stream to its end.
+     * 
+     * @param in
+     *            The stream
+     * @param small
+     *            Whether to read in small, odd-sized pieces
+     * @return The bytes read
+     * @throws IOException
+     *             if the stream cannot be read
+     */
+    private static byte[] readAll(final InputStream in, final boolean small) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[small ? 7 : 8192];
+        int n;
+        while ((n = in.read(buffer, 0, buffer.length)) >= 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
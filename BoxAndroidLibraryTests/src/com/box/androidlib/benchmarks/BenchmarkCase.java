@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.benchmarks;
+
+import junit.framework.TestCase;
+import android.os.Debug;
+import android.util.Log;
+
+/**
+ * Base class of the benchmarks. Each test measures one piece of code and logs its time and the bytes it allocates per operation with the tag {@link #TAG}.
+ * Time and allocations are measured in separate runs, as counting allocations slows the code down.
+ * 
+ * @author developers@box.net
+ */
+public abstract class BenchmarkCase extends TestCase {
+
+    /**
+     * Tag of the results in logcat.
+     */
+    public static final String TAG = "BoxBenchmark";
+    /**
+     * Number of runs before measuring, so that the code is compiled and caches are filled.
+     */
+    private static final int WARMUP_RUNS = 5;
+    /**
+     * Number of timed runs. The fastest is reported, as it is the one least disturbed by the rest of the system.
+     */
+    private static final int TIMED_RUNS = 5;
+
+    /**
+     * Measure a piece of code and log the result.
+     * 
+     * @param name
+     *            What is measured, for the log
+     * @param operations
+     *            Number of operations done by one run of the code
+     * @param body
+     *            The code to measure. It must do the same work on every run.
+     * @return The time per operation in nanoseconds
+     */
+    protected final double measure(final String name, final int operations, final Runnable body) {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            body.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < TIMED_RUNS; i++) {
+            final long start = System.nanoTime();
+            body.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocSize();
+        body.run();
+        final long allocated = Debug.getThreadAllocSize();
+        Debug.stopAllocCounting();
+
+        final double nanos = (double) best / operations;
+        Log.i(TAG, name + ": " + Math.round(nanos * 10) / 10.0 + " ns/op, " + allocated / operations + " bytes/op");
+        return nanos;
+    }
+}
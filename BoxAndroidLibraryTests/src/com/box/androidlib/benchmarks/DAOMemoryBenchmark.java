@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.benchmarks;
+
+import android.util.Log;
+
+import com.box.androidlib.DAO.BoxFile;
+import com.box.androidlib.DAO.BoxFolder;
+
+/**
+ * Heap retained by parsed files and folders, as held by an account tree. Each item has the attributes get_account_tree returns, with thumbnails that contain
+ * the id of the item.
+ * 
+ * @author developers@box.net
+ */
+public class DAOMemoryBenchmark extends BenchmarkCase {
+
+    /**
+     * Number of items kept alive per measurement.
+     */
+    private static final int ITEMS = 20000;
+
+    /**
+     * Measure the heap retained per file.
+     */
+    public void testBoxFileRetainedSize() {
+        final long before = usedMemory();
+        final BoxFile[] files = new BoxFile[ITEMS];
+        for (int i = 0; i < ITEMS; i++) {
+            final BoxFile file = new BoxFile();
+            final String id = String.valueOf(1000000 + i);
+            file.parseAttribute("id", id);
+            file.parseAttribute("file_name", "IMG_" + i + ".jpg");
+            file.parseAttribute("size", "2097152");
+            file.parseAttribute("created", "1317420000");
+            file.parseAttribute("updated", "1317506400");
+            file.parseAttribute("sha1", "2fd4e1c67a2d28fced849ee1bb76e7391b" + id);
+            file.parseAttribute("permissions", "gdupnsvckteh");
+            file.parseAttribute("small_thumbnail", "https://www.box.net/api/thumbs/27x30/image/" + id + ".png");
+            file.parseAttribute("large_thumbnail", "https://www.box.net/api/thumbs/32x32/image/" + id + ".png");
+            file.parseAttribute("larger_thumbnail", "https://www.box.net/api/thumbs/64x64/image/" + id + ".png");
+            file.parseAttribute("preview_thumbnail", "https://www.box.net/api/thumbs/256x256/image/" + id + ".png");
+            file.trimToSize();
+            files[i] = file;
+        }
+        report("BoxFile", usedMemory() - before);
+        assertEquals("https://www.box.net/api/thumbs/64x64/image/1000000.png", files[0].getLargerThumbnail());
+    }
+
+    /**
+     * Measure the heap retained per folder, without children.
+     */
+    public void testBoxFolderRetainedSize() {
+        final long before = usedMemory();
+        final BoxFolder[] folders = new BoxFolder[ITEMS];
+        for (int i = 0; i < ITEMS; i++) {
+            final BoxFolder folder = new BoxFolder();
+            final String id = String.valueOf(2000000 + i);
+            folder.parseAttribute("id", id);
+            folder.parseAttribute("name", "Folder " + i);
+            folder.parseAttribute("shared", "0");
+            folder.parseAttribute("size", "73400320");
+            folder.parseAttribute("created", "1317420000");
+            folder.parseAttribute("updated", "1317506400");
+            folder.parseAttribute("permissions", "gdupnsvckteh");
+            folder.parseAttribute("small_thumbnail", "https://www.box.net/api/thumbs/27x30/folder/" + id + ".png");
+            folder.parseAttribute("large_thumbnail", "https://www.box.net/api/thumbs/32x32/folder/" + id + ".png");
+            folder.trimToSize();
+            folders[i] = folder;
+        }
+        report("BoxFolder", usedMemory() - before);
+        assertEquals("https://www.box.net/api/thumbs/32x32/folder/2000000.png", folders[0].getLargeThumbnail());
+    }
+
+    /**
+     * Log the heap retained per item.
+     * 
+     * @param name
+     *            What is measured, for the log
+     * @param retained
+     *            Bytes retained by all items
+     */
+    private static void report(final String name, final long retained) {
+        Log.i(TAG, name + ": " + retained / ITEMS + " bytes retained per item");
+    }
+
+    /**
+     * Get the heap in use once garbage has been collected.
+     * 
+     * @return Bytes in use
+     */
+    private static long usedMemory() {
+        final Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // Collect until the heap stops shrinking, as one collection may leave garbage behind.
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            System.runFinalization();
+            final long now = runtime.totalMemory() - runtime.freeMemory();
+            if (now >= used) {
+                return now;
+            }
+            used = now;
+        }
+        return used;
+    }
+}
@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.benchmarks;
+
+import com.box.androidlib.DAO.BoxFile;
+import com.box.androidlib.DAO.BoxFolder;
+
+/**
+ * Throughput and allocations of parsing the attributes of files and folders, as the SAX parsers do for every element of a response. Each operation is one
+ * element: a new DAO with all of its attributes parsed. The attributes are passed as the parsers pass them, as Strings taken from XML attributes or as the
+ * text collected from child elements.
+ * 
+ * @author developers@box.net
+ */
+public class DAOParseBenchmark extends BenchmarkCase {
+
+    /**
+     * Number of elements parsed per run.
+     */
+    private static final int ELEMENTS = 20000;
+
+    /**
+     * Attributes of a file, as found in get_account_tree and search responses.
+     */
+    private static final String[][] FILE_ATTRIBUTES = { {"id", "1234567890"}, {"file_name", "Quarterly report.pdf"}, {"shared", "0"},
+        {"size", "1048576"}, {"created", "1317420000"}, {"updated", "1317506400"}, {"sha1", "2fd4e1c67a2d28fced849ee1bb76e7391b93eb12"},
+        {"permissions", "gdupnsvckteh"}, {"thumbnail", "https://www.box.net/api/thumbs/1234567890"}, {"comment_count", "3"}};
+
+    /**
+     * Attributes of a folder, as found in get_account_tree and search responses.
+     */
+    private static final String[][] FOLDER_ATTRIBUTES = { {"id", "987654321"}, {"name", "Projects"}, {"shared", "1"}, {"file_count", "42"},
+        {"size", "73400320"}, {"created", "1317420000"}, {"updated", "1317506400"}, {"user_id", "1234"}, {"permissions", "gdupnsvckteh"},
+        {"has_collaborators", "1"}};
+
+    /**
+     * A file whose subclass only overrides parseAttribute(String, String), as registered with Box.setBoxFileClass. Every attribute goes through the String
+     * overload.
+     */
+    private static class CustomFile extends BoxFile {
+
+        @Override
+        public void parseAttribute(final String key, final String value) {
+            super.parseAttribute(key, value);
+        }
+    }
+
+    /**
+     * Parse files from attributes passed as Strings.
+     */
+    public void testBoxFileFromStrings() {
+        measure("BoxFile.parseAttribute(String, String)", ELEMENTS, new Runnable() {
+
+            @Override
+            public void run() {
+                long sum = 0;
+                for (int i = 0; i < ELEMENTS; i++) {
+                    final BoxFile file = new BoxFile();
+                    for (int j = 0; j < FILE_ATTRIBUTES.length; j++) {
+                        file.parseAttribute(FILE_ATTRIBUTES[j][0], FILE_ATTRIBUTES[j][1]);
+                    }
+                    sum += file.getSize();
+                }
+                assertEquals(1048576L * ELEMENTS, sum);
+            }
+        });
+    }
+
+    /**
+     * Parse files from attributes passed as the collected text of their elements.
+     */
+    public void testBoxFileFromText() {
+        final StringBuilder[] values = toText(FILE_ATTRIBUTES);
+        measure("BoxFile.parseAttribute(String, CharSequence)", ELEMENTS, new Runnable() {
+
+            @Override
+            public void run() {
+                long sum = 0;
+                for (int i = 0; i < ELEMENTS; i++) {
+                    final BoxFile file = new BoxFile();
+                    for (int j = 0; j < FILE_ATTRIBUTES.length; j++) {
+                        file.parseAttribute(FILE_ATTRIBUTES[j][0], values[j]);
+                    }
+                    sum += file.getSize();
+                }
+                assertEquals(1048576L * ELEMENTS, sum);
+            }
+        });
+    }
+
+    /**
+     * Parse files of a subclass from the collected text of their elements. Every value is converted to a String for the subclass.
+     */
+    public void testBoxFileSubclassFromText() {
+        final StringBuilder[] values = toText(FILE_ATTRIBUTES);
+        measure("BoxFile subclass.parseAttribute(String, CharSequence)", ELEMENTS, new Runnable() {
+
+            @Override
+            public void run() {
+                long sum = 0;
+                for (int i = 0; i < ELEMENTS; i++) {
+                    final BoxFile file = new CustomFile();
+                    for (int j = 0; j < FILE_ATTRIBUTES.length; j++) {
+                        file.parseAttribute(FILE_ATTRIBUTES[j][0], values[j]);
+                    }
+                    sum += file.getSize();
+                }
+                assertEquals(1048576L * ELEMENTS, sum);
+            }
+        });
+    }
+
+    /**
+     * Parse folders from attributes passed as Strings.
+     */
+    public void testBoxFolderFromStrings() {
+        measure("BoxFolder.parseAttribute(String, String)", ELEMENTS, new Runnable() {
+
+            @Override
+            public void run() {
+                long sum = 0;
+                for (int i = 0; i < ELEMENTS; i++) {
+                    final BoxFolder folder = new BoxFolder();
+                    for (int j = 0; j < FOLDER_ATTRIBUTES.length; j++) {
+                        folder.parseAttribute(FOLDER_ATTRIBUTES[j][0], FOLDER_ATTRIBUTES[j][1]);
+                    }
+                    sum += folder.getFileCount();
+                }
+                assertEquals(42L * ELEMENTS, sum);
+            }
+        });
+    }
+
+    /**
+     * Parse folders from attributes passed as the collected text of their elements.
+     */
+    public void testBoxFolderFromText() {
+        final StringBuilder[] values = toText(FOLDER_ATTRIBUTES);
+        measure("BoxFolder.parseAttribute(String, CharSequence)", ELEMENTS, new Runnable() {
+
+            @Override
+            public void run() {
+                long sum = 0;
+                for (int i = 0; i < ELEMENTS; i++) {
+                    final BoxFolder folder = new BoxFolder();
+                    for (int j = 0; j < FOLDER_ATTRIBUTES.length; j++) {
+                        folder.parseAttribute(FOLDER_ATTRIBUTES[j][0], values[j]);
+                    }
+                    sum += folder.getFileCount();
+                }
+                assertEquals(42L * ELEMENTS, sum);
+            }
+        });
+    }
+
+    /**
+     * Copy the values of attributes into builders, as the SAX parsers collect the text of elements.
+     * 
+     * @param attributes
+     *            The attributes
+     * @return The values
+     */
+    private static StringBuilder[] toText(final String[][] attributes) {
+        final StringBuilder[] values = new StringBuilder[attributes.length];
+        for (int i = 0; i < attributes.length; i++) {
+            values[i] = new StringBuilder(attributes[i][1]);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import android.os.Handler;
+import android.util.Log;
+
+import com.box.androidlib.FileTransfer.BoxFileDownload;
+import com.box.androidlib.ResponseListeners.FileDownloadListener;
+import com.box.androidlib.Transport.BoxHttpRequest;
+import com.box.androidlib.Transport.BoxHttpResponse;
+import com.box.androidlib.Transport.BoxHttpTransport;
+import com.box.androidlib.Transport.LoopbackHttpTransport;
+import com.box.androidlib.Utils.BoxConfig;
+
+/**
+ * Throughput and allocations of a single stream download, from a {@link LoopbackHttpTransport} to a file, with a listener for progress. Each operation is one
+ * megabyte, so the time is reported per megabyte and also as megabytes per second. The response is read either in as large chunks as the download asks for,
+ * as from a fast connection with a full socket buffer, or in chunks of at most {@link #NETWORK_READ_SIZE} bytes, as from a slower one.
+ * 
+ * @author developers@box.net
+ */
+public class DownloadBenchmark extends BenchmarkCase {
+
+    /**
+     * Size of a megabyte.
+     */
+    private static final int MEGABYTE = 1024 * 1024;
+    /**
+     * Size of the downloaded file in megabytes.
+     */
+    private static final int MEGABYTES = 16;
+    /**
+     * Most bytes returned by one read of the slower response.
+     */
+    private static final int NETWORK_READ_SIZE = 4096;
+
+    /**
+     * Contents of the downloaded file.
+     */
+    private byte[] mContents;
+    /**
+     * Where the file is downloaded to.
+     */
+    private File mDestination;
+    /**
+     * Transport before the benchmark.
+     */
+    private BoxHttpTransport mTransport;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContents = new byte[MEGABYTES * MEGABYTE];
+        new Random(1).nextBytes(mContents);
+        mDestination = File.createTempFile("download", ".bin");
+        mTransport = BoxConfig.getInstance().getHttpTransport();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        BoxConfig.getInstance().setHttpTransport(mTransport);
+        mDestination.delete();
+        super.tearDown();
+    }
+
+    /**
+     * Download a response that fills every read.
+     */
+    public void testBulkReads() {
+        final Map<String, List<String>> headers = Collections.singletonMap("Content-Length", Collections.singletonList(String.valueOf(mContents.length)));
+        BoxConfig.getInstance().setHttpTransport(new LoopbackHttpTransport(new LoopbackHttpTransport.Responder() {
+
+            @Override
+            public BoxHttpResponse respond(final BoxHttpRequest request, final byte[] requestBody) {
+                return LoopbackHttpTransport.newResponse(200, headers, mContents);
+            }
+        }));
+        measureDownload("BoxFileDownload, bulk reads");
+    }
+
+    /**
+     * Download a response that returns at most {@link #NETWORK_READ_SIZE} bytes per read.
+     */
+    public void testNetworkSizedReads() {
+        BoxConfig.getInstance().setHttpTransport(new LoopbackHttpTransport(new LoopbackHttpTransport.Responder() {
+
+            @Override
+            public BoxHttpResponse respond(final BoxHttpRequest request, final byte[] requestBody) {
+                return new TrickleResponse(mContents);
+            }
+        }));
+        measureDownload("BoxFileDownload, " + NETWORK_READ_SIZE + " byte reads");
+    }
+
+    /**
+     * Measure downloads of the file through the current transport and log the throughput.
+     * 
+     * @param name
+     *            What is measured, for the log
+     */
+    private void measureDownload(final String name) {
+        final FileDownloadListener listener = new FileDownloadListener() {
+
+            @Override
+            public void onComplete(final String status) {
+            }
+
+            @Override
+            public void onIOException(final IOException e) {
+            }
+
+            @Override
+            public void onProgress(final long bytesDownloaded) {
+            }
+        };
+        final Handler handler = new Handler();
+        final double nanos = measure(name, MEGABYTES, new Runnable() {
+
+            @Override
+            public void run() {
+                final BoxFileDownload download = new BoxFileDownload("authtoken");
+                download.setListener(listener, handler);
+                try {
+                    assertEquals(FileDownloadListener.STATUS_DOWNLOAD_OK, download.execute(1, mDestination, null).getStatus());
+                }
+                catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                assertEquals(mContents.length, mDestination.length());
+            }
+        });
+        Log.i(TAG, name + ": " + Math.round(1e10 / nanos) / 10.0 + " MB/s");
+    }
+
+    /**
+     * Response whose content returns at most {@link #NETWORK_READ_SIZE} bytes per read.
+     */
+    private static final class TrickleResponse implements BoxHttpResponse {
+
+        /** The content. */
+        private final InputStream mContent;
+
+        /**
+         * Constructor.
+         * 
+         * @param body
+         *            the content
+         */
+        public TrickleResponse(final byte[] body) {
+            mContent = new ByteArrayInputStream(body) {
+
+                @Override
+                public synchronized int read(final byte[] b, final int off, final int len) {
+                    return super.read(b, off, Math.min(len, NETWORK_READ_SIZE));
+                }
+            };
+        }
+
+        @Override
+        public int getStatusCode() {
+            return 200;
+        }
+
+        @Override
+        public String getHeader(final String name) {
+            return null;
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaders() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public InputStream getContent() {
+            return mContent;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void abort() {
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright 2011 Box.net.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.box.androidlib.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.Random;
+
+import android.util.Log;
+
+import com.box.androidlib.DAO.BoxFolder;
+import com.box.androidlib.DAO.DAO;
+import com.box.androidlib.DAO.SnapshotCodec;
+import com.box.androidlib.DAO.SnapshotCodecTest;
+
+/**
+ * Time, allocations and size of saving a folder tree with {@link SnapshotCodec} and with the Gson based {@link DAO#toJSON(DAO)} and
+ * {@link DAO#fromJSON(String, Class)}. Each operation is one folder or file of the tree.
+ * 
+ * @author developers@box.net
+ */
+public class SnapshotBenchmark extends BenchmarkCase {
+
+    /**
+     * The tree saved: 259 folders with 20 files each.
+     */
+    private static final BoxFolder TREE = SnapshotCodecTest.buildTree(new Random(1), 3, 6, 20);
+    /**
+     * Number of folders and files in the tree.
+     */
+    private static final int ITEMS = 259 * 21;
+
+    /**
+     * Write snapshots of the tree.
+     */
+    public void testWriteSnapshot() {
+        measure("SnapshotCodec.writeFolder", ITEMS, new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    assertTrue(SnapshotCodecTest.write(TREE).length > ITEMS);
+                }
+                catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Read snapshots of the tree.
+     * 
+     * @throws IOException
+     *             if the snapshot cannot be written
+     */
+    public void testReadSnapshot() throws IOException {
+        final byte[] snapshot = SnapshotCodecTest.write(TREE);
+        measure("SnapshotCodec.readFolder", ITEMS, new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    assertEquals(TREE.getId(), SnapshotCodec.readFolder(new DataInputStream(new ByteArrayInputStream(snapshot))).getId());
+                }
+                catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Write the tree as JSON.
+     */
+    public void testToJSON() {
+        measure("DAO.toJSON", ITEMS, new Runnable() {
+
+            @Override
+            public void run() {
+                assertTrue(DAO.toJSON(TREE).length() > ITEMS);
+            }
+        });
+    }
+
+    /**
+     * Read the tree from JSON.
+     */
+    public void testFromJSON() {
+        final String json = DAO.toJSON(TREE);
+        measure("DAO.fromJSON", ITEMS, new Runnable() {
+
+            @Override
+            public void run() {
+                assertEquals(TREE.getId(), ((BoxFolder) DAO.fromJSON(json, BoxFolder.class)).getId());
+            }
+        });
+    }
+
+    /**
+     * Log the size of the tree as a snapshot and as JSON.
+     * 
+     * @throws IOException
+     *             if the snapshot cannot be written
+     */
+    public void testSize() throws IOException {
+        final int snapshot = SnapshotCodecTest.write(TREE).length;
+        final int json = utf8Length(DAO.toJSON(TREE));
+        Log.i(TAG, "SnapshotCodec: " + snapshot / ITEMS + " bytes per item, DAO.toJSON: " + json / ITEMS + " bytes per item");
+        assertTrue(snapshot < json);
+    }
+
+    /**
+     * Get the length of a string in UTF-8.
+     * 
+     * @param string
+     *            The string
+     * @return Number of bytes
+     * @throws UnsupportedEncodingException
+     *             never, as UTF-8 is always supported
+     */
+    private static int utf8Length(final String string) throws UnsupportedEncodingException {
+        return string.getBytes("UTF-8").length;
+    }
+}